@@ -0,0 +1,277 @@
+/*
+ * This source file is part of Cube.
+ *
+ * Copyright (c) 2023-2026 Ambrose Xu.
+ */
+
+package cube.auth;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+/**
+ * 签名令牌。
+ * 令牌码的格式为 {@code v1.<密钥 ID>.<载荷>.<签名>} ，载荷包含域、App Key、联系人 ID 、
+ * 签发时间、过期时间和令牌 ID ，签名是使用密钥对前三段计算的 HMAC-SHA256 。
+ * 持有密钥集的节点可以在本地校验令牌，不需要查询授权服务。
+ */
+public class SignedToken {
+
+    public final static String PREFIX = "v1.";
+
+    private final static String ALGORITHM = "HmacSHA256";
+
+    private final static SecureRandom random = new SecureRandom();
+
+    private final static Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+
+    private final static Base64.Decoder decoder = Base64.getUrlDecoder();
+
+    private final static ThreadLocal<Mac> threadMac = new ThreadLocal<Mac>() {
+        @Override
+        protected Mac initialValue() {
+            try {
+                return Mac.getInstance(ALGORITHM);
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    };
+
+    /**
+     * 校验结果。
+     */
+    public enum Verification {
+        /**
+         * 令牌有效。
+         */
+        Valid,
+
+        /**
+         * 签名密钥未知，可能是密钥集尚未同步。
+         */
+        UnknownKey,
+
+        /**
+         * 签名错误。
+         */
+        BadSignature,
+
+        /**
+         * 令牌已过期。
+         */
+        Expired,
+
+        /**
+         * 令牌已被吊销。
+         */
+        Revoked
+    }
+
+    private final String code;
+
+    private final String keyId;
+
+    private final String signed;
+
+    private final String signature;
+
+    private String id;
+
+    private String domain;
+
+    private String appKey;
+
+    private long contactId;
+
+    private long issue;
+
+    private long expiry;
+
+    private boolean ferry;
+
+    private SignedToken(String code, String keyId, String signed, String signature) {
+        this.code = code;
+        this.keyId = keyId;
+        this.signed = signed;
+        this.signature = signature;
+    }
+
+    /**
+     * 判断令牌码是否是签名令牌。
+     *
+     * @param code
+     * @return
+     */
+    public static boolean isSigned(String code) {
+        return null != code && code.startsWith(PREFIX);
+    }
+
+    /**
+     * 生成签名令牌码。
+     *
+     * @param key 签名密钥。
+     * @param domain 域名称。
+     * @param appKey App Key 。
+     * @param contactId 联系人 ID 。
+     * @param issue 签发时间。
+     * @param expiry 过期时间。
+     * @param ferry 是否摆渡数据模式。
+     * @return 返回令牌码。
+     */
+    public static String sign(TokenKeySet.Key key, String domain, String appKey, long contactId,
+                              long issue, long expiry, boolean ferry) {
+        byte[] id = new byte[9];
+        random.nextBytes(id);
+
+        StringBuilder buf = new StringBuilder();
+        buf.append(encoder.encodeToString(id)).append('\n');
+        buf.append(domain).append('\n');
+        buf.append(null != appKey ? appKey : "").append('\n');
+        buf.append(contactId).append('\n');
+        buf.append(issue).append('\n');
+        buf.append(expiry).append('\n');
+        buf.append(ferry ? '1' : '0');
+
+        String signed = PREFIX + key.id + "." +
+                encoder.encodeToString(buf.toString().getBytes(StandardCharsets.UTF_8));
+        return signed + "." + encoder.encodeToString(mac(key, signed));
+    }
+
+    /**
+     * 解析令牌码，不进行校验。
+     *
+     * @param code
+     * @return 返回令牌，格式错误时返回 {@code null} 值。
+     */
+    public static SignedToken parse(String code) {
+        if (!isSigned(code)) {
+            return null;
+        }
+
+        int keyEnd = code.indexOf('.', PREFIX.length());
+        int payloadEnd = (keyEnd > 0) ? code.indexOf('.', keyEnd + 1) : -1;
+        if (keyEnd <= PREFIX.length() || payloadEnd < 0 || code.indexOf('.', payloadEnd + 1) >= 0) {
+            return null;
+        }
+
+        SignedToken token = new SignedToken(code, code.substring(PREFIX.length(), keyEnd),
+                code.substring(0, payloadEnd), code.substring(payloadEnd + 1));
+        try {
+            String payload = new String(decoder.decode(code.substring(keyEnd + 1, payloadEnd)),
+                    StandardCharsets.UTF_8);
+            String[] fields = payload.split("\n", -1);
+            if (fields.length != 7) {
+                return null;
+            }
+            token.id = fields[0];
+            token.domain = fields[1];
+            token.appKey = fields[2];
+            token.contactId = Long.parseLong(fields[3]);
+            token.issue = Long.parseLong(fields[4]);
+            token.expiry = Long.parseLong(fields[5]);
+            token.ferry = "1".equals(fields[6]);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        return token;
+    }
+
+    /**
+     * 校验令牌。
+     *
+     * @param keySet 密钥集。
+     * @param revocationList 吊销列表，可以为 {@code null} 值。
+     * @param now 当前时间。
+     * @return 返回校验结果。
+     */
+    public Verification verify(TokenKeySet keySet, TokenRevocationList revocationList, long now) {
+        TokenKeySet.Key key = keySet.getKey(this.keyId);
+        if (null == key) {
+            return Verification.UnknownKey;
+        }
+
+        byte[] actual;
+        try {
+            actual = decoder.decode(this.signature);
+        } catch (IllegalArgumentException e) {
+            return Verification.BadSignature;
+        }
+
+        // 使用恒定时间比较
+        if (!MessageDigest.isEqual(mac(key, this.signed), actual)) {
+            return Verification.BadSignature;
+        }
+
+        if (this.expiry < now) {
+            return Verification.Expired;
+        }
+
+        if (null != revocationList && revocationList.isRevoked(this.id)) {
+            return Verification.Revoked;
+        }
+
+        return Verification.Valid;
+    }
+
+    /**
+     * 转为令牌对象。
+     *
+     * @return
+     */
+    public AuthToken toAuthToken() {
+        return new AuthToken(this.code, this.domain, this.appKey, this.contactId,
+                this.issue, this.expiry, this.ferry);
+    }
+
+    public String getCode() {
+        return this.code;
+    }
+
+    public String getKeyId() {
+        return this.keyId;
+    }
+
+    public String getId() {
+        return this.id;
+    }
+
+    public String getDomain() {
+        return this.domain;
+    }
+
+    public String getAppKey() {
+        return this.appKey;
+    }
+
+    public long getContactId() {
+        return this.contactId;
+    }
+
+    public long getIssue() {
+        return this.issue;
+    }
+
+    public long getExpiry() {
+        return this.expiry;
+    }
+
+    public boolean isFerry() {
+        return this.ferry;
+    }
+
+    private static byte[] mac(TokenKeySet.Key key, String data) {
+        Mac mac = threadMac.get();
+        try {
+            mac.init(new SecretKeySpec(key.secret, ALGORITHM));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+        return mac.doFinal(data.getBytes(StandardCharsets.UTF_8));
+    }
+}
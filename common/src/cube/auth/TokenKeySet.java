@@ -0,0 +1,245 @@
+/*
+ * This source file is part of Cube.
+ *
+ * Copyright (c) 2023-2026 Ambrose Xu.
+ */
+
+package cube.auth;
+
+import cube.common.JSONable;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.TreeMap;
+
+/**
+ * 令牌签名密钥集。
+ * 授权服务定期轮换签名密钥，新令牌使用当前密钥签名，
+ * 旧密钥在保留期内继续用于校验，保证轮换前签发的令牌仍然有效。
+ */
+public class TokenKeySet implements JSONable {
+
+    private final static SecureRandom random = new SecureRandom();
+
+    /**
+     * 密钥长度。
+     */
+    public final static int KEY_LENGTH = 32;
+
+    /**
+     * 密钥 ID 到密钥的映射。
+     */
+    private final TreeMap<String, Key> keys;
+
+    /**
+     * 当前签名密钥 ID 。
+     */
+    private String currentKeyId;
+
+    /**
+     * 旧密钥的保留时长，应当不小于令牌的最长有效期。
+     */
+    private long retention;
+
+    /**
+     * 版本号，密钥集变化时递增。
+     */
+    private long version;
+
+    /**
+     * 构造函数。
+     *
+     * @param retention 旧密钥的保留时长，单位：毫秒。
+     */
+    public TokenKeySet(long retention) {
+        this.keys = new TreeMap<>();
+        this.currentKeyId = null;
+        this.retention = retention;
+        this.version = 0;
+    }
+
+    public TokenKeySet(JSONObject json) {
+        this(json.getLong("retention"));
+        this.merge(json);
+    }
+
+    public synchronized long getVersion() {
+        return this.version;
+    }
+
+    public synchronized boolean isEmpty() {
+        return this.keys.isEmpty();
+    }
+
+    public synchronized int size() {
+        return this.keys.size();
+    }
+
+    /**
+     * 获取当前签名密钥。
+     *
+     * @return 返回当前签名密钥，密钥集为空时返回 {@code null} 值。
+     */
+    public synchronized Key getCurrentKey() {
+        return (null != this.currentKeyId) ? this.keys.get(this.currentKeyId) : null;
+    }
+
+    /**
+     * 获取指定 ID 的密钥。
+     *
+     * @param keyId
+     * @return
+     */
+    public synchronized Key getKey(String keyId) {
+        return this.keys.get(keyId);
+    }
+
+    public synchronized long getRetention() {
+        return this.retention;
+    }
+
+    /**
+     * 生成新密钥并设置为当前签名密钥，同时删除超过保留期的旧密钥。
+     *
+     * @param now 当前时间。
+     * @return 返回新密钥。
+     */
+    public synchronized Key rotate(long now) {
+        byte[] secret = new byte[KEY_LENGTH];
+        random.nextBytes(secret);
+
+        // 密钥 ID 按时间递增
+        String keyId = Long.toString(now, 36);
+        while (this.keys.containsKey(keyId)) {
+            keyId = Long.toString(++now, 36);
+        }
+
+        Key key = new Key(keyId, secret, now);
+        this.keys.put(keyId, key);
+        this.currentKeyId = keyId;
+
+        this.purge(now);
+
+        ++this.version;
+        return key;
+    }
+
+    /**
+     * 删除超过保留期的旧密钥，当前签名密钥始终保留。
+     *
+     * @param now 当前时间。
+     * @return 返回删除的密钥数量。
+     */
+    public synchronized int purge(long now) {
+        int count = 0;
+        Iterator<Key> iter = this.keys.values().iterator();
+        while (iter.hasNext()) {
+            Key key = iter.next();
+            if (!key.id.equals(this.currentKeyId) && now - key.created > this.retention) {
+                iter.remove();
+                ++count;
+            }
+        }
+
+        if (count > 0) {
+            ++this.version;
+        }
+        return count;
+    }
+
+    /**
+     * 合并其他节点的密钥集。
+     *
+     * @param json
+     * @return 如果密钥集发生变化返回 {@code true} 。
+     */
+    public synchronized boolean merge(JSONObject json) {
+        boolean changed = false;
+
+        JSONArray array = json.getJSONArray("keys");
+        for (int i = 0; i < array.length(); ++i) {
+            Key key = new Key(array.getJSONObject(i));
+            if (!this.keys.containsKey(key.id)) {
+                this.keys.put(key.id, key);
+                changed = true;
+            }
+        }
+
+        long retention = json.optLong("retention", this.retention);
+        if (retention > this.retention) {
+            this.retention = retention;
+        }
+
+        // 使用最新的密钥签名
+        if (!this.keys.isEmpty()) {
+            Key latest = null;
+            for (Key key : this.keys.values()) {
+                if (null == latest || key.created > latest.created) {
+                    latest = key;
+                }
+            }
+            if (!latest.id.equals(this.currentKeyId)) {
+                this.currentKeyId = latest.id;
+                changed = true;
+            }
+        }
+
+        if (changed) {
+            this.version = Math.max(this.version + 1, json.optLong("version", 0));
+        }
+        return changed;
+    }
+
+    @Override
+    public synchronized JSONObject toJSON() {
+        JSONObject json = new JSONObject();
+        JSONArray array = new JSONArray();
+        for (Key key : this.keys.values()) {
+            array.put(key.toJSON());
+        }
+        json.put("keys", array);
+        json.put("retention", this.retention);
+        json.put("version", this.version);
+        return json;
+    }
+
+    @Override
+    public JSONObject toCompactJSON() {
+        return this.toJSON();
+    }
+
+    /**
+     * 签名密钥。
+     */
+    public final static class Key {
+
+        public final String id;
+
+        public final byte[] secret;
+
+        public final long created;
+
+        public Key(String id, byte[] secret, long created) {
+            this.id = id;
+            this.secret = secret;
+            this.created = created;
+        }
+
+        public Key(JSONObject json) {
+            this.id = json.getString("id");
+            this.secret = Base64.getDecoder().decode(json.getString("secret"));
+            this.created = json.getLong("created");
+        }
+
+        public JSONObject toJSON() {
+            JSONObject json = new JSONObject();
+            json.put("id", this.id);
+            json.put("secret", Base64.getEncoder().encodeToString(this.secret));
+            json.put("created", this.created);
+            return json;
+        }
+    }
+}
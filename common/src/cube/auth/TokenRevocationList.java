@@ -0,0 +1,146 @@
+/*
+ * This source file is part of Cube.
+ *
+ * Copyright (c) 2023-2026 Ambrose Xu.
+ */
+
+package cube.auth;
+
+import cube.common.JSONable;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * 签名令牌的吊销列表。
+ * 只记录令牌 ID 和令牌的过期时间，令牌过期后对应的记录即可删除，因此列表始终保持紧凑。
+ */
+public class TokenRevocationList implements JSONable {
+
+    /**
+     * 令牌 ID 到令牌过期时间的映射。
+     */
+    private final HashMap<String, Long> entries;
+
+    /**
+     * 版本号，列表变化时递增。
+     */
+    private long version;
+
+    public TokenRevocationList() {
+        this.entries = new HashMap<>();
+        this.version = 0;
+    }
+
+    public TokenRevocationList(JSONObject json) {
+        this();
+        this.merge(json);
+    }
+
+    public synchronized long getVersion() {
+        return this.version;
+    }
+
+    public synchronized int size() {
+        return this.entries.size();
+    }
+
+    /**
+     * 吊销令牌。
+     *
+     * @param tokenId 令牌 ID 。
+     * @param expiry 令牌的过期时间。
+     * @return 如果列表发生变化返回 {@code true} 。
+     */
+    public synchronized boolean revoke(String tokenId, long expiry) {
+        if (this.entries.containsKey(tokenId)) {
+            return false;
+        }
+
+        this.entries.put(tokenId, expiry);
+        ++this.version;
+        return true;
+    }
+
+    /**
+     * 判断令牌是否已被吊销。
+     *
+     * @param tokenId 令牌 ID 。
+     * @return
+     */
+    public synchronized boolean isRevoked(String tokenId) {
+        return this.entries.containsKey(tokenId);
+    }
+
+    /**
+     * 删除已过期令牌的记录。
+     *
+     * @param now 当前时间。
+     * @return 返回删除的记录数量。
+     */
+    public synchronized int purge(long now) {
+        int count = 0;
+        Iterator<Long> iter = this.entries.values().iterator();
+        while (iter.hasNext()) {
+            if (iter.next().longValue() < now) {
+                iter.remove();
+                ++count;
+            }
+        }
+
+        if (count > 0) {
+            ++this.version;
+        }
+        return count;
+    }
+
+    /**
+     * 合并其他节点的吊销列表。
+     *
+     * @param json
+     * @return 如果列表发生变化返回 {@code true} 。
+     */
+    public synchronized boolean merge(JSONObject json) {
+        boolean changed = false;
+        long now = System.currentTimeMillis();
+
+        JSONArray array = json.getJSONArray("list");
+        for (int i = 0; i < array.length(); ++i) {
+            JSONArray item = array.getJSONArray(i);
+            String tokenId = item.getString(0);
+            long expiry = item.getLong(1);
+            if (expiry >= now && !this.entries.containsKey(tokenId)) {
+                this.entries.put(tokenId, expiry);
+                changed = true;
+            }
+        }
+
+        if (changed) {
+            this.version = Math.max(this.version + 1, json.optLong("version", 0));
+        }
+        return changed;
+    }
+
+    @Override
+    public synchronized JSONObject toJSON() {
+        JSONObject json = new JSONObject();
+        JSONArray array = new JSONArray();
+        for (Map.Entry<String, Long> e : this.entries.entrySet()) {
+            JSONArray item = new JSONArray();
+            item.put(e.getKey());
+            item.put(e.getValue().longValue());
+            array.put(item);
+        }
+        json.put("list", array);
+        json.put("version", this.version);
+        return json;
+    }
+
+    @Override
+    public JSONObject toCompactJSON() {
+        return this.toJSON();
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * This source file is part of Cube.
+ *
+ * Copyright (c) 2023-2026 Ambrose Xu.
+ */
+
+package cube.auth.test;
+
+import cube.auth.AuthToken;
+import cube.auth.SignedToken;
+import cube.auth.TokenKeySet;
+import cube.auth.TokenRevocationList;
+import cube.util.Assert;
+
+/**
+ * 签名令牌测试。
+ */
+public class SignedTokenTest {
+
+    private final static String DOMAIN = "shixincube.com";
+
+    private final static String APP_KEY = "shixin-cubeteam-opensource-appkey";
+
+    private final static long HOUR = 60L * 60 * 1000;
+
+    private final static long DAY = 24L * HOUR;
+
+    public SignedTokenTest() {
+    }
+
+    /**
+     * 签名与解析。
+     */
+    public void testSign() {
+        long now = System.currentTimeMillis();
+        TokenKeySet keySet = new TokenKeySet(8 * DAY);
+        TokenKeySet.Key key = keySet.rotate(now);
+
+        String code = SignedToken.sign(key, DOMAIN, APP_KEY, 50001001L, now, now + 7 * DAY, false);
+        Assert.equals("testSign (signed)", true, SignedToken.isSigned(code));
+        Assert.equals("testSign (legacy)", false, SignedToken.isSigned("AbcdefgHijklmnOpqrstUvwxyz123456"));
+
+        SignedToken token = SignedToken.parse(code);
+        Assert.equals("testSign (verify)", true,
+                token.verify(keySet, null, now) == SignedToken.Verification.Valid);
+
+        AuthToken authToken = token.toAuthToken();
+        Assert.equals(code, authToken.getCode());
+        Assert.equals(DOMAIN, authToken.getDomain());
+        Assert.equals(Long.valueOf(50001001L), authToken.getContactId());
+        Assert.equals(Long.valueOf(now + 7 * DAY), Long.valueOf(authToken.getExpiry()));
+
+        // 篡改载荷
+        String[] parts = code.split("\\.");
+        String forged = SignedToken.sign(key, DOMAIN, APP_KEY, 50001002L, now, now + 7 * DAY, false);
+        String[] forgedParts = forged.split("\\.");
+        String tampered = parts[0] + "." + parts[1] + "." + forgedParts[2] + "." + parts[3];
+        Assert.equals("testSign (tampered)", true,
+                SignedToken.parse(tampered).verify(keySet, null, now) == SignedToken.Verification.BadSignature);
+
+        // 其他密钥签名
+        TokenKeySet otherSet = new TokenKeySet(8 * DAY);
+        TokenKeySet.Key other = new TokenKeySet.Key(key.id, new byte[TokenKeySet.KEY_LENGTH], now);
+        String wrong = SignedToken.sign(other, DOMAIN, APP_KEY, 50001001L, now, now + 7 * DAY, false);
+        Assert.equals("testSign (wrong key)", true,
+                SignedToken.parse(wrong).verify(keySet, null, now) == SignedToken.Verification.BadSignature);
+        Assert.equals("testSign (unknown key)", true,
+                token.verify(otherSet, null, now) == SignedToken.Verification.UnknownKey);
+
+        // 格式错误
+        Assert.equals("testSign (malformed)", true, null == SignedToken.parse("v1.abc"));
+        Assert.equals("testSign (malformed payload)", true, null == SignedToken.parse("v1.abc.@@@.def"));
+    }
+
+    /**
+     * 密钥轮换。
+     */
+    public void testRotation() {
+        long now = System.currentTimeMillis();
+        TokenKeySet keySet = new TokenKeySet(8 * DAY);
+        TokenKeySet.Key first = keySet.rotate(now - 3 * DAY);
+        String firstCode = SignedToken.sign(first, DOMAIN, APP_KEY, 50001001L,
+                now - 3 * DAY, now + 4 * DAY, false);
+
+        // 网关同步密钥集
+        TokenKeySet dispatcherSet = new TokenKeySet(keySet.toJSON());
+
+        TokenKeySet.Key second = keySet.rotate(now);
+        Assert.equals("testRotation (current)", true, second.id.equals(keySet.getCurrentKey().id));
+        String secondCode = SignedToken.sign(second, DOMAIN, APP_KEY, 50001002L, now, now + 7 * DAY, false);
+
+        // 轮换前签发的令牌仍然有效
+        Assert.equals("testRotation (old token)", true,
+                SignedToken.parse(firstCode).verify(keySet, null, now) == SignedToken.Verification.Valid);
+
+        // 网关未同步时新密钥未知，同步后有效
+        Assert.equals("testRotation (not synced)", true,
+                SignedToken.parse(secondCode).verify(dispatcherSet, null, now)
+                        == SignedToken.Verification.UnknownKey);
+        Assert.equals("testRotation (merge)", true, dispatcherSet.merge(keySet.toJSON()));
+        Assert.equals("testRotation (merge again)", false, dispatcherSet.merge(keySet.toJSON()));
+        Assert.equals("testRotation (synced)", true,
+                SignedToken.parse(secondCode).verify(dispatcherSet, null, now) == SignedToken.Verification.Valid);
+        Assert.equals("testRotation (dispatcher current)", true, second.id.equals(dispatcherSet.getCurrentKey().id));
+
+        // 超过保留期后旧密钥被删除
+        keySet.rotate(now + 4 * DAY);
+        Assert.equals("testRotation (retained)", 3, keySet.size());
+        keySet.rotate(now + 5 * DAY + 8 * DAY + HOUR);
+        Assert.equals("testRotation (purged)", true, null == keySet.getKey(first.id));
+        Assert.equals("testRotation (purged second)", true, null == keySet.getKey(second.id));
+    }
+
+    /**
+     * 过期。
+     */
+    public void testExpiry() {
+        long now = System.currentTimeMillis();
+        TokenKeySet keySet = new TokenKeySet(8 * DAY);
+        TokenKeySet.Key key = keySet.rotate(now);
+
+        String code = SignedToken.sign(key, DOMAIN, APP_KEY, 50001001L, now, now + HOUR, false);
+        SignedToken token = SignedToken.parse(code);
+        Assert.equals("testExpiry (valid)", true,
+                token.verify(keySet, null, now + HOUR - 1) == SignedToken.Verification.Valid);
+        Assert.equals("testExpiry (expired)", true,
+                token.verify(keySet, null, now + HOUR + 1) == SignedToken.Verification.Expired);
+    }
+
+    /**
+     * 吊销。
+     */
+    public void testRevocation() {
+        long now = System.currentTimeMillis();
+        TokenKeySet keySet = new TokenKeySet(8 * DAY);
+        TokenKeySet.Key key = keySet.rotate(now);
+
+        SignedToken revoked = SignedToken.parse(
+                SignedToken.sign(key, DOMAIN, APP_KEY, 50001001L, now, now + HOUR, false));
+        SignedToken kept = SignedToken.parse(
+                SignedToken.sign(key, DOMAIN, APP_KEY, 50001001L, now, now + DAY, false));
+
+        TokenRevocationList list = new TokenRevocationList();
+        Assert.equals("testRevocation (revoke)", true, list.revoke(revoked.getId(), revoked.getExpiry()));
+        Assert.equals("testRevocation (revoke again)", false, list.revoke(revoked.getId(), revoked.getExpiry()));
+
+        // 网关同步吊销列表
+        TokenRevocationList dispatcherList = new TokenRevocationList();
+        Assert.equals("testRevocation (merge)", true, dispatcherList.merge(list.toJSON()));
+        Assert.equals("testRevocation (revoked)", true,
+                revoked.verify(keySet, dispatcherList, now) == SignedToken.Verification.Revoked);
+        Assert.equals("testRevocation (kept)", true,
+                kept.verify(keySet, dispatcherList, now) == SignedToken.Verification.Valid);
+
+        // 令牌过期后记录被清理
+        Assert.equals("testRevocation (purge)", 1, dispatcherList.purge(now + HOUR + 1));
+        Assert.equals("testRevocation (size)", 0, dispatcherList.size());
+    }
+
+    /**
+     * 本地校验耗时。
+     */
+    public void benchmark() {
+        long now = System.currentTimeMillis();
+        TokenKeySet keySet = new TokenKeySet(8 * DAY);
+        TokenKeySet.Key key = keySet.rotate(now);
+        TokenRevocationList list = new TokenRevocationList();
+        String code = SignedToken.sign(key, DOMAIN, APP_KEY, 50001001L, now, now + DAY, false);
+
+        int loop = 200000;
+        for (int i = 0; i < loop / 10; ++i) {
+            SignedToken.parse(code).verify(keySet, list, now);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < loop; ++i) {
+            SignedToken.parse(code).verify(keySet, list, now);
+        }
+        long cost = (System.nanoTime() - start) / loop;
+
+        System.out.println("Signed token verification: " + cost + " ns/token (" + code.length() + " chars)");
+    }
+
+    public static void main(String[] args) {
+        SignedTokenTest test = new SignedTokenTest();
+        test.testSign();
+        test.testRotation();
+        test.testExpiry();
+        test.testRevocation();
+        test.benchmark();
+    }
+}
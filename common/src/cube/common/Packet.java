@@ -8,6 +8,7 @@ package cube.common;
 
 import cell.core.talk.dialect.ActionDialect;
 import cell.util.Utils;
+import cube.common.codec.BinaryCodec;
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -16,6 +17,11 @@ import org.json.JSONObject;
  */
 public class Packet implements JSONable {
 
+    /**
+     * 二进制编码负载的参数名。
+     */
+    public final static String BINARY_PARAM = "_bin";
+
     /**
      * 封包的唯一序号。
      */
@@ -39,7 +45,12 @@ public class Packet implements JSONable {
     public Packet(ActionDialect dialect) {
         this.name = dialect.getName();
         this.sn = dialect.getParamAsLong("sn");
-        this.data = dialect.getParamAsJson("data");
+        if (dialect.containsParam(BINARY_PARAM)) {
+            this.data = BinaryCodec.decode(dialect.getParam(BINARY_PARAM));
+        }
+        else {
+            this.data = dialect.getParamAsJson("data");
+        }
     }
 
     /**
@@ -101,6 +112,40 @@ public class Packet implements JSONable {
         return this.toJSON();
     }
 
+    /**
+     * 将动作方言里的 JSON 负载替换为二进制负载。
+     *
+     * @param dialect
+     * @return 如果发生了替换返回 {@code true} 。
+     */
+    public static boolean encodeBinary(ActionDialect dialect) {
+        if (!dialect.containsParam("sn") || !dialect.containsParam("data")) {
+            return false;
+        }
+
+        byte[] binary = BinaryCodec.encode(dialect.getParamAsJson("data"));
+        dialect.removeParam("data");
+        dialect.addParam(BINARY_PARAM, binary);
+        return true;
+    }
+
+    /**
+     * 将动作方言里的二进制负载还原为 JSON 负载。
+     *
+     * @param dialect
+     * @return 如果发生了还原返回 {@code true} 。
+     */
+    public static boolean decodeBinary(ActionDialect dialect) {
+        if (!dialect.containsParam(BINARY_PARAM)) {
+            return false;
+        }
+
+        JSONObject data = BinaryCodec.decode(dialect.getParam(BINARY_PARAM));
+        dialect.removeParam(BINARY_PARAM);
+        dialect.addParam("data", data);
+        return true;
+    }
+
     /**
      * 提取状态码。
      *
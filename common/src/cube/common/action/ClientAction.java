@@ -21,6 +21,8 @@ public enum ClientAction {
 
     InjectAuthToken("InjectAuthToken"),
 
+    TokenKeys("TokenKeys"),
+
     AddEventListener("AddEventListener"),
 
     RemoveEventListener("RemoveEventListener"),
@@ -121,6 +121,11 @@ public enum MultipointCommAction {
      */
     BroadcastAck("broadcastAck"),
 
+    /**
+     * 服务器按窗口聚合的活跃发言者更新。
+     */
+    ActiveSpeakers("activeSpeakers"),
+
     /**
      * 未知动作。
      */
@@ -0,0 +1,357 @@
+/*
+ * This source file is part of Cube.
+ *
+ * Copyright (c) 2023-2026 Ambrose Xu.
+ */
+
+package cube.common.codec;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 紧凑二进制编解码器。
+ * 将 JSON 数据树编码为变长整数描述的二进制格式，常用键名通过固定的键表进行索引，
+ * 未登记的键名在首次出现时写入原文，后续出现时按消息内的索引引用。
+ */
+public final class BinaryCodec {
+
+    /**
+     * 编码格式名称。
+     */
+    public final static String NAME = "binary";
+
+    /**
+     * 格式标识。
+     */
+    public final static byte MAGIC = (byte) 0xCB;
+
+    /**
+     * 格式版本。
+     */
+    public final static byte VERSION = 1;
+
+    private final static byte TYPE_NULL = 0;
+    private final static byte TYPE_FALSE = 1;
+    private final static byte TYPE_TRUE = 2;
+    private final static byte TYPE_INT = 3;
+    private final static byte TYPE_DOUBLE = 4;
+    private final static byte TYPE_STRING = 5;
+    private final static byte TYPE_OBJECT = 6;
+    private final static byte TYPE_ARRAY = 7;
+    private final static byte TYPE_DECIMAL = 8;
+    private final static byte TYPE_BIG_INTEGER = 9;
+
+    /**
+     * 键表。该表只允许在末尾追加新的键名，不允许修改已有键名的顺序。
+     */
+    private final static String[] SCHEMA = new String[] {
+            // Packet
+            "sn", "name", "data", "code",
+            // Entity
+            "id", "domain", "timestamp", "context",
+            // Message
+            "owner", "from", "to", "source", "lts", "rts", "state", "scope", "payload", "attachment",
+            "device", "sender", "group", "partner", "timestampPrecision",
+            // Contact / Device
+            "devices", "externalId", "namePY", "platform", "address", "port",
+            // FileLabel
+            "ownerId", "fileCode", "fileName", "fileSize", "fileType", "lastModified", "completedTime",
+            "expiryTime", "md5", "sha1", "fileURL", "fileSecureURL", "directURL", "externalURL",
+            // FileAttachment
+            "labels", "anchors", "compressed",
+            // Group
+            "tag", "creation", "lastActive", "members", "memberContacts",
+            // AuthToken
+            "cid", "appKey", "issue", "expiry", "description",
+            // 通用
+            "list", "total", "begin", "end", "type", "content", "text", "version", "token", "contact",
+            "contacts", "groups", "messages", "file", "files", "result", "parameter", "status"
+    };
+
+    private final static Map<String, Integer> SCHEMA_INDEX = new HashMap<>();
+
+    static {
+        for (int i = 0; i < SCHEMA.length; ++i) {
+            SCHEMA_INDEX.put(SCHEMA[i], i);
+        }
+    }
+
+    private BinaryCodec() {
+    }
+
+    /**
+     * 判断数据是否是二进制编码格式。
+     *
+     * @param data
+     * @return
+     */
+    public static boolean isBinary(byte[] data) {
+        return (null != data && data.length >= 2 && data[0] == MAGIC);
+    }
+
+    /**
+     * 将 JSON 对象编码为二进制数据。
+     *
+     * @param json
+     * @return
+     */
+    public static byte[] encode(JSONObject json) {
+        Writer writer = new Writer();
+        writer.out.write(MAGIC);
+        writer.out.write(VERSION);
+        writer.writeObject(json);
+        return writer.out.toByteArray();
+    }
+
+    /**
+     * 将二进制数据解码为 JSON 对象。
+     *
+     * @param data
+     * @return
+     * @throws IllegalArgumentException 数据格式错误时抛出。
+     */
+    public static JSONObject decode(byte[] data) {
+        if (!isBinary(data)) {
+            throw new IllegalArgumentException("Not binary codec data");
+        }
+        if (data[1] != VERSION) {
+            throw new IllegalArgumentException("Unsupported binary codec version: " + data[1]);
+        }
+
+        Reader reader = new Reader(data, 2);
+        byte type = reader.data[reader.pos++];
+        if (type != TYPE_OBJECT) {
+            throw new IllegalArgumentException("Root value is not an object");
+        }
+        return reader.readObject();
+    }
+
+    /**
+     * 编码器。
+     */
+    private static class Writer {
+
+        protected final ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+
+        protected final Map<String, Integer> keys = new HashMap<>();
+
+        protected Writer() {
+        }
+
+        protected void writeVarLong(long value) {
+            while ((value & ~0x7FL) != 0) {
+                this.out.write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            this.out.write((int) value);
+        }
+
+        protected void writeString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            this.writeVarLong(bytes.length);
+            this.out.write(bytes, 0, bytes.length);
+        }
+
+        protected void writeKey(String key) {
+            Integer index = SCHEMA_INDEX.get(key);
+            if (null == index) {
+                index = this.keys.get(key);
+            }
+
+            if (null != index) {
+                this.writeVarLong(((long) index) << 1);
+                return;
+            }
+
+            // 新键名，写入原文并登记
+            this.keys.put(key, SCHEMA.length + this.keys.size());
+            byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+            this.writeVarLong((((long) bytes.length) << 1) | 1);
+            this.out.write(bytes, 0, bytes.length);
+        }
+
+        protected void writeObject(JSONObject json) {
+            this.out.write(TYPE_OBJECT);
+            this.writeVarLong(json.length());
+            Iterator<String> iter = json.keys();
+            while (iter.hasNext()) {
+                String key = iter.next();
+                this.writeKey(key);
+                this.writeValue(json.opt(key));
+            }
+        }
+
+        protected void writeArray(JSONArray array) {
+            this.out.write(TYPE_ARRAY);
+            this.writeVarLong(array.length());
+            for (int i = 0; i < array.length(); ++i) {
+                this.writeValue(array.opt(i));
+            }
+        }
+
+        protected void writeValue(Object value) {
+            if (null == value || JSONObject.NULL.equals(value)) {
+                this.out.write(TYPE_NULL);
+            }
+            else if (value instanceof Boolean) {
+                this.out.write(((Boolean) value).booleanValue() ? TYPE_TRUE : TYPE_FALSE);
+            }
+            else if (value instanceof Integer || value instanceof Long
+                    || value instanceof Short || value instanceof Byte) {
+                long v = ((Number) value).longValue();
+                this.out.write(TYPE_INT);
+                // ZigZag
+                this.writeVarLong((v << 1) ^ (v >> 63));
+            }
+            else if (value instanceof Double || value instanceof Float) {
+                this.out.write(TYPE_DOUBLE);
+                long bits = Double.doubleToLongBits(((Number) value).doubleValue());
+                for (int i = 7; i >= 0; --i) {
+                    this.out.write((int) (bits >>> (i * 8)) & 0xFF);
+                }
+            }
+            else if (value instanceof BigInteger) {
+                this.out.write(TYPE_BIG_INTEGER);
+                this.writeString(value.toString());
+            }
+            else if (value instanceof BigDecimal) {
+                this.out.write(TYPE_DECIMAL);
+                this.writeString(value.toString());
+            }
+            else if (value instanceof JSONObject) {
+                this.writeObject((JSONObject) value);
+            }
+            else if (value instanceof JSONArray) {
+                this.writeArray((JSONArray) value);
+            }
+            else {
+                this.out.write(TYPE_STRING);
+                this.writeString(value.toString());
+            }
+        }
+    }
+
+    /**
+     * 解码器。
+     */
+    private static class Reader {
+
+        protected final byte[] data;
+
+        protected int pos;
+
+        protected final List<String> keys = new ArrayList<>();
+
+        protected Reader(byte[] data, int pos) {
+            this.data = data;
+            this.pos = pos;
+        }
+
+        protected long readVarLong() {
+            long result = 0;
+            int shift = 0;
+            while (shift < 64) {
+                byte b = this.data[this.pos++];
+                result |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+                shift += 7;
+            }
+            throw new IllegalArgumentException("Malformed varint");
+        }
+
+        protected String readString() {
+            int length = (int) this.readVarLong();
+            String value = new String(this.data, this.pos, length, StandardCharsets.UTF_8);
+            this.pos += length;
+            return value;
+        }
+
+        protected String readKey() {
+            long header = this.readVarLong();
+            if ((header & 1) == 0) {
+                int index = (int) (header >>> 1);
+                if (index < SCHEMA.length) {
+                    return SCHEMA[index];
+                }
+                return this.keys.get(index - SCHEMA.length);
+            }
+
+            int length = (int) (header >>> 1);
+            String key = new String(this.data, this.pos, length, StandardCharsets.UTF_8);
+            this.pos += length;
+            this.keys.add(key);
+            return key;
+        }
+
+        protected JSONObject readObject() {
+            int size = (int) this.readVarLong();
+            JSONObject json = new JSONObject();
+            for (int i = 0; i < size; ++i) {
+                String key = this.readKey();
+                json.put(key, this.readValue());
+            }
+            return json;
+        }
+
+        protected JSONArray readArray() {
+            int size = (int) this.readVarLong();
+            JSONArray array = new JSONArray();
+            for (int i = 0; i < size; ++i) {
+                array.put(this.readValue());
+            }
+            return array;
+        }
+
+        protected Object readValue() {
+            byte type = this.data[this.pos++];
+            switch (type) {
+                case TYPE_NULL:
+                    return JSONObject.NULL;
+                case TYPE_FALSE:
+                    return Boolean.FALSE;
+                case TYPE_TRUE:
+                    return Boolean.TRUE;
+                case TYPE_INT: {
+                    long raw = this.readVarLong();
+                    long v = (raw >>> 1) ^ -(raw & 1);
+                    if (v >= Integer.MIN_VALUE && v <= Integer.MAX_VALUE) {
+                        return (int) v;
+                    }
+                    return v;
+                }
+                case TYPE_DOUBLE: {
+                    long bits = 0;
+                    for (int i = 0; i < 8; ++i) {
+                        bits = (bits << 8) | (this.data[this.pos++] & 0xFF);
+                    }
+                    return Double.longBitsToDouble(bits);
+                }
+                case TYPE_STRING:
+                    return this.readString();
+                case TYPE_OBJECT:
+                    return this.readObject();
+                case TYPE_ARRAY:
+                    return this.readArray();
+                case TYPE_DECIMAL:
+                    return new BigDecimal(this.readString());
+                case TYPE_BIG_INTEGER:
+                    return new BigInteger(this.readString());
+                default:
+                    throw new IllegalArgumentException("Unknown value type: " + type);
+            }
+        }
+    }
+}
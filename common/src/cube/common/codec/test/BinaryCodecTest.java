@@ -0,0 +1,171 @@
+/*
+ * This source file is part of Cube.
+ *
+ * Copyright (c) 2023-2026 Ambrose Xu.
+ */
+
+package cube.common.codec.test;
+
+import cell.core.talk.dialect.ActionDialect;
+import cube.common.Packet;
+import cube.common.codec.BinaryCodec;
+import cube.common.entity.FileLabel;
+import cube.util.Assert;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * 二进制编解码器测试与基准。
+ */
+public class BinaryCodecTest {
+
+    private Random random = new Random(20260101L);
+
+    public BinaryCodecTest() {
+    }
+
+    /**
+     * 随机生成数据树进行往返编解码。
+     */
+    public void testRoundTrip() {
+        int failed = 0;
+        for (int i = 0; i < 10000; ++i) {
+            JSONObject json = this.randomObject(0);
+            JSONObject result = BinaryCodec.decode(BinaryCodec.encode(json));
+            if (!json.similar(result)) {
+                ++failed;
+                System.err.println("Round trip failed: " + json.toString());
+            }
+        }
+        Assert.equals("testRoundTrip", 0, failed);
+    }
+
+    /**
+     * 大数保持原有类型。
+     */
+    public void testBigNumber() {
+        JSONObject json = new JSONObject();
+        json.put("integer", new BigInteger("123456789012345678901234567890"));
+        json.put("decimal", new BigDecimal("3.14159265358979323846264338327950288"));
+        JSONObject result = BinaryCodec.decode(BinaryCodec.encode(json));
+        Assert.equals("testBigNumber (integer)", true, result.get("integer") instanceof BigInteger);
+        Assert.equals("testBigNumber (decimal)", true, result.get("decimal") instanceof BigDecimal);
+        Assert.equals("testBigNumber", true, json.similar(result));
+    }
+
+    /**
+     * 封包经由动作方言的往返编解码。
+     */
+    public void testPacket() {
+        JSONObject data = new JSONObject();
+        data.put("code", 0);
+        data.put("data", this.makeFileLabel().toJSON());
+        Packet packet = new Packet("getFile", data);
+
+        ActionDialect dialect = packet.toDialect();
+        Assert.equals("testPacket (encode)", true, Packet.encodeBinary(dialect));
+        Packet result = new Packet(dialect);
+        Assert.equals("testPacket", true, packet.data.toString().equals(result.data.toString()));
+        Assert.equals(packet.sn, result.sn);
+
+        // JSON 格式兼容
+        Packet fallback = new Packet(packet.toDialect());
+        Assert.equals("testPacket (JSON)", true, packet.data.toString().equals(fallback.data.toString()));
+    }
+
+    /**
+     * 比较 JSON 与二进制格式的字节数和耗时。
+     */
+    public void benchmark() {
+        JSONObject data = new JSONObject();
+        data.put("code", 0);
+        data.put("data", this.makeFileLabel().toJSON());
+        Packet packet = new Packet("getFile", data);
+        JSONObject json = packet.toJSON();
+
+        int loop = 100000;
+
+        // 预热
+        for (int i = 0; i < loop; ++i) {
+            new JSONObject(json.toString());
+            BinaryCodec.decode(BinaryCodec.encode(json));
+        }
+
+        long jsonBytes = json.toString().getBytes(StandardCharsets.UTF_8).length;
+        long start = System.nanoTime();
+        for (int i = 0; i < loop; ++i) {
+            byte[] bytes = json.toString().getBytes(StandardCharsets.UTF_8);
+            new JSONObject(new String(bytes, StandardCharsets.UTF_8));
+        }
+        long jsonTime = System.nanoTime() - start;
+
+        long binaryBytes = BinaryCodec.encode(json).length;
+        start = System.nanoTime();
+        for (int i = 0; i < loop; ++i) {
+            BinaryCodec.decode(BinaryCodec.encode(json));
+        }
+        long binaryTime = System.nanoTime() - start;
+
+        System.out.println("JSON   : " + jsonBytes + " bytes, " + (jsonTime / loop) + " ns/message");
+        System.out.println("Binary : " + binaryBytes + " bytes, " + (binaryTime / loop) + " ns/message");
+    }
+
+    private FileLabel makeFileLabel() {
+        FileLabel fileLabel = new FileLabel("shixincube.com", "a1b2c3d4e5f60718293a4b5c6d7e8f90",
+                50001001L, "avatar.png", 102400, System.currentTimeMillis(), System.currentTimeMillis(),
+                System.currentTimeMillis() + 30L * 24 * 60 * 60 * 1000);
+        fileLabel.setMD5Code("0cc175b9c0f1b6a831c399e269772661");
+        fileLabel.setSHA1Code("86f7e437faa5a7fce15d1ddcb9eaeaea377667b8");
+        return fileLabel;
+    }
+
+    private JSONObject randomObject(int depth) {
+        JSONObject json = new JSONObject();
+        int size = this.random.nextInt(6);
+        for (int i = 0; i < size; ++i) {
+            String key = (this.random.nextBoolean()) ? "code" : "k" + this.random.nextInt(4);
+            json.put(key, this.randomValue(depth + 1));
+        }
+        return json;
+    }
+
+    private Object randomValue(int depth) {
+        int type = this.random.nextInt(depth < 3 ? 8 : 6);
+        switch (type) {
+            case 0:
+                return JSONObject.NULL;
+            case 1:
+                return this.random.nextBoolean();
+            case 2:
+                return this.random.nextInt();
+            case 3:
+                return this.random.nextLong();
+            case 4:
+                return this.random.nextDouble() * 1000;
+            case 5:
+                return "值-" + this.random.nextInt(1000);
+            case 6:
+                return this.randomObject(depth);
+            default:
+                JSONArray array = new JSONArray();
+                int size = this.random.nextInt(4);
+                for (int i = 0; i < size; ++i) {
+                    array.put(this.randomValue(depth + 1));
+                }
+                return array;
+        }
+    }
+
+    public static void main(String[] args) {
+        BinaryCodecTest test = new BinaryCodecTest();
+        test.testRoundTrip();
+        test.testBigNumber();
+        test.testPacket();
+        test.benchmark();
+    }
+}
@@ -7,7 +7,9 @@
 package cube.core;
 
 import cell.util.log.Logger;
+import cube.plugin.HookMode;
 import cube.plugin.Plugin;
+import cube.plugin.PluginRegistration;
 import cube.plugin.PluginSystem;
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -22,8 +24,10 @@ import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * 插件管理器。
@@ -69,8 +73,12 @@ public class PluginManager {
                 }
 
                 for (Map.Entry<String, Plugin> e : desc.pluginMap.entrySet()) {
-                    ps.register(e.getKey(), e.getValue());
-                    Logger.i(this.getClass(), "Register plugin : #" + desc.module + " [" + e.getKey() + "] - " + e.getValue().getClass().getName());
+                    HookMode mode = desc.modeMap.get(e.getKey());
+                    Long timeout = desc.timeoutMap.get(e.getKey());
+                    boolean failClosed = desc.failClosedSet.contains(e.getKey());
+                    ps.register(e.getKey(), e.getValue(), mode, timeout, failClosed);
+                    Logger.i(this.getClass(), "Register plugin : #" + desc.module + " [" + e.getKey() + "] - "
+                            + e.getValue().getClass().getName() + " (" + mode.name + ")");
                 }
             }
 
@@ -150,6 +158,12 @@ public class PluginManager {
 
         protected Map<String, Plugin> pluginMap;
 
+        protected Map<String, HookMode> modeMap;
+
+        protected Map<String, Long> timeoutMap;
+
+        protected Set<String> failClosedSet;
+
         protected PluginDesc(JSONObject json) {
             try {
                 String filepath = json.getString("file");
@@ -158,6 +172,9 @@ public class PluginManager {
                     // 读取数据
                     this.module = json.getString("module");
                     this.pluginMap = new HashMap<>();
+                    this.modeMap = new HashMap<>();
+                    this.timeoutMap = new HashMap<>();
+                    this.failClosedSet = new HashSet<>();
 
                     URLClassLoader loader = new URLClassLoader(new URL[]{ file.toURI().toURL() });
 
@@ -172,6 +189,13 @@ public class PluginManager {
                             Class clazz = loader.loadClass(className);
                             Plugin plugin = (Plugin) clazz.getDeclaredConstructor().newInstance();
                             this.pluginMap.put(hook, plugin);
+                            // 执行模式及超时时长
+                            this.modeMap.put(hook, HookMode.parse(pluginJson.optString("mode", HookMode.Sync.name)));
+                            this.timeoutMap.put(hook, pluginJson.optLong("timeout", PluginRegistration.DEFAULT_TIMEOUT));
+                            // 校验类插件不可用时否决操作
+                            if (pluginJson.optBoolean("failClosed", false)) {
+                                this.failClosedSet.add(hook);
+                            }
                         } catch (ClassNotFoundException e) {
                             Logger.w(this.getClass(), "#PluginDesc", e);
                             continue;
@@ -30,6 +30,10 @@ public class FerryPort {
 
     public final static String Cleanup = "Cleanup";
 
+    public final static String ReconcileStorage = "ReconcileStorage";
+
+    public final static String ResumeFile = "ResumeFile";
+
     private FerryPort() {
     }
 }
@@ -7,8 +7,12 @@
 package cube.hub.event;
 
 import cube.common.entity.Contact;
+import org.json.JSONArray;
 import org.json.JSONObject;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * 联系人数据。
  */
@@ -18,24 +22,56 @@ public class ContactDataEvent extends WeChatEvent {
 
     private Contact contact;
 
+    /**
+     * 批量同步的通讯录数据。
+     */
+    private List<Contact> contacts;
+
     public ContactDataEvent(Contact account, Contact contact) {
         super(NAME, account);
         this.contact = contact;
     }
 
+    public ContactDataEvent(Contact account, List<Contact> contacts) {
+        super(NAME, account);
+        this.contacts = contacts;
+    }
+
     public ContactDataEvent(JSONObject json) {
         super(json);
-        this.contact = new Contact(json.getJSONObject("contact"));
+        if (json.has("contact")) {
+            this.contact = new Contact(json.getJSONObject("contact"));
+        }
+        if (json.has("contacts")) {
+            this.contacts = new ArrayList<>();
+            JSONArray array = json.getJSONArray("contacts");
+            for (int i = 0; i < array.length(); ++i) {
+                this.contacts.add(new Contact(array.getJSONObject(i)));
+            }
+        }
     }
 
     public Contact getContact() {
         return this.contact;
     }
 
+    public List<Contact> getContacts() {
+        return this.contacts;
+    }
+
     @Override
     public JSONObject toJSON() {
         JSONObject json = super.toJSON();
-        json.put("contact", this.contact.toJSON());
+        if (null != this.contact) {
+            json.put("contact", this.contact.toJSON());
+        }
+        if (null != this.contacts) {
+            JSONArray array = new JSONArray();
+            for (Contact contact : this.contacts) {
+                array.put(contact.toJSON());
+            }
+            json.put("contacts", array);
+        }
         return json;
     }
 }
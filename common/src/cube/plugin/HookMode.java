@@ -0,0 +1,45 @@
+/*
+ * This source file is part of Cube.
+ *
+ * Copyright (c) 2023-2026 Ambrose Xu.
+ */
+
+package cube.plugin;
+
+/**
+ * 插件在钩子上的执行模式。
+ */
+public enum HookMode {
+
+    /**
+     * 在调用线程上同步执行，插件结果返回给调用方，可用于否决操作。
+     */
+    Sync("sync"),
+
+    /**
+     * 在插件线程池上异步执行，调用方不等待结果。
+     */
+    Async("async"),
+
+    /**
+     * 异步执行，相同排序键的上下文按照触发顺序依次执行。
+     */
+    Ordered("ordered")
+
+    ;
+
+    public final String name;
+
+    HookMode(String name) {
+        this.name = name;
+    }
+
+    public static HookMode parse(String name) {
+        for (HookMode mode : HookMode.values()) {
+            if (mode.name.equalsIgnoreCase(name)) {
+                return mode;
+            }
+        }
+        return Sync;
+    }
+}
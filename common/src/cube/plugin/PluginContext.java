@@ -13,6 +13,11 @@ public abstract class PluginContext {
 
     private String key;
 
+    /**
+     * 有序执行模式下使用的排序键。
+     */
+    private String orderKey;
+
     protected Object parameter;
 
     public PluginContext() {
@@ -31,6 +36,24 @@ public abstract class PluginContext {
         return this.key;
     }
 
+    /**
+     * 设置排序键。以 {@link HookMode#Ordered} 模式注册的插件，相同排序键的上下文按触发顺序执行。
+     *
+     * @param orderKey
+     */
+    public void setOrderKey(String orderKey) {
+        this.orderKey = orderKey;
+    }
+
+    /**
+     * 获取排序键。
+     *
+     * @return 返回排序键，未设置时返回 {@code null} 值。
+     */
+    public String getOrderKey() {
+        return this.orderKey;
+    }
+
     public boolean hasParameter() {
         return (null != this.parameter);
     }
@@ -0,0 +1,131 @@
+/*
+ * This source file is part of Cube.
+ *
+ * Copyright (c) 2023-2026 Ambrose Xu.
+ */
+
+package cube.plugin;
+
+import cube.common.JSONable;
+import cube.util.CircuitBreaker;
+import cube.util.LatencyHistogram;
+import org.json.JSONObject;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 插件在钩子上的注册信息及运行统计。
+ */
+public class PluginRegistration implements JSONable {
+
+    /**
+     * 默认超时时长，不限时，插件在执行线程上直接执行。
+     */
+    public final static long DEFAULT_TIMEOUT = 0;
+
+    protected final String key;
+
+    protected final Plugin plugin;
+
+    protected final HookMode mode;
+
+    /**
+     * 执行超时时长，单位：毫秒。为 {@code 0} 时在执行线程上直接执行，不限制时长。
+     */
+    protected final long timeout;
+
+    /**
+     * 熔断、超时或者失败时是否否决操作。
+     */
+    protected final boolean failClosed;
+
+    protected final CircuitBreaker breaker;
+
+    protected final LatencyHistogram latency;
+
+    protected final AtomicLong failureCount = new AtomicLong(0);
+
+    protected final AtomicLong timeoutCount = new AtomicLong(0);
+
+    protected final AtomicLong droppedCount = new AtomicLong(0);
+
+    protected PluginRegistration(String key, Plugin plugin, HookMode mode, long timeout, boolean failClosed) {
+        this.key = key;
+        this.plugin = plugin;
+        this.mode = mode;
+        this.timeout = timeout;
+        this.failClosed = failClosed;
+        this.breaker = new CircuitBreaker(5, 30 * 1000);
+        this.latency = new LatencyHistogram();
+    }
+
+    public String getKey() {
+        return this.key;
+    }
+
+    public Plugin getPlugin() {
+        return this.plugin;
+    }
+
+    public HookMode getMode() {
+        return this.mode;
+    }
+
+    public long getTimeout() {
+        return this.timeout;
+    }
+
+    public boolean isFailClosed() {
+        return this.failClosed;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return this.breaker;
+    }
+
+    public LatencyHistogram getLatency() {
+        return this.latency;
+    }
+
+    public long getFailureCount() {
+        return this.failureCount.get();
+    }
+
+    public long getTimeoutCount() {
+        return this.timeoutCount.get();
+    }
+
+    public long getDroppedCount() {
+        return this.droppedCount.get();
+    }
+
+    @Override
+    public JSONObject toJSON() {
+        JSONObject json = new JSONObject();
+        json.put("key", this.key);
+        json.put("plugin", this.plugin.getClass().getName());
+        json.put("mode", this.mode.name);
+        json.put("timeout", this.timeout);
+        json.put("failClosed", this.failClosed);
+        json.put("latency", this.latency.toJSON());
+        json.put("failure", this.failureCount.get());
+        json.put("timeoutCount", this.timeoutCount.get());
+        json.put("dropped", this.droppedCount.get());
+        json.put("breaker", this.breaker.toJSON());
+        return json;
+    }
+
+    @Override
+    public JSONObject toCompactJSON() {
+        JSONObject json = new JSONObject();
+        json.put("key", this.key);
+        json.put("plugin", this.plugin.getClass().getName());
+        json.put("mode", this.mode.name);
+        json.put("latency", this.latency.toCompactJSON());
+        json.put("failure", this.failureCount.get());
+        json.put("timeoutCount", this.timeoutCount.get());
+        json.put("dropped", this.droppedCount.get());
+        json.put("breaker", this.breaker.getState().name());
+        return json;
+    }
+}
@@ -7,12 +7,22 @@
 package cube.plugin;
 
 import cell.util.log.Logger;
+import org.json.JSONArray;
 
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Vector;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * 插件系统。
@@ -21,6 +31,8 @@ import java.util.concurrent.ConcurrentHashMap;
  */
 public class PluginSystem<T extends Hook> {
 
+    public final static String NAME = "PluginSystem";
+
     /**
      * 是否使用 Lua 支持。
      */
@@ -34,7 +46,37 @@ public class PluginSystem<T extends Hook> {
     /**
      * 插件列表。
      */
-    private ConcurrentHashMap<String, List<Plugin>> plugins;
+    private ConcurrentHashMap<String, List<PluginRegistration>> plugins;
+
+    /**
+     * 异步插件任务队列容量。
+     */
+    private final static int QUEUE_CAPACITY = 10000;
+
+    /**
+     * 有序执行的通道数量。
+     */
+    private final static int ORDERED_LANES = 8;
+
+    /**
+     * 限时执行插件的最大线程数量。
+     */
+    private final static int MAX_INVOKER_THREADS = 64;
+
+    /**
+     * 异步插件执行器。
+     */
+    private static volatile ExecutorService executor;
+
+    /**
+     * 有序插件执行通道，相同排序键的任务总是进入同一通道。
+     */
+    private static volatile ExecutorService[] orderedLanes;
+
+    /**
+     * 限时执行插件的执行器，调用方在超时后不再等待插件返回。
+     */
+    private static volatile ExecutorService invoker;
 
     public PluginSystem() {
         this.hooks = new ConcurrentHashMap<>();
@@ -62,6 +104,23 @@ public class PluginSystem<T extends Hook> {
      */
     public static void unlaod() {
         Logger.i("PluginSystem", "Stop plugin system");
+
+        synchronized (PluginSystem.class) {
+            if (null != executor) {
+                executor.shutdown();
+                executor = null;
+            }
+            if (null != orderedLanes) {
+                for (ExecutorService lane : orderedLanes) {
+                    lane.shutdown();
+                }
+                orderedLanes = null;
+            }
+            if (null != invoker) {
+                invoker.shutdownNow();
+                invoker = null;
+            }
+        }
     }
 
     /**
@@ -95,31 +154,67 @@ public class PluginSystem<T extends Hook> {
     }
 
     /**
-     * 注册指定键的插件。
+     * 注册指定键的插件，插件在调用线程上同步执行，不限制执行时长。
      *
      * @param key
      * @param plugin
      */
     public void register(String key, Plugin plugin) {
-        List<Plugin> list = this.plugins.get(key);
-        if (null == list) {
-            list = new Vector<>();
-            this.plugins.put(key, list);
-        }
+        this.register(key, plugin, HookMode.Sync, PluginRegistration.DEFAULT_TIMEOUT, false);
+    }
 
-        if (list.contains(plugin)) {
-            return;
-        }
+    /**
+     * 以指定模式注册指定键的插件。
+     *
+     * @param key
+     * @param plugin
+     * @param mode
+     */
+    public void register(String key, Plugin plugin, HookMode mode) {
+        this.register(key, plugin, mode, PluginRegistration.DEFAULT_TIMEOUT, false);
+    }
 
-        (new Thread() {
-            @Override
-            public void run() {
-                // 调用 setup 进行准备
-                plugin.setup();
+    /**
+     * 以指定模式注册指定键的插件。
+     *
+     * @param key
+     * @param plugin
+     * @param mode
+     * @param timeout 插件执行超时时长，单位：毫秒。大于 {@code 0} 时插件在限时执行器上执行并启用熔断，超时的插件被中断并记为失败；为 {@code 0} 时在执行线程上直接执行。
+     */
+    public void register(String key, Plugin plugin, HookMode mode, long timeout) {
+        this.register(key, plugin, mode, timeout, false);
+    }
+
+    /**
+     * 以指定模式注册指定键的插件。
+     *
+     * @param key
+     * @param plugin
+     * @param mode
+     * @param timeout 插件执行超时时长，单位：毫秒。大于 {@code 0} 时插件在限时执行器上执行并启用熔断，超时的插件被中断并记为失败；为 {@code 0} 时在执行线程上直接执行。
+     * @param failClosed 插件熔断、超时或者失败时是否否决操作，用于校验类钩子。
+     */
+    public void register(String key, Plugin plugin, HookMode mode, long timeout, boolean failClosed) {
+        List<PluginRegistration> list = this.plugins.computeIfAbsent(key, (k) -> new CopyOnWriteArrayList<>());
+
+        synchronized (list) {
+            for (PluginRegistration registration : list) {
+                if (registration.plugin == plugin || registration.plugin.equals(plugin)) {
+                    return;
+                }
             }
-        }).start();
 
-        list.add(plugin);
+            (new Thread() {
+                @Override
+                public void run() {
+                    // 调用 setup 进行准备
+                    plugin.setup();
+                }
+            }).start();
+
+            list.add(new PluginRegistration(key, plugin, mode, timeout, failClosed));
+        }
     }
 
     /**
@@ -157,12 +252,22 @@ public class PluginSystem<T extends Hook> {
      * @param plugin
      */
     public void deregister(String key, Plugin plugin) {
-        List<Plugin> list = this.plugins.get(key);
+        List<PluginRegistration> list = this.plugins.get(key);
         if (null == list) {
             return;
         }
 
-        if (list.remove(plugin)) {
+        boolean removed = false;
+        synchronized (list) {
+            for (PluginRegistration registration : list) {
+                if (registration.plugin == plugin || registration.plugin.equals(plugin)) {
+                    removed = list.remove(registration);
+                    break;
+                }
+            }
+        }
+
+        if (removed) {
             (new Thread() {
                 @Override
                 public void run() {
@@ -175,28 +280,265 @@ public class PluginSystem<T extends Hook> {
     protected HookResult apply(String key, PluginContext context) {
         HookResult result = new HookResult();
 
-        List<Plugin> list = this.plugins.get(key);
+        List<PluginRegistration> list = this.plugins.get(key);
         if (null == list) {
             return result;
         }
 
-        for (Plugin plugin : list) {
-            HookResult hr = plugin.launch(context);
-            if (null != hr) {
-                result.add(hr);
+        for (PluginRegistration registration : list) {
+            switch (registration.mode) {
+                case Async:
+                    this.applyAsync(registration, context);
+                    break;
+                case Ordered:
+                    this.applyOrdered(registration, context);
+                    break;
+                default:
+                    HookResult hr = this.launch(registration, context);
+                    if (null != hr) {
+                        result.add(hr);
+                    }
+                    break;
             }
         }
         return result;
     }
 
+    private void applyAsync(PluginRegistration registration, PluginContext context) {
+        try {
+            getExecutor().execute(() -> {
+                launchQuietly(registration, context);
+            });
+        } catch (RejectedExecutionException e) {
+            registration.droppedCount.incrementAndGet();
+            Logger.w(this.getClass(), "#applyAsync - Plugin queue is full, drop: " + registration.key);
+        }
+    }
+
+    private void applyOrdered(PluginRegistration registration, PluginContext context) {
+        String orderKey = context.getOrderKey();
+        if (null == orderKey) {
+            orderKey = registration.key;
+        }
+
+        ExecutorService[] lanes = getOrderedLanes();
+        try {
+            // 通道队列已满时调用方等待，有序事件不丢弃
+            lanes[(orderKey.hashCode() & 0x7FFFFFFF) % lanes.length].execute(() -> {
+                launchQuietly(registration, context);
+            });
+        } catch (RejectedExecutionException e) {
+            // 仅在插件系统停止或者调用线程被中断时发生
+            registration.droppedCount.incrementAndGet();
+            Logger.w(this.getClass(), "#applyOrdered - Plugin lane is not available, drop: " + registration.key);
+        }
+    }
+
+    private void launchQuietly(PluginRegistration registration, PluginContext context) {
+        try {
+            this.launch(registration, context);
+        } catch (Throwable e) {
+            Logger.w(this.getClass(), "#launchQuietly - Plugin failed: " + registration.key + " - "
+                    + registration.plugin.getClass().getName(), e);
+        }
+    }
+
+    /**
+     * 执行插件并记录耗时。未设置超时时长的插件在当前线程上直接执行，异常抛给调用方。
+     * 设置了超时时长的插件在限时执行器上运行，超过超时时长未返回时中断插件，
+     * 超时和异常都记为熔断器失败，熔断器断开时跳过插件。
+     * 注册为否决失败的插件在跳过、超时或者失败时返回否决结果。
+     *
+     * @param registration
+     * @param context
+     * @return
+     */
+    private HookResult launch(PluginRegistration registration, PluginContext context) {
+        if (registration.timeout <= 0) {
+            long start = System.currentTimeMillis();
+            try {
+                return registration.plugin.launch(context);
+            } catch (RuntimeException | Error e) {
+                registration.failureCount.incrementAndGet();
+                throw e;
+            } finally {
+                registration.latency.record(System.currentTimeMillis() - start);
+            }
+        }
+
+        if (!registration.breaker.allow()) {
+            return registration.failClosed ? this.makeNotAllowed() : null;
+        }
+
+        long start = System.currentTimeMillis();
+        try {
+            HookResult result = this.invoke(registration, context);
+            registration.latency.record(System.currentTimeMillis() - start);
+            registration.breaker.success();
+            return result;
+        } catch (TimeoutException e) {
+            // 超时视为失败，持续超时的插件将被熔断
+            long elapsed = System.currentTimeMillis() - start;
+            registration.latency.record(elapsed);
+            registration.timeoutCount.incrementAndGet();
+            registration.breaker.failure();
+            Logger.w(this.getClass(), "#launch - Plugin timeout: " + registration.key + " - "
+                    + registration.plugin.getClass().getName() + " - " + elapsed + " ms");
+        } catch (InterruptedException e) {
+            // 调用线程被中断，不计入插件失败
+            registration.breaker.cancel();
+            Thread.currentThread().interrupt();
+        } catch (Throwable e) {
+            registration.latency.record(System.currentTimeMillis() - start);
+            registration.failureCount.incrementAndGet();
+            registration.breaker.failure();
+            Logger.w(this.getClass(), "#launch - Plugin failed: " + registration.key + " - "
+                    + registration.plugin.getClass().getName(), e);
+        }
+
+        return registration.failClosed ? this.makeNotAllowed() : null;
+    }
+
+    /**
+     * 在限时执行器上执行插件，等待不超过注册的超时时长。
+     *
+     * @param registration
+     * @param context
+     * @return
+     * @throws Throwable
+     */
+    private HookResult invoke(PluginRegistration registration, PluginContext context) throws Throwable {
+        Future<HookResult> future = null;
+        try {
+            future = getInvoker().submit(() -> registration.plugin.launch(context));
+        } catch (RejectedExecutionException e) {
+            // 执行线程耗尽时在当前线程上执行
+            Logger.w(this.getClass(), "#invoke - Invoker is busy, launch plugin on caller thread: "
+                    + registration.key);
+            return registration.plugin.launch(context);
+        }
+
+        try {
+            return future.get(registration.timeout, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            throw (null != e.getCause()) ? e.getCause() : e;
+        } catch (TimeoutException | InterruptedException e) {
+            future.cancel(true);
+            throw e;
+        }
+    }
+
+    private HookResult makeNotAllowed() {
+        HookResult result = new HookResult();
+        result.set(HookResultKeys.NOT_ALLOWED, Boolean.TRUE);
+        return result;
+    }
+
     public List<Plugin> getPlugins() {
         List<Plugin> list = new ArrayList<>();
-        for (List<Plugin> plugins : this.plugins.values()) {
-            list.addAll(plugins);
+        for (List<PluginRegistration> registrations : this.plugins.values()) {
+            for (PluginRegistration registration : registrations) {
+                list.add(registration.plugin);
+            }
         }
         return list;
     }
 
+    /**
+     * 返回插件注册信息及运行统计。
+     *
+     * @return
+     */
+    public List<PluginRegistration> getRegistrations() {
+        List<PluginRegistration> list = new ArrayList<>();
+        for (List<PluginRegistration> registrations : this.plugins.values()) {
+            list.addAll(registrations);
+        }
+        return list;
+    }
+
+    /**
+     * 返回插件运行统计数据。
+     *
+     * @return
+     */
+    public JSONArray getStatistics() {
+        JSONArray array = new JSONArray();
+        for (PluginRegistration registration : this.getRegistrations()) {
+            array.put(registration.toCompactJSON());
+        }
+        return array;
+    }
+
+    private static ExecutorService getExecutor() {
+        ExecutorService current = executor;
+        if (null == current) {
+            synchronized (PluginSystem.class) {
+                if (null == executor) {
+                    int size = Math.max(2, Runtime.getRuntime().availableProcessors());
+                    ThreadPoolExecutor pool = new ThreadPoolExecutor(size, size, 60L, TimeUnit.SECONDS,
+                            new ArrayBlockingQueue<>(QUEUE_CAPACITY));
+                    pool.allowCoreThreadTimeOut(true);
+                    executor = pool;
+                }
+                current = executor;
+            }
+        }
+        return current;
+    }
+
+    private static ExecutorService getInvoker() {
+        ExecutorService current = invoker;
+        if (null == current) {
+            synchronized (PluginSystem.class) {
+                if (null == invoker) {
+                    invoker = new ThreadPoolExecutor(0, MAX_INVOKER_THREADS, 60L, TimeUnit.SECONDS,
+                            new SynchronousQueue<>());
+                }
+                current = invoker;
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 有序通道的拒绝策略，等待队列空位后入队。
+     *
+     * @param task
+     * @param lane
+     */
+    private static void waitForLane(Runnable task, ThreadPoolExecutor lane) {
+        if (lane.isShutdown()) {
+            throw new RejectedExecutionException("Plugin lane is shutdown");
+        }
+
+        try {
+            lane.getQueue().put(task);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException(e);
+        }
+    }
+
+    private static ExecutorService[] getOrderedLanes() {
+        ExecutorService[] current = orderedLanes;
+        if (null == current) {
+            synchronized (PluginSystem.class) {
+                if (null == orderedLanes) {
+                    ExecutorService[] lanes = new ExecutorService[ORDERED_LANES];
+                    for (int i = 0; i < lanes.length; ++i) {
+                        // 通道线程常驻，队列满时阻塞调用方直到有空位
+                        lanes[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                                new ArrayBlockingQueue<>(QUEUE_CAPACITY), PluginSystem::waitForLane);
+                    }
+                    orderedLanes = lanes;
+                }
+                current = orderedLanes;
+            }
+        }
+        return current;
+    }
+
     /**
      * 从配置文件加载插件。
      *
@@ -8,6 +8,8 @@ package cube.processor;
 
 import cell.util.log.Logger;
 import cube.util.ConfigUtils;
+import cube.util.ProcessManager;
+import cube.util.ProcessTask;
 import org.json.JSONObject;
 
 import java.io.File;
@@ -23,8 +25,25 @@ import java.util.concurrent.atomic.AtomicBoolean;
  */
 public abstract class FFmpeg extends Processor {
 
+    public final static String TOOL_NAME = "FFmpeg";
+
+    /**
+     * 探测文件的超时时长。
+     */
+    private final static long PROBE_TIMEOUT = 60 * 1000L;
+
+    /**
+     * 转码时没有任何输出的最大时长。
+     */
+    private final static long IDLE_TIMEOUT = 5 * 60 * 1000L;
+
     private AtomicBoolean running;
 
+    /**
+     * 转码的超时时长。
+     */
+    private long timeout = 60 * 60 * 1000L;
+
     private String ffmpegCommand;
     private String ffprobeCommand;
 
@@ -44,6 +63,7 @@ public abstract class FFmpeg extends Processor {
                 Properties properties = ConfigUtils.readProperties(config.getAbsolutePath());
                 this.ffmpegCommand = properties.getProperty("ffmpeg", "/usr/bin/ffmpeg");
                 this.ffprobeCommand = properties.getProperty("ffprobe", "/usr/bin/ffprobe");
+                this.timeout = Long.parseLong(properties.getProperty("timeout", "3600")) * 1000L;
                 Logger.i(getClass(), "FFmpeg: " + this.ffmpegCommand);
             }
             else {
@@ -76,11 +96,6 @@ public abstract class FFmpeg extends Processor {
         commandLine.add("json");
         commandLine.add(filePath);
 
-        Process process = null;
-        ProcessBuilder pb = new ProcessBuilder(commandLine);
-        // 设置工作目录
-        pb.directory(getWorkPath().toFile());
-
         ProcessorContext context = new ProcessorContext() {
             @Override
             public JSONObject toJSON() {
@@ -104,31 +119,10 @@ public abstract class FFmpeg extends Processor {
             }
         };
 
-        int status = -1;
-        try {
-            process = pb.start();
-
-            this.running.set(true);
-
-            Runnable worker = this.buildInputStreamWorker(process.getInputStream(), context);
-            worker.run();
-
-            try {
-                status = process.waitFor();
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-        } finally {
-            if (null != process) {
-                process.destroy();
-            }
-
-            process = null;
-        }
-
+        this.running.set(true);
+        this.execute(new ProcessTask(TOOL_NAME, commandLine).setTimeout(PROBE_TIMEOUT), context, false);
         this.running.set(false);
+
         return context.toJSON();
     }
 
@@ -137,37 +131,16 @@ public abstract class FFmpeg extends Processor {
         commandLine.add(this.ffmpegCommand);
         commandLine.addAll(params);
 
-        int status = -1;
-
-        Process process = null;
-        ProcessBuilder pb = new ProcessBuilder(commandLine);
-        // 设置工作目录
-        pb.directory(getWorkPath().toFile());
-
-        try {
-            process = pb.start();
-
-            this.running.set(true);
-
-            Runnable worker = this.buildInputStreamWorker(process.getErrorStream(), context);
-            worker.run();
-
-            try {
-                status = process.waitFor();
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-        } finally {
-            if (null != process) {
-                process.destroy();
-            }
+        this.running.set(true);
+        ProcessManager.ProcessOutput output = this.execute(new ProcessTask(TOOL_NAME, commandLine)
+                .setTimeout(this.timeout).setIdleTimeout(IDLE_TIMEOUT), context, true);
+        this.running.set(false);
 
-            process = null;
+        if (!output.isCompleted()) {
+            return false;
         }
 
-        this.running.set(false);
+        int status = output.getStatus();
         return (0 == status || 1 == status);
     }
 }
@@ -7,6 +7,8 @@
 package cube.processor;
 
 import cell.util.log.Logger;
+import cube.util.ProcessManager;
+import cube.util.ProcessTask;
 
 import java.io.*;
 import java.nio.file.Path;
@@ -53,5 +55,37 @@ public abstract class Processor {
         return worker;
     }
 
+    /**
+     * 在进程管理器里执行任务，指定的输出流内容追加到上下文。
+     *
+     * @param task 进程任务。
+     * @param context 处理器上下文。
+     * @param errorOutput 是否追加标准错误输出，否则追加标准输出。
+     * @return 返回进程输出。
+     */
+    protected ProcessManager.ProcessOutput execute(ProcessTask task, ProcessorContext context, boolean errorOutput) {
+        if (null == task.getDirectory()) {
+            // 设置工作目录
+            task.setDirectory(this.workPath.toFile());
+        }
+
+        if (null != context) {
+            task.setLineListener(new ProcessTask.LineListener() {
+                @Override
+                public void onLine(String line, boolean error) {
+                    if (error == errorOutput) {
+                        context.appendStdOutput(line);
+                    }
+                }
+            });
+        }
+
+        ProcessManager.ProcessOutput output = ProcessManager.getInstance().run(task);
+        if (output.isKilled()) {
+            Logger.w(this.getClass(), "#execute - " + task.getTool() + " killed: " + output.getKillReason().name());
+        }
+        return output;
+    }
+
     public abstract void go(ProcessorContext context);
 }
@@ -39,7 +39,7 @@ public class AudioUtils {
         return Arrays.copyOfRange(wavData, 44, length);
     }
 
-    private static byte[] buildWavHeader(int pcmDataSize, int sampleRate, int sampleSizeInBits, int channels) {
+    public static byte[] buildWavHeader(int pcmDataSize, int sampleRate, int sampleSizeInBits, int channels) {
         ByteArrayOutputStream header = new ByteArrayOutputStream();
         try {
             writeString(header, "RIFF");
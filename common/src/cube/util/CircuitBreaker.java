@@ -0,0 +1,165 @@
+/*
+ * This source file is part of Cube.
+ *
+ * Copyright (c) 2023-2026 Ambrose Xu.
+ */
+
+package cube.util;
+
+import cube.common.JSONable;
+import org.json.JSONObject;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 熔断器。
+ * 连续失败次数达到阈值后断开，断开期间拒绝调用；冷却时间结束后放行一次试探调用，
+ * 试探成功则闭合，失败则重新断开。
+ */
+public class CircuitBreaker implements JSONable {
+
+    /**
+     * 熔断器状态。
+     */
+    public enum State {
+        /**
+         * 闭合，正常放行。
+         */
+        Closed,
+
+        /**
+         * 断开，拒绝调用。
+         */
+        Open,
+
+        /**
+         * 半开，放行试探调用。
+         */
+        HalfOpen
+    }
+
+    private final int failureThreshold;
+
+    private final long openDuration;
+
+    private volatile State state = State.Closed;
+
+    private final AtomicInteger consecutiveFailures = new AtomicInteger(0);
+
+    private volatile long openedTime = 0;
+
+    private final AtomicBoolean probing = new AtomicBoolean(false);
+
+    private final AtomicLong openCount = new AtomicLong(0);
+
+    private final AtomicLong rejectedCount = new AtomicLong(0);
+
+    /**
+     * 构造函数。
+     *
+     * @param failureThreshold 连续失败的阈值。
+     * @param openDuration 断开后的冷却时长，单位：毫秒。
+     */
+    public CircuitBreaker(int failureThreshold, long openDuration) {
+        this.failureThreshold = failureThreshold;
+        this.openDuration = openDuration;
+    }
+
+    /**
+     * 是否允许调用。
+     *
+     * @return 返回 {@code true} 表示允许调用，调用结束后必须调用 {@link #success()} 或 {@link #failure()} 。
+     */
+    public boolean allow() {
+        State current = this.state;
+        if (current == State.Closed) {
+            return true;
+        }
+
+        if (current == State.Open) {
+            if (System.currentTimeMillis() - this.openedTime < this.openDuration) {
+                this.rejectedCount.incrementAndGet();
+                return false;
+            }
+            this.state = State.HalfOpen;
+        }
+
+        // 半开状态只放行一次试探
+        if (this.probing.compareAndSet(false, true)) {
+            return true;
+        }
+
+        this.rejectedCount.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * 记录调用成功。
+     */
+    public void success() {
+        this.consecutiveFailures.set(0);
+        if (this.state != State.Closed) {
+            this.state = State.Closed;
+            this.probing.set(false);
+        }
+    }
+
+    /**
+     * 记录调用失败。
+     */
+    public void failure() {
+        int count = this.consecutiveFailures.incrementAndGet();
+        if (this.state == State.HalfOpen || count >= this.failureThreshold) {
+            if (this.state != State.Open) {
+                this.openCount.incrementAndGet();
+            }
+            this.openedTime = System.currentTimeMillis();
+            this.state = State.Open;
+            this.probing.set(false);
+        }
+    }
+
+    /**
+     * 放弃已放行的调用，既不记为成功也不记为失败。
+     * 用于本地原因中止的调用，半开状态下允许下一次试探。
+     */
+    public void cancel() {
+        if (this.state == State.HalfOpen) {
+            this.probing.set(false);
+        }
+    }
+
+    /**
+     * 重置为闭合状态。
+     */
+    public void reset() {
+        this.consecutiveFailures.set(0);
+        this.state = State.Closed;
+        this.probing.set(false);
+    }
+
+    public State getState() {
+        return this.state;
+    }
+
+    public long getRejectedCount() {
+        return this.rejectedCount.get();
+    }
+
+    @Override
+    public JSONObject toJSON() {
+        JSONObject json = new JSONObject();
+        json.put("state", this.state.name());
+        json.put("consecutiveFailures", this.consecutiveFailures.get());
+        json.put("openCount", this.openCount.get());
+        json.put("rejected", this.rejectedCount.get());
+        return json;
+    }
+
+    @Override
+    public JSONObject toCompactJSON() {
+        return this.toJSON();
+    }
+}
@@ -6,63 +6,464 @@
 
 package cube.util;
 
+import cell.util.log.Logger;
 import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.api.ContentResponse;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.json.JSONArray;
+import org.json.JSONObject;
 
-import java.util.Iterator;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
  * HTTP 客户端工厂。
+ * 每种用途共享一个配置好的客户端，客户端按目标地址限制连接数和排队请求数。
+ * 通过 {@link #send(Purpose, RequestBuilder)} 发送的请求按目标主机熔断，幂等请求在失败时按随机退避重试，
+ * 并记录每个目标地址的请求延迟和失败次数。
  */
 public final class HttpClientFactory {
 
+    public final static String NAME = "HttpClient";
+
+    /**
+     * 客户端用途。
+     */
+    public enum Purpose {
+        /**
+         * 一般请求。
+         */
+        General,
+
+        /**
+         * AIGC 单元和检索服务请求，响应时间较长。
+         */
+        AIGC,
+
+        /**
+         * 文件传输。
+         */
+        File
+    }
+
+    /**
+     * 请求构建器。每次尝试都会重新构建请求。
+     */
+    public interface RequestBuilder {
+
+        Request build(HttpClient client);
+    }
+
+    /**
+     * 延迟分布的上界，单位：毫秒。
+     */
+    private final static long[] LATENCY_BUCKETS = new long[] { 10, 50, 100, 250, 500, 1000, 2500, 5000, 10000 };
+
     private final static HttpClientFactory instance = new HttpClientFactory();
 
-    private ConcurrentLinkedQueue<HttpClient> queue;
+    private final ConcurrentHashMap<Purpose, Config> configs;
+
+    private final ConcurrentHashMap<Purpose, HttpClient> clients;
+
+    private final ConcurrentHashMap<String, Destination> destinations;
 
     private HttpClientFactory() {
-        this.queue = new ConcurrentLinkedQueue<>();
+        this.configs = new ConcurrentHashMap<>();
+        this.clients = new ConcurrentHashMap<>();
+        this.destinations = new ConcurrentHashMap<>();
+
+        this.configs.put(Purpose.General, new Config());
+
+        Config config = new Config();
+        config.maxConnectionsPerDestination = 128;
+        config.maxRequestsQueuedPerDestination = 2048;
+        // 非流式生成可能长时间没有数据，空闲超时不能短于最长的请求超时
+        config.idleTimeout = 10 * 60 * 1000;
+        this.configs.put(Purpose.AIGC, config);
+
+        config = new Config();
+        config.maxConnectionsPerDestination = 32;
+        config.connectTimeout = 10 * 1000;
+        this.configs.put(Purpose.File, config);
     }
 
     public static HttpClientFactory getInstance() {
         return HttpClientFactory.instance;
     }
 
-    public HttpClient borrowHttpClient() {
-        HttpClient client = this.queue.poll();
+    /**
+     * 设置指定用途的客户端配置。已创建的客户端将被停止，下次使用时按新配置创建。
+     *
+     * @param purpose 用途。
+     * @param config 配置。
+     */
+    public void configure(Purpose purpose, Config config) {
+        this.configs.put(purpose, config);
+
+        HttpClient client = this.clients.remove(purpose);
+        if (null != client) {
+            stopClient(client);
+        }
+    }
+
+    public Config getConfig(Purpose purpose) {
+        return this.configs.get(purpose);
+    }
+
+    /**
+     * 获取指定用途的共享客户端。调用者不能停止该客户端。
+     *
+     * @param purpose 用途。
+     * @return 返回已启动的客户端。
+     */
+    public HttpClient getHttpClient(Purpose purpose) {
+        HttpClient client = this.clients.get(purpose);
         if (null != client) {
-            if (!client.isStarted()) {
-                try {
-                    client.start();
-                } catch (Exception e) {
-                    e.printStackTrace();
+            return client;
+        }
+
+        synchronized (this.clients) {
+            client = this.clients.get(purpose);
+            if (null == client) {
+                client = this.createClient(purpose, this.configs.get(purpose));
+                this.clients.put(purpose, client);
+            }
+        }
+        return client;
+    }
+
+    /**
+     * 获取一般用途的共享客户端。
+     *
+     * @return
+     */
+    public HttpClient borrowHttpClient() {
+        return this.getHttpClient(Purpose.General);
+    }
+
+    /**
+     * 获取指定用途的共享客户端。
+     *
+     * @param purpose
+     * @return
+     */
+    public HttpClient borrowHttpClient(Purpose purpose) {
+        return this.getHttpClient(purpose);
+    }
+
+    /**
+     * 客户端是共享的，无需归还。保留该方法以兼容借用和归还的调用方式。
+     *
+     * @param client
+     */
+    public void returnHttpClient(HttpClient client) {
+        // Nothing
+    }
+
+    /**
+     * 发送请求并等待响应。
+     * 目标主机熔断时抛出原因为 {@link RejectedExecutionException} 的 {@link ExecutionException} 。
+     * 幂等请求在网络错误、超时以及 502、503、504 响应时重试。
+     * 请求的超时长于客户端空闲超时时，连接空闲超时按请求超时设置，避免长时间无数据的请求被提前中止。
+     * 请求超时记为目标主机的熔断失败，调用线程被中断或者本地排队拒绝时不记为失败。
+     *
+     * @param purpose 用途。
+     * @param builder 请求构建器。
+     * @return 返回响应。
+     * @throws InterruptedException
+     * @throws TimeoutException
+     * @throws ExecutionException
+     */
+    public ContentResponse send(Purpose purpose, RequestBuilder builder)
+            throws InterruptedException, TimeoutException, ExecutionException {
+        HttpClient client = this.getHttpClient(purpose);
+        Config config = this.configs.get(purpose);
+
+        int attempt = 0;
+        while (true) {
+            Request request = builder.build(client);
+            if (request.getTimeout() > 0 && request.getIdleTimeout() < 0 && client.getIdleTimeout() > 0
+                    && request.getTimeout() > client.getIdleTimeout()) {
+                request.idleTimeout(request.getTimeout(), TimeUnit.MILLISECONDS);
+            }
+
+            Destination destination = this.getDestination(request, config);
+            if (!destination.breaker.allow()) {
+                destination.rejected.incrementAndGet();
+                throw new ExecutionException(new RejectedExecutionException("Circuit breaker is open: "
+                        + destination.key));
+            }
+
+            boolean retryable = attempt < config.maxRetries && isIdempotent(request.getMethod());
+            long start = System.currentTimeMillis();
+            try {
+                ContentResponse response = request.send();
+                int status = response.getStatus();
+                if (status >= 500) {
+                    destination.breaker.failure();
+                    destination.record(System.currentTimeMillis() - start, false);
+                }
+                else {
+                    destination.breaker.success();
+                    destination.record(System.currentTimeMillis() - start, true);
+                }
+
+                if (retryable && (status == 502 || status == 503 || status == 504)) {
+                    destination.retries.incrementAndGet();
+                    backoff(config, attempt++);
+                    continue;
+                }
+
+                return response;
+            } catch (InterruptedException e) {
+                destination.breaker.cancel();
+                throw e;
+            } catch (TimeoutException e) {
+                // 请求超时记为失败，持续无响应的主机将被熔断
+                destination.breaker.failure();
+                destination.timeouts.incrementAndGet();
+                destination.record(System.currentTimeMillis() - start, false);
+                if (!retryable) {
+                    throw e;
+                }
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RejectedExecutionException) {
+                    // 本地排队已满
+                    destination.breaker.cancel();
+                    destination.rejected.incrementAndGet();
+                    throw e;
+                }
+
+                destination.breaker.failure();
+                destination.record(System.currentTimeMillis() - start, false);
+                if (!retryable) {
+                    throw e;
                 }
             }
-            return client;
+
+            destination.retries.incrementAndGet();
+            backoff(config, attempt++);
+        }
+    }
+
+    /**
+     * 获取统计数据。
+     *
+     * @return
+     */
+    public JSONObject getStatistics() {
+        JSONObject json = new JSONObject();
+
+        JSONObject clientsJson = new JSONObject();
+        for (Map.Entry<Purpose, HttpClient> e : this.clients.entrySet()) {
+            HttpClient client = e.getValue();
+            JSONObject clientJson = new JSONObject();
+            clientJson.put("maxConnectionsPerDestination", client.getMaxConnectionsPerDestination());
+            clientJson.put("maxRequestsQueuedPerDestination", client.getMaxRequestsQueuedPerDestination());
+            clientJson.put("destinations", client.getDestinations().size());
+            clientsJson.put(e.getKey().name(), clientJson);
         }
+        json.put("clients", clientsJson);
 
-        client = new HttpClient();
+        JSONObject destinationsJson = new JSONObject();
+        for (Destination destination : this.destinations.values()) {
+            destinationsJson.put(destination.key, destination.toJSON());
+        }
+        json.put("destinations", destinationsJson);
+        return json;
+    }
+
+    public void close() {
+        synchronized (this.clients) {
+            for (HttpClient client : this.clients.values()) {
+                stopClient(client);
+            }
+            this.clients.clear();
+        }
+    }
+
+    private HttpClient createClient(Purpose purpose, Config config) {
+        QueuedThreadPool threadPool = new QueuedThreadPool(config.maxThreads, 2);
+        threadPool.setName("http-" + purpose.name().toLowerCase());
+        threadPool.setDaemon(true);
+
+        HttpClient client = new HttpClient();
+        client.setExecutor(threadPool);
+        client.setMaxConnectionsPerDestination(config.maxConnectionsPerDestination);
+        client.setMaxRequestsQueuedPerDestination(config.maxRequestsQueuedPerDestination);
+        client.setConnectTimeout(config.connectTimeout);
+        client.setIdleTimeout(config.idleTimeout);
         try {
             client.start();
         } catch (Exception e) {
-            e.printStackTrace();
+            Logger.e(this.getClass(), "#createClient - " + purpose.name(), e);
         }
         return client;
     }
 
-    public void returnHttpClient(HttpClient client) {
-        this.queue.offer(client);
+    private Destination getDestination(Request request, Config config) {
+        String key = request.getScheme() + "://" + request.getHost() + ":" + request.getPort();
+        Destination destination = this.destinations.get(key);
+        if (null == destination) {
+            destination = new Destination(key, new CircuitBreaker(config.failureThreshold, config.openDuration));
+            Destination current = this.destinations.putIfAbsent(key, destination);
+            if (null != current) {
+                destination = current;
+            }
+        }
+        return destination;
     }
 
-    public void close() {
-        Iterator<HttpClient> iter = this.queue.iterator();
-        while (iter.hasNext()) {
-            try {
-                iter.next().stop();
-            } catch (Exception e) {
-                e.printStackTrace();
+    private static boolean isIdempotent(String method) {
+        return HttpMethod.GET.is(method) || HttpMethod.HEAD.is(method) || HttpMethod.OPTIONS.is(method)
+                || HttpMethod.PUT.is(method) || HttpMethod.DELETE.is(method);
+    }
+
+    /**
+     * 指数退避，在后一半区间内随机等待。
+     */
+    private static void backoff(Config config, int attempt) throws InterruptedException {
+        long delay = config.retryDelay << Math.min(attempt, 10);
+        long half = delay / 2;
+        Thread.sleep(half + ThreadLocalRandom.current().nextLong(half + 1));
+    }
+
+    private static void stopClient(HttpClient client) {
+        try {
+            client.stop();
+        } catch (Exception e) {
+            Logger.w(HttpClientFactory.class, "#stopClient", e);
+        }
+    }
+
+    /**
+     * 客户端配置。
+     */
+    public static class Config {
+
+        /**
+         * 每个目标地址的最大连接数。
+         */
+        public int maxConnectionsPerDestination = 64;
+
+        /**
+         * 每个目标地址的最大排队请求数。
+         */
+        public int maxRequestsQueuedPerDestination = 1024;
+
+        /**
+         * 连接超时，单位：毫秒。
+         */
+        public long connectTimeout = 5 * 1000;
+
+        /**
+         * 连接空闲超时，单位：毫秒。
+         */
+        public long idleTimeout = 60 * 1000;
+
+        /**
+         * 客户端线程池的最大线程数。
+         */
+        public int maxThreads = 64;
+
+        /**
+         * 幂等请求的最大重试次数。
+         */
+        public int maxRetries = 2;
+
+        /**
+         * 首次重试的退避时长，单位：毫秒。
+         */
+        public long retryDelay = 200;
+
+        /**
+         * 熔断的连续失败次数。
+         */
+        public int failureThreshold = 5;
+
+        /**
+         * 熔断后的冷却时长，单位：毫秒。
+         */
+        public long openDuration = 30 * 1000;
+
+        public Config() {
+        }
+    }
+
+    /**
+     * 目标地址的熔断器和统计数据。
+     */
+    private final static class Destination {
+
+        private final String key;
+
+        private final CircuitBreaker breaker;
+
+        private final AtomicLong requests = new AtomicLong(0);
+
+        private final AtomicLong failures = new AtomicLong(0);
+
+        private final AtomicLong retries = new AtomicLong(0);
+
+        private final AtomicLong rejected = new AtomicLong(0);
+
+        private final AtomicLong timeouts = new AtomicLong(0);
+
+        private final AtomicLong totalLatency = new AtomicLong(0);
+
+        private final AtomicLong maxLatency = new AtomicLong(0);
+
+        private final AtomicLongArray latencyBuckets = new AtomicLongArray(LATENCY_BUCKETS.length + 1);
+
+        private Destination(String key, CircuitBreaker breaker) {
+            this.key = key;
+            this.breaker = breaker;
+        }
+
+        private void record(long latency, boolean successful) {
+            this.requests.incrementAndGet();
+            if (!successful) {
+                this.failures.incrementAndGet();
+            }
+
+            this.totalLatency.addAndGet(latency);
+            long max = this.maxLatency.get();
+            while (latency > max && !this.maxLatency.compareAndSet(max, latency)) {
+                max = this.maxLatency.get();
+            }
+
+            int bucket = 0;
+            while (bucket < LATENCY_BUCKETS.length && latency > LATENCY_BUCKETS[bucket]) {
+                ++bucket;
+            }
+            this.latencyBuckets.incrementAndGet(bucket);
+        }
+
+        private JSONObject toJSON() {
+            long requests = this.requests.get();
+            JSONObject json = new JSONObject();
+            json.put("requests", requests);
+            json.put("failures", this.failures.get());
+            json.put("retries", this.retries.get());
+            json.put("rejected", this.rejected.get());
+            json.put("timeouts", this.timeouts.get());
+            json.put("avgLatency", (requests > 0) ? this.totalLatency.get() / requests : 0);
+            json.put("maxLatency", this.maxLatency.get());
+
+            JSONArray buckets = new JSONArray();
+            for (int i = 0; i < this.latencyBuckets.length(); ++i) {
+                JSONObject bucket = new JSONObject();
+                bucket.put("le", (i < LATENCY_BUCKETS.length) ? LATENCY_BUCKETS[i] : -1);
+                bucket.put("count", this.latencyBuckets.get(i));
+                buckets.put(bucket);
             }
+            json.put("latency", buckets);
+            json.put("breaker", this.breaker.toJSON());
+            return json;
         }
-        this.queue.clear();
     }
 }
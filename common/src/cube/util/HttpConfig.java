@@ -6,6 +6,9 @@
 
 package cube.util;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * HTTP 配置信息。
  */
@@ -20,4 +23,38 @@ public class HttpConfig {
     public int maxThreads = 32;
     public int minThreads = 8;
 
+    public int maxQueued = 1024;
+
+    public boolean gzipEnabled = true;
+    public int gzipMinSize = 1024;
+    public String[] gzipMimeTypes = null;
+
+    public List<PriorityClass> priorityClasses = new ArrayList<>();
+
+    /**
+     * 请求优先级分类配置。
+     */
+    public static class PriorityClass {
+
+        public String name;
+        public String[] paths;
+        public String[] methods;
+        public int maxConcurrent;
+        public int maxQueued;
+        public long queueTimeout;
+
+        public PriorityClass(String name, String[] paths, int maxConcurrent, int maxQueued, long queueTimeout) {
+            this.name = name;
+            this.paths = paths;
+            this.maxConcurrent = maxConcurrent;
+            this.maxQueued = maxQueued;
+            this.queueTimeout = queueTimeout;
+        }
+
+        public PriorityClass(String name, String[] methods, String[] paths, int maxConcurrent, int maxQueued,
+                             long queueTimeout) {
+            this(name, paths, maxConcurrent, maxQueued, queueTimeout);
+            this.methods = methods;
+        }
+    }
 }
@@ -0,0 +1,460 @@
+/*
+ * This source file is part of Cube.
+ *
+ * Copyright (c) 2023-2026 Ambrose Xu.
+ */
+
+package cube.util;
+
+import cell.util.log.Logger;
+import cube.common.JSONable;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.HandlerWrapper;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.DispatcherType;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按优先级分类的 HTTP 请求准入控制。
+ * 每个分类按请求方法和上下文路径前缀匹配请求，限制并发处理数量。超过并发数的请求挂起排队，
+ * 队列满或者排队超时时返回 503 并携带 Retry-After 头。未匹配任何分类的请求不受限制。
+ * 处理过程中转为异步的请求在异步处理结束时才释放许可。
+ */
+public class HttpLoadShedder extends HandlerWrapper {
+
+    private final static String ATTR_ADMITTED = "cube.util.HttpLoadShedder.admitted";
+
+    /**
+     * 按路径前缀长度降序排列的分类。
+     */
+    private final List<PriorityClass> classes;
+
+    public HttpLoadShedder() {
+        this.classes = new CopyOnWriteArrayList<>();
+    }
+
+    /**
+     * 添加优先级分类。
+     *
+     * @param name 分类名称。
+     * @param maxConcurrent 最大并发处理数量。
+     * @param maxQueued 最大排队数量。
+     * @param queueTimeout 最长排队时间，单位：毫秒。
+     * @param pathPrefixes 匹配的路径前缀。
+     * @return 返回分类实例。
+     */
+    public PriorityClass addPriorityClass(String name, int maxConcurrent, int maxQueued,
+                                          long queueTimeout, String... pathPrefixes) {
+        return this.addPriorityClass(name, maxConcurrent, maxQueued, queueTimeout, null, pathPrefixes);
+    }
+
+    /**
+     * 添加限定请求方法的优先级分类。
+     *
+     * @param name 分类名称。
+     * @param maxConcurrent 最大并发处理数量。
+     * @param maxQueued 最大排队数量。
+     * @param queueTimeout 最长排队时间，单位：毫秒。
+     * @param methods 匹配的请求方法，为空时匹配所有方法。
+     * @param pathPrefixes 匹配的路径前缀。
+     * @return 返回分类实例。
+     */
+    public synchronized PriorityClass addPriorityClass(String name, int maxConcurrent, int maxQueued,
+                                                       long queueTimeout, String[] methods,
+                                                       String... pathPrefixes) {
+        PriorityClass priorityClass = new PriorityClass(name, Math.max(1, maxConcurrent),
+                Math.max(0, maxQueued), Math.max(1, queueTimeout), methods, pathPrefixes);
+
+        List<PriorityClass> list = new ArrayList<>(this.classes);
+        list.add(priorityClass);
+        list.sort((c1, c2) -> c2.longestPrefix() - c1.longestPrefix());
+        this.classes.clear();
+        this.classes.addAll(list);
+        return priorityClass;
+    }
+
+    public List<PriorityClass> getPriorityClasses() {
+        return new ArrayList<>(this.classes);
+    }
+
+    /**
+     * 匹配请求方法和路径对应的分类。
+     *
+     * @param method
+     * @param path
+     * @return 未匹配时返回 {@code null} 。
+     */
+    public PriorityClass match(String method, String path) {
+        if (null == path) {
+            return null;
+        }
+
+        PriorityClass result = null;
+        int length = -1;
+        for (PriorityClass priorityClass : this.classes) {
+            if (!priorityClass.matchMethod(method)) {
+                continue;
+            }
+
+            for (String prefix : priorityClass.pathPrefixes) {
+                if (prefix.length() > length && path.startsWith(prefix)) {
+                    result = priorityClass;
+                    length = prefix.length();
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void handle(String target, Request baseRequest, HttpServletRequest request,
+                       HttpServletResponse response) throws IOException, ServletException {
+        Object admitted = request.getAttribute(ATTR_ADMITTED);
+        if (admitted instanceof PriorityClass) {
+            // 排队的请求已获得处理许可
+            request.removeAttribute(ATTR_ADMITTED);
+            this.process((PriorityClass) admitted, target, baseRequest, request, response);
+            return;
+        }
+
+        if (request.getDispatcherType() != DispatcherType.REQUEST) {
+            super.handle(target, baseRequest, request, response);
+            return;
+        }
+
+        PriorityClass priorityClass = this.match(request.getMethod(), target);
+        if (null == priorityClass) {
+            super.handle(target, baseRequest, request, response);
+            return;
+        }
+
+        Admission admission = priorityClass.admit(request);
+        if (Admission.Admitted == admission) {
+            this.process(priorityClass, target, baseRequest, request, response);
+        }
+        else if (Admission.Queued == admission) {
+            baseRequest.setHandled(true);
+        }
+        else {
+            priorityClass.reject(response);
+            baseRequest.setHandled(true);
+        }
+    }
+
+    private void process(PriorityClass priorityClass, String target, Request baseRequest,
+                         HttpServletRequest request, HttpServletResponse response)
+            throws IOException, ServletException {
+        boolean async = false;
+        try {
+            super.handle(target, baseRequest, request, response);
+            async = request.isAsyncStarted();
+        } finally {
+            if (async) {
+                // 异步处理的请求在结束时释放许可
+                try {
+                    request.getAsyncContext().addListener(new Releaser(priorityClass));
+                } catch (IllegalStateException e) {
+                    // 异步处理已经结束
+                    priorityClass.release();
+                }
+            }
+            else {
+                priorityClass.release();
+            }
+        }
+    }
+
+    /**
+     * 返回统计数据。
+     *
+     * @return
+     */
+    public JSONArray toJSON() {
+        JSONArray array = new JSONArray();
+        for (PriorityClass priorityClass : this.classes) {
+            array.put(priorityClass.toJSON());
+        }
+        return array;
+    }
+
+    /**
+     * 异步请求结束时释放许可。
+     */
+    private static class Releaser implements AsyncListener {
+
+        private final PriorityClass priorityClass;
+
+        private final AtomicBoolean released = new AtomicBoolean(false);
+
+        private Releaser(PriorityClass priorityClass) {
+            this.priorityClass = priorityClass;
+        }
+
+        private void release() {
+            if (this.released.compareAndSet(false, true)) {
+                this.priorityClass.release();
+            }
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) throws IOException {
+            this.release();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) throws IOException {
+            this.release();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) throws IOException {
+            this.release();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) throws IOException {
+            // 再次开始异步处理时监听器被清除，需要重新注册
+            event.getAsyncContext().addListener(this);
+        }
+    }
+
+    /**
+     * 准入结果。
+     */
+    protected enum Admission {
+        Admitted,
+        Queued,
+        Rejected
+    }
+
+    /**
+     * 优先级分类。
+     */
+    public static class PriorityClass implements JSONable {
+
+        public final String name;
+
+        public final String[] pathPrefixes;
+
+        public final String[] methods;
+
+        public final int maxConcurrent;
+
+        public final int maxQueued;
+
+        public final long queueTimeout;
+
+        private int active = 0;
+
+        private final ArrayDeque<Waiting> queue = new ArrayDeque<>();
+
+        private final AtomicLong admitted = new AtomicLong(0);
+
+        private final AtomicLong rejected = new AtomicLong(0);
+
+        private final AtomicLong timeouts = new AtomicLong(0);
+
+        /**
+         * 排队等待时间。
+         */
+        private final LatencyHistogram waiting = new LatencyHistogram();
+
+        protected PriorityClass(String name, int maxConcurrent, int maxQueued, long queueTimeout,
+                                String[] methods, String[] pathPrefixes) {
+            this.name = name;
+            this.maxConcurrent = maxConcurrent;
+            this.maxQueued = maxQueued;
+            this.queueTimeout = queueTimeout;
+            this.methods = (null == methods) ? new String[0] : methods;
+            this.pathPrefixes = (null == pathPrefixes) ? new String[0] : pathPrefixes;
+        }
+
+        protected boolean matchMethod(String method) {
+            if (this.methods.length == 0) {
+                return true;
+            }
+
+            for (String value : this.methods) {
+                if (value.equalsIgnoreCase(method)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        protected int longestPrefix() {
+            int length = 0;
+            for (String prefix : this.pathPrefixes) {
+                length = Math.max(length, prefix.length());
+            }
+            return length;
+        }
+
+        public synchronized int numActive() {
+            return this.active;
+        }
+
+        public synchronized int numQueued() {
+            return this.queue.size();
+        }
+
+        public long getRejected() {
+            return this.rejected.get();
+        }
+
+        public long getAdmitted() {
+            return this.admitted.get();
+        }
+
+        public LatencyHistogram getWaiting() {
+            return this.waiting;
+        }
+
+        /**
+         * 返回建议的重试间隔，单位：秒。
+         *
+         * @return
+         */
+        public long getRetryAfter() {
+            return Math.max(1, (this.queueTimeout + 999) / 1000);
+        }
+
+        protected synchronized Admission admit(HttpServletRequest request) {
+            if (this.active < this.maxConcurrent) {
+                ++this.active;
+                this.admitted.incrementAndGet();
+                this.waiting.record(0);
+                return Admission.Admitted;
+            }
+
+            if (this.queue.size() >= this.maxQueued) {
+                this.rejected.incrementAndGet();
+                return Admission.Rejected;
+            }
+
+            AsyncContext async = request.startAsync();
+            async.setTimeout(this.queueTimeout);
+            Waiting waiting = new Waiting(async);
+            async.addListener(waiting);
+            this.queue.add(waiting);
+            return Admission.Queued;
+        }
+
+        protected void release() {
+            while (true) {
+                Waiting next = null;
+                synchronized (this) {
+                    next = this.queue.poll();
+                    if (null == next) {
+                        --this.active;
+                        return;
+                    }
+                }
+
+                // 将许可转交给排队的请求
+                try {
+                    next.async.getRequest().setAttribute(ATTR_ADMITTED, this);
+                    next.async.dispatch();
+                    this.admitted.incrementAndGet();
+                    this.waiting.record(System.currentTimeMillis() - next.timestamp);
+                    return;
+                } catch (IllegalStateException e) {
+                    // 请求已超时或者已关闭，继续处理下一个
+                }
+            }
+        }
+
+        protected void reject(HttpServletResponse response) {
+            try {
+                response.setHeader("Retry-After", Long.toString(this.getRetryAfter()));
+                response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            } catch (IOException | IllegalStateException e) {
+                Logger.d(HttpLoadShedder.class, "#reject - " + e.getMessage());
+            }
+        }
+
+        private synchronized boolean remove(Waiting waiting) {
+            return this.queue.remove(waiting);
+        }
+
+        @Override
+        public JSONObject toJSON() {
+            JSONObject json = this.toCompactJSON();
+            json.put("waiting", this.waiting.toJSON());
+            return json;
+        }
+
+        @Override
+        public JSONObject toCompactJSON() {
+            JSONObject json = new JSONObject();
+            json.put("name", this.name);
+            if (this.methods.length > 0) {
+                json.put("methods", new JSONArray(this.methods));
+            }
+            json.put("maxConcurrent", this.maxConcurrent);
+            json.put("maxQueued", this.maxQueued);
+            synchronized (this) {
+                json.put("active", this.active);
+                json.put("queued", this.queue.size());
+            }
+            json.put("admitted", this.admitted.get());
+            json.put("rejected", this.rejected.get());
+            json.put("timeouts", this.timeouts.get());
+            return json;
+        }
+
+        /**
+         * 排队的请求。
+         */
+        private class Waiting implements AsyncListener {
+
+            private final AsyncContext async;
+
+            private final long timestamp;
+
+            private Waiting(AsyncContext async) {
+                this.async = async;
+                this.timestamp = System.currentTimeMillis();
+            }
+
+            @Override
+            public void onTimeout(AsyncEvent event) throws IOException {
+                if (remove(this)) {
+                    timeouts.incrementAndGet();
+                    rejected.incrementAndGet();
+                    reject((HttpServletResponse) this.async.getResponse());
+                    this.async.complete();
+                }
+            }
+
+            @Override
+            public void onError(AsyncEvent event) throws IOException {
+                remove(this);
+            }
+
+            @Override
+            public void onComplete(AsyncEvent event) throws IOException {
+                // Nothing
+            }
+
+            @Override
+            public void onStartAsync(AsyncEvent event) throws IOException {
+                // Nothing
+            }
+        }
+    }
+}
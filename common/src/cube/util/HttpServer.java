@@ -11,8 +11,11 @@ import org.eclipse.jetty.server.*;
 import org.eclipse.jetty.server.handler.ContextHandler;
 import org.eclipse.jetty.server.handler.ContextHandlerCollection;
 import org.eclipse.jetty.server.handler.HandlerList;
+import org.eclipse.jetty.server.handler.gzip.GzipHandler;
+import org.eclipse.jetty.util.BlockingArrayQueue;
 import org.eclipse.jetty.util.ssl.SslContextFactory;
-import org.eclipse.jetty.util.thread.ExecutorThreadPool;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.json.JSONObject;
 
 import java.io.FileNotFoundException;
 import java.nio.file.Files;
@@ -42,12 +45,31 @@ public class HttpServer {
 
     private int minThreads = 4;
 
+    /**
+     * 线程池任务队列上限。
+     */
+    private int maxQueued = 1024;
+
+    private boolean gzipEnabled = true;
+
+    private int gzipMinSize = 1024;
+
+    private String[] gzipMimeTypes = new String[] {
+            "application/json", "application/javascript", "application/xml",
+            "text/html", "text/plain", "text/css", "text/javascript", "text/xml"
+    };
+
+    private QueuedThreadPool threadPool;
+
+    private HttpLoadShedder loadShedder;
+
     private List<ContextHandler> handlers;
 
     private HandlerList handlerList;
 
     public HttpServer() {
         this.handlers = new ArrayList<>();
+        this.loadShedder = new HttpLoadShedder();
     }
 
     public void setKeystorePath(String path) throws FileNotFoundException {
@@ -74,6 +96,67 @@ public class HttpServer {
         this.minThreads = minThreads > 0 ? minThreads : 4;
     }
 
+    /**
+     * 设置线程池任务队列上限。队列满时新的连接任务被拒绝。
+     *
+     * @param maxQueued
+     */
+    public void setMaxQueued(int maxQueued) {
+        this.maxQueued = maxQueued > 0 ? maxQueued : 1024;
+    }
+
+    /**
+     * 设置响应压缩。
+     *
+     * @param enabled 是否启用压缩。
+     * @param minSize 启用压缩的最小响应长度。
+     * @param mimeTypes 需要压缩的 MIME 类型，为 {@code null} 时使用默认类型。
+     */
+    public void setGzip(boolean enabled, int minSize, String[] mimeTypes) {
+        this.gzipEnabled = enabled;
+        this.gzipMinSize = minSize >= 0 ? minSize : 1024;
+        if (null != mimeTypes && mimeTypes.length > 0) {
+            this.gzipMimeTypes = mimeTypes;
+        }
+    }
+
+    /**
+     * 添加请求优先级分类。
+     *
+     * @param name 分类名称。
+     * @param maxConcurrent 最大并发处理数量。
+     * @param maxQueued 最大排队数量。
+     * @param queueTimeout 最长排队时间，单位：毫秒。
+     * @param pathPrefixes 匹配的上下文路径前缀。
+     * @return
+     */
+    public HttpLoadShedder.PriorityClass addPriorityClass(String name, int maxConcurrent, int maxQueued,
+                                                          long queueTimeout, String... pathPrefixes) {
+        return this.loadShedder.addPriorityClass(name, maxConcurrent, maxQueued, queueTimeout, pathPrefixes);
+    }
+
+    /**
+     * 添加限定请求方法的请求优先级分类。
+     *
+     * @param name 分类名称。
+     * @param maxConcurrent 最大并发处理数量。
+     * @param maxQueued 最大排队数量。
+     * @param queueTimeout 最长排队时间，单位：毫秒。
+     * @param methods 匹配的请求方法，为空时匹配所有方法。
+     * @param pathPrefixes 匹配的上下文路径前缀。
+     * @return
+     */
+    public HttpLoadShedder.PriorityClass addPriorityClass(String name, int maxConcurrent, int maxQueued,
+                                                          long queueTimeout, String[] methods,
+                                                          String... pathPrefixes) {
+        return this.loadShedder.addPriorityClass(name, maxConcurrent, maxQueued, queueTimeout, methods,
+                pathPrefixes);
+    }
+
+    public HttpLoadShedder getLoadShedder() {
+        return this.loadShedder;
+    }
+
     public void addContextHandler(ContextHandler handler) {
         this.handlers.add(handler);
     }
@@ -133,8 +216,11 @@ public class HttpServer {
         this.plainPort = plainPort;
         this.securePort = securePort;
 
-        ExecutorThreadPool executorThreadPool = new ExecutorThreadPool(this.maxThreads, this.minThreads);
-        this.server = new Server(executorThreadPool);
+        // 使用有界任务队列，避免过载时无限排队
+        this.threadPool = new QueuedThreadPool(this.maxThreads, this.minThreads, 60000,
+                new BlockingArrayQueue<>(Math.min(this.maxQueued, 256), 256, this.maxQueued));
+        this.threadPool.setName("HttpServer");
+        this.server = new Server(this.threadPool);
 
         ServerConnector https = null;
 
@@ -189,8 +275,21 @@ public class HttpServer {
             }
         }
 
+        // 准入控制
+        this.loadShedder.setHandler(contexts);
+
         // 设置处理句柄
-        this.server.setHandler(contexts);
+        if (this.gzipEnabled) {
+            GzipHandler gzipHandler = new GzipHandler();
+            gzipHandler.setMinGzipSize(this.gzipMinSize);
+            gzipHandler.setIncludedMimeTypes(this.gzipMimeTypes);
+            gzipHandler.setIncludedMethods("GET", "POST");
+            gzipHandler.setHandler(this.loadShedder);
+            this.server.setHandler(gzipHandler);
+        }
+        else {
+            this.server.setHandler(this.loadShedder);
+        }
 
 //        if (null != this.handlerList) {
 //            this.server.setHandler(this.handlerList);
@@ -235,6 +334,26 @@ public class HttpServer {
         this.server = null;
     }
 
+    /**
+     * 返回线程池和准入控制的统计数据。
+     *
+     * @return
+     */
+    public JSONObject getMetrics() {
+        JSONObject json = new JSONObject();
+        QueuedThreadPool pool = this.threadPool;
+        if (null != pool) {
+            json.put("threads", pool.getThreads());
+            json.put("idleThreads", pool.getIdleThreads());
+            json.put("busyThreads", pool.getBusyThreads());
+            json.put("queueSize", pool.getQueueSize());
+        }
+        json.put("maxThreads", this.maxThreads);
+        json.put("maxQueued", this.maxQueued);
+        json.put("classes", this.loadShedder.toJSON());
+        return json;
+    }
+
     public int getPlainPort() {
         return this.plainPort;
     }
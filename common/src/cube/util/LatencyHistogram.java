@@ -0,0 +1,127 @@
+/*
+ * This source file is part of Cube.
+ *
+ * Copyright (c) 2023-2026 Ambrose Xu.
+ */
+
+package cube.util;
+
+import cube.common.JSONable;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 固定分桶的耗时直方图。
+ */
+public class LatencyHistogram implements JSONable {
+
+    /**
+     * 分桶上界，单位：毫秒。最后一个桶记录超过全部上界的数据。
+     */
+    private final static long[] BOUNDS = new long[] { 1, 5, 10, 50, 100, 500, 1000, 5000 };
+
+    private final AtomicLongArray buckets;
+
+    private final AtomicLong count = new AtomicLong(0);
+
+    private final AtomicLong total = new AtomicLong(0);
+
+    private final AtomicLong max = new AtomicLong(0);
+
+    public LatencyHistogram() {
+        this.buckets = new AtomicLongArray(BOUNDS.length + 1);
+    }
+
+    /**
+     * 记录一次耗时。
+     *
+     * @param millis 耗时，单位：毫秒。
+     */
+    public void record(long millis) {
+        int index = BOUNDS.length;
+        for (int i = 0; i < BOUNDS.length; ++i) {
+            if (millis < BOUNDS[i]) {
+                index = i;
+                break;
+            }
+        }
+        this.buckets.incrementAndGet(index);
+        this.count.incrementAndGet();
+        this.total.addAndGet(millis);
+
+        long current = this.max.get();
+        while (millis > current && !this.max.compareAndSet(current, millis)) {
+            current = this.max.get();
+        }
+    }
+
+    public long getCount() {
+        return this.count.get();
+    }
+
+    /**
+     * 返回平均耗时。
+     *
+     * @return
+     */
+    public double getAverage() {
+        long num = this.count.get();
+        return (num == 0) ? 0 : (double) this.total.get() / (double) num;
+    }
+
+    /**
+     * 按分桶估算百分位耗时，返回所在分桶的上界。
+     *
+     * @param percentile 取值范围 0 到 1 。
+     * @return
+     */
+    public long getPercentile(double percentile) {
+        long num = this.count.get();
+        if (num == 0) {
+            return 0;
+        }
+
+        long threshold = (long) Math.ceil(num * percentile);
+        long sum = 0;
+        for (int i = 0; i < BOUNDS.length; ++i) {
+            sum += this.buckets.get(i);
+            if (sum >= threshold) {
+                return BOUNDS[i];
+            }
+        }
+        return this.max.get();
+    }
+
+    @Override
+    public JSONObject toJSON() {
+        JSONObject json = new JSONObject();
+        json.put("count", this.count.get());
+        json.put("avg", this.getAverage());
+        json.put("max", this.max.get());
+        json.put("p50", this.getPercentile(0.5));
+        json.put("p99", this.getPercentile(0.99));
+
+        JSONArray array = new JSONArray();
+        for (int i = 0; i < this.buckets.length(); ++i) {
+            JSONObject bucket = new JSONObject();
+            bucket.put("le", (i < BOUNDS.length) ? BOUNDS[i] : -1);
+            bucket.put("count", this.buckets.get(i));
+            array.put(bucket);
+        }
+        json.put("buckets", array);
+        return json;
+    }
+
+    @Override
+    public JSONObject toCompactJSON() {
+        JSONObject json = new JSONObject();
+        json.put("count", this.count.get());
+        json.put("avg", this.getAverage());
+        json.put("max", this.max.get());
+        json.put("p99", this.getPercentile(0.99));
+        return json;
+    }
+}
@@ -6,25 +6,101 @@
 
 package cube.util;
 
-import java.io.BufferedReader;
+import cell.util.log.Logger;
+import cube.common.JSONable;
+import org.json.JSONObject;
+
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * 进程管理器。
+ * 子进程按工具名进入并发池排队执行，运行时始终读取标准输出和标准错误并限制保留的数据量，
+ * 超过运行时长或长时间无输出时终止整个进程组。
  */
 public final class ProcessManager {
 
+    public final static String NAME = "ProcessManager";
+
     private final static ProcessManager instance = new ProcessManager();
 
+    /**
+     * 检查进程状态的间隔。
+     */
+    private final static long POLL_INTERVAL = 100L;
+
+    /**
+     * 单行输出的最大字符数。
+     */
+    private final static int MAX_LINE_LENGTH = 64 * 1024;
+
+    /**
+     * 终止原因。
+     */
+    public enum KillReason {
+        /**
+         * 未被终止。
+         */
+        None,
+
+        /**
+         * 超过运行时长。
+         */
+        Timeout,
+
+        /**
+         * 超过无输出时长。
+         */
+        Idle,
+
+        /**
+         * 等待线程被中断。
+         */
+        Interrupted
+    }
+
     private ExecutorService executor;
 
+    private final ConcurrentHashMap<String, ToolPool> pools;
+
+    private final int defaultConcurrency;
+
+    private final String setsidCommand;
+
+    private final String prlimitCommand;
+
     private ProcessManager() {
-        this.executor = Executors.newFixedThreadPool(16);
+        this.executor = Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger(0);
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "ProcessStream-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.pools = new ConcurrentHashMap<>();
+        this.defaultConcurrency = Math.max(2, Runtime.getRuntime().availableProcessors());
+        this.setsidCommand = findExecutable("setsid");
+        this.prlimitCommand = findExecutable("prlimit");
+
+        this.setConcurrency("ImageMagick", 4);
+        this.setConcurrency("FFmpeg", 2);
+        this.setConcurrency("LibreOffice", 1);
+        this.setConcurrency("Tesseract", 2);
+        this.setConcurrency("YOLO", 1);
     }
 
     public final static ProcessManager getInstance() {
@@ -35,125 +111,500 @@ public final class ProcessManager {
         this.executor.shutdown();
     }
 
+    /**
+     * 设置工具的最大并发进程数。
+     *
+     * @param tool 工具名。
+     * @param concurrency 最大并发数。
+     */
+    public void setConcurrency(String tool, int concurrency) {
+        ToolPool pool = this.pools.get(tool);
+        if (null == pool) {
+            this.pools.put(tool, new ToolPool(tool, concurrency));
+        }
+        else {
+            pool.resize(concurrency);
+        }
+    }
+
+    /**
+     * 是否可以限制进程内存。
+     *
+     * @return
+     */
+    public boolean isMemoryLimitSupported() {
+        return null != this.prlimitCommand;
+    }
+
     public ProcessOutput run(List<String> commandLine) {
-        return this.run(commandLine, false);
+        return this.run(new ProcessTask(commandLine));
     }
 
+    /**
+     * 执行命令。标准错误总是被读取，{@code outputError} 为 {@code false} 时不返回错误输出。
+     *
+     * @param commandLine
+     * @param outputError
+     * @return
+     */
     public ProcessOutput run(List<String> commandLine, boolean outputError) {
+        ProcessOutput output = this.run(new ProcessTask(commandLine));
+        if (!outputError) {
+            output.errorInputList = null;
+        }
+        return output;
+    }
+
+    /**
+     * 在工具的并发池里执行任务，阻塞直到进程结束或被终止。
+     *
+     * @param task 任务。
+     * @return 返回进程输出。
+     */
+    public ProcessOutput run(ProcessTask task) {
+        ToolPool pool = this.getPool(task.getTool());
+        ProcessOutput output = new ProcessOutput(task.getTool());
+
+        long enqueueTime = System.currentTimeMillis();
+        pool.queued.incrementAndGet();
+        try {
+            pool.semaphore.acquire();
+        } catch (InterruptedException e) {
+            pool.queued.decrementAndGet();
+            output.killReason = KillReason.Interrupted;
+            output.phase = 2;
+            Thread.currentThread().interrupt();
+            return output;
+        }
+        pool.queued.decrementAndGet();
+        pool.running.incrementAndGet();
+
+        try {
+            output.queueTime = System.currentTimeMillis() - enqueueTime;
+            this.execute(task, output);
+        } finally {
+            pool.running.decrementAndGet();
+            pool.semaphore.release();
+            pool.record(output);
+        }
+
+        return output;
+    }
+
+    /**
+     * 返回各工具的执行统计。
+     *
+     * @return
+     */
+    public JSONObject getStatistics() {
+        JSONObject json = new JSONObject();
+        for (Map.Entry<String, ToolPool> e : this.pools.entrySet()) {
+            json.put(e.getKey(), e.getValue().toJSON());
+        }
+        return json;
+    }
+
+    private ToolPool getPool(String tool) {
+        ToolPool pool = this.pools.get(tool);
+        if (null == pool) {
+            pool = new ToolPool(tool, this.defaultConcurrency);
+            ToolPool current = this.pools.putIfAbsent(tool, pool);
+            if (null != current) {
+                pool = current;
+            }
+        }
+        return pool;
+    }
+
+    /**
+     * 生成实际执行的命令行，进程作为进程组组长启动并按需限制内存。
+     * 自行管理长期运行进程时使用，以便通过 {@link #killTree(Process)} 终止整个进程树。
+     *
+     * @param commandLine 命令行。
+     * @param memoryLimit 虚拟内存上限，单位：字节，小于等于 0 表示不限制。
+     * @return 返回命令行。
+     */
+    public List<String> makeCommandLine(List<String> commandLine, long memoryLimit) {
+        List<String> result = new ArrayList<>();
+        if (null != this.setsidCommand) {
+            // 进程作为进程组组长启动，以便终止整个进程树
+            result.add(this.setsidCommand);
+        }
+        if (memoryLimit > 0 && null != this.prlimitCommand) {
+            result.add(this.prlimitCommand);
+            result.add("--as=" + memoryLimit);
+            result.add("--");
+        }
+        result.addAll(commandLine);
+        return result;
+    }
+
+    private void execute(ProcessTask task, ProcessOutput output) {
+        List<String> commandLine = this.makeCommandLine(task.getCommandLine(), task.getMemoryLimit());
+
         ProcessBuilder pb = new ProcessBuilder(commandLine);
+        if (null != task.getDirectory()) {
+            pb.directory(task.getDirectory());
+        }
 
-        ProcessOutput output = null;
+        long start = System.currentTimeMillis();
         Process process = null;
-
         try {
-            // 启动进程
             process = pb.start();
+        } catch (IOException e) {
+            Logger.w(this.getClass(), "#execute - " + task.getCommandLine().get(0), e);
+            output.phase = 2;
+            return;
+        }
 
-            output = new ProcessOutput(process);
-            // 监听输入流
-            output.monitorInputStream();
+        output.process = process;
+        output.phase = 1;
+        output.lastOutputTime.set(start);
 
-            if (outputError) {
-                output.monitorErrorStream();
-            }
+        StreamDrainer stdout = new StreamDrainer(process.getInputStream(), false, task, output);
+        StreamDrainer stderr = new StreamDrainer(process.getErrorStream(), true, task, output);
+        Future<?> stdoutFuture = this.executor.submit(stdout);
+        Future<?> stderrFuture = this.executor.submit(stderr);
 
+        // 监视进程
+        while (true) {
+            boolean exited = false;
             try {
-                output.status = process.waitFor();
+                exited = process.waitFor(POLL_INTERVAL, TimeUnit.MILLISECONDS);
             } catch (InterruptedException e) {
+                output.killReason = KillReason.Interrupted;
+                Thread.currentThread().interrupt();
+                break;
+            }
+
+            if (exited) {
+                break;
+            }
+
+            long now = System.currentTimeMillis();
+            if (task.getTimeout() > 0 && now - start >= task.getTimeout()) {
+                output.killReason = KillReason.Timeout;
+                break;
+            }
+            if (task.getIdleTimeout() > 0 && now - output.lastOutputTime.get() >= task.getIdleTimeout()) {
+                output.killReason = KillReason.Idle;
+                break;
             }
-        } catch (IOException e) {
-            e.printStackTrace();
-        } finally {
-            process = null;
         }
 
-        return output;
-    }
+        if (output.killReason != KillReason.None) {
+            Logger.w(this.getClass(), "#execute - Kill " + task.getTool() + " (" + output.killReason.name() + ")");
+            this.killTree(process);
+        }
 
-    public class ProcessOutput {
+        try {
+            process.waitFor(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
 
-        protected int status = 1;
+        // 等待读取完输出，子进程仍持有管道时关闭管道
+        awaitDrainer(stdoutFuture, process.getInputStream());
+        awaitDrainer(stderrFuture, process.getErrorStream());
 
-        /**
-         * 0 - 未执行
-         * 1 - 正在执行
-         * 2 - 结束
-         */
-        protected int phase = 0;
+        output.runTime = System.currentTimeMillis() - start;
+        try {
+            output.status = process.exitValue();
+        } catch (IllegalThreadStateException e) {
+            process.destroyForcibly();
+            output.status = -1;
+        }
+        output.phase = 2;
+    }
 
-        protected Process process;
+    /**
+     * 终止进程及其子进程。
+     *
+     * @param process 由 {@link #makeCommandLine(List, long)} 生成的命令行启动的进程。
+     */
+    public void killTree(Process process) {
+        long pid = getPid(process);
+        if (pid > 0) {
+            List<String> commandLine = new ArrayList<>();
+            if (null != this.setsidCommand) {
+                // 终止进程组
+                commandLine.add("kill");
+                commandLine.add("-KILL");
+                commandLine.add("--");
+                commandLine.add("-" + pid);
+            }
+            else {
+                // 终止子进程
+                commandLine.add("pkill");
+                commandLine.add("-KILL");
+                commandLine.add("-P");
+                commandLine.add(Long.toString(pid));
+            }
 
-        protected BufferedReader stdInput = null;
+            try {
+                Process killer = new ProcessBuilder(commandLine).redirectErrorStream(true).start();
+                killer.getInputStream().close();
+                killer.waitFor(5, TimeUnit.SECONDS);
+            } catch (IOException | InterruptedException e) {
+                Logger.w(this.getClass(), "#killTree", e);
+            }
+        }
+
+        process.destroyForcibly();
+    }
+
+    private static void awaitDrainer(Future<?> future, InputStream stream) {
+        try {
+            future.get(5, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            try {
+                stream.close();
+            } catch (IOException ioe) {
+                // Nothing
+            }
+            future.cancel(true);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // Nothing
+        }
+    }
 
-        protected BufferedReader errorInput = null;
+    private static long getPid(Process process) {
+        try {
+            Method method = Process.class.getMethod("pid");
+            return ((Long) method.invoke(process)).longValue();
+        } catch (Exception e) {
+            // Java 8
+        }
 
-        private List<String> stdInputList = null;
+        try {
+            Field field = process.getClass().getDeclaredField("pid");
+            field.setAccessible(true);
+            return field.getLong(process);
+        } catch (Exception e) {
+            return -1;
+        }
+    }
 
-        private List<String> errorInputList = null;
+    private static String findExecutable(String name) {
+        String path = System.getenv("PATH");
+        if (null == path) {
+            return null;
+        }
 
-        protected ProcessOutput(Process process) {
-            this.process = process;
+        for (String dir : path.split(File.pathSeparator)) {
+            File file = new File(dir, name);
+            if (file.isFile() && file.canExecute()) {
+                return file.getAbsolutePath();
+            }
         }
+        return null;
+    }
 
-        protected void monitorInputStream() {
-            this.stdInputList = new ArrayList<>();
-            this.stdInput = new BufferedReader(new InputStreamReader(this.process.getInputStream()));
+    /**
+     * 输出流读取器。按换行符或回车符切分行，记录最后一次输出的时间。
+     */
+    private class StreamDrainer implements Runnable {
 
-            executor.execute(new Runnable() {
-                @Override
-                public void run() {
-                    phase = 1;
+        private final InputStream stream;
 
-                    try {
-                        String line = null;
-                        while ((line = stdInput.readLine()) != null) {
-                            if (line.length() > 0) {
-                                stdInputList.add(line);
-                            }
+        private final boolean error;
+
+        private final ProcessTask task;
+
+        private final ProcessOutput output;
+
+        private int captured = 0;
+
+        private StreamDrainer(InputStream stream, boolean error, ProcessTask task, ProcessOutput output) {
+            this.stream = stream;
+            this.error = error;
+            this.task = task;
+            this.output = output;
+        }
+
+        @Override
+        public void run() {
+            char[] buf = new char[8192];
+            StringBuilder line = new StringBuilder();
+            try (Reader reader = new InputStreamReader(this.stream)) {
+                int length = 0;
+                while ((length = reader.read(buf)) > 0) {
+                    this.output.lastOutputTime.set(System.currentTimeMillis());
+
+                    for (int i = 0; i < length; ++i) {
+                        char c = buf[i];
+                        if (c == '\n' || c == '\r') {
+                            this.emit(line);
                         }
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    } finally {
-                        try {
-                            stdInput.close();
-                        } catch (IOException e) {
-                            e.printStackTrace();
+                        else {
+                            line.append(c);
+                            if (line.length() >= MAX_LINE_LENGTH) {
+                                this.emit(line);
+                            }
                         }
-
-                        phase = 2;
                     }
                 }
-            });
+                this.emit(line);
+            } catch (IOException e) {
+                // 进程被终止时管道关闭
+            }
+        }
+
+        private void emit(StringBuilder line) {
+            if (line.length() == 0) {
+                return;
+            }
+
+            String text = line.toString();
+            line.setLength(0);
+
+            if (null != this.task.getLineListener()) {
+                this.task.getLineListener().onLine(text, this.error);
+            }
 
+            if (this.captured + text.length() > this.task.getMaxCapture()) {
+                this.output.truncated = true;
+                return;
+            }
+
+            this.captured += text.length();
+            List<String> list = this.error ? this.output.errorInputList : this.output.stdInputList;
+            synchronized (list) {
+                list.add(text);
+            }
         }
+    }
 
-        protected void monitorErrorStream() {
-            this.errorInputList = new ArrayList<>();
-            this.errorInput = new BufferedReader(new InputStreamReader(this.process.getErrorStream()));
+    /**
+     * 工具并发池。
+     */
+    private class ToolPool implements JSONable {
 
-            executor.execute(new Runnable() {
-                @Override
-                public void run() {
-                    try {
-                        String line = null;
-                        while ((line = errorInput.readLine()) != null) {
-                            if (line.length() > 0) {
-                                errorInputList.add(line);
-                            }
-                        }
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    } finally {
-                        try {
-                            errorInput.close();
-                        } catch (IOException e) {
-                            e.printStackTrace();
-                        }
+        private final String tool;
+
+        private final Semaphore semaphore;
+
+        private int concurrency;
+
+        private final AtomicInteger queued = new AtomicInteger(0);
+
+        private final AtomicInteger running = new AtomicInteger(0);
+
+        private final AtomicLong runs = new AtomicLong(0);
+
+        private final AtomicLong failures = new AtomicLong(0);
+
+        private final AtomicLong timeoutKills = new AtomicLong(0);
+
+        private final AtomicLong idleKills = new AtomicLong(0);
+
+        private final AtomicLong interruptedKills = new AtomicLong(0);
+
+        private final LatencyHistogram queueTimes = new LatencyHistogram();
+
+        private final LatencyHistogram runTimes = new LatencyHistogram();
+
+        private ToolPool(String tool, int concurrency) {
+            this.tool = tool;
+            this.concurrency = concurrency;
+            this.semaphore = new Semaphore(concurrency, true);
+        }
+
+        private synchronized void resize(int concurrency) {
+            int delta = concurrency - this.concurrency;
+            if (delta > 0) {
+                this.semaphore.release(delta);
+            }
+            else if (delta < 0) {
+                // 正在运行的进程结束后生效
+                this.semaphore.acquireUninterruptibly(-delta);
+            }
+            this.concurrency = concurrency;
+        }
 
-                        phase = 2;
+        private void record(ProcessOutput output) {
+            this.runs.incrementAndGet();
+            this.queueTimes.record(output.queueTime);
+            this.runTimes.record(output.runTime);
+
+            switch (output.killReason) {
+                case Timeout:
+                    this.timeoutKills.incrementAndGet();
+                    break;
+                case Idle:
+                    this.idleKills.incrementAndGet();
+                    break;
+                case Interrupted:
+                    this.interruptedKills.incrementAndGet();
+                    break;
+                default:
+                    if (0 != output.status) {
+                        this.failures.incrementAndGet();
                     }
-                }
-            });
+                    break;
+            }
+        }
+
+        @Override
+        public JSONObject toJSON() {
+            JSONObject json = new JSONObject();
+            json.put("tool", this.tool);
+            json.put("concurrency", this.concurrency);
+            json.put("queued", this.queued.get());
+            json.put("running", this.running.get());
+            json.put("runs", this.runs.get());
+            json.put("failures", this.failures.get());
+            json.put("kills", this.timeoutKills.get() + this.idleKills.get() + this.interruptedKills.get());
+            json.put("timeoutKills", this.timeoutKills.get());
+            json.put("idleKills", this.idleKills.get());
+            json.put("queueTime", this.queueTimes.toJSON());
+            json.put("runTime", this.runTimes.toJSON());
+            return json;
+        }
+
+        @Override
+        public JSONObject toCompactJSON() {
+            return this.toJSON();
+        }
+    }
+
+    public class ProcessOutput {
+
+        protected final String tool;
+
+        protected int status = -1;
+
+        /**
+         * 0 - 未执行
+         * 1 - 正在执行
+         * 2 - 结束
+         */
+        protected volatile int phase = 0;
+
+        protected Process process;
+
+        protected KillReason killReason = KillReason.None;
+
+        protected long queueTime = 0;
+
+        protected long runTime = 0;
+
+        protected volatile boolean truncated = false;
+
+        protected final AtomicLong lastOutputTime = new AtomicLong(0);
+
+        private List<String> stdInputList = new ArrayList<>();
+
+        private List<String> errorInputList = new ArrayList<>();
+
+        protected ProcessOutput(String tool) {
+            this.tool = tool;
+        }
+
+        public String getTool() {
+            return this.tool;
         }
 
         public int getStatus() {
@@ -164,6 +615,40 @@ public final class ProcessManager {
             return this.phase == 2;
         }
 
+        /**
+         * 进程是否正常启动并结束。
+         *
+         * @return
+         */
+        public boolean isCompleted() {
+            return this.phase == 2 && null != this.process && this.killReason == KillReason.None;
+        }
+
+        public boolean isKilled() {
+            return this.killReason != KillReason.None;
+        }
+
+        public KillReason getKillReason() {
+            return this.killReason;
+        }
+
+        public long getQueueTime() {
+            return this.queueTime;
+        }
+
+        public long getRunTime() {
+            return this.runTime;
+        }
+
+        /**
+         * 输出是否因超过保留上限被截断。
+         *
+         * @return
+         */
+        public boolean isTruncated() {
+            return this.truncated;
+        }
+
         public List<String> getStdInput() {
             return this.stdInputList;
         }
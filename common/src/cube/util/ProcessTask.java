@@ -0,0 +1,139 @@
+/*
+ * This source file is part of Cube.
+ *
+ * Copyright (c) 2023-2026 Ambrose Xu.
+ */
+
+package cube.util;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 子进程任务描述。
+ */
+public class ProcessTask {
+
+    /**
+     * 工具名，用于并发池和统计。
+     */
+    private String tool;
+
+    private List<String> commandLine;
+
+    private File directory;
+
+    /**
+     * 运行总时长上限，单位：毫秒，小于等于 0 表示不限制。
+     */
+    private long timeout = 10 * 60 * 1000L;
+
+    /**
+     * 无输出时长上限，单位：毫秒，小于等于 0 表示不限制。
+     */
+    private long idleTimeout = 0;
+
+    /**
+     * 每个输出流保留的最大字符数。
+     */
+    private int maxCapture = 1024 * 1024;
+
+    /**
+     * 进程的虚拟内存上限，单位：字节，小于等于 0 表示不限制。
+     */
+    private long memoryLimit = 0;
+
+    private LineListener lineListener;
+
+    public ProcessTask(List<String> commandLine) {
+        this(toolName(commandLine), commandLine);
+    }
+
+    public ProcessTask(String tool, List<String> commandLine) {
+        this.tool = tool;
+        this.commandLine = new ArrayList<>(commandLine);
+    }
+
+    public String getTool() {
+        return this.tool;
+    }
+
+    public List<String> getCommandLine() {
+        return this.commandLine;
+    }
+
+    public ProcessTask setDirectory(File directory) {
+        this.directory = directory;
+        return this;
+    }
+
+    public File getDirectory() {
+        return this.directory;
+    }
+
+    public ProcessTask setTimeout(long timeout) {
+        this.timeout = timeout;
+        return this;
+    }
+
+    public long getTimeout() {
+        return this.timeout;
+    }
+
+    public ProcessTask setIdleTimeout(long idleTimeout) {
+        this.idleTimeout = idleTimeout;
+        return this;
+    }
+
+    public long getIdleTimeout() {
+        return this.idleTimeout;
+    }
+
+    public ProcessTask setMaxCapture(int maxCapture) {
+        this.maxCapture = maxCapture;
+        return this;
+    }
+
+    public int getMaxCapture() {
+        return this.maxCapture;
+    }
+
+    public ProcessTask setMemoryLimit(long memoryLimit) {
+        this.memoryLimit = memoryLimit;
+        return this;
+    }
+
+    public long getMemoryLimit() {
+        return this.memoryLimit;
+    }
+
+    public ProcessTask setLineListener(LineListener lineListener) {
+        this.lineListener = lineListener;
+        return this;
+    }
+
+    public LineListener getLineListener() {
+        return this.lineListener;
+    }
+
+    private static String toolName(List<String> commandLine) {
+        String name = new File(commandLine.get(0)).getName();
+        int index = name.lastIndexOf('.');
+        return (index > 0) ? name.substring(0, index) : name;
+    }
+
+    /**
+     * 输出行监听器。
+     */
+    public interface LineListener {
+
+        /**
+         * 读取到一行输出时回调，在读取输出流的线程里执行。
+         *
+         * @param line 输出行。
+         * @param error 是否是标准错误输出。
+         */
+        void onLine(String line, boolean error);
+    }
+}
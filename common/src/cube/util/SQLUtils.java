@@ -9,6 +9,7 @@ package cube.util;
 import cube.core.Conditional;
 import cube.core.Constraint;
 import cube.core.StorageField;
+import cube.storage.StorageType;
 
 import java.util.List;
 
@@ -251,6 +252,136 @@ public final class SQLUtils {
         return buf.toString();
     }
 
+    /**
+     * 拼装多行 INSERT 语句。所有行的字段必须一致，列名以第一行为准。
+     *
+     * @param table
+     * @param rows
+     * @return
+     */
+    public static String spellInsert(String table, List<StorageField[]> rows) {
+        StringBuilder buf = new StringBuilder("INSERT INTO ");
+        buf.append(table);
+        spellColumnsAndValues(buf, rows);
+        return buf.toString();
+    }
+
+    /**
+     * 拼装多行插入或更新语句。
+     * MySQL 使用 {@code ON DUPLICATE KEY UPDATE} ，SQLite 使用 {@code ON CONFLICT ... DO UPDATE} 。
+     * 冲突列必须建有唯一索引。
+     *
+     * @param type 存储类型。
+     * @param table 表名。
+     * @param rows 数据行，所有行的字段必须一致。
+     * @param conflictColumns 唯一索引的列。
+     * @param updateColumns 冲突时更新的列。
+     * @param updateCondition 冲突时执行更新的条件，引用的是已存在行的数据，可以为 {@code null} 值。
+     *                        MySQL 按顺序赋值，条件引用的列必须放在 {@code updateColumns} 的最后。
+     * @return
+     */
+    public static String spellUpsert(StorageType type, String table, List<StorageField[]> rows,
+                                     String[] conflictColumns, String[] updateColumns, String updateCondition) {
+        StringBuilder buf = new StringBuilder("INSERT INTO ");
+        buf.append(table);
+        spellColumnsAndValues(buf, rows);
+
+        if (type == StorageType.SQLite) {
+            buf.append(" ON CONFLICT(");
+            for (int i = 0; i < conflictColumns.length; ++i) {
+                if (i > 0) {
+                    buf.append(",");
+                }
+                buf.append(Quote).append(conflictColumns[i]).append(Quote);
+            }
+            buf.append(") DO UPDATE SET ");
+            for (int i = 0; i < updateColumns.length; ++i) {
+                if (i > 0) {
+                    buf.append(",");
+                }
+                buf.append(Quote).append(updateColumns[i]).append(Quote).append("=excluded.")
+                        .append(Quote).append(updateColumns[i]).append(Quote);
+            }
+            if (null != updateCondition) {
+                buf.append(" WHERE ").append(updateCondition);
+            }
+        }
+        else {
+            buf.append(" ON DUPLICATE KEY UPDATE ");
+            for (int i = 0; i < updateColumns.length; ++i) {
+                if (i > 0) {
+                    buf.append(",");
+                }
+                String column = Quote + updateColumns[i] + Quote;
+                buf.append(column).append("=");
+                if (null != updateCondition) {
+                    buf.append("IF(").append(updateCondition).append(",VALUES(").append(column).append("),")
+                            .append(column).append(")");
+                }
+                else {
+                    buf.append("VALUES(").append(column).append(")");
+                }
+            }
+        }
+
+        return buf.toString();
+    }
+
+    private static void spellColumnsAndValues(StringBuilder buf, List<StorageField[]> rows) {
+        StorageField[] first = rows.get(0);
+        buf.append(" (");
+        for (StorageField field : first) {
+            if (null == field.getValue()) {
+                // 跳过空值
+                continue;
+            }
+
+            buf.append(Quote).append(field.getName()).append(Quote);
+            buf.append(",");
+        }
+        // 修正逗号
+        buf.delete(buf.length() - 1, buf.length());
+        buf.append(") VALUES ");
+
+        for (StorageField[] fields : rows) {
+            buf.append("(");
+            for (int i = 0; i < first.length; ++i) {
+                if (null == first[i].getValue()) {
+                    continue;
+                }
+
+                StorageField field = fields[i];
+                if (null == field.getValue()) {
+                    buf.append("NULL,");
+                    continue;
+                }
+
+                switch (field.getLiteralBase()) {
+                    case STRING:
+                        buf.append("'").append(SQLUtils.correctString(field.getString())).append("'");
+                        break;
+                    case INT:
+                        buf.append(field.getInt());
+                        break;
+                    case LONG:
+                        buf.append(field.getLong());
+                        break;
+                    case BOOL:
+                        buf.append(field.getBoolean() ? 1 : 0);
+                        break;
+                    default:
+                        break;
+                }
+                buf.append(",");
+            }
+            // 修正逗号
+            buf.delete(buf.length() - 1, buf.length());
+            buf.append("),");
+        }
+        // 修正逗号
+        buf.delete(buf.length() - 1, buf.length());
+    }
+
     /**
      * 拼装 UPDATE 语句。
      *
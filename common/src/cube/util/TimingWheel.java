@@ -0,0 +1,369 @@
+/*
+ * This source file is part of Cube.
+ *
+ * Copyright (c) 2023-2026 Ambrose Xu.
+ */
+
+package cube.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * 哈希时间轮。
+ * 条目按到期时间散列到时间轮的槽里，调度和取消都是常数时间。
+ * 续期只更新条目的到期时间，条目在原槽位被处理时才移动到新槽位，因此心跳不需要加锁。
+ * 每次推进只处理经过的槽，开销与到期的条目数量成正比，与条目总数无关。
+ * 到期回调在有界的执行器里执行。
+ *
+ * @param <K> 键类型。
+ * @param <V> 值类型。
+ */
+public class TimingWheel<K, V> {
+
+    private final static long NONE = Long.MIN_VALUE;
+
+    /**
+     * 每个槽的时长，单位：毫秒。
+     */
+    private final long tickDuration;
+
+    private final int mask;
+
+    private final Slot<K, V>[] slots;
+
+    private final ConcurrentHashMap<K, Entry<K, V>> entries;
+
+    private final ExpiryListener<K, V> listener;
+
+    private final Executor executor;
+
+    /**
+     * 是否由时间轮管理执行器。
+     */
+    private final boolean ownExecutor;
+
+    /**
+     * 最后处理的槽序号。
+     */
+    private volatile long currentTick = NONE;
+
+    /**
+     * 构造函数。使用单线程有界执行器执行到期回调。
+     *
+     * @param tickDuration 每个槽的时长，单位：毫秒。
+     * @param wheelSize 槽数量，会调整为 2 的幂。
+     * @param listener 到期监听器。
+     */
+    public TimingWheel(long tickDuration, int wheelSize, ExpiryListener<K, V> listener) {
+        this(tickDuration, wheelSize, listener, new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(1024), new ThreadPoolExecutor.CallerRunsPolicy()), true);
+    }
+
+    /**
+     * 构造函数。
+     *
+     * @param tickDuration 每个槽的时长，单位：毫秒。
+     * @param wheelSize 槽数量，会调整为 2 的幂。
+     * @param listener 到期监听器。
+     * @param executor 执行到期回调的执行器。
+     */
+    public TimingWheel(long tickDuration, int wheelSize, ExpiryListener<K, V> listener, Executor executor) {
+        this(tickDuration, wheelSize, listener, executor, false);
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private TimingWheel(long tickDuration, int wheelSize, ExpiryListener<K, V> listener,
+                        Executor executor, boolean ownExecutor) {
+        int size = 1;
+        while (size < wheelSize) {
+            size <<= 1;
+        }
+
+        this.tickDuration = tickDuration;
+        this.mask = size - 1;
+        this.slots = new Slot[size];
+        for (int i = 0; i < size; ++i) {
+            this.slots[i] = new Slot<>();
+        }
+        this.entries = new ConcurrentHashMap<>();
+        this.listener = listener;
+        this.executor = executor;
+        this.ownExecutor = ownExecutor;
+    }
+
+    /**
+     * 关闭时间轮管理的执行器。
+     */
+    public void shutdown() {
+        if (this.ownExecutor) {
+            ((ExecutorService) this.executor).shutdown();
+        }
+    }
+
+    /**
+     * 调度条目，已存在的条目被替换。
+     *
+     * @param key 键。
+     * @param value 值。
+     * @param timeout 超时时长，单位：毫秒。
+     */
+    public void schedule(K key, V value, long timeout) {
+        this.schedule(key, value, timeout, System.currentTimeMillis());
+    }
+
+    /**
+     * 调度条目，已存在的条目被替换。
+     *
+     * @param key 键。
+     * @param value 值。
+     * @param timeout 超时时长，单位：毫秒。
+     * @param now 当前时间。
+     */
+    public void schedule(K key, V value, long timeout, long now) {
+        Entry<K, V> entry = new Entry<>(key, value, timeout, now + timeout);
+        Entry<K, V> old = this.entries.put(key, entry);
+        if (null != old) {
+            this.unlink(old);
+        }
+        this.insert(entry);
+    }
+
+    /**
+     * 续期条目，到期时间从当前时间开始重新计算。
+     *
+     * @param key 键。
+     * @return 条目存在时返回 {@code true} 。
+     */
+    public boolean touch(K key) {
+        return this.touch(key, System.currentTimeMillis());
+    }
+
+    /**
+     * 续期条目，到期时间从指定时间开始重新计算。
+     *
+     * @param key 键。
+     * @param now 当前时间。
+     * @return 条目存在时返回 {@code true} 。
+     */
+    public boolean touch(K key, long now) {
+        Entry<K, V> entry = this.entries.get(key);
+        if (null == entry) {
+            return false;
+        }
+
+        long deadline = now + entry.timeout;
+        if (deadline > entry.deadline) {
+            entry.deadline = deadline;
+        }
+        return true;
+    }
+
+    /**
+     * 取消条目。
+     *
+     * @param key 键。
+     * @return 返回被取消条目的值，条目不存在时返回 {@code null} 。
+     */
+    public V cancel(K key) {
+        Entry<K, V> entry = this.entries.remove(key);
+        if (null == entry) {
+            return null;
+        }
+
+        this.unlink(entry);
+        return entry.value;
+    }
+
+    public boolean contains(K key) {
+        return this.entries.containsKey(key);
+    }
+
+    public V get(K key) {
+        Entry<K, V> entry = this.entries.get(key);
+        return (null != entry) ? entry.value : null;
+    }
+
+    public int size() {
+        return this.entries.size();
+    }
+
+    /**
+     * 推进时间轮到指定时间，到期的条目从时间轮移除并回调监听器。
+     *
+     * @param now 当前时间。
+     * @return 返回到期的条目数量。
+     */
+    public synchronized int advance(long now) {
+        long target = Math.floorDiv(now, this.tickDuration);
+        if (this.currentTick == NONE) {
+            this.currentTick = target - 1;
+        }
+
+        if (target <= this.currentTick) {
+            return 0;
+        }
+
+        // 跨越超过一圈时每个槽只需要处理一次
+        long start = Math.max(this.currentTick + 1, target - this.mask);
+
+        List<Entry<K, V>> expired = new ArrayList<>();
+        for (long tick = start; tick <= target; ++tick) {
+            this.process(tick, expired);
+        }
+        this.currentTick = target;
+
+        if (!expired.isEmpty()) {
+            this.executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    for (Entry<K, V> entry : expired) {
+                        listener.onExpired(entry.key, entry.value);
+                    }
+                }
+            });
+        }
+
+        return expired.size();
+    }
+
+    private void process(long tick, List<Entry<K, V>> expired) {
+        Slot<K, V> slot = this.slots[(int) (tick & this.mask)];
+        synchronized (slot) {
+            Entry<K, V> entry = slot.head;
+            while (null != entry) {
+                Entry<K, V> next = entry.next;
+                long entryTick = this.tickOf(entry.deadline);
+
+                if (entryTick <= tick) {
+                    slot.remove(entry);
+                    if (this.entries.remove(entry.key, entry)) {
+                        expired.add(entry);
+                    }
+                }
+                else if ((entryTick & this.mask) != (tick & this.mask)) {
+                    // 已续期，移动到新槽位
+                    slot.remove(entry);
+                    Slot<K, V> target = this.slots[(int) (entryTick & this.mask)];
+                    synchronized (target) {
+                        target.add(entry);
+                    }
+                }
+
+                entry = next;
+            }
+        }
+    }
+
+    private void insert(Entry<K, V> entry) {
+        long tick = this.tickOf(entry.deadline);
+        long current = this.currentTick;
+        if (current != NONE && tick <= current) {
+            // 已到期的条目在下一个槽处理
+            tick = current + 1;
+        }
+
+        Slot<K, V> slot = this.slots[(int) (tick & this.mask)];
+        synchronized (slot) {
+            slot.add(entry);
+        }
+    }
+
+    private void unlink(Entry<K, V> entry) {
+        while (true) {
+            Slot<K, V> slot = entry.slot;
+            if (null == slot) {
+                return;
+            }
+
+            synchronized (slot) {
+                if (entry.slot == slot) {
+                    slot.remove(entry);
+                    return;
+                }
+            }
+        }
+    }
+
+    private long tickOf(long deadline) {
+        return Math.floorDiv(deadline + this.tickDuration - 1, this.tickDuration);
+    }
+
+    /**
+     * 到期监听器。
+     *
+     * @param <K>
+     * @param <V>
+     */
+    public interface ExpiryListener<K, V> {
+
+        /**
+         * 条目到期时回调。
+         *
+         * @param key
+         * @param value
+         */
+        void onExpired(K key, V value);
+    }
+
+    /**
+     * 时间轮的槽，条目的双向链表。
+     */
+    private final static class Slot<K, V> {
+
+        private Entry<K, V> head;
+
+        private void add(Entry<K, V> entry) {
+            entry.slot = this;
+            entry.prev = null;
+            entry.next = this.head;
+            if (null != this.head) {
+                this.head.prev = entry;
+            }
+            this.head = entry;
+        }
+
+        private void remove(Entry<K, V> entry) {
+            if (null != entry.prev) {
+                entry.prev.next = entry.next;
+            }
+            else {
+                this.head = entry.next;
+            }
+            if (null != entry.next) {
+                entry.next.prev = entry.prev;
+            }
+            entry.prev = null;
+            entry.next = null;
+            entry.slot = null;
+        }
+    }
+
+    /**
+     * 条目。
+     */
+    private final static class Entry<K, V> {
+
+        private final K key;
+
+        private final V value;
+
+        private final long timeout;
+
+        private volatile long deadline;
+
+        private volatile Slot<K, V> slot;
+
+        private Entry<K, V> prev;
+
+        private Entry<K, V> next;
+
+        private Entry(K key, V value, long timeout, long deadline) {
+            this.key = key;
+            this.value = value;
+            this.timeout = timeout;
+            this.deadline = deadline;
+        }
+    }
+}
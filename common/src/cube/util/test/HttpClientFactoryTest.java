@@ -0,0 +1,346 @@
+/*
+ * This source file is part of Cube.
+ *
+ * Copyright (c) 2023-2026 Ambrose Xu.
+ */
+
+package cube.util.test;
+
+import cube.util.Assert;
+import cube.util.CircuitBreaker;
+import cube.util.HttpClientFactory;
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.api.ContentResponse;
+import org.eclipse.jetty.client.util.StringContentProvider;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.json.JSONObject;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * HTTP 客户端工厂测试。使用本地 Jetty 服务模拟延迟和错误。
+ */
+public class HttpClientFactoryTest {
+
+    private Server server;
+
+    private String baseUrl;
+
+    private final ConcurrentHashMap<String, AtomicInteger> hits = new ConcurrentHashMap<>();
+
+    private final AtomicInteger concurrent = new AtomicInteger(0);
+
+    private final AtomicInteger maxConcurrent = new AtomicInteger(0);
+
+    private volatile boolean failing = true;
+
+    public HttpClientFactoryTest() {
+    }
+
+    /**
+     * 模拟服务：
+     * /ok 返回 200 ；
+     * /slow?ms= 延迟后返回 200 ，key 为 limit 时记录最大并发数；
+     * /flaky?key=&fail= 前 fail 次返回 503 ；
+     * /slowonce?key= 第一次延迟 2 秒；
+     * /fail 在 failing 为真时返回 500 。
+     */
+    public void setup() throws Exception {
+        this.server = new Server();
+        ServerConnector connector = new ServerConnector(this.server);
+        connector.setPort(0);
+        this.server.addConnector(connector);
+        this.server.setHandler(new AbstractHandler() {
+            @Override
+            public void handle(String target, Request baseRequest, HttpServletRequest request,
+                               HttpServletResponse response) throws IOException {
+                baseRequest.setHandled(true);
+                boolean limited = "limit".equals(request.getParameter("key"));
+                if (limited) {
+                    int current = concurrent.incrementAndGet();
+                    int max = maxConcurrent.get();
+                    while (current > max && !maxConcurrent.compareAndSet(max, current)) {
+                        max = maxConcurrent.get();
+                    }
+                }
+
+                try {
+                    String key = target + ":" + request.getParameter("key");
+                    int hit = hits.computeIfAbsent(key, k -> new AtomicInteger(0)).incrementAndGet();
+
+                    int status = 200;
+                    if ("/slow".equals(target)) {
+                        Thread.sleep(Long.parseLong(request.getParameter("ms")));
+                    }
+                    else if ("/flaky".equals(target)) {
+                        if (hit <= Integer.parseInt(request.getParameter("fail"))) {
+                            status = 503;
+                        }
+                    }
+                    else if ("/slowonce".equals(target)) {
+                        if (hit == 1) {
+                            Thread.sleep(2000);
+                        }
+                    }
+                    else if ("/fail".equals(target)) {
+                        if (failing) {
+                            status = 500;
+                        }
+                    }
+
+                    response.setStatus(status);
+                    response.getWriter().write(Integer.toString(hit));
+                } catch (InterruptedException e) {
+                    response.setStatus(500);
+                } finally {
+                    if (limited) {
+                        concurrent.decrementAndGet();
+                    }
+                }
+            }
+        });
+        this.server.start();
+        this.baseUrl = "http://127.0.0.1:" + connector.getLocalPort();
+
+        HttpClientFactory.Config config = new HttpClientFactory.Config();
+        config.retryDelay = 50;
+        config.failureThreshold = 10;
+        HttpClientFactory.getInstance().configure(HttpClientFactory.Purpose.General, config);
+    }
+
+    public void teardown() throws Exception {
+        HttpClientFactory.getInstance().close();
+        this.server.stop();
+    }
+
+    private int hits(String target, String key) {
+        AtomicInteger count = this.hits.get(target + ":" + key);
+        return (null == count) ? 0 : count.get();
+    }
+
+    public void testSharedClient() throws Exception {
+        HttpClientFactory factory = HttpClientFactory.getInstance();
+        HttpClient client = factory.borrowHttpClient();
+        factory.returnHttpClient(client);
+
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        final AtomicInteger success = new AtomicInteger(0);
+        final ConcurrentHashMap<HttpClient, Boolean> clients = new ConcurrentHashMap<>();
+        final CountDownLatch latch = new CountDownLatch(64);
+        for (int i = 0; i < 64; ++i) {
+            executor.execute(() -> {
+                HttpClient borrowed = factory.borrowHttpClient();
+                clients.put(borrowed, true);
+                try {
+                    if (borrowed.GET(baseUrl + "/slow?ms=20").getStatus() == 200) {
+                        success.incrementAndGet();
+                    }
+                } catch (Exception e) {
+                    e.printStackTrace();
+                } finally {
+                    factory.returnHttpClient(borrowed);
+                    latch.countDown();
+                }
+            });
+        }
+        latch.await();
+        executor.shutdown();
+
+        Assert.equals("testSharedClient (success)", 64, success.get());
+        Assert.equals("testSharedClient (one client)", 1, clients.size());
+        Assert.equals("testSharedClient (same client)", true, clients.containsKey(client));
+        Assert.equals("testSharedClient (other purpose)", false,
+                client == factory.getHttpClient(HttpClientFactory.Purpose.File));
+    }
+
+    public void testRetry() throws Exception {
+        HttpClientFactory factory = HttpClientFactory.getInstance();
+
+        // 幂等请求重试
+        ContentResponse response = factory.send(HttpClientFactory.Purpose.General,
+                (client) -> client.newRequest(baseUrl + "/flaky?key=get&fail=2"));
+        Assert.equals("testRetry (get status)", 200, response.getStatus());
+        Assert.equals("testRetry (get hits)", 3, this.hits("/flaky", "get"));
+
+        // 重试次数用尽
+        response = factory.send(HttpClientFactory.Purpose.General,
+                (client) -> client.newRequest(baseUrl + "/flaky?key=exhausted&fail=5"));
+        Assert.equals("testRetry (exhausted status)", 503, response.getStatus());
+        Assert.equals("testRetry (exhausted hits)", 3, this.hits("/flaky", "exhausted"));
+
+        // 非幂等请求不重试
+        response = factory.send(HttpClientFactory.Purpose.General,
+                (client) -> client.POST(baseUrl + "/flaky?key=post&fail=1")
+                        .content(new StringContentProvider("{}")));
+        Assert.equals("testRetry (post status)", 503, response.getStatus());
+        Assert.equals("testRetry (post hits)", 1, this.hits("/flaky", "post"));
+
+        // 超时后重试
+        long start = System.currentTimeMillis();
+        response = factory.send(HttpClientFactory.Purpose.General,
+                (client) -> client.newRequest(baseUrl + "/slowonce?key=timeout").timeout(300, TimeUnit.MILLISECONDS));
+        Assert.equals("testRetry (timeout status)", 200, response.getStatus());
+        Assert.equals("testRetry (timeout elapsed)", true, System.currentTimeMillis() - start < 1500);
+
+        JSONObject stats = factory.getStatistics().getJSONObject("destinations").getJSONObject(this.baseUrl);
+        System.out.println("testRetry - " + stats.toString());
+        Assert.equals("testRetry (retries)", true, stats.getLong("retries") >= 5);
+        Assert.equals("testRetry (failures)", true, stats.getLong("failures") >= 6);
+        Assert.equals("testRetry (latency)", true, stats.getLong("maxLatency") >= 300);
+    }
+
+    public void testCircuitBreaker() throws Exception {
+        HttpClientFactory factory = HttpClientFactory.getInstance();
+        HttpClientFactory.Config config = new HttpClientFactory.Config();
+        config.retryDelay = 50;
+        config.failureThreshold = 3;
+        config.openDuration = 500;
+        factory.configure(HttpClientFactory.Purpose.General, config);
+
+        // 使用新的目标地址，熔断器按新配置创建
+        final String baseUrl = this.baseUrl.replace("127.0.0.1", "localhost");
+
+        for (int i = 0; i < 3; ++i) {
+            ContentResponse response = factory.send(HttpClientFactory.Purpose.General,
+                    (client) -> client.POST(baseUrl + "/fail"));
+            Assert.equals("testCircuitBreaker (fail " + i + ")", 500, response.getStatus());
+        }
+
+        JSONObject breaker = factory.getStatistics().getJSONObject("destinations")
+                .getJSONObject(baseUrl).getJSONObject("breaker");
+        Assert.equals("testCircuitBreaker (open)", true,
+                CircuitBreaker.State.Open.name().equals(breaker.getString("state")));
+
+        // 断开期间不发送请求
+        int hits = this.hits("/fail", null);
+        boolean rejected = false;
+        try {
+            factory.send(HttpClientFactory.Purpose.General, (client) -> client.newRequest(baseUrl + "/ok"));
+        } catch (ExecutionException e) {
+            rejected = e.getCause() instanceof RejectedExecutionException;
+        }
+        Assert.equals("testCircuitBreaker (rejected)", true, rejected);
+        Assert.equals("testCircuitBreaker (no request)", hits, this.hits("/fail", null));
+
+        // 冷却后试探成功
+        this.failing = false;
+        Thread.sleep(600);
+        ContentResponse response = factory.send(HttpClientFactory.Purpose.General,
+                (client) -> client.POST(baseUrl + "/fail"));
+        Assert.equals("testCircuitBreaker (probe)", 200, response.getStatus());
+        breaker = factory.getStatistics().getJSONObject("destinations")
+                .getJSONObject(baseUrl).getJSONObject("breaker");
+        Assert.equals("testCircuitBreaker (closed)", true,
+                CircuitBreaker.State.Closed.name().equals(breaker.getString("state")));
+    }
+
+    public void testDestinationLimit() throws Exception {
+        HttpClientFactory factory = HttpClientFactory.getInstance();
+        HttpClientFactory.Config config = new HttpClientFactory.Config();
+        config.maxConnectionsPerDestination = 2;
+        config.maxRequestsQueuedPerDestination = 4;
+        config.failureThreshold = 3;
+        factory.configure(HttpClientFactory.Purpose.File, config);
+
+        ExecutorService executor = Executors.newFixedThreadPool(12);
+        final AtomicInteger success = new AtomicInteger(0);
+        final AtomicInteger rejected = new AtomicInteger(0);
+        final CountDownLatch latch = new CountDownLatch(12);
+        for (int i = 0; i < 12; ++i) {
+            executor.execute(() -> {
+                try {
+                    ContentResponse response = factory.send(HttpClientFactory.Purpose.File,
+                            (client) -> client.newRequest(baseUrl + "/slow?key=limit&ms=300"));
+                    if (response.getStatus() == 200) {
+                        success.incrementAndGet();
+                    }
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof RejectedExecutionException) {
+                        rejected.incrementAndGet();
+                    }
+                } catch (Exception e) {
+                    e.printStackTrace();
+                } finally {
+                    latch.countDown();
+                }
+            });
+        }
+        latch.await();
+        executor.shutdown();
+
+        System.out.println("testDestinationLimit - success: " + success.get() + ", rejected: " + rejected.get()
+                + ", max concurrent: " + this.maxConcurrent.get());
+        Assert.equals("testDestinationLimit (connections)", true, this.maxConcurrent.get() <= 2);
+        Assert.equals("testDestinationLimit (all handled)", 12, success.get() + rejected.get());
+        Assert.equals("testDestinationLimit (queue limit)", true, rejected.get() > 0);
+
+        // 本地排队拒绝不触发熔断
+        JSONObject breaker = factory.getStatistics().getJSONObject("destinations")
+                .getJSONObject(this.baseUrl).getJSONObject("breaker");
+        Assert.equals("testDestinationLimit (breaker closed)", true,
+                CircuitBreaker.State.Closed.name().equals(breaker.getString("state")));
+    }
+
+    public void testLongRequest() throws Exception {
+        HttpClientFactory factory = HttpClientFactory.getInstance();
+        HttpClientFactory.Config config = new HttpClientFactory.Config();
+        config.idleTimeout = 500;
+        config.failureThreshold = 2;
+        factory.configure(HttpClientFactory.Purpose.AIGC, config);
+
+        // 请求超时长于客户端空闲超时，长时间没有数据的请求不被空闲超时中止
+        ContentResponse response = factory.send(HttpClientFactory.Purpose.AIGC,
+                (client) -> client.POST(baseUrl + "/slow?key=long&ms=1200").timeout(5, TimeUnit.SECONDS));
+        Assert.equals("testLongRequest (idle)", 200, response.getStatus());
+
+        // 请求超时记为失败，连续超时后熔断。目标主机的熔断器由首次请求该主机时的配置创建
+        int timeouts = 0;
+        boolean rejected = false;
+        for (int i = 0; i < 20 && !rejected; ++i) {
+            try {
+                factory.send(HttpClientFactory.Purpose.AIGC,
+                        (client) -> client.POST(baseUrl + "/slow?key=timeout&ms=1000")
+                                .timeout(200, TimeUnit.MILLISECONDS));
+            } catch (TimeoutException e) {
+                ++timeouts;
+            } catch (ExecutionException e) {
+                rejected = (e.getCause() instanceof RejectedExecutionException);
+            }
+        }
+        Assert.equals("testLongRequest (timeouts)", true, timeouts > 0);
+        Assert.equals("testLongRequest (rejected)", true, rejected);
+
+        JSONObject stats = factory.getStatistics().getJSONObject("destinations").getJSONObject(this.baseUrl);
+        System.out.println("testLongRequest - " + stats.toString());
+        Assert.equals("testLongRequest (breaker open)", true,
+                CircuitBreaker.State.Open.name().equals(stats.getJSONObject("breaker").getString("state")));
+        Assert.equals("testLongRequest (timeout stats)", true, stats.getLong("timeouts") >= timeouts);
+    }
+
+    public static void main(String[] args) {
+        HttpClientFactoryTest test = new HttpClientFactoryTest();
+        try {
+            test.setup();
+            test.testSharedClient();
+            test.testRetry();
+            test.testCircuitBreaker();
+            test.testDestinationLimit();
+            test.testLongRequest();
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            try {
+                test.teardown();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
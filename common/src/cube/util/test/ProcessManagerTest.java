@@ -0,0 +1,194 @@
+/*
+ * This source file is part of Cube.
+ *
+ * Copyright (c) 2023-2026 Ambrose Xu.
+ */
+
+package cube.util.test;
+
+import cube.util.Assert;
+import cube.util.ProcessManager;
+import cube.util.ProcessTask;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 进程管理器测试。使用 Shell 脚本模拟挂起、大量输出和异常退出的工具。
+ */
+public class ProcessManagerTest {
+
+    private File workPath;
+
+    public ProcessManagerTest() {
+        try {
+            this.workPath = Files.createTempDirectory("cube-process").toFile();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private File script(String name, String content) {
+        File file = new File(this.workPath, name);
+        try (FileOutputStream fos = new FileOutputStream(file)) {
+            fos.write(("#!/bin/sh\n" + content + "\n").getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        file.setExecutable(true);
+        return file;
+    }
+
+    private List<String> command(File script, String... args) {
+        List<String> list = new ArrayList<>();
+        list.add(script.getAbsolutePath());
+        for (String arg : args) {
+            list.add(arg);
+        }
+        return list;
+    }
+
+    public void testNormalExit() {
+        File file = script("normal.sh", "echo out-1\necho err-1 1>&2\necho out-2\nexit 3");
+        ProcessManager.ProcessOutput output = ProcessManager.getInstance().run(command(file));
+
+        Assert.equals("testNormalExit (status)", 3, output.getStatus());
+        Assert.equals("testNormalExit (killed)", false, output.isKilled());
+        Assert.equals("testNormalExit (stdout)", 2, output.getStdInput().size());
+        Assert.equals("testNormalExit (stderr)", 1, output.getErrorInput().size());
+        Assert.equals("testNormalExit (stderr line)", true, "err-1".equals(output.getErrorInput().get(0)));
+
+        // 不需要错误输出时仍然读取标准错误
+        output = ProcessManager.getInstance().run(command(file), false);
+        Assert.equals("testNormalExit (no error output)", true, null == output.getErrorInput());
+    }
+
+    public void testHangTimeout() {
+        // 子进程也会被终止
+        File file = script("hang.sh", "sleep 600 &\necho started\nsleep 600");
+        long start = System.currentTimeMillis();
+        ProcessManager.ProcessOutput output = ProcessManager.getInstance().run(
+                new ProcessTask("Hang", command(file)).setTimeout(1000));
+        long elapsed = System.currentTimeMillis() - start;
+
+        System.out.println("testHangTimeout - elapsed: " + elapsed + " ms");
+        Assert.equals("testHangTimeout (reason)", true,
+                output.getKillReason() == ProcessManager.KillReason.Timeout);
+        Assert.equals("testHangTimeout (finish)", true, output.isFinish());
+        Assert.equals("testHangTimeout (elapsed)", true, elapsed < 8000);
+        Assert.equals("testHangTimeout (output)", true, output.getStdInput().contains("started"));
+    }
+
+    public void testIdleTimeout() {
+        File file = script("idle.sh", "echo a\nsleep 0.3\necho b\nsleep 600");
+        ProcessManager.ProcessOutput output = ProcessManager.getInstance().run(
+                new ProcessTask("Idle", command(file)).setTimeout(60000).setIdleTimeout(1000));
+
+        Assert.equals("testIdleTimeout (reason)", true,
+                output.getKillReason() == ProcessManager.KillReason.Idle);
+        Assert.equals("testIdleTimeout (output)", 2, output.getStdInput().size());
+        Assert.equals("testIdleTimeout (run time)", true, output.getRunTime() < 8000);
+    }
+
+    public void testSpamOutput() {
+        // 两个流都输出大量数据，未读取时会写满管道并挂起
+        File file = script("spam.sh",
+                "i=0\nwhile [ $i -lt 20000 ]; do\n" +
+                "  echo \"stdout line $i with some padding to fill the pipe buffer quickly\"\n" +
+                "  echo \"stderr line $i with some padding to fill the pipe buffer quickly\" 1>&2\n" +
+                "  i=$((i+1))\ndone\nexit 0");
+        final AtomicInteger lines = new AtomicInteger(0);
+        ProcessManager.ProcessOutput output = ProcessManager.getInstance().run(
+                new ProcessTask("Spam", command(file)).setTimeout(60000).setMaxCapture(64 * 1024)
+                        .setLineListener((line, error) -> lines.incrementAndGet()));
+
+        Assert.equals("testSpamOutput (status)", 0, output.getStatus());
+        Assert.equals("testSpamOutput (killed)", false, output.isKilled());
+        Assert.equals("testSpamOutput (truncated)", true, output.isTruncated());
+        Assert.equals("testSpamOutput (listener)", 40000, lines.get());
+        Assert.equals("testSpamOutput (bounded)", true, output.getStdInput().size() < 2000);
+        Assert.equals("testSpamOutput (bounded error)", true, output.getErrorInput().size() < 2000);
+    }
+
+    public void testMissingCommand() {
+        List<String> commandLine = new ArrayList<>();
+        commandLine.add(new File(this.workPath, "not-exists").getAbsolutePath());
+        ProcessManager.ProcessOutput output = ProcessManager.getInstance().run(commandLine);
+
+        Assert.equals("testMissingCommand (finish)", true, output.isFinish());
+        Assert.equals("testMissingCommand (failed)", true, 0 != output.getStatus());
+    }
+
+    public void testConcurrency() {
+        final File file = script("slow.sh", "sleep 0.5\necho done");
+        ProcessManager.getInstance().setConcurrency("Slow", 2);
+
+        ExecutorService executor = Executors.newFixedThreadPool(6);
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 6; ++i) {
+            executor.execute(() -> {
+                ProcessManager.getInstance().run(new ProcessTask("Slow", command(file)));
+            });
+        }
+
+        // 运行中的进程数不超过并发数
+        int maxRunning = 0;
+        while (true) {
+            JSONObject stats = ProcessManager.getInstance().getStatistics().getJSONObject("Slow");
+            maxRunning = Math.max(maxRunning, stats.getInt("running"));
+            if (stats.getLong("runs") >= 6) {
+                break;
+            }
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+        long elapsed = System.currentTimeMillis() - start;
+        executor.shutdown();
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            // Nothing
+        }
+
+        System.out.println("testConcurrency - elapsed: " + elapsed + " ms, max running: " + maxRunning);
+        Assert.equals("testConcurrency (max running)", true, maxRunning <= 2);
+        Assert.equals("testConcurrency (queued)", true, elapsed >= 1400);
+    }
+
+    public void testStatistics() {
+        JSONObject stats = ProcessManager.getInstance().getStatistics();
+        System.out.println(stats.toString(4));
+
+        Assert.equals("testStatistics (hang kills)", 1, stats.getJSONObject("Hang").getInt("timeoutKills"));
+        Assert.equals("testStatistics (idle kills)", 1, stats.getJSONObject("Idle").getInt("idleKills"));
+        Assert.equals("testStatistics (normal failures)", 2, stats.getJSONObject("normal").getInt("failures"));
+        Assert.equals("testStatistics (slow queue time)", true,
+                stats.getJSONObject("Slow").getJSONObject("queueTime").length() > 0);
+    }
+
+    public static void main(String[] args) {
+        ProcessManagerTest test = new ProcessManagerTest();
+        test.testNormalExit();
+        test.testHangTimeout();
+        test.testIdleTimeout();
+        test.testSpamOutput();
+        test.testMissingCommand();
+        test.testConcurrency();
+        test.testStatistics();
+
+        ProcessManager.getInstance().destroy();
+    }
+}
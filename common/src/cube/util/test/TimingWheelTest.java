@@ -0,0 +1,140 @@
+/*
+ * This source file is part of Cube.
+ *
+ * Copyright (c) 2023-2026 Ambrose Xu.
+ */
+
+package cube.util.test;
+
+import cube.util.Assert;
+import cube.util.TimingWheel;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 时间轮测试。
+ */
+public class TimingWheelTest {
+
+    private final static long TIMEOUT = 5 * 60 * 1000L;
+
+    public TimingWheelTest() {
+    }
+
+    public void testScheduleAndCancel() {
+        final List<String> expired = new ArrayList<>();
+        TimingWheel<String, String> wheel = new TimingWheel<>(1000, 16, (key, value) -> {
+            expired.add(key + "=" + value);
+        }, Runnable::run);
+
+        long now = 100000L;
+        wheel.advance(now);
+        wheel.schedule("a", "A", 5000, now);
+        wheel.schedule("b", "B", 5000, now);
+        wheel.schedule("c", "C", 5000, now);
+        wheel.schedule("d", "D", 40000, now);
+
+        Assert.equals("testScheduleAndCancel (cancel)", true, "B".equals(wheel.cancel("b")));
+        Assert.equals("testScheduleAndCancel (cancel again)", true, null == wheel.cancel("b"));
+
+        // 心跳续期
+        wheel.touch("c", now + 3000);
+
+        Assert.equals("testScheduleAndCancel (early)", 0, wheel.advance(now + 4000));
+        Assert.equals("testScheduleAndCancel (expire a)", 1, wheel.advance(now + 5000));
+        Assert.equals("testScheduleAndCancel (expired a)", true, expired.contains("a=A"));
+        Assert.equals("testScheduleAndCancel (c alive)", true, wheel.contains("c"));
+
+        Assert.equals("testScheduleAndCancel (expire c)", 1, wheel.advance(now + 8000));
+        Assert.equals("testScheduleAndCancel (expired c)", true, expired.contains("c=C"));
+
+        // 超过一圈的条目和跨越多圈的推进
+        Assert.equals("testScheduleAndCancel (d alive)", 0, wheel.advance(now + 39000));
+        Assert.equals("testScheduleAndCancel (expire d)", 1, wheel.advance(now + 100000));
+        Assert.equals("testScheduleAndCancel (size)", 0, wheel.size());
+
+        // 替换条目
+        wheel.schedule("e", "E1", 60000, now + 100000);
+        wheel.schedule("e", "E2", 2000, now + 100000);
+        Assert.equals("testScheduleAndCancel (replace)", 1, wheel.advance(now + 102000));
+        Assert.equals("testScheduleAndCancel (replaced)", true, expired.contains("e=E2"));
+    }
+
+    /**
+     * 一百万个会话，模拟十分钟内每秒推进一次，每秒有部分会话心跳。
+     * 与逐个扫描全部会话的方式比较每次推进的开销。
+     */
+    public void testMillionSessions() {
+        final int sessions = 1000000;
+        final AtomicInteger expiredCount = new AtomicInteger(0);
+        TimingWheel<Integer, Integer> wheel = new TimingWheel<>(1000, 512, (key, value) -> {
+            expiredCount.incrementAndGet();
+        }, Runnable::run);
+
+        long base = 1000000000L;
+        wheel.advance(base);
+
+        // 会话的登录时间分布在五分钟内
+        Map<Integer, Long> timestamps = new ConcurrentHashMap<>();
+        long time = System.nanoTime();
+        for (int i = 0; i < sessions; ++i) {
+            long loginTime = base + (i % 300) * 1000L;
+            wheel.schedule(i, i, TIMEOUT, loginTime);
+            timestamps.put(i, loginTime);
+        }
+        System.out.println("Schedule " + sessions + " sessions: "
+                + ((System.nanoTime() - time) / 1000000) + " ms");
+
+        // 编号为偶数的会话每分钟心跳一次
+        long wheelCost = 0;
+        long maxWheelCost = 0;
+        long scanCost = 0;
+        int ticks = 0;
+        for (long now = base + 1000; now <= base + 10 * 60 * 1000L; now += 1000) {
+            if ((now - base) % 60000 == 0) {
+                for (int i = 0; i < sessions; i += 2) {
+                    wheel.touch(i, now);
+                    timestamps.put(i, now);
+                }
+            }
+
+            long start = System.nanoTime();
+            wheel.advance(now);
+            long cost = System.nanoTime() - start;
+            wheelCost += cost;
+            maxWheelCost = Math.max(maxWheelCost, cost);
+
+            // 原方式：扫描全部会话
+            start = System.nanoTime();
+            Iterator<Map.Entry<Integer, Long>> iter = timestamps.entrySet().iterator();
+            while (iter.hasNext()) {
+                if (now - iter.next().getValue() >= TIMEOUT) {
+                    iter.remove();
+                }
+            }
+            scanCost += System.nanoTime() - start;
+            ++ticks;
+        }
+
+        System.out.println("Ticks: " + ticks + ", expired: " + expiredCount.get() + ", remaining: " + wheel.size());
+        System.out.println("  wheel : avg " + (wheelCost / ticks / 1000) + " us/tick, max "
+                + (maxWheelCost / 1000) + " us");
+        System.out.println("  scan  : avg " + (scanCost / ticks / 1000) + " us/tick");
+
+        Assert.equals("testMillionSessions (expired)", sessions / 2, expiredCount.get());
+        Assert.equals("testMillionSessions (remaining)", sessions / 2, wheel.size());
+        Assert.equals("testMillionSessions (same as scan)", timestamps.size(), wheel.size());
+        Assert.equals("testMillionSessions (cheaper)", true, wheelCost < scanCost);
+    }
+
+    public static void main(String[] args) {
+        TimingWheelTest test = new TimingWheelTest();
+        test.testScheduleAndCancel();
+        test.testMillionSessions();
+    }
+}
@@ -15,16 +15,21 @@ import cube.console.mgmt.DispatcherManager;
 import cube.console.mgmt.ServiceManager;
 import cube.console.mgmt.StatisticDataManager;
 import cube.console.mgmt.UserManager;
+import cube.console.series.Resolution;
+import cube.console.series.SeriesRecord;
+import cube.console.series.TimeSeriesStore;
+import cube.console.tool.DeployTool;
 import cube.report.JVMReport;
 import cube.report.LogLine;
 import cube.report.LogReport;
 import cube.report.PerformanceReport;
 import cube.util.ConfigUtils;
+import org.json.JSONArray;
+import org.json.JSONObject;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-import java.util.Vector;
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
@@ -59,6 +64,18 @@ public final class Console implements Runnable {
 
     private int maxReportNum = 30;
 
+    /**
+     * 报告指标的时序数据存储。
+     */
+    private TimeSeriesStore seriesStore;
+
+    /**
+     * 时序数据清理间隔。
+     */
+    private long seriesPurgeInterval = 60L * 60 * 1000;
+
+    private long lastSeriesPurge = 0;
+
     private ScheduledExecutorService timer;
 
     private ConsoleLogHandler logHandler;
@@ -110,6 +127,9 @@ public final class Console implements Runnable {
         this.serviceManager.start();
         this.statisticDataManager.start();
 
+        this.seriesStore = this.createSeriesStore();
+        this.seriesStore.open();
+
         this.timer = Executors.newScheduledThreadPool(2);
         this.timer.scheduleWithFixedDelay(this, 10L, 10L, TimeUnit.SECONDS);
 
@@ -123,6 +143,43 @@ public final class Console implements Runnable {
         this.userManager.stop();
 
         this.timer.shutdown();
+
+        if (null != this.seriesStore) {
+            this.seriesStore.close();
+        }
+    }
+
+    private TimeSeriesStore createSeriesStore() {
+        Properties properties = null;
+        for (String path : DeployTool.CONSOLE_PROP_FILES) {
+            File file = new File(path);
+            if (file.exists()) {
+                try {
+                    properties = ConfigUtils.readProperties(path);
+                } catch (IOException e) {
+                    Logger.w(this.getClass(), "#createSeriesStore", e);
+                }
+                break;
+            }
+        }
+
+        if (null == properties) {
+            properties = new Properties();
+        }
+
+        TimeSeriesStore store = new TimeSeriesStore(new File(properties.getProperty("series.path", "storage/series")));
+        for (Resolution resolution : Resolution.values()) {
+            // 保留时长，单位：天
+            String value = properties.getProperty("series.retention." + resolution.name);
+            if (null != value) {
+                try {
+                    store.setRetention(resolution, Long.parseLong(value.trim()) * 24L * 3600 * 1000);
+                } catch (NumberFormatException e) {
+                    Logger.w(this.getClass(), "#createSeriesStore - Retention format error: " + value);
+                }
+            }
+        }
+        return store;
     }
 
     public void appendLogReport(LogReport report) {
@@ -188,11 +245,23 @@ public final class Console implements Runnable {
         if (list.size() > this.maxReportNum) {
             list.remove(0);
         }
+
+        if (null != this.seriesStore) {
+            String reporter = report.getReporter();
+            long time = report.getTimestamp();
+            this.seriesStore.append(makeSeriesName(reporter, "jvm.maxMemory"), time, report.maxMemory);
+            this.seriesStore.append(makeSeriesName(reporter, "jvm.totalMemory"), time, report.totalMemory);
+            this.seriesStore.append(makeSeriesName(reporter, "jvm.freeMemory"), time, report.freeMemory);
+        }
     }
 
     public List<JVMReport> queryJVMReport(String reporter, int num, long time) {
         List<JVMReport> result = new ArrayList<>(num);
         List<JVMReport> list = this.serverJVMMap.get(reporter);
+        if (null == list) {
+            list = this.queryJVMReportFromSeries(reporter, num, time);
+        }
+
         if (null == list) {
             long reportTime = time;
             for (int i = 0; i < num; ++i) {
@@ -241,6 +310,48 @@ public final class Console implements Runnable {
         return result;
     }
 
+    /**
+     * 从时序存储的分钟汇总数据生成 JVM 报告，用于内存中没有记录时。
+     */
+    private List<JVMReport> queryJVMReportFromSeries(String reporter, int num, long time) {
+        if (null == this.seriesStore) {
+            return null;
+        }
+
+        long from = time - Resolution.Minute.interval * num;
+        List<SeriesRecord> max = this.seriesStore.query(makeSeriesName(reporter, "jvm.maxMemory"),
+                Resolution.Minute, from, time);
+        if (max.isEmpty()) {
+            return null;
+        }
+        List<SeriesRecord> total = this.seriesStore.query(makeSeriesName(reporter, "jvm.totalMemory"),
+                Resolution.Minute, from, time);
+        List<SeriesRecord> free = this.seriesStore.query(makeSeriesName(reporter, "jvm.freeMemory"),
+                Resolution.Minute, from, time);
+
+        // 各序列可能缺少部分区间，按汇总区间时间对齐
+        Map<Long, SeriesRecord> totalMap = new HashMap<>();
+        for (SeriesRecord record : total) {
+            totalMap.put(record.timestamp, record);
+        }
+        Map<Long, SeriesRecord> freeMap = new HashMap<>();
+        for (SeriesRecord record : free) {
+            freeMap.put(record.timestamp, record);
+        }
+
+        List<JVMReport> result = new ArrayList<>(max.size());
+        for (SeriesRecord record : max) {
+            JVMReport report = new JVMReport(reporter, record.timestamp);
+            report.maxMemory = Math.round(record.getAverage());
+            SeriesRecord totalRecord = totalMap.get(record.timestamp);
+            report.totalMemory = (null != totalRecord) ? Math.round(totalRecord.getAverage()) : 0;
+            SeriesRecord freeRecord = freeMap.get(record.timestamp);
+            report.freeMemory = (null != freeRecord) ? Math.round(freeRecord.getAverage()) : 0;
+            result.add(report);
+        }
+        return result;
+    }
+
     public void appendPerformanceReport(PerformanceReport report) {
         Logger.d(this.getClass(), "Received report from " + report.getReporter() + " (" + report.getName() + ")");
 
@@ -254,6 +365,112 @@ public final class Console implements Runnable {
         if (list.size() > this.maxReportNum) {
             list.remove(0);
         }
+
+        if (null != this.seriesStore) {
+            this.recordPerformanceMetrics(report);
+        }
+    }
+
+    /**
+     * 将性能报告的连接数、性能项和平均应答时间写入时序存储。
+     */
+    private void recordPerformanceMetrics(PerformanceReport report) {
+        String reporter = report.getReporter();
+        long time = report.getTimestamp();
+        JSONObject json = report.toCompactJSON();
+
+        JSONArray connNums = json.getJSONArray("connNums");
+        for (int i = 0; i < connNums.length(); ++i) {
+            JSONObject conn = connNums.getJSONObject(i);
+            this.seriesStore.append(makeSeriesName(reporter, "conn." + conn.getInt("port")),
+                    time, conn.getInt("realtime"));
+        }
+
+        JSONObject items = json.getJSONObject("items");
+        for (String item : items.keySet()) {
+            JSONObject values = items.getJSONObject(item);
+            for (String key : values.keySet()) {
+                Object value = values.get(key);
+                if (value instanceof Number) {
+                    this.seriesStore.append(makeSeriesName(reporter, "item." + item + "." + key),
+                            time, ((Number) value).doubleValue());
+                }
+            }
+        }
+
+        JSONObject benchmark = json.getJSONObject("benchmark");
+        JSONObject counterMap = benchmark.getJSONObject("counterMap");
+        for (String cellet : counterMap.keySet()) {
+            this.seriesStore.append(makeSeriesName(reporter, "counter." + cellet),
+                    time, counterMap.getLong(cellet));
+        }
+
+        JSONObject avgMap = benchmark.getJSONObject("avgResponseTimeMap");
+        for (String cellet : avgMap.keySet()) {
+            JSONObject actions = avgMap.getJSONObject(cellet);
+            for (String action : actions.keySet()) {
+                this.seriesStore.append(makeSeriesName(reporter, "rt." + cellet + "." + action),
+                        time, actions.getJSONObject(action).getLong("value"));
+            }
+        }
+    }
+
+    /**
+     * 列出报告人的指标名称。
+     *
+     * @param reporter
+     * @return
+     */
+    public List<String> listMetrics(String reporter) {
+        List<String> result = new ArrayList<>();
+        if (null == this.seriesStore) {
+            return result;
+        }
+
+        String prefix = makeSeriesName(reporter, "");
+        for (String name : this.seriesStore.listSeries(prefix)) {
+            result.add(name.substring(prefix.length()));
+        }
+        return result;
+    }
+
+    /**
+     * 查询指标的时序数据。
+     *
+     * @param reporter 报告人。
+     * @param metric 指标名称。
+     * @param from 起始时间。
+     * @param to 结束时间。
+     * @param maxPoints 最大数据点数量，用于选择数据精度。
+     * @return 返回包含精度、记录列表和聚合值的数据。
+     */
+    public JSONObject queryMetric(String reporter, String metric, long from, long to, int maxPoints) {
+        JSONObject result = new JSONObject();
+        result.put("metric", metric);
+        if (null == this.seriesStore) {
+            result.put("list", new JSONArray());
+            return result;
+        }
+
+        Resolution resolution = this.seriesStore.selectResolution(from, to, maxPoints, System.currentTimeMillis());
+        List<SeriesRecord> records = this.seriesStore.query(makeSeriesName(reporter, metric), resolution, from, to);
+
+        JSONArray list = new JSONArray();
+        for (SeriesRecord record : records) {
+            list.put(record.toJSON());
+        }
+        result.put("resolution", resolution.name);
+        result.put("list", list);
+
+        SeriesRecord aggregate = SeriesRecord.merge(from, records);
+        if (null != aggregate) {
+            result.put("aggregate", aggregate.toJSON());
+        }
+        return result;
+    }
+
+    private static String makeSeriesName(String reporter, String metric) {
+        return reporter + "/" + metric;
     }
 
     public PerformanceReport queryLastPerformanceReport(String reporter) {
@@ -271,17 +488,32 @@ public final class Console implements Runnable {
             return null;
         }
 
-        PerformanceReport report = null;
+        synchronized (list) {
+            // 报告按时间顺序追加，二分查找最接近的报告
+            int low = 0;
+            int high = list.size() - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (list.get(mid).getTimestamp() < timestamp) {
+                    low = mid + 1;
+                }
+                else {
+                    high = mid - 1;
+                }
+            }
 
-        for (int i = list.size() - 1; i >= 0; --i) {
-            PerformanceReport pr = list.get(i);
-            if (Math.abs(pr.getTimestamp() - timestamp) < 5000) {
-                report = pr;
-                break;
+            PerformanceReport report = null;
+            long delta = 5000;
+            for (int i = Math.max(0, high); i <= Math.min(list.size() - 1, low); ++i) {
+                PerformanceReport pr = list.get(i);
+                long d = Math.abs(pr.getTimestamp() - timestamp);
+                if (d < delta) {
+                    delta = d;
+                    report = pr;
+                }
             }
+            return report;
         }
-
-        return report;
     }
 
     public StatisticDataManager getStatisticDataManager() {
@@ -293,6 +525,14 @@ public final class Console implements Runnable {
         long now = System.currentTimeMillis();
         this.dispatcherManager.tick(now);
         this.serviceManager.tick(now);
+
+        if (null != this.seriesStore && now - this.lastSeriesPurge >= this.seriesPurgeInterval) {
+            this.lastSeriesPurge = now;
+            int count = this.seriesStore.purge(now);
+            if (count > 0) {
+                Logger.i(this.getClass(), "#run - Purge series segments: " + count);
+            }
+        }
     }
 
     protected class ConsoleLogHandler implements LogHandle {
@@ -31,6 +31,11 @@ import java.util.Map;
  */
 public class ServerReportHandler extends ContextHandler {
 
+    /**
+     * 指标时序数据查询。
+     */
+    public final static String SERIES = "Series";
+
     private Console console;
 
     public ServerReportHandler(Console console) {
@@ -101,6 +106,25 @@ public class ServerReportHandler extends ContextHandler {
                         response.put("report", detail ? perfReport.toDetailJSON() : perfReport.toCompactJSON());
                     }
 
+                    httpServletResponse.getWriter().write(response.toString());
+                }
+                else if (report.equals(SERIES)) {
+                    JSONObject response = new JSONObject();
+                    response.put("name", name);
+
+                    String metric = params.get("metric");
+                    if (null == metric) {
+                        // 列出指标
+                        response.put("metrics", new JSONArray(console.listMetrics(name)));
+                    }
+                    else {
+                        long to = (time == 0) ? System.currentTimeMillis() : time;
+                        long from = params.containsKey("from") ? Long.parseLong(params.get("from"))
+                                : to - 24L * 3600 * 1000;
+                        int num = params.containsKey("num") ? Integer.parseInt(params.get("num")) : 360;
+                        response.put("series", console.queryMetric(name, metric, from, to, num));
+                    }
+
                     httpServletResponse.getWriter().write(response.toString());
                 }
             }
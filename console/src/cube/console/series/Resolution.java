@@ -0,0 +1,104 @@
+/*
+ * This source file is part of Cube.
+ *
+ * Copyright (c) 2023-2026 Ambrose Xu.
+ */
+
+package cube.console.series;
+
+/**
+ * 时序数据的精度层级。
+ */
+public enum Resolution {
+
+    /**
+     * 原始数据点。
+     */
+    Raw("raw", 0L, 24L * 3600 * 1000, 2L * 24 * 3600 * 1000),
+
+    /**
+     * 1 分钟汇总。
+     */
+    Minute("minute", 60L * 1000, 7L * 24 * 3600 * 1000, 30L * 24 * 3600 * 1000),
+
+    /**
+     * 1 小时汇总。
+     */
+    Hour("hour", 3600L * 1000, 30L * 24 * 3600 * 1000, 365L * 24 * 3600 * 1000),
+
+    /**
+     * 1 天汇总。
+     */
+    Day("day", 24L * 3600 * 1000, 366L * 24 * 3600 * 1000, 5L * 365 * 24 * 3600 * 1000)
+
+    ;
+
+    public final String name;
+
+    /**
+     * 汇总间隔，单位：毫秒。
+     */
+    public final long interval;
+
+    /**
+     * 每个段文件覆盖的时长，单位：毫秒。
+     */
+    public final long segmentSpan;
+
+    /**
+     * 默认保留时长，单位：毫秒。
+     */
+    public final long defaultRetention;
+
+    Resolution(String name, long interval, long segmentSpan, long defaultRetention) {
+        this.name = name;
+        this.interval = interval;
+        this.segmentSpan = segmentSpan;
+        this.defaultRetention = defaultRetention;
+    }
+
+    /**
+     * 返回上一级汇总精度，没有时返回 {@code null} 。
+     *
+     * @return
+     */
+    public Resolution coarser() {
+        switch (this) {
+            case Raw:
+                return Minute;
+            case Minute:
+                return Hour;
+            case Hour:
+                return Day;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * 返回下一级精度，没有时返回 {@code null} 。
+     *
+     * @return
+     */
+    public Resolution finer() {
+        switch (this) {
+            case Day:
+                return Hour;
+            case Hour:
+                return Minute;
+            case Minute:
+                return Raw;
+            default:
+                return null;
+        }
+    }
+
+    public static Resolution parse(String name) {
+        for (Resolution resolution : Resolution.values()) {
+            if (resolution.name.equalsIgnoreCase(name)) {
+                return resolution;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * This source file is part of Cube.
+ *
+ * Copyright (c) 2023-2026 Ambrose Xu.
+ */
+
+package cube.console.series;
+
+import cube.common.JSONable;
+import org.json.JSONObject;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 时序记录。原始数据点和汇总数据使用相同的定长格式。
+ */
+public class SeriesRecord implements JSONable {
+
+    /**
+     * 记录的字节长度。
+     */
+    public final static int SIZE = 8 + 4 + 8 + 8 + 8 + 8;
+
+    /**
+     * 记录时间戳，汇总数据为汇总区间的起始时间。
+     */
+    public final long timestamp;
+
+    /**
+     * 数据点数量。
+     */
+    public final int count;
+
+    public final double min;
+
+    public final double max;
+
+    public final double sum;
+
+    /**
+     * 第 99 百分位数。
+     */
+    public final double p99;
+
+    public SeriesRecord(long timestamp, double value) {
+        this(timestamp, 1, value, value, value, value);
+    }
+
+    public SeriesRecord(long timestamp, int count, double min, double max, double sum, double p99) {
+        this.timestamp = timestamp;
+        this.count = count;
+        this.min = min;
+        this.max = max;
+        this.sum = sum;
+        this.p99 = p99;
+    }
+
+    public double getAverage() {
+        return (this.count > 0) ? this.sum / this.count : 0;
+    }
+
+    public void write(ByteBuffer buf) {
+        buf.putLong(this.timestamp);
+        buf.putInt(this.count);
+        buf.putDouble(this.min);
+        buf.putDouble(this.max);
+        buf.putDouble(this.sum);
+        buf.putDouble(this.p99);
+    }
+
+    public static SeriesRecord read(ByteBuffer buf) {
+        return new SeriesRecord(buf.getLong(), buf.getInt(), buf.getDouble(), buf.getDouble(),
+                buf.getDouble(), buf.getDouble());
+    }
+
+    /**
+     * 合并记录。
+     * 百分位数按记录数量加权，由各记录的百分位数近似得出，原始数据点合并时为精确值。
+     *
+     * @param timestamp 合并后的时间戳。
+     * @param records 待合并的记录。
+     * @return 返回合并后的记录，没有记录时返回 {@code null} 。
+     */
+    public static SeriesRecord merge(long timestamp, List<SeriesRecord> records) {
+        if (records.isEmpty()) {
+            return null;
+        }
+
+        int count = 0;
+        double min = Double.MAX_VALUE;
+        double max = -Double.MAX_VALUE;
+        double sum = 0;
+        for (SeriesRecord record : records) {
+            count += record.count;
+            min = Math.min(min, record.min);
+            max = Math.max(max, record.max);
+            sum += record.sum;
+        }
+
+        List<SeriesRecord> sorted = new ArrayList<>(records);
+        Collections.sort(sorted, (a, b) -> Double.compare(a.p99, b.p99));
+        long rank = (long) Math.ceil(count * 0.99);
+        long cumulative = 0;
+        double p99 = max;
+        for (SeriesRecord record : sorted) {
+            cumulative += record.count;
+            if (cumulative >= rank) {
+                p99 = record.p99;
+                break;
+            }
+        }
+
+        return new SeriesRecord(timestamp, count, min, max, sum, p99);
+    }
+
+    @Override
+    public JSONObject toJSON() {
+        JSONObject json = new JSONObject();
+        json.put("time", this.timestamp);
+        json.put("count", this.count);
+        json.put("min", this.min);
+        json.put("max", this.max);
+        json.put("avg", this.getAverage());
+        json.put("p99", this.p99);
+        return json;
+    }
+
+    @Override
+    public JSONObject toCompactJSON() {
+        return this.toJSON();
+    }
+}
@@ -0,0 +1,711 @@
+/*
+ * This source file is part of Cube.
+ *
+ * Copyright (c) 2023-2026 Ambrose Xu.
+ */
+
+package cube.console.series;
+
+import cell.util.log.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 嵌入式时序数据存储。
+ * 每个序列按精度分为原始、分钟、小时、天四个层级，每个层级由按时间切分的只追加段文件组成，
+ * 记录为定长格式。段索引保存在内存中，段内按时间戳二分查找，查询时不需要将历史数据载入内存。
+ * 原始数据写入时逐级汇总，超过保留时长的段文件整体删除。
+ * 写入使用的段文件句柄由所有序列共享，按最近使用顺序最多保持 {@link #MAX_OPEN_FILES} 个。
+ */
+public class TimeSeriesStore {
+
+    private final static String SEGMENT_SUFFIX = ".seg";
+
+    private final static long NONE = Long.MIN_VALUE;
+
+    /**
+     * 选择精度时原始数据点的估算间隔。
+     */
+    private final static long RAW_INTERVAL_HINT = 1000L;
+
+    /**
+     * 同时打开的段文件句柄最大数量。
+     */
+    public final static int MAX_OPEN_FILES = 64;
+
+    private final File root;
+
+    private final EnumMap<Resolution, Long> retentions;
+
+    private final ConcurrentHashMap<String, Series> seriesMap;
+
+    private final TailFiles tailFiles;
+
+    public TimeSeriesStore(File root) {
+        this.root = root;
+        this.retentions = new EnumMap<>(Resolution.class);
+        for (Resolution resolution : Resolution.values()) {
+            this.retentions.put(resolution, resolution.defaultRetention);
+        }
+        this.seriesMap = new ConcurrentHashMap<>();
+        this.tailFiles = new TailFiles(MAX_OPEN_FILES);
+    }
+
+    public File getRoot() {
+        return this.root;
+    }
+
+    /**
+     * 设置指定精度数据的保留时长。
+     *
+     * @param resolution
+     * @param retention 保留时长，单位：毫秒。
+     */
+    public void setRetention(Resolution resolution, long retention) {
+        this.retentions.put(resolution, retention);
+    }
+
+    public long getRetention(Resolution resolution) {
+        return this.retentions.get(resolution);
+    }
+
+    public void open() {
+        if (!this.root.exists()) {
+            this.root.mkdirs();
+        }
+    }
+
+    public void close() {
+        for (Series series : this.seriesMap.values()) {
+            synchronized (series) {
+                series.close();
+            }
+        }
+        this.seriesMap.clear();
+        this.tailFiles.closeAll();
+    }
+
+    /**
+     * 返回当前打开的段文件句柄数量。
+     *
+     * @return
+     */
+    public int numOpenFiles() {
+        return this.tailFiles.size();
+    }
+
+    /**
+     * 追加数据点。同一序列的数据点需按时间顺序追加，早于最后一个数据点的数据被丢弃。
+     *
+     * @param name 序列名。
+     * @param timestamp 时间戳。
+     * @param value 数值。
+     * @return 追加成功返回 {@code true} 。
+     */
+    public boolean append(String name, long timestamp, double value) {
+        Series series = this.getSeries(name, true);
+        if (null == series) {
+            return false;
+        }
+
+        synchronized (series) {
+            try {
+                return series.append(timestamp, value);
+            } catch (IOException e) {
+                Logger.w(this.getClass(), "#append - " + name, e);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * 查询指定精度在时间范围内的记录。汇总层级包含尚未结束的当前汇总区间，以及下一级尚未汇总的数据。
+     *
+     * @param name 序列名。
+     * @param resolution 精度。
+     * @param from 起始时间，包含。
+     * @param to 结束时间，包含。
+     * @return 返回按时间排序的记录列表。
+     */
+    public List<SeriesRecord> query(String name, Resolution resolution, long from, long to) {
+        Series series = this.getSeries(name, false);
+        if (null == series) {
+            return new ArrayList<>();
+        }
+
+        synchronized (series) {
+            return series.query(resolution, from, to);
+        }
+    }
+
+    /**
+     * 计算指定精度在时间范围内的聚合值。
+     *
+     * @param name 序列名。
+     * @param resolution 精度。
+     * @param from 起始时间，包含。
+     * @param to 结束时间，包含。
+     * @return 返回聚合记录，没有数据时返回 {@code null} 。
+     */
+    public SeriesRecord aggregate(String name, Resolution resolution, long from, long to) {
+        return SeriesRecord.merge(from, this.query(name, resolution, from, to));
+    }
+
+    /**
+     * 选择数据点数量不超过指定值且在保留时长内的最细精度。
+     *
+     * @param from 起始时间。
+     * @param to 结束时间。
+     * @param maxPoints 最大数据点数量。
+     * @param now 当前时间。
+     * @return
+     */
+    public Resolution selectResolution(long from, long to, int maxPoints, long now) {
+        long range = Math.max(0, to - from);
+        for (Resolution resolution : Resolution.values()) {
+            if (from < now - this.getRetention(resolution)) {
+                continue;
+            }
+
+            long interval = (resolution == Resolution.Raw) ? RAW_INTERVAL_HINT : resolution.interval;
+            if (range / interval <= maxPoints) {
+                return resolution;
+            }
+        }
+        return Resolution.Day;
+    }
+
+    /**
+     * 列出序列名。
+     *
+     * @param prefix 序列名前缀，为 {@code null} 时列出所有序列。
+     * @return
+     */
+    public List<String> listSeries(String prefix) {
+        List<String> result = new ArrayList<>();
+        File[] dirs = this.root.listFiles();
+        if (null == dirs) {
+            return result;
+        }
+
+        for (File dir : dirs) {
+            if (!dir.isDirectory()) {
+                continue;
+            }
+
+            String name = decodeName(dir.getName());
+            if (null == prefix || name.startsWith(prefix)) {
+                result.add(name);
+            }
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    /**
+     * 写入空闲序列的汇总数据，删除超过保留时长的段文件。
+     *
+     * @param now 当前时间。
+     * @return 返回删除的段文件数量。
+     */
+    public int purge(long now) {
+        int count = 0;
+        for (String name : this.listSeries(null)) {
+            Series series = this.getSeries(name, true);
+            if (null == series) {
+                continue;
+            }
+
+            synchronized (series) {
+                try {
+                    series.flushIdle(now);
+                } catch (IOException e) {
+                    Logger.w(this.getClass(), "#purge - " + name, e);
+                }
+
+                for (Resolution resolution : Resolution.values()) {
+                    count += series.tiers.get(resolution).purge(now - this.getRetention(resolution));
+                }
+            }
+        }
+        return count;
+    }
+
+    private Series getSeries(String name, boolean create) {
+        Series series = this.seriesMap.get(name);
+        if (null != series) {
+            return series;
+        }
+
+        File dir = new File(this.root, encodeName(name));
+        if (!create && !dir.exists()) {
+            return null;
+        }
+
+        synchronized (this.seriesMap) {
+            series = this.seriesMap.get(name);
+            if (null == series) {
+                series = new Series(dir);
+                try {
+                    series.load();
+                } catch (IOException e) {
+                    Logger.w(this.getClass(), "#getSeries - " + name, e);
+                    series.close();
+                    return null;
+                }
+                this.seriesMap.put(name, series);
+            }
+        }
+        return series;
+    }
+
+    private static long floor(long timestamp, long span) {
+        return timestamp - Math.floorMod(timestamp, span);
+    }
+
+    private static String encodeName(String name) {
+        try {
+            return URLEncoder.encode(name, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            return name;
+        }
+    }
+
+    private static String decodeName(String name) {
+        try {
+            return URLDecoder.decode(name, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            return name;
+        }
+    }
+
+    /**
+     * 序列。
+     */
+    private class Series {
+
+        private final File dir;
+
+        private final EnumMap<Resolution, Tier> tiers;
+
+        /**
+         * 各汇总层级当前的汇总区间。
+         */
+        private final EnumMap<Resolution, Bucket> buckets;
+
+        private Series(File dir) {
+            this.dir = dir;
+            this.tiers = new EnumMap<>(Resolution.class);
+            this.buckets = new EnumMap<>(Resolution.class);
+        }
+
+        private void load() throws IOException {
+            for (Resolution resolution : Resolution.values()) {
+                Tier tier = new Tier(resolution, new File(this.dir, resolution.name));
+                tier.load();
+                this.tiers.put(resolution, tier);
+
+                if (resolution != Resolution.Raw) {
+                    this.buckets.put(resolution, new Bucket());
+                }
+            }
+
+            // 由下一级数据恢复未写入的汇总数据，逐级进行
+            for (Resolution resolution = Resolution.Minute; null != resolution; resolution = resolution.coarser()) {
+                Tier tier = this.tiers.get(resolution);
+                long from = (tier.last == NONE) ? NONE : tier.last + resolution.interval;
+                for (SeriesRecord record : this.tiers.get(resolution.finer()).read(from, Long.MAX_VALUE)) {
+                    this.roll(resolution, record, false);
+                }
+            }
+        }
+
+        private void close() {
+            for (Tier tier : this.tiers.values()) {
+                tier.close();
+            }
+        }
+
+        private boolean append(long timestamp, double value) throws IOException {
+            Tier raw = this.tiers.get(Resolution.Raw);
+            if (raw.last != NONE && timestamp <= raw.last) {
+                return false;
+            }
+
+            SeriesRecord record = new SeriesRecord(timestamp, value);
+            raw.write(record);
+            this.roll(Resolution.Minute, record, true);
+            return true;
+        }
+
+        private void roll(Resolution resolution, SeriesRecord record, boolean cascade) throws IOException {
+            Tier tier = this.tiers.get(resolution);
+            long start = floor(record.timestamp, resolution.interval);
+            if (tier.last != NONE && start <= tier.last) {
+                // 区间已汇总
+                return;
+            }
+
+            Bucket bucket = this.buckets.get(resolution);
+            if (!bucket.records.isEmpty() && bucket.start != start) {
+                this.flush(resolution, cascade);
+            }
+
+            bucket.start = start;
+            bucket.records.add(record);
+        }
+
+        private void flush(Resolution resolution, boolean cascade) throws IOException {
+            Bucket bucket = this.buckets.get(resolution);
+            SeriesRecord record = SeriesRecord.merge(bucket.start, bucket.records);
+            bucket.records = new ArrayList<>();
+            if (null == record) {
+                return;
+            }
+
+            this.tiers.get(resolution).write(record);
+
+            Resolution coarser = resolution.coarser();
+            if (cascade && null != coarser) {
+                this.roll(coarser, record, true);
+            }
+        }
+
+        private void flushIdle(long now) throws IOException {
+            for (Resolution resolution = Resolution.Minute; null != resolution; resolution = resolution.coarser()) {
+                Bucket bucket = this.buckets.get(resolution);
+                if (!bucket.records.isEmpty() && bucket.start + resolution.interval * 2 <= now) {
+                    this.flush(resolution, true);
+                }
+            }
+        }
+
+        private List<SeriesRecord> query(Resolution resolution, long from, long to) {
+            long start = (resolution == Resolution.Raw) ? from : floor(from, resolution.interval);
+            List<SeriesRecord> result = this.tiers.get(resolution).read(start, to);
+
+            for (SeriesRecord record : this.pending(resolution)) {
+                if (record.timestamp >= start && record.timestamp <= to) {
+                    result.add(record);
+                }
+            }
+            return result;
+        }
+
+        /**
+         * 返回尚未写入层级的汇总记录，包含下一级尚未写入的数据，按时间排序。
+         */
+        private List<SeriesRecord> pending(Resolution resolution) {
+            List<SeriesRecord> result = new ArrayList<>();
+            Bucket bucket = this.buckets.get(resolution);
+            if (null == bucket) {
+                return result;
+            }
+
+            long start = bucket.start;
+            List<SeriesRecord> records = new ArrayList<>(bucket.records);
+            for (SeriesRecord record : this.pending(resolution.finer())) {
+                long recordStart = floor(record.timestamp, resolution.interval);
+                if (!records.isEmpty() && recordStart != start) {
+                    result.add(SeriesRecord.merge(start, records));
+                    records = new ArrayList<>();
+                }
+                start = recordStart;
+                records.add(record);
+            }
+
+            if (!records.isEmpty()) {
+                result.add(SeriesRecord.merge(start, records));
+            }
+            return result;
+        }
+    }
+
+    /**
+     * 汇总区间。
+     */
+    private class Bucket {
+
+        private long start = NONE;
+
+        private List<SeriesRecord> records = new ArrayList<>();
+    }
+
+    /**
+     * 精度层级，由按时间切分的段文件组成。
+     */
+    private class Tier {
+
+        private final Resolution resolution;
+
+        private final File dir;
+
+        private final TreeMap<Long, Segment> segments;
+
+        /**
+         * 最后一条记录的时间戳。
+         */
+        private long last = NONE;
+
+        private Tier(Resolution resolution, File dir) {
+            this.resolution = resolution;
+            this.dir = dir;
+            this.segments = new TreeMap<>();
+        }
+
+        private void load() throws IOException {
+            File[] files = this.dir.listFiles();
+            if (null == files) {
+                return;
+            }
+
+            for (File file : files) {
+                String name = file.getName();
+                if (!name.endsWith(SEGMENT_SUFFIX)) {
+                    continue;
+                }
+
+                long start;
+                try {
+                    start = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+
+                // 忽略末尾不完整的记录
+                int count = (int) (file.length() / SeriesRecord.SIZE);
+                if (count == 0) {
+                    file.delete();
+                    continue;
+                }
+
+                this.segments.put(start, new Segment(start, file, count));
+            }
+
+            if (!this.segments.isEmpty()) {
+                Segment segment = this.segments.lastEntry().getValue();
+                try (RandomAccessFile raf = new RandomAccessFile(segment.file, "r")) {
+                    raf.seek((long) (segment.count - 1) * SeriesRecord.SIZE);
+                    this.last = raf.readLong();
+                }
+            }
+        }
+
+        private void write(SeriesRecord record) throws IOException {
+            long start = floor(record.timestamp, this.resolution.segmentSpan);
+            Segment segment = this.segments.get(start);
+            if (null == segment) {
+                if (!this.dir.exists()) {
+                    this.dir.mkdirs();
+                }
+                segment = new Segment(start, new File(this.dir, start + SEGMENT_SUFFIX), 0);
+                this.segments.put(start, segment);
+            }
+
+            ByteBuffer buf = ByteBuffer.allocate(SeriesRecord.SIZE);
+            record.write(buf);
+            tailFiles.write(this, segment, buf.array());
+            segment.count += 1;
+            this.last = record.timestamp;
+        }
+
+        private List<SeriesRecord> read(long from, long to) {
+            List<SeriesRecord> result = new ArrayList<>();
+            if (this.segments.isEmpty() || from > to) {
+                return result;
+            }
+
+            Long first = this.segments.floorKey(from);
+            if (null == first) {
+                first = this.segments.firstKey();
+                if (first > to) {
+                    // 查询范围早于所有段
+                    return result;
+                }
+            }
+
+            for (Segment segment : this.segments.subMap(first, true, to, true).values()) {
+                try (RandomAccessFile raf = new RandomAccessFile(segment.file, "r")) {
+                    int begin = this.search(raf, segment.count, from, false);
+                    int end = this.search(raf, segment.count, to, true);
+                    if (end <= begin) {
+                        continue;
+                    }
+
+                    byte[] data = new byte[(end - begin) * SeriesRecord.SIZE];
+                    raf.seek((long) begin * SeriesRecord.SIZE);
+                    raf.readFully(data);
+                    ByteBuffer buf = ByteBuffer.wrap(data);
+                    for (int i = begin; i < end; ++i) {
+                        result.add(SeriesRecord.read(buf));
+                    }
+                } catch (IOException e) {
+                    Logger.w(TimeSeriesStore.class, "#read - " + segment.file.getPath(), e);
+                }
+            }
+            return result;
+        }
+
+        /**
+         * 二分查找第一个时间戳大于等于（或大于）指定时间的记录索引。
+         */
+        private int search(RandomAccessFile raf, int count, long timestamp, boolean after) throws IOException {
+            int low = 0;
+            int high = count;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                raf.seek((long) mid * SeriesRecord.SIZE);
+                long value = raf.readLong();
+                if (value < timestamp || (after && value == timestamp)) {
+                    low = mid + 1;
+                }
+                else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        private int purge(long cutoff) {
+            int count = 0;
+            Iterator<Segment> iter = this.segments.values().iterator();
+            while (iter.hasNext()) {
+                Segment segment = iter.next();
+                if (segment.start + this.resolution.segmentSpan > cutoff) {
+                    break;
+                }
+
+                tailFiles.close(this, segment);
+                segment.file.delete();
+                iter.remove();
+                ++count;
+            }
+            return count;
+        }
+
+        private void close() {
+            tailFiles.close(this, null);
+        }
+    }
+
+    /**
+     * 写入段文件的句柄缓存。按最近使用顺序淘汰，每个层级最多占用一个句柄。
+     */
+    private class TailFiles {
+
+        private final int capacity;
+
+        private final LinkedHashMap<Tier, TailFile> files;
+
+        private TailFiles(int capacity) {
+            this.capacity = Math.max(1, capacity);
+            this.files = new LinkedHashMap<>(16, 0.75f, true);
+        }
+
+        private synchronized int size() {
+            return this.files.size();
+        }
+
+        /**
+         * 在段文件的记录末尾写入数据。
+         */
+        private synchronized void write(Tier tier, Segment segment, byte[] data) throws IOException {
+            TailFile tail = this.files.get(tier);
+            if (null == tail || tail.segment != segment) {
+                if (null != tail) {
+                    this.files.remove(tier);
+                    tail.close();
+                }
+
+                RandomAccessFile file = new RandomAccessFile(segment.file, "rw");
+                // 截断末尾不完整的记录
+                file.setLength((long) segment.count * SeriesRecord.SIZE);
+                tail = new TailFile(segment, file);
+                this.files.put(tier, tail);
+                this.evict();
+            }
+
+            tail.file.seek((long) segment.count * SeriesRecord.SIZE);
+            tail.file.write(data);
+        }
+
+        /**
+         * 关闭层级的句柄。
+         *
+         * @param tier
+         * @param segment 仅当句柄属于该段文件时关闭，为 {@code null} 时总是关闭。
+         */
+        private synchronized void close(Tier tier, Segment segment) {
+            TailFile tail = this.files.get(tier);
+            if (null != tail && (null == segment || tail.segment == segment)) {
+                this.files.remove(tier);
+                tail.close();
+            }
+        }
+
+        private synchronized void closeAll() {
+            for (TailFile tail : this.files.values()) {
+                tail.close();
+            }
+            this.files.clear();
+        }
+
+        private void evict() {
+            Iterator<TailFile> iter = this.files.values().iterator();
+            while (this.files.size() > this.capacity && iter.hasNext()) {
+                TailFile tail = iter.next();
+                iter.remove();
+                tail.close();
+            }
+        }
+    }
+
+    /**
+     * 打开的段文件。
+     */
+    private class TailFile {
+
+        private final Segment segment;
+
+        private final RandomAccessFile file;
+
+        private TailFile(Segment segment, RandomAccessFile file) {
+            this.segment = segment;
+            this.file = file;
+        }
+
+        private void close() {
+            try {
+                this.file.close();
+            } catch (IOException e) {
+                // Nothing
+            }
+        }
+    }
+
+    /**
+     * 段文件。
+     */
+    private class Segment {
+
+        private final long start;
+
+        private final File file;
+
+        private int count;
+
+        private Segment(long start, File file, int count) {
+            this.start = start;
+            this.file = file;
+            this.count = count;
+        }
+    }
+}
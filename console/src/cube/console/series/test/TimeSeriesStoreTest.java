@@ -0,0 +1,174 @@
+/*
+ * This source file is part of Cube.
+ *
+ * Copyright (c) 2023-2026 Ambrose Xu.
+ */
+
+package cube.console.series.test;
+
+import cube.console.series.Resolution;
+import cube.console.series.SeriesRecord;
+import cube.console.series.TimeSeriesStore;
+import cube.util.Assert;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+/**
+ * 时序数据存储测试。
+ */
+public class TimeSeriesStoreTest {
+
+    private final static long DAY = 24L * 3600 * 1000;
+
+    /**
+     * 起始时间，对齐到天。
+     */
+    private final static long BASE = 1700006400000L - 1700006400000L % DAY;
+
+    private File workPath;
+
+    public TimeSeriesStoreTest() {
+    }
+
+    public void setup() throws IOException {
+        this.workPath = Files.createTempDirectory("cube-series").toFile();
+    }
+
+    private TimeSeriesStore open(String name) {
+        TimeSeriesStore store = new TimeSeriesStore(new File(this.workPath, name));
+        store.open();
+        return store;
+    }
+
+    /**
+     * 两天的原始数据点，每 10 秒一个点，数值为点的序号。
+     */
+    private void fill(TimeSeriesStore store, String series) {
+        for (int i = 0; i < 2 * 8640; ++i) {
+            store.append(series, BASE + i * 10000L, i);
+        }
+    }
+
+    public void testSearch() {
+        TimeSeriesStore store = this.open("search");
+        this.fill(store, "search");
+
+        // 段内查找，边界不在数据点上
+        List<SeriesRecord> list = store.query("search", Resolution.Raw, BASE + 25000, BASE + 50000);
+        Assert.equals("testSearch (count)", 3, list.size());
+        Assert.equals(BASE + 30000, list.get(0).timestamp);
+        Assert.equals(BASE + 50000, list.get(2).timestamp);
+
+        // 跨段查找，包含两端的数据点
+        list = store.query("search", Resolution.Raw, DAY + BASE - 20000, DAY + BASE + 20000);
+        Assert.equals("testSearch (cross segment)", 5, list.size());
+        Assert.equals(BASE + DAY - 20000, list.get(0).timestamp);
+        Assert.equals(BASE + DAY + 20000, list.get(4).timestamp);
+
+        // 范围外
+        Assert.equals("testSearch (before)", 0, store.query("search", Resolution.Raw, BASE - 5000, BASE - 1).size());
+        Assert.equals("testSearch (after)", 0,
+                store.query("search", Resolution.Raw, BASE + 3 * DAY, BASE + 4 * DAY).size());
+
+        // 乱序数据被丢弃
+        Assert.equals("testSearch (out of order)", false, store.append("search", BASE, 0));
+        store.close();
+    }
+
+    public void testRollup() {
+        TimeSeriesStore store = this.open("rollup");
+        this.fill(store, "rollup");
+
+        // 第二分钟包含序号 6 到 11 的数据点
+        List<SeriesRecord> minutes = store.query("rollup", Resolution.Minute, BASE + 60000, BASE + 60000);
+        Assert.equals("testRollup (minute)", 1, minutes.size());
+        SeriesRecord minute = minutes.get(0);
+        Assert.equals("testRollup (minute count)", 6, minute.count);
+        Assert.equals("testRollup (minute min/max)", true, minute.min == 6 && minute.max == 11);
+        Assert.equals("testRollup (minute sum)", true, minute.sum == 6 + 7 + 8 + 9 + 10 + 11);
+
+        List<SeriesRecord> hours = store.query("rollup", Resolution.Hour, BASE, BASE + DAY - 1);
+        Assert.equals("testRollup (hours)", 24, hours.size());
+        Assert.equals("testRollup (hour count)", 360, hours.get(1).count);
+        Assert.equals("testRollup (hour min)", true, hours.get(1).min == 360);
+
+        SeriesRecord total = store.aggregate("rollup", Resolution.Day, BASE, BASE + 2 * DAY);
+        Assert.equals("testRollup (day count)", 2 * 8640, total.count);
+        Assert.equals("testRollup (day max)", true, total.max == 2 * 8640 - 1);
+        store.close();
+
+        // 重新打开后由下一级数据恢复未写入的汇总
+        store = this.open("rollup");
+        hours = store.query("rollup", Resolution.Hour, BASE, BASE + 2 * DAY);
+        Assert.equals("testRollup (reopen hours)", 48, hours.size());
+        Assert.equals("testRollup (reopen last hour)", 360, hours.get(47).count);
+        total = store.aggregate("rollup", Resolution.Day, BASE, BASE + 2 * DAY);
+        Assert.equals("testRollup (reopen day count)", 2 * 8640, total.count);
+        store.close();
+    }
+
+    public void testPurge() {
+        TimeSeriesStore store = this.open("purge");
+        store.setRetention(Resolution.Raw, DAY);
+        this.fill(store, "purge");
+
+        // 第一天的原始数据段过期
+        int count = store.purge(BASE + 2 * DAY + 1000);
+        Assert.equals("testPurge (segments)", 1, count);
+        Assert.equals("testPurge (raw expired)", 0,
+                store.query("purge", Resolution.Raw, BASE, BASE + DAY - 1).size());
+        Assert.equals("testPurge (raw kept)", 8640,
+                store.query("purge", Resolution.Raw, BASE + DAY, BASE + 2 * DAY).size());
+        Assert.equals("testPurge (minute kept)", 1440,
+                store.query("purge", Resolution.Minute, BASE, BASE + DAY - 1).size());
+
+        // 过期后继续写入
+        Assert.equals("testPurge (append)", true, store.append("purge", BASE + 2 * DAY + 2000, 1));
+        store.close();
+
+        store = this.open("purge");
+        Assert.equals("testPurge (reopen)", 8641,
+                store.query("purge", Resolution.Raw, BASE, BASE + 3 * DAY).size());
+        store.close();
+    }
+
+    public void testOpenFiles() {
+        TimeSeriesStore store = this.open("files");
+        int numSeries = TimeSeriesStore.MAX_OPEN_FILES * 2;
+        for (int round = 0; round < 3; ++round) {
+            for (int i = 0; i < numSeries; ++i) {
+                store.append("series." + i, BASE + round * 1000L, round);
+            }
+        }
+
+        Assert.equals("testOpenFiles (bounded)", true, store.numOpenFiles() <= TimeSeriesStore.MAX_OPEN_FILES);
+        // 句柄被淘汰的序列重新打开后继续追加
+        int complete = 0;
+        for (int i = 0; i < numSeries; ++i) {
+            if (store.query("series." + i, Resolution.Raw, BASE, BASE + DAY).size() == 3) {
+                ++complete;
+            }
+        }
+        Assert.equals("testOpenFiles (records)", numSeries, complete);
+        Assert.equals("testOpenFiles (series)", numSeries, store.listSeries("series.").size());
+
+        store.close();
+        Assert.equals("testOpenFiles (closed)", 0, store.numOpenFiles());
+    }
+
+    public static void main(String[] args) {
+        TimeSeriesStoreTest test = new TimeSeriesStoreTest();
+        try {
+            test.setup();
+            test.testSearch();
+            test.testRollup();
+            test.testPurge();
+            test.testOpenFiles();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,151 @@
+#!/usr/bin/env python3
+#
+# This source file is part of Cube.
+#
+# Copyright (c) 2023-2026 Ambrose Xu.
+#
+# LibreOffice conversion worker used by OfficeWorkerPool.
+#
+# Usage: office-worker.py <profile-dir>
+#
+# Starts a headless soffice bound to its own user profile and reads
+# tab-separated commands from stdin:
+#   convert <id> <format[:filter]> <input> <outdir>  ->  ok <id> <output> | error <id> <message>
+#   quit
+# Prints "ready" once the office process accepts connections.
+
+import os
+import subprocess
+import sys
+import time
+
+import uno
+from com.sun.star.beans import PropertyValue
+from com.sun.star.connection import NoConnectException
+
+FILTERS = {
+    "pdf": {
+        "writer": "writer_pdf_Export",
+        "calc": "calc_pdf_Export",
+        "impress": "impress_pdf_Export",
+        "draw": "draw_pdf_Export",
+    },
+    "png": {
+        "writer": "writer_png_Export",
+        "calc": "calc_png_Export",
+        "impress": "impress_png_Export",
+        "draw": "draw_png_Export",
+    },
+    "docx": {"writer": "MS Word 2007 XML"},
+    "xlsx": {"calc": "Calc MS Excel 2007 XML"},
+    "pptx": {"impress": "Impress MS PowerPoint 2007 XML"},
+}
+
+
+def reply(*fields):
+    sys.stdout.write("\t".join(fields) + "\n")
+    sys.stdout.flush()
+
+
+def prop(name, value):
+    p = PropertyValue()
+    p.Name = name
+    p.Value = value
+    return p
+
+
+def module_of(doc):
+    if doc.supportsService("com.sun.star.presentation.PresentationDocument"):
+        return "impress"
+    if doc.supportsService("com.sun.star.drawing.DrawingDocument"):
+        return "draw"
+    if doc.supportsService("com.sun.star.sheet.SpreadsheetDocument"):
+        return "calc"
+    return "writer"
+
+
+def convert(desktop, fmt, src, outdir):
+    ext, _, filter_name = fmt.partition(":")
+    url = uno.systemPathToFileUrl(os.path.abspath(src))
+    doc = desktop.loadComponentFromURL(url, "_blank", 0, (prop("Hidden", True), prop("ReadOnly", True)))
+    if doc is None:
+        raise RuntimeError("can not load document")
+
+    try:
+        if not filter_name:
+            filter_name = FILTERS.get(ext, {}).get(module_of(doc))
+        if not filter_name:
+            raise RuntimeError("unsupported format: " + fmt)
+
+        base = os.path.splitext(os.path.basename(src))[0]
+        output = os.path.join(os.path.abspath(outdir), base + "." + ext)
+        doc.storeToURL(uno.systemPathToFileUrl(output),
+                       (prop("FilterName", filter_name), prop("Overwrite", True)))
+        return output
+    finally:
+        doc.close(True)
+
+
+def main():
+    if len(sys.argv) < 2:
+        sys.stderr.write("usage: office-worker.py <profile-dir>\n")
+        return 1
+
+    profile = uno.systemPathToFileUrl(os.path.abspath(sys.argv[1]))
+    pipe = "cube_office_%d" % os.getpid()
+    office = subprocess.Popen([os.environ.get("SOFFICE", "soffice"),
+                               "--headless", "--invisible", "--nologo", "--norestore",
+                               "--nodefault", "--nolockcheck",
+                               "-env:UserInstallation=" + profile,
+                               "--accept=pipe,name=%s;urp;StarOffice.ComponentContext" % pipe],
+                              stdout=subprocess.DEVNULL)
+
+    local = uno.getComponentContext()
+    resolver = local.ServiceManager.createInstanceWithContext("com.sun.star.bridge.UnoUrlResolver", local)
+    context = None
+    for _ in range(600):
+        if office.poll() is not None:
+            return 2
+        try:
+            context = resolver.resolve("uno:pipe,name=%s;urp;StarOffice.ComponentContext" % pipe)
+            break
+        except NoConnectException:
+            time.sleep(0.1)
+
+    if context is None:
+        office.kill()
+        return 2
+
+    desktop = context.ServiceManager.createInstanceWithContext("com.sun.star.frame.Desktop", context)
+    reply("ready", str(os.getpid()))
+
+    for line in sys.stdin:
+        fields = line.rstrip("\n").split("\t")
+        if fields[0] == "quit":
+            break
+        if fields[0] != "convert" or len(fields) != 5:
+            continue
+
+        job, fmt, src, outdir = fields[1:]
+        try:
+            reply("ok", job, convert(desktop, fmt, src, outdir))
+        except Exception as e:
+            if office.poll() is not None:
+                # office crashed, let the pool restart this worker
+                return 3
+            reply("error", job, str(e).replace("\t", " ").replace("\n", " "))
+
+    try:
+        desktop.terminate()
+    except Exception:
+        pass
+
+    try:
+        office.wait(10)
+    except subprocess.TimeoutExpired:
+        office.kill()
+    return 0
+
+
+if __name__ == "__main__":
+    sys.exit(main())
@@ -0,0 +1,49 @@
+-- This source file is part of Cube.
+--
+-- Copyright (c) 2023-2026 Ambrose Xu.
+--
+-- Hub 数据表唯一索引迁移脚本（MySQL）。
+--
+-- HubService 启动时检查 hub_account 和 hub_contact_book 的唯一索引，
+-- 表内存在重复记录时不会创建索引，并在日志中输出重复的键。
+-- 停止 HubService 并备份数据表后执行本脚本，清理重复记录并创建索引。
+-- 索引只比较列的前缀，因此按照相同的前缀判断重复。
+
+
+-- 1. 查看重复记录
+
+SELECT LEFT(`account_id`, 128) AS `account_id`, LEFT(`product`, 32) AS `product`, COUNT(*) AS `count`
+    FROM `hub_account`
+    GROUP BY LEFT(`account_id`, 128), LEFT(`product`, 32)
+    HAVING COUNT(*) > 1;
+
+SELECT LEFT(`account_id`, 128) AS `account_id`, LEFT(`contact_id`, 128) AS `contact_id`,
+        LEFT(`product`, 32) AS `product`, COUNT(*) AS `count`
+    FROM `hub_contact_book`
+    GROUP BY LEFT(`account_id`, 128), LEFT(`contact_id`, 128), LEFT(`product`, 32)
+    HAVING COUNT(*) > 1;
+
+
+-- 2. 清理重复记录
+
+-- 账号记录保留序号最大的记录
+DELETE a FROM `hub_account` AS a
+    INNER JOIN `hub_account` AS b
+        ON LEFT(a.`account_id`, 128) = LEFT(b.`account_id`, 128)
+        AND LEFT(a.`product`, 32) = LEFT(b.`product`, 32)
+        AND a.`sn` < b.`sn`;
+
+-- 通讯录记录保留更新时间最新的记录，时间相同时保留序号最大的记录
+DELETE a FROM `hub_contact_book` AS a
+    INNER JOIN `hub_contact_book` AS b
+        ON LEFT(a.`account_id`, 128) = LEFT(b.`account_id`, 128)
+        AND LEFT(a.`contact_id`, 128) = LEFT(b.`contact_id`, 128)
+        AND LEFT(a.`product`, 32) = LEFT(b.`product`, 32)
+        AND (a.`timestamp` < b.`timestamp` OR (a.`timestamp` = b.`timestamp` AND a.`sn` < b.`sn`));
+
+
+-- 3. 创建唯一索引
+
+CREATE UNIQUE INDEX `uk_account` ON `hub_account` (`account_id`(128), `product`(32));
+
+CREATE UNIQUE INDEX `uk_contact_book` ON `hub_contact_book` (`account_id`(128), `contact_id`(128), `product`(32));
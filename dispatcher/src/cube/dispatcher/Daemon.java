@@ -20,7 +20,11 @@ import cube.common.entity.Contact;
 import cube.common.entity.Device;
 import cube.core.AbstractCellet;
 import cube.dispatcher.contact.ContactCellet;
+import cube.dispatcher.filestorage.FileEdgeCache;
+import cube.dispatcher.filestorage.FileStorageCellet;
 import cube.report.*;
+import cube.util.HttpLoadShedder;
+import cube.util.HttpServer;
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -58,6 +62,11 @@ public class Daemon extends TimerTask implements LogHandle {
      */
     private List<LogLine> logRecords;
 
+    /**
+     * 上一次检查时 HTTP 请求被拒绝的数量。
+     */
+    private long lastHttpRejected = 0;
+
     public Daemon(Performer performer) {
         this.startTime = System.currentTimeMillis();
         this.performer = performer;
@@ -137,6 +146,9 @@ public class Daemon extends TimerTask implements LogHandle {
         // 提交日志报告
 //        this.submitLogReport();
 
+        // 检查 HTTP 请求过载
+        this.checkHttpLoad();
+
         if (now - this.lastLatency >= this.latencyInterval) {
             this.lastLatency = now;
             latency();
@@ -169,6 +181,27 @@ public class Daemon extends TimerTask implements LogHandle {
         }
     }
 
+    private void checkHttpLoad() {
+        HttpServer httpServer = this.performer.getHttpServer();
+        if (null == httpServer) {
+            return;
+        }
+
+        long rejected = 0;
+        StringBuilder buf = new StringBuilder();
+        for (HttpLoadShedder.PriorityClass priorityClass : httpServer.getLoadShedder().getPriorityClasses()) {
+            rejected += priorityClass.getRejected();
+            buf.append(" ").append(priorityClass.name).append(":").append(priorityClass.numActive())
+                    .append("/").append(priorityClass.numQueued()).append("/").append(priorityClass.getRejected());
+        }
+
+        if (rejected > this.lastHttpRejected) {
+            Logger.w(this.getClass(), "HTTP requests rejected: " + (rejected - this.lastHttpRejected)
+                    + " - (active/queued/rejected)" + buf.toString());
+        }
+        this.lastHttpRejected = rejected;
+    }
+
     private ActionDialect createDeviceTimeout(Contact contact, Device device, long failureTime, long timeout) {
         JSONObject data = new JSONObject();
         try {
@@ -216,12 +249,24 @@ public class Daemon extends TimerTask implements LogHandle {
                 AbstractCellet absCellet = (AbstractCellet) cellet;
                 report.gather(absCellet);
             }
+
+            if (cellet instanceof FileStorageCellet) {
+                FileEdgeCache edgeCache = ((FileStorageCellet) cellet).getEdgeCache();
+                if (null != edgeCache) {
+                    report.appendItem(FileEdgeCache.NAME, edgeCache.toJSON());
+                }
+            }
         }
 
         for (Servable server : this.performer.talkService.getServers()) {
             report.reportConnection(server.getPort(), server.numTalkContexts(), server.getMaxConnections());
         }
 
+        if (null != this.performer.getHttpServer()) {
+            // HTTP 队列深度和拒绝计数
+            report.appendItem("HttpServer", this.performer.getHttpServer().getMetrics());
+        }
+
         ReportService.getInstance().submitReport(report);
     }
 
@@ -24,6 +24,11 @@ public class Director {
 
     public Speakable speaker;
 
+    /**
+     * 是否已协商使用二进制负载编码。
+     */
+    public volatile boolean binaryCodec = false;
+
     protected HashMap<String, Section> sectionMap;
 
     public Director(Endpoint endpoint, Endpoint fileEndpoint, Scope scope) {
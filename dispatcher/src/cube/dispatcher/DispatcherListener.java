@@ -11,6 +11,7 @@ import cell.api.Servable;
 import cell.carpet.CellListener;
 import cell.util.log.LogManager;
 import cell.util.log.Logger;
+import cube.dispatcher.filestorage.FileHandler;
 import cube.report.ReportService;
 import cube.util.ConfigUtils;
 import cube.util.HttpConfig;
@@ -172,10 +173,54 @@ public class DispatcherListener implements CellListener {
         config.managerPassword = properties.getProperty("managerPassword", "");
         config.maxThreads = Integer.parseInt(properties.getProperty("maxThreads", "32"));
         config.minThreads = Integer.parseInt(properties.getProperty("minThreads", "4"));
+        config.maxQueued = Integer.parseInt(properties.getProperty("http.queue", "1024"));
+
+        // 响应压缩
+        config.gzipEnabled = Boolean.parseBoolean(properties.getProperty("http.gzip", "true"));
+        config.gzipMinSize = Integer.parseInt(properties.getProperty("http.gzip.minSize", "1024"));
+        if (properties.containsKey("http.gzip.mimeTypes")) {
+            config.gzipMimeTypes = this.splitList(properties.getProperty("http.gzip.mimeTypes"));
+        }
+
+        // 请求优先级分类
+        for (int i = 1; i <= 16; ++i) {
+            String prefix = "http.class." + i + ".";
+            String name = properties.getProperty(prefix + "name");
+            if (null == name) {
+                continue;
+            }
+
+            config.priorityClasses.add(new HttpConfig.PriorityClass(name,
+                    this.splitList(properties.getProperty(prefix + "methods", "")),
+                    this.splitList(properties.getProperty(prefix + "paths", "")),
+                    Integer.parseInt(properties.getProperty(prefix + "concurrency", "4")),
+                    Integer.parseInt(properties.getProperty(prefix + "queue", "32")),
+                    Long.parseLong(properties.getProperty(prefix + "timeout", "5000"))));
+        }
+
+        if (config.priorityClasses.isEmpty()) {
+            // 默认限制上传和 AIGC 请求，保证认证和消息请求有可用的线程
+            // 上传只匹配文件上传接口的写请求，下载、列表和分享请求不受限制
+            int share = Math.max(1, config.maxThreads / 4);
+            config.priorityClasses.add(new HttpConfig.PriorityClass("upload",
+                    new String[] { "POST", "PUT" }, new String[] { FileHandler.PATH }, share, share * 8, 10000));
+            config.priorityClasses.add(new HttpConfig.PriorityClass("aigc",
+                    new String[] { "/aigc/" }, share, share * 16, 5000));
+        }
 
         return config;
     }
 
+    private String[] splitList(String value) {
+        List<String> list = new ArrayList<>();
+        for (String item : value.split(",")) {
+            if (item.trim().length() > 0) {
+                list.add(item.trim());
+            }
+        }
+        return list.toArray(new String[0]);
+    }
+
     private void initManagement(Performer performer, Nucleus nucleus) {
         // 配置控制台
         try {
@@ -15,9 +15,14 @@ import cell.util.CachedQueueExecutor;
 import cell.util.Utils;
 import cell.util.log.Logger;
 import cube.auth.AuthToken;
+import cube.auth.SignedToken;
+import cube.auth.TokenKeySet;
+import cube.auth.TokenRevocationList;
+import cube.common.Packet;
 import cube.common.StateCode;
 import cube.common.UniqueKey;
 import cube.common.action.ClientAction;
+import cube.common.codec.BinaryCodec;
 import cube.common.entity.Contact;
 import cube.common.entity.Device;
 import cube.common.state.AuthStateCode;
@@ -27,6 +32,7 @@ import cube.util.FileUtils;
 import cube.util.HttpClientFactory;
 import cube.util.HttpConfig;
 import cube.util.HttpServer;
+import cube.util.TimingWheel;
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -45,6 +51,11 @@ import java.util.concurrent.Executors;
  */
 public class Performer implements TalkListener, Tickable {
 
+    /**
+     * 有效令牌的空闲超时时长。
+     */
+    private final static long AUTH_TOKEN_IDLE_TIMEOUT = 60 * 60 * 1000L;
+
     private final String performerKey = "_performer";
 
     private final String directorKey = "_director";
@@ -110,6 +121,31 @@ public class Performer implements TalkListener, Tickable {
      */
     private ConcurrentHashMap<String, AuthToken> validAuthTokenMap;
 
+    /**
+     * 有效令牌的过期时间轮。
+     */
+    private TimingWheel<String, AuthToken> authTokenWheel;
+
+    /**
+     * 签名令牌的密钥集，由授权服务下发。
+     */
+    private TokenKeySet tokenKeySet;
+
+    /**
+     * 签名令牌的吊销列表，由授权服务下发。
+     */
+    private TokenRevocationList revocationList;
+
+    /**
+     * 最近一次请求密钥集的时间。
+     */
+    private long lastTokenKeysTime = 0;
+
+    /**
+     * 授权服务是否报告未启用签名令牌。
+     */
+    private volatile boolean signedTokenDisabled = false;
+
     /**
      * 数据传输记录。
      */
@@ -135,6 +171,11 @@ public class Performer implements TalkListener, Tickable {
      */
     private StreamServer streamServer;
 
+    /**
+     * 是否启用与服务单元之间的二进制负载编码。
+     */
+    private boolean binaryCodec = false;
+
     /**
      * 构造函数。
      *
@@ -151,6 +192,11 @@ public class Performer implements TalkListener, Tickable {
         this.tokenDeviceMap = new ConcurrentHashMap<>();
         this.tokenDirectorMap = new ConcurrentHashMap<>();
         this.validAuthTokenMap = new ConcurrentHashMap<>();
+        this.authTokenWheel = new TimingWheel<>(1000, 4096, (tokenCode, authToken) -> {
+            validAuthTokenMap.remove(tokenCode, authToken);
+        });
+        this.tokenKeySet = new TokenKeySet(0);
+        this.revocationList = new TokenRevocationList();
         this.transmissionMap = new ConcurrentHashMap<>();
         this.blockMap = new ConcurrentHashMap<>();
         this.tickableList = new ArrayList<>();
@@ -209,6 +255,14 @@ public class Performer implements TalkListener, Tickable {
 
         this.httpServer.setPort(config.httpPort, config.httpsPort);
         this.httpServer.setThreads(config.maxThreads, config.minThreads);
+        this.httpServer.setMaxQueued(config.maxQueued);
+        this.httpServer.setGzip(config.gzipEnabled, config.gzipMinSize, config.gzipMimeTypes);
+        for (HttpConfig.PriorityClass priorityClass : config.priorityClasses) {
+            this.httpServer.addPriorityClass(priorityClass.name, priorityClass.maxConcurrent,
+                    priorityClass.maxQueued, priorityClass.queueTimeout, priorityClass.methods, priorityClass.paths);
+            Logger.i(this.getClass(), "#configHttpServer - Priority class '" + priorityClass.name + "': "
+                    + priorityClass.maxConcurrent + "/" + priorityClass.maxQueued);
+        }
 
         Logger.i(this.getClass(), "#configHttpServer - The http server threads: "
                 + config.maxThreads + "/" + config.minThreads);
@@ -533,9 +587,24 @@ public class Performer implements TalkListener, Tickable {
         Logger.i(this.getClass(), "#start - The thread pool type: "
                 + this.properties.getProperty("threadpool.type", "cached") + " - max: " + max);
 
+        // 负载编码格式
+        this.binaryCodec = BinaryCodec.NAME.equalsIgnoreCase(this.properties.getProperty("codec", "json"));
+        Logger.i(this.getClass(), "#start - The transmission codec: " + (this.binaryCodec ? "binary" : "json"));
+
         // 添加全局监听
         this.talkService.addListener(this);
 
+        // 接收授权服务推送的密钥集和吊销列表
+        this.setListener("Client", new PerformerListener() {
+            @Override
+            public void onReceived(String cellet, Primitive primitive) {
+                ActionDialect actionDialect = (ActionDialect) primitive;
+                if (ClientAction.TokenKeys.name.equals(actionDialect.getName())) {
+                    updateTokenKeys(actionDialect.getParamAsJson("tokenKeys"));
+                }
+            }
+        });
+
         Iterator<Map.Entry<String, List<Director>>> iter = this.celletDirectorMap.entrySet().iterator();
         while (iter.hasNext()) {
             Map.Entry<String, List<Director>> e = iter.next();
@@ -602,6 +671,8 @@ public class Performer implements TalkListener, Tickable {
 
         HttpClientFactory.getInstance().close();
 
+        this.authTokenWheel.shutdown();
+
         this.executor.shutdown();
     }
 
@@ -629,6 +700,7 @@ public class Performer implements TalkListener, Tickable {
             Endpoint ep = director.endpoint;
             Speakable speakable = this.talkService.call(ep.getHost(), ep.getPort());
             director.speaker = speakable;
+            director.binaryCodec = false;
         }
     }
 
@@ -689,22 +761,71 @@ public class Performer implements TalkListener, Tickable {
         AuthToken authToken = this.validAuthTokenMap.get(tokenCode);
         if (null != authToken) {
             authToken.timestamp = System.currentTimeMillis();
+            this.authTokenWheel.touch(tokenCode, authToken.timestamp);
             return authToken;
         }
 
+        SignedToken signedToken = SignedToken.parse(tokenCode);
+        if (null != signedToken) {
+            // 签名令牌在本地校验
+            SignedToken.Verification verification = signedToken.verify(this.tokenKeySet,
+                    this.revocationList, System.currentTimeMillis());
+            if (verification == SignedToken.Verification.Valid) {
+                return signedToken.toAuthToken();
+            }
+            else if (verification != SignedToken.Verification.UnknownKey) {
+                return null;
+            }
+            // 密钥未知时使用授权服务校验
+        }
+
         ActionDialect actionDialect = new ActionDialect(ClientAction.GetAuthToken.name);
         actionDialect.addParam("tokenCode", tokenCode);
 
         ActionDialect response = this.syncTransmit("Client", actionDialect);
-        if (response.getParamAsInt("code") != AuthStateCode.Ok.code) {
+        if (null == response || response.getParamAsInt("code") != AuthStateCode.Ok.code) {
             return null;
         }
 
         authToken = new AuthToken(response.getParamAsJson("token"));
         this.validAuthTokenMap.put(tokenCode, authToken);
+        this.authTokenWheel.schedule(tokenCode, authToken, AUTH_TOKEN_IDLE_TIMEOUT);
         return authToken;
     }
 
+    /**
+     * 更新签名令牌的密钥集和吊销列表。
+     *
+     * @param tokenKeys
+     */
+    protected void updateTokenKeys(JSONObject tokenKeys) {
+        boolean changed = this.tokenKeySet.merge(tokenKeys.getJSONObject("keys"));
+        changed = this.revocationList.merge(tokenKeys.getJSONObject("revocation")) || changed;
+        if (changed) {
+            Logger.i(this.getClass(), "#updateTokenKeys - keys: " + this.tokenKeySet.size()
+                    + " , revoked: " + this.revocationList.size());
+        }
+    }
+
+    /**
+     * 向授权服务请求密钥集，并订阅后续变更。
+     */
+    private void requestTokenKeys() {
+        ActionDialect actionDialect = new ActionDialect(ClientAction.TokenKeys.name);
+        ActionDialect response = this.syncTransmit("Client", actionDialect, 10 * 1000);
+        if (null == response) {
+            return;
+        }
+
+        if (response.getParamAsInt("code") == AuthStateCode.Ok.code) {
+            this.signedTokenDisabled = false;
+            this.updateTokenKeys(response.getParamAsJson("tokenKeys"));
+        }
+        else if (response.containsParam("signedToken") && !response.getParamAsBool("signedToken")) {
+            this.signedTokenDisabled = true;
+        }
+    }
+
     /**
      * 向服务单元发送数据，不等待应答。
      *
@@ -724,6 +845,7 @@ public class Performer implements TalkListener, Tickable {
         // 添加 Performer 记录
         actionDialect.addParam(this.performerKey, createPerformer(sn));
 
+        this.encode(director, actionDialect);
         director.speaker.speak(celletName, actionDialect);
     }
 
@@ -747,6 +869,7 @@ public class Performer implements TalkListener, Tickable {
         // 添加 P-KEY 记录
         actionDialect.addParam(this.performerKey, createPerformer(sn));
 
+        this.encode(director, actionDialect);
         director.speaker.speak(celletName, actionDialect);
     }
 
@@ -774,6 +897,7 @@ public class Performer implements TalkListener, Tickable {
         Transmission trans = new Transmission(sn, cellet, talkContext);
         this.transmissionMap.put(trans.sn, trans);
 
+        this.encode(director, actionDialect);
         director.speaker.speak(cellet.getName(), actionDialect);
     }
 
@@ -793,6 +917,7 @@ public class Performer implements TalkListener, Tickable {
         // 增加 P-KEY 记录
         actionDialect.addParam(this.performerKey, createPerformer(sn));
 
+        this.encode(director, actionDialect);
         director.speaker.speak(celletName, actionDialect);
     }
 
@@ -986,6 +1111,7 @@ public class Performer implements TalkListener, Tickable {
         final Block block = new Block(sn);
         this.blockMap.put(block.sn, block);
 
+        this.encode(director, actionDialect);
         if (!director.speaker.speak(celletName, actionDialect)) {
             this.blockMap.remove(block.sn);
             return null;
@@ -1021,12 +1147,50 @@ public class Performer implements TalkListener, Tickable {
         try {
             json.put("sn", sn);
             json.put("ts", System.currentTimeMillis());
+            if (this.binaryCodec) {
+                // 声明可接收二进制负载
+                json.put("codec", BinaryCodec.NAME);
+            }
         } catch (JSONException e) {
             e.printStackTrace();
         }
         return json;
     }
 
+    /**
+     * 当服务单元已协商使用二进制编码时，将负载转为二进制格式。
+     *
+     * @param director
+     * @param actionDialect
+     */
+    private void encode(Director director, ActionDialect actionDialect) {
+        if (this.binaryCodec && director.binaryCodec) {
+            Packet.encodeBinary(actionDialect);
+        }
+    }
+
+    /**
+     * 还原二进制负载，并记录服务单元支持二进制编码。
+     *
+     * @param speakable
+     * @param actionDialect
+     */
+    private void decode(Speakable speakable, ActionDialect actionDialect) {
+        if (!Packet.decodeBinary(actionDialect)) {
+            return;
+        }
+
+        for (Director director : this.directorList) {
+            if (director.speaker == speakable) {
+                if (!director.binaryCodec) {
+                    director.binaryCodec = true;
+                    Logger.i(this.getClass(), "Binary codec negotiated with " + director.endpoint.toString());
+                }
+                break;
+            }
+        }
+    }
+
     private ActionDialect processResponse(ActionDialect response) {
         response.addParam("state", StateCode.makeState(StateCode.OK, "OK"));
         return response;
@@ -1055,19 +1219,27 @@ public class Performer implements TalkListener, Tickable {
             tickable.onTick(now);
         }
 
-        Iterator<Map.Entry<String, AuthToken>> atiter = this.validAuthTokenMap.entrySet().iterator();
-        while (atiter.hasNext()) {
-            Map.Entry<String, AuthToken> entry = atiter.next();
-            if (now - entry.getValue().timestamp > 60 * 60 * 1000) {
-                atiter.remove();
-            }
+        // 定期同步签名密钥集，即使推送丢失也能恢复。未获得密钥集时缩短间隔，授权服务未启用签名令牌时除外
+        boolean waitingKeys = this.tokenKeySet.isEmpty() && !this.signedTokenDisabled;
+        if (now - this.lastTokenKeysTime > (waitingKeys ? 60 * 1000 : 10 * 60 * 1000)) {
+            this.lastTokenKeysTime = now;
+            this.execute(() -> {
+                requestTokenKeys();
+            });
+            this.tokenKeySet.purge(now);
+            this.revocationList.purge(now);
         }
+
+        this.authTokenWheel.advance(now);
     }
 
     @Override
     public void onListened(Speakable speakable, String celletName, Primitive primitive) {
         try {
             ActionDialect actionDialect = new ActionDialect(primitive);
+            // 客户端和监听器只处理 JSON 负载
+            this.decode(speakable, actionDialect);
+
             if (actionDialect.containsParam(this.performerKey)) {
                 JSONObject performer = actionDialect.getParamAsJson(this.performerKey);
                 Long sn = performer.getLong("sn");
@@ -1087,7 +1259,7 @@ public class Performer implements TalkListener, Tickable {
                     else {
                         PerformerListener listener = this.listenerMap.get(celletName);
                         if (null != listener) {
-                            listener.onReceived(celletName, primitive);
+                            listener.onReceived(celletName, actionDialect);
                         }
                     }
                 }
@@ -1134,7 +1306,7 @@ public class Performer implements TalkListener, Tickable {
             else {
                 PerformerListener listener = this.listenerMap.get(celletName);
                 if (null != listener) {
-                    listener.onReceived(celletName, primitive);
+                    listener.onReceived(celletName, actionDialect);
                 }
             }
         } catch (Exception e) {
@@ -1170,6 +1342,13 @@ public class Performer implements TalkListener, Tickable {
 
     @Override
     public void onQuitted(Speakable speakable) {
+        for (Director director : this.directorList) {
+            if (director.speaker == speakable) {
+                // 重新协商编码格式
+                director.binaryCodec = false;
+            }
+        }
+
         Logger.i(this.getClass(), "Quitted " + speakable.getRemoteAddress().getHostString() + ":" +
                 speakable.getRemoteAddress().getPort());
     }
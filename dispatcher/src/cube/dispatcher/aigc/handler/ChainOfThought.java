@@ -14,7 +14,6 @@ import cube.dispatcher.aigc.Manager;
 import cube.util.FileType;
 import cube.util.FileUtils;
 import cube.util.HttpClientFactory;
-import org.eclipse.jetty.client.HttpClient;
 import org.eclipse.jetty.client.api.ContentResponse;
 import org.eclipse.jetty.http.HttpStatus;
 import org.eclipse.jetty.server.handler.ContextHandler;
@@ -155,11 +154,11 @@ public class ChainOfThought extends ContextHandler {
         }
 
         private void respondFile(HttpServletResponse response, FileLabel fileLabel) {
-            HttpClient httpClient = HttpClientFactory.getInstance().borrowHttpClient();
             try {
                 byte[] fileData = CacheCenter.getInstance().getData(fileLabel.getFileCode());
                 if (null == fileData) {
-                    ContentResponse fileResponse = httpClient.GET(fileLabel.getDirectURL());
+                    ContentResponse fileResponse = HttpClientFactory.getInstance().send(HttpClientFactory.Purpose.File,
+                            (httpClient) -> httpClient.newRequest(fileLabel.getDirectURL()));
                     fileData = fileResponse.getContent();
                     // 缓存文件
                     CacheCenter.getInstance().cache(fileLabel.getFileCode(), fileData);
@@ -175,8 +174,6 @@ public class ChainOfThought extends ContextHandler {
             } catch (Exception e) {
                 Logger.w(this.getClass(), "#respondFile", e);
                 response.setStatus(HttpStatus.INTERNAL_SERVER_ERROR_500);
-            } finally {
-                HttpClientFactory.getInstance().returnHttpClient(httpClient);
             }
         }
 
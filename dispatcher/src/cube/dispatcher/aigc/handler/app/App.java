@@ -97,7 +97,7 @@ public final class App {
         }
 
         if (null == channel) {
-            HttpClient client = HttpClientFactory.getInstance().borrowHttpClient();
+            HttpClient client = HttpClientFactory.getInstance().getHttpClient(HttpClientFactory.Purpose.AIGC);
 
             String url = config.getChannelURL() + token;
 
@@ -107,8 +107,8 @@ public final class App {
             try {
                 client.getProtocolHandlers().remove(WWWAuthenticationProtocolHandler.NAME);
 
-                StringContentProvider provider = new StringContentProvider(data.toString());
-                ContentResponse response = client.POST(url).content(provider).send();
+                ContentResponse response = HttpClientFactory.getInstance().send(HttpClientFactory.Purpose.AIGC,
+                        (httpClient) -> httpClient.POST(url).content(new StringContentProvider(data.toString())));
                 if (response.getStatus() == HttpStatus.OK_200) {
                     JSONObject responseData = new JSONObject(response.getContentAsString());
                     channel = new ChannelInfo(responseData.getString("code"));
@@ -127,8 +127,6 @@ public final class App {
                 e.printStackTrace();
             } catch (Exception e) {
                 e.printStackTrace();
-            } finally {
-                HttpClientFactory.getInstance().returnHttpClient(client);
             }
         }
 
@@ -245,12 +243,13 @@ public final class App {
             apiData.put("records", records);
         }
 
-        HttpClient client = HttpClientFactory.getInstance().borrowHttpClient();
+        HttpClient client = HttpClientFactory.getInstance().getHttpClient(HttpClientFactory.Purpose.AIGC);
         try {
             client.getProtocolHandlers().remove(WWWAuthenticationProtocolHandler.NAME);
 
-            StringContentProvider provider = new StringContentProvider(apiData.toString());
-            ContentResponse response = client.POST(url).timeout(5, TimeUnit.MINUTES).content(provider).send();
+            ContentResponse response = HttpClientFactory.getInstance().send(HttpClientFactory.Purpose.AIGC,
+                    (httpClient) -> httpClient.POST(url).timeout(5, TimeUnit.MINUTES)
+                            .content(new StringContentProvider(apiData.toString())));
             if (response.getStatus() == HttpStatus.OK_200) {
                 JSONObject responseData = new JSONObject(response.getContentAsString());
                 if (responseData.has("content")) {
@@ -294,8 +293,6 @@ public final class App {
             e.printStackTrace();
         } catch (Exception e) {
             e.printStackTrace();
-        } finally {
-            HttpClientFactory.getInstance().returnHttpClient(client);
         }
 
         if (null == content) {
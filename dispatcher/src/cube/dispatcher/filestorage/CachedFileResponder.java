@@ -0,0 +1,194 @@
+/*
+ * This source file is part of Cube.
+ *
+ * Copyright (c) 2023-2026 Ambrose Xu.
+ */
+
+package cube.dispatcher.filestorage;
+
+import cell.util.log.Logger;
+import cube.common.entity.FileLabel;
+import cube.util.FileType;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpStatus;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * 使用边缘缓存文件应答下载请求，支持协商缓存和单一区间的 Range 请求。
+ */
+public final class CachedFileResponder {
+
+    private CachedFileResponder() {
+    }
+
+    /**
+     * 应答请求。在写入任何响应头之前打开文件，文件无法读取时不写入响应。
+     *
+     * @param request
+     * @param response
+     * @param fileLabel
+     * @param type
+     * @param file
+     * @return 文件无法读取时返回 {@code false} ，调用方应当回源。
+     */
+    public static boolean respond(HttpServletRequest request, HttpServletResponse response,
+                                  FileLabel fileLabel, FileType type, File file) {
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "r");
+        } catch (IOException e) {
+            Logger.w(CachedFileResponder.class, "#respond - Can NOT open cache file: " + file.getName());
+            return false;
+        }
+
+        try {
+            long length = raf.length();
+            if (length != fileLabel.getFileSize()) {
+                Logger.w(CachedFileResponder.class, "#respond - Cache file size mismatch: " + file.getName());
+                return false;
+            }
+
+            respond(request, response, fileLabel, type, raf, length);
+        } catch (IOException e) {
+            Logger.w(CachedFileResponder.class, "#respond - " + fileLabel.getFileCode(), e);
+        } finally {
+            try {
+                raf.close();
+            } catch (IOException e) {
+            }
+        }
+
+        return true;
+    }
+
+    private static void respond(HttpServletRequest request, HttpServletResponse response,
+                                FileLabel fileLabel, FileType type, RandomAccessFile raf, long length)
+            throws IOException {
+        String etag = "\"" + fileLabel.getMD5Code() + "\"";
+        long lastModified = fileLabel.getLastModified();
+
+        response.setHeader(HttpHeader.ETAG.asString(), etag);
+        response.setHeader(HttpHeader.ACCEPT_RANGES.asString(), "bytes");
+        if (lastModified > 0) {
+            response.setDateHeader(HttpHeader.LAST_MODIFIED.asString(), lastModified);
+        }
+
+        // 协商缓存
+        String ifNoneMatch = request.getHeader(HttpHeader.IF_NONE_MATCH.asString());
+        if (null != ifNoneMatch) {
+            if (ifNoneMatch.contains(etag) || ifNoneMatch.trim().equals("*")) {
+                response.setStatus(HttpStatus.NOT_MODIFIED_304);
+                return;
+            }
+        }
+        else if (lastModified > 0) {
+            long ifModifiedSince = -1;
+            try {
+                ifModifiedSince = request.getDateHeader(HttpHeader.IF_MODIFIED_SINCE.asString());
+            } catch (IllegalArgumentException e) {
+                // Nothing
+            }
+            if (ifModifiedSince > 0 && lastModified / 1000 <= ifModifiedSince / 1000) {
+                response.setStatus(HttpStatus.NOT_MODIFIED_304);
+                return;
+            }
+        }
+
+        long start = 0;
+        long end = length - 1;
+        boolean partial = false;
+
+        String range = request.getHeader(HttpHeader.RANGE.asString());
+        String ifRange = request.getHeader(HttpHeader.IF_RANGE.asString());
+        if (null != range && (null == ifRange || ifRange.equals(etag))) {
+            long[] bounds = parseRange(range, length);
+            if (null == bounds) {
+                response.setHeader(HttpHeader.CONTENT_RANGE.asString(), "bytes */" + length);
+                response.setStatus(HttpStatus.RANGE_NOT_SATISFIABLE_416);
+                return;
+            }
+
+            start = bounds[0];
+            end = bounds[1];
+            partial = true;
+        }
+
+        long count = end - start + 1;
+        FileHandler.fillHeaders(response, fileLabel, count, type);
+
+        if (partial) {
+            response.setHeader(HttpHeader.CONTENT_RANGE.asString(), "bytes " + start + "-" + end + "/" + length);
+            response.setStatus(HttpStatus.PARTIAL_CONTENT_206);
+        }
+        else {
+            response.setStatus(HttpStatus.OK_200);
+        }
+
+        raf.seek(start);
+
+        ServletOutputStream outputStream = response.getOutputStream();
+        byte[] buf = new byte[64 * 1024];
+        long remaining = count;
+        while (remaining > 0) {
+            int len = raf.read(buf, 0, (int) Math.min(buf.length, remaining));
+            if (len < 0) {
+                break;
+            }
+            outputStream.write(buf, 0, len);
+            remaining -= len;
+        }
+        outputStream.flush();
+    }
+
+    /**
+     * 解析单一区间的 Range 头。
+     *
+     * @param range
+     * @param length
+     * @return 返回起止位置，区间不合法时返回 {@code null} 值。
+     */
+    private static long[] parseRange(String range, long length) {
+        if (!range.startsWith("bytes=") || range.contains(",")) {
+            return null;
+        }
+
+        String spec = range.substring(6).trim();
+        int index = spec.indexOf('-');
+        if (index < 0) {
+            return null;
+        }
+
+        try {
+            long start = 0;
+            long end = length - 1;
+            if (index == 0) {
+                // 后缀区间
+                long suffix = Long.parseLong(spec.substring(1));
+                if (suffix <= 0) {
+                    return null;
+                }
+                start = Math.max(0, length - suffix);
+            }
+            else {
+                start = Long.parseLong(spec.substring(0, index));
+                if (index < spec.length() - 1) {
+                    end = Math.min(end, Long.parseLong(spec.substring(index + 1)));
+                }
+            }
+
+            if (start > end || start >= length) {
+                return null;
+            }
+
+            return new long[] { start, end };
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,496 @@
+/*
+ * This source file is part of Cube.
+ *
+ * Copyright (c) 2023-2026 Ambrose Xu.
+ */
+
+package cube.dispatcher.filestorage;
+
+import cell.util.log.Logger;
+import cube.common.JSONable;
+import cube.common.entity.FileLabel;
+import cube.util.HttpClientFactory;
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.util.InputStreamResponseListener;
+import org.eclipse.jetty.http.HttpStatus;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 调度机本地文件边缘缓存。
+ * 以文件码和 MD5 为键将热点文件缓存到本地磁盘，并发未命中时仅向存储服务发起一次请求。
+ * 正在输出的缓存文件被引用计数锁定，淘汰或失效的文件在最后一个引用释放后才删除。
+ */
+public class FileEdgeCache implements JSONable {
+
+    public final static String NAME = "FileEdgeCache";
+
+    /**
+     * 缓存目录。
+     */
+    private File path;
+
+    /**
+     * 缓存总容量上限，单位：字节。
+     */
+    private long maxSize;
+
+    /**
+     * 单个文件的大小上限，单位：字节。
+     */
+    private long maxFileSize;
+
+    /**
+     * 当前已占用的容量。
+     */
+    private long usedSize = 0;
+
+    /**
+     * 按访问顺序排列的缓存条目。
+     */
+    private LinkedHashMap<String, Entry> entryMap;
+
+    /**
+     * 文件码对应的缓存键。
+     */
+    private ConcurrentHashMap<String, String> fileCodeKeyMap;
+
+    /**
+     * 正在填充的缓存。
+     */
+    private ConcurrentHashMap<String, Filling> fillingMap;
+
+    private AtomicLong hitCount = new AtomicLong(0);
+
+    private AtomicLong missCount = new AtomicLong(0);
+
+    private AtomicLong fillCount = new AtomicLong(0);
+
+    private AtomicLong evictionCount = new AtomicLong(0);
+
+    /**
+     * 填充序号，每次填充使用独立的文件名，避免覆盖仍被引用的旧文件。
+     */
+    private AtomicLong fillSequence = new AtomicLong(0);
+
+    private long fillTimeout = 5 * 60 * 1000;
+
+    /**
+     * 构造函数。
+     *
+     * @param path 缓存目录。
+     * @param maxSize 缓存总容量上限。
+     * @param maxFileSize 单个文件的大小上限。
+     */
+    public FileEdgeCache(File path, long maxSize, long maxFileSize) {
+        this.path = path;
+        this.maxSize = maxSize;
+        this.maxFileSize = Math.min(maxFileSize, maxSize);
+        this.entryMap = new LinkedHashMap<>(256, 0.75f, true);
+        this.fileCodeKeyMap = new ConcurrentHashMap<>();
+        this.fillingMap = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * 启动缓存，清理上次运行遗留的文件。
+     */
+    public void start() {
+        if (!this.path.exists()) {
+            this.path.mkdirs();
+        }
+        else {
+            File[] files = this.path.listFiles();
+            if (null != files) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+        }
+
+        Logger.i(this.getClass(), "Edge cache started: " + this.path.getAbsolutePath()
+                + " - " + (this.maxSize / 1024 / 1024) + " MB");
+    }
+
+    /**
+     * 停止缓存。
+     */
+    public void stop() {
+        synchronized (this.entryMap) {
+            for (Entry entry : this.entryMap.values()) {
+                this.discard(entry);
+            }
+            this.entryMap.clear();
+            this.usedSize = 0;
+        }
+        this.fileCodeKeyMap.clear();
+    }
+
+    /**
+     * 文件是否适合被缓存。
+     *
+     * @param fileLabel
+     * @return
+     */
+    public boolean isCacheable(FileLabel fileLabel) {
+        return (null != fileLabel.getMD5Code() && fileLabel.getFileSize() > 0
+                && fileLabel.getFileSize() <= this.maxFileSize);
+    }
+
+    /**
+     * 获取并锁定缓存的文件，未命中时从存储服务拉取数据。
+     * 使用完毕后必须调用 {@link CachedFile#release()} 释放，释放前文件不会被删除。
+     *
+     * @param fileLabel
+     * @return 返回本地缓存文件，如果无法缓存返回 {@code null} 值。
+     */
+    public CachedFile acquire(FileLabel fileLabel) {
+        if (!this.isCacheable(fileLabel)) {
+            return null;
+        }
+
+        String key = makeKey(fileLabel);
+
+        CachedFile cached = this.pin(key);
+        if (null != cached) {
+            this.hitCount.incrementAndGet();
+            return cached;
+        }
+
+        this.missCount.incrementAndGet();
+
+        Filling filling = new Filling();
+        Filling current = this.fillingMap.putIfAbsent(key, filling);
+        if (null != current) {
+            // 等待其他请求完成填充
+            try {
+                current.latch.await(this.fillTimeout, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+        else {
+            try {
+                this.fill(key, fileLabel);
+            } finally {
+                this.fillingMap.remove(key);
+                filling.latch.countDown();
+            }
+        }
+
+        // 填充后的文件可能已被淘汰，此时返回空值由调用方回源
+        return this.pin(key);
+    }
+
+    /**
+     * 锁定指定键的缓存条目。
+     *
+     * @param key
+     * @return
+     */
+    private CachedFile pin(String key) {
+        synchronized (this.entryMap) {
+            Entry entry = this.entryMap.get(key);
+            if (null == entry) {
+                return null;
+            }
+
+            if (!entry.file.exists()) {
+                // 文件已被外部删除
+                this.entryMap.remove(key);
+                this.usedSize -= entry.size;
+                return null;
+            }
+
+            ++entry.references;
+            return new CachedFile(entry);
+        }
+    }
+
+    /**
+     * 释放对缓存条目的引用，已移除的条目在引用归零时删除文件。
+     *
+     * @param entry
+     */
+    private void release(Entry entry) {
+        synchronized (this.entryMap) {
+            if (--entry.references == 0 && entry.removed) {
+                entry.file.delete();
+            }
+        }
+    }
+
+    /**
+     * 标记条目已移除，没有引用时立即删除文件。调用方需持有 {@code entryMap} 的锁。
+     *
+     * @param entry
+     */
+    private void discard(Entry entry) {
+        entry.removed = true;
+        if (entry.references == 0) {
+            entry.file.delete();
+        }
+    }
+
+    /**
+     * 使指定文件码的缓存失效。
+     *
+     * @param fileCode
+     */
+    public void invalidate(String fileCode) {
+        String key = this.fileCodeKeyMap.remove(fileCode);
+        if (null == key) {
+            return;
+        }
+
+        synchronized (this.entryMap) {
+            Entry entry = this.entryMap.remove(key);
+            if (null != entry) {
+                this.usedSize -= entry.size;
+                this.discard(entry);
+            }
+        }
+    }
+
+    /**
+     * 使已删除文件列表中的文件缓存失效。
+     *
+     * @param fileLabelList 服务返回的文件标签列表。
+     */
+    public void invalidate(JSONArray fileLabelList) {
+        for (int i = 0; i < fileLabelList.length(); ++i) {
+            JSONObject json = fileLabelList.optJSONObject(i);
+            if (null != json && json.has("fileCode")) {
+                this.invalidate(json.getString("fileCode"));
+            }
+        }
+    }
+
+    private File fill(String key, FileLabel fileLabel) {
+        String name = key + "." + this.fillSequence.incrementAndGet();
+        File tmpFile = new File(this.path, name + ".tmp");
+        File file = new File(this.path, name);
+
+        HttpClient httpClient = HttpClientFactory.getInstance().borrowHttpClient();
+        InputStream content = null;
+        FileOutputStream fos = null;
+        try {
+            InputStreamResponseListener listener = new InputStreamResponseListener();
+            httpClient.newRequest(fileLabel.getDirectURL())
+                    .timeout(this.fillTimeout, TimeUnit.MILLISECONDS)
+                    .send(listener);
+
+            Response response = listener.get(10, TimeUnit.SECONDS);
+            if (response.getStatus() != HttpStatus.OK_200) {
+                Logger.w(this.getClass(), "#fill - Storage response status: " + response.getStatus());
+                return null;
+            }
+
+            content = listener.getInputStream();
+            fos = new FileOutputStream(tmpFile);
+            byte[] buf = new byte[64 * 1024];
+            long total = 0;
+            int length = 0;
+            while ((length = content.read(buf)) > 0) {
+                fos.write(buf, 0, length);
+                total += length;
+            }
+            fos.close();
+            fos = null;
+
+            if (total != fileLabel.getFileSize()) {
+                Logger.w(this.getClass(), "#fill - File size mismatch: " + fileLabel.getFileCode()
+                        + " - " + total + "/" + fileLabel.getFileSize());
+                tmpFile.delete();
+                return null;
+            }
+
+            Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+
+            this.fillCount.incrementAndGet();
+
+            List<Entry> evicted = new ArrayList<>();
+            synchronized (this.entryMap) {
+                Entry entry = new Entry(key, fileLabel.getFileCode(), file, total);
+                Entry old = this.entryMap.put(key, entry);
+                if (null != old) {
+                    this.usedSize -= old.size;
+                    this.discard(old);
+                }
+                this.usedSize += total;
+
+                // 淘汰最久未访问的文件，正在输出的文件在释放后删除
+                Iterator<Map.Entry<String, Entry>> iter = this.entryMap.entrySet().iterator();
+                while (this.usedSize > this.maxSize && iter.hasNext()) {
+                    Entry eldest = iter.next().getValue();
+                    if (eldest == entry) {
+                        continue;
+                    }
+                    iter.remove();
+                    this.usedSize -= eldest.size;
+                    this.discard(eldest);
+                    evicted.add(eldest);
+                }
+            }
+
+            this.fileCodeKeyMap.put(fileLabel.getFileCode(), key);
+
+            for (Entry entry : evicted) {
+                this.fileCodeKeyMap.remove(entry.fileCode, entry.key);
+                this.evictionCount.incrementAndGet();
+            }
+
+            return file;
+        } catch (Exception e) {
+            Logger.w(this.getClass(), "#fill - " + fileLabel.getFileCode(), e);
+            tmpFile.delete();
+            return null;
+        } finally {
+            if (null != fos) {
+                try {
+                    fos.close();
+                } catch (IOException e) {
+                }
+            }
+            if (null != content) {
+                try {
+                    content.close();
+                } catch (IOException e) {
+                }
+            }
+            HttpClientFactory.getInstance().returnHttpClient(httpClient);
+        }
+    }
+
+    public long getHitCount() {
+        return this.hitCount.get();
+    }
+
+    public long getMissCount() {
+        return this.missCount.get();
+    }
+
+    /**
+     * 返回命中率。
+     *
+     * @return
+     */
+    public double getHitRatio() {
+        long hit = this.hitCount.get();
+        long total = hit + this.missCount.get();
+        return (total == 0) ? 0 : (double) hit / (double) total;
+    }
+
+    @Override
+    public JSONObject toJSON() {
+        JSONObject json = new JSONObject();
+        json.put("hit", this.hitCount.get());
+        json.put("miss", this.missCount.get());
+        json.put("fill", this.fillCount.get());
+        json.put("eviction", this.evictionCount.get());
+        json.put("hitRatio", this.getHitRatio());
+        synchronized (this.entryMap) {
+            json.put("entries", this.entryMap.size());
+            json.put("usedSize", this.usedSize);
+        }
+        json.put("maxSize", this.maxSize);
+        return json;
+    }
+
+    @Override
+    public JSONObject toCompactJSON() {
+        return this.toJSON();
+    }
+
+    private static String makeKey(FileLabel fileLabel) {
+        return fileLabel.getFileCode() + "_" + fileLabel.getMD5Code();
+    }
+
+    /**
+     * 缓存条目。
+     */
+    private class Entry {
+
+        protected final String key;
+
+        protected final String fileCode;
+
+        protected final File file;
+
+        protected final long size;
+
+        /**
+         * 正在使用该文件的引用数量。
+         */
+        protected int references = 0;
+
+        /**
+         * 条目是否已从缓存中移除。
+         */
+        protected boolean removed = false;
+
+        protected Entry(String key, String fileCode, File file, long size) {
+            this.key = key;
+            this.fileCode = fileCode;
+            this.file = file;
+            this.size = size;
+        }
+    }
+
+    /**
+     * 被锁定的缓存文件。
+     */
+    public final class CachedFile {
+
+        private final Entry entry;
+
+        private final AtomicBoolean released = new AtomicBoolean(false);
+
+        private CachedFile(Entry entry) {
+            this.entry = entry;
+        }
+
+        public File getFile() {
+            return this.entry.file;
+        }
+
+        /**
+         * 释放缓存文件，重复调用无副作用。
+         */
+        public void release() {
+            if (this.released.compareAndSet(false, true)) {
+                FileEdgeCache.this.release(this.entry);
+            }
+        }
+    }
+
+    /**
+     * 正在进行的填充操作。
+     */
+    private class Filling {
+
+        protected final CountDownLatch latch = new CountDownLatch(1);
+
+        protected Filling() {
+        }
+    }
+}
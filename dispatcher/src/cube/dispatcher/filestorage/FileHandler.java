@@ -71,6 +71,8 @@ public class FileHandler extends CrossDomainHandler {
 
     private Performer performer;
 
+    private FileEdgeCache edgeCache;
+
     private int bufferSize = 10 * 1024 * 1024;
 
     private File tempPath = new File("cube-fs-tmp/");
@@ -85,7 +87,19 @@ public class FileHandler extends CrossDomainHandler {
      * @param performer
      */
     public FileHandler(FileChunkStorage fileChunkStorage, Performer performer) {
+        this(fileChunkStorage, performer, null);
+    }
+
+    /**
+     * 构造函数。
+     *
+     * @param fileChunkStorage
+     * @param performer
+     * @param edgeCache
+     */
+    public FileHandler(FileChunkStorage fileChunkStorage, Performer performer, FileEdgeCache edgeCache) {
         super();
+        this.edgeCache = edgeCache;
         this.fileChunkStorage = fileChunkStorage;
         this.performer = performer;
         this.maxUploadConcurrency = performer.getConcurrentFileInputLimit();
@@ -781,6 +795,20 @@ public class FileHandler extends CrossDomainHandler {
                 type = FileType.matchExtension(fileLabel.getFileExtension());
             }
 
+            if (null != this.edgeCache && this.edgeCache.isCacheable(fileLabel)) {
+                FileEdgeCache.CachedFile cached = this.edgeCache.acquire(fileLabel);
+                if (null != cached) {
+                    try {
+                        if (CachedFileResponder.respond(request, response, fileLabel, type, cached.getFile())) {
+                            this.complete();
+                            return;
+                        }
+                    } finally {
+                        cached.release();
+                    }
+                }
+            }
+
             if (fileLabel.getFileSize() > (long) this.bufferSize) {
                 this.processByNonBlocking(request, response, fileLabel, type);
             }
@@ -913,7 +941,7 @@ public class FileHandler extends CrossDomainHandler {
         }
     }
 
-    private void fillHeaders(HttpServletResponse response, FileLabel fileLabel, long length, FileType type) {
+    protected static void fillHeaders(HttpServletResponse response, FileLabel fileLabel, long length, FileType type) {
         if (FileType.FILE == type) {
             try {
                 StringBuilder buf = new StringBuilder("attachment;");
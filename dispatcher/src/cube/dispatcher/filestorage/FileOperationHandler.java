@@ -34,6 +34,8 @@ public class FileOperationHandler extends CrossDomainHandler {
 
     private Performer performer;
 
+    private FileEdgeCache edgeCache;
+
     protected final int maxConcurrency;
 
     protected final AtomicInteger concurrency = new AtomicInteger(0);
@@ -44,6 +46,10 @@ public class FileOperationHandler extends CrossDomainHandler {
         this.maxConcurrency = performer.getConcurrentFileOperationLimit();
     }
 
+    public void setEdgeCache(FileEdgeCache edgeCache) {
+        this.edgeCache = edgeCache;
+    }
+
     @Override
     public void doPost(HttpServletRequest request, HttpServletResponse response)
             throws IOException, ServletException {
@@ -286,6 +292,10 @@ public class FileOperationHandler extends CrossDomainHandler {
 
         JSONObject responseData = Packet.extractDataPayload(responsePacket);
         JSONArray list = responseData.getJSONArray("list");
+        if (null != this.edgeCache) {
+            // 删除文件缓存
+            this.edgeCache.invalidate(list);
+        }
         for (int i = 0; i < list.length(); ++i) {
             // 修订文件标签
             JSONObject fileLabelJson = list.getJSONObject(i);
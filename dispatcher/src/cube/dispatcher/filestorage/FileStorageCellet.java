@@ -8,6 +8,7 @@ package cube.dispatcher.filestorage;
 
 import cell.core.talk.Primitive;
 import cell.core.talk.TalkContext;
+import cell.util.log.Logger;
 import cube.auth.AuthToken;
 import cube.common.action.FileStorageAction;
 import cube.core.AbstractCellet;
@@ -16,6 +17,8 @@ import cube.util.FileUtils;
 import cube.util.HttpServer;
 import org.eclipse.jetty.server.handler.ContextHandler;
 
+import java.io.File;
+import java.util.Properties;
 import java.util.concurrent.ConcurrentLinkedQueue;
 
 /**
@@ -35,6 +38,11 @@ public class FileStorageCellet extends AbstractCellet {
      */
     private FileChunkStorage fileChunkStorage;
 
+    /**
+     * 文件边缘缓存。
+     */
+    private FileEdgeCache edgeCache;
+
     /**
      * 执行机。
      */
@@ -63,18 +71,35 @@ public class FileStorageCellet extends AbstractCellet {
         // 打开存储管理器
         this.fileChunkStorage.open(this, this.performer);
 
+        // 配置文件边缘缓存
+        Properties properties = this.performer.getProperties();
+        if (Boolean.parseBoolean(properties.getProperty("filestorage.cache.enabled", "false"))) {
+            try {
+                long maxSize = Long.parseLong(properties.getProperty("filestorage.cache.size", "1024"));
+                long maxFileSize = Long.parseLong(properties.getProperty("filestorage.cache.file.size", "20"));
+                this.edgeCache = new FileEdgeCache(new File(properties.getProperty("filestorage.cache.dir",
+                        "cube-fs-cache/")), maxSize * 1024 * 1024, maxFileSize * 1024 * 1024);
+                this.edgeCache.start();
+            } catch (Exception e) {
+                Logger.w(this.getClass(), "#install - Edge cache config error", e);
+                this.edgeCache = null;
+            }
+        }
+
         // 配置 HTTP/HTTPS 服务的句柄
         HttpServer httpServer = this.performer.getHttpServer();
 
         // 添加句柄
         ContextHandler fileHandler = new ContextHandler();
         fileHandler.setContextPath(FileHandler.PATH);
-        fileHandler.setHandler(new FileHandler(this.fileChunkStorage, this.performer));
+        fileHandler.setHandler(new FileHandler(this.fileChunkStorage, this.performer, this.edgeCache));
         httpServer.addContextHandler(fileHandler);
 
         ContextHandler operationHandler = new ContextHandler();
         operationHandler.setContextPath(FileOperationHandler.PATH);
-        operationHandler.setHandler(new FileOperationHandler(this.performer));
+        FileOperationHandler fileOperationHandler = new FileOperationHandler(this.performer);
+        fileOperationHandler.setEdgeCache(this.edgeCache);
+        operationHandler.setHandler(fileOperationHandler);
         httpServer.addContextHandler(operationHandler);
 
         ContextHandler sharingHandler = new ContextHandler();
@@ -88,6 +113,19 @@ public class FileStorageCellet extends AbstractCellet {
     @Override
     public void uninstall() {
         this.fileChunkStorage.close();
+
+        if (null != this.edgeCache) {
+            this.edgeCache.stop();
+        }
+    }
+
+    /**
+     * 获取文件边缘缓存。
+     *
+     * @return 未启用缓存时返回 {@code null} 值。
+     */
+    public FileEdgeCache getEdgeCache() {
+        return this.edgeCache;
     }
 
     @Override
@@ -9,7 +9,10 @@ package cube.dispatcher.filestorage;
 import cell.core.talk.Primitive;
 import cell.core.talk.TalkContext;
 import cell.core.talk.dialect.ActionDialect;
+import cube.common.Packet;
 import cube.common.StateCode;
+import cube.common.action.FileStorageAction;
+import cube.common.state.FileStorageStateCode;
 import cube.dispatcher.DispatcherTask;
 import cube.dispatcher.Performer;
 import org.json.JSONObject;
@@ -56,6 +59,7 @@ public class PassThroughTask extends DispatcherTask {
             }
             else {
                 response = this.makeResponse(response);
+                this.invalidateEdgeCache(response);
             }
 
             this.cellet.speak(this.talkContext, response);
@@ -66,4 +70,21 @@ public class PassThroughTask extends DispatcherTask {
 
         ((FileStorageCellet)this.cellet).returnTask(this);
     }
+
+    private void invalidateEdgeCache(ActionDialect response) {
+        FileEdgeCache edgeCache = ((FileStorageCellet)this.cellet).getEdgeCache();
+        if (null == edgeCache || !FileStorageAction.DeleteFile.name.equals(this.getRequest().name)) {
+            return;
+        }
+
+        Packet packet = new Packet(response);
+        if (Packet.extractCode(packet) != FileStorageStateCode.Ok.code) {
+            return;
+        }
+
+        JSONObject data = Packet.extractDataPayload(packet);
+        if (data.has("list")) {
+            edgeCache.invalidate(data.getJSONArray("list"));
+        }
+    }
 }
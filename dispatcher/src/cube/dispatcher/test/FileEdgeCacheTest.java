@@ -0,0 +1,254 @@
+/*
+ * This source file is part of Cube.
+ *
+ * Copyright (c) 2023-2026 Ambrose Xu.
+ */
+
+package cube.dispatcher.test;
+
+import cube.common.entity.FileLabel;
+import cube.dispatcher.filestorage.CachedFileResponder;
+import cube.dispatcher.filestorage.FileEdgeCache;
+import cube.util.Assert;
+import cube.util.FileType;
+import cube.util.HttpClientFactory;
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.api.ContentResponse;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 文件边缘缓存测试。使用本地 Jetty 服务模拟存储服务，并通过缓存文件应答下载请求。
+ */
+public class FileEdgeCacheTest {
+
+    private final static int FILE_SIZE = 100 * 1024;
+
+    private Server server;
+
+    private String baseUrl;
+
+    private HttpClient client;
+
+    private File path;
+
+    private FileEdgeCache cache;
+
+    private final ConcurrentHashMap<String, byte[]> contents = new ConcurrentHashMap<>();
+
+    private final ConcurrentHashMap<String, FileLabel> fileLabels = new ConcurrentHashMap<>();
+
+    private final AtomicInteger originHits = new AtomicInteger(0);
+
+    public FileEdgeCacheTest() {
+    }
+
+    /**
+     * 模拟服务：
+     * /origin/{fileCode} 返回文件数据；
+     * /cache/{fileCode} 使用缓存文件应答，无法使用缓存时返回 502 表示回源。
+     */
+    public void setup() throws Exception {
+        this.path = Files.createTempDirectory("cube-edge").toFile();
+
+        this.server = new Server();
+        ServerConnector connector = new ServerConnector(this.server);
+        connector.setPort(0);
+        this.server.addConnector(connector);
+        this.server.setHandler(new AbstractHandler() {
+            @Override
+            public void handle(String target, Request baseRequest, HttpServletRequest request,
+                               HttpServletResponse response) throws IOException {
+                baseRequest.setHandled(true);
+                if (target.startsWith("/origin/")) {
+                    originHits.incrementAndGet();
+                    byte[] data = contents.get(target.substring(8));
+                    response.setStatus(200);
+                    response.setContentLength(data.length);
+                    response.getOutputStream().write(data);
+                    return;
+                }
+
+                FileLabel fileLabel = fileLabels.get(target.substring(7));
+                FileEdgeCache.CachedFile cached = cache.acquire(fileLabel);
+                if (null == cached) {
+                    response.setStatus(502);
+                    return;
+                }
+
+                try {
+                    if (!CachedFileResponder.respond(request, response, fileLabel, FileType.FILE,
+                            cached.getFile())) {
+                        response.setStatus(502);
+                    }
+                } finally {
+                    cached.release();
+                }
+            }
+        });
+        this.server.start();
+        this.baseUrl = "http://127.0.0.1:" + connector.getLocalPort();
+
+        this.client = new HttpClient();
+        this.client.start();
+
+        // 容量只能容纳两个文件
+        this.cache = new FileEdgeCache(this.path, FILE_SIZE * 2 + 1024, FILE_SIZE);
+        this.cache.start();
+    }
+
+    public void teardown() throws Exception {
+        this.cache.stop();
+        this.client.stop();
+        HttpClientFactory.getInstance().close();
+        this.server.stop();
+        this.path.delete();
+    }
+
+    private FileLabel makeFile(String fileCode) {
+        byte[] data = new byte[FILE_SIZE];
+        new Random(fileCode.hashCode()).nextBytes(data);
+        this.contents.put(fileCode, data);
+
+        long now = System.currentTimeMillis();
+        FileLabel fileLabel = new FileLabel("shixincube.com", fileCode, 50001001L, fileCode + ".bin",
+                FILE_SIZE, now - 60 * 1000, now, now + 24L * 60 * 60 * 1000);
+        fileLabel.setMD5Code("md5" + fileCode);
+        fileLabel.setDirectURL(this.baseUrl + "/origin/" + fileCode);
+        this.fileLabels.put(fileCode, fileLabel);
+        return fileLabel;
+    }
+
+    private ContentResponse get(String fileCode, String header, String value) throws Exception {
+        org.eclipse.jetty.client.api.Request request = this.client.newRequest(this.baseUrl + "/cache/" + fileCode);
+        if (null != header) {
+            request.header(header, value);
+        }
+        return request.send();
+    }
+
+    private int numCacheFiles() {
+        String[] names = this.path.list();
+        return (null == names) ? 0 : names.length;
+    }
+
+    /**
+     * 完整读取与协商缓存。
+     */
+    public void testETag() throws Exception {
+        this.makeFile("etag");
+        this.originHits.set(0);
+
+        ContentResponse response = this.get("etag", null, null);
+        Assert.equals("testETag (status)", 200, response.getStatus());
+        Assert.equals("testETag (content)", true, Arrays.equals(this.contents.get("etag"), response.getContent()));
+        String etag = response.getHeaders().get(HttpHeader.ETAG);
+        Assert.equals("\"md5etag\"", etag);
+
+        response = this.get("etag", HttpHeader.IF_NONE_MATCH.asString(), etag);
+        Assert.equals("testETag (not modified)", 304, response.getStatus());
+
+        response = this.get("etag", HttpHeader.IF_NONE_MATCH.asString(), "\"other\"");
+        Assert.equals("testETag (modified)", 200, response.getStatus());
+        Assert.equals("testETag (origin hits)", 1, this.originHits.get());
+    }
+
+    /**
+     * 区间请求。
+     */
+    public void testRange() throws Exception {
+        this.makeFile("range");
+        byte[] data = this.contents.get("range");
+
+        ContentResponse response = this.get("range", HttpHeader.RANGE.asString(), "bytes=100-199");
+        Assert.equals("testRange (status)", 206, response.getStatus());
+        Assert.equals("bytes 100-199/" + FILE_SIZE, response.getHeaders().get(HttpHeader.CONTENT_RANGE));
+        Assert.equals("testRange (content)", true,
+                Arrays.equals(Arrays.copyOfRange(data, 100, 200), response.getContent()));
+
+        response = this.get("range", HttpHeader.RANGE.asString(), "bytes=-10");
+        Assert.equals("testRange (suffix)", true,
+                Arrays.equals(Arrays.copyOfRange(data, FILE_SIZE - 10, FILE_SIZE), response.getContent()));
+
+        response = this.get("range", HttpHeader.RANGE.asString(), "bytes=" + FILE_SIZE + "-");
+        Assert.equals("testRange (not satisfiable)", 416, response.getStatus());
+
+        // 实体标签不匹配时返回完整内容
+        response = this.client.newRequest(this.baseUrl + "/cache/range")
+                .header(HttpHeader.RANGE, "bytes=0-9")
+                .header(HttpHeader.IF_RANGE, "\"other\"").send();
+        Assert.equals("testRange (if-range)", 200, response.getStatus());
+        Assert.equals("testRange (if-range length)", FILE_SIZE, response.getContent().length);
+    }
+
+    /**
+     * 失效与淘汰的文件在引用释放后删除。
+     */
+    public void testInvalidate() throws Exception {
+        this.cache.stop();
+        this.originHits.set(0);
+
+        FileLabel pinned = this.makeFile("pinned");
+        FileEdgeCache.CachedFile cached = this.cache.acquire(pinned);
+        Assert.equals("testInvalidate (acquire)", true, null != cached);
+
+        // 锁定期间失效
+        this.cache.invalidate("pinned");
+        Assert.equals("testInvalidate (pinned kept)", true, cached.getFile().exists());
+        cached.release();
+        Assert.equals("testInvalidate (released)", false, cached.getFile().exists());
+        cached.release();
+
+        // 失效后重新回源
+        ContentResponse response = this.get("pinned", null, null);
+        Assert.equals("testInvalidate (refill)", 200, response.getStatus());
+        Assert.equals("testInvalidate (origin hits)", 2, this.originHits.get());
+
+        // 锁定期间被淘汰
+        cached = this.cache.acquire(pinned);
+        this.cache.acquire(this.makeFile("evict-1")).release();
+        this.cache.acquire(this.makeFile("evict-2")).release();
+        Assert.equals("testInvalidate (evicted kept)", true, cached.getFile().exists());
+        Assert.equals("testInvalidate (evicted content)", FILE_SIZE, (int) cached.getFile().length());
+        cached.release();
+        Assert.equals("testInvalidate (evicted released)", false, cached.getFile().exists());
+        Assert.equals("testInvalidate (files)", 2, this.numCacheFiles());
+
+        // 停止后清空缓存文件，再次请求时回源
+        this.cache.stop();
+        Assert.equals("testInvalidate (stopped)", 0, this.numCacheFiles());
+        response = this.get("pinned", null, null);
+        Assert.equals("testInvalidate (after stop)", 200, response.getStatus());
+    }
+
+    public static void main(String[] args) {
+        FileEdgeCacheTest test = new FileEdgeCacheTest();
+        try {
+            test.setup();
+            test.testETag();
+            test.testRange();
+            test.testInvalidate();
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            try {
+                test.teardown();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
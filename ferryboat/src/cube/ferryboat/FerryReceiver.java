@@ -83,7 +83,7 @@ public class FerryReceiver implements TalkListener {
                 return;
             }
 
-            byte[] bytes = new byte[256];
+            byte[] bytes = new byte[64 * 1024];
             int length = 0;
             // 发送流
             PrimitiveOutputStream pos = Ferryboat.getInstance().getCellet().speakStream(ticket.talkContext,
@@ -549,6 +549,17 @@ public class FerryStorage implements Storagable {
         });
     }
 
+    /**
+     * 删除指定文件码的文件标签。
+     *
+     * @param fileCode
+     */
+    public void deleteFileLabel(String fileCode) {
+        this.storage.executeDelete(this.fileLabelTable, new Conditional[] {
+                Conditional.createEqualTo("file_code", fileCode)
+        });
+    }
+
     /**
      * 写入文件标签数据。
      *
@@ -166,6 +166,9 @@ public class Ferryhouse implements TalkListener {
                     // 从数据库加载偏好设置
                     Preferences preferences = loadPreferences();
                     refreshWithPreferences(preferences);
+
+                    // 续传未完成的文件
+                    fileManager.resumePartFiles();
                 }
                 else {
                     fileManager = new FileManager(domain);
@@ -197,6 +200,28 @@ public class Ferryhouse implements TalkListener {
         return boxReport;
     }
 
+    /**
+     * 请求服务器从指定偏移位置发送文件数据。
+     *
+     * @param fileCode
+     * @param offset
+     */
+    public void requestFile(String fileCode, long offset) {
+        ActionDialect actionDialect = new ActionDialect(FerryAction.Tenet.name);
+        actionDialect.addParam("port", FerryPort.ResumeFile);
+        actionDialect.addParam("domain", this.domain);
+        actionDialect.addParam("fileCode", fileCode);
+        actionDialect.addParam("offset", offset);
+        if (this.checkedIn.get()) {
+            this.nucleus.getTalkService().speak(FERRY, actionDialect);
+        }
+        else {
+            synchronized (this.preparedQueue) {
+                this.preparedQueue.offer(actionDialect);
+            }
+        }
+    }
+
     public void quit() {
         ActionDialect dialect = new ActionDialect(FerryAction.CheckOut.name);
         dialect.addParam("domain", this.domain);
@@ -211,6 +236,10 @@ public class Ferryhouse implements TalkListener {
 
         this.nucleus.getTalkService().hangup(this.address, this.port, true);
 
+        if (null != this.fileManager) {
+            this.fileManager.stop();
+        }
+
         if (null != this.ferryStorage) {
             this.ferryStorage.close();
         }
@@ -379,6 +408,14 @@ public class Ferryhouse implements TalkListener {
                 Logger.i(this.getClass(), "Unsupported port: " + port);
             }
         }
+        else if (FerryPort.ReconcileStorage.equals(port)) {
+            if (null != this.fileManager) {
+                this.fileManager.reconcile();
+            }
+            else {
+                Logger.i(this.getClass(), "Unsupported port: " + port);
+            }
+        }
         else if (FerryPort.TransferIntoMember.equals(port)) {
             if (!this.transferIntoMember(actionDialect)) {
                 Logger.i(this.getClass(), "Unsupported port: " + port);
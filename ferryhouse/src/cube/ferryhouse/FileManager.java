@@ -7,43 +7,107 @@
 package cube.ferryhouse;
 
 import cell.core.talk.PrimitiveInputStream;
+import cell.util.CachedQueueExecutor;
 import cell.util.Cryptology;
 import cell.util.log.Logger;
 import cube.common.entity.FileLabel;
 import cube.ferry.BoxReport;
 import cube.ferryhouse.command.DiskUsage;
-import cube.util.FileType;
 import cube.util.FileUtils;
+import org.json.JSONObject;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 
 /**
  * 文件管理器。
+ * 按文件分类增量维护存储用量，并按照写入顺序先进先出淘汰文件以满足最大存储空间限制。
+ * 文件流先写入临时文件，校验大小和 MD5 后原子重命名，中断的传输从临时文件长度处续传。
  */
 public final class FileManager {
 
+    /**
+     * 存储用量在属性表里的属性名。
+     */
+    private final static String ITEM_STORAGE_USAGE = "storage_usage";
+
+    /**
+     * 写文件缓存大小。
+     */
+    private final static int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * 单个文件的最大续传次数。
+     */
+    private final static int MAX_RESUME_TIMES = 3;
+
     private String domainName;
 
     private FerryStorage storage;
 
     private Path filePath;
 
+    /**
+     * 未完成传输的临时文件目录。
+     */
+    private Path partPath;
+
     private long maxSpaceSize = 1024L * 1024 * 1024;
 
+    /**
+     * 是否已设置最大存储空间。设置之前不淘汰文件，避免按默认值误删文件。
+     */
+    private volatile boolean quotaEnabled = false;
+
     private final int maxThreadNum = 2;
 
-    private AtomicInteger threadCount = new AtomicInteger(0);
+    private final ExecutorService executor;
 
-    private Queue<PrimitiveInputStream> streamQueue = new ConcurrentLinkedQueue<>();
+    /**
+     * 文件续传次数。
+     */
+    private final Map<String, Integer> resumeTimes = new ConcurrentHashMap<>();
+
+    /**
+     * 分类存储用量。使用 fileIndex 进行同步。
+     */
+    private StorageUsage usage = new StorageUsage();
+
+    /**
+     * 文件索引，按写入顺序排列，最早写入的文件在最前。
+     * 文件由服务器推送且本地没有读取路径，因此按先进先出淘汰。
+     */
+    private final LinkedHashMap<String, FileEntry> fileIndex = new LinkedHashMap<>(256, 0.75f, false);
+
+    /**
+     * 已保存标签但是文件数据尚未写入的文件标签。
+     */
+    private final Map<String, FileLabel> pendingLabels = new ConcurrentHashMap<>();
+
+    /**
+     * 用量是否有未持久化的变更。
+     */
+    private boolean usageChanged = false;
 
     public FileManager(String domainName) {
         this(domainName, null);
@@ -61,10 +125,33 @@ public final class FileManager {
             } catch (IOException e) {
             }
         }
+
+        this.partPath = Paths.get("./workspace/" + path + "/parts");
+        if (!Files.exists(this.partPath)) {
+            try {
+                Files.createDirectories(this.partPath);
+            } catch (IOException e) {
+            }
+        }
+
+        this.executor = CachedQueueExecutor.newCachedQueueThreadPool(this.maxThreadNum);
+
+        this.loadUsage();
+    }
+
+    /**
+     * 停止文件管理器。
+     */
+    public void stop() {
+        this.executor.shutdown();
     }
 
     public void setMaxSpaceSize(long value) {
         this.maxSpaceSize = value;
+        this.quotaEnabled = true;
+
+        // 按照新的限制淘汰文件
+        this.enforceQuota(0, null);
     }
 
     /**
@@ -76,6 +163,30 @@ public final class FileManager {
         if (null != this.storage) {
             this.storage.writeFileLabel(fileLabel);
         }
+
+        String fileCode = fileLabel.getFileCode();
+        StorageUsage.Category category = StorageUsage.Category.classify(fileLabel.getFileType());
+
+        boolean written = false;
+        synchronized (this.fileIndex) {
+            FileEntry entry = this.fileIndex.get(fileCode);
+            if (null != entry) {
+                written = true;
+                if (entry.category != category) {
+                    // 文件已写入，修正分类
+                    this.usage.remove(entry.category, entry.size);
+                    this.usage.add(category, entry.size);
+                    entry.category = category;
+                    this.usageChanged = true;
+                }
+            }
+        }
+
+        if (!written) {
+            this.pendingLabels.put(fileCode, fileLabel);
+            // 为即将写入的文件预留空间
+            this.enforceQuota(fileLabel.getFileSize(), fileCode);
+        }
     }
 
     /**
@@ -84,139 +195,469 @@ public final class FileManager {
      * @param primitiveInputStream
      */
     public void saveFileInputStream(PrimitiveInputStream primitiveInputStream) {
-        // 将流添加到队列
-        this.streamQueue.offer(primitiveInputStream);
+        this.executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                writeFile(primitiveInputStream);
+
+                // 持久化用量
+                saveUsage();
+            }
+        });
+    }
 
-        if (this.threadCount.get() >= this.maxThreadNum) {
+    /**
+     * 对未完成传输的临时文件请求续传。
+     */
+    public void resumePartFiles() {
+        File[] files = this.partPath.toFile().listFiles();
+        if (null == files) {
             return;
         }
 
-        this.threadCount.incrementAndGet();
+        for (File file : files) {
+            this.requestResume(file.getName(), file.length());
+        }
+    }
 
-        (new Thread() {
-            @Override
-            public void run() {
-                PrimitiveInputStream inputStream = streamQueue.poll();
-                while (null != inputStream) {
-                    String filename = inputStream.getName();
-                    FileOutputStream fileOutputStream = null;
-                    try {
-                        fileOutputStream = new FileOutputStream(new File(filePath.toString(), filename));
-
-                        byte[] bytes = new byte[256];
-                        int length = 0;
-                        while ((length = inputStream.read(bytes)) > 0) {
-                            fileOutputStream.write(bytes, 0, length);
-                        }
-                    } catch (IOException e) {
-                        Logger.w(FileManager.class, "#saveFileInputStream", e);
-                    } finally {
-                        if (null != fileOutputStream) {
-                            try {
-                                fileOutputStream.close();
-                            } catch (IOException e) {
-                                // Nothing
-                            }
-                        }
-
-                        try {
-                            inputStream.close();
-                        } catch (IOException e) {
-                            // Nothing
-                        }
-                    }
-
-                    inputStream = streamQueue.poll();
+    /**
+     * 将文件流写入临时文件，校验后重命名为正式文件。
+     * 续传的流名称格式为 {@code 文件码@偏移量} 。
+     *
+     * @param inputStream
+     */
+    private void writeFile(PrimitiveInputStream inputStream) {
+        String fileCode = inputStream.getName();
+        long offset = 0;
+        int index = fileCode.lastIndexOf('@');
+        if (index > 0) {
+            try {
+                offset = Long.parseLong(fileCode.substring(index + 1));
+            } catch (NumberFormatException e) {
+                Logger.w(this.getClass(), "#writeFile - Stream name format error: " + fileCode);
+            }
+            fileCode = fileCode.substring(0, index);
+        }
+
+        File partFile = new File(this.partPath.toString(), fileCode);
+        if (offset > 0 && partFile.length() != offset) {
+            // 临时文件与续传偏移不一致，重新传输
+            Logger.w(this.getClass(), "#writeFile - Resume offset mismatch: " + fileCode + " - "
+                    + offset + "/" + partFile.length());
+            this.close(inputStream);
+            partFile.delete();
+            this.requestResume(fileCode, 0);
+            return;
+        }
+
+        MessageDigest digest = null;
+        if (offset == 0) {
+            try {
+                digest = MessageDigest.getInstance("MD5");
+            } catch (NoSuchAlgorithmException e) {
+                // Nothing
+            }
+        }
+
+        long written = offset;
+        boolean interrupted = false;
+        FileOutputStream fileOutputStream = null;
+        try {
+            fileOutputStream = new FileOutputStream(partFile, offset > 0);
+
+            byte[] bytes = new byte[BUFFER_SIZE];
+            int length = 0;
+            while ((length = inputStream.read(bytes)) > 0) {
+                fileOutputStream.write(bytes, 0, length);
+                if (null != digest) {
+                    digest.update(bytes, 0, length);
+                }
+                written += length;
+            }
+
+            // 确保临时文件长度可以作为续传偏移
+            fileOutputStream.getFD().sync();
+        } catch (IOException e) {
+            interrupted = true;
+            Logger.w(this.getClass(), "#writeFile - " + fileCode, e);
+        } finally {
+            if (null != fileOutputStream) {
+                try {
+                    fileOutputStream.close();
+                } catch (IOException e) {
+                    // Nothing
+                }
+            }
+
+            this.close(inputStream);
+        }
+
+        FileLabel fileLabel = this.pendingLabels.get(fileCode);
+        if (null == fileLabel && null != this.storage) {
+            fileLabel = this.storage.readFileLabel(fileCode);
+        }
+
+        if (null != fileLabel && fileLabel.getFileSize() > 0) {
+            if (written < fileLabel.getFileSize()) {
+                // 传输中断，从已写入位置续传
+                this.requestResume(fileCode, partFile.length());
+                return;
+            }
+            else if (written > fileLabel.getFileSize()) {
+                Logger.w(this.getClass(), "#writeFile - File size mismatch: " + fileCode + " - "
+                        + written + "/" + fileLabel.getFileSize());
+                partFile.delete();
+                this.requestResume(fileCode, 0);
+                return;
+            }
+
+            if (null != fileLabel.getMD5Code()) {
+                String md5 = (null != digest) ? FileUtils.bytesToHexString(digest.digest()) : this.hashMD5(partFile);
+                if (!fileLabel.getMD5Code().equalsIgnoreCase(md5)) {
+                    Logger.w(this.getClass(), "#writeFile - File MD5 mismatch: " + fileCode);
+                    partFile.delete();
+                    this.requestResume(fileCode, 0);
+                    return;
+                }
+            }
+        }
+        else if (interrupted) {
+            // 没有文件标签无法校验，从已写入位置续传
+            this.requestResume(fileCode, partFile.length());
+            return;
+        }
+
+        File file = new File(this.filePath.toString(), fileCode);
+        try {
+            try {
+                Files.move(partFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(partFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            Logger.e(this.getClass(), "#writeFile - Rename file failed: " + fileCode, e);
+            return;
+        }
+
+        this.resumeTimes.remove(fileCode);
+        this.onFileWritten(fileCode, file.length());
+    }
+
+    private void requestResume(String fileCode, long offset) {
+        int times = this.resumeTimes.getOrDefault(fileCode, 0) + 1;
+        if (times > MAX_RESUME_TIMES) {
+            Logger.w(this.getClass(), "#requestResume - Too many retries, drop file: " + fileCode);
+            this.resumeTimes.remove(fileCode);
+            this.pendingLabels.remove(fileCode);
+            (new File(this.partPath.toString(), fileCode)).delete();
+            return;
+        }
+
+        this.resumeTimes.put(fileCode, times);
+        Ferryhouse.getInstance().requestFile(fileCode, offset);
+    }
+
+    private String hashMD5(File file) {
+        FileInputStream fis = null;
+        try {
+            MessageDigest digest = MessageDigest.getInstance("MD5");
+            fis = new FileInputStream(file);
+            byte[] bytes = new byte[BUFFER_SIZE];
+            int length = 0;
+            while ((length = fis.read(bytes)) > 0) {
+                digest.update(bytes, 0, length);
+            }
+            return FileUtils.bytesToHexString(digest.digest());
+        } catch (Exception e) {
+            Logger.w(this.getClass(), "#hashMD5", e);
+            return null;
+        } finally {
+            if (null != fis) {
+                try {
+                    fis.close();
+                } catch (IOException e) {
+                    // Nothing
+                }
+            }
+        }
+    }
+
+    private void close(PrimitiveInputStream inputStream) {
+        try {
+            inputStream.close();
+        } catch (IOException e) {
+            // Nothing
+        }
+    }
+
+    private void onFileWritten(String fileCode, long size) {
+        FileLabel fileLabel = this.pendingLabels.remove(fileCode);
+        StorageUsage.Category category = (null != fileLabel) ?
+                StorageUsage.Category.classify(fileLabel.getFileType()) : null;
+        if (null == category) {
+            synchronized (this.fileIndex) {
+                FileEntry entry = this.fileIndex.get(fileCode);
+                if (null != entry) {
+                    category = entry.category;
                 }
+            }
+        }
+        if (null == category) {
+            fileLabel = (null != this.storage) ? this.storage.readFileLabel(fileCode) : null;
+            category = (null != fileLabel) ? StorageUsage.Category.classify(fileLabel.getFileType())
+                    : StorageUsage.Category.Other;
+        }
 
-                // 更新线程数量计数
-                threadCount.decrementAndGet();
+        synchronized (this.fileIndex) {
+            FileEntry entry = this.fileIndex.remove(fileCode);
+            if (null != entry) {
+                // 覆盖已有文件
+                this.usage.remove(entry.category, entry.size);
             }
-        }).start();
+
+            this.fileIndex.put(fileCode, new FileEntry(category, size, System.currentTimeMillis()));
+            this.usage.add(category, size);
+            this.usageChanged = true;
+        }
+
+        this.enforceQuota(0, fileCode);
+    }
+
+    /**
+     * 按写入顺序淘汰最早写入的文件，直到已用空间加上预留空间不超过最大存储空间。
+     * 未设置最大存储空间之前不淘汰。
+     *
+     * @param reservedSize 预留空间大小。
+     * @param keepFileCode 不被淘汰的文件码。
+     */
+    private void enforceQuota(long reservedSize, String keepFileCode) {
+        if (!this.quotaEnabled) {
+            return;
+        }
+
+        List<String> evicted = new ArrayList<>();
+
+        synchronized (this.fileIndex) {
+            long limit = this.maxSpaceSize - reservedSize;
+            if (this.usage.getTotalSize() <= limit) {
+                return;
+            }
+
+            Iterator<Map.Entry<String, FileEntry>> iter = this.fileIndex.entrySet().iterator();
+            while (iter.hasNext() && this.usage.getTotalSize() > limit) {
+                Map.Entry<String, FileEntry> e = iter.next();
+                if (e.getKey().equals(keepFileCode)) {
+                    continue;
+                }
+
+                FileEntry entry = e.getValue();
+                iter.remove();
+                this.usage.remove(entry.category, entry.size);
+                evicted.add(e.getKey());
+            }
+
+            if (!evicted.isEmpty()) {
+                this.usageChanged = true;
+            }
+        }
+
+        if (evicted.isEmpty()) {
+            return;
+        }
+
+        for (String fileCode : evicted) {
+            File file = new File(this.filePath.toString(), fileCode);
+            if (file.exists() && !file.delete()) {
+                Logger.w(this.getClass(), "#enforceQuota - Delete file failed: " + fileCode);
+            }
+
+            if (null != this.storage) {
+                this.storage.deleteFileLabel(fileCode);
+            }
+        }
+
+        Logger.i(this.getClass(), "#enforceQuota - Evicted " + evicted.size() + " files in " + this.domainName);
+
+        this.saveUsage();
     }
 
     /**
      * 清空文件数据。
      */
     public void cleanup() {
-        File[] files = this.filePath.toFile().listFiles();
-        if (null != files && files.length > 0) {
-            for (File file : files) {
-                file.delete();
+        synchronized (this.fileIndex) {
+            File[] files = this.filePath.toFile().listFiles();
+            if (null != files && files.length > 0) {
+                for (File file : files) {
+                    file.delete();
+                }
             }
+
+            files = this.partPath.toFile().listFiles();
+            if (null != files && files.length > 0) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+
+            this.fileIndex.clear();
+            this.pendingLabels.clear();
+            this.resumeTimes.clear();
+            this.usage.reset();
+            this.usageChanged = true;
         }
+
+        this.saveUsage();
     }
 
-    public synchronized void calcUsage(BoxReport report) {
-        long imageTotalSize = 0;
-        long docTotalSize = 0;
-        long videoTotalSize = 0;
-        long audioTotalSize = 0;
-        long packageTotalSize = 0;
-        long otherTotalSize = 0;
+    /**
+     * 根据磁盘文件和文件标签重建存储用量。
+     */
+    public void reconcile() {
+        File[] files = this.filePath.toFile().listFiles();
+        if (null == files) {
+            files = new File[0];
+        }
 
-        int imageNum = 0;
-        int docNum = 0;
-        int videoNum = 0;
-        int audioNum = 0;
-        int packageNum = 0;
-        int otherNum = 0;
+        Map<String, FileLabel> labels = new HashMap<>();
+        if (null != this.storage) {
+            for (FileLabel fileLabel : this.storage.getAllFileLabels()) {
+                labels.put(fileLabel.getFileCode(), fileLabel);
+            }
+        }
+
+        // 按修改时间排序，最早修改的文件最先被淘汰
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+
+        synchronized (this.fileIndex) {
+            this.fileIndex.clear();
+            this.usage.reset();
 
-        File[] files = this.filePath.toFile().listFiles();
-        if (null != files && files.length > 0) {
-            // 计算文件占用空间
             for (File file : files) {
-                String fileCode = file.getName();
-                FileLabel fileLabel = (null != this.storage) ? this.storage.readFileLabel(fileCode) : null;
-                if (null == fileLabel) {
-                    Logger.w(this.getClass(), "Can NOT find file in DB - " + fileCode);
+                if (!file.isFile()) {
                     continue;
                 }
 
-                FileType fileType = fileLabel.getFileType();
-                if (FileUtils.isImageType(fileType)) {
-                    imageTotalSize += fileLabel.getFileSize();
-                    imageNum += 1;
-                }
-                else if (FileUtils.isDocumentType(fileType)) {
-                    docTotalSize += fileLabel.getFileSize();
-                    docNum += 1;
-                }
-                else if (FileUtils.isVideoType(fileType)) {
-                    videoTotalSize += fileLabel.getFileSize();
-                    videoNum += 1;
-                }
-                else if (FileUtils.isAudioType(fileType)) {
-                    audioTotalSize += fileLabel.getFileSize();
-                    audioNum += 1;
+                String fileCode = file.getName();
+                FileLabel fileLabel = labels.get(fileCode);
+                if (null == fileLabel && null != this.storage) {
+                    Logger.w(this.getClass(), "Can NOT find file in DB - " + fileCode);
                 }
-                else {
-                    if (fileType == FileType.ZIP || fileType == FileType.RAR ||
-                        fileType == FileType._7Z || fileType == FileType.Z || fileType == FileType.TAR) {
-                        packageTotalSize += fileLabel.getFileSize();
-                        packageNum += 1;
-                    }
-                    else {
-                        otherTotalSize += fileLabel.getFileSize();
-                        otherNum += 1;
-                    }
+
+                StorageUsage.Category category = (null != fileLabel) ?
+                        StorageUsage.Category.classify(fileLabel.getFileType()) : StorageUsage.Category.Other;
+                long size = file.length();
+                this.fileIndex.put(fileCode, new FileEntry(category, size, file.lastModified()));
+                this.usage.add(category, size);
+            }
+
+            this.usageChanged = true;
+        }
+
+        Logger.i(this.getClass(), "#reconcile - " + this.domainName + " : " + this.usage.getTotalCount()
+                + " files, " + this.usage.getTotalSize() + " bytes");
+
+        this.saveUsage();
+        this.enforceQuota(0, null);
+    }
+
+    /**
+     * 加载持久化的存储用量，并根据磁盘文件建立写入顺序索引。
+     */
+    private void loadUsage() {
+        String value = (null != this.storage) ? this.storage.readProperty(ITEM_STORAGE_USAGE) : null;
+        if (null == value) {
+            this.reconcile();
+            return;
+        }
+
+        File[] files = this.filePath.toFile().listFiles();
+        if (null == files) {
+            files = new File[0];
+        }
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+
+        StorageUsage saved = null;
+        try {
+            saved = new StorageUsage(new JSONObject(value));
+        } catch (Exception e) {
+            Logger.w(this.getClass(), "#loadUsage", e);
+        }
+
+        if (null == saved || saved.getTotalCount() != files.length) {
+            // 计数与磁盘不一致
+            this.reconcile();
+            return;
+        }
+
+        long total = 0;
+        synchronized (this.fileIndex) {
+            for (File file : files) {
+                this.fileIndex.put(file.getName(), new FileEntry(StorageUsage.Category.Other,
+                        file.length(), file.lastModified()));
+                total += file.length();
+            }
+        }
+
+        if (total != saved.getTotalSize()) {
+            this.reconcile();
+            return;
+        }
+
+        // 恢复索引中的文件分类
+        Map<String, StorageUsage.Category> categories = new HashMap<>();
+        if (!this.fileIndex.isEmpty()) {
+            for (FileLabel fileLabel : this.storage.getAllFileLabels()) {
+                categories.put(fileLabel.getFileCode(), StorageUsage.Category.classify(fileLabel.getFileType()));
+            }
+        }
+
+        synchronized (this.fileIndex) {
+            for (Map.Entry<String, FileEntry> e : this.fileIndex.entrySet()) {
+                StorageUsage.Category category = categories.get(e.getKey());
+                if (null != category) {
+                    e.getValue().category = category;
                 }
             }
+
+            this.usage = saved;
         }
+    }
 
-        report.setImageFilesUsedSize(imageTotalSize);
-        report.setDocFilesUsedSize(docTotalSize);
-        report.setVideoFilesUsedSize(videoTotalSize);
-        report.setAudioFilesUsedSize(audioTotalSize);
-        report.setPackageFilesUsedSize(packageTotalSize);
-        report.setOtherFilesUsedSize(otherTotalSize);
+    /**
+     * 持久化存储用量。
+     */
+    private void saveUsage() {
+        if (null == this.storage) {
+            return;
+        }
 
-        report.setNumImageFiles(imageNum);
-        report.setNumDocFiles(docNum);
-        report.setNumVideoFiles(videoNum);
-        report.setNumAudioFiles(audioNum);
-        report.setNumPackageFiles(packageNum);
-        report.setNumOtherFiles(otherNum);
+        String value = null;
+        synchronized (this.fileIndex) {
+            if (!this.usageChanged) {
+                return;
+            }
+            value = this.usage.toJSON().toString();
+            this.usageChanged = false;
+        }
+
+        this.storage.writeProperty(ITEM_STORAGE_USAGE, value);
+    }
+
+    /**
+     * 计算存储用量。
+     *
+     * @param report
+     */
+    public void calcUsage(BoxReport report) {
+        long usedSize = 0;
+        synchronized (this.fileIndex) {
+            this.usage.fillReport(report);
+            usedSize = this.usage.getTotalSize();
+        }
+
+        this.saveUsage();
 
         DiskUsage command = new DiskUsage();
         try {
@@ -226,9 +667,26 @@ public final class FileManager {
         }
 
         // 计算可用空间
-        long freeSize = this.maxSpaceSize - imageTotalSize - docTotalSize - videoTotalSize - audioTotalSize
-                - packageTotalSize - otherTotalSize;
+        long freeSize = this.maxSpaceSize - usedSize;
 
         report.setFreeDiskSize(Math.min(command.getAvailInBytes(), freeSize));
     }
+
+    /**
+     * 文件索引项。
+     */
+    private class FileEntry {
+
+        protected StorageUsage.Category category;
+
+        protected final long size;
+
+        protected final long writeTime;
+
+        protected FileEntry(StorageUsage.Category category, long size, long writeTime) {
+            this.category = category;
+            this.size = size;
+            this.writeTime = writeTime;
+        }
+    }
 }
@@ -0,0 +1,205 @@
+/*
+ * This source file is part of Cube.
+ *
+ * Copyright (c) 2023-2026 Ambrose Xu.
+ */
+
+package cube.ferryhouse;
+
+import cube.common.JSONable;
+import cube.ferry.BoxReport;
+import cube.util.FileType;
+import cube.util.FileUtils;
+import org.json.JSONObject;
+
+/**
+ * 按文件分类统计的存储用量。
+ */
+public class StorageUsage implements JSONable {
+
+    /**
+     * 文件分类。
+     */
+    public enum Category {
+
+        Image("image"),
+
+        Document("doc"),
+
+        Video("video"),
+
+        Audio("audio"),
+
+        Package("package"),
+
+        Other("other");
+
+        public final String name;
+
+        Category(String name) {
+            this.name = name;
+        }
+
+        /**
+         * 获取文件类型对应的分类。
+         *
+         * @param fileType
+         * @return
+         */
+        public static Category classify(FileType fileType) {
+            if (null == fileType) {
+                return Other;
+            }
+
+            if (FileUtils.isImageType(fileType)) {
+                return Image;
+            }
+            else if (FileUtils.isDocumentType(fileType)) {
+                return Document;
+            }
+            else if (FileUtils.isVideoType(fileType)) {
+                return Video;
+            }
+            else if (FileUtils.isAudioType(fileType)) {
+                return Audio;
+            }
+            else if (fileType == FileType.ZIP || fileType == FileType.RAR ||
+                    fileType == FileType._7Z || fileType == FileType.Z || fileType == FileType.TAR) {
+                return Package;
+            }
+            else {
+                return Other;
+            }
+        }
+    }
+
+    private final long[] sizes = new long[Category.values().length];
+
+    private final int[] counts = new int[Category.values().length];
+
+    public StorageUsage() {
+    }
+
+    public StorageUsage(JSONObject json) {
+        for (Category category : Category.values()) {
+            if (json.has(category.name)) {
+                JSONObject item = json.getJSONObject(category.name);
+                this.sizes[category.ordinal()] = item.getLong("size");
+                this.counts[category.ordinal()] = item.getInt("num");
+            }
+        }
+    }
+
+    /**
+     * 增加文件。
+     *
+     * @param category
+     * @param size
+     */
+    public void add(Category category, long size) {
+        this.sizes[category.ordinal()] += size;
+        this.counts[category.ordinal()] += 1;
+    }
+
+    /**
+     * 移除文件。
+     *
+     * @param category
+     * @param size
+     */
+    public void remove(Category category, long size) {
+        int index = category.ordinal();
+        this.sizes[index] = Math.max(0, this.sizes[index] - size);
+        this.counts[index] = Math.max(0, this.counts[index] - 1);
+    }
+
+    /**
+     * 调整文件大小。
+     *
+     * @param category
+     * @param delta
+     */
+    public void resize(Category category, long delta) {
+        int index = category.ordinal();
+        this.sizes[index] = Math.max(0, this.sizes[index] + delta);
+    }
+
+    public void reset() {
+        for (int i = 0; i < this.sizes.length; ++i) {
+            this.sizes[i] = 0;
+            this.counts[i] = 0;
+        }
+    }
+
+    public long getSize(Category category) {
+        return this.sizes[category.ordinal()];
+    }
+
+    public int getCount(Category category) {
+        return this.counts[category.ordinal()];
+    }
+
+    /**
+     * 返回总用量。
+     *
+     * @return
+     */
+    public long getTotalSize() {
+        long total = 0;
+        for (long size : this.sizes) {
+            total += size;
+        }
+        return total;
+    }
+
+    /**
+     * 返回文件总数。
+     *
+     * @return
+     */
+    public int getTotalCount() {
+        int total = 0;
+        for (int count : this.counts) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * 填写报告。
+     *
+     * @param report
+     */
+    public void fillReport(BoxReport report) {
+        report.setImageFilesUsedSize(this.getSize(Category.Image));
+        report.setDocFilesUsedSize(this.getSize(Category.Document));
+        report.setVideoFilesUsedSize(this.getSize(Category.Video));
+        report.setAudioFilesUsedSize(this.getSize(Category.Audio));
+        report.setPackageFilesUsedSize(this.getSize(Category.Package));
+        report.setOtherFilesUsedSize(this.getSize(Category.Other));
+
+        report.setNumImageFiles(this.getCount(Category.Image));
+        report.setNumDocFiles(this.getCount(Category.Document));
+        report.setNumVideoFiles(this.getCount(Category.Video));
+        report.setNumAudioFiles(this.getCount(Category.Audio));
+        report.setNumPackageFiles(this.getCount(Category.Package));
+        report.setNumOtherFiles(this.getCount(Category.Other));
+    }
+
+    @Override
+    public JSONObject toJSON() {
+        JSONObject json = new JSONObject();
+        for (Category category : Category.values()) {
+            JSONObject item = new JSONObject();
+            item.put("size", this.sizes[category.ordinal()]);
+            item.put("num", this.counts[category.ordinal()]);
+            json.put(category.name, item);
+        }
+        return json;
+    }
+
+    @Override
+    public JSONObject toCompactJSON() {
+        return this.toJSON();
+    }
+}
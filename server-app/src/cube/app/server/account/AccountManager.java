@@ -8,8 +8,6 @@ package cube.app.server.account;
 
 import cell.util.Utils;
 import cell.util.log.Logger;
-import com.google.code.kaptcha.impl.DefaultKaptcha;
-import com.google.code.kaptcha.util.Config;
 import cube.app.server.Manager;
 import cube.app.server.applet.WeChatApplet;
 import cube.app.server.util.LuckyNumbers;
@@ -17,14 +15,12 @@ import cube.auth.AuthToken;
 import cube.common.entity.AuthDomain;
 import cube.common.entity.Contact;
 import cube.util.ConfigUtils;
+import cube.util.TimingWheel;
 
-import javax.imageio.ImageIO;
-import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -48,8 +44,6 @@ public class AccountManager extends TimerTask {
 
     private Timer timer;
 
-    private int tickCount = 0;
-
     private AccountStorage accountStorage;
 
     private Map<Long, OnlineAccount> onlineIdMap;
@@ -61,14 +55,14 @@ public class AccountManager extends TimerTask {
     private ExecutorService executor;
 
     /**
-     * 验证码队列。
+     * Web 端会话超时时间轮。
      */
-    private Queue<Captcha> captchaQueue;
+    private TimingWheel<String, String> webSessionWheel;
 
     /**
-     * 被激活使用的验证码。
+     * 验证码服务。
      */
-    private List<String> activeCaptchaList;
+    private CaptchaService captchaService;
 
     /**
      * 账号管理外链。
@@ -83,8 +77,14 @@ public class AccountManager extends TimerTask {
     private AccountManager() {
         this.onlineIdMap = new ConcurrentHashMap<>();
         this.onlineTokenMap = new ConcurrentHashMap<>();
-        this.captchaQueue = new ConcurrentLinkedQueue<>();
-        this.activeCaptchaList = new ArrayList<>();
+
+        this.webSessionWheel = new TimingWheel<>(1000, 512, new TimingWheel.ExpiryListener<String, String>() {
+            @Override
+            public void onExpired(String tokenCode, String device) {
+                Logger.i(AccountManager.class, "Account timeout: " + tokenCode);
+                logout(tokenCode, device);
+            }
+        });
     }
 
     public final static AccountManager getInstance() {
@@ -94,6 +94,8 @@ public class AccountManager extends TimerTask {
     public void start() {
         this.executor = Executors.newFixedThreadPool(2);
 
+        this.captchaService = new CaptchaService(this.executor);
+
         this.loadConfig();
 
         this.initializing = true;
@@ -134,11 +136,8 @@ public class AccountManager extends TimerTask {
                     buildInData = null;
                 }
 
-                // 预先创建验证码文件
-                for (int i = 0; i < 10; ++i) {
-                    Captcha captcha = createCaptcha();
-                    captchaQueue.offer(captcha);
-                }
+                // 预先生成验证码
+                captchaService.prefill();
 
                 initializing = false;
             }
@@ -184,13 +183,12 @@ public class AccountManager extends TimerTask {
             this.timer = null;
         }
 
-        if (null != this.accountStorage) {
-            this.accountStorage.close();
+        if (null != this.webSessionWheel) {
+            this.webSessionWheel.shutdown();
         }
 
-        // 删除不使用的验证码图片
-        for (Captcha captcha : this.captchaQueue) {
-            captcha.file.delete();
+        if (null != this.accountStorage) {
+            this.accountStorage.close();
         }
 
         this.executor.shutdown();
@@ -339,6 +337,8 @@ public class AccountManager extends TimerTask {
      * @return
      */
     public StateCode logout(String token, String device) {
+        this.webSessionWheel.cancel(token);
+
         OnlineAccount account = this.onlineTokenMap.remove(token);
         if (null == account) {
             return StateCode.NotFindToken;
@@ -541,105 +541,23 @@ public class AccountManager extends TimerTask {
     }
 
     /**
-     * 获取有效的验证码图片文件。
-     *
-     * @return
-     */
-    public File consumeCaptcha() {
-        if (this.captchaQueue.size() <= 3) {
-            this.executor.execute(new Runnable() {
-                @Override
-                public void run() {
-                    while (captchaQueue.size() < 10) {
-                        captchaQueue.offer(createCaptcha());
-                    }
-                }
-            });
-        }
-
-        Captcha captcha = this.captchaQueue.poll();
-        if (null == captcha) {
-            return null;
-        }
-
-        synchronized (this.activeCaptchaList) {
-            this.activeCaptchaList.add(captcha.code);
-        }
-        return captcha.file;
-    }
-
-    /**
-     * 校验验证码。
+     * 签发验证码。
      *
-     * @param code
-     * @return
+     * @return 返回带标识的验证码。
      */
-    public boolean checkCaptchaCode(String code) {
-        synchronized (this.activeCaptchaList) {
-            for (int i = 0; i < this.activeCaptchaList.size(); ++i) {
-                String cc = this.activeCaptchaList.get(i);
-                if (cc.equalsIgnoreCase(code)) {
-                    this.activeCaptchaList.remove(i);
-                    return true;
-                }
-            }
-        }
-
-        return false;
+    public Captcha consumeCaptcha() {
+        return this.captchaService.issue();
     }
 
     /**
-     * 创建验证码。
+     * 校验验证码，每个验证码只能校验一次。
      *
+     * @param captchaId 验证码标识。
+     * @param code 验证码。
      * @return
      */
-    private Captcha createCaptcha() {
-        DefaultKaptcha dk = new DefaultKaptcha();
-        Properties properties = new Properties();
-
-        // 图片边框
-        properties.setProperty("kaptcha.border", "yes");
-        // 边框颜色
-        properties.setProperty("kaptcha.border.color", "110,110,110");
-        // 字体颜色
-        properties.setProperty("kaptcha.textproducer.font.color", "black");
-        // 背景颜色，渐变开始颜色
-        properties.setProperty("kaptcha.background.clear.from", "210,210,210");
-        // 背景颜色，渐变结束颜色
-        properties.setProperty("kaptcha.background.clear.to", "white");
-        // 图片宽
-        properties.setProperty("kaptcha.image.width", "140");
-        // 图片高
-        properties.setProperty("kaptcha.image.height", "31");
-        // 字体大小
-        properties.setProperty("kaptcha.textproducer.font.size", "30");
-        // Session key
-        properties.setProperty("kaptcha.session.key", "code");
-        // 验证码长度
-        properties.setProperty("kaptcha.textproducer.char.length", "4");
-        // 字体
-        properties.setProperty("kaptcha.textproducer.font.names", "宋体,楷体,微软雅黑");
-        // 加鱼眼效果
-        //properties.setProperty("kaptcha.obscurificator.impl", "com.google.code.kaptcha.impl.FishEyeGimpy");
-        // 加水纹效果
-        //properties.setProperty("kaptcha.obscurificator.impl", "com.google.code.kaptcha.impl.WaterRipple");
-        // 加阴影效果
-        properties.setProperty("kaptcha.obscurificator.impl", "com.google.code.kaptcha.impl.ShadowGimpy");
-        // 配置
-        Config config = new Config(properties);
-        dk.setConfig(config);
-
-        String text = Utils.randomNumberString(4);
-        BufferedImage image = dk.createImage(text);
-
-        File output = new File("data/captcha_" + text + ".jpg");
-        try {
-            ImageIO.write(image, "jpg", output);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-
-        return new Captcha(text, output);
+    public boolean checkCaptchaCode(String captchaId, String code) {
+        return this.captchaService.verify(captchaId, code);
     }
 
     /**
@@ -664,6 +582,7 @@ public class AccountManager extends TimerTask {
         }
 
         token.timestamp = System.currentTimeMillis();
+        this.webSessionWheel.touch(tokenCode, token.timestamp);
         return true;
     }
 
@@ -678,6 +597,11 @@ public class AccountManager extends TimerTask {
         }
 
         this.onlineTokenMap.put(token.code, current);
+
+        if (null != device && device.startsWith("Web/")) {
+            // Web 端会话需要心跳维持
+            this.webSessionWheel.schedule(token.code, device, WEB_TIMEOUT);
+        }
     }
 
     /**
@@ -769,45 +693,9 @@ public class AccountManager extends TimerTask {
     public void run() {
         this.accountCache.onTick();
 
-        ++this.tickCount;
-        if (this.tickCount >= 3) {
-            this.tickCount = 0;
-
-            final ArrayList<String> tokenList = new ArrayList<>();
-            final ArrayList<String> deviceList = new ArrayList<>();
-
-            long now = System.currentTimeMillis();
-
-            // 检测 Web 端是否离线
-            Iterator<Map.Entry<String, OnlineAccount>> iter = this.onlineTokenMap.entrySet().iterator();
-            while (iter.hasNext()) {
-                Map.Entry<String, OnlineAccount> entry = iter.next();
-                String tokenCode = entry.getKey();
-                OnlineAccount account = entry.getValue();
-
-                // 选出 Web 设备
-                String device = account.getDevice(tokenCode);
-                if (null != device && device.startsWith("Web/")) {
-                    Token token = account.getToken(tokenCode);
-                    if (null != token && (now - token.timestamp >= WEB_TIMEOUT)) {
-                        // 超时
-                        tokenList.add(tokenCode);
-                        deviceList.add(device);
-                    }
-                }
-            }
+        this.captchaService.sweep(System.currentTimeMillis());
 
-            if (!tokenList.isEmpty()) {
-                (new Thread() {
-                    @Override
-                    public void run() {
-                        for (int i = 0; i < tokenList.size(); ++i) {
-                            Logger.i(AccountManager.class, "Account timeout: " + tokenList.get(i));
-                            logout(tokenList.get(i), deviceList.get(i));
-                        }
-                    }
-                }).start();
-            }
-        }
+        // 检测 Web 端是否离线
+        this.webSessionWheel.advance(System.currentTimeMillis());
     }
 }
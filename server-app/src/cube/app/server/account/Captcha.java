@@ -6,19 +6,30 @@
 
 package cube.app.server.account;
 
-import java.io.File;
-
 /**
  * 验证码。
  */
 public class Captcha {
 
+    /**
+     * 验证码标识，预生成的验证码没有标识。
+     */
+    public final String id;
+
     public final String code;
 
-    public final File file;
+    /**
+     * PNG 格式的验证码图片数据。
+     */
+    public final byte[] image;
+
+    public Captcha(String code, byte[] image) {
+        this(null, code, image);
+    }
 
-    public Captcha(String code, File file) {
+    public Captcha(String id, String code, byte[] image) {
+        this.id = id;
         this.code = code;
-        this.file = file;
+        this.image = image;
     }
 }
@@ -0,0 +1,300 @@
+/*
+ * This source file is part of Cube.
+ *
+ * Copyright (c) 2023-2026 Ambrose Xu.
+ */
+
+package cube.app.server.account;
+
+import cell.util.Utils;
+import cell.util.log.Logger;
+import com.google.code.kaptcha.impl.DefaultKaptcha;
+import com.google.code.kaptcha.util.Config;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.SecureRandom;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 验证码服务。
+ * 验证码图片在内存中生成，每个验证码绑定一个不透明的标识，在有效期内只能校验一次。
+ * 预生成的验证码保存在无锁队列里，由单个补充任务维持队列容量。
+ */
+public class CaptchaService {
+
+    /**
+     * 预生成验证码的数量。
+     */
+    private final int poolCapacity;
+
+    /**
+     * 低于该数量时开始补充。
+     */
+    private final int lowWatermark;
+
+    /**
+     * 验证码有效期。
+     */
+    private final long ttl;
+
+    /**
+     * 每个验证码允许的校验次数。
+     */
+    private final int maxAttempts;
+
+    private final Executor executor;
+
+    private final ConcurrentLinkedQueue<Captcha> pool;
+
+    private final AtomicInteger poolSize;
+
+    private final AtomicBoolean refilling;
+
+    private final ConcurrentHashMap<String, Challenge> challenges;
+
+    private final SecureRandom random;
+
+    private final AtomicLong renderedCount;
+
+    private DefaultKaptcha kaptcha;
+
+    public CaptchaService(Executor executor) {
+        this(executor, 10, 3, 5 * 60 * 1000L, 1);
+    }
+
+    public CaptchaService(Executor executor, int poolCapacity, int lowWatermark, long ttl, int maxAttempts) {
+        this.executor = executor;
+        this.poolCapacity = poolCapacity;
+        this.lowWatermark = lowWatermark;
+        this.ttl = ttl;
+        this.maxAttempts = maxAttempts;
+        this.pool = new ConcurrentLinkedQueue<>();
+        this.poolSize = new AtomicInteger(0);
+        this.refilling = new AtomicBoolean(false);
+        this.challenges = new ConcurrentHashMap<>();
+        this.random = new SecureRandom();
+        this.renderedCount = new AtomicLong(0);
+    }
+
+    /**
+     * 填满预生成队列。
+     */
+    public void prefill() {
+        this.refill();
+    }
+
+    /**
+     * 签发验证码。
+     *
+     * @return 返回带标识的验证码。
+     */
+    public Captcha issue() {
+        Captcha captcha = this.pool.poll();
+        if (null != captcha) {
+            if (this.poolSize.decrementAndGet() <= this.lowWatermark) {
+                this.triggerRefill();
+            }
+        }
+        else {
+            // 队列已空，直接生成
+            this.triggerRefill();
+            captcha = this.render();
+        }
+
+        String id = this.makeId();
+        this.challenges.put(id, new Challenge(captcha.code, System.currentTimeMillis() + this.ttl));
+        return new Captcha(id, captcha.code, captcha.image);
+    }
+
+    /**
+     * 校验验证码。校验成功或校验次数用尽后验证码失效。
+     *
+     * @param id 验证码标识。
+     * @param code 验证码。
+     * @return 校验成功返回 {@code true} 。
+     */
+    public boolean verify(String id, String code) {
+        if (null == id || null == code) {
+            return false;
+        }
+
+        Challenge challenge = this.challenges.get(id);
+        if (null == challenge) {
+            return false;
+        }
+
+        if (challenge.expiry < System.currentTimeMillis()) {
+            this.challenges.remove(id, challenge);
+            return false;
+        }
+
+        int attempt = challenge.attempts.incrementAndGet();
+        if (attempt > this.maxAttempts) {
+            this.challenges.remove(id, challenge);
+            return false;
+        }
+
+        if (challenge.code.equalsIgnoreCase(code)) {
+            this.challenges.remove(id, challenge);
+            // 并发校验时只有一个成功
+            return challenge.used.compareAndSet(false, true);
+        }
+
+        if (attempt >= this.maxAttempts) {
+            this.challenges.remove(id, challenge);
+        }
+        return false;
+    }
+
+    /**
+     * 删除过期的验证码。
+     *
+     * @param now 当前时间。
+     * @return 返回删除的数量。
+     */
+    public int sweep(long now) {
+        int count = 0;
+        Iterator<Map.Entry<String, Challenge>> iter = this.challenges.entrySet().iterator();
+        while (iter.hasNext()) {
+            if (iter.next().getValue().expiry < now) {
+                iter.remove();
+                ++count;
+            }
+        }
+        return count;
+    }
+
+    public int numPooled() {
+        return this.poolSize.get();
+    }
+
+    public int numActive() {
+        return this.challenges.size();
+    }
+
+    public long getRenderedCount() {
+        return this.renderedCount.get();
+    }
+
+    private void triggerRefill() {
+        if (!this.refilling.compareAndSet(false, true)) {
+            // 已有补充任务
+            return;
+        }
+
+        this.executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    refill();
+                } finally {
+                    refilling.set(false);
+                }
+            }
+        });
+    }
+
+    private void refill() {
+        while (this.poolSize.get() < this.poolCapacity) {
+            this.pool.offer(this.render());
+            this.poolSize.incrementAndGet();
+        }
+    }
+
+    private String makeId() {
+        byte[] bytes = new byte[16];
+        this.random.nextBytes(bytes);
+        StringBuilder buf = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            buf.append(Character.forDigit((b >> 4) & 0xF, 16));
+            buf.append(Character.forDigit(b & 0xF, 16));
+        }
+        return buf.toString();
+    }
+
+    private Captcha render() {
+        String text = Utils.randomNumberString(4);
+
+        BufferedImage image = null;
+        synchronized (this) {
+            if (null == this.kaptcha) {
+                this.kaptcha = createKaptcha();
+            }
+            image = this.kaptcha.createImage(text);
+        }
+
+        ByteArrayOutputStream os = new ByteArrayOutputStream(4096);
+        try {
+            ImageIO.write(image, "png", os);
+        } catch (IOException e) {
+            Logger.w(this.getClass(), "#render", e);
+        }
+
+        this.renderedCount.incrementAndGet();
+        return new Captcha(text, os.toByteArray());
+    }
+
+    private static DefaultKaptcha createKaptcha() {
+        DefaultKaptcha dk = new DefaultKaptcha();
+        Properties properties = new Properties();
+
+        // 图片边框
+        properties.setProperty("kaptcha.border", "yes");
+        // 边框颜色
+        properties.setProperty("kaptcha.border.color", "110,110,110");
+        // 字体颜色
+        properties.setProperty("kaptcha.textproducer.font.color", "black");
+        // 背景颜色，渐变开始颜色
+        properties.setProperty("kaptcha.background.clear.from", "210,210,210");
+        // 背景颜色，渐变结束颜色
+        properties.setProperty("kaptcha.background.clear.to", "white");
+        // 图片宽
+        properties.setProperty("kaptcha.image.width", "140");
+        // 图片高
+        properties.setProperty("kaptcha.image.height", "31");
+        // 字体大小
+        properties.setProperty("kaptcha.textproducer.font.size", "30");
+        // Session key
+        properties.setProperty("kaptcha.session.key", "code");
+        // 验证码长度
+        properties.setProperty("kaptcha.textproducer.char.length", "4");
+        // 字体
+        properties.setProperty("kaptcha.textproducer.font.names", "宋体,楷体,微软雅黑");
+        // 加阴影效果
+        properties.setProperty("kaptcha.obscurificator.impl", "com.google.code.kaptcha.impl.ShadowGimpy");
+        // 配置
+        Config config = new Config(properties);
+        dk.setConfig(config);
+        return dk;
+    }
+
+    /**
+     * 已签发的验证码。
+     */
+    private class Challenge {
+
+        private final String code;
+
+        private final long expiry;
+
+        private final AtomicInteger attempts = new AtomicInteger(0);
+
+        private final AtomicBoolean used = new AtomicBoolean(false);
+
+        private Challenge(String code, long expiry) {
+            this.code = code;
+            this.expiry = expiry;
+        }
+    }
+}
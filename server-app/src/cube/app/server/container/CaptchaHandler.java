@@ -7,6 +7,7 @@
 package cube.app.server.container;
 
 import cube.app.server.account.AccountManager;
+import cube.app.server.account.Captcha;
 import cube.util.CrossDomainHandler;
 import cube.util.FileType;
 import org.eclipse.jetty.http.HttpStatus;
@@ -16,8 +17,6 @@ import javax.servlet.ServletException;
 import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 
 /**
@@ -25,6 +24,11 @@ import java.io.IOException;
  */
 public class CaptchaHandler extends ContextHandler {
 
+    /**
+     * 验证码标识的响应头。
+     */
+    public final static String HEADER_CAPTCHA_ID = "X-Captcha-Id";
+
     public CaptchaHandler(String httpOrigin, String httpsOrigin) {
         super("/captcha/");
         setHandler(new Handler(httpOrigin, httpsOrigin));
@@ -39,41 +43,30 @@ public class CaptchaHandler extends ContextHandler {
 
         @Override
         public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException {
-            File file = AccountManager.getInstance().consumeCaptcha();
-            if (null == file) {
+            Captcha captcha = AccountManager.getInstance().consumeCaptcha();
+            if (null == captcha) {
                 response.setStatus(HttpStatus.BAD_REQUEST_400);
                 this.complete();
                 return;
             }
 
             response.setStatus(HttpStatus.OK_200);
-            response.setContentType(FileType.JPEG.getMimeType());
-            response.setContentLengthLong(file.length());
+            response.setContentType(FileType.PNG.getMimeType());
+            response.setContentLength(captcha.image.length);
+            response.setHeader("Cache-Control", "no-store");
+            // 注册时需要同时提交验证码标识
+            response.setHeader(HEADER_CAPTCHA_ID, captcha.id);
+            response.setHeader("Access-Control-Expose-Headers", HEADER_CAPTCHA_ID);
 
-            FileInputStream fis = null;
             ServletOutputStream os = response.getOutputStream();
-
             try {
-                fis = new FileInputStream(file);
-
-                byte[] bytes = new byte[1024];
-                int length = 0;
-                while ((length = fis.read(bytes)) > 0) {
-                    os.write(bytes, 0, length);
-                }
+                os.write(captcha.image);
             } catch (IOException e) {
                 e.printStackTrace();
             } finally {
-                if (null != fis) {
-                    fis.close();
-                }
-
                 os.close();
             }
 
-            // 删除文件
-            file.delete();
-
             this.complete();
         }
     }
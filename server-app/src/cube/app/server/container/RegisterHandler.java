@@ -46,6 +46,7 @@ public class RegisterHandler extends ContextHandler {
             String nickname = null;
             String avatar = null;
             String captcha = null;
+            String captchaId = null;
             String device = null;
 
             JSONObject data = this.readBodyAsJSONObject(request);
@@ -70,6 +71,9 @@ public class RegisterHandler extends ContextHandler {
             if (data.has("captcha")) {
                 captcha = data.getString("captcha");
             }
+            if (data.has("captchaId")) {
+                captchaId = data.getString("captchaId");
+            }
             if (data.has("device")) {
                 device = data.getString("device");
             }
@@ -78,7 +82,7 @@ public class RegisterHandler extends ContextHandler {
             if (null != device) {
                 if (device.indexOf("Web") == 0 && null != captcha) {
                     // 校验验证码
-                    if (AccountManager.getInstance().checkCaptchaCode(captcha)) {
+                    if (AccountManager.getInstance().checkCaptchaCode(captchaId, captcha)) {
                         // 验证码有效
                         Account account = AccountManager.getInstance().register(domain, accountName,
                                 phone, password, nickname, avatar);
@@ -0,0 +1,189 @@
+/*
+ * This source file is part of Cube.
+ *
+ * Copyright (c) 2023-2026 Ambrose Xu.
+ */
+
+package cube.app.server.test;
+
+import cube.app.server.account.Captcha;
+import cube.app.server.account.CaptchaService;
+import cube.util.Assert;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 验证码服务测试。
+ */
+public class CaptchaServiceTest {
+
+    private ExecutorService executor;
+
+    public CaptchaServiceTest() {
+        this.executor = Executors.newFixedThreadPool(2);
+    }
+
+    public void testIssue() {
+        CaptchaService service = new CaptchaService(this.executor);
+        service.prefill();
+        Assert.equals("testIssue (prefill)", 10, service.numPooled());
+
+        Captcha captcha = service.issue();
+        Assert.equals("testIssue (id)", true, null != captcha.id && captcha.id.length() == 32);
+        Assert.equals("testIssue (png)", true, captcha.image.length > 8
+                && (captcha.image[0] & 0xFF) == 0x89 && captcha.image[1] == 'P');
+        Assert.equals("testIssue (active)", 1, service.numActive());
+
+        // 标识不能与验证码混用
+        Assert.equals("testIssue (wrong id)", false, service.verify(captcha.code, captcha.code));
+        Assert.equals("testIssue (verify)", true, service.verify(captcha.id, captcha.code));
+    }
+
+    public void testReplay() {
+        CaptchaService service = new CaptchaService(this.executor);
+
+        Captcha captcha = service.issue();
+        Assert.equals("testReplay (first)", true, service.verify(captcha.id, captcha.code));
+        Assert.equals("testReplay (replay)", false, service.verify(captcha.id, captcha.code));
+
+        // 一次错误尝试后验证码失效
+        captcha = service.issue();
+        String wrong = captcha.code.equals("0000") ? "1111" : "0000";
+        Assert.equals("testReplay (wrong)", false, service.verify(captcha.id, wrong));
+        Assert.equals("testReplay (after wrong)", false, service.verify(captcha.id, captcha.code));
+        Assert.equals("testReplay (active)", 0, service.numActive());
+    }
+
+    public void testExpiry() {
+        CaptchaService service = new CaptchaService(this.executor, 4, 1, 200L, 1);
+
+        Captcha expired = service.issue();
+        Captcha swept = service.issue();
+        try {
+            Thread.sleep(300);
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+
+        Assert.equals("testExpiry (verify)", false, service.verify(expired.id, expired.code));
+        Assert.equals("testExpiry (sweep)", 1, service.sweep(System.currentTimeMillis()));
+        Assert.equals("testExpiry (swept)", false, service.verify(swept.id, swept.code));
+        Assert.equals("testExpiry (active)", 0, service.numActive());
+    }
+
+    public void testConcurrentConsume() {
+        final CaptchaService service = new CaptchaService(this.executor, 10, 3, 60000L, 1);
+        service.prefill();
+
+        final int threads = 8;
+        final int perThread = 50;
+        final List<Captcha> issued = new ArrayList<>();
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+
+        for (int i = 0; i < threads; ++i) {
+            (new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        e.printStackTrace();
+                    }
+
+                    List<Captcha> list = new ArrayList<>();
+                    for (int n = 0; n < perThread; ++n) {
+                        list.add(service.issue());
+                    }
+                    synchronized (issued) {
+                        issued.addAll(list);
+                    }
+                    done.countDown();
+                }
+            }).start();
+        }
+
+        start.countDown();
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+
+        Set<String> ids = new HashSet<>();
+        for (Captcha captcha : issued) {
+            ids.add(captcha.id);
+        }
+        Assert.equals("testConcurrentConsume (issued)", threads * perThread, issued.size());
+        Assert.equals("testConcurrentConsume (unique)", threads * perThread, ids.size());
+        Assert.equals("testConcurrentConsume (active)", threads * perThread, service.numActive());
+
+        // 同一个验证码被并发校验时只有一次成功
+        final AtomicInteger success = new AtomicInteger(0);
+        final CountDownLatch verifyStart = new CountDownLatch(1);
+        final CountDownLatch verifyDone = new CountDownLatch(threads);
+        for (int i = 0; i < threads; ++i) {
+            (new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        verifyStart.await();
+                    } catch (InterruptedException e) {
+                        e.printStackTrace();
+                    }
+
+                    for (Captcha captcha : issued) {
+                        if (service.verify(captcha.id, captcha.code)) {
+                            success.incrementAndGet();
+                        }
+                    }
+                    verifyDone.countDown();
+                }
+            }).start();
+        }
+
+        verifyStart.countDown();
+        try {
+            verifyDone.await();
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+
+        Assert.equals("testConcurrentConsume (single use)", threads * perThread, success.get());
+        Assert.equals("testConcurrentConsume (active after)", 0, service.numActive());
+
+        // 等待补充完成，单个补充任务不会超过队列容量
+        long deadline = System.currentTimeMillis() + 10000;
+        while (service.numPooled() < 10 && System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        }
+        Assert.equals("testConcurrentConsume (pool)", 10, service.numPooled());
+        System.out.println("Rendered: " + service.getRenderedCount() + " for " + issued.size() + " issued");
+    }
+
+    public void teardown() {
+        this.executor.shutdown();
+    }
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+
+        CaptchaServiceTest test = new CaptchaServiceTest();
+        test.testIssue();
+        test.testReplay();
+        test.testExpiry();
+        test.testConcurrentConsume();
+        test.teardown();
+    }
+}
@@ -29,7 +29,6 @@ import cube.service.fileprocessor.processor.video.*;
 import cube.service.filestorage.FileStorageService;
 import cube.util.*;
 import cube.vision.Size;
-import net.coobird.thumbnailator.Thumbnails;
 import org.eclipse.jetty.client.HttpClient;
 import org.eclipse.jetty.client.api.Response;
 import org.eclipse.jetty.client.util.InputStreamResponseListener;
@@ -38,7 +37,6 @@ import org.eclipse.jetty.http.HttpStatus;
 import org.eclipse.jetty.util.ssl.SslContextFactory;
 import org.json.JSONObject;
 
-import java.awt.image.BufferedImage;
 import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -68,6 +66,11 @@ public class FileProcessorService extends AbstractModule {
 
     private boolean useImageMagick = true;
 
+    /**
+     * 缩略图管线。
+     */
+    private ThumbnailPipeline thumbnailPipeline;
+
     /**
      * 插件系统。
      */
@@ -100,6 +103,9 @@ public class FileProcessorService extends AbstractModule {
             }
         }
 
+        this.thumbnailPipeline = new ThumbnailPipeline(Paths.get("storage/thumbnails"), 1024L * 1024 * 1024);
+        this.thumbnailPipeline.setUseImageMagick(this.useImageMagick);
+
         this.cvConnector = new CVConnector("DJLService",
                 this.getKernel().getNucleus().getTalkService());
 
@@ -115,6 +121,12 @@ public class FileProcessorService extends AbstractModule {
             this.cvConnector.stop();
         }
 
+        OfficeWorkerPool officePool = LibreOffice.getWorkerPool();
+        if (null != officePool) {
+            LibreOffice.setWorkerPool(null);
+            officePool.stop();
+        }
+
         this.started.set(false);
     }
 
@@ -135,6 +147,11 @@ public class FileProcessorService extends AbstractModule {
                 }
             }
         }
+
+        if (null != this.thumbnailPipeline) {
+            // 控制缩略图缓存大小
+            this.thumbnailPipeline.trim();
+        }
     }
 
     private void loadConfig() {
@@ -167,6 +184,33 @@ public class FileProcessorService extends AbstractModule {
             Logger.i(this.getClass(), "Disable ImageMagick");
         }
 
+        if (properties.containsKey("thumbnail.cache.size")) {
+            // 单位：MB
+            this.thumbnailPipeline.setMaxCacheSize(
+                    Long.parseLong(properties.getProperty("thumbnail.cache.size")) * 1024 * 1024);
+        }
+
+        // 文档转换进程池
+        int officePoolSize = Integer.parseInt(properties.getProperty("office.pool.size", "0"));
+        if (officePoolSize > 0) {
+            List<String> command = new ArrayList<>();
+            for (String arg : properties.getProperty("office.worker", "python3 bin/office-worker.py").split(" ")) {
+                if (arg.length() > 0) {
+                    command.add(arg);
+                }
+            }
+
+            OfficeWorkerPool officePool = new OfficeWorkerPool(command,
+                    Paths.get(properties.getProperty("office.profile.path", "storage/office-profiles")),
+                    officePoolSize,
+                    Integer.parseInt(properties.getProperty("office.worker.jobs", "100")),
+                    Long.parseLong(properties.getProperty("office.job.timeout", "600")) * 1000L,
+                    this.executor);
+            officePool.start();
+            LibreOffice.setWorkerPool(officePool);
+            Logger.i(this.getClass(), "Office worker pool size: " + officePoolSize);
+        }
+
         if (properties.containsKey("ai.host")) {
             String host = properties.getProperty("ai.host");
             int port = Integer.parseInt(properties.getProperty("ai.port", "7711"));
@@ -193,6 +237,9 @@ public class FileProcessorService extends AbstractModule {
      */
     public void enableImageMagick() {
         this.useImageMagick = true;
+        if (null != this.thumbnailPipeline) {
+            this.thumbnailPipeline.setUseImageMagick(true);
+        }
     }
 
     /**
@@ -200,6 +247,9 @@ public class FileProcessorService extends AbstractModule {
      */
     public void disableImageMagick() {
         this.useImageMagick = false;
+        if (null != this.thumbnailPipeline) {
+            this.thumbnailPipeline.setUseImageMagick(false);
+        }
     }
 
     /**
@@ -247,17 +297,23 @@ public class FileProcessorService extends AbstractModule {
 
         String fileCode = srcFileLabel.getFileCode();
 
-        // 本地路径
-        String path = fileStorage.loadFileToDisk(domainName, fileCode);
-        if (null == path) {
-            return null;
-        }
+        // 使用源文件 MD5 作为缓存键，内容相同的文件共享缩略图
+        String md5 = (null != srcFileLabel.getMD5Code()) ? srcFileLabel.getMD5Code() : fileCode;
 
-        Logger.d(this.getClass(), "#makeThumbnail - file path: " + path);
+        ThumbnailPipeline.Result result = this.thumbnailPipeline.make(md5, ThumbnailPipeline.DEFAULT_MAX_SIZE,
+                quality, "jpg", () -> {
+                    // 本地路径
+                    String path = fileStorage.loadFileToDisk(domainName, fileCode);
+                    if (null == path) {
+                        return null;
+                    }
 
-        File input = new File(path);
-        if (!input.exists()) {
-            Logger.w(this.getClass(), "#makeThumbnail - can not find file: " + path);
+                    Logger.d(this.getClass(), "#makeThumbnail - file path: " + path);
+                    return new File(path);
+                });
+
+        if (null == result) {
+            Logger.w(this.getClass(), "#makeThumbnail - Can NOT make thumbnail image : " + fileCode);
             return null;
         }
 
@@ -272,78 +328,17 @@ public class FileProcessorService extends AbstractModule {
         // 输出文件
         String outputFile = Paths.get(this.workPath.toString(), thumbFileCode).toString();
 
-        int srcWidth = 0;
-        int srcHeight = 0;
-
-        int thumbWidth = 0;
-        int thumbHeight = 0;
-
-        if (this.useImageMagick) {
-            Image image = ImageTools.identify(input.getAbsolutePath());
-            if (null == image) {
-                Logger.w(this.getClass(), "#makeThumbnail - Can NOT identify input file : " + input.getAbsolutePath());
-                return null;
-            }
-
-            srcWidth = image.width;
-            srcHeight = image.height;
+        int srcWidth = result.srcWidth;
+        int srcHeight = result.srcHeight;
 
-            // 生成缩略图
-            Image thumbImage = ImageTools.thumbnail(input.getAbsolutePath(),
-                    new Size(srcWidth, srcHeight), outputFile, quality);
+        int thumbWidth = result.width;
+        int thumbHeight = result.height;
 
-            if (null == thumbImage) {
-                Logger.w(this.getClass(), "#makeThumbnail - Can NOT make thumbnail image : " + input.getAbsolutePath());
-                return null;
-            }
-
-            thumbWidth = thumbImage.width;
-            thumbHeight = thumbImage.height;
-        }
-        else {
-            FileInputStream fis = null;
-
-            try {
-                fis = new FileInputStream(input);
-
-                Thumbnails.Builder<? extends InputStream> fileBuilder = Thumbnails.of(fis).scale(1.0).outputQuality(1.0);
-//                Thumbnails.Builder<File> fileBuilder = Thumbnails.of(input).scale(1.0).outputQuality(1.0);
-
-                BufferedImage src = fileBuilder.asBufferedImage();
-                srcWidth = src.getWidth();
-                srcHeight = src.getHeight();
-
-                int size = Math.max(srcWidth, srcHeight);
-
-                if (srcWidth > size || srcHeight > size) {
-                    Thumbnails.Builder<File> builder = Thumbnails.of(input);
-                    builder.size(size, size).outputFormat("jpg").outputQuality(((double)quality) / 100.0f).toFile(outputFile);
-
-                    BufferedImage thumb = builder.asBufferedImage();
-                    thumbWidth = thumb.getWidth();
-                    thumbHeight = thumb.getHeight();
-                    thumb = null;
-                }
-                else {
-                    Thumbnails.of(input).scale(1.0).outputQuality(((double)quality) / 100.0f).toFile(outputFile);
-
-                    thumbWidth = srcWidth;
-                    thumbHeight = srcHeight;
-                }
-
-                src = null;
-            } catch (IOException e) {
-                Logger.e(this.getClass(), "#makeThumbnail", e);
-                return null;
-            } finally {
-                if (null != fis) {
-                    try {
-                        fis.close();
-                    } catch (IOException e) {
-                        // Nothing
-                    }
-                }
-            }
+        try {
+            Files.copy(result.file.toPath(), Paths.get(outputFile + ".jpg"), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            Logger.e(this.getClass(), "#makeThumbnail", e);
+            return null;
         }
 
         // 写入到文件系统
@@ -8,18 +8,20 @@ package cube.service.fileprocessor;
 
 import cell.util.log.Logger;
 import cube.common.entity.Image;
+import cube.service.fileprocessor.processor.ImageMagick;
 import cube.util.FileType;
 import cube.util.FileUtils;
+import cube.util.ProcessManager;
+import cube.util.ProcessTask;
 import cube.vision.Size;
 import net.coobird.thumbnailator.Thumbnails;
 
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.util.ArrayList;
+import java.util.List;
 
 /**
  * 图片工具。
@@ -30,6 +32,11 @@ public final class ImageTools {
 
     private static boolean USE_IMAGEMAGICK = true;
 
+    /**
+     * 命令的超时时长。
+     */
+    private final static long TIMEOUT = 60 * 1000L;
+
     private ImageTools() {
     }
 
@@ -75,48 +82,23 @@ public final class ImageTools {
         Image image = null;
 
         if (USE_IMAGEMAGICK) {
-            ProcessBuilder pb = new ProcessBuilder("identify", "-format", "%m %w %h ", fullpath);
-
-            Process process = null;
-            BufferedReader stdInput = null;
-            int status = -1;
-
-            try {
-                // 启动进程
-                process = pb.start();
-
-                stdInput = new BufferedReader(new InputStreamReader(process.getInputStream()));
-
-                String line = null;
-                while ((line = stdInput.readLine()) != null) {
-                    if (line.length() > 0) {
-                        String[] tmp = line.split(" ");
-                        if (tmp.length == 3 || line.startsWith("GIF")) {
-                            FileType type = FileType.matchExtension(tmp[0]);
-                            if (type == FileType.JPEG || type == FileType.PNG || type == FileType.GIF || type == FileType.BMP) {
-                                image = new Image(type, Integer.parseInt(tmp[1]), Integer.parseInt(tmp[2]));
-                            }
-                        }
+            List<String> commandLine = new ArrayList<>();
+            commandLine.add("identify");
+            commandLine.add("-format");
+            commandLine.add("%m %w %h ");
+            commandLine.add(fullpath);
+
+            ProcessManager.ProcessOutput output = ProcessManager.getInstance().run(
+                    new ProcessTask(ImageMagick.TOOL_NAME, commandLine).setTimeout(TIMEOUT));
+            for (String line : output.getStdInput()) {
+                String[] tmp = line.split(" ");
+                if (tmp.length == 3 || line.startsWith("GIF") || line.startsWith("WEBP")) {
+                    FileType type = FileType.matchExtension(tmp[0]);
+                    if (type == FileType.JPEG || type == FileType.PNG || type == FileType.GIF || type == FileType.BMP
+                            || type == FileType.WEBP) {
+                        image = new Image(type, Integer.parseInt(tmp[1]), Integer.parseInt(tmp[2]));
                     }
                 }
-
-                try {
-                    status = process.waitFor();
-                } catch (InterruptedException e) {
-                }
-            } catch (IOException e) {
-                e.printStackTrace();
-            } finally {
-                if (null != stdInput) {
-                    try {
-                        stdInput.close();
-                    } catch (IOException e) {
-                    }
-                }
-
-                if (null != process) {
-                    process.destroy();
-                }
             }
         }
         else {
@@ -161,40 +143,7 @@ public final class ImageTools {
 
             command.add(outputFile + ".jpg");
 
-            ProcessBuilder pb = new ProcessBuilder(command);
-
-            Process process = null;
-            BufferedReader stdError = null;
-            int status = -1;
-
-            try {
-                String line = null;
-                process = pb.start();
-                stdError = new BufferedReader(new InputStreamReader(process.getErrorStream()));
-                while ((line = stdError.readLine()) != null) {
-                    if (line.length() > 0) {
-                        Logger.w(ImageTools.class, "#thumbnail - " + line);
-                    }
-                }
-
-                try {
-                    status = process.waitFor();
-                } catch (InterruptedException e) {
-                }
-            } catch (IOException e) {
-                e.printStackTrace();
-            } finally {
-                if (null != stdError) {
-                    try {
-                        stdError.close();
-                    } catch (IOException e) {
-                    }
-                }
-
-                if (null != process) {
-                    process.destroy();
-                }
-            }
+            run(command, "#thumbnail");
 
             File file = new File(outputFile + ".jpg");
             if (file.exists()) {
@@ -239,40 +188,13 @@ public final class ImageTools {
      */
     public static Image thumbnailResize(String inputFile, String outputFile, int size) {
         if (USE_IMAGEMAGICK) {
-            ProcessBuilder pb = new ProcessBuilder("convert", inputFile, "-thumbnail", size + "x" + size, outputFile + ".jpg");
-
-            Process process = null;
-            BufferedReader stdError = null;
-            int status = 1;
-
-            try {
-                String line = null;
-                process = pb.start();
-                stdError = new BufferedReader(new InputStreamReader(process.getErrorStream()));
-                while ((line = stdError.readLine()) != null) {
-                    if (line.length() > 0) {
-                        Logger.w(ImageTools.class, "#thumbnailResize - " + line);
-                    }
-                }
-
-                try {
-                    status = process.waitFor();
-                } catch (InterruptedException e) {
-                }
-            } catch (IOException e) {
-                e.printStackTrace();
-            } finally {
-                if (null != stdError) {
-                    try {
-                        stdError.close();
-                    } catch (IOException e) {
-                    }
-                }
-
-                if (null != process) {
-                    process.destroy();
-                }
-            }
+            List<String> command = new ArrayList<>();
+            command.add("convert");
+            command.add(inputFile);
+            command.add("-thumbnail");
+            command.add(size + "x" + size);
+            command.add(outputFile + ".jpg");
+            run(command, "#thumbnailResize");
 
             File file = new File(outputFile + ".jpg");
             if (file.exists()) {
@@ -301,6 +223,14 @@ public final class ImageTools {
         }
     }
 
+    private static void run(List<String> commandLine, String method) {
+        ProcessManager.ProcessOutput output = ProcessManager.getInstance().run(
+                new ProcessTask(ImageMagick.TOOL_NAME, commandLine).setTimeout(TIMEOUT));
+        for (String line : output.getErrorInput()) {
+            Logger.w(ImageTools.class, method + " - " + line);
+        }
+    }
+
 //    public static void main(String[] args) {
 //        Image image = ImageTools.identify("/Users/ambrose/Documents/Repositories/Cube3/cube-server/README.md");
 //        System.out.println(image);
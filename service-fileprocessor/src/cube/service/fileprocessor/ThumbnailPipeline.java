@@ -0,0 +1,373 @@
+/*
+ * This source file is part of Cube.
+ *
+ * Copyright (c) 2023-2026 Ambrose Xu.
+ */
+
+package cube.service.fileprocessor;
+
+import cell.util.log.Logger;
+import cube.common.entity.Image;
+import cube.vision.Size;
+import net.coobird.thumbnailator.Thumbnails;
+import net.coobird.thumbnailator.util.exif.ExifFilterUtils;
+import net.coobird.thumbnailator.util.exif.ExifUtils;
+import net.coobird.thumbnailator.util.exif.Orientation;
+import org.json.JSONObject;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * 缩略图生成管线。
+ * 从图片头读取尺寸，使用降采样解码到接近目标尺寸，生成的缩略图按（源文件 MD5 、尺寸、质量、格式）缓存在本地磁盘。
+ * 相同缩略图的并发请求只生成一次。
+ */
+public class ThumbnailPipeline {
+
+    /**
+     * 默认缩略图最大边长。
+     */
+    public final static int DEFAULT_MAX_SIZE = 1200;
+
+    private final Path cachePath;
+
+    /**
+     * 缓存上限，单位：字节。
+     */
+    private long maxCacheSize;
+
+    private boolean useImageMagick = false;
+
+    private final ConcurrentHashMap<String, CompletableFuture<Result>> inflight;
+
+    public ThumbnailPipeline(Path cachePath, long maxCacheSize) {
+        this.cachePath = cachePath;
+        this.maxCacheSize = maxCacheSize;
+        this.inflight = new ConcurrentHashMap<>();
+
+        if (!Files.exists(this.cachePath)) {
+            try {
+                Files.createDirectories(this.cachePath);
+            } catch (IOException e) {
+                Logger.e(this.getClass(), "#ThumbnailPipeline", e);
+            }
+        }
+    }
+
+    public void setUseImageMagick(boolean value) {
+        this.useImageMagick = value;
+    }
+
+    public void setMaxCacheSize(long maxCacheSize) {
+        this.maxCacheSize = maxCacheSize;
+    }
+
+    public Path getCachePath() {
+        return this.cachePath;
+    }
+
+    /**
+     * 获取缩略图，缓存中不存在时生成。
+     *
+     * @param md5 源文件 MD5 码。
+     * @param maxSize 缩略图最大边长。
+     * @param quality 输出质量，取值范围 1 到 100 。
+     * @param format 输出格式。
+     * @param source 源文件加载器，仅在需要生成缩略图时调用。
+     * @return 返回缩略图，生成失败返回 {@code null} 。
+     */
+    public Result make(String md5, int maxSize, int quality, String format, Callable<File> source) {
+        String key = makeKey(md5, maxSize, quality, format);
+
+        Result result = this.lookup(key, format);
+        if (null != result) {
+            return result;
+        }
+
+        CompletableFuture<Result> future = new CompletableFuture<>();
+        CompletableFuture<Result> current = this.inflight.putIfAbsent(key, future);
+        if (null != current) {
+            // 等待正在进行的生成任务
+            try {
+                return current.get();
+            } catch (InterruptedException | ExecutionException e) {
+                Logger.w(this.getClass(), "#make - " + key + " : " + e.getMessage());
+                return null;
+            }
+        }
+
+        try {
+            // 再次检查缓存，避免与刚完成的任务重复生成
+            result = this.lookup(key, format);
+            if (null == result) {
+                File input = source.call();
+                if (null != input && input.exists()) {
+                    result = this.generate(key, input, maxSize, quality, format);
+                }
+            }
+        } catch (Exception e) {
+            Logger.e(this.getClass(), "#make - " + key, e);
+            result = null;
+        } finally {
+            future.complete(result);
+            this.inflight.remove(key, future);
+        }
+
+        return result;
+    }
+
+    /**
+     * 删除最久未使用的缓存文件，直到缓存总大小小于上限。
+     */
+    public void trim() {
+        File[] files = this.cachePath.toFile().listFiles();
+        if (null == files) {
+            return;
+        }
+
+        long total = 0;
+        List<File> list = new ArrayList<>();
+        for (File file : files) {
+            if (file.isFile()) {
+                total += file.length();
+                list.add(file);
+            }
+        }
+
+        if (total <= this.maxCacheSize) {
+            return;
+        }
+
+        list.sort((f1, f2) -> Long.compare(f1.lastModified(), f2.lastModified()));
+        for (File file : list) {
+            if (total <= this.maxCacheSize * 0.8) {
+                break;
+            }
+
+            total -= file.length();
+            file.delete();
+        }
+    }
+
+    private Result lookup(String key, String format) {
+        File file = this.cachePath.resolve(key + "." + format).toFile();
+        File meta = this.cachePath.resolve(key + ".json").toFile();
+        if (!file.exists() || !meta.exists()) {
+            return null;
+        }
+
+        try {
+            JSONObject json = new JSONObject(new String(Files.readAllBytes(meta.toPath()), StandardCharsets.UTF_8));
+            long now = System.currentTimeMillis();
+            file.setLastModified(now);
+            meta.setLastModified(now);
+            return new Result(file, json.getInt("srcWidth"), json.getInt("srcHeight"),
+                    json.getInt("width"), json.getInt("height"));
+        } catch (Exception e) {
+            Logger.w(this.getClass(), "#lookup - Broken cache: " + key);
+            return null;
+        }
+    }
+
+    private Result generate(String key, File input, int maxSize, int quality, String format) throws IOException {
+        Path target = this.cachePath.resolve(key + "." + format);
+        Path tmp = this.cachePath.resolve(key + ".tmp." + format);
+
+        Dimension srcSize = readSize(input);
+        if (null == srcSize && this.useImageMagick) {
+            // Image IO 不支持的格式（例如 WEBP）使用 ImageMagick 识别尺寸
+            Image image = ImageTools.identify(input.getAbsolutePath());
+            if (null != image) {
+                srcSize = new Dimension(image.width, image.height);
+            }
+        }
+        if (null == srcSize) {
+            Logger.w(this.getClass(), "#generate - Can NOT read image size: " + input.getName());
+            return null;
+        }
+
+        Dimension size = null;
+        if (this.useImageMagick) {
+            String output = tmp.toString().substring(0, tmp.toString().length() - format.length() - 1);
+            Image image = ImageTools.thumbnail(input.getAbsolutePath(),
+                    new Size(srcSize.width, srcSize.height), output, quality);
+            if (null == image) {
+                return null;
+            }
+            Files.move(Paths.get(output + ".jpg"), tmp, StandardCopyOption.REPLACE_EXISTING);
+            size = new Dimension(image.width, image.height);
+        }
+        else {
+            BufferedImage image = decode(input, maxSize);
+            if (null == image) {
+                return null;
+            }
+
+            if (image.getWidth() > maxSize || image.getHeight() > maxSize) {
+                image = Thumbnails.of(image).size(maxSize, maxSize).asBufferedImage();
+            }
+
+            Thumbnails.of(image).scale(1.0).outputFormat(format)
+                    .outputQuality(((double) quality) / 100.0f).toFile(tmp.toFile());
+            size = new Dimension(image.getWidth(), image.getHeight());
+        }
+
+        JSONObject meta = new JSONObject();
+        meta.put("srcWidth", srcSize.width);
+        meta.put("srcHeight", srcSize.height);
+        meta.put("width", size.width);
+        meta.put("height", size.height);
+        Files.write(this.cachePath.resolve(key + ".json"), meta.toString().getBytes(StandardCharsets.UTF_8));
+
+        try {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        return new Result(target.toFile(), srcSize.width, srcSize.height, size.width, size.height);
+    }
+
+    /**
+     * 生成缓存键。
+     *
+     * @param md5
+     * @param maxSize
+     * @param quality
+     * @param format
+     * @return
+     */
+    public static String makeKey(String md5, int maxSize, int quality, String format) {
+        return md5 + "_" + maxSize + "_" + quality + "_" + format;
+    }
+
+    /**
+     * 从图片头读取尺寸，不解码像素数据。
+     *
+     * @param file
+     * @return 无法识别时返回 {@code null} 。
+     */
+    public static Dimension readSize(File file) throws IOException {
+        try (ImageInputStream iis = ImageIO.createImageInputStream(file)) {
+            if (null == iis) {
+                return null;
+            }
+
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+            if (!readers.hasNext()) {
+                return null;
+            }
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(iis, true, true);
+                return new Dimension(reader.getWidth(0), reader.getHeight(0));
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * 使用降采样解码图片，解码结果的边长不小于目标尺寸。
+     *
+     * @param file
+     * @param maxSize 目标最大边长。
+     * @return 返回已按 EXIF 方向校正的 RGB 图像。
+     */
+    public static BufferedImage decode(File file, int maxSize) throws IOException {
+        try (ImageInputStream iis = ImageIO.createImageInputStream(file)) {
+            if (null == iis) {
+                return null;
+            }
+
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+            if (!readers.hasNext()) {
+                return null;
+            }
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(iis, true, false);
+
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                int step = Math.max(1, Math.max(width, height) / maxSize);
+
+                ImageReadParam param = reader.getDefaultReadParam();
+                if (step > 1) {
+                    param.setSourceSubsampling(step, step, 0, 0);
+                }
+
+                Orientation orientation = null;
+                try {
+                    orientation = ExifUtils.getExifOrientation(reader, 0);
+                } catch (Exception e) {
+                    // 没有 EXIF 数据
+                }
+
+                BufferedImage image = toRGB(reader.read(0, param));
+                if (null != orientation && orientation != Orientation.TOP_LEFT) {
+                    image = ExifFilterUtils.getFilterForOrientation(orientation).apply(image);
+                }
+                return image;
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private static BufferedImage toRGB(BufferedImage image) {
+        if (image.getType() == BufferedImage.TYPE_INT_RGB || image.getType() == BufferedImage.TYPE_3BYTE_BGR) {
+            return image;
+        }
+
+        // 透明背景填充为白色
+        BufferedImage rgb = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = rgb.createGraphics();
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, image.getWidth(), image.getHeight());
+        g.drawImage(image, 0, 0, null);
+        g.dispose();
+        return rgb;
+    }
+
+    /**
+     * 缩略图结果。
+     */
+    public static class Result {
+
+        public final File file;
+
+        public final int srcWidth;
+
+        public final int srcHeight;
+
+        public final int width;
+
+        public final int height;
+
+        public Result(File file, int srcWidth, int srcHeight, int width, int height) {
+            this.file = file;
+            this.srcWidth = srcWidth;
+            this.srcHeight = srcHeight;
+            this.width = width;
+            this.height = height;
+        }
+    }
+}
@@ -8,6 +8,8 @@ package cube.service.fileprocessor.processor;
 
 import cube.common.entity.TextConstraint;
 import cube.util.FileUtils;
+import cube.util.ProcessManager;
+import cube.util.ProcessTask;
 import cube.vision.Color;
 import cube.vision.Rectangle;
 import cube.vision.Size;
@@ -25,6 +27,13 @@ import java.util.List;
  */
 public final class ImageMagick {
 
+    public final static String TOOL_NAME = "ImageMagick";
+
+    /**
+     * 命令的超时时长。
+     */
+    private final static long TIMEOUT = 5 * 60 * 1000L;
+
     private ImageMagick() {
     }
 
@@ -438,32 +447,9 @@ public final class ImageMagick {
     }
 
     private static int execute(File workPath, List<String> commandLine) {
-        int status = -1;
-
-        Process process = null;
-        ProcessBuilder pb = new ProcessBuilder(commandLine);
-        // 设置工作目录
-        pb.directory(workPath);
-
-        try {
-            process = pb.start();
-
-            try {
-                status = process.waitFor();
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-        } finally {
-            if (null != process) {
-                process.destroy();
-            }
-
-            process = null;
-        }
-
-        return status;
+        ProcessManager.ProcessOutput output = ProcessManager.getInstance().run(
+                new ProcessTask(TOOL_NAME, commandLine).setDirectory(workPath).setTimeout(TIMEOUT));
+        return output.isCompleted() ? output.getStatus() : -1;
     }
 
     private static boolean awaits(File file) {
@@ -9,8 +9,10 @@ package cube.service.fileprocessor.processor;
 import cell.util.log.Logger;
 import cube.processor.Processor;
 import cube.processor.ProcessorContext;
+import cube.util.ProcessManager;
+import cube.util.ProcessTask;
 
-import java.io.IOException;
+import java.io.File;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
@@ -21,6 +23,18 @@ import java.util.concurrent.atomic.AtomicBoolean;
  */
 public abstract class LibreOffice extends Processor {
 
+    public final static String TOOL_NAME = "LibreOffice";
+
+    /**
+     * 转换文档的超时时长。
+     */
+    private final static long TIMEOUT = 10 * 60 * 1000L;
+
+    /**
+     * 常驻转换进程池，为 {@code null} 时每次转换启动新的进程。
+     */
+    private static OfficeWorkerPool workerPool = null;
+
     private AtomicBoolean running;
 
     public LibreOffice(Path workPath) {
@@ -28,7 +42,37 @@ public abstract class LibreOffice extends Processor {
         this.running = new AtomicBoolean(false);
     }
 
+    public static void setWorkerPool(OfficeWorkerPool pool) {
+        LibreOffice.workerPool = pool;
+    }
+
+    public static OfficeWorkerPool getWorkerPool() {
+        return LibreOffice.workerPool;
+    }
+
     protected boolean callConvertTo(String outputFormat, String inputFile, ProcessorContext context) {
+        OfficeWorkerPool pool = LibreOffice.workerPool;
+        if (null != pool) {
+            File input = new File(inputFile);
+            if (!input.isAbsolute()) {
+                input = new File(getWorkPath().toFile(), inputFile);
+            }
+
+            this.running.set(true);
+            OfficeWorkerPool.Result result = pool.convert(input, outputFormat, getWorkPath().toFile());
+            this.running.set(false);
+
+            if (null != result) {
+                if (!result.isSuccessful()) {
+                    Logger.w(this.getClass(), "#callConvertTo - " + inputFile + " : " + result.getMessage());
+                    context.appendStdOutput(result.getMessage());
+                }
+                return result.isSuccessful();
+            }
+
+            // 没有可用的工作进程，使用单次执行模式
+        }
+
         List<String> params = new ArrayList<>();
         params.add("--convert-to");
         params.add(outputFormat);
@@ -41,36 +85,17 @@ public abstract class LibreOffice extends Processor {
         commandLine.add("libreoffice");
         commandLine.addAll(params);
 
-        int status = -1;
-
-        Process process = null;
-        ProcessBuilder pb = new ProcessBuilder(commandLine);
-        // 设置工作目录
-        pb.directory(getWorkPath().toFile());
-
-        try {
-            process = pb.start();
-
-            this.running.set(true);
-
-            Runnable worker = this.buildInputStreamWorker(process.getErrorStream(), context);
-            worker.run();
-
-            try {
-                status = process.waitFor();
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-        } catch (IOException e) {
-            Logger.e(this.getClass(), "#call", e);
-        } finally {
-            if (null != process) {
-                process.destroy();
-            }
+        this.running.set(true);
+        ProcessManager.ProcessOutput output = this.execute(new ProcessTask(TOOL_NAME, commandLine)
+                .setTimeout(TIMEOUT), context, true);
+        this.running.set(false);
 
-            process = null;
+        if (!output.isCompleted()) {
+            Logger.e(this.getClass(), "#call - Convert failed: " + output.getKillReason().name());
+            return false;
         }
 
+        int status = output.getStatus();
         return (-1 != status);
     }
 }
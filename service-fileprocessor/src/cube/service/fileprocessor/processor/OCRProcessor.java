@@ -11,6 +11,8 @@ import cube.common.entity.FileLabel;
 import cube.common.entity.FileResult;
 import cube.processor.ProcessorContext;
 import cube.util.FileUtils;
+import cube.util.ProcessManager;
+import cube.util.ProcessTask;
 
 import java.io.File;
 import java.io.FileOutputStream;
@@ -24,6 +26,13 @@ import java.util.List;
  */
 public class OCRProcessor extends OpticalCharacterRecognition {
 
+    public final static String TOOL_NAME = "Tesseract";
+
+    /**
+     * 识别的超时时长。
+     */
+    private final static long TIMEOUT = 2 * 60 * 1000L;
+
     private FileLabel imageFileLabel;
 
     public OCRProcessor(Path workPath) {
@@ -71,30 +80,9 @@ public class OCRProcessor extends OpticalCharacterRecognition {
 
         commandLine.add("hocr");
 
-        int status = -1;
-
-        Process process = null;
-        ProcessBuilder pb = new ProcessBuilder(commandLine);
-        // 设置工作目录
-        pb.directory(getWorkPath().toFile());
-
-        try {
-            process = pb.start();
-
-            try {
-                status = process.waitFor();
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-        } finally {
-            if (null != process) {
-                process.destroy();
-            }
-
-            process = null;
-        }
+        ProcessManager.ProcessOutput output = this.execute(new ProcessTask(TOOL_NAME, commandLine)
+                .setTimeout(TIMEOUT), null, false);
+        int status = output.isCompleted() ? output.getStatus() : -1;
 
         if (-1 != status) {
             processorContext.setSuccessful(true);
@@ -0,0 +1,587 @@
+/*
+ * This source file is part of Cube.
+ *
+ * Copyright (c) 2023-2026 Ambrose Xu.
+ */
+
+package cube.service.fileprocessor.processor;
+
+import cell.util.log.Logger;
+import cube.util.ProcessManager;
+import org.json.JSONObject;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LibreOffice 常驻转换进程池。
+ * 每个工作进程使用独立的用户配置目录，启动后持续接收转换任务，避免每次转换都重新启动 LibreOffice 。
+ * 工作进程完成指定数量的任务后被回收，崩溃或超时的工作进程被终止并重新启动。
+ * <p>
+ * 工作进程通过标准输入输出按行交换以制表符分隔的命令：
+ * 启动完成后输出 {@code ready} ；
+ * 请求 {@code convert <id> <format> <input> <outdir>} ；
+ * 应答 {@code ok <id> <output>} 或 {@code error <id> <message>} ；
+ * 请求 {@code quit} 结束进程。
+ * 工作进程的命令行末尾追加该进程的配置目录。
+ */
+public class OfficeWorkerPool {
+
+    private final static String READY = "ready";
+
+    private final static String EOF = "\u0000";
+
+    /**
+     * 启动失败后重试的最大次数。
+     */
+    private final static int MAX_START_RETRIES = 5;
+
+    private final List<String> command;
+
+    private final Path profilePath;
+
+    private final int size;
+
+    /**
+     * 工作进程执行多少个任务后回收。
+     */
+    private final int maxJobs;
+
+    /**
+     * 单个任务的超时时长。
+     */
+    private final long jobTimeout;
+
+    /**
+     * 工作进程启动的超时时长。
+     */
+    private long startTimeout = 60 * 1000L;
+
+    private final ExecutorService executor;
+
+    private final LinkedBlockingQueue<Worker> idleWorkers;
+
+    private final List<Worker> workers;
+
+    private final AtomicBoolean running;
+
+    private final AtomicInteger liveCount;
+
+    private final AtomicInteger startingCount;
+
+    private final AtomicLong jobSequence;
+
+    private final AtomicLong jobCount = new AtomicLong(0);
+
+    private final AtomicLong failureCount = new AtomicLong(0);
+
+    private final AtomicLong timeoutCount = new AtomicLong(0);
+
+    private final AtomicLong crashCount = new AtomicLong(0);
+
+    private final AtomicLong recycleCount = new AtomicLong(0);
+
+    private final AtomicLong startCount = new AtomicLong(0);
+
+    /**
+     * 构造函数。
+     *
+     * @param command 工作进程命令行。
+     * @param profilePath 配置目录的根目录。
+     * @param size 工作进程数量。
+     * @param maxJobs 工作进程执行多少个任务后回收。
+     * @param jobTimeout 单个任务的超时时长，单位：毫秒。
+     * @param executor 启动工作进程的执行器。
+     */
+    public OfficeWorkerPool(List<String> command, Path profilePath, int size, int maxJobs, long jobTimeout,
+                            ExecutorService executor) {
+        this.command = new ArrayList<>(command);
+        this.profilePath = profilePath;
+        this.size = size;
+        this.maxJobs = maxJobs;
+        this.jobTimeout = jobTimeout;
+        this.executor = executor;
+        this.idleWorkers = new LinkedBlockingQueue<>();
+        this.workers = new ArrayList<>();
+        this.running = new AtomicBoolean(false);
+        this.liveCount = new AtomicInteger(0);
+        this.startingCount = new AtomicInteger(0);
+        this.jobSequence = new AtomicLong(0);
+    }
+
+    public void setStartTimeout(long startTimeout) {
+        this.startTimeout = startTimeout;
+    }
+
+    /**
+     * 启动全部工作进程。
+     */
+    public void start() {
+        if (!this.running.compareAndSet(false, true)) {
+            return;
+        }
+
+        for (int i = 0; i < this.size; ++i) {
+            this.spawn(i, 0);
+        }
+    }
+
+    /**
+     * 停止全部工作进程。
+     */
+    public void stop() {
+        if (!this.running.compareAndSet(true, false)) {
+            return;
+        }
+
+        List<Worker> list = null;
+        synchronized (this.workers) {
+            list = new ArrayList<>(this.workers);
+            this.workers.clear();
+        }
+        this.idleWorkers.clear();
+
+        for (Worker worker : list) {
+            this.retire(worker);
+        }
+    }
+
+    public boolean isRunning() {
+        return this.running.get();
+    }
+
+    /**
+     * 可用的工作进程数量，包括正在执行任务的进程。
+     *
+     * @return
+     */
+    public int numLiveWorkers() {
+        return this.liveCount.get();
+    }
+
+    /**
+     * 转换文档。
+     *
+     * @param input 输入文件。
+     * @param format 输出格式，例如 {@code pdf} 。
+     * @param outputDir 输出目录。
+     * @return 返回转换结果。进程池未运行或没有可用的工作进程时返回 {@code null} ，调用者应当使用单次执行模式。
+     */
+    public Result convert(File input, String format, File outputDir) {
+        long start = System.currentTimeMillis();
+        Worker worker = null;
+
+        while (null == worker) {
+            if (!this.running.get() || (this.liveCount.get() == 0 && this.startingCount.get() == 0)) {
+                return null;
+            }
+
+            long wait = this.jobTimeout - (System.currentTimeMillis() - start);
+            if (this.liveCount.get() == 0) {
+                // 等待正在启动的进程
+                wait = Math.max(wait, this.startTimeout);
+            }
+            if (wait <= 0) {
+                this.failureCount.incrementAndGet();
+                return new Result(false, null, "No idle worker");
+            }
+
+            try {
+                worker = this.idleWorkers.poll(Math.min(wait, 500), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return new Result(false, null, "Interrupted");
+            }
+
+            if (null != worker && !worker.alive) {
+                worker = null;
+            }
+        }
+
+        this.jobCount.incrementAndGet();
+        Result result = this.execute(worker, input, format, outputDir);
+        if (!result.successful) {
+            this.failureCount.incrementAndGet();
+        }
+        return result;
+    }
+
+    /**
+     * 返回进程池的统计信息。
+     *
+     * @return
+     */
+    public JSONObject getStatistics() {
+        JSONObject json = new JSONObject();
+        json.put("size", this.size);
+        json.put("live", this.liveCount.get());
+        json.put("idle", this.idleWorkers.size());
+        json.put("starting", this.startingCount.get());
+        json.put("jobs", this.jobCount.get());
+        json.put("failures", this.failureCount.get());
+        json.put("timeouts", this.timeoutCount.get());
+        json.put("crashes", this.crashCount.get());
+        json.put("recycles", this.recycleCount.get());
+        json.put("starts", this.startCount.get());
+        return json;
+    }
+
+    private Result execute(Worker worker, File input, String format, File outputDir) {
+        String id = Long.toString(this.jobSequence.incrementAndGet());
+        worker.replies.clear();
+
+        try {
+            worker.stdin.write("convert\t" + id + "\t" + format + "\t" + input.getAbsolutePath()
+                    + "\t" + outputDir.getAbsolutePath() + "\n");
+            worker.stdin.flush();
+        } catch (IOException e) {
+            // 读取线程负责重启工作进程
+            return new Result(false, null, "Worker crashed");
+        }
+
+        long deadline = System.currentTimeMillis() + this.jobTimeout;
+        while (true) {
+            long wait = deadline - System.currentTimeMillis();
+            String line = null;
+            if (wait > 0) {
+                try {
+                    line = worker.replies.poll(wait, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            if (null == line) {
+                // 超时或被中断，工作进程状态不确定
+                Logger.w(this.getClass(), "#execute - Job timeout: " + input.getName() + " on worker-" + worker.slot);
+                this.timeoutCount.incrementAndGet();
+                this.replace(worker, false);
+                return new Result(false, null, "Timeout");
+            }
+
+            if (EOF.equals(line)) {
+                Logger.w(this.getClass(), "#execute - Worker crashed: " + input.getName() + " on worker-" + worker.slot);
+                return new Result(false, null, "Worker crashed");
+            }
+
+            String[] fields = line.split("\t", 3);
+            if (fields.length < 3 || !id.equals(fields[1])) {
+                // 忽略其他输出
+                continue;
+            }
+
+            ++worker.jobs;
+            this.release(worker);
+
+            if ("ok".equals(fields[0])) {
+                return new Result(true, new File(fields[2]), null);
+            }
+            else {
+                return new Result(false, null, fields[2]);
+            }
+        }
+    }
+
+    private void release(Worker worker) {
+        if (worker.jobs >= this.maxJobs) {
+            // 回收工作进程
+            this.recycleCount.incrementAndGet();
+            this.replace(worker, true);
+        }
+        else if (this.running.get()) {
+            this.idleWorkers.offer(worker);
+        }
+    }
+
+    /**
+     * 工作进程退出时回调。
+     *
+     * @param worker 工作进程。
+     */
+    private void onExit(Worker worker) {
+        if (this.replace(worker, false)) {
+            // 不是由进程池结束的进程
+            this.crashCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * 结束工作进程后在同一配置目录上启动新的工作进程。
+     *
+     * @param worker 工作进程。
+     * @param graceful 是否等待工作进程自行退出。
+     */
+    private boolean replace(Worker worker, boolean graceful) {
+        if (!this.detach(worker)) {
+            return false;
+        }
+
+        if (!this.running.get()) {
+            this.executor.execute(() -> worker.shutdown(graceful));
+            return true;
+        }
+
+        this.startingCount.incrementAndGet();
+        this.executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                // 配置目录不能被两个进程同时使用
+                worker.shutdown(graceful);
+                launch(worker.slot, 0);
+            }
+        });
+        return true;
+    }
+
+    private void retire(Worker worker) {
+        if (this.detach(worker)) {
+            this.executor.execute(() -> worker.shutdown(true));
+        }
+    }
+
+    private boolean detach(Worker worker) {
+        if (worker.retired.getAndSet(true)) {
+            return false;
+        }
+
+        synchronized (this.workers) {
+            this.workers.remove(worker);
+        }
+        this.liveCount.decrementAndGet();
+        worker.alive = false;
+        return true;
+    }
+
+    private void spawn(int slot, int attempt) {
+        if (!this.running.get()) {
+            return;
+        }
+
+        this.startingCount.incrementAndGet();
+        this.executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                launch(slot, attempt);
+            }
+        });
+    }
+
+    /**
+     * 启动工作进程，调用前需要增加启动计数。
+     *
+     * @param slot 工作进程序号。
+     * @param attempt 重试次数。
+     */
+    private void launch(int slot, int attempt) {
+        if (attempt > 0) {
+            try {
+                Thread.sleep(Math.min(attempt * 1000L, 10000L));
+            } catch (InterruptedException e) {
+                // Nothing
+            }
+        }
+
+        Worker worker = new Worker(slot);
+        boolean started = this.running.get() && worker.start();
+
+        if (!started) {
+            this.startingCount.decrementAndGet();
+            worker.shutdown(false);
+            if (this.running.get()) {
+                if (attempt + 1 < MAX_START_RETRIES) {
+                    this.spawn(slot, attempt + 1);
+                }
+                else {
+                    Logger.e(this.getClass(), "#launch - Give up starting worker-" + slot);
+                }
+            }
+            return;
+        }
+
+        this.startCount.incrementAndGet();
+        this.liveCount.incrementAndGet();
+        synchronized (this.workers) {
+            if (!worker.retired.get()) {
+                this.workers.add(worker);
+            }
+        }
+        this.startingCount.decrementAndGet();
+
+        if (!worker.alive) {
+            // 启动后立即退出，读取线程已经重启工作进程
+            return;
+        }
+
+        if (!this.running.get()) {
+            // 进程池已停止
+            this.retire(worker);
+            return;
+        }
+
+        this.idleWorkers.offer(worker);
+    }
+
+    /**
+     * 工作进程。
+     */
+    private class Worker {
+
+        private final int slot;
+
+        private Process process;
+
+        private Writer stdin;
+
+        private final LinkedBlockingQueue<String> replies = new LinkedBlockingQueue<>();
+
+        private volatile boolean alive = false;
+
+        private final AtomicBoolean retired = new AtomicBoolean(false);
+
+        private int jobs = 0;
+
+        private Worker(int slot) {
+            this.slot = slot;
+        }
+
+        private boolean start() {
+            File profile = profilePath.resolve("worker-" + this.slot).toFile();
+            if (!profile.exists()) {
+                profile.mkdirs();
+            }
+
+            List<String> commandLine = new ArrayList<>(command);
+            commandLine.add(profile.getAbsolutePath());
+
+            try {
+                this.process = new ProcessBuilder(ProcessManager.getInstance().makeCommandLine(commandLine, 0))
+                        .start();
+            } catch (IOException e) {
+                Logger.w(OfficeWorkerPool.class, "#start - worker-" + this.slot, e);
+                return false;
+            }
+
+            this.stdin = new BufferedWriter(new OutputStreamWriter(this.process.getOutputStream(),
+                    StandardCharsets.UTF_8));
+            this.drain(this.process.getInputStream(), true);
+            this.drain(this.process.getErrorStream(), false);
+
+            try {
+                String line = this.replies.poll(startTimeout, TimeUnit.MILLISECONDS);
+                while (null != line && !line.startsWith(READY)) {
+                    if (EOF.equals(line)) {
+                        break;
+                    }
+                    line = this.replies.poll(startTimeout, TimeUnit.MILLISECONDS);
+                }
+
+                if (null == line || EOF.equals(line)) {
+                    Logger.w(OfficeWorkerPool.class, "#start - worker-" + this.slot + " failed to start");
+                    return false;
+                }
+            } catch (InterruptedException e) {
+                return false;
+            }
+
+            this.alive = true;
+            return true;
+        }
+
+        private void drain(InputStream stream, boolean reply) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try (BufferedReader reader = new BufferedReader(
+                            new InputStreamReader(stream, StandardCharsets.UTF_8))) {
+                        String line = null;
+                        while ((line = reader.readLine()) != null) {
+                            if (reply) {
+                                replies.offer(line);
+                            }
+                            else if (line.length() > 0) {
+                                Logger.d(OfficeWorkerPool.class, "worker-" + slot + ": " + line);
+                            }
+                        }
+                    } catch (IOException e) {
+                        // 进程结束
+                    } finally {
+                        if (reply) {
+                            boolean live = alive;
+                            alive = false;
+                            replies.offer(EOF);
+                            if (live) {
+                                onExit(Worker.this);
+                            }
+                        }
+                    }
+                }
+            }, "OfficeWorker-" + this.slot);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        private void shutdown(boolean graceful) {
+            if (null == this.process) {
+                return;
+            }
+
+            if (graceful) {
+                try {
+                    this.stdin.write("quit\n");
+                    this.stdin.flush();
+                    this.stdin.close();
+                } catch (IOException e) {
+                    // Nothing
+                }
+
+                try {
+                    this.process.waitFor(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    // Nothing
+                }
+            }
+
+            // 终止残留的子进程
+            ProcessManager.getInstance().killTree(this.process);
+        }
+    }
+
+    /**
+     * 转换结果。
+     */
+    public class Result {
+
+        private final boolean successful;
+
+        private final File output;
+
+        private final String message;
+
+        private Result(boolean successful, File output, String message) {
+            this.successful = successful;
+            this.output = output;
+            this.message = message;
+        }
+
+        public boolean isSuccessful() {
+            return this.successful;
+        }
+
+        public File getOutput() {
+            return this.output;
+        }
+
+        public String getMessage() {
+            return this.message;
+        }
+    }
+}
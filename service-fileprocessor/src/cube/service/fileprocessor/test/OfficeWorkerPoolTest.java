@@ -0,0 +1,252 @@
+/*
+ * This source file is part of Cube.
+ *
+ * Copyright (c) 2023-2026 Ambrose Xu.
+ */
+
+package cube.service.fileprocessor.test;
+
+import cube.service.fileprocessor.processor.OfficeWorkerPool;
+import cube.util.Assert;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 文档转换进程池测试。使用模拟转换工具的脚本代替 LibreOffice 。
+ */
+public class OfficeWorkerPoolTest {
+
+    /**
+     * 模拟的转换工具。启动耗时 0.5 秒，每个文档转换耗时 0.2 秒。
+     * 文件名以 crash 开头时进程退出，以 hang 开头时挂起。
+     * 配置目录里的锁文件用于检测多个进程共用同一配置目录。
+     */
+    private final static String FAKE_CONVERTER = "#!/bin/bash\n" +
+            "profile=\"$1\"\n" +
+            "mkdir -p \"$profile\"\n" +
+            "echo $$ >> \"$profile/starts\"\n" +
+            "sleep 0.5\n" +
+            "echo ready\n" +
+            "while IFS=$'\\t' read -r cmd id format input outdir; do\n" +
+            "  case \"$cmd\" in\n" +
+            "    quit) exit 0 ;;\n" +
+            "    convert)\n" +
+            "      name=$(basename \"$input\"); base=\"${name%.*}\"\n" +
+            "      case \"$name\" in\n" +
+            "        crash*) exit 3 ;;\n" +
+            "        hang*) sleep 600 ;;\n" +
+            "      esac\n" +
+            "      if [ -e \"$profile/lock\" ]; then printf 'error\\t%s\\tprofile in use\\n' \"$id\"; continue; fi\n" +
+            "      touch \"$profile/lock\"\n" +
+            "      sleep 0.2\n" +
+            "      echo \"$$\" > \"$outdir/$base.$format\"\n" +
+            "      rm -f \"$profile/lock\"\n" +
+            "      printf 'ok\\t%s\\t%s\\n' \"$id\" \"$outdir/$base.$format\" ;;\n" +
+            "  esac\n" +
+            "done\n";
+
+    private Path workPath;
+
+    private File script;
+
+    private ExecutorService executor;
+
+    public OfficeWorkerPoolTest() {
+    }
+
+    public void setup() throws IOException {
+        this.workPath = Files.createTempDirectory("cube-office");
+        this.script = this.workPath.resolve("fake-office.sh").toFile();
+        try (FileOutputStream fos = new FileOutputStream(this.script)) {
+            fos.write(FAKE_CONVERTER.getBytes(StandardCharsets.UTF_8));
+        }
+        this.script.setExecutable(true);
+        this.executor = Executors.newCachedThreadPool();
+    }
+
+    public void teardown() {
+        this.executor.shutdown();
+    }
+
+    private OfficeWorkerPool createPool(String name, int size, int maxJobs, long jobTimeout) {
+        List<String> command = new ArrayList<>();
+        command.add("/bin/bash");
+        command.add(this.script.getAbsolutePath());
+        OfficeWorkerPool pool = new OfficeWorkerPool(command, this.workPath.resolve(name), size, maxJobs,
+                jobTimeout, this.executor);
+        pool.setStartTimeout(10000);
+        return pool;
+    }
+
+    private File document(String name) throws IOException {
+        File file = this.workPath.resolve(name).toFile();
+        Files.write(file.toPath(), "document".getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private String readLine(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).trim();
+    }
+
+    private void awaitLive(OfficeWorkerPool pool, int num) {
+        long start = System.currentTimeMillis();
+        while (pool.numLiveWorkers() < num && System.currentTimeMillis() - start < 10000) {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+    }
+
+    public void testConcurrency() throws Exception {
+        OfficeWorkerPool pool = this.createPool("concurrency", 3, 100, 10000);
+        pool.start();
+        this.awaitLive(pool, 3);
+
+        final int jobs = 12;
+        final File outputDir = this.workPath.resolve("out-concurrency").toFile();
+        outputDir.mkdirs();
+        final List<File> documents = new ArrayList<>();
+        for (int i = 0; i < jobs; ++i) {
+            documents.add(this.document("doc-" + i + ".docx"));
+        }
+
+        final AtomicInteger success = new AtomicInteger(0);
+        final CountDownLatch latch = new CountDownLatch(jobs);
+        long start = System.currentTimeMillis();
+        for (File document : documents) {
+            this.executor.execute(() -> {
+                OfficeWorkerPool.Result result = pool.convert(document, "pdf", outputDir);
+                if (null != result && result.isSuccessful()) {
+                    success.incrementAndGet();
+                }
+                latch.countDown();
+            });
+        }
+        latch.await();
+        long elapsed = System.currentTimeMillis() - start;
+
+        // 每个输出文件记录了转换它的进程
+        Set<String> pids = new HashSet<>();
+        for (int i = 0; i < jobs; ++i) {
+            pids.add(this.readLine(new File(outputDir, "doc-" + i + ".pdf")));
+        }
+
+        System.out.println("testConcurrency - " + jobs + " jobs on 3 workers: " + elapsed + " ms, pids: " + pids);
+        Assert.equals("testConcurrency (success)", jobs, success.get());
+        Assert.equals("testConcurrency (workers)", 3, pids.size());
+        // 没有重新启动进程，4 轮转换
+        Assert.equals("testConcurrency (warm)", true, elapsed < jobs * 200);
+        Assert.equals("testConcurrency (parallel)", true, elapsed >= 4 * 200);
+
+        pool.stop();
+    }
+
+    public void testRecycle() throws Exception {
+        OfficeWorkerPool pool = this.createPool("recycle", 1, 2, 10000);
+        pool.start();
+        this.awaitLive(pool, 1);
+
+        File outputDir = this.workPath.resolve("out-recycle").toFile();
+        outputDir.mkdirs();
+        Set<String> pids = new HashSet<>();
+        for (int i = 0; i < 6; ++i) {
+            OfficeWorkerPool.Result result = pool.convert(this.document("r-" + i + ".doc"), "pdf", outputDir);
+            Assert.equals("testRecycle (success " + i + ")", true, null != result && result.isSuccessful());
+            pids.add(this.readLine(result.getOutput()));
+        }
+
+        JSONObject stats = pool.getStatistics();
+        System.out.println("testRecycle - " + stats.toString());
+        Assert.equals("testRecycle (processes)", 3, pids.size());
+        Assert.equals("testRecycle (recycles)", true, stats.getLong("recycles") >= 2);
+        Assert.equals("testRecycle (crashes)", 0, stats.getInt("crashes"));
+
+        pool.stop();
+    }
+
+    public void testCrashRecovery() throws Exception {
+        OfficeWorkerPool pool = this.createPool("crash", 2, 100, 1500);
+        pool.start();
+        this.awaitLive(pool, 2);
+
+        File outputDir = this.workPath.resolve("out-crash").toFile();
+        outputDir.mkdirs();
+
+        OfficeWorkerPool.Result result = pool.convert(this.document("crash-1.doc"), "pdf", outputDir);
+        Assert.equals("testCrashRecovery (crash failed)", false, result.isSuccessful());
+
+        long start = System.currentTimeMillis();
+        result = pool.convert(this.document("hang-1.doc"), "pdf", outputDir);
+        long elapsed = System.currentTimeMillis() - start;
+        Assert.equals("testCrashRecovery (hang failed)", false, result.isSuccessful());
+        Assert.equals("testCrashRecovery (hang timeout)", true, elapsed < 3000);
+
+        // 被替换的进程重新启动后继续处理任务
+        for (int i = 0; i < 4; ++i) {
+            result = pool.convert(this.document("after-" + i + ".doc"), "pdf", outputDir);
+            Assert.equals("testCrashRecovery (recovered " + i + ")", true, null != result && result.isSuccessful());
+        }
+        this.awaitLive(pool, 2);
+
+        JSONObject stats = pool.getStatistics();
+        System.out.println("testCrashRecovery - " + stats.toString());
+        Assert.equals("testCrashRecovery (crashes)", 1, stats.getInt("crashes"));
+        Assert.equals("testCrashRecovery (timeouts)", 1, stats.getInt("timeouts"));
+        Assert.equals("testCrashRecovery (live)", 2, pool.numLiveWorkers());
+
+        pool.stop();
+    }
+
+    public void testFallback() throws Exception {
+        // 进程池停止后由调用者使用单次执行模式
+        OfficeWorkerPool pool = this.createPool("fallback", 1, 100, 10000);
+        File outputDir = this.workPath.resolve("out-fallback").toFile();
+        Assert.equals("testFallback (not started)", true,
+                null == pool.convert(this.document("f.doc"), "pdf", outputDir));
+
+        // 无法启动的工作进程
+        List<String> command = new ArrayList<>();
+        command.add(this.workPath.resolve("not-exists").toString());
+        OfficeWorkerPool broken = new OfficeWorkerPool(command, this.workPath.resolve("broken"), 1, 100, 10000,
+                this.executor);
+        broken.start();
+        long start = System.currentTimeMillis();
+        OfficeWorkerPool.Result result = broken.convert(this.document("f.doc"), "pdf", outputDir);
+        while (null != result && System.currentTimeMillis() - start < 30000) {
+            result = broken.convert(this.document("f.doc"), "pdf", outputDir);
+        }
+        Assert.equals("testFallback (broken)", true, null == result);
+        broken.stop();
+    }
+
+    public static void main(String[] args) {
+        OfficeWorkerPoolTest test = new OfficeWorkerPoolTest();
+        try {
+            test.setup();
+            test.testConcurrency();
+            test.testRecycle();
+            test.testCrashRecovery();
+            test.testFallback();
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            test.teardown();
+        }
+    }
+}
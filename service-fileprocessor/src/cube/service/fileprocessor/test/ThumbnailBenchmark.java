@@ -0,0 +1,232 @@
+/*
+ * This source file is part of Cube.
+ *
+ * Copyright (c) 2023-2026 Ambrose Xu.
+ */
+
+package cube.service.fileprocessor.test;
+
+import cube.service.fileprocessor.ThumbnailPipeline;
+import cube.util.Assert;
+import net.coobird.thumbnailator.Thumbnails;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 缩略图生成耗时与堆内存峰值测试。
+ */
+public class ThumbnailBenchmark {
+
+    private final static int WIDTH = 6000;
+
+    private final static int HEIGHT = 4000;
+
+    private Path workPath = Paths.get("storage/test-thumbnail");
+
+    private File source;
+
+    private ThumbnailPipeline pipeline;
+
+    private int quality = 80;
+
+    public ThumbnailBenchmark() {
+    }
+
+    public void setup() throws IOException {
+        this.workPath.toFile().mkdirs();
+        this.source = this.workPath.resolve("source-24mp.jpg").toFile();
+        if (!this.source.exists()) {
+            // 生成 2400 万像素的测试图片
+            BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = image.createGraphics();
+            g.setPaint(new GradientPaint(0, 0, Color.ORANGE, WIDTH, HEIGHT, Color.BLUE));
+            g.fillRect(0, 0, WIDTH, HEIGHT);
+            Random random = new Random(40);
+            for (int i = 0; i < 2000; ++i) {
+                g.setColor(new Color(random.nextInt(0xFFFFFF)));
+                g.fillOval(random.nextInt(WIDTH), random.nextInt(HEIGHT), 20 + random.nextInt(400),
+                        20 + random.nextInt(400));
+            }
+            g.dispose();
+            ImageIO.write(image, "jpg", this.source);
+        }
+
+        this.pipeline = new ThumbnailPipeline(this.workPath.resolve("cache"), 1024L * 1024 * 1024);
+        this.clearCache();
+    }
+
+    public void teardown() {
+        this.clearCache();
+    }
+
+    private void clearCache() {
+        File[] files = this.pipeline.getCachePath().toFile().listFiles();
+        if (null != files) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * 读取尺寸与降采样解码。
+     */
+    public void testDecode() throws IOException {
+        Dimension size = ThumbnailPipeline.readSize(this.source);
+        Assert.equals("testDecode (width)", WIDTH, size.width);
+        Assert.equals("testDecode (height)", HEIGHT, size.height);
+
+        BufferedImage image = ThumbnailPipeline.decode(this.source, ThumbnailPipeline.DEFAULT_MAX_SIZE);
+        Assert.equals("testDecode (subsampled)", true,
+                image.getWidth() >= ThumbnailPipeline.DEFAULT_MAX_SIZE && image.getWidth() < WIDTH / 2);
+
+        ThumbnailPipeline.Result result = this.pipeline.make("md5-decode", ThumbnailPipeline.DEFAULT_MAX_SIZE,
+                this.quality, "jpg", () -> this.source);
+        Assert.equals("testDecode (thumb width)", ThumbnailPipeline.DEFAULT_MAX_SIZE, result.width);
+        Assert.equals("testDecode (thumb height)", ThumbnailPipeline.DEFAULT_MAX_SIZE * HEIGHT / WIDTH, result.height);
+        Assert.equals("testDecode (src width)", WIDTH, result.srcWidth);
+        Assert.equals("testDecode (file)", true, result.file.exists());
+    }
+
+    /**
+     * 并发请求只生成一次。
+     */
+    public void testSingleFlight() throws InterruptedException {
+        int threads = 8;
+        final AtomicInteger loads = new AtomicInteger(0);
+        final AtomicInteger success = new AtomicInteger(0);
+        final CountDownLatch latch = new CountDownLatch(threads);
+
+        for (int i = 0; i < threads; ++i) {
+            (new Thread() {
+                @Override
+                public void run() {
+                    ThumbnailPipeline.Result result = pipeline.make("md5-flight", ThumbnailPipeline.DEFAULT_MAX_SIZE,
+                            quality, "jpg", () -> {
+                                loads.incrementAndGet();
+                                return source;
+                            });
+                    if (null != result && result.file.exists()) {
+                        success.incrementAndGet();
+                    }
+                    latch.countDown();
+                }
+            }).start();
+        }
+        latch.await();
+
+        Assert.equals("testSingleFlight (loads)", 1, loads.get());
+        Assert.equals("testSingleFlight (results)", threads, success.get());
+
+        // 不同质量是不同的缓存项
+        this.pipeline.make("md5-flight", ThumbnailPipeline.DEFAULT_MAX_SIZE, 50, "jpg", () -> {
+            loads.incrementAndGet();
+            return source;
+        });
+        Assert.equals("testSingleFlight (other quality)", 2, loads.get());
+    }
+
+    /**
+     * 原实现：两次全尺寸解码。
+     */
+    private void legacy(File output) throws IOException {
+        try (InputStream fis = new FileInputStream(this.source)) {
+            // 第一次解码用于读取尺寸
+            BufferedImage src = Thumbnails.of(fis).scale(1.0).outputQuality(1.0).asBufferedImage();
+            src = null;
+            // 第二次解码用于缩放
+            Thumbnails.of(this.source).size(ThumbnailPipeline.DEFAULT_MAX_SIZE, ThumbnailPipeline.DEFAULT_MAX_SIZE)
+                    .outputFormat("jpg").outputQuality(((double) this.quality) / 100.0f).toFile(output);
+        }
+    }
+
+    public void benchmark() throws IOException {
+        int loop = 5;
+        File output = this.workPath.resolve("legacy").toFile();
+
+        // 预热
+        this.legacy(output);
+        this.clearCache();
+        this.pipeline.make("md5-warmup", ThumbnailPipeline.DEFAULT_MAX_SIZE, this.quality, "jpg", () -> this.source);
+
+        resetPeak();
+        long start = System.nanoTime();
+        for (int i = 0; i < loop; ++i) {
+            this.legacy(output);
+        }
+        long legacyTime = (System.nanoTime() - start) / loop / 1000000;
+        long legacyPeak = peakHeap();
+
+        resetPeak();
+        start = System.nanoTime();
+        for (int i = 0; i < loop; ++i) {
+            this.clearCache();
+            this.pipeline.make("md5-bench", ThumbnailPipeline.DEFAULT_MAX_SIZE, this.quality, "jpg", () -> this.source);
+        }
+        long coldTime = (System.nanoTime() - start) / loop / 1000000;
+        long coldPeak = peakHeap();
+
+        resetPeak();
+        start = System.nanoTime();
+        for (int i = 0; i < loop * 100; ++i) {
+            this.pipeline.make("md5-bench", ThumbnailPipeline.DEFAULT_MAX_SIZE, this.quality, "jpg", () -> this.source);
+        }
+        long warmTime = (System.nanoTime() - start) / (loop * 100) / 1000;
+        long warmPeak = peakHeap();
+
+        System.out.println("Thumbnail of " + WIDTH + "x" + HEIGHT + " JPEG ("
+                + (this.source.length() / 1024) + " KB) -> " + ThumbnailPipeline.DEFAULT_MAX_SIZE + " px:");
+        System.out.println("  legacy (two full decodes) : " + legacyTime + " ms, peak heap " + legacyPeak + " MB");
+        System.out.println("  subsampled decode         : " + coldTime + " ms, peak heap " + coldPeak + " MB");
+        System.out.println("  derivative cache hit      : " + warmTime + " us, peak heap " + warmPeak + " MB");
+
+        output.delete();
+        new File(output.getPath() + ".jpg").delete();
+    }
+
+    private static void resetPeak() {
+        System.gc();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    private static long peakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak / 1024 / 1024;
+    }
+
+    public static void main(String[] args) {
+        ThumbnailBenchmark benchmark = new ThumbnailBenchmark();
+        try {
+            benchmark.setup();
+            benchmark.testDecode();
+            benchmark.testSingleFlight();
+            benchmark.benchmark();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        benchmark.teardown();
+    }
+}
@@ -275,6 +275,11 @@ public class FileStorageService extends AbstractModule {
             this.fileSystem.stop();
         }
 
+        if (null != this.fileHierarchyManager) {
+            // 写入缓存的层级节点
+            this.fileHierarchyManager.stop();
+        }
+
         if (null != this.serviceStorage) {
             // 关闭存储
             this.serviceStorage.close();
@@ -292,6 +297,17 @@ public class FileStorageService extends AbstractModule {
     public void onTick(cube.core.Module module, Kernel kernel) {
         this.daemonTask.run();
         this.fileHierarchyManager.onTick();
+
+        if (this.fileSystem instanceof DiskSystem) {
+            // 回收无引用的数据块
+            final long now = System.currentTimeMillis();
+            this.executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    ((DiskSystem) fileSystem).sweep(now);
+                }
+            });
+        }
     }
 
     /**
@@ -1128,11 +1128,12 @@ public class ServiceStorage implements Storagable {
      * @param domain
      * @param nodeId
      * @param json
+     * @return 返回是否写入成功。
      */
-    public void writeHierarchyNode(String domain, long nodeId, JSONObject json) {
+    public boolean writeHierarchyNode(String domain, long nodeId, JSONObject json) {
         String table = this.hierarchyTableNameMap.get(domain);
         if (null == table) {
-            return;
+            return true;
         }
 
         StorageField[] fields = new StorageField[] {
@@ -1149,10 +1150,10 @@ public class ServiceStorage implements Storagable {
         });
 
         if (result.isEmpty()) {
-            this.storage.executeInsert(table, fields);
+            return this.storage.executeInsert(table, fields);
         }
         else {
-            this.storage.executeUpdate(table, fields, new Conditional[] {
+            return this.storage.executeUpdate(table, fields, new Conditional[] {
                     Conditional.createEqualTo(new StorageField("node_id", nodeId))
             });
         }
@@ -1207,14 +1208,15 @@ public class ServiceStorage implements Storagable {
      *
      * @param domain
      * @param nodeId
+     * @return 返回是否删除成功。
      */
-    public void deleteHierarchyNode(String domain, long nodeId) {
+    public boolean deleteHierarchyNode(String domain, long nodeId) {
         String table = this.hierarchyTableNameMap.get(domain);
         if (null == table) {
-            return;
+            return true;
         }
 
-        this.storage.executeDelete(table, new Conditional[] {
+        return this.storage.executeDelete(table, new Conditional[] {
                 Conditional.createEqualTo(new StorageField("node_id", nodeId))
         });
     }
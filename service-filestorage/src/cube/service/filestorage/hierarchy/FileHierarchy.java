@@ -277,6 +277,7 @@ public class FileHierarchy {
 
         Directory newDir = new Directory(this, newDirNode);
         this.directories.put(newDir.getId(), newDir);
+        this.fileSearcher.addDirectory(newDir);
 
         // 更新子目录记录
         directory.getDirectories();
@@ -321,6 +322,7 @@ public class FileHierarchy {
 
             // 从内存里移除
             this.directories.remove(subdirectory.getId());
+            this.fileSearcher.removeDirectory(subdirectory);
 
             // 更新缓存
             HierarchyNodes.delete(this.cache, subdirectory.node);
@@ -393,6 +395,7 @@ public class FileHierarchy {
         HierarchyNodes.delete(this.cache, subdirectory.node);
 
         this.directories.remove(subdirectory.getId());
+        this.fileSearcher.removeDirectory(subdirectory);
 
         // 回调
         ArrayList<Directory> list = new ArrayList<>(1);
@@ -425,6 +428,9 @@ public class FileHierarchy {
 
         HierarchyNodes.save(this.cache, directory.node);
 
+        // 更新索引
+        this.fileSearcher.renameDirectory(directory);
+
         return directory;
     }
 
@@ -477,6 +483,7 @@ public class FileHierarchy {
             if (null == dir) {
                 dir = new Directory(this, node);
                 this.directories.put(dir.getId(), dir);
+                this.fileSearcher.addDirectory(dir);
             }
 
             if (!dir.isHidden()) {
@@ -508,6 +515,7 @@ public class FileHierarchy {
             if (null == dir) {
                 dir = new Directory(this, node);
                 this.directories.put(dir.getId(), dir);
+                this.fileSearcher.addDirectory(dir);
             }
 
             if (dir.getName().equals(subdirectory)) {
@@ -534,6 +542,7 @@ public class FileHierarchy {
             if (null == dir) {
                 dir = new Directory(this, node);
                 this.directories.put(dir.getId(), dir);
+                this.fileSearcher.addDirectory(dir);
             }
 
             if (dir.getId().longValue() == id.longValue()) {
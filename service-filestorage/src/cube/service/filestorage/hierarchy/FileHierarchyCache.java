@@ -12,39 +12,127 @@ import cube.core.*;
 import cube.service.filestorage.ServiceStorage;
 import org.json.JSONObject;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 /**
  * 使用数据库存储实现的缓存。
+ * 节点数据先写入预写日志和内存层，由定时任务或者脏节点数量触发合并写入数据库。
  */
 public class FileHierarchyCache extends AbstractCache {
 
     protected ServiceStorage structStorage;
 
+    /**
+     * 内存层最大节点数量。
+     */
+    private final int maxNodes;
+
+    /**
+     * 触发刷写的脏节点数量。
+     */
+    private final int flushThreshold;
+
+    /**
+     * 定时刷写间隔。
+     */
+    private final long flushInterval;
+
+    /**
+     * 按访问顺序排列的内存节点。
+     */
+    private final LinkedHashMap<String, Node> nodes;
+
+    /**
+     * 未写入数据库的节点。
+     */
+    private final Map<String, Node> dirtyNodes;
+
+    private final Object flushMutex = new Object();
+
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+
+    private final HierarchyJournal journal;
+
+    private long version = 0;
+
+    private long modifications = 0;
+
+    private Timer timer;
+
     public FileHierarchyCache(ServiceStorage structStorage) {
+        this(structStorage, new File("storage/hierarchy"), 20000, 1000, 5000);
+    }
+
+    /**
+     * 构造函数。
+     *
+     * @param structStorage 数据库存储。
+     * @param journalPath 预写日志目录。
+     * @param maxNodes 内存层最大节点数量。
+     * @param flushThreshold 触发刷写的脏节点数量。
+     * @param flushInterval 定时刷写间隔，单位：毫秒。
+     */
+    public FileHierarchyCache(ServiceStorage structStorage, File journalPath, int maxNodes,
+                              int flushThreshold, long flushInterval) {
         super("FileHierarchyCache", "FileHierarchyCache");
         this.structStorage = structStorage;
+        this.maxNodes = maxNodes;
+        this.flushThreshold = flushThreshold;
+        this.flushInterval = flushInterval;
+        this.nodes = new LinkedHashMap<>(1024, 0.75f, true);
+        this.dirtyNodes = new HashMap<>();
+        this.journal = new HierarchyJournal(journalPath, true);
+        this.recover();
     }
 
     @Override
     public void start() {
-        // Nothing
+        if (null != this.timer) {
+            return;
+        }
+
+        this.timer = new Timer("FileHierarchyCacheFlush", true);
+        this.timer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                flush();
+            }
+        }, this.flushInterval, this.flushInterval);
     }
 
     @Override
     public void stop() {
-        // Nothing
+        if (null != this.timer) {
+            this.timer.cancel();
+            this.timer = null;
+        }
+
+        this.flush();
+        this.journal.close();
     }
 
     @Override
     public void put(CacheKey key, CacheValue value) {
-        Object[] uk = UniqueKey.extract(key.get());
-        Long id = (Long) uk[0];
-        String domain = (String) uk[1];
-        this.structStorage.writeHierarchyNode(domain, id, value.get());
+        this.write(key.get(), value.get().toString());
     }
 
     @Override
     public CacheValue get(CacheKey key) {
-        Object[] uk = UniqueKey.extract(key.get());
+        String uniqueKey = key.get();
+        long stamp = 0;
+
+        synchronized (this.nodes) {
+            Node node = this.nodes.get(uniqueKey);
+            if (null != node) {
+                return (null == node.value) ? null : new CacheValue(new JSONObject(node.value));
+            }
+            stamp = this.modifications;
+        }
+
+        Object[] uk = UniqueKey.extract(uniqueKey);
         Long id = (Long) uk[0];
         String domain = (String) uk[1];
 
@@ -54,8 +142,20 @@ public class FileHierarchyCache extends AbstractCache {
                 return null;
             }
 
-            CacheValue value = new CacheValue(json);
-            return value;
+            synchronized (this.nodes) {
+                Node node = this.nodes.get(uniqueKey);
+                if (null != node) {
+                    // 读取期间节点被更新
+                    return (null == node.value) ? null : new CacheValue(new JSONObject(node.value));
+                }
+
+                if (stamp == this.modifications) {
+                    this.nodes.put(uniqueKey, new Node(json.toString()));
+                    this.evict();
+                }
+            }
+
+            return new CacheValue(json);
         } catch (Exception e) {
             Logger.e(this.getClass(), "#get", e);
             return null;
@@ -64,10 +164,7 @@ public class FileHierarchyCache extends AbstractCache {
 
     @Override
     public void remove(CacheKey key) {
-        Object[] uk = UniqueKey.extract(key.get());
-        Long id = (Long) uk[0];
-        String domain = (String) uk[1];
-        this.structStorage.deleteHierarchyNode(domain, id);
+        this.write(key.get(), null);
     }
 
     @Override
@@ -80,4 +177,260 @@ public class FileHierarchyCache extends AbstractCache {
     public void execute(CacheKey key, CacheTransaction transaction) {
         // Nothing
     }
+
+    /**
+     * 返回内存层节点数量。
+     *
+     * @return
+     */
+    public int numNodes() {
+        synchronized (this.nodes) {
+            return this.nodes.size();
+        }
+    }
+
+    /**
+     * 返回未写入数据库的节点数量。
+     *
+     * @return
+     */
+    public int numDirtyNodes() {
+        synchronized (this.nodes) {
+            return this.dirtyNodes.size();
+        }
+    }
+
+    /**
+     * 将脏节点合并写入数据库。
+     *
+     * @return 全部写入成功返回 {@code true} 。
+     */
+    public boolean flush() {
+        synchronized (this.flushMutex) {
+            this.flushScheduled.set(false);
+
+            List<Pending> batch = null;
+            long sealed = 0;
+            synchronized (this.nodes) {
+                if (this.dirtyNodes.isEmpty()) {
+                    return true;
+                }
+
+                batch = new ArrayList<>(this.dirtyNodes.size());
+                for (Map.Entry<String, Node> e : this.dirtyNodes.entrySet()) {
+                    batch.add(new Pending(e.getKey(), e.getValue()));
+                }
+                this.dirtyNodes.clear();
+                // 后续写入使用新的日志段
+                sealed = this.journal.rotate();
+            }
+
+            int index = 0;
+            try {
+                for (; index < batch.size(); ++index) {
+                    if (!this.store(batch.get(index))) {
+                        break;
+                    }
+                }
+            } catch (Exception e) {
+                Logger.e(this.getClass(), "#flush", e);
+            }
+
+            synchronized (this.nodes) {
+                for (int i = 0; i < batch.size(); ++i) {
+                    Pending pending = batch.get(i);
+                    Node node = this.nodes.get(pending.key);
+                    if (null == node || node.version != pending.version) {
+                        // 已被更新，由后续的刷写处理
+                        continue;
+                    }
+
+                    if (i < index) {
+                        node.dirty = false;
+                        if (null == node.value) {
+                            this.nodes.remove(pending.key);
+                        }
+                    }
+                    else {
+                        this.dirtyNodes.put(pending.key, node);
+                    }
+                }
+
+                this.evict();
+            }
+
+            if (index < batch.size()) {
+                Logger.w(this.getClass(), "#flush - Write hierarchy node failed, "
+                        + (batch.size() - index) + " nodes remain in journal");
+                return false;
+            }
+
+            // 数据已写入数据库，删除日志
+            this.journal.truncate(sealed);
+            return true;
+        }
+    }
+
+    private void write(String uniqueKey, String value) {
+        boolean journaled = true;
+        boolean trigger = false;
+        long position = 0;
+
+        synchronized (this.nodes) {
+            try {
+                position = this.journal.append(uniqueKey, value);
+            } catch (IOException e) {
+                Logger.e(this.getClass(), "#write - Journal failed", e);
+                journaled = false;
+            }
+
+            Node node = this.nodes.get(uniqueKey);
+            if (null == node) {
+                node = new Node(value);
+                this.nodes.put(uniqueKey, node);
+            }
+            else {
+                node.value = value;
+            }
+            node.dirty = true;
+            node.version = ++this.version;
+            ++this.modifications;
+            this.dirtyNodes.put(uniqueKey, node);
+
+            trigger = !this.evict() || this.dirtyNodes.size() >= this.flushThreshold;
+        }
+
+        if (journaled) {
+            try {
+                // 在锁外刷盘，并发写入共享同一次刷盘
+                this.journal.sync(position);
+            } catch (IOException e) {
+                Logger.e(this.getClass(), "#write - Journal sync failed", e);
+                journaled = false;
+            }
+        }
+
+        if (!journaled) {
+            // 日志不可用时直接写入数据库
+            this.flush();
+        }
+        else if (trigger) {
+            this.scheduleFlush();
+        }
+    }
+
+    private void scheduleFlush() {
+        if (!this.flushScheduled.compareAndSet(false, true)) {
+            return;
+        }
+
+        Timer current = this.timer;
+        if (null != current) {
+            try {
+                current.schedule(new TimerTask() {
+                    @Override
+                    public void run() {
+                        flush();
+                    }
+                }, 0);
+                return;
+            } catch (IllegalStateException e) {
+                // Timer 已取消
+            }
+        }
+
+        this.flush();
+    }
+
+    /**
+     * 淘汰最近最少使用的干净节点。
+     *
+     * @return 如果节点数量在上限之内返回 {@code true} 。
+     */
+    private boolean evict() {
+        if (this.nodes.size() <= this.maxNodes) {
+            return true;
+        }
+
+        Iterator<Node> iter = this.nodes.values().iterator();
+        while (this.nodes.size() > this.maxNodes && iter.hasNext()) {
+            if (!iter.next().dirty) {
+                iter.remove();
+            }
+        }
+
+        return this.nodes.size() <= this.maxNodes;
+    }
+
+    private boolean store(Pending pending) {
+        Object[] uk = UniqueKey.extract(pending.key);
+        Long id = (Long) uk[0];
+        String domain = (String) uk[1];
+
+        if (null == pending.value) {
+            return this.structStorage.deleteHierarchyNode(domain, id);
+        }
+        else {
+            return this.structStorage.writeHierarchyNode(domain, id, new JSONObject(pending.value));
+        }
+    }
+
+    /**
+     * 回放上次运行未写入数据库的日志。
+     */
+    private void recover() {
+        LinkedHashMap<String, String> records = this.journal.replay();
+        if (records.isEmpty()) {
+            return;
+        }
+
+        Logger.i(this.getClass(), "Recover " + records.size() + " hierarchy nodes from journal");
+
+        synchronized (this.nodes) {
+            for (Map.Entry<String, String> e : records.entrySet()) {
+                Node node = new Node(e.getValue());
+                node.dirty = true;
+                node.version = ++this.version;
+                this.nodes.put(e.getKey(), node);
+                this.dirtyNodes.put(e.getKey(), node);
+            }
+        }
+
+        // 刷写成功后删除旧的日志段
+        this.flush();
+    }
+
+    /**
+     * 内存节点。
+     */
+    private class Node {
+
+        protected String value;
+
+        protected boolean dirty = false;
+
+        protected long version = 0;
+
+        protected Node(String value) {
+            this.value = value;
+        }
+    }
+
+    /**
+     * 待写入的节点快照。
+     */
+    private class Pending {
+
+        protected final String key;
+
+        protected final String value;
+
+        protected final long version;
+
+        protected Pending(String key, Node node) {
+            this.key = key;
+            this.value = node.value;
+            this.version = node.version;
+        }
+    }
 }
@@ -38,6 +38,11 @@ public class FileHierarchyManager implements FileHierarchyListener {
      */
     private ConcurrentHashMap<String, FileHierarchy> roots;
 
+    /**
+     * 按 ROOT 分段的锁。
+     */
+    private final Object[] rootLocks;
+
     /**
      * 用于读写层级节点的缓存封装。
      */
@@ -57,6 +62,18 @@ public class FileHierarchyManager implements FileHierarchyListener {
         this.fileHierarchyCache = new FileHierarchyCache(structStorage);
         this.fileStorageService = fileStorageService;
         this.roots = new ConcurrentHashMap<>();
+        this.rootLocks = new Object[64];
+        for (int i = 0; i < this.rootLocks.length; ++i) {
+            this.rootLocks[i] = new Object();
+        }
+        this.fileHierarchyCache.start();
+    }
+
+    /**
+     * 停止管理器，将未写入的节点写入数据库。
+     */
+    public void stop() {
+        this.fileHierarchyCache.stop();
     }
 
     /**
@@ -66,28 +83,36 @@ public class FileHierarchyManager implements FileHierarchyListener {
      * @param domainName 指定域名称。
      * @return 返回指定联系人的文件层级实例。
      */
-    public synchronized FileHierarchy getFileHierarchy(Long rootId, String domainName) {
+    public FileHierarchy getFileHierarchy(Long rootId, String domainName) {
         String uniqueKey = UniqueKey.make(rootId, domainName);
         FileHierarchy root = this.roots.get(uniqueKey);
         if (null != root) {
             return root;
         }
 
-        HierarchyNode node = HierarchyNodes.load(this.fileHierarchyCache, uniqueKey);
-        if (null != node) {
+        // 仅对相同 ROOT 的加载互斥
+        synchronized (this.rootLocks[(uniqueKey.hashCode() & 0x7fffffff) % this.rootLocks.length]) {
+            root = this.roots.get(uniqueKey);
+            if (null != root) {
+                return root;
+            }
+
+            HierarchyNode node = HierarchyNodes.load(this.fileHierarchyCache, uniqueKey);
+            if (null != node) {
+                root = new FileHierarchy(this.fileHierarchyCache, node, this);
+                this.roots.put(uniqueKey, root);
+                return root;
+            }
+
+            // 没有创建过根目录，创建根目录
+            node = new HierarchyNode(rootId, domainName);
             root = new FileHierarchy(this.fileHierarchyCache, node, this);
             this.roots.put(uniqueKey, root);
-            return root;
-        }
-
-        // 没有创建过根目录，创建根目录
-        node = new HierarchyNode(rootId, domainName);
-        root = new FileHierarchy(this.fileHierarchyCache, node, this);
-        this.roots.put(uniqueKey, root);
 
-        HierarchyNodes.save(this.fileHierarchyCache, node);
+            HierarchyNodes.save(this.fileHierarchyCache, node);
 
-        return root;
+            return root;
+        }
     }
 
     /**
@@ -113,6 +138,8 @@ public class FileHierarchyManager implements FileHierarchyListener {
      */
     public List<FileLabel> listFiles(String domainName, long contactId, long beginTime, long endTime) {
         List<FileLabel> list = new ArrayList<>();
+        // 将内存层的节点写入数据库
+        this.fileHierarchyCache.flush();
         // 检索符合时间范围的节点
         List<JSONObject> nodeJsonList = this.fileHierarchyCache.structStorage.filterHierarchyNodes(domainName,
                 contactId, beginTime, endTime);
@@ -8,14 +8,17 @@ package cube.service.filestorage.hierarchy;
 
 import cube.common.JSONable;
 import cube.common.entity.FileLabel;
+import cube.util.FileType;
+import cube.util.FileUtils;
 import org.json.JSONObject;
 
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
- * 文件分类器。
+ * 文件检索器。
+ * 为层级内的文件和目录维护倒排索引，名称按字符二元组（包括中日韩文字的二元组）建立索引，
+ * 文件另按类型和扩展名建立索引。文件的倒排列表按修改时间倒序排列，检索时合并倒排列表并按页返回。
  */
 public class FileSearcher {
 
@@ -23,73 +26,278 @@ public class FileSearcher {
 
     private FileHierarchyListener listener;
 
-    private LinkedHashMap<String, IndexingItem> repository;
+    /**
+     * 已索引的文件。
+     */
+    private final Map<String, IndexingItem> repository;
+
+    /**
+     * 所有文件，按修改时间倒序排列。
+     */
+    private final TreeSet<IndexingItem> allFiles;
+
+    /**
+     * 文件名二元组对应的文件。
+     */
+    private final Map<String, TreeSet<IndexingItem>> nameTokens;
+
+    /**
+     * 文件类型对应的文件。
+     */
+    private final Map<FileType, TreeSet<IndexingItem>> typePostings;
+
+    /**
+     * 文件扩展名对应的文件。
+     */
+    private final Map<String, TreeSet<IndexingItem>> extensionPostings;
 
-    private Vector<IndexingItem> fileQueue;
+    /**
+     * 目录 ID 对应的目录内文件。
+     */
+    private final Map<Long, Set<IndexingItem>> directoryFiles;
+
+    /**
+     * 已索引的目录。
+     */
+    private final Map<Long, Directory> directories;
+
+    /**
+     * 已索引目录的名称。
+     */
+    private final Map<Long, String> directoryNames;
+
+    /**
+     * 目录名二元组对应的目录 ID 。
+     */
+    private final Map<String, Set<Long>> directoryTokens;
 
-    private ConcurrentHashMap<SearchFilter, List<IndexingItem>> searchResultMap;
+    private final ReentrantReadWriteLock lock;
+
+    /**
+     * 是否已完成全量索引。
+     */
+    private volatile boolean indexed;
 
     public FileSearcher(Directory root, FileHierarchyListener listener) {
         this.root = root;
         this.listener = listener;
-        this.repository = new LinkedHashMap<>();
-        this.fileQueue = new Vector<>();
-        this.searchResultMap = new ConcurrentHashMap<>();
+        this.repository = new HashMap<>();
+        this.allFiles = new TreeSet<>();
+        this.nameTokens = new HashMap<>();
+        this.typePostings = new HashMap<>();
+        this.extensionPostings = new HashMap<>();
+        this.directoryFiles = new HashMap<>();
+        this.directories = new HashMap<>();
+        this.directoryNames = new HashMap<>();
+        this.directoryTokens = new HashMap<>();
+        this.lock = new ReentrantReadWriteLock();
+        this.indexed = false;
     }
 
+    /**
+     * 添加文件到索引。
+     *
+     * @param directory
+     * @param fileLabel
+     */
     public void addFile(Directory directory, FileLabel fileLabel) {
         String key = FileSearcher.makeKey(directory, fileLabel);
-        if (this.repository.containsKey(key)) {
-            return;
-        }
 
-        IndexingItem item = new IndexingItem(key, directory, fileLabel);
-        this.repository.put(key, item);
-        this.fileQueue.add(item);
+        this.lock.writeLock().lock();
+        try {
+            if (this.repository.containsKey(key)) {
+                return;
+            }
+
+            IndexingItem item = new IndexingItem(key, directory, fileLabel);
+            this.repository.put(key, item);
+            this.allFiles.add(item);
+
+            for (String token : FileSearcher.tokenize(FileUtils.extractFileName(fileLabel.getFileName()))) {
+                this.nameTokens.computeIfAbsent(token, k -> new TreeSet<>()).add(item);
+            }
 
-        // 如果文件符合检索规则，删除指定过滤器的缓存
-        List<SearchFilter> list = this.matchFilter(fileLabel);
-        if (!list.isEmpty()) {
-            for (SearchFilter filter : list) {
-                this.searchResultMap.remove(filter);
+            if (null != fileLabel.getFileType()) {
+                this.typePostings.computeIfAbsent(fileLabel.getFileType(), k -> new TreeSet<>()).add(item);
             }
+
+            this.extensionPostings.computeIfAbsent(fileLabel.getFileExtension().toLowerCase(),
+                    k -> new TreeSet<>()).add(item);
+
+            this.directoryFiles.computeIfAbsent(directory.getId(), k -> new HashSet<>()).add(item);
+        } finally {
+            this.lock.writeLock().unlock();
         }
     }
 
+    /**
+     * 从索引移除文件。
+     *
+     * @param directory
+     * @param fileLabel
+     */
     public void removeFile(Directory directory, FileLabel fileLabel) {
         String key = FileSearcher.makeKey(directory, fileLabel);
-        IndexingItem item = this.repository.remove(key);
-        if (null != item) {
-            this.fileQueue.remove(item);
-
-            // 如果文件符合检索规则，删除指定过滤器的缓存
-            List<SearchFilter> list = this.matchFilter(fileLabel);
-            if (!list.isEmpty()) {
-                for (SearchFilter filter : list) {
-                    this.searchResultMap.remove(filter);
+
+        this.lock.writeLock().lock();
+        try {
+            IndexingItem item = this.repository.get(key);
+            if (null != item) {
+                this.unindex(item);
+
+                Set<IndexingItem> files = this.directoryFiles.get(directory.getId());
+                if (null != files) {
+                    files.remove(item);
                 }
             }
+        } finally {
+            this.lock.writeLock().unlock();
         }
     }
 
     /**
-     * 匹配已缓存的过滤器。
+     * 添加目录到索引。
      *
-     * @param fileLabel
-     * @return
+     * @param directory
+     */
+    public void addDirectory(Directory directory) {
+        this.lock.writeLock().lock();
+        try {
+            if (this.directories.containsKey(directory.getId())) {
+                return;
+            }
+
+            this.directories.put(directory.getId(), directory);
+            this.indexDirectoryName(directory.getId(), directory.getName());
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 更新目录名索引。
+     *
+     * @param directory
+     */
+    public void renameDirectory(Directory directory) {
+        this.lock.writeLock().lock();
+        try {
+            this.unindexDirectoryName(directory.getId());
+            this.directories.put(directory.getId(), directory);
+            this.indexDirectoryName(directory.getId(), directory.getName());
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 从索引移除目录及其子目录，包括目录内的文件。
+     *
+     * @param directory
      */
-    private List<SearchFilter> matchFilter(FileLabel fileLabel) {
-        List<SearchFilter> result = new ArrayList<>();
+    public void removeDirectory(Directory directory) {
+        this.lock.writeLock().lock();
+        try {
+            List<Long> removed = new ArrayList<>();
+            for (Directory dir : this.directories.values()) {
+                Directory cur = dir;
+                while (null != cur) {
+                    if (cur.equals(directory)) {
+                        removed.add(dir.getId());
+                        break;
+                    }
+                    cur = cur.getParent();
+                }
+            }
+            removed.add(directory.getId());
+
+            for (Long id : removed) {
+                this.directories.remove(id);
+                this.unindexDirectoryName(id);
 
-        Enumeration<SearchFilter> enumeration = this.searchResultMap.keys();
-        while (enumeration.hasMoreElements()) {
-            SearchFilter filter = enumeration.nextElement();
-            if (filter.containsFileType(fileLabel)) {
-                result.add(filter);
+                Set<IndexingItem> files = this.directoryFiles.remove(id);
+                if (null != files) {
+                    for (IndexingItem item : files) {
+                        this.unindex(item);
+                    }
+                }
             }
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    private void unindex(IndexingItem item) {
+        this.repository.remove(item.key);
+        this.allFiles.remove(item);
+
+        for (String token : FileSearcher.tokenize(FileUtils.extractFileName(item.fileLabel.getFileName()))) {
+            FileSearcher.removePosting(this.nameTokens, token, item);
         }
 
-        return result;
+        if (null != item.fileLabel.getFileType()) {
+            FileSearcher.removePosting(this.typePostings, item.fileLabel.getFileType(), item);
+        }
+
+        FileSearcher.removePosting(this.extensionPostings, item.fileLabel.getFileExtension().toLowerCase(), item);
+    }
+
+    private void indexDirectoryName(Long id, String name) {
+        this.directoryNames.put(id, name);
+        for (String token : FileSearcher.tokenize(name)) {
+            this.directoryTokens.computeIfAbsent(token, k -> new HashSet<>()).add(id);
+        }
+    }
+
+    private void unindexDirectoryName(Long id) {
+        String name = this.directoryNames.remove(id);
+        if (null == name) {
+            return;
+        }
+
+        for (String token : FileSearcher.tokenize(name)) {
+            Set<Long> set = this.directoryTokens.get(token);
+            if (null != set) {
+                set.remove(id);
+                if (set.isEmpty()) {
+                    this.directoryTokens.remove(token);
+                }
+            }
+        }
+    }
+
+    private static <K> void removePosting(Map<K, TreeSet<IndexingItem>> postings, K key, IndexingItem item) {
+        TreeSet<IndexingItem> set = postings.get(key);
+        if (null != set) {
+            set.remove(item);
+            if (set.isEmpty()) {
+                postings.remove(key);
+            }
+        }
+    }
+
+    /**
+     * 遍历层级建立全量索引。
+     */
+    private void buildIndex() {
+        synchronized (this.lock) {
+            if (this.indexed) {
+                return;
+            }
+
+            this.indexDirectory(this.root);
+            this.indexed = true;
+        }
+    }
+
+    private void indexDirectory(Directory directory) {
+        // 加载目录内的文件时会回调 addFile
+        directory.listFiles(0, directory.numFiles());
+
+        for (Directory dir : directory.getAllDirectories()) {
+            this.addDirectory(dir);
+            this.indexDirectory(dir);
+        }
     }
 
     /**
@@ -103,88 +311,255 @@ public class FileSearcher {
             return null;
         }
 
-        List<IndexingItem> record = this.searchResultMap.get(filter);
-        if (null != record) {
-            return record;
+        if (!this.indexed) {
+            this.buildIndex();
         }
 
-        List<IndexingItem> result = new ArrayList<>();
+        final int begin = filter.beginIndex;
+        final int num = filter.endIndex - filter.beginIndex + 1;
+
+        List<IndexingItem> result = new ArrayList<>(num);
+        Map<Long, Boolean> visibility = new HashMap<>();
+
+        this.lock.readLock().lock();
+        try {
+            // 匹配目录，目录排在文件之前
+            int skip = begin;
+            if (!filter.nameKeywords.isEmpty()) {
+                List<IndexingItem> dirs = this.searchDirectories(filter, visibility);
+                if (skip < dirs.size()) {
+                    result.addAll(dirs.subList(skip, Math.min(dirs.size(), skip + num)));
+                    skip = 0;
+                }
+                else {
+                    skip -= dirs.size();
+                }
+            }
+
+            if (result.size() < num) {
+                this.searchFiles(filter, skip, num - result.size(), visibility, result);
+            }
+        } finally {
+            this.lock.readLock().unlock();
+        }
+
+        return result;
+    }
+
+    private List<IndexingItem> searchDirectories(SearchFilter filter, Map<Long, Boolean> visibility) {
+        Set<Long> candidates = new HashSet<>();
+        for (String word : filter.lowerCaseNameKeywords) {
+            if (word.length() < 2) {
+                candidates = this.directories.keySet();
+                break;
+            }
+
+            Set<Long> rarest = null;
+            for (String token : FileSearcher.tokenize(word)) {
+                Set<Long> set = this.directoryTokens.get(token);
+                if (null == set) {
+                    rarest = null;
+                    break;
+                }
+                if (null == rarest || set.size() < rarest.size()) {
+                    rarest = set;
+                }
+            }
+
+            if (null != rarest) {
+                candidates.addAll(rarest);
+            }
+        }
+
+        List<IndexingItem> list = new ArrayList<>();
+        for (Long id : candidates) {
+            Directory directory = this.directories.get(id);
+            if (directory.equals(this.root)) {
+                continue;
+            }
+
+            if (filter.containsDirectoryName(directory) && this.isVisible(directory, visibility)) {
+                list.add(new IndexingItem(FileSearcher.makeKey(directory), directory));
+            }
+        }
+
+        Collections.sort(list);
+        return list;
+    }
+
+    private void searchFiles(SearchFilter filter, int skip, int limit, Map<Long, Boolean> visibility,
+                             List<IndexingItem> result) {
+        List<TreeSet<IndexingItem>> postings = new ArrayList<>();
+
+        if (!filter.fileTypes.isEmpty()) {
+            for (FileType fileType : filter.fileTypes) {
+                TreeSet<IndexingItem> set = this.typePostings.get(fileType);
+                if (null != set) {
+                    postings.add(set);
+                }
+            }
+
+            for (String extension : filter.extensions) {
+                TreeSet<IndexingItem> set = this.extensionPostings.get(extension);
+                if (null != set) {
+                    postings.add(set);
+                }
+            }
+        }
+
+        for (String word : filter.lowerCaseNameKeywords) {
+            if (word.length() < 2) {
+                // 关键词没有二元组，遍历全部文件
+                postings.clear();
+                postings.add(this.allFiles);
+                break;
+            }
+
+            // 选择最短的倒排列表，匹配项必然包含该二元组
+            TreeSet<IndexingItem> rarest = null;
+            for (String token : FileSearcher.tokenize(word)) {
+                TreeSet<IndexingItem> set = this.nameTokens.get(token);
+                if (null == set) {
+                    rarest = null;
+                    break;
+                }
+                if (null == rarest || set.size() < rarest.size()) {
+                    rarest = set;
+                }
+            }
+
+            if (null != rarest) {
+                postings.add(rarest);
+            }
+        }
+
+        // 按排序合并倒排列表
+        PriorityQueue<PostingCursor> queue = new PriorityQueue<>();
+        for (TreeSet<IndexingItem> set : postings) {
+            PostingCursor cursor = new PostingCursor(set.iterator());
+            if (cursor.next()) {
+                queue.add(cursor);
+            }
+        }
+
+        IndexingItem last = null;
+        int count = 0;
+        while (!queue.isEmpty() && count < limit) {
+            PostingCursor cursor = queue.poll();
+            IndexingItem item = cursor.current;
+            if (cursor.next()) {
+                queue.add(cursor);
+            }
+
+            if (item == last) {
+                // 已出现在其他倒排列表
+                continue;
+            }
+            last = item;
+
+            if (!(filter.containsFileType(item.fileLabel) || filter.containsFileName(item.fileLabel))) {
+                continue;
+            }
+
+            if (!this.isVisible(item.directory, visibility)) {
+                continue;
+            }
+
+            if (skip > 0) {
+                --skip;
+                continue;
+            }
+
+            result.add(item);
+            ++count;
+        }
+    }
+
+    /**
+     * 判断目录是否可见，即目录及其所有上级目录都不是隐藏目录。
+     *
+     * @param directory
+     * @param visibility
+     * @return
+     */
+    private boolean isVisible(Directory directory, Map<Long, Boolean> visibility) {
+        if (directory.equals(this.root)) {
+            return true;
+        }
+
+        Boolean value = visibility.get(directory.getId());
+        if (null != value) {
+            return value.booleanValue();
+        }
+
+        boolean visible = false;
+        if (!directory.isHidden()) {
+            Directory parent = directory.getParent();
+            visible = (null != parent) && this.isVisible(parent, visibility);
+        }
+
+        visibility.put(directory.getId(), visible);
+        return visible;
+    }
 
-        int begin = filter.beginIndex;
-        int end = filter.endIndex;
-        final int num = end - begin + 1;
+    /**
+     * 以遍历层级的方式搜索文件，结果与 {@link #search(SearchFilter)} 一致，用于校验索引。
+     *
+     * @param filter
+     * @return
+     */
+    public List<IndexingItem> scan(SearchFilter filter) {
+        if (filter.beginIndex >= filter.endIndex) {
+            return null;
+        }
 
-        // 从根目录开始进行递归
-        AtomicInteger index = new AtomicInteger(0);
+        List<IndexingItem> result = new ArrayList<>();
 
         if (!filter.nameKeywords.isEmpty()) {
             // 匹配目录
             FileHierarchyTool.recurseDirectory(this.root, new RecurseDirectoryHandler() {
                 @Override
                 public boolean handle(Directory directory) {
-                    if (result.size() >= num) {
-                        return false;
-                    }
-
                     if (filter.containsDirectoryName(directory)) {
-                        int curIndex = index.get();
-                        if (curIndex >= begin && curIndex <= end) {
-                            result.add(new IndexingItem(FileSearcher.makeKey(directory),
-                                    directory));
-                        }
-
-                        // 更新索引
-                        index.incrementAndGet();
+                        result.add(new IndexingItem(FileSearcher.makeKey(directory), directory));
                     }
-
                     return true;
                 }
             });
         }
 
-        if (result.size() < num) {
-            FileHierarchyTool.recurseFile(this.root, new RecurseFileHandler() {
-                @Override
-                public boolean handle(Directory directory, FileLabel fileLabel) {
-                    if (result.size() >= num) {
-                        return false;
-                    }
-
-                    if (filter.containsFileType(fileLabel)) {
-                        // 文件类型匹配
-                        int curIndex = index.get();
-                        if (curIndex >= begin && curIndex <= end) {
-                            result.add(new IndexingItem(FileSearcher.makeKey(directory, fileLabel),
-                                    directory, fileLabel));
-                        }
-
-                        // 更新索引
-                        index.incrementAndGet();
-                    }
-                    else if (filter.containsFileName(fileLabel)) {
-                        // 文件名匹配
-                        int curIndex = index.get();
-                        if (curIndex >= begin && curIndex <= end) {
-                            result.add(new IndexingItem(FileSearcher.makeKey(directory, fileLabel),
-                                    directory, fileLabel));
-                        }
-
-                        // 更新索引
-                        index.incrementAndGet();
-                    }
-
-                    return true;
+        FileHierarchyTool.recurseFile(this.root, new RecurseFileHandler() {
+            @Override
+            public boolean handle(Directory directory, FileLabel fileLabel) {
+                if (filter.containsFileType(fileLabel) || filter.containsFileName(fileLabel)) {
+                    result.add(new IndexingItem(FileSearcher.makeKey(directory, fileLabel),
+                            directory, fileLabel));
                 }
-            });
-        }
+                return true;
+            }
+        });
 
         // 排序
         Collections.sort(result);
 
-        // 缓存记录
-        this.searchResultMap.put(filter, result);
+        int begin = Math.min(filter.beginIndex, result.size());
+        int end = Math.min(filter.endIndex + 1, result.size());
+        return new ArrayList<>(result.subList(begin, end));
+    }
 
-        return result;
+    /**
+     * 将名称切分为字符二元组。
+     *
+     * @param name
+     * @return
+     */
+    protected static Set<String> tokenize(String name) {
+        String text = name.toLowerCase();
+        Set<String> tokens = new HashSet<>();
+        for (int i = 0; i + 1 < text.length(); ++i) {
+            tokens.add(text.substring(i, i + 2));
+        }
+        return tokens;
     }
 
     protected static String makeKey(Directory directory, FileLabel fileLabel) {
@@ -195,6 +570,35 @@ public class FileSearcher {
         return directory.getId().toString();
     }
 
+    /**
+     * 倒排列表游标。
+     */
+    private class PostingCursor implements Comparable<PostingCursor> {
+
+        private final Iterator<IndexingItem> iterator;
+
+        private IndexingItem current;
+
+        private PostingCursor(Iterator<IndexingItem> iterator) {
+            this.iterator = iterator;
+        }
+
+        private boolean next() {
+            if (this.iterator.hasNext()) {
+                this.current = this.iterator.next();
+                return true;
+            }
+
+            this.current = null;
+            return false;
+        }
+
+        @Override
+        public int compareTo(PostingCursor other) {
+            return this.current.compareTo(other.current);
+        }
+    }
+
     /**
      * 已索引项目。
      */
@@ -218,13 +622,17 @@ public class FileSearcher {
             this.fileLabel = fileLabel;
         }
 
+        public String getKey() {
+            return this.key;
+        }
+
         protected boolean isDirectory() {
             return (null == this.fileLabel);
         }
 
         @Override
         public int compareTo(IndexingItem other) {
-            // 时间倒序
+            // 时间倒序，时间相同时按键排序
             if (null != this.fileLabel && null != other.fileLabel) {
                 if (this.fileLabel.getLastModified() < other.fileLabel.getLastModified()) {
                     return 1;
@@ -233,7 +641,7 @@ public class FileSearcher {
                     return -1;
                 }
                 else {
-                    return 0;
+                    return this.key.compareTo(other.key);
                 }
             }
             else if (null == this.fileLabel && null != other.fileLabel) {
@@ -250,7 +658,7 @@ public class FileSearcher {
                     return -1;
                 }
                 else {
-                    return 0;
+                    return this.key.compareTo(other.key);
                 }
             }
         }
@@ -0,0 +1,239 @@
+/*
+ * This source file is part of Cube.
+ *
+ * Copyright (c) 2023-2026 Ambrose Xu.
+ */
+
+package cube.service.filestorage.hierarchy;
+
+import cell.util.log.Logger;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.*;
+import java.nio.channels.ClosedChannelException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 层级节点的预写日志。
+ * 日志按段存储，每条记录为一行 JSON 。写入方在确认前调用 {@link #sync(long)} 将记录刷入磁盘，
+ * 并发的写入方共享同一次刷盘。数据刷入数据库之后删除对应的日志段。
+ */
+public class HierarchyJournal {
+
+    private final static String PREFIX = "hierarchy-";
+
+    private final static String SUFFIX = ".journal";
+
+    private final File path;
+
+    /**
+     * 是否在每次写入后同步到磁盘。
+     */
+    private final boolean sync;
+
+    /**
+     * 当前写入的日志段序号。
+     */
+    private long sequence;
+
+    private FileOutputStream stream;
+
+    /**
+     * 已写入的字节总数。
+     */
+    private long written = 0;
+
+    /**
+     * 已刷入磁盘的字节总数。
+     */
+    private final AtomicLong synced = new AtomicLong(0);
+
+    private final Object syncMutex = new Object();
+
+    public HierarchyJournal(File path, boolean sync) {
+        this.path = path;
+        this.sync = sync;
+
+        if (!this.path.exists()) {
+            this.path.mkdirs();
+        }
+
+        this.sequence = 1;
+        for (File file : this.listSegments()) {
+            this.sequence = Math.max(this.sequence, parseSequence(file) + 1);
+        }
+    }
+
+    /**
+     * 追加记录。
+     *
+     * @param key 节点键。
+     * @param value 节点数据，为 {@code null} 时表示删除节点。
+     * @return 返回记录结束的位置，用于 {@link #sync(long)} 。
+     * @throws IOException
+     */
+    public synchronized long append(String key, String value) throws IOException {
+        if (null == this.stream) {
+            this.stream = new FileOutputStream(new File(this.path, PREFIX + this.sequence + SUFFIX), true);
+        }
+
+        JSONObject record = new JSONObject();
+        record.put("k", key);
+        if (null != value) {
+            record.put("v", value);
+        }
+
+        byte[] bytes = (record.toString() + "\n").getBytes(StandardCharsets.UTF_8);
+        this.stream.write(bytes);
+        this.written += bytes.length;
+        return this.written;
+    }
+
+    /**
+     * 将指定位置之前的记录刷入磁盘。
+     *
+     * @param position
+     * @throws IOException
+     */
+    public void sync(long position) throws IOException {
+        if (!this.sync) {
+            return;
+        }
+
+        synchronized (this.syncMutex) {
+            if (this.synced.get() >= position) {
+                // 已由其他写入方刷盘
+                return;
+            }
+
+            FileOutputStream current = null;
+            long target = 0;
+            synchronized (this) {
+                current = this.stream;
+                target = this.written;
+            }
+
+            if (null != current) {
+                try {
+                    current.getChannel().force(false);
+                } catch (ClosedChannelException e) {
+                    // 日志段已封闭，封闭时已刷盘
+                }
+            }
+
+            this.advance(target);
+        }
+    }
+
+    /**
+     * 封闭当前日志段，后续记录写入新的日志段。
+     *
+     * @return 返回被封闭的日志段序号。
+     */
+    public synchronized long rotate() {
+        this.closeStream();
+        long sealed = this.sequence;
+        this.sequence += 1;
+        return sealed;
+    }
+
+    /**
+     * 删除序号小于等于指定序号的日志段。
+     *
+     * @param sealed
+     */
+    public synchronized void truncate(long sealed) {
+        for (File file : this.listSegments()) {
+            if (parseSequence(file) <= sealed) {
+                if (!file.delete()) {
+                    Logger.w(this.getClass(), "#truncate - Can NOT delete journal: " + file.getName());
+                }
+            }
+        }
+    }
+
+    /**
+     * 按顺序回放所有日志段。
+     *
+     * @return 返回每个节点最后一次写入的数据，删除的节点对应的值为 {@code null} 。
+     */
+    public synchronized LinkedHashMap<String, String> replay() {
+        LinkedHashMap<String, String> result = new LinkedHashMap<>();
+
+        for (File file : this.listSegments()) {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    new FileInputStream(file), StandardCharsets.UTF_8))) {
+                String line = null;
+                while (null != (line = reader.readLine())) {
+                    if (line.length() == 0) {
+                        continue;
+                    }
+
+                    try {
+                        JSONObject record = new JSONObject(line);
+                        String key = record.getString("k");
+                        // 保持最后写入的顺序
+                        result.remove(key);
+                        result.put(key, record.has("v") ? record.getString("v") : null);
+                    } catch (JSONException e) {
+                        // 未写完整的记录，写入方没有得到确认
+                        Logger.w(this.getClass(), "#replay - Broken record in " + file.getName());
+                    }
+                }
+            } catch (IOException e) {
+                Logger.e(this.getClass(), "#replay", e);
+            }
+        }
+
+        return result;
+    }
+
+    public synchronized void close() {
+        this.closeStream();
+    }
+
+    private void advance(long position) {
+        long current = this.synced.get();
+        while (current < position && !this.synced.compareAndSet(current, position)) {
+            current = this.synced.get();
+        }
+    }
+
+    private void closeStream() {
+        if (null != this.stream) {
+            try {
+                if (this.sync) {
+                    this.stream.getChannel().force(false);
+                }
+                this.advance(this.written);
+                this.stream.close();
+            } catch (IOException e) {
+                // Nothing
+            }
+            this.stream = null;
+        }
+    }
+
+    private List<File> listSegments() {
+        File[] files = this.path.listFiles((dir, name) -> name.startsWith(PREFIX) && name.endsWith(SUFFIX));
+        if (null == files) {
+            return new ArrayList<>();
+        }
+
+        List<File> list = new ArrayList<>(Arrays.asList(files));
+        list.sort(Comparator.comparingLong(HierarchyJournal::parseSequence));
+        return list;
+    }
+
+    private static long parseSequence(File file) {
+        String name = file.getName();
+        try {
+            return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
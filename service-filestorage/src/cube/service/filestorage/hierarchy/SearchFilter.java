@@ -29,7 +29,7 @@ public class SearchFilter {
      */
     protected List<String> nameKeywords = new ArrayList<>();
 
-    private List<String> lowerCaseNameKeywords = new ArrayList<>();
+    protected List<String> lowerCaseNameKeywords = new ArrayList<>();
 
     protected boolean inverseOrder = true;
 
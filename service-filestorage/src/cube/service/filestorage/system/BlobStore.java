@@ -0,0 +1,391 @@
+/*
+ * This source file is part of Cube.
+ *
+ * Copyright (c) 2023-2026 Ambrose Xu.
+ */
+
+package cube.service.filestorage.system;
+
+import cell.util.log.Logger;
+import cube.util.FileUtils;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+/**
+ * 内容寻址的数据块存储。
+ * 文件内容按照 SHA-256 存储在 {@code ab/cd/<sha256>} 目录结构里，
+ * 文件码以硬链接的方式引用数据块，引用关系记录在数据块旁的 {@code .refs} 文件里。
+ */
+public class BlobStore {
+
+    private final static String REFS_SUFFIX = ".refs";
+
+    private final static String TEMP_DIR = "tmp";
+
+    /**
+     * 无引用数据块的保留时长，避免与正在写入的相同内容发生竞争。
+     */
+    private long graceTime = 10 * 60 * 1000;
+
+    /**
+     * 文件码目录。
+     */
+    private Path filePath;
+
+    /**
+     * 数据块根目录。
+     */
+    private Path blobPath;
+
+    /**
+     * 临时文件目录。
+     */
+    private Path tempPath;
+
+    /**
+     * 数据块对应的文件码引用。
+     */
+    private ConcurrentHashMap<String, Set<String>> refsMap;
+
+    /**
+     * 文件码对应的数据块。
+     */
+    private ConcurrentHashMap<String, String> fileCodeMap;
+
+    /**
+     * 引用计数归零的数据块及其时间戳。
+     */
+    private ConcurrentHashMap<String, Long> garbageMap;
+
+    /**
+     * 分段锁。
+     */
+    private final Object[] locks;
+
+    private AtomicBoolean sweeping = new AtomicBoolean(false);
+
+    /**
+     * 构造函数。
+     *
+     * @param filePath 文件码所在目录。
+     * @param blobPath 数据块根目录。
+     */
+    public BlobStore(Path filePath, Path blobPath) {
+        this.filePath = filePath;
+        this.blobPath = blobPath;
+        this.tempPath = blobPath.resolve(TEMP_DIR);
+        this.refsMap = new ConcurrentHashMap<>();
+        this.fileCodeMap = new ConcurrentHashMap<>();
+        this.garbageMap = new ConcurrentHashMap<>();
+        this.locks = new Object[64];
+        for (int i = 0; i < this.locks.length; ++i) {
+            this.locks[i] = new Object();
+        }
+    }
+
+    public void setGraceTime(long graceTime) {
+        this.graceTime = graceTime;
+    }
+
+    /**
+     * 打开存储，清理中断写入遗留的临时文件并加载引用关系。
+     */
+    public void open() {
+        try {
+            Files.createDirectories(this.tempPath);
+
+            // 删除中断写入的临时文件
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(this.tempPath)) {
+                for (Path path : stream) {
+                    Files.deleteIfExists(path);
+                }
+            }
+
+            // 加载引用记录
+            long now = System.currentTimeMillis();
+            try (Stream<Path> stream = Files.walk(this.blobPath, 3)) {
+                stream.forEach((path) -> {
+                    String name = path.getFileName().toString();
+                    if (path.startsWith(this.tempPath) || !Files.isRegularFile(path)) {
+                        return;
+                    }
+
+                    if (name.endsWith(REFS_SUFFIX)) {
+                        String sha = name.substring(0, name.length() - REFS_SUFFIX.length());
+                        Set<String> refs = this.readRefs(path);
+                        this.refsMap.put(sha, refs);
+                        for (String fileCode : refs) {
+                            this.fileCodeMap.put(fileCode, sha);
+                        }
+                        if (refs.isEmpty()) {
+                            this.garbageMap.put(sha, now);
+                        }
+                    }
+                    else if (!Files.exists(path.resolveSibling(name + REFS_SUFFIX))) {
+                        // 写入数据块后未能记录引用
+                        this.garbageMap.put(name, now);
+                    }
+                });
+            }
+        } catch (IOException e) {
+            Logger.e(this.getClass(), "#open", e);
+        }
+
+        Logger.i(this.getClass(), "Blob store opened: " + this.refsMap.size() + " blobs, "
+                + this.fileCodeMap.size() + " references");
+    }
+
+    /**
+     * 写入数据并以指定文件码引用。
+     *
+     * @param fileCode
+     * @param inputStream
+     * @return 返回文件码对应的文件路径，写入失败返回 {@code null} 值。
+     * @throws IOException
+     */
+    public Path write(String fileCode, InputStream inputStream) throws IOException {
+        Path temp = this.tempPath.resolve(fileCode + "_" + UUID.randomUUID().toString() + ".tmp");
+
+        MessageDigest digest = null;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+
+        try (FileOutputStream fos = new FileOutputStream(temp.toFile())) {
+            byte[] buf = new byte[64 * 1024];
+            int length = 0;
+            while ((length = inputStream.read(buf)) > 0) {
+                fos.write(buf, 0, length);
+                digest.update(buf, 0, length);
+            }
+            fos.flush();
+            fos.getFD().sync();
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+
+        String sha = FileUtils.bytesToHexString(digest.digest()).toLowerCase();
+        return this.commit(fileCode, sha, temp);
+    }
+
+    /**
+     * 写入文件并以指定文件码引用。
+     *
+     * @param fileCode
+     * @param file
+     * @return 返回文件码对应的文件路径，写入失败返回 {@code null} 值。
+     * @throws IOException
+     */
+    public Path write(String fileCode, File file) throws IOException {
+        try (FileInputStream fis = new FileInputStream(file)) {
+            return this.write(fileCode, fis);
+        }
+    }
+
+    private Path commit(String fileCode, String sha, Path temp) throws IOException {
+        Path blob = this.resolveBlob(sha);
+        Path target = this.filePath.resolve(fileCode);
+
+        // 解除文件码之前的引用
+        this.release(fileCode);
+
+        synchronized (this.lock(sha)) {
+            if (Files.exists(blob)) {
+                // 相同内容已存在
+                Files.delete(temp);
+            }
+            else {
+                Files.createDirectories(blob.getParent());
+                Files.move(temp, blob, StandardCopyOption.ATOMIC_MOVE);
+            }
+
+            // 先持久化引用，再建立链接
+            Set<String> refs = this.refsMap.computeIfAbsent(sha, (key) -> new HashSet<>());
+            synchronized (refs) {
+                refs.add(fileCode);
+                this.writeRefs(sha, refs);
+            }
+            this.fileCodeMap.put(fileCode, sha);
+            this.garbageMap.remove(sha);
+
+            Files.deleteIfExists(target);
+            try {
+                Files.createLink(target, blob);
+            } catch (IOException | UnsupportedOperationException e) {
+                // 文件系统不支持硬链接
+                Files.copy(blob, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+
+        return target;
+    }
+
+    /**
+     * 解除文件码对数据块的引用。
+     *
+     * @param fileCode
+     * @return 如果文件码引用了数据块返回 {@code true} 。
+     */
+    public boolean release(String fileCode) {
+        String sha = this.fileCodeMap.remove(fileCode);
+        if (null == sha) {
+            return false;
+        }
+
+        synchronized (this.lock(sha)) {
+            Set<String> refs = this.refsMap.get(sha);
+            if (null != refs) {
+                synchronized (refs) {
+                    refs.remove(fileCode);
+                    try {
+                        this.writeRefs(sha, refs);
+                    } catch (IOException e) {
+                        Logger.w(this.getClass(), "#release - " + sha, e);
+                    }
+
+                    if (refs.isEmpty()) {
+                        this.garbageMap.put(sha, System.currentTimeMillis());
+                    }
+                }
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * 获取文件码引用的数据块的散列码。
+     *
+     * @param fileCode
+     * @return
+     */
+    public String getBlobCode(String fileCode) {
+        return this.fileCodeMap.get(fileCode);
+    }
+
+    /**
+     * 获取数据块的引用计数。
+     *
+     * @param sha
+     * @return
+     */
+    public int countReferences(String sha) {
+        Set<String> refs = this.refsMap.get(sha);
+        if (null == refs) {
+            return 0;
+        }
+        synchronized (refs) {
+            return refs.size();
+        }
+    }
+
+    /**
+     * 回收无引用的数据块，同时移除文件码已不存在的引用。
+     *
+     * @param now
+     * @return 返回被回收的数据块数量。
+     */
+    public int sweep(long now) {
+        if (!this.sweeping.compareAndSet(false, true)) {
+            return 0;
+        }
+
+        int count = 0;
+        try {
+            // 校验引用
+            for (Map.Entry<String, String> e : this.fileCodeMap.entrySet()) {
+                if (!Files.exists(this.filePath.resolve(e.getKey()))) {
+                    this.release(e.getKey());
+                }
+            }
+
+            Iterator<Map.Entry<String, Long>> iter = this.garbageMap.entrySet().iterator();
+            while (iter.hasNext()) {
+                Map.Entry<String, Long> e = iter.next();
+                if (now - e.getValue() < this.graceTime) {
+                    continue;
+                }
+
+                String sha = e.getKey();
+                synchronized (this.lock(sha)) {
+                    Set<String> refs = this.refsMap.get(sha);
+                    if (null != refs && !refs.isEmpty()) {
+                        // 已被重新引用
+                        iter.remove();
+                        continue;
+                    }
+
+                    Path blob = this.resolveBlob(sha);
+                    try {
+                        Files.deleteIfExists(blob);
+                        Files.deleteIfExists(blob.resolveSibling(sha + REFS_SUFFIX));
+                        this.refsMap.remove(sha);
+                        iter.remove();
+                        ++count;
+                    } catch (IOException ioe) {
+                        Logger.w(this.getClass(), "#sweep - " + sha, ioe);
+                    }
+                }
+            }
+        } finally {
+            this.sweeping.set(false);
+        }
+
+        if (count > 0) {
+            Logger.i(this.getClass(), "#sweep - Collected " + count + " blobs");
+        }
+
+        return count;
+    }
+
+    private Path resolveBlob(String sha) {
+        return this.blobPath.resolve(sha.substring(0, 2)).resolve(sha.substring(2, 4)).resolve(sha);
+    }
+
+    private Object lock(String sha) {
+        return this.locks[(sha.hashCode() & 0x7FFFFFFF) % this.locks.length];
+    }
+
+    private Set<String> readRefs(Path path) {
+        Set<String> refs = new HashSet<>();
+        try {
+            for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+                line = line.trim();
+                if (line.length() > 0) {
+                    refs.add(line);
+                }
+            }
+        } catch (IOException e) {
+            Logger.w(this.getClass(), "#readRefs - " + path.toString(), e);
+        }
+        return refs;
+    }
+
+    private void writeRefs(String sha, Set<String> refs) throws IOException {
+        Path blob = this.resolveBlob(sha);
+        Path refsFile = blob.resolveSibling(sha + REFS_SUFFIX);
+        Path temp = this.tempPath.resolve(sha + REFS_SUFFIX + "." + UUID.randomUUID().toString());
+
+        try (FileOutputStream fos = new FileOutputStream(temp.toFile())) {
+            StringBuilder buf = new StringBuilder();
+            for (String fileCode : refs) {
+                buf.append(fileCode).append('\n');
+            }
+            fos.write(buf.toString().getBytes(StandardCharsets.UTF_8));
+            fos.getFD().sync();
+        }
+
+        Files.move(temp, refsFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+}
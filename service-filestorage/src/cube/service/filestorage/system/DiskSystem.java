@@ -56,6 +56,18 @@ public class DiskSystem implements FileSystem {
 
     private ReceiveFileHandler receiveFileHandler;
 
+    /**
+     * 去重数据块存储。
+     */
+    private BlobStore blobStore;
+
+    /**
+     * 数据块回收间隔。
+     */
+    private long sweepInterval = 30 * 60 * 1000;
+
+    private long lastSweep = 0;
+
     public DiskSystem(String managingPath, String host, int port) {
         this(managingPath, host, port, null, 0, 8, 2);
     }
@@ -87,10 +99,16 @@ public class DiskSystem implements FileSystem {
         this.url = "http://" + host + ":" + port + this.contextPath;
 
         this.writingFiles = new ArrayList<>();
+
+        Path absolutePath = this.managingPath.toAbsolutePath();
+        this.blobStore = new BlobStore(absolutePath,
+                absolutePath.resolveSibling(absolutePath.getFileName().toString() + "-blobs"));
     }
 
     @Override
     public void start() {
+        this.blobStore.open();
+
         this.httpServer = new HttpServer();
         this.httpServer.setThreads(this.maxThreads, this.minThreads);
 
@@ -180,10 +198,11 @@ public class DiskSystem implements FileSystem {
             }
         }
         else {
-            Path target = Paths.get(this.managingPath.toString(), fileCode);
+            Path target = null;
 
             try {
-                Files.copy(Paths.get(file.getPath()), target, StandardCopyOption.REPLACE_EXISTING);
+                // 写入数据块并建立引用
+                target = this.blobStore.write(fileCode, file);
                 size = Files.size(target);
             } catch (IOException e) {
                 Logger.e(this.getClass(), "#writeFile(String,File)", e);
@@ -231,32 +250,18 @@ public class DiskSystem implements FileSystem {
             size = this.diskCluster.saveFile(fileCode, inputStream);
         }
         else {
-            Path target = Paths.get(this.managingPath.toAbsolutePath().toString(), fileCode);
+            Path target = null;
 
-            FileOutputStream fos = null;
             try {
-                fos = new FileOutputStream(target.toFile());
-
-                byte[] buf = new byte[10240];
-                int length = 0;
-                while ((length = inputStream.read(buf)) > 0) {
-                    fos.write(buf, 0, length);
-                    size += length;
-                }
-                fos.flush();
+                // 写入数据块并建立引用
+                target = this.blobStore.write(fileCode, inputStream);
+                size = Files.size(target);
             } catch (IOException e) {
                 Logger.e(this.getClass(), "#writeFile(String,InputStream)", e);
                 synchronized (this.writingFiles) {
                     this.writingFiles.remove(fileCode);
                 }
                 return null;
-            } finally {
-                if (null != fos) {
-                    try {
-                        fos.close();
-                    } catch (IOException e) {
-                    }
-                }
             }
 
             if (null != this.diskCluster) {
@@ -293,7 +298,12 @@ public class DiskSystem implements FileSystem {
         Path file = Paths.get(this.managingPath.toString(), fileCode);
         try {
             // 从集群系统中删除
-            this.diskCluster.removeFile(fileCode);
+            if (null != this.diskCluster) {
+                this.diskCluster.removeFile(fileCode);
+            }
+
+            // 解除数据块引用
+            this.blobStore.release(fileCode);
 
             if (Files.exists(file)) {
                 Files.delete(file);
@@ -344,6 +354,29 @@ public class DiskSystem implements FileSystem {
         }
     }
 
+    /**
+     * 回收无引用的数据块。
+     *
+     * @param now
+     */
+    public void sweep(long now) {
+        if (now - this.lastSweep < this.sweepInterval) {
+            return;
+        }
+
+        this.lastSweep = now;
+        this.blobStore.sweep(now);
+    }
+
+    /**
+     * 获取数据块存储。
+     *
+     * @return
+     */
+    public BlobStore getBlobStore() {
+        return this.blobStore;
+    }
+
     /**
      * 传输 Handler 。
      */
@@ -379,6 +412,10 @@ public class DiskSystem implements FileSystem {
 
                 Path target = Paths.get(managingPath.toAbsolutePath().toString(), fileCode);
 
+                // 不覆盖共享的数据块内容
+                blobStore.release(fileCode);
+                Files.deleteIfExists(target);
+
                 long size = 0;
                 FileOutputStream fos = null;
                 try {
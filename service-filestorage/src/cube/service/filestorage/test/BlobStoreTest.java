@@ -0,0 +1,142 @@
+/*
+ * This source file is part of Cube.
+ *
+ * Copyright (c) 2023-2026 Ambrose Xu.
+ */
+
+package cube.service.filestorage.test;
+
+import cube.service.filestorage.system.BlobStore;
+import cube.util.Assert;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * 内容寻址数据块存储的崩溃一致性测试。
+ */
+public class BlobStoreTest {
+
+    private Path root;
+
+    private Path filePath;
+
+    private Path blobPath;
+
+    public BlobStoreTest() {
+    }
+
+    public void setup() throws IOException {
+        this.root = Files.createTempDirectory("cube-blob-test");
+        this.filePath = this.root.resolve("files");
+        this.blobPath = this.root.resolve("files-blobs");
+        Files.createDirectories(this.filePath);
+    }
+
+    public void teardown() throws IOException {
+        try (Stream<Path> stream = Files.walk(this.root)) {
+            stream.sorted(Comparator.reverseOrder()).forEach((path) -> path.toFile().delete());
+        }
+    }
+
+    /**
+     * 模拟写入过程中断，重新打开存储时清理临时文件。
+     */
+    public void testInterruptedWrite() throws IOException {
+        BlobStore store = new BlobStore(this.filePath, this.blobPath);
+        store.open();
+
+        Path leftover = this.blobPath.resolve("tmp").resolve("interrupted.tmp");
+        Files.write(leftover, "partial".getBytes(StandardCharsets.UTF_8));
+
+        store = new BlobStore(this.filePath, this.blobPath);
+        store.open();
+        Assert.equals("testInterruptedWrite", false, Files.exists(leftover));
+    }
+
+    /**
+     * 数据块已落盘但未记录引用，回收时删除。
+     */
+    public void testOrphanBlob() throws IOException {
+        String sha = "00ff" + "0123456789abcdef0123456789abcdef0123456789abcdef0123456789ab";
+        Path orphan = this.blobPath.resolve("00").resolve("ff").resolve(sha);
+        Files.createDirectories(orphan.getParent());
+        Files.write(orphan, "orphan".getBytes(StandardCharsets.UTF_8));
+
+        BlobStore store = new BlobStore(this.filePath, this.blobPath);
+        store.setGraceTime(0);
+        store.open();
+        store.sweep(System.currentTimeMillis());
+        Assert.equals("testOrphanBlob", false, Files.exists(orphan));
+    }
+
+    /**
+     * 多线程写入相同内容，只保留一个数据块。
+     */
+    public void testConcurrentWrite() throws Exception {
+        BlobStore store = new BlobStore(this.filePath, this.blobPath);
+        store.setGraceTime(0);
+        store.open();
+
+        final byte[] content = "Cube blob store content".getBytes(StandardCharsets.UTF_8);
+        final int num = 16;
+        final CountDownLatch latch = new CountDownLatch(num);
+        final AtomicInteger failed = new AtomicInteger(0);
+        for (int i = 0; i < num; ++i) {
+            final String fileCode = "file" + i;
+            (new Thread(() -> {
+                try {
+                    store.write(fileCode, new ByteArrayInputStream(content));
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    failed.incrementAndGet();
+                } finally {
+                    latch.countDown();
+                }
+            })).start();
+        }
+        latch.await();
+
+        Assert.equals("testConcurrentWrite", 0, failed.get());
+
+        String sha = store.getBlobCode("file0");
+        Assert.equals("testConcurrentWrite", num, store.countReferences(sha));
+        for (int i = 1; i < num; ++i) {
+            Assert.equals("testConcurrentWrite", true, sha.equals(store.getBlobCode("file" + i)));
+            Assert.equals("testConcurrentWrite", true,
+                    Files.size(this.filePath.resolve("file" + i)) == content.length);
+        }
+
+        // 重新加载引用
+        BlobStore reopened = new BlobStore(this.filePath, this.blobPath);
+        reopened.open();
+        Assert.equals("testConcurrentWrite (reopen)", num, reopened.countReferences(sha));
+
+        // 删除全部文件后回收
+        for (int i = 0; i < num; ++i) {
+            Files.delete(this.filePath.resolve("file" + i));
+        }
+        Assert.equals("testConcurrentWrite (sweep)", 1, store.sweep(System.currentTimeMillis() + 1000));
+        Assert.equals("testConcurrentWrite (sweep)", 0, store.countReferences(sha));
+    }
+
+    public static void main(String[] args) {
+        BlobStoreTest test = new BlobStoreTest();
+        try {
+            test.setup();
+            test.testInterruptedWrite();
+            test.testOrphanBlob();
+            test.testConcurrentWrite();
+            test.teardown();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+}
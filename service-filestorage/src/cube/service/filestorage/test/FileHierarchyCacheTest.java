@@ -0,0 +1,434 @@
+/*
+ * This source file is part of Cube.
+ *
+ * Copyright (c) 2023-2026 Ambrose Xu.
+ */
+
+package cube.service.filestorage.test;
+
+import cell.util.CachedQueueExecutor;
+import cube.auth.AuthConsts;
+import cube.common.UniqueKey;
+import cube.common.entity.FileLabel;
+import cube.common.entity.HierarchyNode;
+import cube.common.entity.HierarchyNodes;
+import cube.core.CacheKey;
+import cube.core.CacheValue;
+import cube.service.filestorage.ServiceStorage;
+import cube.service.filestorage.hierarchy.*;
+import cube.storage.StorageType;
+import cube.util.Assert;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 层级节点缓存测试。
+ */
+public class FileHierarchyCacheTest {
+
+    private ExecutorService executor;
+
+    private MemoryStorage storage;
+
+    private File journalPath = new File("storage/test-hierarchy-journal");
+
+    private long rootId = 50001001L;
+
+    private Map<String, FileLabel> fileLabels = new ConcurrentHashMap<>();
+
+    public FileHierarchyCacheTest() {
+        this.executor = CachedQueueExecutor.newCachedQueueThreadPool(2);
+    }
+
+    public void setup() {
+        this.storage = new MemoryStorage(this.executor);
+        this.clearJournal();
+    }
+
+    public void teardown() {
+        this.clearJournal();
+        this.executor.shutdown();
+    }
+
+    private void clearJournal() {
+        File[] files = this.journalPath.listFiles();
+        if (null != files) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    private FileHierarchyCache newCache(int maxNodes) {
+        // 不启动定时刷写，由测试控制刷写时机
+        return new FileHierarchyCache(this.storage, this.journalPath, maxNodes, Integer.MAX_VALUE, 60L * 60 * 1000);
+    }
+
+    private JSONObject makeNode(long id, long size) {
+        HierarchyNode node = new HierarchyNode(id, AuthConsts.DEFAULT_DOMAIN);
+        node.getContext().put("root", this.rootId);
+        node.getContext().put("lastModified", System.currentTimeMillis());
+        node.getContext().put("size", size);
+        return node.toJSON();
+    }
+
+    private CacheKey key(long id) {
+        return new CacheKey(UniqueKey.make(id, AuthConsts.DEFAULT_DOMAIN));
+    }
+
+    /**
+     * 多次更新合并为一次写入。
+     */
+    public void testCoalescing() {
+        this.storage.reset();
+        FileHierarchyCache cache = this.newCache(1000);
+
+        for (int i = 0; i < 1000; ++i) {
+            cache.put(this.key(1L), new CacheValue(this.makeNode(1L, i)));
+            cache.put(this.key(2L), new CacheValue(this.makeNode(2L, i * 2)));
+        }
+        Assert.equals("testCoalescing (no write before flush)", 0, this.storage.writes.get());
+        Assert.equals("testCoalescing (read from memory)", 999,
+                cache.get(this.key(1L)).get().getJSONObject("context").getInt("size"));
+
+        Assert.equals("testCoalescing (flush)", true, cache.flush());
+        Assert.equals("testCoalescing (writes)", 2, this.storage.writes.get());
+        Assert.equals("testCoalescing (stored)", 1998,
+                this.storage.read(2L).getJSONObject("context").getInt("size"));
+
+        // 删除
+        cache.remove(this.key(2L));
+        Assert.equals("testCoalescing (removed)", true, null == cache.get(this.key(2L)));
+        cache.stop();
+        Assert.equals("testCoalescing (deleted)", true, null == this.storage.read(2L));
+        Assert.equals("testCoalescing (journal truncated)", 0, this.numJournalFiles());
+    }
+
+    /**
+     * 内存层节点数量有上限。
+     */
+    public void testBoundedMemory() {
+        this.storage.reset();
+        FileHierarchyCache cache = this.newCache(100);
+
+        for (long id = 1; id <= 1000; ++id) {
+            cache.put(this.key(id), new CacheValue(this.makeNode(id, id)));
+        }
+        // 脏节点超过上限时触发刷写
+        Assert.equals("testBoundedMemory (size-triggered flush)", true, this.storage.writes.get() >= 900);
+        Assert.equals("testBoundedMemory (bounded)", true, cache.numNodes() <= 100);
+
+        cache.flush();
+        Assert.equals("testBoundedMemory (flushed)", 0, cache.numDirtyNodes());
+
+        // 淘汰的节点从数据库读取
+        for (long id = 1; id <= 1000; ++id) {
+            CacheValue value = cache.get(this.key(id));
+            Assert.equals("testBoundedMemory (read " + id + ")", (int) id,
+                    value.get().getJSONObject("context").getInt("size"));
+        }
+        Assert.equals("testBoundedMemory (bounded after read)", true, cache.numNodes() <= 100);
+        cache.stop();
+    }
+
+    /**
+     * 未刷写时崩溃，已确认的更新不丢失。
+     */
+    public void testCrashBeforeFlush() throws IOException {
+        this.storage.reset();
+        FileHierarchyCache cache = this.newCache(1000);
+
+        Map<Long, Integer> expected = new HashMap<>();
+        Random random = new Random(38);
+        for (int i = 0; i < 5000; ++i) {
+            long id = 1 + random.nextInt(500);
+            if (random.nextInt(10) == 0) {
+                cache.remove(this.key(id));
+                expected.remove(id);
+            }
+            else {
+                cache.put(this.key(id), new CacheValue(this.makeNode(id, i)));
+                expected.put(id, i);
+            }
+        }
+
+        // 模拟崩溃：直接丢弃缓存，并写入一条不完整的记录
+        cache = null;
+        this.appendBrokenRecord();
+
+        FileHierarchyCache recovered = this.newCache(1000);
+        this.assertStored("testCrashBeforeFlush", expected);
+        this.assertCached("testCrashBeforeFlush", recovered, expected);
+        Assert.equals("testCrashBeforeFlush (journal truncated)", 0, this.numJournalFiles());
+        recovered.stop();
+    }
+
+    /**
+     * 刷写过程中崩溃，已确认的更新不丢失。
+     */
+    public void testCrashDuringFlush() {
+        this.storage.reset();
+        FileHierarchyCache cache = this.newCache(1000);
+
+        Map<Long, Integer> expected = new HashMap<>();
+        for (long id = 1; id <= 300; ++id) {
+            cache.put(this.key(id), new CacheValue(this.makeNode(id, (int) id)));
+            expected.put(id, (int) id);
+        }
+        cache.flush();
+
+        for (long id = 1; id <= 300; ++id) {
+            cache.put(this.key(id), new CacheValue(this.makeNode(id, (int) id + 1000)));
+            expected.put(id, (int) id + 1000);
+        }
+
+        // 数据库写入 100 个节点后失败
+        this.storage.failAfter(100);
+        Assert.equals("testCrashDuringFlush (flush failed)", false, cache.flush());
+        Assert.equals("testCrashDuringFlush (remain dirty)", 200, cache.numDirtyNodes());
+
+        // 失败后继续写入
+        for (long id = 301; id <= 400; ++id) {
+            cache.put(this.key(id), new CacheValue(this.makeNode(id, (int) id)));
+            expected.put(id, (int) id);
+        }
+
+        // 模拟崩溃
+        cache = null;
+        this.storage.failAfter(-1);
+
+        FileHierarchyCache recovered = this.newCache(1000);
+        this.assertStored("testCrashDuringFlush", expected);
+        this.assertCached("testCrashDuringFlush", recovered, expected);
+        recovered.stop();
+    }
+
+    /**
+     * 文件层级在崩溃后恢复目录大小。
+     */
+    public void testFileHierarchyRecovery() {
+        this.storage.reset();
+        FileHierarchyCache cache = this.newCache(10000);
+
+        HierarchyNode rootNode = new HierarchyNode(this.rootId, AuthConsts.DEFAULT_DOMAIN);
+        FileHierarchy fileHierarchy = new FileHierarchy(cache, rootNode, new Listener());
+        HierarchyNodes.save(cache, rootNode);
+
+        Directory root = fileHierarchy.getRoot();
+        List<Directory> directories = new ArrayList<>();
+        for (int i = 0; i < 10; ++i) {
+            Directory dir = root.createDirectory("目录-" + i);
+            directories.add(dir);
+            for (int j = 0; j < 5; ++j) {
+                directories.add(dir.createDirectory("子目录-" + i + "-" + j));
+            }
+        }
+        cache.flush();
+        int flushed = this.storage.writes.get();
+
+        Map<Long, Long> expectedSize = new HashMap<>();
+        Map<Long, Integer> expectedFiles = new HashMap<>();
+        Random random = new Random(2026);
+        for (int i = 0; i < 2000; ++i) {
+            Directory dir = directories.get(random.nextInt(directories.size()));
+            long size = 1 + random.nextInt(1024 * 1024);
+            FileLabel fileLabel = new FileLabel(AuthConsts.DEFAULT_DOMAIN, String.format("FC%06d", i),
+                    this.rootId, "file-" + i + ".txt", size, System.currentTimeMillis(),
+                    System.currentTimeMillis(), 0);
+            this.fileLabels.put(fileLabel.getFileCode(), fileLabel);
+            dir.addFile(fileLabel);
+            expectedSize.merge(dir.getId(), size, Long::sum);
+            expectedFiles.merge(dir.getId(), 1, Integer::sum);
+        }
+        Assert.equals("testFileHierarchyRecovery (no write)", flushed, this.storage.writes.get());
+
+        // 模拟崩溃
+        cache = null;
+        fileHierarchy = null;
+
+        FileHierarchyCache recovered = this.newCache(10000);
+        Assert.equals("testFileHierarchyRecovery (coalesced)", true,
+                this.storage.writes.get() - flushed <= directories.size());
+
+        for (Directory dir : directories) {
+            HierarchyNode node = HierarchyNodes.load(recovered,
+                    UniqueKey.make(dir.getId(), AuthConsts.DEFAULT_DOMAIN));
+            long size = expectedSize.getOrDefault(dir.getId(), 0L);
+            Assert.equals("testFileHierarchyRecovery (size)", true,
+                    size == node.getContext().getLong("fileSize"));
+            Assert.equals("testFileHierarchyRecovery (files)",
+                    expectedFiles.getOrDefault(dir.getId(), 0).intValue(), node.getRelatedKeys().size());
+        }
+        recovered.stop();
+    }
+
+    /**
+     * 与直写数据库的写入次数对比。
+     */
+    public void benchmark() {
+        this.storage.reset();
+        FileHierarchyCache cache = this.newCache(10000);
+
+        int loop = 20000;
+        long start = System.nanoTime();
+        for (int i = 0; i < loop; ++i) {
+            // 模拟逐级更新父目录容量
+            for (long id = 1; id <= 5; ++id) {
+                cache.put(this.key(id), new CacheValue(this.makeNode(id, i)));
+            }
+        }
+        long elapsed = (System.nanoTime() - start) / 1000000;
+        cache.flush();
+
+        System.out.println("Hierarchy node updates: " + (loop * 5) + " puts in " + elapsed
+                + " ms, database writes: " + this.storage.writes.get() + " (write-through: " + (loop * 5) + ")");
+        cache.stop();
+    }
+
+    private void assertStored(String tag, Map<Long, Integer> expected) {
+        for (long id = 1; id <= 500; ++id) {
+            JSONObject json = this.storage.read(id);
+            Integer size = expected.get(id);
+            if (null == size) {
+                Assert.equals(tag + " (stored deleted " + id + ")", true, null == json);
+            }
+            else {
+                Assert.equals(tag + " (stored " + id + ")", size.intValue(),
+                        json.getJSONObject("context").getInt("size"));
+            }
+        }
+    }
+
+    private void assertCached(String tag, FileHierarchyCache cache, Map<Long, Integer> expected) {
+        for (Map.Entry<Long, Integer> e : expected.entrySet()) {
+            CacheValue value = cache.get(this.key(e.getKey()));
+            Assert.equals(tag + " (cached " + e.getKey() + ")", e.getValue().intValue(),
+                    value.get().getJSONObject("context").getInt("size"));
+        }
+    }
+
+    private void appendBrokenRecord() throws IOException {
+        File[] files = this.journalPath.listFiles();
+        Arrays.sort(files);
+        try (FileOutputStream fos = new FileOutputStream(files[files.length - 1], true)) {
+            fos.write("{\"k\":\"1_shixincube.com\",\"v\":\"{\\\"id\\\"".getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private int numJournalFiles() {
+        File[] files = this.journalPath.listFiles();
+        return (null == files) ? 0 : files.length;
+    }
+
+    public static void main(String[] args) {
+        FileHierarchyCacheTest test = new FileHierarchyCacheTest();
+        test.setup();
+        try {
+            test.testCoalescing();
+            test.testBoundedMemory();
+            test.testCrashBeforeFlush();
+            test.testCrashDuringFlush();
+            test.testFileHierarchyRecovery();
+            test.benchmark();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        test.teardown();
+    }
+
+    /**
+     * 使用内存模拟数据库的存储。
+     */
+    private class MemoryStorage extends ServiceStorage {
+
+        private Map<String, String> data = new ConcurrentHashMap<>();
+
+        private AtomicInteger writes = new AtomicInteger(0);
+
+        private int failAfter = -1;
+
+        public MemoryStorage(ExecutorService executor) {
+            super(executor, StorageType.SQLite, new JSONObject().put("file", "storage/test-hierarchy.db"));
+        }
+
+        public void reset() {
+            this.data.clear();
+            this.writes.set(0);
+            this.failAfter = -1;
+        }
+
+        public void failAfter(int num) {
+            this.failAfter = num;
+        }
+
+        public JSONObject read(long nodeId) {
+            return this.readHierarchyNode(AuthConsts.DEFAULT_DOMAIN, nodeId);
+        }
+
+        private boolean count() {
+            if (this.failAfter == 0) {
+                return false;
+            }
+            if (this.failAfter > 0) {
+                --this.failAfter;
+            }
+            this.writes.incrementAndGet();
+            return true;
+        }
+
+        @Override
+        public boolean writeHierarchyNode(String domain, long nodeId, JSONObject json) {
+            if (!this.count()) {
+                throw new RuntimeException("Database unavailable");
+            }
+            this.data.put(UniqueKey.make(nodeId, domain), json.toString());
+            return true;
+        }
+
+        @Override
+        public JSONObject readHierarchyNode(String domain, long nodeId) {
+            String value = this.data.get(UniqueKey.make(nodeId, domain));
+            return (null == value) ? null : new JSONObject(value);
+        }
+
+        @Override
+        public boolean deleteHierarchyNode(String domain, long nodeId) {
+            if (!this.count()) {
+                return false;
+            }
+            this.data.remove(UniqueKey.make(nodeId, domain));
+            return true;
+        }
+    }
+
+    /**
+     * 文件层级监听器。
+     */
+    private class Listener implements FileHierarchyListener {
+
+        @Override
+        public void onDirectoryRemove(FileHierarchy fileHierarchy, List<Directory> directories) {
+        }
+
+        @Override
+        public void onFileLabelAdd(FileHierarchy fileHierarchy, Directory directory, FileLabel fileLabel) {
+        }
+
+        @Override
+        public void onFileLabelRemove(FileHierarchy fileHierarchy, Directory directory, List<FileLabel> fileLabels) {
+        }
+
+        @Override
+        public FileLabel onQueryFileLabel(FileHierarchy fileHierarchy, Directory directory, String fileCode) {
+            return fileLabels.get(fileCode);
+        }
+    }
+}
@@ -143,6 +143,8 @@ public class FileHierarchyTest {
     public void teardown() {
         Logger.i(getClass(), "teardown");
 
+        this.manager.stop();
+
         this.serviceStorage.close();
 
         this.executor.shutdown();
@@ -0,0 +1,296 @@
+/*
+ * This source file is part of Cube.
+ *
+ * Copyright (c) 2023-2026 Ambrose Xu.
+ */
+
+package cube.service.filestorage.test;
+
+import cube.auth.AuthConsts;
+import cube.common.entity.FileLabel;
+import cube.common.entity.HierarchyNode;
+import cube.core.*;
+import cube.service.filestorage.hierarchy.*;
+import cube.util.Assert;
+import cube.util.FileType;
+import cube.util.FileUtils;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 文件检索索引测试。
+ */
+public class FileSearcherTest {
+
+    private final static String[] WORDS = new String[] {
+            "项目报告", "会议纪要", "财务报表", "产品设计", "年度总结", "季度计划", "合同", "照片",
+            "Report", "Design", "Budget", "meeting", "summary", "photo", "invoice", "Roadmap"
+    };
+
+    private final static String[] EXTENSIONS = new String[] {
+            "jpg", "png", "pdf", "docx", "xlsx", "pptx", "txt", "mp4", "mp3", "zip", "dat"
+    };
+
+    private int numFiles = 100000;
+
+    private Random random = new Random(20260101L);
+
+    private Map<String, FileLabel> fileLabels = new ConcurrentHashMap<>();
+
+    private FileHierarchy fileHierarchy;
+
+    private List<Directory> directories = new ArrayList<>();
+
+    private List<JSONObject> filters = new ArrayList<>();
+
+    private long baseTime = System.currentTimeMillis() - 365L * 24 * 60 * 60 * 1000;
+
+    private int fileSerial = 0;
+
+    public FileSearcherTest() {
+    }
+
+    public void setup() {
+        HierarchyNode rootNode = new HierarchyNode(50001001L, AuthConsts.DEFAULT_DOMAIN);
+        this.fileHierarchy = new FileHierarchy(new MemoryCache(), rootNode, new Listener());
+
+        Directory root = this.fileHierarchy.getRoot();
+        this.directories.add(root);
+
+        // 创建三级目录
+        for (int i = 0; i < 10; ++i) {
+            Directory first = root.createDirectory(WORDS[i % WORDS.length] + "-" + i);
+            this.directories.add(first);
+            for (int j = 0; j < 10; ++j) {
+                Directory second = first.createDirectory("资料" + i + "-" + j);
+                this.directories.add(second);
+                for (int k = 0; k < 10; ++k) {
+                    Directory third = second.createDirectory(WORDS[(i + j + k) % WORDS.length] + "-" + j + k);
+                    this.directories.add(third);
+                }
+            }
+        }
+
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < this.numFiles; ++i) {
+            Directory directory = this.directories.get(this.random.nextInt(this.directories.size()));
+            directory.addFile(this.makeFileLabel());
+        }
+        System.out.println("Setup " + this.numFiles + " files in " + this.directories.size() + " directories: "
+                + (System.currentTimeMillis() - start) + " ms");
+
+        // 隐藏目录
+        this.directories.get(1).setHidden(true);
+
+        this.filters.add(this.makeFilter(0, 19, new String[] { "报告" }, null));
+        this.filters.add(this.makeFilter(0, 49, new String[] { "design", "纪要" }, null));
+        this.filters.add(this.makeFilter(100, 149, new String[] { "report" }, null));
+        this.filters.add(this.makeFilter(0, 19, new String[] { "报" }, null));
+        this.filters.add(this.makeFilter(0, 19, new String[] { "资料3" }, null));
+        this.filters.add(this.makeFilter(0, 29, null, new String[] { "jpg", "png" }));
+        this.filters.add(this.makeFilter(500, 519, null, new String[] { "pdf" }));
+        this.filters.add(this.makeFilter(0, 19, new String[] { "合同" }, new String[] { "docx", "xlsx" }));
+        this.filters.add(this.makeFilter(0, 19, new String[] { "-1234" }, null));
+        this.filters.add(this.makeFilter(0, 19, new String[] { "不存在的名字" }, null));
+        this.filters.add(this.makeFilter(0, 19, null, null));
+    }
+
+    private FileLabel makeFileLabel() {
+        int serial = this.fileSerial++;
+        String extension = EXTENSIONS[this.random.nextInt(EXTENSIONS.length)];
+        String name = WORDS[this.random.nextInt(WORDS.length)] + "-" + WORDS[this.random.nextInt(WORDS.length)]
+                + "-" + serial + "." + extension;
+        // 部分文件使用相同的修改时间
+        long lastModified = this.baseTime + this.random.nextInt(this.numFiles / 2) * 1000L;
+
+        String fileCode = String.format("FC%08d", serial);
+        FileLabel fileLabel = new FileLabel(AuthConsts.DEFAULT_DOMAIN, fileCode, 50001001L, name,
+                this.random.nextInt(1024 * 1024), lastModified, lastModified, 0);
+        fileLabel.setFileType(FileType.matchExtension(FileUtils.extractFileExtension(name)));
+        this.fileLabels.put(fileCode, fileLabel);
+        return fileLabel;
+    }
+
+    private JSONObject makeFilter(int begin, int end, String[] keywords, String[] types) {
+        JSONObject json = new JSONObject();
+        json.put("begin", begin);
+        json.put("end", end);
+        if (null != keywords) {
+            json.put("nameKeywords", new JSONArray(keywords));
+        }
+        if (null != types) {
+            json.put("types", new JSONArray(types));
+        }
+        return json;
+    }
+
+    private List<String> keys(List<FileSearcher.IndexingItem> list) {
+        List<String> keys = new ArrayList<>(list.size());
+        for (FileSearcher.IndexingItem item : list) {
+            keys.add(item.getKey());
+        }
+        return keys;
+    }
+
+    private void assertSame(String tag) {
+        FileSearcher searcher = this.fileHierarchy.getFileSearcher();
+        for (JSONObject json : this.filters) {
+            List<String> expected = this.keys(searcher.scan(new SearchFilter(json)));
+            List<String> actual = this.keys(searcher.search(new SearchFilter(json)));
+            Assert.equals(tag + " " + json.toString(), true, expected.equals(actual));
+        }
+    }
+
+    /**
+     * 索引结果与遍历结果一致。
+     */
+    public void testConsistency() {
+        this.assertSame("testConsistency");
+
+        // 结果非空
+        FileSearcher searcher = this.fileHierarchy.getFileSearcher();
+        Assert.equals("testConsistency (page size)", 20,
+                searcher.search(new SearchFilter(this.filters.get(0))).size());
+    }
+
+    /**
+     * 增量更新索引。
+     */
+    public void testIncremental() {
+        // 添加文件
+        for (int i = 0; i < 1000; ++i) {
+            Directory directory = this.directories.get(this.random.nextInt(this.directories.size()));
+            directory.addFile(this.makeFileLabel());
+        }
+        this.assertSame("testIncremental (add)");
+
+        // 删除文件
+        for (int i = 0; i < 200; ++i) {
+            Directory directory = this.directories.get(this.random.nextInt(this.directories.size()));
+            List<FileLabel> list = directory.listFiles(0, directory.numFiles());
+            if (!list.isEmpty()) {
+                directory.removeFile(list.get(this.random.nextInt(list.size())));
+            }
+        }
+        this.assertSame("testIncremental (remove)");
+
+        // 重命名目录
+        this.directories.get(2).renameDirectory("新的项目报告目录");
+        this.directories.get(3).renameDirectory("Design Review");
+        this.assertSame("testIncremental (rename)");
+
+        // 取消隐藏
+        this.directories.get(1).setHidden(false);
+        this.assertSame("testIncremental (unhide)");
+
+        // 删除目录
+        Directory parent = this.directories.get(2);
+        Directory child = parent.getDirectories().get(0);
+        parent.deleteDirectory(child, true);
+        this.fileHierarchy.getRoot().deleteDirectory(this.directories.get(1), true);
+        this.assertSame("testIncremental (delete directory)");
+    }
+
+    /**
+     * 检索耗时对比。
+     */
+    public void benchmark() {
+        FileSearcher searcher = this.fileHierarchy.getFileSearcher();
+        int loop = 20;
+
+        System.out.println("Search latency (" + this.fileLabels.size() + " files):");
+        for (JSONObject json : this.filters) {
+            long start = System.nanoTime();
+            for (int i = 0; i < loop; ++i) {
+                searcher.scan(new SearchFilter(json));
+            }
+            long scan = (System.nanoTime() - start) / loop / 1000;
+
+            start = System.nanoTime();
+            for (int i = 0; i < loop; ++i) {
+                searcher.search(new SearchFilter(json));
+            }
+            long index = (System.nanoTime() - start) / loop / 1000;
+
+            System.out.println("  " + json.toString() + "\n      walk: " + scan + " us, index: " + index + " us");
+        }
+    }
+
+    public static void main(String[] args) {
+        FileSearcherTest test = new FileSearcherTest();
+        test.setup();
+        test.testConsistency();
+        test.testIncremental();
+        test.benchmark();
+    }
+
+    /**
+     * 内存缓存。
+     */
+    private class MemoryCache extends AbstractCache {
+
+        private Map<String, CacheValue> data = new ConcurrentHashMap<>();
+
+        public MemoryCache() {
+            super("MemoryCache", "Memory");
+        }
+
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public void stop() {
+        }
+
+        @Override
+        public void put(CacheKey key, CacheValue value) {
+            this.data.put(key.get(), value);
+        }
+
+        @Override
+        public CacheValue get(CacheKey key) {
+            return this.data.get(key.get());
+        }
+
+        @Override
+        public CacheValue get(CacheExpression expression) {
+            return null;
+        }
+
+        @Override
+        public void remove(CacheKey key) {
+            this.data.remove(key.get());
+        }
+
+        @Override
+        public void execute(CacheKey key, CacheTransaction transaction) {
+        }
+    }
+
+    /**
+     * 文件层级监听器。
+     */
+    private class Listener implements FileHierarchyListener {
+
+        @Override
+        public void onDirectoryRemove(FileHierarchy fileHierarchy, List<Directory> directories) {
+        }
+
+        @Override
+        public void onFileLabelAdd(FileHierarchy fileHierarchy, Directory directory, FileLabel fileLabel) {
+        }
+
+        @Override
+        public void onFileLabelRemove(FileHierarchy fileHierarchy, Directory directory, List<FileLabel> fileLabels) {
+        }
+
+        @Override
+        public FileLabel onQueryFileLabel(FileHierarchy fileHierarchy, Directory directory, String fileCode) {
+            return fileLabels.get(fileCode);
+        }
+    }
+}
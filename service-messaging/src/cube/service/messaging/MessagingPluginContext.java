@@ -31,6 +31,11 @@ public class MessagingPluginContext extends PluginContext {
         this.message = message;
         this.device = device;
         this.stateCode = MessagingStateCode.Ok;
+
+        // 同一域的消息按顺序执行有序插件
+        if (null != message && null != message.getDomain()) {
+            this.setOrderKey(message.getDomain().getName());
+        }
     }
 
     public Message getMessage() {
@@ -7,7 +7,6 @@
 package cube.service.messaging;
 
 import cell.core.talk.LiteralBase;
-import cell.util.Base64;
 import cell.util.log.Logger;
 import cube.common.Storagable;
 import cube.common.entity.*;
@@ -23,12 +22,6 @@ import cube.util.SQLUtils;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import javax.crypto.*;
-import javax.crypto.spec.SecretKeySpec;
-import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.security.InvalidKeyException;
-import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -999,66 +992,10 @@ public class MessagingStorage implements Storagable {
     }
 
     private String encrypt(long timestamp, String plaintext) {
-        String ciphertext = null;
-
-        byte[] keys = CipherMachine.getInstance().getCipher(timestamp);
-        try {
-            // 创建 Key
-            SecretKey secretKey = new SecretKeySpec(keys, "AES");
-
-            // AES 加密
-            Cipher cipher = Cipher.getInstance("AES/ECB/PKCS5Padding");
-            cipher.init(Cipher.ENCRYPT_MODE, secretKey);
-            byte[] result = cipher.doFinal(plaintext.getBytes(StandardCharsets.UTF_8));
-
-            // Base64 编码
-            ciphertext = Base64.encodeBytes(result);
-        } catch (NoSuchAlgorithmException e) {
-            e.printStackTrace();
-        } catch (NoSuchPaddingException e) {
-            e.printStackTrace();
-        } catch (InvalidKeyException e) {
-            e.printStackTrace();
-        } catch (BadPaddingException e) {
-            e.printStackTrace();
-        } catch (IllegalBlockSizeException e) {
-            e.printStackTrace();
-        }
-
-        return ciphertext;
+        return CipherMachine.getInstance().seal(timestamp, plaintext);
     }
 
     private String decrypt(long timestamp, String ciphertext) {
-        String plaintext = null;
-
-        byte[] keys = CipherMachine.getInstance().getCipher(timestamp);
-        try {
-            // 创建 Key
-            SecretKey secretKey = new SecretKeySpec(keys, "AES");
-
-            // Base64 解码
-            byte[] bytes = Base64.decode(ciphertext.getBytes(StandardCharsets.UTF_8));
-
-            // AES 解密
-            Cipher cipher = Cipher.getInstance("AES/ECB/PKCS5Padding");
-            cipher.init(Cipher.DECRYPT_MODE, secretKey);
-            byte[] result = cipher.doFinal(bytes);
-
-            plaintext = new String(result, StandardCharsets.UTF_8);
-        } catch (IOException e) {
-            plaintext = ciphertext;
-        } catch (NoSuchAlgorithmException e) {
-            e.printStackTrace();
-        } catch (InvalidKeyException e) {
-            e.printStackTrace();
-        } catch (NoSuchPaddingException e) {
-            e.printStackTrace();
-        } catch (BadPaddingException e) {
-            e.printStackTrace();
-        } catch (IllegalBlockSizeException e) {
-            e.printStackTrace();
-        }
-
-        return plaintext;
+        return CipherMachine.getInstance().open(timestamp, ciphertext);
     }
 }
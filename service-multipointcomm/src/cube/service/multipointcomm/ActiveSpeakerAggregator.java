@@ -0,0 +1,182 @@
+/*
+ * This source file is part of Cube.
+ *
+ * Copyright (c) 2023-2026 Ambrose Xu.
+ */
+
+package cube.service.multipointcomm;
+
+import cube.common.entity.CommField;
+import cube.common.entity.CommFieldEndpoint;
+import cube.service.multipointcomm.event.ActiveSpeakers;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 场域音量聚合器。
+ * 在时间窗口内收集终端的麦克风音量采样，窗口结束时计算出音量最大的若干发言者，
+ * 每个场域每个窗口只向终端发送一次批量更新。
+ */
+public class ActiveSpeakerAggregator {
+
+    /**
+     * 聚合窗口时长，单位：毫秒。
+     */
+    private long window;
+
+    /**
+     * 活跃发言者数量。
+     */
+    private int topN;
+
+    /**
+     * 场域对应的采样窗口。
+     */
+    private ConcurrentHashMap<Long, FieldWindow> fieldWindows;
+
+    private Listener listener;
+
+    public ActiveSpeakerAggregator(long window, int topN, Listener listener) {
+        this.window = window;
+        this.topN = topN;
+        this.listener = listener;
+        this.fieldWindows = new ConcurrentHashMap<>();
+    }
+
+    public long getWindow() {
+        return this.window;
+    }
+
+    public int getTopN() {
+        return this.topN;
+    }
+
+    /**
+     * 记录终端的音量采样。
+     *
+     * @param commField
+     * @param endpoint
+     * @param volume
+     */
+    public void record(CommField commField, CommFieldEndpoint endpoint, int volume) {
+        FieldWindow fieldWindow = this.fieldWindows.computeIfAbsent(commField.getId(),
+                (key) -> new FieldWindow(commField));
+        fieldWindow.record(endpoint, volume);
+    }
+
+    /**
+     * 移除场域的采样数据。
+     *
+     * @param commFieldId
+     */
+    public void remove(Long commFieldId) {
+        this.fieldWindows.remove(commFieldId);
+    }
+
+    /**
+     * 结束当前窗口，对有采样的场域进行计算并回调。
+     *
+     * @param now
+     * @return 返回产生更新的场域数量。
+     */
+    public int flush(long now) {
+        int count = 0;
+        for (FieldWindow fieldWindow : this.fieldWindows.values()) {
+            Map<Long, Sample> samples = fieldWindow.drain();
+            if (samples.isEmpty()) {
+                continue;
+            }
+
+            List<Sample> list = new ArrayList<>(samples.values());
+            // 按平均音量降序排列
+            list.sort((a, b) -> Integer.compare(b.average(), a.average()));
+
+            ActiveSpeakers activeSpeakers = new ActiveSpeakers(fieldWindow.commField, this.window, now);
+            for (int i = 0; i < list.size(); ++i) {
+                Sample sample = list.get(i);
+                int volume = sample.average();
+                if (i < this.topN && volume > 0) {
+                    activeSpeakers.addSpeaker(sample.endpoint, volume);
+                }
+                activeSpeakers.addVolume(sample.endpoint, volume);
+            }
+
+            this.listener.onActiveSpeakers(fieldWindow.commField, activeSpeakers);
+            ++count;
+        }
+        return count;
+    }
+
+    /**
+     * 场域的采样窗口。
+     */
+    private class FieldWindow {
+
+        protected final CommField commField;
+
+        protected Map<Long, Sample> samples;
+
+        protected FieldWindow(CommField commField) {
+            this.commField = commField;
+            this.samples = new HashMap<>();
+        }
+
+        protected synchronized void record(CommFieldEndpoint endpoint, int volume) {
+            Sample sample = this.samples.get(endpoint.getId());
+            if (null == sample) {
+                sample = new Sample(endpoint);
+                this.samples.put(endpoint.getId(), sample);
+            }
+            sample.sum += volume;
+            sample.count += 1;
+        }
+
+        protected synchronized Map<Long, Sample> drain() {
+            if (this.samples.isEmpty()) {
+                return this.samples;
+            }
+
+            Map<Long, Sample> result = this.samples;
+            this.samples = new HashMap<>();
+            return result;
+        }
+    }
+
+    /**
+     * 终端在窗口内的音量采样。
+     */
+    private class Sample {
+
+        protected final CommFieldEndpoint endpoint;
+
+        protected long sum = 0;
+
+        protected int count = 0;
+
+        protected Sample(CommFieldEndpoint endpoint) {
+            this.endpoint = endpoint;
+        }
+
+        protected int average() {
+            return (this.count == 0) ? 0 : (int) (this.sum / this.count);
+        }
+    }
+
+    /**
+     * 聚合结果监听器。
+     */
+    public interface Listener {
+
+        /**
+         * 窗口结束时回调。
+         *
+         * @param commField
+         * @param activeSpeakers
+         */
+        void onActiveSpeakers(CommField commField, ActiveSpeakers activeSpeakers);
+    }
+}
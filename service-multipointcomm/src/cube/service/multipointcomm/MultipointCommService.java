@@ -25,6 +25,7 @@ import cube.core.*;
 import cube.plugin.PluginSystem;
 import cube.service.Director;
 import cube.service.contact.ContactManager;
+import cube.service.multipointcomm.event.ActiveSpeakers;
 import cube.service.multipointcomm.event.AudioMuted;
 import cube.service.multipointcomm.event.CommFieldUpdate;
 import cube.service.multipointcomm.event.MicrophoneVolume;
@@ -45,6 +46,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 多方通讯服务。
@@ -96,9 +98,20 @@ public class MultipointCommService extends AbstractModule implements CelletAdapt
      */
     private MediaUnitLeader mediaUnitLeader;
 
+    /**
+     * 场域的信令处理锁。
+     */
+    private ConcurrentHashMap<Long, Object> fieldLockMap;
+
+    /**
+     * 活跃发言者聚合器，未启用聚合时为 {@code null} 值。
+     */
+    private ActiveSpeakerAggregator activeSpeakerAggregator;
+
     public MultipointCommService(MultipointCommServiceCellet cellet) {
         this.cellet = cellet;
         this.commFieldMap = new ConcurrentHashMap<>();
+        this.fieldLockMap = new ConcurrentHashMap<>();
         this.mediaUnitLeader = new MediaUnitLeader();
     }
 
@@ -120,6 +133,9 @@ public class MultipointCommService extends AbstractModule implements CelletAdapt
                 Properties properties = loadConfig();
                 mediaUnitLeader.start(MultipointCommService.this, properties);
 
+                // 配置音量聚合
+                setupActiveSpeakerAggregator(properties);
+
                 started.set(true);
             }
         });
@@ -145,7 +161,8 @@ public class MultipointCommService extends AbstractModule implements CelletAdapt
     }
 
     @Override
-    public PluginSystem getPluginSystem() {
+    @SuppressWarnings("rawtypes")
+    public <T extends PluginSystem> T getPluginSystem() {
         return null;
     }
 
@@ -165,6 +182,10 @@ public class MultipointCommService extends AbstractModule implements CelletAdapt
 
         for (CommField commField : commFields) {
             this.cache.remove(new CacheKey(commField.getId()));
+            this.fieldLockMap.remove(commField.getId());
+            if (null != this.activeSpeakerAggregator) {
+                this.activeSpeakerAggregator.remove(commField.getId());
+            }
 
             // 如果域里没有终端，则重置群组的数据
             if (null != commField.getGroup()) {
@@ -221,6 +242,54 @@ public class MultipointCommService extends AbstractModule implements CelletAdapt
         return properties;
     }
 
+    private void setupActiveSpeakerAggregator(Properties properties) {
+        // 聚合改变了客户端收到的音量事件，需显式启用
+        boolean enabled = Boolean.parseBoolean(properties.getProperty("broadcast.aggregation", "false"));
+        if (!enabled) {
+            return;
+        }
+
+        long window = Long.parseLong(properties.getProperty("broadcast.window", "500"));
+        int topN = Integer.parseInt(properties.getProperty("broadcast.topN", "3"));
+
+        final ActiveSpeakerAggregator aggregator = this.enableActiveSpeakerAggregation(window, topN);
+
+        this.scheduledExecutor.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    aggregator.flush(System.currentTimeMillis());
+                } catch (Exception e) {
+                    Logger.w(MultipointCommService.class, "#flush", e);
+                }
+            }
+        }, window, window, TimeUnit.MILLISECONDS);
+
+        Logger.i(this.getClass(), "Active speaker aggregation: window " + window + " ms, top " + topN);
+    }
+
+    /**
+     * 启用活跃发言者聚合。调用者负责按窗口调用 {@link ActiveSpeakerAggregator#flush(long)} 。
+     *
+     * @param window 聚合窗口，单位：毫秒。
+     * @param topN 每个窗口的活跃发言者数量。
+     * @return 返回聚合器。
+     */
+    protected ActiveSpeakerAggregator enableActiveSpeakerAggregation(long window, int topN) {
+        this.activeSpeakerAggregator = new ActiveSpeakerAggregator(window, topN,
+                new ActiveSpeakerAggregator.Listener() {
+            @Override
+            public void onActiveSpeakers(CommField commField, ActiveSpeakers activeSpeakers) {
+                broadcastActiveSpeakers(commField, activeSpeakers);
+            }
+        });
+        return this.activeSpeakerAggregator;
+    }
+
+    private Object getFieldLock(Long commFieldId) {
+        return this.fieldLockMap.computeIfAbsent(commFieldId, (key) -> new Object());
+    }
+
     /**
      * 获取指定的场域。
      *
@@ -550,7 +619,14 @@ public class MultipointCommService extends AbstractModule implements CelletAdapt
      * @param signaling
      * @param callback
      */
-    public synchronized void processOffer(OfferSignaling signaling, SignalingCallback callback) {
+    public void processOffer(OfferSignaling signaling, SignalingCallback callback) {
+        // 仅对同一场域的 Offer 进行互斥
+        synchronized (this.getFieldLock(signaling.getField().getId())) {
+            this.executeOffer(signaling, callback);
+        }
+    }
+
+    private void executeOffer(OfferSignaling signaling, SignalingCallback callback) {
         CommField current = this.getCommField(signaling.getField().getId());
         if (null == current) {
             callback.on(MultipointCommStateCode.NoCommField, signaling);
@@ -1101,6 +1177,8 @@ public class MultipointCommService extends AbstractModule implements CelletAdapt
         }
 
         List<CommFieldEndpoint> list = commField.getEndpoints();
+
+        // 先更新发送方的状态，聚合的音量事件不逐条转发
         for (int i = 0; i < list.size(); ++i) {
             CommFieldEndpoint ep = list.get(i);
             if (ep.equals(endpoint)) {
@@ -1108,6 +1186,12 @@ public class MultipointCommService extends AbstractModule implements CelletAdapt
                 // 事件判断
                 if (Broadcast.isMicrophoneVolume(data)) {
                     ep.microphoneVolume = MicrophoneVolume.getVolume(data);
+
+                    if (null != this.activeSpeakerAggregator) {
+                        // 音量由聚合器按窗口批量发送
+                        this.activeSpeakerAggregator.record(commField, ep, ep.microphoneVolume);
+                        return MultipointCommStateCode.Ok;
+                    }
                 }
                 else if (Broadcast.isAudioMuted(data)) {
                     ep.audioStreamEnabled = !AudioMuted.isMuted(data);
@@ -1115,7 +1199,13 @@ public class MultipointCommService extends AbstractModule implements CelletAdapt
                 else if (Broadcast.isVideoMuted(data)) {
                     ep.videoStreamEnabled = !VideoMuted.isMuted(data);
                 }
+                break;
+            }
+        }
 
+        for (int i = 0; i < list.size(); ++i) {
+            CommFieldEndpoint ep = list.get(i);
+            if (ep.equals(endpoint)) {
                 // 跳过自己
                 continue;
             }
@@ -1126,7 +1216,7 @@ public class MultipointCommService extends AbstractModule implements CelletAdapt
             ModuleEvent event = new ModuleEvent(MultipointCommService.NAME,
                     MultipointCommAction.Broadcast.name, broadcast.toJSON());
 
-            this.contactsAdapter.publish(ep.getContact().getUniqueKey(), event.toJSON());
+            this.publishBroadcast(ep, event);
         }
 
         return MultipointCommStateCode.Ok;
@@ -1177,6 +1267,25 @@ public class MultipointCommService extends AbstractModule implements CelletAdapt
         }
     }
 
+    private void broadcastActiveSpeakers(CommField commField, ActiveSpeakers activeSpeakers) {
+        for (CommFieldEndpoint target : commField.getEndpoints()) {
+            activeSpeakers.setTarget(target.toCompactJSON());
+            ModuleEvent event = new ModuleEvent(MultipointCommService.NAME,
+                    MultipointCommAction.ActiveSpeakers.name, activeSpeakers.toJSON());
+            this.publishBroadcast(target, event);
+        }
+    }
+
+    /**
+     * 向终端发布广播事件。
+     *
+     * @param target
+     * @param event
+     */
+    protected void publishBroadcast(CommFieldEndpoint target, ModuleEvent event) {
+        this.contactsAdapter.publish(target.getContact().getUniqueKey(), event.toJSON());
+    }
+
     private void broadcastLeftEvent(CommField commField, CommFieldEndpoint endpoint) {
         for (CommFieldEndpoint target : commField.getEndpoints()) {
             if (target.equals(endpoint)) {
@@ -1240,7 +1349,7 @@ public class MultipointCommService extends AbstractModule implements CelletAdapt
         return Math.abs(Long.valueOf(id & 0x7fffffffffffffffL).intValue());
     }
 
-    private CommField queryCommField(Contact contact, Device device) {
+    protected CommField queryCommField(Contact contact, Device device) {
         CommField field = null;
         Iterator<CommField> iter = this.commFieldMap.values().iterator();
         while (iter.hasNext()) {
@@ -1408,6 +1517,22 @@ public class MultipointCommService extends AbstractModule implements CelletAdapt
                     }
                 }
             }
+            else if (MultipointCommAction.ActiveSpeakers.name.equals(eventName)) {
+                // 活跃发言者更新
+                ActiveSpeakers activeSpeakers = new ActiveSpeakers(event.getData());
+
+                CommFieldEndpoint target = new CommFieldEndpoint(activeSpeakers.getTarget());
+
+                Contact contact = ContactManager.getInstance().getOnlineContact(target.getDomain().getName(),
+                        target.getContact().getId());
+                if (null != contact) {
+                    Device device = contact.getDevice(target.getDevice());
+                    if (null != device) {
+                        pushPacket(device.getTalkContext(), contact, device,
+                                MultipointCommAction.ActiveSpeakers.name, event.getData());
+                    }
+                }
+            }
             else if (MultipointCommAction.Invite.name.equals(eventName)) {
                 InviteSignaling signaling = new InviteSignaling(event.getData());
                 Contact invitee = signaling.getInvitee();
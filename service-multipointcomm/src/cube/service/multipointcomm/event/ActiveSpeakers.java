@@ -0,0 +1,160 @@
+/*
+ * This source file is part of Cube.
+ *
+ * Copyright (c) 2023-2026 Ambrose Xu.
+ */
+
+package cube.service.multipointcomm.event;
+
+import cube.common.JSONable;
+import cube.common.entity.CommField;
+import cube.common.entity.CommFieldEndpoint;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 活跃发言者及终端音量的批量更新。
+ */
+public class ActiveSpeakers implements JSONable {
+
+    public final static String NAME = "ActiveSpeakers";
+
+    private CommField commField;
+
+    private long window;
+
+    private long timestamp;
+
+    private List<Speaker> speakers;
+
+    private List<Speaker> volumes;
+
+    private JSONObject target;
+
+    public ActiveSpeakers(CommField commField, long window, long timestamp) {
+        this.commField = commField;
+        this.window = window;
+        this.timestamp = timestamp;
+        this.speakers = new ArrayList<>();
+        this.volumes = new ArrayList<>();
+    }
+
+    public ActiveSpeakers(JSONObject json) {
+        this.commField = new CommField(json.getJSONObject("field"));
+        this.window = json.getLong("window");
+        this.timestamp = json.getLong("timestamp");
+        this.speakers = new ArrayList<>();
+        this.volumes = new ArrayList<>();
+        if (json.has("target")) {
+            this.target = json.getJSONObject("target");
+        }
+
+        JSONArray array = json.getJSONArray("speakers");
+        for (int i = 0; i < array.length(); ++i) {
+            this.speakers.add(new Speaker(array.getJSONObject(i)));
+        }
+        array = json.getJSONArray("volumes");
+        for (int i = 0; i < array.length(); ++i) {
+            this.volumes.add(new Speaker(array.getJSONObject(i)));
+        }
+    }
+
+    public CommField getCommField() {
+        return this.commField;
+    }
+
+    public void addSpeaker(CommFieldEndpoint endpoint, int volume) {
+        this.speakers.add(new Speaker(endpoint.getId(), endpoint.getContact().getId(), volume));
+    }
+
+    public List<Speaker> getSpeakers() {
+        return this.speakers;
+    }
+
+    public void addVolume(CommFieldEndpoint endpoint, int volume) {
+        this.volumes.add(new Speaker(endpoint.getId(), endpoint.getContact().getId(), volume));
+    }
+
+    public List<Speaker> getVolumes() {
+        return this.volumes;
+    }
+
+    /**
+     * 设置接收更新的目标终端。
+     *
+     * @param target
+     */
+    public void setTarget(JSONObject target) {
+        this.target = target;
+    }
+
+    public JSONObject getTarget() {
+        return this.target;
+    }
+
+    @Override
+    public JSONObject toJSON() {
+        JSONObject json = new JSONObject();
+        json.put("event", NAME);
+        json.put("field", this.commField.toCompactJSON());
+        json.put("window", this.window);
+        json.put("timestamp", this.timestamp);
+
+        JSONArray array = new JSONArray();
+        for (Speaker speaker : this.speakers) {
+            array.put(speaker.toJSON());
+        }
+        json.put("speakers", array);
+
+        array = new JSONArray();
+        for (Speaker speaker : this.volumes) {
+            array.put(speaker.toJSON());
+        }
+        json.put("volumes", array);
+
+        if (null != this.target) {
+            json.put("target", this.target);
+        }
+        return json;
+    }
+
+    @Override
+    public JSONObject toCompactJSON() {
+        return this.toJSON();
+    }
+
+    /**
+     * 终端音量。
+     */
+    public class Speaker {
+
+        public final long endpointId;
+
+        public final long contactId;
+
+        public final int volume;
+
+        public Speaker(long endpointId, long contactId, int volume) {
+            this.endpointId = endpointId;
+            this.contactId = contactId;
+            this.volume = volume;
+        }
+
+        public Speaker(JSONObject json) {
+            this.endpointId = json.getLong("endpoint");
+            this.contactId = json.getLong("contact");
+            this.volume = json.getInt("volume");
+        }
+
+        public JSONObject toJSON() {
+            JSONObject json = new JSONObject();
+            json.put("endpoint", this.endpointId);
+            json.put("contact", this.contactId);
+            json.put("volume", this.volume);
+            return json;
+        }
+    }
+}
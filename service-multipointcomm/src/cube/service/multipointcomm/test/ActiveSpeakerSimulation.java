@@ -0,0 +1,195 @@
+/*
+ * This source file is part of Cube.
+ *
+ * Copyright (c) 2023-2026 Ambrose Xu.
+ */
+
+package cube.service.multipointcomm.test;
+
+import cube.common.ModuleEvent;
+import cube.common.action.MultipointCommAction;
+import cube.common.entity.CommField;
+import cube.common.entity.CommFieldEndpoint;
+import cube.common.entity.Contact;
+import cube.common.entity.Device;
+import cube.common.state.MultipointCommStateCode;
+import cube.service.multipointcomm.ActiveSpeakerAggregator;
+import cube.service.multipointcomm.MultipointCommService;
+import cube.service.multipointcomm.event.ActiveSpeakers;
+import cube.service.multipointcomm.event.MicrophoneVolume;
+import cube.util.Assert;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 大规模场域的麦克风音量信令模拟。
+ * 音量事件经由 {@link MultipointCommService#processBroadcast(CommFieldEndpoint, JSONObject)} 处理，
+ * 对比逐条转发与按窗口聚合两种方式产生的信令数量。
+ */
+public class ActiveSpeakerSimulation {
+
+    private final static String DOMAIN = "shixincube.com";
+
+    private int numEndpoints = 200;
+
+    /**
+     * 每个终端每秒上报音量的次数。
+     */
+    private int sampleRate = 10;
+
+    /**
+     * 模拟时长，单位：秒。
+     */
+    private int duration = 5;
+
+    private long window = 500;
+
+    private int topN = 3;
+
+    private CommField commField;
+
+    private List<CommFieldEndpoint> endpoints;
+
+    public ActiveSpeakerSimulation() {
+    }
+
+    public void setup() {
+        Contact founder = new Contact(10000L, DOMAIN, "Founder");
+        this.commField = new CommField(90000L, DOMAIN, founder);
+        this.endpoints = new ArrayList<>();
+        for (int i = 0; i < this.numEndpoints; ++i) {
+            Contact contact = new Contact(10001L + i, DOMAIN, "Endpoint-" + i);
+            CommFieldEndpoint endpoint = new CommFieldEndpoint(20001L + i, contact,
+                    new Device("Simulation", "Java"));
+            this.commField.addEndpoint(endpoint);
+            this.endpoints.add(endpoint);
+        }
+    }
+
+    private JSONObject makeVolume(int volume, long timestamp) {
+        JSONObject data = new JSONObject();
+        data.put("event", MicrophoneVolume.NAME);
+        data.put("value", volume);
+        data.put("timestamp", timestamp);
+        return data;
+    }
+
+    /**
+     * 逐条转发：每个音量采样都推送给场域内的其他终端。
+     *
+     * @return 返回信令数量。
+     */
+    public long simulateRelay() {
+        SimulatedService service = new SimulatedService(this.commField);
+
+        int numSamples = this.sampleRate * this.duration;
+        for (int n = 0; n < numSamples; ++n) {
+            for (CommFieldEndpoint source : this.endpoints) {
+                service.processBroadcast(source, this.makeVolume(50, n));
+            }
+        }
+
+        Assert.equals("Relay updates", 0, service.updates.size());
+        return service.count;
+    }
+
+    /**
+     * 按窗口聚合：每个窗口向每个终端推送一次活跃发言者更新。
+     *
+     * @return 返回信令数量。
+     */
+    public long simulateAggregation() {
+        SimulatedService service = new SimulatedService(this.commField);
+        ActiveSpeakerAggregator aggregator = service.enableAggregation(this.window, this.topN);
+
+        Random random = new Random(30L);
+        long interval = 1000 / this.sampleRate;
+        long now = 0;
+        long nextFlush = this.window;
+        int numSamples = this.sampleRate * this.duration;
+        for (int n = 0; n < numSamples; ++n) {
+            for (int i = 0; i < this.endpoints.size(); ++i) {
+                // 前三个终端持续发言
+                int volume = (i < 3) ? 80 - i * 10 : random.nextInt(10);
+                MultipointCommStateCode stateCode = service.processBroadcast(this.endpoints.get(i),
+                        this.makeVolume(volume, now));
+                if (stateCode != MultipointCommStateCode.Ok) {
+                    Assert.equals("Broadcast state", MultipointCommStateCode.Ok.code, stateCode.code);
+                }
+            }
+
+            now += interval;
+            if (now >= nextFlush) {
+                aggregator.flush(now);
+                nextFlush += this.window;
+            }
+        }
+
+        // 校验活跃发言者
+        ActiveSpeakers last = service.updates.get(service.updates.size() - 1);
+        Assert.equals("Top speakers", this.topN, last.getSpeakers().size());
+        Assert.equals("First speaker", true,
+                last.getSpeakers().get(0).endpointId == this.endpoints.get(0).getId().longValue());
+        Assert.equals("Volumes", this.numEndpoints, last.getVolumes().size());
+
+        // 校验序列化
+        last.setTarget(this.endpoints.get(0).toCompactJSON());
+        ActiveSpeakers copy = new ActiveSpeakers(last.toJSON());
+        Assert.equals("Serialization", this.topN, copy.getSpeakers().size());
+
+        return service.count;
+    }
+
+    /**
+     * 不依赖内核的服务，记录发布的广播事件。
+     */
+    private static class SimulatedService extends MultipointCommService {
+
+        private final CommField commField;
+
+        private long count = 0;
+
+        private final List<ActiveSpeakers> updates = new ArrayList<>();
+
+        private SimulatedService(CommField commField) {
+            super(null);
+            this.commField = commField;
+        }
+
+        private ActiveSpeakerAggregator enableAggregation(long window, int topN) {
+            return this.enableActiveSpeakerAggregation(window, topN);
+        }
+
+        @Override
+        protected CommField queryCommField(Contact contact, Device device) {
+            return (null != this.commField.getEndpoint(contact, device)) ? this.commField : null;
+        }
+
+        @Override
+        protected void publishBroadcast(CommFieldEndpoint target, ModuleEvent event) {
+            ++this.count;
+            if (MultipointCommAction.ActiveSpeakers.name.equals(event.getEventName())) {
+                this.updates.add(new ActiveSpeakers(event.getData()));
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        ActiveSpeakerSimulation simulation = new ActiveSpeakerSimulation();
+        simulation.setup();
+
+        long relay = simulation.simulateRelay();
+        long aggregation = simulation.simulateAggregation();
+
+        System.out.println("Endpoints   : " + simulation.numEndpoints);
+        System.out.println("Duration    : " + simulation.duration + " s @ " + simulation.sampleRate + " samples/s");
+        System.out.println("Relay       : " + relay + " messages");
+        System.out.println("Aggregation : " + aggregation + " messages (window " + simulation.window + " ms)");
+
+        Assert.equals("Aggregation count", true,
+                aggregation == (long) simulation.numEndpoints * simulation.duration * 1000 / simulation.window);
+    }
+}
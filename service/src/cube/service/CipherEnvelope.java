@@ -0,0 +1,185 @@
+/*
+ * This source file is part of Cube.
+ *
+ * Copyright (c) 2023-2026 Ambrose Xu.
+ */
+
+package cube.service;
+
+import cell.util.Base64;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 带版本的密文封装。
+ * 版本 0 是历史数据使用的 AES/ECB 密文的 Base64 编码，没有前缀；
+ * 版本 1 使用 AES/GCM ，格式为 {@code $1$} 前缀加上 Base64 编码的 {@code IV || 密文 || 认证标签} 。
+ * Base64 字符集不包含 {@code $} 字符，因此两种格式不会混淆。
+ */
+public final class CipherEnvelope {
+
+    /**
+     * 历史数据使用的 AES/ECB 格式。
+     */
+    public final static int VERSION_ECB = 0;
+
+    /**
+     * AES/GCM 认证加密格式。
+     */
+    public final static int VERSION_GCM = 1;
+
+    public final static String ECB_TRANSFORMATION = "AES/ECB/PKCS5Padding";
+
+    public final static String GCM_TRANSFORMATION = "AES/GCM/NoPadding";
+
+    private final static String GCM_PREFIX = "$1$";
+
+    private final static int GCM_IV_LENGTH = 12;
+
+    private final static int GCM_TAG_BITS = 128;
+
+    private final static SecureRandom random = new SecureRandom();
+
+    /**
+     * 每个线程复用的 Cipher 实例。
+     */
+    private final static ThreadLocal<Map<String, Cipher>> threadCiphers = new ThreadLocal<Map<String, Cipher>>() {
+        @Override
+        protected Map<String, Cipher> initialValue() {
+            return new HashMap<>();
+        }
+    };
+
+    private CipherEnvelope() {
+    }
+
+    /**
+     * 获取当前线程的 Cipher 实例。使用前必须调用 {@code init} 进行初始化。
+     *
+     * @param transformation
+     * @return
+     * @throws GeneralSecurityException
+     */
+    public static Cipher getCipher(String transformation) throws GeneralSecurityException {
+        Map<String, Cipher> map = threadCiphers.get();
+        Cipher cipher = map.get(transformation);
+        if (null == cipher) {
+            cipher = Cipher.getInstance(transformation);
+            map.put(transformation, cipher);
+        }
+        return cipher;
+    }
+
+    public static byte[] encryptECB(SecretKey key, byte[] plaintext) throws GeneralSecurityException {
+        Cipher cipher = getCipher(ECB_TRANSFORMATION);
+        cipher.init(Cipher.ENCRYPT_MODE, key);
+        return cipher.doFinal(plaintext);
+    }
+
+    public static byte[] decryptECB(SecretKey key, byte[] ciphertext) throws GeneralSecurityException {
+        Cipher cipher = getCipher(ECB_TRANSFORMATION);
+        cipher.init(Cipher.DECRYPT_MODE, key);
+        return cipher.doFinal(ciphertext);
+    }
+
+    /**
+     * 使用 AES/GCM 加密。
+     *
+     * @param key
+     * @param plaintext
+     * @return 返回 {@code IV || 密文 || 认证标签} 。
+     * @throws GeneralSecurityException
+     */
+    public static byte[] encryptGCM(SecretKey key, byte[] plaintext) throws GeneralSecurityException {
+        byte[] iv = new byte[GCM_IV_LENGTH];
+        random.nextBytes(iv);
+
+        Cipher cipher = getCipher(GCM_TRANSFORMATION);
+        cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(GCM_TAG_BITS, iv));
+
+        byte[] result = new byte[GCM_IV_LENGTH + cipher.getOutputSize(plaintext.length)];
+        System.arraycopy(iv, 0, result, 0, GCM_IV_LENGTH);
+        int length = cipher.doFinal(plaintext, 0, plaintext.length, result, GCM_IV_LENGTH);
+        if (GCM_IV_LENGTH + length != result.length) {
+            byte[] copy = new byte[GCM_IV_LENGTH + length];
+            System.arraycopy(result, 0, copy, 0, copy.length);
+            result = copy;
+        }
+        return result;
+    }
+
+    /**
+     * 使用 AES/GCM 解密并校验。
+     *
+     * @param key
+     * @param data {@code IV || 密文 || 认证标签} 。
+     * @return
+     * @throws GeneralSecurityException 数据被篡改或者密钥错误时抛出。
+     */
+    public static byte[] decryptGCM(SecretKey key, byte[] data) throws GeneralSecurityException {
+        if (data.length < GCM_IV_LENGTH + GCM_TAG_BITS / 8) {
+            throw new GeneralSecurityException("Ciphertext is too short");
+        }
+
+        Cipher cipher = getCipher(GCM_TRANSFORMATION);
+        cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(GCM_TAG_BITS, data, 0, GCM_IV_LENGTH));
+        return cipher.doFinal(data, GCM_IV_LENGTH, data.length - GCM_IV_LENGTH);
+    }
+
+    /**
+     * 返回密文封装的版本。
+     *
+     * @param envelope
+     * @return
+     */
+    public static int version(String envelope) {
+        return envelope.startsWith(GCM_PREFIX) ? VERSION_GCM : VERSION_ECB;
+    }
+
+    /**
+     * 按照指定版本加密文本。
+     *
+     * @param key
+     * @param version
+     * @param plaintext
+     * @return
+     * @throws GeneralSecurityException
+     */
+    public static String seal(SecretKey key, int version, String plaintext) throws GeneralSecurityException {
+        byte[] data = plaintext.getBytes(StandardCharsets.UTF_8);
+        if (version == VERSION_GCM) {
+            return GCM_PREFIX + Base64.encodeBytes(encryptGCM(key, data));
+        }
+        else {
+            return Base64.encodeBytes(encryptECB(key, data));
+        }
+    }
+
+    /**
+     * 解密任意版本的密文封装。
+     *
+     * @param key
+     * @param envelope
+     * @return
+     * @throws IOException 数据不是 Base64 编码时抛出。
+     * @throws GeneralSecurityException
+     */
+    public static String open(SecretKey key, String envelope) throws IOException, GeneralSecurityException {
+        if (version(envelope) == VERSION_GCM) {
+            byte[] data = Base64.decode(envelope.substring(GCM_PREFIX.length()));
+            return new String(decryptGCM(key, data), StandardCharsets.UTF_8);
+        }
+        else {
+            byte[] data = Base64.decode(envelope.getBytes(StandardCharsets.UTF_8));
+            return new String(decryptECB(key, data), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -17,14 +17,13 @@ import cube.storage.StorageType;
 import cube.util.ConfigUtils;
 import org.json.JSONObject;
 
-import javax.crypto.*;
+import javax.crypto.SecretKey;
+import javax.crypto.SecretKeyFactory;
 import javax.crypto.spec.PBEKeySpec;
 import javax.crypto.spec.SecretKeySpec;
 import java.io.IOException;
 import java.nio.charset.Charset;
-import java.security.InvalidKeyException;
-import java.security.NoSuchAlgorithmException;
-import java.security.spec.InvalidKeySpecException;
+import java.security.GeneralSecurityException;
 import java.security.spec.KeySpec;
 import java.util.*;
 
@@ -65,9 +64,24 @@ public final class CipherMachine {
 
     private byte[] salt;
 
-    private long cipherBeginningTime;
+    /**
+     * 当前有效的密钥。
+     */
+    private volatile DayKey currentKey;
+
+    /**
+     * 按日期索引的密钥环。
+     */
+    private volatile Map<Long, DayKey> keyRing = Collections.emptyMap();
+
+    private final static int KEY_RING_CAPACITY = 32;
 
-    private long cipherEndingTime;
+    private final TimeZone timeZone = TimeZone.getDefault();
+
+    /**
+     * 新数据使用的密文封装版本。
+     */
+    private int envelopeVersion = CipherEnvelope.VERSION_ECB;
 
     private Timer timer;
 
@@ -106,6 +120,11 @@ public final class CipherMachine {
         }
 
         if (null != properties) {
+            // 新数据使用的加密格式
+            if ("gcm".equalsIgnoreCase(properties.getProperty("cipher.envelope", "ecb"))) {
+                this.envelopeVersion = CipherEnvelope.VERSION_GCM;
+            }
+
             JSONObject config = new JSONObject();
             config.put(MySQLStorage.CONFIG_HOST, properties.getProperty("storage.host"));
             config.put(MySQLStorage.CONFIG_PORT, Integer.parseInt(properties.getProperty("storage.port")));
@@ -135,6 +154,8 @@ public final class CipherMachine {
         }
 
         this.currentCipher = null;
+        this.currentKey = null;
+        this.keyRing = Collections.emptyMap();
     }
 
     public boolean isReady() {
@@ -176,10 +197,81 @@ public final class CipherMachine {
      * @return
      */
     public byte[] getCipher(long timestamp) {
-        if (timestamp >= this.cipherBeginningTime && timestamp <= this.cipherEndingTime) {
-            return this.currentCipher;
+        DayKey dayKey = this.getDayKey(timestamp);
+        return (null != dayKey) ? dayKey.cipher : null;
+    }
+
+    /**
+     * 使用指定时间有效的密钥加密文本，输出带版本的密文封装。
+     *
+     * @param timestamp
+     * @param plaintext
+     * @return 返回密文封装，加密失败返回 {@code null} 值。
+     */
+    public String seal(long timestamp, String plaintext) {
+        DayKey dayKey = this.getDayKey(timestamp);
+        if (null == dayKey) {
+            Logger.w(this.getClass(), "#seal - Can NOT find cipher: " + timestamp);
+            return null;
         }
 
+        try {
+            return CipherEnvelope.seal(dayKey.rawKey, this.envelopeVersion, plaintext);
+        } catch (GeneralSecurityException e) {
+            Logger.w(this.getClass(), "#seal", e);
+            return null;
+        }
+    }
+
+    /**
+     * 使用指定时间有效的密钥解密任意版本的密文封装。
+     *
+     * @param timestamp
+     * @param envelope
+     * @return 返回明文，如果数据不是密文则原样返回，解密失败返回 {@code null} 值。
+     */
+    public String open(long timestamp, String envelope) {
+        DayKey dayKey = this.getDayKey(timestamp);
+        if (null == dayKey) {
+            Logger.w(this.getClass(), "#open - Can NOT find cipher: " + timestamp);
+            return null;
+        }
+
+        try {
+            return CipherEnvelope.open(dayKey.rawKey, envelope);
+        } catch (IOException e) {
+            // 不是 Base64 编码的数据
+            return envelope;
+        } catch (GeneralSecurityException e) {
+            Logger.w(this.getClass(), "#open", e);
+            return null;
+        }
+    }
+
+    private DayKey getDayKey(long timestamp) {
+        long day = this.dayOf(timestamp);
+
+        DayKey current = this.currentKey;
+        if (null != current && current.day == day) {
+            return current;
+        }
+
+        DayKey dayKey = this.keyRing.get(day);
+        if (null != dayKey) {
+            return dayKey;
+        }
+
+        byte[] cipher = this.queryCipher(timestamp);
+        if (null == cipher) {
+            return null;
+        }
+
+        dayKey = new DayKey(day, cipher);
+        this.install(dayKey);
+        return dayKey;
+    }
+
+    private byte[] queryCipher(long timestamp) {
         Calendar calendar = Calendar.getInstance();
         calendar.setTimeInMillis(timestamp);
 
@@ -199,6 +291,10 @@ public final class CipherMachine {
             return cipher;
         }
 
+        if (null == this.storage) {
+            return null;
+        }
+
         StringBuilder sql = new StringBuilder("SELECT `cipher` FROM ");
         sql.append(this.table);
         sql.append(" WHERE `year`=").append(calendar.get(Calendar.YEAR));
@@ -227,35 +323,37 @@ public final class CipherMachine {
         return cipher;
     }
 
+    /**
+     * 将密钥加入密钥环。密钥环只会被整体替换，读取时不需要加锁。
+     *
+     * @param dayKey
+     */
+    private synchronized void install(DayKey dayKey) {
+        LinkedHashMap<Long, DayKey> ring = new LinkedHashMap<>(this.keyRing);
+        ring.remove(dayKey.day);
+        ring.put(dayKey.day, dayKey);
+
+        Iterator<Long> iter = ring.keySet().iterator();
+        while (ring.size() > KEY_RING_CAPACITY && iter.hasNext()) {
+            iter.next();
+            iter.remove();
+        }
+
+        this.keyRing = Collections.unmodifiableMap(ring);
+    }
+
+    private long dayOf(long timestamp) {
+        return Math.floorDiv(timestamp + this.timeZone.getOffset(timestamp), 24L * 60 * 60 * 1000);
+    }
+
     public byte[] encrypt(byte[] plaintext) {
         byte[] ciphertext = null;
 
-        char[] keys = new char[this.currentCipher.length];
-        for (int i = 0; i < keys.length; ++i) {
-            keys[i] = (char) this.currentCipher[i];
-        }
-
         try {
             // AES-128
-            KeySpec spec = new PBEKeySpec(keys, this.salt, 65536, 128);
-            SecretKeyFactory f = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA1");
-            byte[] key = f.generateSecret(spec).getEncoded();
-            SecretKey secretKey = new SecretKeySpec(key, "AES");
-
-            Cipher cipher = Cipher.getInstance("AES/ECB/PKCS5Padding");
-            cipher.init(Cipher.ENCRYPT_MODE, secretKey);
-            ciphertext = cipher.doFinal(plaintext);
-        } catch (NoSuchAlgorithmException e) {
-            e.printStackTrace();
-        } catch (NoSuchPaddingException e) {
-            e.printStackTrace();
-        } catch (InvalidKeyException e) {
-            e.printStackTrace();
-        } catch (BadPaddingException e) {
-            e.printStackTrace();
-        } catch (IllegalBlockSizeException e) {
-            e.printStackTrace();
-        } catch (InvalidKeySpecException e) {
+            SecretKey secretKey = this.currentKey.getDerivedKey(this.salt);
+            ciphertext = CipherEnvelope.encryptECB(secretKey, plaintext);
+        } catch (GeneralSecurityException e) {
             e.printStackTrace();
         }
 
@@ -278,32 +376,11 @@ public final class CipherMachine {
     public byte[] decrypt(byte[] ciphertext) {
         byte[] plaintext = null;
 
-        char[] keys = new char[this.currentCipher.length];
-        for (int i = 0; i < keys.length; ++i) {
-            keys[i] = (char) this.currentCipher[i];
-        }
-
         try {
             // AES-128
-            KeySpec spec = new PBEKeySpec(keys, this.salt, 65536, 128);
-            SecretKeyFactory f = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA1");
-            byte[] key = f.generateSecret(spec).getEncoded();
-            SecretKey secretKey = new SecretKeySpec(key, "AES");
-
-            Cipher cipher = Cipher.getInstance("AES/ECB/PKCS5Padding");
-            cipher.init(Cipher.DECRYPT_MODE, secretKey);
-            plaintext = cipher.doFinal(ciphertext);
-        } catch (NoSuchAlgorithmException e) {
-            e.printStackTrace();
-        } catch (NoSuchPaddingException e) {
-            e.printStackTrace();
-        } catch (InvalidKeyException e) {
-            e.printStackTrace();
-        } catch (BadPaddingException e) {
-            e.printStackTrace();
-        } catch (IllegalBlockSizeException e) {
-            e.printStackTrace();
-        } catch (InvalidKeySpecException e) {
+            SecretKey secretKey = this.currentKey.getDerivedKey(this.salt);
+            plaintext = CipherEnvelope.decryptECB(secretKey, ciphertext);
+        } catch (GeneralSecurityException e) {
             e.printStackTrace();
         }
 
@@ -422,13 +499,11 @@ public final class CipherMachine {
             }
         });
 
-        calendar.set(Calendar.HOUR_OF_DAY, 0);
-        calendar.set(Calendar.MINUTE, 0);
-        calendar.set(Calendar.SECOND, 0);
-        calendar.set(Calendar.MILLISECOND, 0);
-
-        this.cipherBeginningTime = calendar.getTimeInMillis();
-        this.cipherEndingTime = this.cipherBeginningTime + 24L * 60 * 60 * 1000;
+        if (null != this.currentCipher) {
+            DayKey dayKey = new DayKey(this.dayOf(calendar.getTimeInMillis()), this.currentCipher);
+            this.install(dayKey);
+            this.currentKey = dayKey;
+        }
     }
 
     private void startTimer() {
@@ -492,4 +567,46 @@ public final class CipherMachine {
             }
         }).start();
     }
+
+    /**
+     * 指定日期的密钥。
+     */
+    private class DayKey {
+
+        protected final long day;
+
+        protected final byte[] cipher;
+
+        /**
+         * 直接使用密钥数据的 AES 密钥。
+         */
+        protected final SecretKey rawKey;
+
+        /**
+         * 经过 PBKDF2 派生的 AES 密钥。
+         */
+        private volatile SecretKey derivedKey;
+
+        protected DayKey(long day, byte[] cipher) {
+            this.day = day;
+            this.cipher = cipher;
+            this.rawKey = new SecretKeySpec(cipher, "AES");
+        }
+
+        protected SecretKey getDerivedKey(byte[] salt) throws GeneralSecurityException {
+            SecretKey key = this.derivedKey;
+            if (null == key) {
+                char[] keys = new char[this.cipher.length];
+                for (int i = 0; i < keys.length; ++i) {
+                    keys[i] = (char) this.cipher[i];
+                }
+
+                KeySpec spec = new PBEKeySpec(keys, salt, 65536, 128);
+                SecretKeyFactory f = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA1");
+                key = new SecretKeySpec(f.generateSecret(spec).getEncoded(), "AES");
+                this.derivedKey = key;
+            }
+            return key;
+        }
+    }
 }
@@ -14,11 +14,16 @@ import cell.util.log.LogHandle;
 import cell.util.log.LogLevel;
 import cell.util.log.Logger;
 import cube.core.AbstractCellet;
+import cube.core.AbstractModule;
 import cube.core.Kernel;
 import cube.license.LicenseConfig;
 import cube.license.LicenseTool;
+import cube.plugin.PluginSystem;
 import cube.report.*;
 import cube.service.contact.ContactManager;
+import cube.util.HttpClientFactory;
+import cube.util.ProcessManager;
+import org.json.JSONArray;
 import org.json.JSONObject;
 
 import java.io.File;
@@ -192,6 +197,25 @@ public class Daemon extends TimerTask implements LogHandle {
         contactPerf.put("maxNum", ContactManager.getInstance().getMaxContactNum());
         report.appendItem(ContactManager.NAME, contactPerf);
 
+        // 填写插件性能
+        JSONObject pluginPerf = new JSONObject();
+        for (AbstractModule module : this.kernel.getModules()) {
+            PluginSystem<?> pluginSystem = module.getPluginSystem();
+            if (null != pluginSystem) {
+                JSONArray statistics = pluginSystem.getStatistics();
+                if (statistics.length() > 0) {
+                    pluginPerf.put(pluginSystem.getClass().getSimpleName(), statistics);
+                }
+            }
+        }
+        report.appendItem(PluginSystem.NAME, pluginPerf);
+
+        // 填写子进程执行统计
+        report.appendItem(ProcessManager.NAME, ProcessManager.getInstance().getStatistics());
+
+        // 填写 HTTP 请求统计
+        report.appendItem(HttpClientFactory.NAME, HttpClientFactory.getInstance().getStatistics());
+
         ReportService.getInstance().submitReport(report);
     }
 
@@ -7,6 +7,8 @@
 package cube.service;
 
 import cell.core.talk.dialect.ActionDialect;
+import cube.common.Packet;
+import cube.common.codec.BinaryCodec;
 import cube.common.entity.Contact;
 import cube.common.entity.Device;
 import org.json.JSONException;
@@ -60,5 +62,10 @@ public class Director {
     public static void copyPerformer(ActionDialect src, ActionDialect dest) {
         JSONObject performer = src.getParamAsJson(sPerformerKey);
         dest.addParam(sPerformerKey, performer);
+
+        // 调度机声明可接收二进制负载时，使用二进制负载应答
+        if (BinaryCodec.NAME.equals(performer.optString("codec"))) {
+            Packet.encodeBinary(dest);
+        }
     }
 }
@@ -22,6 +22,7 @@ import cube.core.Conditional;
 import cube.core.Constraint;
 import cube.core.Storage;
 import cube.core.StorageField;
+import cube.service.aigc.resource.AtomIndex;
 import cube.storage.StorageFactory;
 import cube.storage.StorageFields;
 import cube.storage.StorageType;
@@ -30,6 +31,7 @@ import org.json.JSONArray;
 import org.json.JSONObject;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * AIGC 存储器。
@@ -643,6 +645,51 @@ public class AIGCStorage implements Storagable {
 
     private Storage storage;
 
+    /**
+     * 图表原子数据的内存索引，首次查询时在后台线程加载，加载完成前查询存储。
+     */
+    private AtomIndex atomIndex;
+
+    /**
+     * 最近一次从存储同步新增原子数据的时间。
+     */
+    private long atomIndexSyncTime = 0;
+
+    /**
+     * 下一次构建原子数据索引的时间。
+     */
+    private long atomIndexBuildTime = 0;
+
+    /**
+     * 是否正在后台构建原子数据索引。
+     */
+    private final AtomicBoolean atomIndexBuilding = new AtomicBoolean(false);
+
+    /**
+     * 后台构建索引期间删除的原子数据序号，替换索引前从新索引中移除。
+     */
+    private Set<Long> atomIndexPendingDeletes = null;
+
+    /**
+     * 从存储同步其他节点写入数据的间隔。
+     */
+    private final static long ATOM_INDEX_SYNC_INTERVAL = 5 * 1000L;
+
+    /**
+     * 重建原子数据索引的间隔，用于同步其他节点删除的数据。
+     */
+    private final static long ATOM_INDEX_REBUILD_INTERVAL = 30 * 60 * 1000L;
+
+    /**
+     * 构建索引失败后重试的间隔。
+     */
+    private final static long ATOM_INDEX_RETRY_INTERVAL = 60 * 1000L;
+
+    /**
+     * 加载原子数据时每页的数量。
+     */
+    private final static int ATOM_PAGE_SIZE = 10000;
+
     public AIGCStorage(StorageType type, JSONObject config) {
         this.storage = StorageFactory.getInstance().createStorage(type, "AIGCStorage", config);
     }
@@ -2091,6 +2138,11 @@ public class AIGCStorage implements Storagable {
                 ++num;
             }
         }
+
+        if (num > 0) {
+            // 同步新写入的数据
+            this.syncAtomIndex(true);
+        }
         return num;
     }
 
@@ -2107,6 +2159,15 @@ public class AIGCStorage implements Storagable {
 
             if (success) {
                 ++num;
+
+                synchronized (this.chartAtomTable) {
+                    if (null != this.atomIndex) {
+                        this.atomIndex.remove(sn);
+                    }
+                    if (null != this.atomIndexPendingDeletes) {
+                        this.atomIndexPendingDeletes.add(sn);
+                    }
+                }
             }
         }
         return num;
@@ -2144,7 +2205,34 @@ public class AIGCStorage implements Storagable {
         return list;
     }
 
+    /**
+     * 匹配任意标签词且日期相同的原子数据，结果已去重。
+     *
+     * @param labels 标签词。
+     * @param year 年描述，例如：2024年。
+     * @param month 月描述，可以为 {@code null} 。
+     * @param date 日描述，可以为 {@code null} 。
+     * @return 返回原子数据列表。
+     */
     public List<Atom> fullMatching(List<String> labels, String year, String month, String date) {
+        int yearValue = parseDateValue(year, "年");
+        int monthValue = parseDateValue(month, "月");
+        int dateValue = parseDateValue(date, "日");
+        if (yearValue < 0 || monthValue < 0 || dateValue < 0) {
+            // 无法识别的日期描述
+            return this.fullMatchingInStorage(labels, year, month, date);
+        }
+
+        AtomIndex index = this.syncAtomIndex(false);
+        if (null == index) {
+            // 索引尚未就绪
+            return this.fullMatchingInStorage(labels, year, month, date);
+        }
+
+        return index.match(labels, yearValue, monthValue, dateValue);
+    }
+
+    private List<Atom> fullMatchingInStorage(List<String> labels, String year, String month, String date) {
         List<Atom> atoms = new ArrayList<>();
 
         LinkedList<Conditional> conditionals = new LinkedList<>();
@@ -2192,18 +2280,34 @@ public class AIGCStorage implements Storagable {
         }
 
         // 排除重复数据
-        ArrayList<Atom> atomList = new ArrayList<>();
-        for (Atom atom : atoms) {
-            if (atomList.contains(atom)) {
-                continue;
-            }
-            atomList.add(atom);
+        return new ArrayList<>(new LinkedHashSet<>(atoms));
+    }
+
+    /**
+     * 判断是否存在匹配任意标签词且日期相同的原子数据。
+     *
+     * @param labels 标签词。
+     * @param year 年描述。
+     * @param month 月描述，可以为 {@code null} 。
+     * @return 存在时返回 {@code true} 。
+     */
+    public boolean existsAtoms(List<String> labels, String year, String month) {
+        int yearValue = parseDateValue(year, "年");
+        int monthValue = parseDateValue(month, "月");
+        if (yearValue <= 0 || monthValue < 0) {
+            return this.existsAtomsInStorage(labels, year, month);
+        }
+
+        AtomIndex index = this.syncAtomIndex(false);
+        if (null == index) {
+            // 索引尚未就绪
+            return this.existsAtomsInStorage(labels, year, month);
         }
 
-        return atomList;
+        return index.exists(labels, yearValue, monthValue);
     }
 
-    public boolean existsAtoms(List<String> labels, String year, String month) {
+    private boolean existsAtomsInStorage(List<String> labels, String year, String month) {
         LinkedList<Conditional> conditionals = new LinkedList<>();
 
         LinkedList<Conditional> labelConditionals = new LinkedList<>();
@@ -2232,6 +2336,132 @@ public class AIGCStorage implements Storagable {
         return !result.isEmpty();
     }
 
+    /**
+     * 返回原子数据索引，按间隔从存储同步新增数据。
+     * 到达构建时间时在后台线程构建新索引，构建期间继续使用当前索引。
+     *
+     * @param force 是否立即同步。
+     * @return 首次构建完成前返回 {@code null} 。
+     */
+    private AtomIndex syncAtomIndex(boolean force) {
+        synchronized (this.chartAtomTable) {
+            long now = System.currentTimeMillis();
+            if (now >= this.atomIndexBuildTime) {
+                this.buildAtomIndex();
+            }
+
+            if (null != this.atomIndex && (force || now - this.atomIndexSyncTime > ATOM_INDEX_SYNC_INTERVAL)) {
+                this.loadAtoms(this.atomIndex);
+                this.atomIndexSyncTime = now;
+            }
+            return this.atomIndex;
+        }
+    }
+
+    /**
+     * 在后台线程加载全部原子数据，完成后替换当前索引。调用时需持有索引锁。
+     */
+    private void buildAtomIndex() {
+        if (!this.atomIndexBuilding.compareAndSet(false, true)) {
+            return;
+        }
+
+        this.atomIndexPendingDeletes = new HashSet<>();
+
+        Thread thread = new Thread("AtomIndexBuilder") {
+            @Override
+            public void run() {
+                long start = System.currentTimeMillis();
+                AtomIndex index = new AtomIndex(ATOM_PAGE_SIZE);
+                try {
+                    loadAtoms(index);
+                } catch (Exception e) {
+                    Logger.w(AIGCStorage.class, "#buildAtomIndex", e);
+                    index = null;
+                }
+
+                synchronized (chartAtomTable) {
+                    long now = System.currentTimeMillis();
+                    try {
+                        if (null != index) {
+                            // 合并构建期间的删除和新增
+                            for (Long sn : atomIndexPendingDeletes) {
+                                index.remove(sn);
+                            }
+                            loadAtoms(index);
+
+                            atomIndex = index;
+                            atomIndexSyncTime = now;
+                            atomIndexBuildTime = now + ATOM_INDEX_REBUILD_INTERVAL;
+                            Logger.i(AIGCStorage.class, "Atom index built: " + index.size() + " atoms, "
+                                    + index.numLabels() + " labels - " + (now - start) + " ms");
+                        }
+                        else {
+                            atomIndexBuildTime = now + ATOM_INDEX_RETRY_INTERVAL;
+                        }
+                    } catch (Exception e) {
+                        Logger.w(AIGCStorage.class, "#buildAtomIndex", e);
+                        atomIndexBuildTime = now + ATOM_INDEX_RETRY_INTERVAL;
+                    } finally {
+                        atomIndexPendingDeletes = null;
+                        atomIndexBuilding.set(false);
+                    }
+                }
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * 按序号分页加载序号大于索引最大序号的原子数据。
+     *
+     * @param index
+     */
+    private void loadAtoms(AtomIndex index) {
+        while (true) {
+            List<StorageField[]> result = this.storage.executeQuery(this.chartAtomTable, this.chartAtomFields,
+                    new Conditional[] {
+                            Conditional.createGreaterThan(new StorageField("sn", LiteralBase.LONG,
+                                    index.getMaxSn())),
+                            Conditional.createOrderBy("sn", false),
+                            Conditional.createLimit(ATOM_PAGE_SIZE)
+                    });
+
+            List<Atom> atoms = new ArrayList<>(result.size());
+            for (StorageField[] fields : result) {
+                Map<String, StorageField> data = StorageFields.get(fields);
+                atoms.add(new Atom(data.get("sn").getLong(), data.get("label").getString(),
+                        data.get("year").getString(), data.get("month").getString(),
+                        data.get("date").getString(), data.get("value").getInt()));
+            }
+            index.addAll(atoms);
+
+            if (result.size() < ATOM_PAGE_SIZE) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * 解析日期描述的数值。
+     *
+     * @param desc 日期描述。
+     * @param unit 单位。
+     * @return 描述为 {@code null} 时返回 {@code 0} ，无法解析时返回 {@code -1} 。
+     */
+    private static int parseDateValue(String desc, String unit) {
+        if (null == desc) {
+            return 0;
+        }
+
+        try {
+            return Integer.parseInt(desc.replace(unit, "").replace("号", "").trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
     public List<PromptRecord> readPrompts() {
         return this.readPrompts(0);
     }
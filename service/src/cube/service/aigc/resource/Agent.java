@@ -14,7 +14,6 @@ import cube.aigc.ModelConfig;
 import cube.auth.AuthConsts;
 import cube.common.entity.*;
 import cube.util.HttpClientFactory;
-import org.eclipse.jetty.client.HttpClient;
 import org.eclipse.jetty.client.WWWAuthenticationProtocolHandler;
 import org.eclipse.jetty.client.api.ContentResponse;
 import org.eclipse.jetty.client.util.StringContentProvider;
@@ -104,8 +103,6 @@ public final class Agent {
             code = this.channelCode;
         }
 
-        HttpClient client = HttpClientFactory.getInstance().borrowHttpClient();
-
         try {
             JSONArray recordArray = new JSONArray();
             if (null != records) {
@@ -128,10 +125,12 @@ public final class Agent {
             data.put("recordable", false);
             data.put("records", recordArray);
 
-            client.getProtocolHandlers().remove(WWWAuthenticationProtocolHandler.NAME);
+            HttpClientFactory.getInstance().getHttpClient(HttpClientFactory.Purpose.AIGC)
+                    .getProtocolHandlers().remove(WWWAuthenticationProtocolHandler.NAME);
 
-            StringContentProvider provider = new StringContentProvider(data.toString());
-            ContentResponse response = client.POST(chatUrl).timeout(8, TimeUnit.MINUTES).content(provider).send();
+            ContentResponse response = HttpClientFactory.getInstance().send(HttpClientFactory.Purpose.AIGC,
+                    (client) -> client.POST(chatUrl).timeout(8, TimeUnit.MINUTES)
+                            .content(new StringContentProvider(data.toString())));
 
             if (response.getStatus() == HttpStatus.OK_200) {
                 JSONObject responseData = new JSONObject(response.getContentAsString());
@@ -151,8 +150,6 @@ public final class Agent {
             }
         } catch (Exception e) {
             Logger.e(this.getClass(), "#generateText", e);
-        } finally {
-            HttpClientFactory.getInstance().returnHttpClient(client);
         }
 
         return null;
@@ -0,0 +1,462 @@
+/*
+ * This source file is part of Cube.
+ *
+ * Copyright (c) 2023-2026 Ambrose Xu.
+ */
+
+package cube.service.aigc.resource;
+
+import cube.aigc.atom.Atom;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 图表原子数据的内存列式索引。
+ * 标签列使用字典编码，每个标签保存有序的行号列表；年和月按数值建立位图，日保存为整数列。
+ * 查询时将匹配标签的行合并为位图，再与年、月位图求交集，最后检查日列。
+ * 标签按子串匹配，与存储里的 {@code LIKE} 查询一致；年、月、日按数值精确匹配。
+ */
+public class AtomIndex {
+
+    /**
+     * 参与匹配的最多标签词数量。
+     */
+    public final static int MAX_WORDS = 8;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private int rows = 0;
+
+    private int capacity;
+
+    private long[] snColumn;
+
+    private int[] labelColumn;
+
+    private int[] dateColumn;
+
+    private int[] yearTextColumn;
+
+    private int[] monthTextColumn;
+
+    private int[] dateTextColumn;
+
+    private int[] valueColumn;
+
+    /**
+     * 有效行位图。
+     */
+    private long[] live;
+
+    private int liveCount = 0;
+
+    /**
+     * 标签字典。
+     */
+    private final Map<String, Integer> labelCodes = new HashMap<>();
+
+    private final List<String> labels = new ArrayList<>();
+
+    private final List<String> lowerCaseLabels = new ArrayList<>();
+
+    /**
+     * 每个标签的行号列表。
+     */
+    private final List<RowList> labelRows = new ArrayList<>();
+
+    /**
+     * 日期文本字典，用于还原原子数据。
+     */
+    private final Map<String, Integer> textCodes = new HashMap<>();
+
+    private final List<String> texts = new ArrayList<>();
+
+    private final Map<Integer, long[]> yearBitmaps = new HashMap<>();
+
+    private final Map<Integer, long[]> monthBitmaps = new HashMap<>();
+
+    private final Map<Long, Integer> snRows = new HashMap<>();
+
+    /**
+     * 查询词匹配的标签编码缓存，标签字典变化时清空。
+     */
+    private final ConcurrentHashMap<String, int[]> wordCache = new ConcurrentHashMap<>();
+
+    private long maxSn = 0;
+
+    public AtomIndex() {
+        this(1024);
+    }
+
+    public AtomIndex(int initialCapacity) {
+        this.capacity = Math.max(64, initialCapacity);
+        this.snColumn = new long[this.capacity];
+        this.labelColumn = new int[this.capacity];
+        this.dateColumn = new int[this.capacity];
+        this.yearTextColumn = new int[this.capacity];
+        this.monthTextColumn = new int[this.capacity];
+        this.dateTextColumn = new int[this.capacity];
+        this.valueColumn = new int[this.capacity];
+        this.live = new long[words(this.capacity)];
+    }
+
+    /**
+     * 有效的原子数量。
+     *
+     * @return
+     */
+    public int size() {
+        this.lock.readLock().lock();
+        try {
+            return this.liveCount;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    public long getMaxSn() {
+        this.lock.readLock().lock();
+        try {
+            return this.maxSn;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    public int numLabels() {
+        this.lock.readLock().lock();
+        try {
+            return this.labels.size();
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 添加原子数据，序号已存在时忽略。
+     *
+     * @param atom 带序号的原子数据。
+     */
+    public void add(Atom atom) {
+        this.lock.writeLock().lock();
+        try {
+            this.append(atom);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 批量添加原子数据。
+     *
+     * @param atoms 带序号的原子数据列表。
+     */
+    public void addAll(List<Atom> atoms) {
+        this.lock.writeLock().lock();
+        try {
+            for (Atom atom : atoms) {
+                this.append(atom);
+            }
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 删除原子数据。
+     *
+     * @param sn 原子数据序号。
+     * @return 返回是否删除。
+     */
+    public boolean remove(long sn) {
+        this.lock.writeLock().lock();
+        try {
+            Integer row = this.snRows.remove(sn);
+            if (null == row) {
+                return false;
+            }
+
+            clear(this.live, row);
+            --this.liveCount;
+            return true;
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 匹配原子数据，结果按添加顺序排列并去除标签和日期相同的数据。
+     *
+     * @param words 标签词，任意一个词是标签的子串即匹配。
+     * @param year 年，小于等于 0 表示不限制。
+     * @param month 月，小于等于 0 表示不限制。
+     * @param date 日，小于等于 0 表示不限制。
+     * @return 返回原子数据列表。
+     */
+    public List<Atom> match(List<String> words, int year, int month, int date) {
+        List<Atom> result = new ArrayList<>();
+
+        this.lock.readLock().lock();
+        try {
+            long[] bitmap = this.select(words, year, month);
+            if (null == bitmap) {
+                return result;
+            }
+
+            Set<Atom> unique = new HashSet<>();
+            for (int i = 0; i < bitmap.length; ++i) {
+                long word = bitmap[i];
+                while (word != 0) {
+                    int row = (i << 6) + Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+
+                    if (date > 0 && this.dateColumn[row] != date) {
+                        continue;
+                    }
+
+                    Atom atom = this.makeAtom(row);
+                    if (unique.add(atom)) {
+                        result.add(atom);
+                    }
+                }
+            }
+        } finally {
+            this.lock.readLock().unlock();
+        }
+
+        return result;
+    }
+
+    /**
+     * 判断是否存在匹配的原子数据。
+     *
+     * @param words 标签词。
+     * @param year 年，小于等于 0 表示不限制。
+     * @param month 月，小于等于 0 表示不限制。
+     * @return 存在时返回 {@code true} 。
+     */
+    public boolean exists(List<String> words, int year, int month) {
+        this.lock.readLock().lock();
+        try {
+            long[] bitmap = this.select(words, year, month);
+            if (null == bitmap) {
+                return false;
+            }
+
+            for (long word : bitmap) {
+                if (word != 0) {
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 选择标签、年、月匹配的有效行。
+     *
+     * @return 没有匹配行时可能返回 {@code null} 。
+     */
+    private long[] select(List<String> words, int year, int month) {
+        long[] yearBitmap = null;
+        if (year > 0) {
+            yearBitmap = this.yearBitmaps.get(year);
+            if (null == yearBitmap) {
+                return null;
+            }
+        }
+
+        long[] monthBitmap = null;
+        if (month > 0) {
+            monthBitmap = this.monthBitmaps.get(month);
+            if (null == monthBitmap) {
+                return null;
+            }
+        }
+
+        long[] bitmap = new long[words(this.rows)];
+        boolean hit = false;
+        for (int i = 0; i < MAX_WORDS && i < words.size(); ++i) {
+            for (int code : this.matchLabels(words.get(i))) {
+                this.labelRows.get(code).fill(bitmap);
+                hit = true;
+            }
+        }
+        if (!hit) {
+            return null;
+        }
+
+        for (int i = 0; i < bitmap.length; ++i) {
+            long word = bitmap[i] & this.live[i];
+            if (null != yearBitmap) {
+                word &= yearBitmap[i];
+            }
+            if (null != monthBitmap) {
+                word &= monthBitmap[i];
+            }
+            bitmap[i] = word;
+        }
+        return bitmap;
+    }
+
+    private int[] matchLabels(String word) {
+        String key = word.toLowerCase();
+        int[] codes = this.wordCache.get(key);
+        if (null != codes) {
+            return codes;
+        }
+
+        int[] buf = new int[16];
+        int num = 0;
+        for (int i = 0; i < this.lowerCaseLabels.size(); ++i) {
+            if (this.lowerCaseLabels.get(i).contains(key)) {
+                if (num == buf.length) {
+                    buf = Arrays.copyOf(buf, num * 2);
+                }
+                buf[num++] = i;
+            }
+        }
+
+        codes = Arrays.copyOf(buf, num);
+        this.wordCache.put(key, codes);
+        return codes;
+    }
+
+    private Atom makeAtom(int row) {
+        return new Atom(this.snColumn[row], this.labels.get(this.labelColumn[row]),
+                this.text(this.yearTextColumn[row]), this.text(this.monthTextColumn[row]),
+                this.text(this.dateTextColumn[row]), this.valueColumn[row]);
+    }
+
+    private String text(int code) {
+        return (code < 0) ? null : this.texts.get(code);
+    }
+
+    private void append(Atom atom) {
+        if (this.snRows.containsKey(atom.sn)) {
+            return;
+        }
+
+        if (this.rows == this.capacity) {
+            this.grow();
+        }
+
+        int row = this.rows++;
+
+        Integer label = this.labelCodes.get(atom.label);
+        if (null == label) {
+            label = this.labels.size();
+            this.labelCodes.put(atom.label, label);
+            this.labels.add(atom.label);
+            this.lowerCaseLabels.add(atom.label.toLowerCase());
+            this.labelRows.add(new RowList());
+            // 新标签可能匹配已缓存的词
+            this.wordCache.clear();
+        }
+        this.labelRows.get(label).add(row);
+
+        int year = atom.getYear();
+        int month = atom.getMonth();
+
+        this.snColumn[row] = atom.sn;
+        this.labelColumn[row] = label;
+        this.dateColumn[row] = atom.getDate();
+        this.yearTextColumn[row] = this.encodeText(atom.year);
+        this.monthTextColumn[row] = this.encodeText(atom.month);
+        this.dateTextColumn[row] = this.encodeText(atom.date);
+        this.valueColumn[row] = atom.value;
+
+        set(this.bitmap(this.yearBitmaps, year), row);
+        set(this.bitmap(this.monthBitmaps, month), row);
+        set(this.live, row);
+        ++this.liveCount;
+
+        this.snRows.put(atom.sn, row);
+        if (atom.sn > this.maxSn) {
+            this.maxSn = atom.sn;
+        }
+    }
+
+    private int encodeText(String text) {
+        if (null == text) {
+            return -1;
+        }
+
+        Integer code = this.textCodes.get(text);
+        if (null == code) {
+            code = this.texts.size();
+            this.textCodes.put(text, code);
+            this.texts.add(text);
+        }
+        return code;
+    }
+
+    private long[] bitmap(Map<Integer, long[]> bitmaps, int key) {
+        long[] bitmap = bitmaps.get(key);
+        if (null == bitmap) {
+            bitmap = new long[this.live.length];
+            bitmaps.put(key, bitmap);
+        }
+        return bitmap;
+    }
+
+    private void grow() {
+        this.capacity = this.capacity * 2;
+        this.snColumn = Arrays.copyOf(this.snColumn, this.capacity);
+        this.labelColumn = Arrays.copyOf(this.labelColumn, this.capacity);
+        this.dateColumn = Arrays.copyOf(this.dateColumn, this.capacity);
+        this.yearTextColumn = Arrays.copyOf(this.yearTextColumn, this.capacity);
+        this.monthTextColumn = Arrays.copyOf(this.monthTextColumn, this.capacity);
+        this.dateTextColumn = Arrays.copyOf(this.dateTextColumn, this.capacity);
+        this.valueColumn = Arrays.copyOf(this.valueColumn, this.capacity);
+
+        int words = words(this.capacity);
+        this.live = Arrays.copyOf(this.live, words);
+        for (Map.Entry<Integer, long[]> e : this.yearBitmaps.entrySet()) {
+            e.setValue(Arrays.copyOf(e.getValue(), words));
+        }
+        for (Map.Entry<Integer, long[]> e : this.monthBitmaps.entrySet()) {
+            e.setValue(Arrays.copyOf(e.getValue(), words));
+        }
+    }
+
+    private static int words(int bits) {
+        return (bits + 63) >>> 6;
+    }
+
+    private static void set(long[] bitmap, int row) {
+        bitmap[row >>> 6] |= 1L << row;
+    }
+
+    private static void clear(long[] bitmap, int row) {
+        bitmap[row >>> 6] &= ~(1L << row);
+    }
+
+    /**
+     * 标签的稀疏位图，保存升序的行号。
+     */
+    private final static class RowList {
+
+        private int[] rows = new int[4];
+
+        private int size = 0;
+
+        private void add(int row) {
+            if (this.size == this.rows.length) {
+                this.rows = Arrays.copyOf(this.rows, this.size * 2);
+            }
+            this.rows[this.size++] = row;
+        }
+
+        private void fill(long[] bitmap) {
+            for (int i = 0; i < this.size; ++i) {
+                int row = this.rows[i];
+                bitmap[row >>> 6] |= 1L << row;
+            }
+        }
+    }
+}
@@ -1229,6 +1229,8 @@ public class CounselingManager {
         public void run() {
             Logger.i(this.getClass(), "#run - The archive thread start: " + this.streamName);
 
+            StreamArchive archive = null;
+
             while (!this.archiveStopped.get()) {
                 RecordingArchive current = this.recordingArchives.poll();
                 if (null == current) {
@@ -1241,8 +1243,10 @@ public class CounselingManager {
                 }
 
                 try {
-                    StreamArchive archive = new StreamArchive(service.workingPath.getAbsolutePath(), streamName);
-                    // 保存
+                    if (null == archive) {
+                        archive = new StreamArchive(service.workingPath.getAbsolutePath(), streamName);
+                    }
+                    // 追加保存
                     File vsaFile = archive.save(current.index, current.pcmData);
                     if (null != vsaFile) {
                         if (Logger.isDebugLevel()) {
@@ -1257,6 +1261,11 @@ public class CounselingManager {
                 }
             }
 
+            if (null != archive) {
+                // 写入索引
+                archive.close();
+            }
+
             Logger.i(this.getClass(), "#run - The archive thread end: " + this.streamName);
         }
     }
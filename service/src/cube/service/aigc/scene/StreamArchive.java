@@ -7,31 +7,82 @@
 package cube.service.aigc.scene;
 
 import cell.util.ByteUtils;
-import cell.util.collection.FlexibleByteBuffer;
 import cell.util.log.Logger;
 import cube.util.AudioUtils;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.List;
-
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * 语音流归档文件。
+ * 归档文件是只追加的日志：文件头之后依次是记录，每条记录由 4 字节分段索引、4 字节数据长度和 PCM 数据组成。
+ * 旁路的索引文件记录已检查的日志长度和每条记录的索引与长度，每追加若干条记录后通过临时文件原子替换。
+ * 打开时先读取索引文件，再扫描索引之后追加的记录；分段乱序和重复在读取时按索引排序解决，重复的分段以最后写入的为准。
+ */
 public class StreamArchive {
 
     public final static String Extension = "vsa";
 
+    public final static String IndexExtension = "vsx";
+
+    private final static byte[] MAGIC = new byte[] { 'V', 'S', 'A', '2' };
+
+    private final static byte[] INDEX_MAGIC = new byte[] { 'V', 'S', 'X', '1' };
+
+    /**
+     * 记录头长度。
+     */
+    private final static int RECORD_HEADER_LENGTH = 8;
+
+    /**
+     * 每追加多少条记录重写一次索引文件。
+     */
+    private final static int CHECKPOINT_INTERVAL = 64;
+
+    private final static int BUFFER_SIZE = 64 * 1024;
+
     private final String streamName;
 
     private File file;
 
+    private File indexFile;
+
     private Header header;
 
+    /**
+     * 按写入顺序排列的记录，首次使用时加载。
+     */
+    private List<StreamChunk> records;
+
+    /**
+     * 按分段索引排列的有效记录。
+     */
+    private List<StreamChunk> sortedChunks;
+
+    /**
+     * 最后一条完整记录的结束位置。
+     */
+    private long logLength;
+
+    /**
+     * 索引文件已包含的记录数量。
+     */
+    private int numIndexed;
+
     public StreamArchive(String workingPath, String streamName) {
         this.streamName = streamName;
         this.file = new File(workingPath, streamName + "." + Extension);
+        this.indexFile = new File(workingPath, streamName + "." + IndexExtension);
 
         if (this.file.exists()) {
+            if (isLegacyFormat(this.file)) {
+                Logger.i(this.getClass(), "Convert legacy archive: " + this.file.getAbsolutePath());
+                convertLegacy(this.file);
+            }
             this.header = this.readHeader(this.file);
         }
         else {
@@ -62,41 +113,52 @@ public class StreamArchive {
      * @return
      */
     public long calculateDurationMillis() {
-        if (0 == this.header.numChunks()) {
-            return 0;
-        }
-
-        byte[] pcmData = this.loadPCM();
-        if (null == pcmData) {
+        long length = this.getPCMLength();
+        if (0 == length) {
             Logger.w(this.getClass(), "#calculateDurationMillis - No PCM data: " + this.streamName);
             return 0;
         }
 
-        double frames = ((double) pcmData.length) / (((double) this.header.sampleSizeInBits) / 8.0 * (double) this.header.channels);
+        double frames = ((double) length) / (((double) this.header.sampleSizeInBits) / 8.0 * (double) this.header.channels);
         return Math.round(frames / ((double) this.header.sampleRate) * 1000.0);
     }
 
-    public byte[] loadPCM() {
-        if (this.header.numChunks() == 0) {
+    /**
+     * 按分段索引顺序计算的 PCM 数据总长度。
+     *
+     * @return
+     */
+    public synchronized long getPCMLength() {
+        long length = 0;
+        for (StreamChunk chunk : this.getSortedChunks()) {
+            length += chunk.length;
+        }
+        return length;
+    }
+
+    public synchronized byte[] loadPCM() {
+        List<StreamChunk> chunks = this.getSortedChunks();
+        if (chunks.isEmpty()) {
             Logger.w(this.getClass(), "#loadPCM - No data loaded: " + file.getAbsolutePath());
             return null;
         }
 
+        long length = this.getPCMLength();
+        if (length > Integer.MAX_VALUE) {
+            Logger.w(this.getClass(), "#loadPCM - PCM data is too large: " + file.getAbsolutePath());
+            return null;
+        }
+
         RandomAccessFile raf = null;
         try {
-            FlexibleByteBuffer buf = new FlexibleByteBuffer();
-            raf = new RandomAccessFile(file.getAbsolutePath(), "r");
-            raf.seek(this.header.lengthInBytes);
-            byte[] bytes = new byte[4096];
-            int len;
-            while ((len = raf.read(bytes)) > 0) {
-                buf.put(bytes, 0, len);
-            }
-            // flip
-            buf.flip();
-
-            byte[] result = new byte[buf.limit()];
-            System.arraycopy(buf.array(), 0, result, 0, buf.limit());
+            byte[] result = new byte[(int) length];
+            int position = 0;
+            raf = new RandomAccessFile(this.file, "r");
+            for (StreamChunk chunk : chunks) {
+                raf.seek(chunk.offset);
+                raf.readFully(result, position, chunk.length);
+                position += chunk.length;
+            }
             return result;
         } catch (Exception e) {
             Logger.e(this.getClass(), "#loadPCM", e);
@@ -112,36 +174,64 @@ public class StreamArchive {
         }
     }
 
+    /**
+     * 按分段索引顺序将 PCM 数据写入输出流。
+     *
+     * @param output 输出流。
+     * @return 返回写入的字节数。
+     * @throws IOException
+     */
+    public synchronized long writePCM(OutputStream output) throws IOException {
+        long total = 0;
+        byte[] buf = new byte[BUFFER_SIZE];
+        try (RandomAccessFile raf = new RandomAccessFile(this.file, "r")) {
+            for (StreamChunk chunk : this.getSortedChunks()) {
+                raf.seek(chunk.offset);
+                int remaining = chunk.length;
+                while (remaining > 0) {
+                    int len = Math.min(remaining, buf.length);
+                    raf.readFully(buf, 0, len);
+                    output.write(buf, 0, len);
+                    remaining -= len;
+                }
+                total += chunk.length;
+            }
+        }
+        return total;
+    }
+
     /**
      * 转为 WAV 文件。
      *
      * @return
      */
-    public File outputWavFile() {
-        byte[] pcmData = this.loadPCM();
-        if (null == pcmData) {
+    public synchronized File outputWavFile() {
+        long length = this.getPCMLength();
+        if (0 == length || length > Integer.MAX_VALUE) {
+            Logger.w(this.getClass(), "#outputWavFile - PCM data length error: " + length);
             return null;
         }
 
-        byte[] wavData = AudioUtils.pcmToWav(pcmData);
         File output = new File(this.file.getParent(), this.streamName + ".wav");
         if (output.exists()) {
             output.delete();
         }
 
-        FileOutputStream fos = null;
+        OutputStream os = null;
         try {
-            fos = new FileOutputStream(output);
-            fos.write(wavData);
-            fos.flush();
+            os = new BufferedOutputStream(new FileOutputStream(output), BUFFER_SIZE);
+            os.write(AudioUtils.buildWavHeader((int) length, this.header.sampleRate,
+                    this.header.sampleSizeInBits, this.header.channels));
+            this.writePCM(os);
+            os.flush();
             return output;
         } catch (Exception e) {
             Logger.e(this.getClass(), "#outputWavFile", e);
             return null;
         } finally {
-            if (null != fos) {
+            if (null != os) {
                 try {
-                    fos.close();
+                    os.close();
                 } catch (IOException e) {
                     // Nothing
                 }
@@ -152,104 +242,229 @@ public class StreamArchive {
     /**
      * 删除文件。
      */
-    public boolean delete() {
+    public synchronized boolean delete() {
+        this.records = null;
+        this.sortedChunks = null;
+
+        if (this.indexFile.exists()) {
+            this.indexFile.delete();
+        }
+
         if (this.file.exists()) {
             return file.delete();
         }
         return false;
     }
 
-    public File save(int index, byte[] pcmData) {
-        StreamChunk chunk = new StreamChunk(index, pcmData.length);
-        chunk.pcmData = pcmData;
+    /**
+     * 追加 PCM 数据。
+     *
+     * @param index 分段索引。
+     * @param pcmData PCM 数据。
+     * @return 返回归档文件，失败时返回 {@code null} 。
+     */
+    public synchronized File save(int index, byte[] pcmData) {
+        if (null == this.header) {
+            Logger.e(this.getClass(), "#save - NO VSA format file: " + this.file.getAbsolutePath());
+            return null;
+        }
 
-        if (this.file.exists()) {
-            Logger.d(this.getClass(), "#save - File exists: " + this.file.getAbsolutePath());
+        FileOutputStream fos = null;
+        try {
+            if (!this.file.exists()) {
+                Logger.d(this.getClass(), "#save - New file: " + this.file.getAbsolutePath());
 
-            // 旧数据
-            if (!this.readPCMToChunks(this.file, this.header)) {
-                Logger.e(this.getClass(), "#save - PCM data error: " + this.file.getAbsolutePath());
-                return null;
+                if (this.indexFile.exists()) {
+                    this.indexFile.delete();
+                }
+
+                byte[] headerBytes = this.header.toBytes();
+                fos = new FileOutputStream(this.file);
+                fos.write(headerBytes);
+                fos.close();
+                fos = null;
+
+                this.records = new ArrayList<>();
+                this.logLength = headerBytes.length;
+                this.numIndexed = 0;
+            }
+            else if (null == this.records || this.file.length() != this.logLength) {
+                // 重新检查日志并截断未写完的记录
+                this.loadRecords(true);
             }
 
-            // 新数据
-            this.header.addStream(chunk);
+            byte[] recordHeader = new byte[RECORD_HEADER_LENGTH];
+            System.arraycopy(ByteUtils.toBytes(index), 0, recordHeader, 0, 4);
+            System.arraycopy(ByteUtils.toBytes(pcmData.length), 0, recordHeader, 4, 4);
 
-            FileOutputStream fos = null;
-            try {
-                fos = new FileOutputStream(this.file);
-                // 文件头
-                fos.write(this.header.toBytes());
-                // PCM 数据
-                for (StreamChunk sc : this.header.chunks) {
-                    fos.write(sc.pcmData, 0, sc.length);
-                }
-                fos.flush();
+            fos = new FileOutputStream(this.file, true);
+            fos.write(recordHeader);
+            fos.write(pcmData);
+            fos.flush();
+            fos.close();
+            fos = null;
 
-                return this.file;
-            } catch (Exception e) {
-                Logger.e(this.getClass(), "#save", e);
-                return null;
-            } finally {
-                if (null != fos) {
-                    try {
-                        fos.close();
-                    } catch (IOException e) {
-                        // Nothing
-                    }
+            this.records.add(new StreamChunk(index, pcmData.length, this.logLength + RECORD_HEADER_LENGTH));
+            this.logLength += RECORD_HEADER_LENGTH + pcmData.length;
+            this.sortedChunks = null;
+
+            if (this.records.size() - this.numIndexed >= CHECKPOINT_INTERVAL) {
+                this.writeIndex();
+            }
+
+            return this.file;
+        } catch (Exception e) {
+            Logger.e(this.getClass(), "#save", e);
+            // 下次保存时重新检查日志
+            this.records = null;
+            this.sortedChunks = null;
+            return null;
+        } finally {
+            if (null != fos) {
+                try {
+                    fos.close();
+                } catch (IOException e) {
+                    // Nothing
                 }
             }
         }
-        else {
-            Logger.d(this.getClass(), "#save - New file: " + this.file.getAbsolutePath());
+    }
+
+    /**
+     * 写入尚未进入索引文件的记录。
+     */
+    public synchronized void close() {
+        if (null != this.records && this.records.size() > this.numIndexed && this.file.exists()) {
+            try {
+                this.writeIndex();
+            } catch (IOException e) {
+                Logger.w(this.getClass(), "#close - Write index failed: " + this.indexFile.getAbsolutePath(), e);
+            }
+        }
+    }
+
+    private List<StreamChunk> getSortedChunks() {
+        if (null != this.sortedChunks) {
+            return this.sortedChunks;
+        }
 
-            this.header.addStream(chunk);
+        if (null == this.header || !this.file.exists()) {
+            return Collections.emptyList();
+        }
 
-            FileOutputStream fos = null;
+        if (null == this.records) {
             try {
-                fos = new FileOutputStream(this.file);
-                // 文件头
-                fos.write(this.header.toBytes());
-                // PCM 数据
-                for (StreamChunk sc : this.header.chunks) {
-                    fos.write(sc.pcmData, 0, sc.length);
-                }
-                fos.flush();
-                return this.file;
-            } catch (Exception e) {
-                Logger.e(this.getClass(), "#save", e);
-                return null;
-            } finally {
-                if (null != fos) {
-                    try {
-                        fos.close();
-                    } catch (IOException e) {
-                        // Nothing
-                    }
-                }
+                this.loadRecords(false);
+            } catch (IOException e) {
+                Logger.e(this.getClass(), "#getSortedChunks", e);
+                return Collections.emptyList();
             }
         }
+
+        // 相同索引以最后写入的记录为准
+        TreeMap<Integer, StreamChunk> map = new TreeMap<>();
+        for (StreamChunk chunk : this.records) {
+            map.put(chunk.index, chunk);
+        }
+        this.sortedChunks = new ArrayList<>(map.values());
+        return this.sortedChunks;
     }
 
-    private boolean readPCMToChunks(File file, Header header) {
+    /**
+     * 读取索引文件并扫描之后追加的记录。
+     *
+     * @param repair 是否截断末尾未写完的记录。
+     * @throws IOException
+     */
+    private void loadRecords(boolean repair) throws IOException {
+        List<StreamChunk> list = new ArrayList<>();
+        long position = this.header.lengthInBytes;
+        long fileLength = this.file.length();
+
+        this.numIndexed = 0;
+        if (this.indexFile.exists()) {
+            List<StreamChunk> indexed = new ArrayList<>();
+            long indexedLength = this.readIndex(indexed);
+            if (indexedLength > 0 && indexedLength <= fileLength) {
+                list = indexed;
+                position = indexedLength;
+                this.numIndexed = indexed.size();
+            }
+            else {
+                Logger.w(this.getClass(), "#loadRecords - Index file is invalid: " + this.indexFile.getAbsolutePath());
+            }
+        }
+
         RandomAccessFile raf = null;
         try {
-            raf = new RandomAccessFile(file.getAbsolutePath(), "r");
-            raf.seek(header.lengthInBytes);
+            raf = new RandomAccessFile(this.file, repair ? "rw" : "r");
+            byte[] recordHeader = new byte[RECORD_HEADER_LENGTH];
+            byte[] bytes = new byte[4];
+            while (position + RECORD_HEADER_LENGTH <= fileLength) {
+                raf.seek(position);
+                raf.readFully(recordHeader);
+                System.arraycopy(recordHeader, 0, bytes, 0, 4);
+                int index = ByteUtils.toInt(bytes);
+                System.arraycopy(recordHeader, 4, bytes, 0, 4);
+                int length = ByteUtils.toInt(bytes);
+                if (length < 0 || position + RECORD_HEADER_LENGTH + length > fileLength) {
+                    break;
+                }
+
+                list.add(new StreamChunk(index, length, position + RECORD_HEADER_LENGTH));
+                position += RECORD_HEADER_LENGTH + length;
+            }
+
+            if (position < fileLength && repair) {
+                Logger.w(this.getClass(), "#loadRecords - Truncate incomplete record: " + this.file.getAbsolutePath()
+                        + " - " + (fileLength - position) + " bytes");
+                raf.setLength(position);
+            }
+        } finally {
+            if (null != raf) {
+                raf.close();
+            }
+        }
+
+        this.records = list;
+        this.logLength = position;
+        this.sortedChunks = null;
+    }
+
+    /**
+     * 读取索引文件。
+     *
+     * @param list 记录列表。
+     * @return 返回索引覆盖的日志长度，索引文件无效时返回 {@code -1} 。
+     */
+    private long readIndex(List<StreamChunk> list) {
+        DataInputStream dis = null;
+        try {
+            dis = new DataInputStream(new BufferedInputStream(new FileInputStream(this.indexFile), BUFFER_SIZE));
+            byte[] magic = new byte[INDEX_MAGIC.length];
+            dis.readFully(magic);
+            if (!Arrays.equals(magic, INDEX_MAGIC)) {
+                return -1;
+            }
 
-            for (StreamChunk chunk : header.chunks) {
-                byte[] bytes = new byte[chunk.length];
-                raf.readFully(bytes);
-                chunk.pcmData = bytes;
+            long length = dis.readLong();
+            int num = dis.readInt();
+            long offset = this.header.lengthInBytes;
+            for (int i = 0; i < num; ++i) {
+                int index = dis.readInt();
+                int chunkLength = dis.readInt();
+                list.add(new StreamChunk(index, chunkLength, offset + RECORD_HEADER_LENGTH));
+                offset += RECORD_HEADER_LENGTH + chunkLength;
             }
-            return true;
+
+            return (offset == length) ? length : -1;
         } catch (Exception e) {
-            Logger.e(this.getClass(), "#readPCMToChunks", e);
-            return false;
+            Logger.w(this.getClass(), "#readIndex - " + this.indexFile.getAbsolutePath(), e);
+            return -1;
         } finally {
-            if (null != raf) {
+            if (null != dis) {
                 try {
-                    raf.close();
+                    dis.close();
                 } catch (IOException e) {
                     // Nothing
                 }
@@ -257,76 +472,225 @@ public class StreamArchive {
         }
     }
 
+    /**
+     * 写入临时文件后原子替换索引文件。
+     *
+     * @throws IOException
+     */
+    private void writeIndex() throws IOException {
+        writeIndex(this.indexFile, this.records, this.logLength);
+        this.numIndexed = this.records.size();
+    }
+
+    private static void writeIndex(File indexFile, List<StreamChunk> records, long logLength) throws IOException {
+        File temp = new File(indexFile.getParentFile(), indexFile.getName() + ".tmp");
+        try (DataOutputStream dos = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp), BUFFER_SIZE))) {
+            dos.write(INDEX_MAGIC);
+            dos.writeLong(logLength);
+            dos.writeInt(records.size());
+            for (StreamChunk chunk : records) {
+                dos.writeInt(chunk.index);
+                dos.writeInt(chunk.length);
+            }
+        }
+
+        try {
+            Files.move(temp.toPath(), indexFile.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
     private Header readHeader(File file) {
-        int sepCounts = 6;
-        FileInputStream fis = null;
-        FlexibleByteBuffer buf = new FlexibleByteBuffer();
+        DataInputStream dis = null;
         try {
-            fis = new FileInputStream(file);
-            byte b;
-            int lastSepIndex = 0;
-            int index = -1;
-            while ((b = (byte) fis.read()) != -1) {
-                ++index;
-                buf.put(b);
-                if (b == Header.SEP && sepCounts > 0) {
-                    --sepCounts;
-                    lastSepIndex = index;
+            dis = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1024));
+            byte[] magic = new byte[MAGIC.length];
+            dis.readFully(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                Logger.d(this.getClass(), "#readHeader - NO VSA format file: " + file.getAbsolutePath());
+                return null;
+            }
+
+            byte[] bytes = new byte[4];
+            dis.readFully(bytes);
+            int length = ByteUtils.toInt(bytes);
+            if (length <= 0 || length > 4096) {
+                throw new IOException("Header length error: " + length);
+            }
+            byte[] info = new byte[length];
+            dis.readFully(info);
+            return new Header(info);
+        } catch (Exception e) {
+            Logger.e(this.getClass(), "#readHeader", e);
+            return null;
+        } finally {
+            if (null != dis) {
+                try {
+                    dis.close();
+                } catch (IOException e) {
+                    // Nothing
                 }
-                else if (b == Header.EOH_1) {
-                    // 下一字节
-                    byte next;
-                    if ((next = (byte) fis.read()) >= 0) {
-                        ++index;
-                        buf.put(next);
-                        if (next == Header.EOH_2) {
-                            break;
-                        }
-                        else if (next == Header.SEP && sepCounts > 0) {
-                            --sepCounts;
-                            lastSepIndex = index;
-                        }
+            }
+        }
+    }
+
+    private static boolean isLegacyFormat(File file) {
+        try (FileInputStream fis = new FileInputStream(file)) {
+            return fis.read() == LegacyFormat.BOH;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 将旧格式的归档文件转换为日志格式。
+     * 旧格式的文件头保存全部分段的索引和长度，PCM 数据按分段索引顺序连续存放。
+     * 转换结果先写入临时文件，再原子替换原文件。
+     *
+     * @param file 旧格式的归档文件。
+     * @return 转换成功返回 {@code true} 。
+     */
+    public static boolean convertLegacy(File file) {
+        File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+        DataInputStream dis = null;
+        DataOutputStream dos = null;
+        try {
+            dis = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+            if (dis.read() != LegacyFormat.BOH) {
+                return false;
+            }
+
+            // 6 个字段，每个字段以分隔符结束
+            ByteArrayOutputStream info = new ByteArrayOutputStream();
+            int numSep = 0;
+            while (numSep < 6) {
+                int b = dis.read();
+                if (b < 0) {
+                    throw new EOFException("Legacy header is incomplete");
+                }
+                if (b == LegacyFormat.SEP) {
+                    ++numSep;
+                    if (numSep == 6) {
+                        break;
                     }
                 }
+                info.write(b);
             }
 
-            buf.flip();
+            // 分段表，每个分段 8 字节，以两字节结束符结束
+            List<int[]> chunks = new ArrayList<>();
+            byte[] bytes = new byte[4];
+            dis.mark(2);
+            if (dis.read() == LegacyFormat.EMP) {
+                dis.readFully(new byte[2]);
+            }
+            else {
+                dis.reset();
+                while (true) {
+                    dis.mark(2);
+                    if (dis.read() == LegacyFormat.EOH_1 && dis.read() == LegacyFormat.EOH_2) {
+                        break;
+                    }
+                    dis.reset();
 
-            byte[] data = buf.array();
-            if (data[0] != Header.BOH) {
-                Logger.d(this.getClass(), "#readHeader - NO VSA format file: " + file.getAbsolutePath());
-                return null;
+                    dis.readFully(bytes);
+                    int index = ByteUtils.toInt(bytes);
+                    dis.readFully(bytes);
+                    int length = ByteUtils.toInt(bytes);
+                    chunks.add(new int[] { index, length });
+                }
             }
 
-            byte[] info = new byte[lastSepIndex - 1];
-            System.arraycopy(data, 1, info, 0, info.length);
+            byte[] headerBytes = makeHeaderBytes(info.toByteArray());
+            List<StreamChunk> records = new ArrayList<>();
+            long position = headerBytes.length;
+            byte[] buf = new byte[BUFFER_SIZE];
+
+            dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), BUFFER_SIZE));
+            dos.write(headerBytes);
+            for (int[] chunk : chunks) {
+                dos.write(ByteUtils.toBytes(chunk[0]));
+                dos.write(ByteUtils.toBytes(chunk[1]));
+                int remaining = chunk[1];
+                while (remaining > 0) {
+                    int len = Math.min(remaining, buf.length);
+                    dis.readFully(buf, 0, len);
+                    dos.write(buf, 0, len);
+                    remaining -= len;
+                }
+                records.add(new StreamChunk(chunk[0], chunk[1], position + RECORD_HEADER_LENGTH));
+                position += RECORD_HEADER_LENGTH + chunk[1];
+            }
+            dos.close();
+            dos = null;
+            dis.close();
+            dis = null;
+
+            File indexFile = new File(file.getParentFile(),
+                    file.getName().substring(0, file.getName().length() - Extension.length()) + IndexExtension);
+            if (indexFile.exists()) {
+                indexFile.delete();
+            }
 
-            byte[] tags = new byte[buf.limit() - lastSepIndex - 3];
-            System.arraycopy(data, lastSepIndex + 1, tags, 0, tags.length);
+            try {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
 
-            Header header = new Header(info, tags);
-            return header;
+            writeIndex(indexFile, records, position);
+            return true;
         } catch (Exception e) {
-            Logger.e(this.getClass(), "#readHeader", e);
-            return null;
+            Logger.e(StreamArchive.class, "#convertLegacy - " + file.getAbsolutePath(), e);
+            return false;
         } finally {
-            if (null != fis) {
+            if (null != dis) {
+                try {
+                    dis.close();
+                } catch (IOException e) {
+                    // Nothing
+                }
+            }
+            if (null != dos) {
                 try {
-                    fis.close();
+                    dos.close();
                 } catch (IOException e) {
                     // Nothing
                 }
             }
+            if (temp.exists()) {
+                temp.delete();
+            }
         }
     }
 
+    private static byte[] makeHeaderBytes(byte[] info) {
+        byte[] result = new byte[MAGIC.length + 4 + info.length];
+        System.arraycopy(MAGIC, 0, result, 0, MAGIC.length);
+        System.arraycopy(ByteUtils.toBytes(info.length), 0, result, MAGIC.length, 4);
+        System.arraycopy(info, 0, result, MAGIC.length + 4, info.length);
+        return result;
+    }
+
+    /**
+     * 旧格式文件头的分隔字节。
+     */
+    private final static class LegacyFormat {
+
+        private final static int BOH = 0x11;
+        private final static int EOH_1 = 0x17;
+        private final static int EOH_2 = 0x03;
+        private final static int SEP = '\n';
+        private final static int EMP = '~';
+    }
+
     public class Header {
 
-        protected final static byte BOH = 0x11;
-        protected final static byte EOH_1 = 0x17;
-        protected final static byte EOH_2 = 0x03;
         protected final static byte SEP = '\n';
-        protected final static byte EMP = '~';
 
         public final String version;
         public final String streamName;
@@ -336,26 +700,19 @@ public class StreamArchive {
         public final int sampleSizeInBits;
         public final int channels;
 
-        protected List<StreamChunk> chunks;
-
         protected int lengthInBytes;
 
         protected Header(String streamName, long timestamp, int sampleRate, int sampleSizeInBits, int channels) {
-            this.version = "1.0";
+            this.version = "2.0";
             this.streamName = streamName;
             this.timestamp = timestamp;
             this.sampleRate = sampleRate;
             this.sampleSizeInBits = sampleSizeInBits;
             this.channels = channels;
-            this.chunks = new ArrayList<>();
-
-            this.lengthInBytes = this.version.length() + streamName.length() + Long.toString(timestamp).length() +
-                    Integer.toString(sampleRate).length() + Integer.toString(sampleSizeInBits).length() +
-                    Integer.toString(channels).length() + 10;
+            this.lengthInBytes = this.toBytes().length;
         }
 
-        protected Header(byte[] info, byte[] tags) throws IOException,
-                NumberFormatException, IndexOutOfBoundsException, NullPointerException {
+        protected Header(byte[] info) throws IOException, NumberFormatException {
             String infoString = new String(info, StandardCharsets.UTF_8);
             String[] infos = infoString.split(new String(new byte[]{ SEP }, StandardCharsets.UTF_8));
             if (infos.length != 6) {
@@ -369,121 +726,54 @@ public class StreamArchive {
             this.sampleSizeInBits = Integer.parseInt(infos[4]);
             this.channels = Integer.parseInt(infos[5]);
 
-//            System.out.println("version: " + version);
-//            System.out.println("streamName: " + streamName);
-//            System.out.println("timestamp: " + timestamp);
-//            System.out.println("sampleRate: " + sampleRate);
-//            System.out.println("sampleSizeInBits: " + sampleSizeInBits);
-//            System.out.println("channels: " + channels);
-
-            this.chunks = new ArrayList<>();
-            if (tags.length > 0 && (tags.length % 8) == 0) {
-                int size = tags.length / 4;
-                for (int i = 0; i < size; ++i) {
-                    byte[] bytesIndex = new byte[4];
-                    byte[] bytesLength = new byte[4];
-                    // 定位到 i
-                    System.arraycopy(tags, i * 4, bytesIndex, 0, 4);
-                    // 定位到 i + 1
-                    i += 1;
-                    System.arraycopy(tags, i * 4, bytesLength, 0, 4);
-
-                    int index = ByteUtils.toInt(bytesIndex);
-                    int length = ByteUtils.toInt(bytesLength);
-                    StreamChunk chunk = new StreamChunk(index, length);
-                    this.chunks.add(chunk);
-                }
-            }
-
-            // 1 byte BOH + 1 byte SEP + 2 bytes EOH = 4 bytes
-            this.lengthInBytes = info.length + tags.length + 4;
+            this.lengthInBytes = MAGIC.length + 4 + info.length;
         }
 
         protected byte[] toBytes() {
-            FlexibleByteBuffer buf = new FlexibleByteBuffer();
-            buf.put(BOH);
-            buf.put(this.version.getBytes(StandardCharsets.UTF_8));
-            buf.put(SEP);
-            buf.put(this.streamName.getBytes(StandardCharsets.UTF_8));
-            buf.put(SEP);
-            buf.put(Long.toString(this.timestamp).getBytes(StandardCharsets.UTF_8));
-            buf.put(SEP);
-            buf.put(Integer.toString(this.sampleRate).getBytes(StandardCharsets.UTF_8));
-            buf.put(SEP);
-            buf.put(Integer.toString(this.sampleSizeInBits).getBytes(StandardCharsets.UTF_8));
-            buf.put(SEP);
-            buf.put(Integer.toString(this.channels).getBytes(StandardCharsets.UTF_8));
-            buf.put(SEP);
-            if (this.chunks.isEmpty()) {
-                buf.put(EMP);
-            }
-            else {
-                for (StreamChunk chunk : this.chunks) {
-                    buf.put(chunk.toBytes());
-                }
-            }
-            buf.put(EOH_1);
-            buf.put(EOH_2);
-
-            buf.flip();
-
-            byte[] result = new byte[buf.limit()];
-            System.arraycopy(buf.array(), 0, result, 0, buf.limit());
-
-            // 更新长度数据
-            this.lengthInBytes = buf.limit();
-
+            String info = this.version + (char) SEP + this.streamName + (char) SEP + this.timestamp + (char) SEP +
+                    this.sampleRate + (char) SEP + this.sampleSizeInBits + (char) SEP + this.channels;
+            byte[] result = makeHeaderBytes(info.getBytes(StandardCharsets.UTF_8));
+            this.lengthInBytes = result.length;
             return result;
         }
 
+        /**
+         * 按分段索引去重后的分段数量。
+         *
+         * @return
+         */
         public int numChunks() {
-            return this.chunks.size();
-        }
-
-        public StreamChunk getStreamChunk(int index) {
-            if (this.chunks.isEmpty()) {
-                return null;
+            synchronized (StreamArchive.this) {
+                return getSortedChunks().size();
             }
-
-            return this.chunks.get(index);
         }
 
-        protected void addStream(StreamChunk chunk) {
-            for (StreamChunk current : this.chunks) {
-                if (current.index == chunk.index) {
-                    this.chunks.remove(current);
-                    break;
+        public StreamChunk getStreamChunk(int index) {
+            synchronized (StreamArchive.this) {
+                List<StreamChunk> chunks = getSortedChunks();
+                if (chunks.isEmpty()) {
+                    return null;
                 }
-            }
-
-            this.chunks.add(chunk);
 
-            this.chunks.sort(new Comparator<StreamChunk>() {
-                @Override
-                public int compare(StreamChunk st1, StreamChunk st2) {
-                    return st1.index - st2.index;
-                }
-            });
+                return chunks.get(index);
+            }
         }
     }
 
-    public class StreamChunk {
+    public static class StreamChunk {
 
         public final int index;
         public final int length;
 
-        protected byte[] pcmData;
+        /**
+         * PCM 数据在日志中的位置。
+         */
+        protected final long offset;
 
-        protected StreamChunk(int index, int length) {
+        protected StreamChunk(int index, int length, long offset) {
             this.index = index;
             this.length = length;
-        }
-
-        protected byte[] toBytes() {
-            byte[] data = new byte[8];
-            System.arraycopy(ByteUtils.toBytes(this.index), 0, data, 0, 4);
-            System.arraycopy(ByteUtils.toBytes(this.length), 0, data, 4, 4);
-            return data;
+            this.offset = offset;
         }
     }
 }
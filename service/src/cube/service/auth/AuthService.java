@@ -12,6 +12,9 @@ import cell.util.log.Logger;
 import cube.auth.AuthConsts;
 import cube.auth.AuthToken;
 import cube.auth.PrimaryDescription;
+import cube.auth.SignedToken;
+import cube.auth.TokenKeySet;
+import cube.auth.TokenRevocationList;
 import cube.common.action.ClientAction;
 import cube.common.entity.AuthDomain;
 import cube.common.entity.IceServer;
@@ -22,10 +25,13 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Properties;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * 授权服务。
@@ -46,13 +52,54 @@ public class AuthService extends AbstractModule {
 
     private Cache tokenCache;
 
-    private ConcurrentHashMap<String, AuthToken> authTokenMap;
+    /**
+     * 令牌本地缓存。
+     */
+    private AuthTokenCache authTokenCache;
+
+    /**
+     * 令牌加载器。
+     */
+    private AuthTokenCache.Loader tokenLoader;
 
     private ConcurrentHashMap<String, AuthDomainSet> authDomainMap;
 
+    /**
+     * 是否签发签名令牌。
+     */
+    private boolean signedToken = false;
+
+    /**
+     * 签名密钥轮换周期。
+     */
+    private long keyRotation = 24L * 60 * 60 * 1000;
+
+    /**
+     * 签名密钥集。
+     */
+    private TokenKeySet tokenKeySet;
+
+    /**
+     * 签名令牌吊销列表。
+     */
+    private TokenRevocationList revocationList;
+
+    private long lastKeyCheck = 0;
+
+    private List<TokenKeyListener> tokenKeyListeners;
+
     public AuthService() {
-        this.authTokenMap = new ConcurrentHashMap<>();
+        this.authTokenCache = new AuthTokenCache(100000, 60L * 1000, 30L * 1000, 2000);
+        this.tokenLoader = new AuthTokenCache.Loader() {
+            @Override
+            public AuthToken load(String code) {
+                return loadToken(code);
+            }
+        };
         this.authDomainMap = new ConcurrentHashMap<>();
+        this.tokenKeySet = new TokenKeySet(8L * 24 * 60 * 60 * 1000);
+        this.revocationList = new TokenRevocationList();
+        this.tokenKeyListeners = new CopyOnWriteArrayList<>();
     }
 
     @Override
@@ -100,6 +147,10 @@ public class AuthService extends AbstractModule {
             }
         }
 
+        // 签名令牌
+        this.loadTokenConfig();
+        this.loadTokenKeys(System.currentTimeMillis());
+
         // 创建插件系统
         this.pluginSystem = new AuthServicePluginSystem();
 
@@ -122,7 +173,210 @@ public class AuthService extends AbstractModule {
 
     @Override
     public void onTick(cube.core.Module module, Kernel kernel) {
-        // Nothing
+        long now = System.currentTimeMillis();
+        this.authTokenCache.evictExpired(now);
+
+        if (now - this.lastKeyCheck > 60 * 1000) {
+            this.lastKeyCheck = now;
+            this.loadTokenKeys(now);
+        }
+    }
+
+    private void loadTokenConfig() {
+        String[] files = new String[] {
+                "config/auth-token.properties",
+                "auth-token.properties"
+        };
+
+        Properties properties = null;
+        for (String file : files) {
+            try {
+                properties = ConfigUtils.readProperties(file);
+            } catch (IOException e) {
+                // Nothing
+            }
+
+            if (null != properties) {
+                break;
+            }
+        }
+
+        if (null == properties) {
+            return;
+        }
+
+        try {
+            this.signedToken = Boolean.parseBoolean(properties.getProperty("token.signed", "false").trim());
+            this.keyRotation = Long.parseLong(properties.getProperty("token.key.rotation", "24").trim())
+                    * 60 * 60 * 1000;
+            long retention = Long.parseLong(properties.getProperty("token.key.retention", "192").trim())
+                    * 60 * 60 * 1000;
+            this.tokenKeySet = new TokenKeySet(retention);
+        } catch (NumberFormatException e) {
+            Logger.w(this.getClass(), "#loadTokenConfig - Config format error", e);
+        }
+
+        Logger.i(this.getClass(), "#loadTokenConfig - Signed token: " + this.signedToken);
+    }
+
+    /**
+     * 从令牌池同步签名密钥集和吊销列表，到期时轮换密钥。
+     *
+     * @param now
+     */
+    private void loadTokenKeys(long now) {
+        if (!this.signedToken) {
+            return;
+        }
+
+        boolean changed = false;
+
+        CacheKey keySetKey = new CacheKey("_TokenKeySet");
+        CacheKey revocationKey = new CacheKey("_TokenRevocationList");
+
+        // 合并其他服务节点写入的数据
+        CacheValue value = this.tokenCache.get(keySetKey);
+        if (null != value) {
+            changed = this.tokenKeySet.merge(value.get());
+        }
+        value = this.tokenCache.get(revocationKey);
+        if (null != value) {
+            changed = this.revocationList.merge(value.get()) || changed;
+        }
+
+        if (this.needRotateTokenKey(now)) {
+            this.rotateTokenKey(keySetKey, now);
+            changed = true;
+        }
+
+        if (this.revocationList.purge(now) > 0) {
+            this.storeRevocationList(now);
+            changed = true;
+        }
+
+        if (changed) {
+            this.fireTokenKeysChanged();
+        }
+    }
+
+    private boolean needRotateTokenKey(long now) {
+        TokenKeySet.Key current = this.tokenKeySet.getCurrentKey();
+        return (null == current || now - current.created >= this.keyRotation);
+    }
+
+    /**
+     * 在缓存事务内合并其他服务节点写入的密钥集，仍然需要轮换时再轮换并写回，
+     * 避免多个节点同时轮换时相互覆盖密钥。
+     *
+     * @param keySetKey
+     * @param now
+     */
+    private void rotateTokenKey(CacheKey keySetKey, long now) {
+        this.tokenCache.execute(keySetKey, new CacheTransaction() {
+            @Override
+            public void perform(TransactionContext context) {
+                CacheValue value = context.get();
+                if (null != value) {
+                    tokenKeySet.merge(value.get());
+                }
+
+                if (needRotateTokenKey(now)) {
+                    TokenKeySet.Key key = tokenKeySet.rotate(now);
+                    Logger.i(AuthService.class, "#rotateTokenKey - Rotate token key: " + key.id);
+                }
+
+                context.put(new CacheValue(tokenKeySet.toJSON()));
+            }
+        });
+    }
+
+    /**
+     * 吊销签名令牌。
+     *
+     * @param code
+     */
+    private void revokeToken(String code) {
+        SignedToken signed = SignedToken.parse(code);
+        if (null == signed) {
+            return;
+        }
+
+        if (this.revocationList.revoke(signed.getId(), signed.getExpiry())) {
+            this.storeRevocationList(System.currentTimeMillis());
+            this.fireTokenKeysChanged();
+        }
+    }
+
+    /**
+     * 在缓存事务内合并其他服务节点写入的吊销列表后再写回，避免并发写入时覆盖其他节点吊销的令牌。
+     *
+     * @param now
+     */
+    private void storeRevocationList(long now) {
+        this.tokenCache.execute(new CacheKey("_TokenRevocationList"), new CacheTransaction() {
+            @Override
+            public void perform(TransactionContext context) {
+                CacheValue value = context.get();
+                if (null != value) {
+                    revocationList.merge(value.get());
+                    revocationList.purge(now);
+                }
+                context.put(new CacheValue(revocationList.toJSON()));
+            }
+        });
+    }
+
+    private void fireTokenKeysChanged() {
+        if (this.tokenKeyListeners.isEmpty()) {
+            return;
+        }
+
+        JSONObject tokenKeys = this.getTokenKeys();
+        for (TokenKeyListener listener : this.tokenKeyListeners) {
+            listener.onTokenKeysChanged(tokenKeys);
+        }
+    }
+
+    /**
+     * 是否签发签名令牌。
+     *
+     * @return
+     */
+    public boolean isSignedTokenEnabled() {
+        return this.signedToken;
+    }
+
+    /**
+     * 获取签名密钥集和吊销列表。
+     *
+     * @return
+     */
+    public JSONObject getTokenKeys() {
+        JSONObject json = new JSONObject();
+        json.put("keys", this.tokenKeySet.toJSON());
+        json.put("revocation", this.revocationList.toJSON());
+        return json;
+    }
+
+    public void addTokenKeyListener(TokenKeyListener listener) {
+        if (!this.tokenKeyListeners.contains(listener)) {
+            this.tokenKeyListeners.add(listener);
+        }
+    }
+
+    public void removeTokenKeyListener(TokenKeyListener listener) {
+        this.tokenKeyListeners.remove(listener);
+    }
+
+    private String makeTokenCode(String domain, String appKey, long cid, Date issue, Date expiry, boolean ferry) {
+        if (this.signedToken) {
+            TokenKeySet.Key key = this.tokenKeySet.getCurrentKey();
+            if (null != key) {
+                return SignedToken.sign(key, domain, appKey, cid, issue.getTime(), expiry.getTime(), ferry);
+            }
+        }
+
+        return Utils.randomString(32);
     }
 
     /**
@@ -211,18 +465,18 @@ public class AuthService extends AbstractModule {
         if (this.useFile) {
             AuthDomain authDomain = this.authDomainFile.queryDomain(domain, appKey);
             if (null != authDomain) {
-                String code = Utils.randomString(32);
-
                 Date now = new Date();
                 Date expiry = new Date(now.getTime() + durationInMillis);
 
+                String code = this.makeTokenCode(domain, appKey, cid, now, expiry, authDomain.ferry);
+
                 // 创建描述
                 PrimaryDescription description = new PrimaryDescription("127.0.0.1", this.primaryContentFile.getContent(domain));
 
                 token = new AuthToken(code, domain, appKey, cid, now, expiry, description, authDomain.ferry);
 
                 // 本地缓存
-                this.authTokenMap.put(code, token);
+                this.authTokenCache.put(token);
 
                 // 将 Code 写入令牌池
                 this.tokenCache.put(new CacheKey(code), new CacheValue(token.toJSON()));
@@ -249,11 +503,11 @@ public class AuthService extends AbstractModule {
                 }
 
                 if (null == token) {
-                    String code = Utils.randomString(32);
-
                     Date now = new Date();
                     Date expiry = new Date(now.getTime() + durationInMillis);
 
+                    String code = this.makeTokenCode(domain, appKey, cid, now, expiry, authDomain.ferry);
+
                     // 创建描述
                     PrimaryDescription description = authDomain.getPrimaryDescription();
 
@@ -261,7 +515,7 @@ public class AuthService extends AbstractModule {
                     token = new AuthToken(code, domain, appKey, cid, now, expiry, description, authDomain.ferry);
 
                     // 本地缓存
-                    this.authTokenMap.put(code, token);
+                    this.authTokenCache.put(token);
 
                     // 将 Code 写入令牌池
                     this.tokenCache.put(new CacheKey(code), new CacheValue(token.toJSON()));
@@ -290,7 +544,7 @@ public class AuthService extends AbstractModule {
         }
 
         this.tokenCache.put(new CacheKey(token.getCode()), new CacheValue(token.toJSON()));
-        this.authTokenMap.remove(token.getCode());
+        this.authTokenCache.invalidate(token.getCode());
         this.authStorage.updateTokenByCode(token);
         return true;
     }
@@ -306,7 +560,8 @@ public class AuthService extends AbstractModule {
         AuthToken authToken = this.getToken(domain, contactId);
         if (null != authToken) {
             this.tokenCache.remove(new CacheKey(authToken.getCode()));
-            this.authTokenMap.remove(authToken.getCode());
+            this.authTokenCache.invalidate(authToken.getCode());
+            this.revokeToken(authToken.getCode());
         }
         return this.authStorage.deleteToken(domain, contactId);
     }
@@ -325,6 +580,9 @@ public class AuthService extends AbstractModule {
             this.authStorage.writeToken(token);
         }
 
+        // 令牌码可能已被记录为未命中
+        this.authTokenCache.invalidate(token.getCode());
+
         // 钩子
         AuthServiceHook hook = this.pluginSystem.getInjectTokenHook();
         hook.apply(new AuthPluginContext(token));
@@ -358,11 +616,29 @@ public class AuthService extends AbstractModule {
             return null;
         }
 
-        AuthToken token = this.authTokenMap.get(code);
-        if (null != token) {
-            return token;
+        // 签名校验通过的令牌码读取存储时不受限流
+        boolean limited = true;
+
+        SignedToken signed = SignedToken.parse(code);
+        if (null != signed) {
+            // 签名错误或者已吊销的令牌不需要读取存储
+            SignedToken.Verification verification = signed.verify(this.tokenKeySet, this.revocationList,
+                    System.currentTimeMillis());
+            if (verification == SignedToken.Verification.BadSignature
+                    || verification == SignedToken.Verification.Revoked) {
+                return null;
+            }
+
+            limited = (verification != SignedToken.Verification.Valid
+                    && verification != SignedToken.Verification.Expired);
         }
 
+        return this.authTokenCache.get(code, this.tokenLoader, limited);
+    }
+
+    private AuthToken loadToken(String code) {
+        AuthToken token = null;
+
         CacheValue value = this.tokenCache.get(new CacheKey(code));
         if (null != value) {
             token = new AuthToken(value.get());
@@ -376,10 +652,7 @@ public class AuthService extends AbstractModule {
             token = this.authStorage.readToken(code);
         }
 
-        if (null != token) {
-            this.authTokenMap.put(code, token);
-        }
-        else {
+        if (null == token) {
             Logger.w(this.getClass(), "#getToken - Can NOT read token from DB: " + code);
         }
 
@@ -470,8 +743,12 @@ public class AuthService extends AbstractModule {
         AuthToken oldAuthToken = this.getToken(token.getDomain(), token.getContactId());
         if (null != oldAuthToken) {
             this.tokenCache.remove(new CacheKey(oldAuthToken.getCode()));
-            this.authTokenMap.remove(oldAuthToken.getCode());
+            this.authTokenCache.invalidate(oldAuthToken.getCode());
+            if (!oldAuthToken.getCode().equals(token.getCode())) {
+                this.revokeToken(oldAuthToken.getCode());
+            }
         }
+        this.authTokenCache.invalidate(token.getCode());
 
         if (null == token.getDescription()) {
             PrimaryDescription description = this.getPrimaryDescription(token.getDomain(), token.getAppKey());
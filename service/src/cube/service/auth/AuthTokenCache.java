@@ -0,0 +1,383 @@
+/*
+ * This source file is part of Cube.
+ *
+ * Copyright (c) 2023-2026 Ambrose Xu.
+ */
+
+package cube.service.auth;
+
+import cube.auth.AuthToken;
+import cube.common.JSONable;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 令牌本地缓存。
+ * 缓存容量有上限，超过上限时淘汰最久未访问的条目，条目在令牌过期或者超过最大缓存时长后失效。
+ * 未找到的令牌码会在短时间内被记录为未命中，同一个令牌码的并发加载只执行一次。
+ * 受限的加载每秒执行次数有上限，超过上限的加载被立即拒绝，避免伪造的令牌码对存储造成压力。
+ * 被拒绝的令牌码不记录为未命中，下一个时间窗口内可以再次加载。
+ */
+public class AuthTokenCache implements JSONable {
+
+    /**
+     * 缓存容量上限。
+     */
+    private final int maxSize;
+
+    /**
+     * 条目的最大缓存时长。
+     */
+    private final long maxTTL;
+
+    /**
+     * 未命中记录的缓存时长。
+     */
+    private final long negativeTTL;
+
+    /**
+     * 每秒最大加载次数。
+     */
+    private final int maxLoadsPerSecond;
+
+    private final ConcurrentHashMap<String, Entry> entries;
+
+    private final ConcurrentHashMap<String, Long> misses;
+
+    private final ConcurrentHashMap<String, CompletableFuture<AuthToken>> loadings;
+
+    private final AtomicBoolean evicting = new AtomicBoolean(false);
+
+    private final AtomicLong loadWindow = new AtomicLong(0);
+
+    private final AtomicLong loadWindowCount = new AtomicLong(0);
+
+    private final AtomicLong hitCount = new AtomicLong(0);
+
+    private final AtomicLong negativeHitCount = new AtomicLong(0);
+
+    private final AtomicLong loadCount = new AtomicLong(0);
+
+    private final AtomicLong rejectedCount = new AtomicLong(0);
+
+    /**
+     * 等待同一令牌码正在进行的加载的最长时间。
+     */
+    private final static long LOAD_WAIT_TIMEOUT = 30 * 1000;
+
+    /**
+     * 构造函数。
+     *
+     * @param maxSize 缓存容量上限。
+     * @param maxTTL 条目的最大缓存时长，单位：毫秒。
+     * @param negativeTTL 未命中记录的缓存时长，单位：毫秒。
+     * @param maxLoadsPerSecond 每秒最大加载次数。
+     */
+    public AuthTokenCache(int maxSize, long maxTTL, long negativeTTL, int maxLoadsPerSecond) {
+        this.maxSize = maxSize;
+        this.maxTTL = maxTTL;
+        this.negativeTTL = negativeTTL;
+        this.maxLoadsPerSecond = maxLoadsPerSecond;
+        this.entries = new ConcurrentHashMap<>();
+        this.misses = new ConcurrentHashMap<>();
+        this.loadings = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * 获取令牌，未缓存时使用加载器加载，加载受每秒次数限制。
+     *
+     * @param code
+     * @param loader
+     * @return 返回令牌，如果令牌不存在或者加载被限流拒绝返回 {@code null} 值。
+     */
+    public AuthToken get(String code, Loader loader) {
+        return this.get(code, loader, true);
+    }
+
+    /**
+     * 获取令牌，未缓存时使用加载器加载。
+     *
+     * @param code
+     * @param loader
+     * @param limited 加载是否受每秒次数限制。已通过签名校验的令牌码不需要限制。
+     * @return 返回令牌，如果令牌不存在或者加载被限流拒绝返回 {@code null} 值。
+     */
+    public AuthToken get(String code, Loader loader, boolean limited) {
+        long now = System.currentTimeMillis();
+
+        Entry entry = this.entries.get(code);
+        if (null != entry) {
+            if (entry.expiresAt > now) {
+                entry.accessTime = now;
+                this.hitCount.incrementAndGet();
+                return entry.token;
+            }
+            this.entries.remove(code, entry);
+        }
+
+        Long missExpiresAt = this.misses.get(code);
+        if (null != missExpiresAt) {
+            if (missExpiresAt.longValue() > now) {
+                this.negativeHitCount.incrementAndGet();
+                return null;
+            }
+            this.misses.remove(code, missExpiresAt);
+        }
+
+        CompletableFuture<AuthToken> future = new CompletableFuture<>();
+        CompletableFuture<AuthToken> current = this.loadings.putIfAbsent(code, future);
+        if (null != current) {
+            // 等待正在进行的加载
+            try {
+                return current.get(LOAD_WAIT_TIMEOUT, TimeUnit.MILLISECONDS);
+            } catch (Exception e) {
+                return null;
+            }
+        }
+
+        AuthToken token = null;
+        try {
+            // 再次检查，前一次加载可能刚刚完成
+            entry = this.entries.get(code);
+            if (null != entry && entry.expiresAt > now) {
+                token = entry.token;
+                return token;
+            }
+            missExpiresAt = this.misses.get(code);
+            if (null != missExpiresAt && missExpiresAt.longValue() > now) {
+                return null;
+            }
+
+            if (limited && !this.acquireLoad()) {
+                // 被限流，不记录未命中
+                this.rejectedCount.incrementAndGet();
+                return null;
+            }
+
+            this.loadCount.incrementAndGet();
+            token = loader.load(code);
+
+            if (null != token) {
+                this.put(token);
+            }
+            else {
+                this.misses.put(code, now + this.negativeTTL);
+                if (this.misses.size() > this.maxSize) {
+                    this.evictMisses(now);
+                }
+            }
+        } finally {
+            future.complete(token);
+            this.loadings.remove(code, future);
+        }
+
+        return token;
+    }
+
+    /**
+     * 写入令牌。
+     *
+     * @param token
+     */
+    public void put(AuthToken token) {
+        long now = System.currentTimeMillis();
+        long expiresAt = now + this.maxTTL;
+        if (token.getExpiry() < expiresAt) {
+            // 已过期的令牌也短暂缓存，避免重复读取
+            expiresAt = Math.max(token.getExpiry(), now + this.negativeTTL);
+        }
+
+        this.misses.remove(token.getCode());
+        this.entries.put(token.getCode(), new Entry(token, expiresAt));
+
+        if (this.entries.size() > this.maxSize) {
+            this.evictEntries(now);
+        }
+    }
+
+    /**
+     * 使指定令牌码的缓存失效。
+     *
+     * @param code
+     */
+    public void invalidate(String code) {
+        this.entries.remove(code);
+        this.misses.remove(code);
+    }
+
+    /**
+     * 清理已失效的条目。
+     *
+     * @param now
+     */
+    public void evictExpired(long now) {
+        Iterator<Entry> iter = this.entries.values().iterator();
+        while (iter.hasNext()) {
+            if (iter.next().expiresAt <= now) {
+                iter.remove();
+            }
+        }
+
+        Iterator<Long> missIter = this.misses.values().iterator();
+        while (missIter.hasNext()) {
+            if (missIter.next().longValue() <= now) {
+                missIter.remove();
+            }
+        }
+    }
+
+    public int size() {
+        return this.entries.size();
+    }
+
+    public long getLoadCount() {
+        return this.loadCount.get();
+    }
+
+    /**
+     * 返回被限流拒绝的加载次数。
+     *
+     * @return
+     */
+    public long getRejectedCount() {
+        return this.rejectedCount.get();
+    }
+
+    /**
+     * 获取加载许可，当前时间窗口的次数用尽时不等待。
+     *
+     * @return 当前时间窗口的次数用尽时返回 {@code false} 。
+     */
+    private boolean acquireLoad() {
+        long second = System.currentTimeMillis() / 1000;
+        long window = this.loadWindow.get();
+        if (window != second && this.loadWindow.compareAndSet(window, second)) {
+            this.loadWindowCount.set(0);
+        }
+
+        return this.loadWindowCount.incrementAndGet() <= this.maxLoadsPerSecond;
+    }
+
+    private void evictEntries(long now) {
+        if (!this.evicting.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            // 先清理过期条目，再按访问时间淘汰最久未访问的条目至容量的 90%
+            int target = (int) (this.maxSize * 0.9);
+            List<Candidate> list = new ArrayList<>(this.entries.size());
+            Iterator<Map.Entry<String, Entry>> iter = this.entries.entrySet().iterator();
+            while (iter.hasNext()) {
+                Map.Entry<String, Entry> e = iter.next();
+                if (e.getValue().expiresAt <= now) {
+                    iter.remove();
+                }
+                else {
+                    // 记录访问时间快照，排序期间访问时间可能被更新
+                    list.add(new Candidate(e.getKey(), e.getValue()));
+                }
+            }
+
+            int excess = this.entries.size() - target;
+            if (excess > 0) {
+                list.sort((c1, c2) -> Long.compare(c1.accessTime, c2.accessTime));
+                for (int i = 0; i < excess && i < list.size(); ++i) {
+                    Candidate candidate = list.get(i);
+                    this.entries.remove(candidate.code, candidate.entry);
+                }
+            }
+        } finally {
+            this.evicting.set(false);
+        }
+    }
+
+    private void evictMisses(long now) {
+        Iterator<Long> iter = this.misses.values().iterator();
+        while (iter.hasNext()) {
+            if (iter.next().longValue() <= now) {
+                iter.remove();
+            }
+        }
+
+        if (this.misses.size() > this.maxSize) {
+            this.misses.clear();
+        }
+    }
+
+    @Override
+    public JSONObject toJSON() {
+        JSONObject json = new JSONObject();
+        json.put("size", this.entries.size());
+        json.put("misses", this.misses.size());
+        json.put("hit", this.hitCount.get());
+        json.put("negativeHit", this.negativeHitCount.get());
+        json.put("load", this.loadCount.get());
+        json.put("rejected", this.rejectedCount.get());
+        return json;
+    }
+
+    @Override
+    public JSONObject toCompactJSON() {
+        return this.toJSON();
+    }
+
+    /**
+     * 缓存条目。
+     */
+    private class Entry {
+
+        protected final AuthToken token;
+
+        protected final long expiresAt;
+
+        protected volatile long accessTime;
+
+        protected Entry(AuthToken token, long expiresAt) {
+            this.token = token;
+            this.expiresAt = expiresAt;
+            this.accessTime = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * 淘汰候选条目。
+     */
+    private final static class Candidate {
+
+        private final String code;
+
+        private final Entry entry;
+
+        private final long accessTime;
+
+        private Candidate(String code, Entry entry) {
+            this.code = code;
+            this.entry = entry;
+            this.accessTime = entry.accessTime;
+        }
+    }
+
+    /**
+     * 令牌加载器。
+     */
+    public interface Loader {
+
+        /**
+         * 加载令牌。
+         *
+         * @param code
+         * @return 返回令牌，令牌不存在时返回 {@code null} 值。
+         */
+        AuthToken load(String code);
+    }
+}
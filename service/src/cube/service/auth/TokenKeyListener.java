@@ -0,0 +1,22 @@
+/*
+ * This source file is part of Cube.
+ *
+ * Copyright (c) 2023-2026 Ambrose Xu.
+ */
+
+package cube.service.auth;
+
+import org.json.JSONObject;
+
+/**
+ * 签名密钥集和吊销列表变更监听器。
+ */
+public interface TokenKeyListener {
+
+    /**
+     * 密钥集或者吊销列表发生变化时回调。
+     *
+     * @param tokenKeys 包含密钥集和吊销列表的数据。
+     */
+    void onTokenKeysChanged(JSONObject tokenKeys);
+}
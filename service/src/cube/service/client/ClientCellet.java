@@ -69,6 +69,9 @@ public class ClientCellet extends AbstractCellet {
         else if (ClientAction.InjectAuthToken.name.equals(action)) {
             this.execute(new InjectAuthTokenTask(this, talkContext, actionDialect));
         }
+        else if (ClientAction.TokenKeys.name.equals(action)) {
+            this.execute(new TokenKeysTask(this, talkContext, actionDialect));
+        }
         else if (ClientAction.PushMessage.name.equals(action)) {
             this.execute(new PushMessageTask(this, talkContext, actionDialect));
         }
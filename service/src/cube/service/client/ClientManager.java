@@ -9,6 +9,7 @@ package cube.service.client;
 import cell.core.talk.TalkContext;
 import cell.core.talk.dialect.ActionDialect;
 import cell.util.log.Logger;
+import cube.common.action.ClientAction;
 import cube.common.entity.ClientDescription;
 import cube.common.entity.Contact;
 import cube.common.entity.Group;
@@ -23,6 +24,7 @@ import cube.plugin.Plugin;
 import cube.plugin.PluginContext;
 import cube.plugin.PluginSystem;
 import cube.service.auth.AuthService;
+import cube.service.auth.TokenKeyListener;
 import cube.service.client.event.MessageReceiveEvent;
 import cube.service.client.event.MessageSendEvent;
 import cube.service.contact.ContactHook;
@@ -60,12 +62,20 @@ public final class ClientManager {
 
     private AtomicBoolean sendingEvent;
 
+    /**
+     * 订阅签名密钥集的会话。
+     */
+    private ConcurrentMap<Long, TalkContext> tokenKeySubscribers;
+
+    private TokenKeyListener tokenKeyListener;
+
     private ClientManager() {
         this.executor = Executors.newFixedThreadPool(4);
         this.clientMap = new ConcurrentHashMap<>();
         this.talkContextIndex = new ConcurrentHashMap<>();
         this.eventQueue = new ConcurrentLinkedQueue<>();
         this.sendingEvent = new AtomicBoolean(false);
+        this.tokenKeySubscribers = new ConcurrentHashMap<>();
     }
 
     public static ClientManager getInstance() {
@@ -347,6 +357,8 @@ public final class ClientManager {
      * @param talkContext
      */
     public void quit(TalkContext talkContext) {
+        this.tokenKeySubscribers.remove(talkContext.getSessionId());
+
         ServerClient client = this.talkContextIndex.remove(talkContext.getSessionId());
         if (null != client) {
             // 删除
@@ -356,6 +368,36 @@ public final class ClientManager {
         }
     }
 
+    /**
+     * 订阅签名密钥集和吊销列表的变更。
+     *
+     * @param talkContext
+     * @param authService
+     */
+    public synchronized void subscribeTokenKeys(TalkContext talkContext, AuthService authService) {
+        this.tokenKeySubscribers.put(talkContext.getSessionId(), talkContext);
+
+        if (null == this.tokenKeyListener) {
+            this.tokenKeyListener = new TokenKeyListener() {
+                @Override
+                public void onTokenKeysChanged(JSONObject tokenKeys) {
+                    pushTokenKeys(tokenKeys);
+                }
+            };
+            authService.addTokenKeyListener(this.tokenKeyListener);
+        }
+    }
+
+    private void pushTokenKeys(JSONObject tokenKeys) {
+        this.executor.execute(() -> {
+            for (TalkContext talkContext : tokenKeySubscribers.values()) {
+                ActionDialect actionDialect = new ActionDialect(ClientAction.TokenKeys.name);
+                actionDialect.addParam("tokenKeys", tokenKeys);
+                cellet.speak(talkContext, actionDialect);
+            }
+        });
+    }
+
     /**
      * 获取指定会话上下文对应的客户端。
      *
@@ -0,0 +1,46 @@
+/*
+ * This source file is part of Cube.
+ *
+ * Copyright (c) 2023-2026 Ambrose Xu.
+ */
+
+package cube.service.client.task;
+
+import cell.core.talk.TalkContext;
+import cell.core.talk.dialect.ActionDialect;
+import cube.common.action.ClientAction;
+import cube.common.state.AuthStateCode;
+import cube.service.auth.AuthService;
+import cube.service.client.ClientCellet;
+import cube.service.client.ClientManager;
+
+/**
+ * 获取签名密钥集和吊销列表，并订阅后续变更。
+ */
+public class TokenKeysTask extends ClientTask {
+
+    public TokenKeysTask(ClientCellet cellet, TalkContext talkContext, ActionDialect actionDialect) {
+        super(cellet, talkContext, actionDialect);
+    }
+
+    @Override
+    public void run() {
+        ActionDialect response = new ActionDialect(ClientAction.TokenKeys.name);
+        copyNotifier(response);
+
+        AuthService module = this.getAuthService();
+        if (!module.isSignedTokenEnabled()) {
+            // 告知调用方未启用签名令牌，调用方可以降低请求频率
+            response.addParam("code", AuthStateCode.Failure.code);
+            response.addParam("signedToken", false);
+            cellet.speak(talkContext, response);
+            return;
+        }
+
+        ClientManager.getInstance().subscribeTokenKeys(talkContext, module);
+
+        response.addParam("code", AuthStateCode.Ok.code);
+        response.addParam("tokenKeys", module.getTokenKeys());
+        cellet.speak(talkContext, response);
+    }
+}
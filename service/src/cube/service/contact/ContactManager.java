@@ -130,6 +130,11 @@ public class ContactManager extends AbstractModule implements CelletAdapterListe
      */
     private CelletAdapter contactsAdapter;
 
+    /**
+     * 联系人在线目录。
+     */
+    private PresenceDirectory presenceDirectory;
+
     /**
      * 联系人模块的插件系统。
      */
@@ -204,6 +209,10 @@ public class ContactManager extends AbstractModule implements CelletAdapterListe
         this.contactsAdapter = CelletAdapterFactory.getInstance().getAdapter("Contacts");
         this.contactsAdapter.addListener(this);
 
+        // 在线目录
+        this.getPresenceDirectory();
+        this.contactsAdapter.subscribe(PresenceDirectory.TOPIC);
+
         this.pluginSystem = new ContactPluginSystem();
         // 内置插件
         this.buildInPlugins();
@@ -736,6 +745,33 @@ public class ContactManager extends AbstractModule implements CelletAdapterListe
         this.contactsAdapter.publish(key, event.toJSON());
     }
 
+    /**
+     * 获取联系人在线目录。
+     *
+     * @return
+     */
+    public synchronized PresenceDirectory getPresenceDirectory() {
+        if (null == this.presenceDirectory) {
+            // 其他模块可能先于本模块启动
+            this.presenceDirectory = new PresenceDirectory(this.getKernel().getNodeName());
+        }
+        return this.presenceDirectory;
+    }
+
+    /**
+     * 向集群广播在线事件。
+     *
+     * @param data
+     */
+    private void publishPresence(JSONObject data) {
+        if (null == data) {
+            return;
+        }
+
+        ModuleEvent event = new ModuleEvent(ContactManager.NAME, PresenceDirectory.EVENT, data);
+        this.contactsAdapter.publish(PresenceDirectory.TOPIC, event.toJSON());
+    }
+
     /**
      * 获取令牌对应的设备。
      *
@@ -1092,6 +1128,8 @@ public class ContactManager extends AbstractModule implements CelletAdapterListe
             if (null != contact) {
                 contact.removeDevice(device);
 
+                this.publishPresence(this.presenceDirectory.offline(contact.getUniqueKey(), device));
+
                 // 调用插件 Hook
                 ContactHook hook = this.pluginSystem.getDeviceTimeoutHook();
                 hook.apply(new ContactPluginContext(ContactHook.DeviceTimeout, contact, device));
@@ -2175,6 +2213,10 @@ public class ContactManager extends AbstractModule implements CelletAdapterListe
         // 订阅该用户事件
         this.contactsAdapter.subscribe(contact.getUniqueKey());
 
+        if (null != activeDevice) {
+            this.publishPresence(this.presenceDirectory.online(contact.getUniqueKey(), activeDevice));
+        }
+
         ContactTable table = this.onlineTables.get(contact.getDomain().getName());
         if (null == table) {
             table = new ContactTable(new Domain(contact.getDomain().getName().toString()));
@@ -2215,6 +2257,8 @@ public class ContactManager extends AbstractModule implements CelletAdapterListe
             // 退订该用户事件
             this.contactsAdapter.unsubscribe(contact.getUniqueKey());
 
+            this.publishPresence(this.presenceDirectory.offline(contact.getUniqueKey(), null));
+
             if (null != table) {
                 table.remove(contact);
             }
@@ -2223,6 +2267,10 @@ public class ContactManager extends AbstractModule implements CelletAdapterListe
             if (null != table) {
                 table.remove(contact, activeDevice);
             }
+
+            if (null != activeDevice) {
+                this.publishPresence(this.presenceDirectory.offline(contact.getUniqueKey(), activeDevice));
+            }
         }
 
         this.tokenContactMap.remove(token);
@@ -2279,6 +2327,13 @@ public class ContactManager extends AbstractModule implements CelletAdapterListe
 
     @Override
     public void onDelivered(String topic, Endpoint endpoint, JSONObject jsonObject) {
+        if (PresenceDirectory.TOPIC.equals(topic)) {
+            // 其他节点的在线事件
+            ModuleEvent event = new ModuleEvent(jsonObject);
+            this.presenceDirectory.apply(event.getData());
+            return;
+        }
+
         if (NAME.equals(ModuleEvent.extractModuleName(jsonObject))) {
             // 提取主键的信息
             Object[] key = UniqueKey.extract(topic);
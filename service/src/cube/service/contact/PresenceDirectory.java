@@ -0,0 +1,277 @@
+/*
+ * This source file is part of Cube.
+ *
+ * Copyright (c) 2023-2026 Ambrose Xu.
+ */
+
+package cube.service.contact;
+
+import cube.common.entity.Device;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 联系人在线目录。
+ * 记录联系人的设备会话所在的服务节点。本节点的记录由签入、签出和设备变更直接维护，
+ * 其他节点的记录由集群内广播的在线事件维护。
+ */
+public class PresenceDirectory {
+
+    /**
+     * 在线事件主题。
+     */
+    public final static String TOPIC = "_presence_";
+
+    /**
+     * 在线事件名。
+     */
+    public final static String EVENT = "Presence";
+
+    /**
+     * 节点主题前缀。
+     */
+    private final static String NODE_TOPIC_PREFIX = "_node_";
+
+    private final String nodeName;
+
+    /**
+     * 联系人键对应的节点及设备。
+     */
+    private final ConcurrentHashMap<String, Map<String, Set<String>>> presences;
+
+    public PresenceDirectory(String nodeName) {
+        this.nodeName = nodeName;
+        this.presences = new ConcurrentHashMap<>();
+    }
+
+    public String getNodeName() {
+        return this.nodeName;
+    }
+
+    /**
+     * 返回节点主题。
+     *
+     * @param nodeName
+     * @return
+     */
+    public static String makeNodeTopic(String nodeName) {
+        return NODE_TOPIC_PREFIX + nodeName;
+    }
+
+    /**
+     * 判断是否是节点主题。
+     *
+     * @param topic
+     * @return
+     */
+    public static boolean isNodeTopic(String topic) {
+        return topic.startsWith(NODE_TOPIC_PREFIX);
+    }
+
+    /**
+     * 记录本节点的设备上线。
+     *
+     * @param contactKey 联系人键。
+     * @param device 设备。
+     * @return 返回需要广播的在线事件。
+     */
+    public JSONObject online(String contactKey, Device device) {
+        return this.update(this.nodeName, contactKey, makeDeviceKey(device), true);
+    }
+
+    /**
+     * 记录本节点的设备下线。
+     *
+     * @param contactKey 联系人键。
+     * @param device 设备，为 {@code null} 时表示联系人在本节点的所有设备下线。
+     * @return 返回需要广播的在线事件，没有变化时返回 {@code null} 。
+     */
+    public JSONObject offline(String contactKey, Device device) {
+        if (null == device) {
+            Map<String, Set<String>> nodes = this.presences.get(contactKey);
+            if (null == nodes) {
+                return null;
+            }
+
+            synchronized (nodes) {
+                if (null == nodes.remove(this.nodeName)) {
+                    return null;
+                }
+                if (nodes.isEmpty()) {
+                    this.presences.remove(contactKey, nodes);
+                }
+            }
+            return this.makeEvent(contactKey, new HashSet<>());
+        }
+
+        return this.update(this.nodeName, contactKey, makeDeviceKey(device), false);
+    }
+
+    /**
+     * 应用其他节点广播的在线事件。
+     *
+     * @param event
+     */
+    public void apply(JSONObject event) {
+        String node = event.getString("node");
+        if (this.nodeName.equals(node)) {
+            // 本节点的事件
+            return;
+        }
+
+        String contactKey = event.getString("contact");
+        JSONArray array = event.getJSONArray("devices");
+
+        if (array.length() == 0) {
+            Map<String, Set<String>> nodes = this.presences.get(contactKey);
+            if (null != nodes) {
+                synchronized (nodes) {
+                    nodes.remove(node);
+                    if (nodes.isEmpty()) {
+                        this.presences.remove(contactKey, nodes);
+                    }
+                }
+            }
+            return;
+        }
+
+        Set<String> devices = new HashSet<>();
+        for (int i = 0; i < array.length(); ++i) {
+            devices.add(array.getString(i));
+        }
+
+        while (true) {
+            Map<String, Set<String>> nodes = this.presences.computeIfAbsent(contactKey, k -> new HashMap<>());
+            synchronized (nodes) {
+                if (this.presences.get(contactKey) != nodes) {
+                    // 已被删除，重新获取
+                    continue;
+                }
+                nodes.put(node, devices);
+                return;
+            }
+        }
+    }
+
+    /**
+     * 查询联系人的设备会话所在的节点。
+     *
+     * @param contactKey
+     * @return 返回节点名称列表，联系人不在线时返回空列表。
+     */
+    public List<String> lookup(String contactKey) {
+        Map<String, Set<String>> nodes = this.presences.get(contactKey);
+        if (null == nodes) {
+            return new ArrayList<>();
+        }
+
+        synchronized (nodes) {
+            return new ArrayList<>(nodes.keySet());
+        }
+    }
+
+    /**
+     * 查询联系人在本节点是否有设备会话。
+     *
+     * @param contactKey
+     * @return
+     */
+    public boolean isLocal(String contactKey) {
+        Map<String, Set<String>> nodes = this.presences.get(contactKey);
+        if (null == nodes) {
+            return false;
+        }
+
+        synchronized (nodes) {
+            return nodes.containsKey(this.nodeName);
+        }
+    }
+
+    /**
+     * 删除指定节点的所有记录，用于节点失效时。
+     *
+     * @param node
+     * @return 返回删除的记录数量。
+     */
+    public int removeNode(String node) {
+        int count = 0;
+        Iterator<Map.Entry<String, Map<String, Set<String>>>> iter = this.presences.entrySet().iterator();
+        while (iter.hasNext()) {
+            Map<String, Set<String>> nodes = iter.next().getValue();
+            synchronized (nodes) {
+                if (null != nodes.remove(node)) {
+                    ++count;
+                }
+                if (nodes.isEmpty()) {
+                    iter.remove();
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 返回在线联系人数量。
+     *
+     * @return
+     */
+    public int size() {
+        return this.presences.size();
+    }
+
+    private JSONObject update(String node, String contactKey, String deviceKey, boolean online) {
+        while (true) {
+            Map<String, Set<String>> nodes = online ?
+                    this.presences.computeIfAbsent(contactKey, k -> new HashMap<>()) :
+                    this.presences.get(contactKey);
+            if (null == nodes) {
+                return null;
+            }
+
+            synchronized (nodes) {
+                if (this.presences.get(contactKey) != nodes) {
+                    continue;
+                }
+
+                Set<String> devices = nodes.get(node);
+                if (online) {
+                    if (null == devices) {
+                        devices = new HashSet<>();
+                        nodes.put(node, devices);
+                    }
+                    if (!devices.add(deviceKey)) {
+                        return null;
+                    }
+                }
+                else {
+                    if (null == devices || !devices.remove(deviceKey)) {
+                        return null;
+                    }
+                    if (devices.isEmpty()) {
+                        nodes.remove(node);
+                        if (nodes.isEmpty()) {
+                            this.presences.remove(contactKey, nodes);
+                        }
+                    }
+                }
+
+                return this.makeEvent(contactKey, (null == devices) ? new HashSet<>() : new HashSet<>(devices));
+            }
+        }
+    }
+
+    private JSONObject makeEvent(String contactKey, Set<String> devices) {
+        JSONObject event = new JSONObject();
+        event.put("node", this.nodeName);
+        event.put("contact", contactKey);
+        event.put("devices", new JSONArray(devices));
+        return event;
+    }
+
+    private static String makeDeviceKey(Device device) {
+        return device.getName() + "/" + device.getPlatform();
+    }
+}
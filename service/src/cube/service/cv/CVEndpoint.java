@@ -9,29 +9,81 @@ package cube.service.cv;
 import cell.core.talk.TalkContext;
 import cube.common.entity.Contact;
 
+/**
+ * CV 终端节点。
+ * 终端在配置时声明可并发处理的任务槽数量，服务按空闲槽分配批量任务。
+ */
 public class CVEndpoint {
 
     public final Contact contact;
 
     public final TalkContext talkContext;
 
-    private boolean working;
+    /**
+     * 并发任务槽数量。
+     */
+    public final int slots;
+
+    /**
+     * 正在使用的任务槽数量。
+     */
+    private int active;
 
     public CVEndpoint(Contact contact, TalkContext talkContext) {
+        this(contact, talkContext, 1);
+    }
+
+    public CVEndpoint(Contact contact, TalkContext talkContext, int slots) {
         this.contact = contact;
         this.talkContext = talkContext;
-        this.working = false;
+        this.slots = Math.max(1, slots);
+        this.active = 0;
+    }
+
+    public boolean isValid() {
+        return this.talkContext.isValid();
+    }
+
+    public synchronized boolean isWorking() {
+        return this.active > 0;
+    }
+
+    public synchronized int numActiveSlots() {
+        return this.active;
+    }
+
+    public synchronized int numFreeSlots() {
+        return this.slots - this.active;
+    }
+
+    /**
+     * 返回负载率。
+     *
+     * @return
+     */
+    public synchronized double getLoad() {
+        return ((double) this.active) / ((double) this.slots);
     }
 
-    public boolean isWorking() {
-        synchronized (this) {
-            return this.working;
+    /**
+     * 占用一个任务槽。
+     *
+     * @return 没有空闲槽时返回 {@code false} 。
+     */
+    public synchronized boolean acquire() {
+        if (this.active >= this.slots) {
+            return false;
         }
+        ++this.active;
+        return true;
     }
 
-    public void setWorking(boolean value) {
-        synchronized (this) {
-            this.working = value;
+    /**
+     * 释放一个任务槽。
+     */
+    public synchronized void release() {
+        if (this.active > 0) {
+            --this.active;
         }
     }
 
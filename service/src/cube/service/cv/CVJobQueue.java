@@ -0,0 +1,894 @@
+/*
+ * This source file is part of Cube.
+ *
+ * Copyright (c) 2023-2026 Ambrose Xu.
+ */
+
+package cube.service.cv;
+
+import cell.util.log.Logger;
+import cube.common.JSONable;
+import cube.common.Packet;
+import cube.common.action.CVAction;
+import cube.common.entity.FileLabel;
+import cube.common.state.CVStateCode;
+import cube.util.LatencyHistogram;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * CV 终端任务队列。
+ * 任务按优先级和截止时间排队，终端有空闲任务槽时出队。同类型、同参数的排队任务合并为一次批量请求发送给终端。
+ * 处理结果按（文件 MD5 、操作、参数）缓存，重复提交的图片直接返回缓存结果。
+ */
+public class CVJobQueue implements JSONable {
+
+    public final static int PRIORITY_LOW = 0;
+
+    public final static int PRIORITY_NORMAL = 5;
+
+    public final static int PRIORITY_HIGH = 10;
+
+    private final Transmitter transmitter;
+
+    private final ExecutorService executor;
+
+    private final List<CVEndpoint> endpoints;
+
+    private final PriorityQueue<Job> queue;
+
+    private final Object mutex = new Object();
+
+    private final ResultCache cache;
+
+    /**
+     * 单次批量请求的最大文件数量。
+     */
+    private int maxBatchFiles = 10;
+
+    /**
+     * 最大排队任务数量。
+     */
+    private int maxQueued = 1000;
+
+    private volatile boolean running = false;
+
+    private Thread dispatcher;
+
+    private final AtomicLong sequence = new AtomicLong(0);
+
+    private final AtomicLong submitted = new AtomicLong(0);
+
+    private final AtomicLong completed = new AtomicLong(0);
+
+    private final AtomicLong failed = new AtomicLong(0);
+
+    private final AtomicLong expired = new AtomicLong(0);
+
+    private final AtomicLong rejected = new AtomicLong(0);
+
+    private final AtomicLong batches = new AtomicLong(0);
+
+    private final AtomicLong transmittedFiles = new AtomicLong(0);
+
+    /**
+     * 排队等待时间。
+     */
+    private final LatencyHistogram waiting = new LatencyHistogram();
+
+    /**
+     * 终端处理时间。
+     */
+    private final LatencyHistogram processing = new LatencyHistogram();
+
+    public CVJobQueue(Transmitter transmitter, ExecutorService executor) {
+        this.transmitter = transmitter;
+        this.executor = executor;
+        this.endpoints = new ArrayList<>();
+        this.queue = new PriorityQueue<>();
+        this.cache = new ResultCache(10000, 60 * 60 * 1000);
+    }
+
+    public void setMaxBatchFiles(int value) {
+        this.maxBatchFiles = Math.max(1, value);
+    }
+
+    public void setMaxQueued(int value) {
+        this.maxQueued = Math.max(1, value);
+    }
+
+    /**
+     * 设置结果缓存。
+     *
+     * @param maxEntries 最大缓存数量。
+     * @param ttl 缓存有效期，单位：毫秒。
+     */
+    public void setCache(int maxEntries, long ttl) {
+        this.cache.configure(maxEntries, ttl);
+    }
+
+    public void start() {
+        if (this.running) {
+            return;
+        }
+
+        this.running = true;
+        this.dispatcher = new Thread(this::dispatch, "CVJobQueueDispatcher");
+        this.dispatcher.setDaemon(true);
+        this.dispatcher.start();
+    }
+
+    public void stop() {
+        this.running = false;
+
+        List<Job> remains = null;
+        synchronized (this.mutex) {
+            remains = new ArrayList<>(this.queue);
+            this.queue.clear();
+            this.endpoints.clear();
+            this.mutex.notifyAll();
+        }
+
+        for (Job job : remains) {
+            job.fail(CVStateCode.Stopped);
+        }
+
+        this.dispatcher = null;
+    }
+
+    /**
+     * 添加终端，相同联系人的旧终端被替换。
+     *
+     * @param endpoint
+     */
+    public void addEndpoint(CVEndpoint endpoint) {
+        synchronized (this.mutex) {
+            this.endpoints.remove(endpoint);
+            this.endpoints.add(endpoint);
+            this.mutex.notifyAll();
+        }
+    }
+
+    /**
+     * 移除终端。
+     *
+     * @param contactId
+     * @return
+     */
+    public CVEndpoint removeEndpoint(Long contactId) {
+        synchronized (this.mutex) {
+            Iterator<CVEndpoint> iter = this.endpoints.iterator();
+            while (iter.hasNext()) {
+                CVEndpoint endpoint = iter.next();
+                if (endpoint.contact.getId().longValue() == contactId.longValue()) {
+                    iter.remove();
+                    return endpoint;
+                }
+            }
+        }
+        return null;
+    }
+
+    public int numEndpoints() {
+        synchronized (this.mutex) {
+            return this.endpoints.size();
+        }
+    }
+
+    public int numQueued() {
+        synchronized (this.mutex) {
+            return this.queue.size();
+        }
+    }
+
+    public LatencyHistogram getWaiting() {
+        return this.waiting;
+    }
+
+    public LatencyHistogram getProcessing() {
+        return this.processing;
+    }
+
+    public long getCacheHits() {
+        return this.cache.hits.get();
+    }
+
+    public long getBatches() {
+        return this.batches.get();
+    }
+
+    public long getCompleted() {
+        return this.completed.get();
+    }
+
+    public long getExpired() {
+        return this.expired.get();
+    }
+
+    /**
+     * 提交文件处理任务。
+     *
+     * @param action 操作动作。
+     * @param files 待处理的文件。
+     * @param params 操作参数，参与批次合并和结果缓存的判断。
+     * @param priority 优先级，数值越大越优先。
+     * @param timeout 截止时间，从提交时开始计算，单位：毫秒。
+     * @param listener 结果监听器。
+     * @return 没有可用终端或者队列已满时返回 {@code false} 。
+     */
+    public boolean submit(String action, List<FileLabel> files, JSONObject params, int priority, long timeout,
+                          BatchListener listener) {
+        String paramsKey = canonical(params);
+        Job job = new Job(action, files, params, paramsKey, priority, timeout, listener);
+
+        for (FileLabel fileLabel : files) {
+            JSONArray result = this.cache.get(job.cacheKey(fileLabel));
+            if (null != result) {
+                job.results.put(fileLabel.getFileCode(), rewrite(result, fileLabel.getFileCode()));
+            }
+            else {
+                this.cache.misses.incrementAndGet();
+                job.pending.add(fileLabel);
+            }
+        }
+
+        if (job.pending.isEmpty()) {
+            // 全部命中缓存
+            this.submitted.incrementAndGet();
+            this.completed.incrementAndGet();
+            this.executor.execute(() -> listener.onCompleted(job.results, 0));
+            return true;
+        }
+
+        return this.enqueue(job);
+    }
+
+    /**
+     * 提交不参与合并和缓存的单次请求。
+     *
+     * @param action 操作动作。
+     * @param payload 请求数据。
+     * @param priority 优先级。
+     * @param timeout 截止时间，单位：毫秒。
+     * @param listener 应答监听器。
+     * @return 没有可用终端或者队列已满时返回 {@code false} 。
+     */
+    public boolean submit(String action, JSONObject payload, int priority, long timeout,
+                          TransmitListener listener) {
+        return this.enqueue(new Job(action, payload, priority, timeout, listener));
+    }
+
+    private boolean enqueue(Job job) {
+        synchronized (this.mutex) {
+            if (this.endpoints.isEmpty()) {
+                return false;
+            }
+
+            if (this.queue.size() >= this.maxQueued) {
+                this.rejected.incrementAndGet();
+                Logger.w(this.getClass(), "#enqueue - Queue is full: " + this.queue.size());
+                return false;
+            }
+
+            this.submitted.incrementAndGet();
+            this.queue.add(job);
+            this.mutex.notifyAll();
+        }
+        return true;
+    }
+
+    private void dispatch() {
+        while (this.running) {
+            List<Job> timeouts = new ArrayList<>();
+            List<Batch> ready = new ArrayList<>();
+
+            synchronized (this.mutex) {
+                long now = System.currentTimeMillis();
+                long wakeup = now + 1000;
+
+                Iterator<Job> iter = this.queue.iterator();
+                while (iter.hasNext()) {
+                    Job job = iter.next();
+                    if (job.deadline <= now) {
+                        iter.remove();
+                        timeouts.add(job);
+                    }
+                    else {
+                        wakeup = Math.min(wakeup, job.deadline);
+                    }
+                }
+
+                while (!this.queue.isEmpty()) {
+                    CVEndpoint endpoint = this.selectEndpoint();
+                    if (null == endpoint) {
+                        break;
+                    }
+
+                    endpoint.acquire();
+                    ready.add(new Batch(endpoint, this.coalesce(this.queue.poll())));
+                }
+
+                if (timeouts.isEmpty() && ready.isEmpty()) {
+                    try {
+                        this.mutex.wait(Math.max(1, wakeup - now));
+                    } catch (InterruptedException e) {
+                        // Nothing
+                    }
+                    continue;
+                }
+            }
+
+            for (Job job : timeouts) {
+                this.expired.incrementAndGet();
+                Logger.w(this.getClass(), "#dispatch - Job expired in queue: " + job.action);
+                job.fail(CVStateCode.Busy);
+            }
+
+            for (Batch batch : ready) {
+                this.executor.execute(() -> this.execute(batch));
+            }
+        }
+    }
+
+    /**
+     * 选择负载最低的有空闲任务槽的终端，同时删除无效终端。
+     *
+     * @return
+     */
+    private CVEndpoint selectEndpoint() {
+        CVEndpoint result = null;
+        double load = 1.0;
+
+        Iterator<CVEndpoint> iter = this.endpoints.iterator();
+        while (iter.hasNext()) {
+            CVEndpoint endpoint = iter.next();
+            if (!endpoint.isValid()) {
+                iter.remove();
+                Logger.w(this.getClass(), "#selectEndpoint - Remove invalid endpoint: " + endpoint);
+                continue;
+            }
+
+            if (endpoint.numFreeSlots() > 0 && endpoint.getLoad() < load) {
+                result = endpoint;
+                load = endpoint.getLoad();
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * 合并与指定任务同类型、同参数的排队任务。
+     *
+     * @param head
+     * @return
+     */
+    private List<Job> coalesce(Job head) {
+        List<Job> list = new ArrayList<>();
+        list.add(head);
+        if (null == head.pending) {
+            return list;
+        }
+
+        List<Job> candidates = new ArrayList<>();
+        for (Job job : this.queue) {
+            if (null != job.pending && job.action.equals(head.action) && job.paramsKey.equals(head.paramsKey)) {
+                candidates.add(job);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return list;
+        }
+
+        Collections.sort(candidates);
+        int count = head.pending.size();
+        for (Job job : candidates) {
+            if (count + job.pending.size() > this.maxBatchFiles) {
+                continue;
+            }
+
+            count += job.pending.size();
+            list.add(job);
+            this.queue.remove(job);
+        }
+
+        return list;
+    }
+
+    private void execute(Batch batch) {
+        long now = System.currentTimeMillis();
+        long timeout = 1000;
+        for (Job job : batch.jobs) {
+            this.waiting.record(now - job.timestamp);
+            timeout = Math.max(timeout, job.deadline - now);
+        }
+
+        this.batches.incrementAndGet();
+
+        Job head = batch.jobs.get(0);
+        Packet response = null;
+        Map<String, JSONArray> results = null;
+        long elapsed = 0;
+        CVStateCode stateCode = CVStateCode.Ok;
+
+        try {
+            if (null == head.pending) {
+                response = this.transmitter.transmit(batch.endpoint, new Packet(head.action, head.params), timeout);
+                if (null == response) {
+                    stateCode = CVStateCode.EndpointException;
+                }
+            }
+            else {
+                results = new HashMap<>();
+                elapsed = this.transmitFiles(batch, timeout, results);
+                if (elapsed < 0) {
+                    stateCode = (elapsed == -1) ? CVStateCode.EndpointException : CVStateCode.Failure;
+                    elapsed = 0;
+                }
+            }
+        } catch (Exception e) {
+            Logger.e(this.getClass(), "#execute - " + head.action, e);
+            stateCode = CVStateCode.Failure;
+        } finally {
+            this.processing.record(System.currentTimeMillis() - now);
+            batch.endpoint.release();
+            synchronized (this.mutex) {
+                this.mutex.notifyAll();
+            }
+        }
+
+        for (Job job : batch.jobs) {
+            if (CVStateCode.Ok != stateCode) {
+                job.fail(stateCode);
+                continue;
+            }
+
+            this.completed.incrementAndGet();
+            if (null == job.pending) {
+                try {
+                    job.transmitListener.onCompleted(response);
+                } catch (Exception e) {
+                    Logger.e(this.getClass(), "#execute - Listener error: " + job.action, e);
+                }
+                continue;
+            }
+
+            for (FileLabel fileLabel : job.pending) {
+                JSONArray result = results.get(identify(fileLabel));
+                if (null != result) {
+                    job.results.put(fileLabel.getFileCode(), rewrite(result, fileLabel.getFileCode()));
+                }
+            }
+
+            try {
+                job.batchListener.onCompleted(job.results, elapsed);
+            } catch (Exception e) {
+                Logger.e(this.getClass(), "#execute - Listener error: " + job.action, e);
+            }
+        }
+    }
+
+    /**
+     * 向终端发送批次内的文件，相同 MD5 的文件只发送一次。
+     *
+     * @param batch
+     * @param timeout
+     * @param results 按文件标识存储的结果。
+     * @return 返回终端处理耗时，终端无应答返回 {@code -1} ，处理失败返回 {@code -2} 。
+     */
+    private long transmitFiles(Batch batch, long timeout, Map<String, JSONArray> results) {
+        Job head = batch.jobs.get(0);
+
+        LinkedHashMap<String, FileLabel> files = new LinkedHashMap<>();
+        for (Job job : batch.jobs) {
+            for (FileLabel fileLabel : job.pending) {
+                String ident = identify(fileLabel);
+                if (files.containsKey(ident) || results.containsKey(ident)) {
+                    continue;
+                }
+
+                // 其他批次可能已处理了相同的文件
+                JSONArray cached = this.cache.get(job.cacheKey(fileLabel));
+                if (null != cached) {
+                    results.put(ident, cached);
+                }
+                else {
+                    files.put(ident, fileLabel);
+                }
+            }
+        }
+
+        if (files.isEmpty()) {
+            return 0;
+        }
+
+        this.transmittedFiles.addAndGet(files.size());
+
+        if (CVAction.DetectBarCode.name.equals(head.action)) {
+            // 条形码检测每次处理一个文件
+            long start = System.currentTimeMillis();
+            boolean responded = false;
+            for (Map.Entry<String, FileLabel> e : files.entrySet()) {
+                JSONObject payload = new JSONObject(head.params.toString());
+                payload.put("file", e.getValue().toJSON());
+                Packet response = this.transmitter.transmit(batch.endpoint, new Packet(head.action, payload),
+                        Math.max(1000, timeout - (System.currentTimeMillis() - start)));
+                if (null == response) {
+                    continue;
+                }
+
+                responded = true;
+                if (Packet.extractCode(response) != CVStateCode.Ok.code) {
+                    continue;
+                }
+
+                JSONArray result = Packet.extractDataPayload(response).getJSONArray("result");
+                results.put(e.getKey(), result);
+                this.cache.put(head.cacheKey(e.getValue()), result);
+            }
+            return responded ? (System.currentTimeMillis() - start) : -1;
+        }
+
+        JSONArray list = new JSONArray();
+        Map<String, String> idents = new HashMap<>();
+        for (Map.Entry<String, FileLabel> e : files.entrySet()) {
+            list.put(e.getValue().toJSON());
+            idents.put(e.getValue().getFileCode(), e.getKey());
+        }
+
+        JSONObject payload = new JSONObject(head.params.toString());
+        payload.put("list", list);
+        Packet response = this.transmitter.transmit(batch.endpoint, new Packet(head.action, payload), timeout);
+        if (null == response) {
+            Logger.w(this.getClass(), "#transmitFiles - Endpoint is error: " + batch.endpoint);
+            return -1;
+        }
+
+        if (Packet.extractCode(response) != CVStateCode.Ok.code) {
+            Logger.d(this.getClass(), "#transmitFiles - Process failed: " + Packet.extractCode(response));
+            return -2;
+        }
+
+        JSONObject data = Packet.extractDataPayload(response);
+        Map<String, JSONArray> grouped = new HashMap<>();
+        for (String ident : files.keySet()) {
+            grouped.put(ident, new JSONArray());
+        }
+
+        JSONArray result = data.getJSONArray("result");
+        for (int i = 0; i < result.length(); ++i) {
+            JSONObject item = result.getJSONObject(i);
+            String ident = idents.get(item.optString("fileCode"));
+            if (null != ident) {
+                grouped.get(ident).put(item);
+            }
+        }
+
+        for (Map.Entry<String, JSONArray> e : grouped.entrySet()) {
+            results.put(e.getKey(), e.getValue());
+            this.cache.put(head.cacheKey(files.get(e.getKey())), e.getValue());
+        }
+
+        return data.optLong("elapsed", 0);
+    }
+
+    @Override
+    public JSONObject toJSON() {
+        JSONObject json = this.toCompactJSON();
+        json.put("waiting", this.waiting.toJSON());
+        json.put("processing", this.processing.toJSON());
+        return json;
+    }
+
+    @Override
+    public JSONObject toCompactJSON() {
+        JSONObject json = new JSONObject();
+        int slots = 0;
+        int active = 0;
+        synchronized (this.mutex) {
+            json.put("endpoints", this.endpoints.size());
+            for (CVEndpoint endpoint : this.endpoints) {
+                slots += endpoint.slots;
+                active += endpoint.numActiveSlots();
+            }
+            json.put("queued", this.queue.size());
+        }
+        json.put("slots", slots);
+        json.put("activeSlots", active);
+        json.put("submitted", this.submitted.get());
+        json.put("completed", this.completed.get());
+        json.put("failed", this.failed.get());
+        json.put("expired", this.expired.get());
+        json.put("rejected", this.rejected.get());
+        json.put("batches", this.batches.get());
+        json.put("transmittedFiles", this.transmittedFiles.get());
+        json.put("cacheHits", this.cache.hits.get());
+        json.put("cacheMisses", this.cache.misses.get());
+        return json;
+    }
+
+    private static String identify(FileLabel fileLabel) {
+        String md5 = fileLabel.getMD5Code();
+        return (null != md5 && md5.length() > 0) ? md5 : fileLabel.getFileCode();
+    }
+
+    /**
+     * 复制结果，并将结果里的文件码替换为请求的文件码。
+     *
+     * @param result
+     * @param fileCode
+     * @return
+     */
+    private static JSONArray rewrite(JSONArray result, String fileCode) {
+        JSONArray array = new JSONArray();
+        for (int i = 0; i < result.length(); ++i) {
+            Object value = result.get(i);
+            if (value instanceof JSONObject) {
+                JSONObject item = new JSONObject(value.toString());
+                if (item.has("fileCode")) {
+                    item.put("fileCode", fileCode);
+                }
+                array.put(item);
+            }
+            else {
+                array.put(value);
+            }
+        }
+        return array;
+    }
+
+    /**
+     * 生成与键顺序无关的参数描述。
+     *
+     * @param params
+     * @return
+     */
+    private static String canonical(JSONObject params) {
+        if (null == params || params.length() == 0) {
+            return "";
+        }
+
+        TreeMap<String, String> map = new TreeMap<>();
+        for (String key : params.keySet()) {
+            map.put(key, params.get(key).toString());
+        }
+        return map.toString();
+    }
+
+    /**
+     * 终端请求发送器。
+     */
+    public interface Transmitter {
+
+        /**
+         * 向终端发送请求并等待应答。
+         *
+         * @param endpoint
+         * @param request
+         * @param timeout
+         * @return 终端无应答时返回 {@code null} 。
+         */
+        Packet transmit(CVEndpoint endpoint, Packet request, long timeout);
+    }
+
+    /**
+     * 文件处理任务监听器。
+     */
+    public interface BatchListener {
+
+        /**
+         * 处理完成。
+         *
+         * @param results 按文件码存储的结果，终端未处理的文件没有对应的结果。
+         * @param elapsed 终端处理耗时，全部命中缓存时为 {@code 0} 。
+         */
+        void onCompleted(Map<String, JSONArray> results, long elapsed);
+
+        void onFailed(CVStateCode stateCode);
+    }
+
+    /**
+     * 单次请求监听器。
+     */
+    public interface TransmitListener {
+
+        void onCompleted(Packet response);
+
+        void onFailed(CVStateCode stateCode);
+    }
+
+    /**
+     * 排队任务。
+     */
+    private class Job implements Comparable<Job> {
+
+        protected final long sn;
+
+        protected final String action;
+
+        protected final JSONObject params;
+
+        protected final String paramsKey;
+
+        protected final int priority;
+
+        protected final long timestamp;
+
+        protected final long deadline;
+
+        /**
+         * 需要终端处理的文件，单次请求为 {@code null} 。
+         */
+        protected final List<FileLabel> pending;
+
+        protected final Map<String, JSONArray> results;
+
+        protected final BatchListener batchListener;
+
+        protected final TransmitListener transmitListener;
+
+        protected Job(String action, List<FileLabel> files, JSONObject params, String paramsKey,
+                      int priority, long timeout, BatchListener listener) {
+            this.sn = sequence.incrementAndGet();
+            this.action = action;
+            this.params = (null == params) ? new JSONObject() : params;
+            this.paramsKey = paramsKey;
+            this.priority = priority;
+            this.timestamp = System.currentTimeMillis();
+            this.deadline = this.timestamp + timeout;
+            this.pending = new ArrayList<>(files.size());
+            this.results = new LinkedHashMap<>();
+            this.batchListener = listener;
+            this.transmitListener = null;
+        }
+
+        protected Job(String action, JSONObject payload, int priority, long timeout, TransmitListener listener) {
+            this.sn = sequence.incrementAndGet();
+            this.action = action;
+            this.params = payload;
+            this.paramsKey = "";
+            this.priority = priority;
+            this.timestamp = System.currentTimeMillis();
+            this.deadline = this.timestamp + timeout;
+            this.pending = null;
+            this.results = null;
+            this.batchListener = null;
+            this.transmitListener = listener;
+        }
+
+        protected String cacheKey(FileLabel fileLabel) {
+            String md5 = fileLabel.getMD5Code();
+            if (null == md5 || md5.length() == 0) {
+                return null;
+            }
+            return md5 + "|" + this.action + "|" + this.paramsKey;
+        }
+
+        protected void fail(CVStateCode stateCode) {
+            failed.incrementAndGet();
+            try {
+                if (null != this.batchListener) {
+                    this.batchListener.onFailed(stateCode);
+                }
+                else {
+                    this.transmitListener.onFailed(stateCode);
+                }
+            } catch (Exception e) {
+                Logger.e(CVJobQueue.class, "#fail - Listener error: " + this.action, e);
+            }
+        }
+
+        @Override
+        public int compareTo(Job other) {
+            if (this.priority != other.priority) {
+                return other.priority - this.priority;
+            }
+            if (this.deadline != other.deadline) {
+                return Long.compare(this.deadline, other.deadline);
+            }
+            return Long.compare(this.sn, other.sn);
+        }
+    }
+
+    /**
+     * 分配给终端的批次。
+     */
+    private class Batch {
+
+        protected final CVEndpoint endpoint;
+
+        protected final List<Job> jobs;
+
+        protected Batch(CVEndpoint endpoint, List<Job> jobs) {
+            this.endpoint = endpoint;
+            this.jobs = jobs;
+        }
+    }
+
+    /**
+     * 处理结果缓存。
+     */
+    private class ResultCache {
+
+        private int maxEntries;
+
+        private long ttl;
+
+        private final LinkedHashMap<String, Entry> entries;
+
+        protected final AtomicLong hits = new AtomicLong(0);
+
+        protected final AtomicLong misses = new AtomicLong(0);
+
+        protected ResultCache(int maxEntries, long ttl) {
+            this.maxEntries = maxEntries;
+            this.ttl = ttl;
+            this.entries = new LinkedHashMap<>(1024, 0.75f, true);
+        }
+
+        protected synchronized void configure(int maxEntries, long ttl) {
+            this.maxEntries = maxEntries;
+            this.ttl = ttl;
+            this.trim();
+        }
+
+        protected JSONArray get(String key) {
+            if (null == key) {
+                return null;
+            }
+
+            String value = null;
+            synchronized (this) {
+                Entry entry = this.entries.get(key);
+                if (null != entry) {
+                    if (System.currentTimeMillis() - entry.timestamp > this.ttl) {
+                        this.entries.remove(key);
+                    }
+                    else {
+                        value = entry.value;
+                    }
+                }
+            }
+
+            if (null == value) {
+                return null;
+            }
+
+            this.hits.incrementAndGet();
+            return new JSONArray(value);
+        }
+
+        protected synchronized void put(String key, JSONArray result) {
+            if (null == key || this.maxEntries <= 0) {
+                return;
+            }
+
+            this.entries.put(key, new Entry(result.toString()));
+            this.trim();
+        }
+
+        private void trim() {
+            Iterator<Entry> iter = this.entries.values().iterator();
+            while (this.entries.size() > this.maxEntries && iter.hasNext()) {
+                iter.next();
+                iter.remove();
+            }
+        }
+    }
+
+    private class Entry {
+
+        protected final String value;
+
+        protected final long timestamp;
+
+        protected Entry(String value) {
+            this.value = value;
+            this.timestamp = System.currentTimeMillis();
+        }
+    }
+}
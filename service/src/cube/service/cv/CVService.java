@@ -8,7 +8,6 @@ package cube.service.cv;
 
 import cell.core.talk.TalkContext;
 import cell.core.talk.dialect.ActionDialect;
-import cell.util.Utils;
 import cell.util.log.Logger;
 import cube.auth.AuthToken;
 import cube.common.Packet;
@@ -34,8 +33,11 @@ import java.awt.image.BufferedImage;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 计算机视觉功能服务模块。
@@ -48,16 +50,25 @@ public class CVService extends AbstractModule {
 
     private ExecutorService executor;
 
-    private List<CVEndpoint> endpointList;
+    private CVJobQueue jobQueue;
 
     public CVService(CVCellet cellet) {
         this.cellet = cellet;
-        this.endpointList = new ArrayList<>();
     }
 
     @Override
     public void start() {
-        this.executor = Executors.newFixedThreadPool(8);
+        // 同时执行的批次数量受终端任务槽数量限制
+        this.executor = Executors.newCachedThreadPool();
+
+        this.jobQueue = new CVJobQueue(new CVJobQueue.Transmitter() {
+            @Override
+            public Packet transmit(CVEndpoint endpoint, Packet request, long timeout) {
+                ActionDialect dialect = cellet.transmit(endpoint.talkContext, request.toDialect(), timeout);
+                return (null == dialect) ? null : new Packet(dialect);
+            }
+        }, this.executor);
+        this.jobQueue.start();
 
         this.executor.execute(new Runnable() {
             @Override
@@ -81,7 +92,9 @@ public class CVService extends AbstractModule {
 
     @Override
     public void stop() {
-        this.endpointList.clear();
+        if (null != this.jobQueue) {
+            this.jobQueue.stop();
+        }
         if (null != this.executor) {
             this.executor.shutdown();
         }
@@ -96,32 +109,25 @@ public class CVService extends AbstractModule {
     public void onTick(Module module, Kernel kernel) {
     }
 
-    public void setup(Contact contact, TalkContext talkContext) {
-        synchronized (this.endpointList) {
-            for (CVEndpoint endpoint : this.endpointList) {
-                if (endpoint.contact.getId().longValue() == contact.getId().longValue()) {
-                    this.endpointList.remove(endpoint);
-                    break;
-                }
-            }
-
-            this.endpointList.add(new CVEndpoint(contact, talkContext));
+    public CVJobQueue getJobQueue() {
+        return this.jobQueue;
+    }
 
-            Logger.i(this.getClass(), "#setup - Setup id: " + contact.getId());
-        }
+    /**
+     * 配置终端。
+     *
+     * @param contact 终端联系人。
+     * @param talkContext 终端会话。
+     * @param slots 终端可并发处理的任务数量。
+     */
+    public void setup(Contact contact, TalkContext talkContext, int slots) {
+        this.jobQueue.addEndpoint(new CVEndpoint(contact, talkContext, slots));
+        Logger.i(this.getClass(), "#setup - Setup id: " + contact.getId() + " (slots: " + slots + ")");
     }
 
     public void teardown(Contact contact, TalkContext talkContext) {
-        synchronized (this.endpointList) {
-            for (CVEndpoint endpoint : this.endpointList) {
-                if (endpoint.contact.getId().longValue() == contact.getId().longValue()) {
-                    this.endpointList.remove(endpoint);
-                    break;
-                }
-            }
-
-            Logger.i(this.getClass(), "#teardown - Teardown id: " + contact.getId());
-        }
+        this.jobQueue.removeEndpoint(contact.getId());
+        Logger.i(this.getClass(), "#teardown - Teardown id: " + contact.getId());
     }
 
     /**
@@ -178,33 +184,18 @@ public class CVService extends AbstractModule {
      * @return
      */
     public boolean combineBarcodes(AuthToken token, List<BarCode> barcodeList, CombineBarCodeListener listener) {
-        final CVEndpoint endpoint = this.selectEndpoint();
-        if (null == endpoint) {
-            Logger.e(this.getClass(), "#combineBarcodes - No endpoints");
-            return false;
+        JSONObject payload = new JSONObject();
+        JSONArray barcodes = new JSONArray();
+        for (BarCode barCode : barcodeList) {
+            barcodes.put(barCode.toJSON());
         }
+        payload.put("barcodes", barcodes);
 
-        endpoint.setWorking(true);
-
-        this.executor.execute(new Runnable() {
+        boolean success = this.jobQueue.submit(CVAction.CombineBarcodes.name, payload, CVJobQueue.PRIORITY_NORMAL,
+                6 * 60 * 1000, new CVJobQueue.TransmitListener() {
             @Override
-            public void run() {
+            public void onCompleted(Packet response) {
                 try {
-                    JSONObject payload = new JSONObject();
-                    JSONArray barcodes = new JSONArray();
-                    for (BarCode barCode : barcodeList) {
-                        barcodes.put(barCode.toJSON());
-                    }
-                    payload.put("barcodes", barcodes);
-                    Packet request = new Packet(CVAction.CombineBarcodes.name, payload);
-                    ActionDialect dialect = cellet.transmit(endpoint.talkContext, request.toDialect(), 6 * 60 * 1000);
-                    if (null == dialect) {
-                        Logger.w(this.getClass(), "#combineBarcodes - Endpoint is error");
-                        listener.onFailed(barcodeList, CVStateCode.EndpointException);
-                        return;
-                    }
-
-                    Packet response = new Packet(dialect);
                     if (Packet.extractCode(response) != CVStateCode.Ok.code) {
                         Logger.w(this.getClass(), "#combineBarcodes - Process failed : " + Packet.extractCode(response));
                         listener.onFailed(barcodeList, CVStateCode.FileError);
@@ -235,19 +226,27 @@ public class CVService extends AbstractModule {
                         listener.onCompleted(barcodeList, fileLabel);
                     }
                     else {
-                        Logger.e(this.getClass(), "#combineBarcodes - Endpoint upload file failed: " + endpoint.toString());
+                        Logger.e(this.getClass(), "#combineBarcodes - Endpoint upload file failed: "
+                                + fileLabel.getFileCode());
                         listener.onFailed(barcodeList, CVStateCode.FileError);
                     }
                 } catch (Exception e) {
                     Logger.e(this.getClass(), "#combineBarcodes - Error", e);
                     listener.onFailed(barcodeList, CVStateCode.Failure);
-                } finally {
-                    endpoint.setWorking(false);
                 }
             }
+
+            @Override
+            public void onFailed(CVStateCode stateCode) {
+                Logger.w(this.getClass(), "#combineBarcodes - Endpoint is error: " + stateCode.code);
+                listener.onFailed(barcodeList, stateCode);
+            }
         });
 
-        return true;
+        if (!success) {
+            Logger.e(this.getClass(), "#combineBarcodes - No endpoints");
+        }
+        return success;
     }
 
     /**
@@ -259,83 +258,50 @@ public class CVService extends AbstractModule {
      * @return
      */
     public boolean detectBarCode(AuthToken token, List<String> fileCodes, DetectBarCodeListener listener) {
-        final CVEndpoint endpoint = this.selectEndpoint();
-        if (null == endpoint) {
-            Logger.e(this.getClass(), "#detectBarCode - No endpoints");
-            return false;
-        }
-
-        endpoint.setWorking(true);
-
-        final int limit = 10;
-        final List<FileLabel> fileLabels = new ArrayList<>();
-        for (String fileCode : fileCodes) {
-            FileLabel fileLabel = this.getFile(token.getDomain(), fileCode);
-            if (null != fileLabel) {
-                if (fileLabel.getFileType() == FileType.JPEG ||
-                        fileLabel.getFileType() == FileType.PNG ||
-                        fileLabel.getFileType() == FileType.BMP) {
-                    fileLabels.add(fileLabel);
-                    if (fileLabels.size() >= limit) {
-                        // 超限
-                        break;
-                    }
-                }
-            }
-        }
-
+        final List<FileLabel> fileLabels = this.getImageFiles(token, fileCodes);
         if (fileLabels.isEmpty()) {
-            endpoint.setWorking(false);
             Logger.e(this.getClass(), "#detectBarCode - Can NOT find files");
             return false;
         }
 
-        this.executor.execute(new Runnable() {
+        boolean success = this.jobQueue.submit(CVAction.DetectBarCode.name, fileLabels, null,
+                CVJobQueue.PRIORITY_NORMAL, 3 * 60 * 1000, new CVJobQueue.BatchListener() {
             @Override
-            public void run() {
-                try {
-                    List<BarCodeInfo> infoList = new ArrayList<>();
-
-                    for (FileLabel fileLabel : fileLabels) {
-                        JSONObject payload = new JSONObject();
-                        payload.put("file", fileLabel.toJSON());
-                        Packet request = new Packet(CVAction.DetectBarCode.name, payload);
-                        ActionDialect dialect = cellet.transmit(endpoint.talkContext, request.toDialect(), 60 * 1000);
-                        if (null == dialect) {
-                            Logger.w(this.getClass(), "#detectBarCode - Endpoint is error");
-                            continue;
-                        }
-
-                        Packet response = new Packet(dialect);
-                        if (Packet.extractCode(response) != CVStateCode.Ok.code) {
-                            Logger.d(this.getClass(), "#detectBarCode - Process failed");
-                            continue;
-                        }
-
-                        List<BarCode> codeList = new ArrayList<>();
-
-                        JSONObject data = Packet.extractDataPayload(response);
-                        JSONArray result = data.getJSONArray("result");
-                        for (int i = 0; i < result.length(); ++i) {
-                            BarCode barCode = new BarCode(result.getJSONObject(i));
-                            codeList.add(barCode);
+            public void onCompleted(Map<String, JSONArray> results, long elapsed) {
+                List<BarCodeInfo> infoList = new ArrayList<>();
+                for (FileLabel fileLabel : fileLabels) {
+                    JSONArray result = results.get(fileLabel.getFileCode());
+                    if (null == result) {
+                        // 终端处理失败
+                        continue;
+                    }
 
-                            Logger.d(this.getClass(), "#detectBarCode - result: " + barCode.data +
-                                    " from " + fileLabel.getFileCode());
-                        }
+                    List<BarCode> codeList = new ArrayList<>();
+                    for (int i = 0; i < result.length(); ++i) {
+                        BarCode barCode = new BarCode(result.getJSONObject(i));
+                        codeList.add(barCode);
 
-                        BarCodeInfo info = new BarCodeInfo(fileLabel, codeList);
-                        infoList.add(info);
+                        Logger.d(this.getClass(), "#detectBarCode - result: " + barCode.data +
+                                " from " + fileLabel.getFileCode());
                     }
 
-                    listener.onCompleted(infoList);
-                } finally {
-                    endpoint.setWorking(false);
+                    infoList.add(new BarCodeInfo(fileLabel, codeList));
                 }
+
+                listener.onCompleted(infoList);
+            }
+
+            @Override
+            public void onFailed(CVStateCode stateCode) {
+                Logger.w(this.getClass(), "#detectBarCode - Endpoint is error: " + stateCode.code);
+                listener.onFailed(fileCodes, stateCode);
             }
         });
 
-        return true;
+        if (!success) {
+            Logger.e(this.getClass(), "#detectBarCode - No endpoints");
+        }
+        return success;
     }
 
     /**
@@ -348,83 +314,57 @@ public class CVService extends AbstractModule {
      * @return
      */
     public boolean detectObject(AuthToken token, List<String> fileCodes, boolean visualize, DetectObjectListener listener) {
-        final CVEndpoint endpoint = this.selectEndpoint();
-        if (null == endpoint) {
-            Logger.e(this.getClass(), "#detectObject - No endpoints");
-            return false;
-        }
-
-        endpoint.setWorking(true);
-
-        final int limit = 10;
-        final List<FileLabel> fileLabels = new ArrayList<>();
-        for (String fileCode : fileCodes) {
-            FileLabel fileLabel = this.getFile(token.getDomain(), fileCode);
-            if (null != fileLabel) {
-                if (fileLabel.getFileType() == FileType.JPEG ||
-                        fileLabel.getFileType() == FileType.PNG ||
-                        fileLabel.getFileType() == FileType.BMP) {
-                    fileLabels.add(fileLabel);
-                    if (fileLabels.size() >= limit) {
-                        // 超限
-                        break;
-                    }
-                }
-            }
-        }
+        return this.detectObject(token, fileCodes, visualize, CVJobQueue.PRIORITY_NORMAL, 3 * 60 * 1000, listener);
+    }
 
+    /**
+     * 检测图片的物体。
+     *
+     * @param token
+     * @param fileCodes
+     * @param visualize
+     * @param priority 任务优先级。
+     * @param timeout 任务截止时间，单位：毫秒。
+     * @param listener
+     * @return
+     */
+    public boolean detectObject(AuthToken token, List<String> fileCodes, boolean visualize, int priority,
+                                long timeout, DetectObjectListener listener) {
+        final List<FileLabel> fileLabels = this.getImageFiles(token, fileCodes);
         if (fileLabels.isEmpty()) {
-            endpoint.setWorking(false);
             Logger.e(this.getClass(), "#detectObject - Can NOT find files");
             return false;
         }
 
-        this.executor.execute(new Runnable() {
+        JSONObject params = new JSONObject();
+        params.put("visualize", visualize);
+        boolean success = this.jobQueue.submit(CVAction.ObjectDetection.name, fileLabels, params,
+                priority, timeout, new CVJobQueue.BatchListener() {
             @Override
-            public void run() {
-                try {
-                    JSONArray list = new JSONArray();
-                    for (FileLabel fileLabel : fileLabels) {
-                        list.put(fileLabel.toJSON());
-                    }
-
-                    JSONObject payload = new JSONObject();
-                    payload.put("list", list);
-                    payload.put("visualize", visualize);
-                    Packet request = new Packet(CVAction.ObjectDetection.name, payload);
-                    ActionDialect dialect = cellet.transmit(endpoint.talkContext, request.toDialect(), 3 * 60 * 1000);
-                    if (null == dialect) {
-                        Logger.w(this.getClass(), "#detectObject - Endpoint is error");
-                        listener.onFailed(fileCodes, CVStateCode.EndpointException);
-                        return;
-                    }
-
-                    Packet response = new Packet(dialect);
-                    if (Packet.extractCode(response) != CVStateCode.Ok.code) {
-                        Logger.d(this.getClass(), "#detectObject - Process failed");
-                        listener.onFailed(fileCodes, CVStateCode.Failure);
-                        return;
-                    }
-
-                    List<ObjectInfo> objectList = new ArrayList<>();
-
-                    JSONObject data = Packet.extractDataPayload(response);
-                    JSONArray result = data.getJSONArray("result");
-                    for (int i = 0; i < result.length(); ++i) {
+            public void onCompleted(Map<String, JSONArray> results, long elapsed) {
+                List<ObjectInfo> objectList = new ArrayList<>();
+                for (FileLabel fileLabel : fileLabels) {
+                    JSONArray result = results.get(fileLabel.getFileCode());
+                    for (int i = 0; null != result && i < result.length(); ++i) {
                         ObjectInfo info = new ObjectInfo(result.getJSONObject(i));
-                        info.setFileLabel(findFileLabel(fileLabels, info.getFileCode()));
+                        info.setFileLabel(fileLabel);
                         objectList.add(info);
                     }
-
-                    long elapsed = data.getLong("elapsed");
-                    listener.onCompleted(objectList, elapsed);
-                } finally {
-                    endpoint.setWorking(false);
                 }
+                listener.onCompleted(objectList, elapsed);
+            }
+
+            @Override
+            public void onFailed(CVStateCode stateCode) {
+                Logger.d(this.getClass(), "#detectObject - Process failed: " + stateCode.code);
+                listener.onFailed(fileCodes, stateCode);
             }
         });
 
-        return true;
+        if (!success) {
+            Logger.e(this.getClass(), "#detectObject - No endpoints");
+        }
+        return success;
     }
 
     public ObjectInfo detectObject(AuthToken token, String fileCode, boolean visualize) {
@@ -432,31 +372,26 @@ public class CVService extends AbstractModule {
         list.add(fileCode);
 
         final List<ObjectInfo> result = new ArrayList<>();
-        boolean success = this.detectObject(token, list, visualize, new DetectObjectListener() {
+        final CountDownLatch latch = new CountDownLatch(1);
+        boolean success = this.detectObject(token, list, visualize, CVJobQueue.PRIORITY_HIGH, 60 * 1000,
+                new DetectObjectListener() {
             @Override
             public void onCompleted(List<ObjectInfo> objects, long elapsed) {
                 result.addAll(objects);
-
-                synchronized (result) {
-                    result.notify();
-                }
+                latch.countDown();
             }
 
             @Override
             public void onFailed(List<String> fileCodes, CVStateCode stateCode) {
-                synchronized (result) {
-                    result.notify();
-                }
+                latch.countDown();
             }
         });
 
         if (success) {
-            synchronized (result) {
-                try {
-                    result.wait(60 * 1000);
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
+            try {
+                latch.await(60, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
             }
         }
         else {
@@ -479,83 +414,41 @@ public class CVService extends AbstractModule {
      * @return
      */
     public boolean estimatePose(AuthToken token, List<String> fileCodes, boolean visualize, PoseEstimationListener listener) {
-        final CVEndpoint endpoint = this.selectEndpoint();
-        if (null == endpoint) {
-            Logger.e(this.getClass(), "#estimatePose - No endpoints");
-            return false;
-        }
-
-        endpoint.setWorking(true);
-
-        final int limit = 10;
-        final List<FileLabel> fileLabels = new ArrayList<>();
-        for (String fileCode : fileCodes) {
-            FileLabel fileLabel = this.getFile(token.getDomain(), fileCode);
-            if (null != fileLabel) {
-                if (fileLabel.getFileType() == FileType.JPEG ||
-                        fileLabel.getFileType() == FileType.PNG ||
-                        fileLabel.getFileType() == FileType.BMP) {
-                    fileLabels.add(fileLabel);
-                    if (fileLabels.size() >= limit) {
-                        // 超限
-                        break;
-                    }
-                }
-            }
-        }
-
+        final List<FileLabel> fileLabels = this.getImageFiles(token, fileCodes);
         if (fileLabels.isEmpty()) {
-            endpoint.setWorking(false);
             Logger.e(this.getClass(), "#estimatePose - Can NOT find files");
             return false;
         }
 
-        this.executor.execute(new Runnable() {
+        JSONObject params = new JSONObject();
+        params.put("visualize", visualize);
+        boolean success = this.jobQueue.submit(CVAction.PoseEstimation.name, fileLabels, params,
+                CVJobQueue.PRIORITY_NORMAL, 2 * 60 * 1000, new CVJobQueue.BatchListener() {
             @Override
-            public void run() {
-                try {
-                    JSONArray list = new JSONArray();
-                    for (FileLabel fileLabel : fileLabels) {
-                        list.put(fileLabel.toJSON());
-                    }
-
-                    JSONObject payload = new JSONObject();
-                    payload.put("list", list);
-                    payload.put("visualize", visualize);
-                    Packet request = new Packet(CVAction.PoseEstimation.name, payload);
-                    ActionDialect dialect = cellet.transmit(endpoint.talkContext, request.toDialect(), 2 * 60 * 1000);
-                    if (null == dialect) {
-                        Logger.w(this.getClass(), "#estimatePose - Endpoint is error");
-                        listener.onFailed(fileCodes, CVStateCode.EndpointException);
-                        return;
-                    }
-
-                    Packet response = new Packet(dialect);
-                    if (Packet.extractCode(response) != CVStateCode.Ok.code) {
-                        Logger.d(this.getClass(), "#estimatePose - Process failed");
-                        listener.onFailed(fileCodes, CVStateCode.Failure);
-                        return;
-                    }
-
-                    List<PoseEstimationInfo> poseEstimationList = new ArrayList<>();
-
-                    JSONObject data = Packet.extractDataPayload(response);
-                    JSONArray result = data.getJSONArray("result");
-                    for (int i = 0; i < result.length(); ++i) {
+            public void onCompleted(Map<String, JSONArray> results, long elapsed) {
+                List<PoseEstimationInfo> poseEstimationList = new ArrayList<>();
+                for (FileLabel fileLabel : fileLabels) {
+                    JSONArray result = results.get(fileLabel.getFileCode());
+                    for (int i = 0; null != result && i < result.length(); ++i) {
                         PoseEstimationInfo info = new PoseEstimationInfo(result.getJSONObject(i));
-                        info.setFileLabel(findFileLabel(fileLabels, info.fileCode));
+                        info.setFileLabel(fileLabel);
                         poseEstimationList.add(info);
                     }
-
-                    long elapsed = data.getLong("elapsed");
-                    listener.onCompleted(poseEstimationList, elapsed);
-                } finally {
-                    endpoint.setWorking(false);
                 }
+                listener.onCompleted(poseEstimationList, elapsed);
+            }
+
+            @Override
+            public void onFailed(CVStateCode stateCode) {
+                Logger.d(this.getClass(), "#estimatePose - Process failed: " + stateCode.code);
+                listener.onFailed(fileCodes, stateCode);
             }
         });
 
-        return true;
+        if (!success) {
+            Logger.e(this.getClass(), "#estimatePose - No endpoints");
+        }
+        return success;
     }
 
     /**
@@ -568,167 +461,88 @@ public class CVService extends AbstractModule {
      * @return
      */
     public boolean estimateHand(AuthToken token, List<String> fileCodes, boolean visualize, HandEstimationListener listener) {
-        final CVEndpoint endpoint = this.selectEndpoint();
-        if (null == endpoint) {
-            Logger.e(this.getClass(), "#estimateHand - No endpoints");
-            return false;
-        }
-
-        endpoint.setWorking(true);
-
-        final int limit = 10;
-        final List<FileLabel> fileLabels = new ArrayList<>();
-        for (String fileCode : fileCodes) {
-            FileLabel fileLabel = this.getFile(token.getDomain(), fileCode);
-            if (null != fileLabel) {
-                if (fileLabel.getFileType() == FileType.JPEG ||
-                        fileLabel.getFileType() == FileType.PNG ||
-                        fileLabel.getFileType() == FileType.BMP) {
-                    fileLabels.add(fileLabel);
-                    if (fileLabels.size() >= limit) {
-                        // 超限
-                        break;
-                    }
-                }
-            }
-        }
-
+        final List<FileLabel> fileLabels = this.getImageFiles(token, fileCodes);
         if (fileLabels.isEmpty()) {
-            endpoint.setWorking(false);
             Logger.e(this.getClass(), "#estimateHand - Can NOT find files");
             return false;
         }
 
-        this.executor.execute(new Runnable() {
+        JSONObject params = new JSONObject();
+        params.put("visualize", visualize);
+        boolean success = this.jobQueue.submit(CVAction.HandEstimation.name, fileLabels, params,
+                CVJobQueue.PRIORITY_NORMAL, 2 * 60 * 1000, new CVJobQueue.BatchListener() {
             @Override
-            public void run() {
-                try {
-                    JSONArray list = new JSONArray();
-                    for (FileLabel fileLabel : fileLabels) {
-                        list.put(fileLabel.toJSON());
-                    }
-
-                    JSONObject payload = new JSONObject();
-                    payload.put("list", list);
-                    payload.put("visualize", visualize);
-                    Packet request = new Packet(CVAction.HandEstimation.name, payload);
-                    ActionDialect dialect = cellet.transmit(endpoint.talkContext, request.toDialect(), 2 * 60 * 1000);
-                    if (null == dialect) {
-                        Logger.w(this.getClass(), "#estimateHand - Endpoint is error");
-                        listener.onFailed(fileCodes, CVStateCode.EndpointException);
-                        return;
-                    }
-
-                    Packet response = new Packet(dialect);
-                    if (Packet.extractCode(response) != CVStateCode.Ok.code) {
-                        Logger.d(this.getClass(), "#estimateHand - Process failed");
-                        listener.onFailed(fileCodes, CVStateCode.Failure);
-                        return;
-                    }
-
-                    List<HandEstimationInfo> handEstimationList = new ArrayList<>();
-
-                    JSONObject data = Packet.extractDataPayload(response);
-                    JSONArray result = data.getJSONArray("result");
-                    for (int i = 0; i < result.length(); ++i) {
+            public void onCompleted(Map<String, JSONArray> results, long elapsed) {
+                List<HandEstimationInfo> handEstimationList = new ArrayList<>();
+                for (FileLabel fileLabel : fileLabels) {
+                    JSONArray result = results.get(fileLabel.getFileCode());
+                    for (int i = 0; null != result && i < result.length(); ++i) {
                         HandEstimationInfo info = new HandEstimationInfo(result.getJSONObject(i));
-                        info.setFileLabel(findFileLabel(fileLabels, info.fileCode));
+                        info.setFileLabel(fileLabel);
                         handEstimationList.add(info);
                     }
-
-                    long elapsed = data.getLong("elapsed");
-                    listener.onCompleted(handEstimationList, elapsed);
-                } finally {
-                    endpoint.setWorking(false);
                 }
+                listener.onCompleted(handEstimationList, elapsed);
+            }
+
+            @Override
+            public void onFailed(CVStateCode stateCode) {
+                Logger.d(this.getClass(), "#estimateHand - Process failed: " + stateCode.code);
+                listener.onFailed(fileCodes, stateCode);
             }
         });
 
-        return true;
+        if (!success) {
+            Logger.e(this.getClass(), "#estimateHand - No endpoints");
+        }
+        return success;
     }
 
     public boolean clipPaper(AuthToken token, List<String> fileCodes, ClipPaperListener listener) {
-        final CVEndpoint endpoint = this.selectEndpoint();
-        if (null == endpoint) {
-            Logger.e(this.getClass(), "#clipPaper - No endpoints");
-            return false;
-        }
-
-        endpoint.setWorking(true);
-
-        final int limit = 10;
-        final List<FileLabel> fileLabels = new ArrayList<>();
-        for (String fileCode : fileCodes) {
-            FileLabel fileLabel = this.getFile(token.getDomain(), fileCode);
-            if (null != fileLabel) {
-                if (fileLabel.getFileType() == FileType.JPEG ||
-                        fileLabel.getFileType() == FileType.PNG ||
-                        fileLabel.getFileType() == FileType.BMP) {
-                    fileLabels.add(fileLabel);
-                    if (fileLabels.size() >= limit) {
-                        // 超限
-                        break;
-                    }
-                }
-            }
-        }
+        return this.clipPaper(token, fileCodes, CVJobQueue.PRIORITY_NORMAL, 3 * 60 * 1000, listener);
+    }
 
+    public boolean clipPaper(AuthToken token, List<String> fileCodes, int priority, long timeout,
+                             ClipPaperListener listener) {
+        final List<FileLabel> fileLabels = this.getImageFiles(token, fileCodes);
         if (fileLabels.isEmpty()) {
-            endpoint.setWorking(false);
             Logger.e(this.getClass(), "#clipPaper - Can NOT find files");
             return false;
         }
 
-        this.executor.execute(new Runnable() {
+        boolean success = this.jobQueue.submit(CVAction.ClipPaper.name, fileLabels, null,
+                priority, timeout, new CVJobQueue.BatchListener() {
             @Override
-            public void run() {
-                try {
-                    JSONArray list = new JSONArray();
-                    for (FileLabel fileLabel : fileLabels) {
-                        list.put(fileLabel.toJSON());
-                    }
-
-                    JSONObject payload = new JSONObject();
-                    payload.put("list", list);
-                    Packet request = new Packet(CVAction.ClipPaper.name, payload);
-                    ActionDialect dialect = cellet.transmit(endpoint.talkContext, request.toDialect(), 3 * 60 * 1000);
-                    if (null == dialect) {
-                        Logger.w(this.getClass(), "#clipPaper - Endpoint is error");
-                        listener.onFailed(fileCodes, CVStateCode.EndpointException);
-                        return;
-                    }
-
-                    Packet response = new Packet(dialect);
-                    if (Packet.extractCode(response) != CVStateCode.Ok.code) {
-                        Logger.d(this.getClass(), "#clipPaper - Process failed");
-                        listener.onFailed(fileCodes, CVStateCode.Failure);
-                        return;
-                    }
-
-                    List<ProcessedFile> processedFileList = new ArrayList<>();
-
-                    JSONObject data = Packet.extractDataPayload(response);
-                    JSONArray result = data.getJSONArray("result");
-                    for (int i = 0; i < result.length(); ++i) {
+            public void onCompleted(Map<String, JSONArray> results, long elapsed) {
+                List<ProcessedFile> processedFileList = new ArrayList<>();
+                for (FileLabel fileLabel : fileLabels) {
+                    JSONArray result = results.get(fileLabel.getFileCode());
+                    for (int i = 0; null != result && i < result.length(); ++i) {
                         ProcessedFile info = new ProcessedFile(result.getJSONObject(i));
                         Size size = getImageSize(token.getDomain(), info.getProcessed().getFileCode());
                         if (null != size) {
                             info.getProcessed().setContext(size.toJSON());
                         }
-                        info.setFileLabel(findFileLabel(fileLabels, info.getFileCode()));
+                        info.setFileLabel(fileLabel);
                         processedFileList.add(info);
                     }
-
-                    long elapsed = data.getLong("elapsed");
-                    listener.onCompleted(processedFileList, elapsed);
-                    Logger.d(this.getClass(), "#clipPaper - elapsed: " + elapsed);
-                } finally {
-                    endpoint.setWorking(false);
                 }
+
+                listener.onCompleted(processedFileList, elapsed);
+                Logger.d(this.getClass(), "#clipPaper - elapsed: " + elapsed);
+            }
+
+            @Override
+            public void onFailed(CVStateCode stateCode) {
+                Logger.d(this.getClass(), "#clipPaper - Process failed: " + stateCode.code);
+                listener.onFailed(fileCodes, stateCode);
             }
         });
 
-        return true;
+        if (!success) {
+            Logger.e(this.getClass(), "#clipPaper - No endpoints");
+        }
+        return success;
     }
 
     public ProcessedFile clipPaper(AuthToken token, String fileCode) {
@@ -736,31 +550,25 @@ public class CVService extends AbstractModule {
         list.add(fileCode);
 
         final List<ProcessedFile> result = new ArrayList<>();
-        boolean success = this.clipPaper(token, list, new ClipPaperListener() {
+        final CountDownLatch latch = new CountDownLatch(1);
+        boolean success = this.clipPaper(token, list, CVJobQueue.PRIORITY_HIGH, 60 * 1000, new ClipPaperListener() {
             @Override
             public void onCompleted(List<ProcessedFile> processedFiles, long elapsed) {
                 result.addAll(processedFiles);
-
-                synchronized (result) {
-                    result.notify();
-                }
+                latch.countDown();
             }
 
             @Override
             public void onFailed(List<String> fileCodes, CVStateCode stateCode) {
-                synchronized (result) {
-                    result.notify();
-                }
+                latch.countDown();
             }
         });
 
         if (success) {
-            synchronized (result) {
-                try {
-                    result.wait(60 * 1000);
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
+            try {
+                latch.await(60, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
             }
         }
         else {
@@ -783,30 +591,15 @@ public class CVService extends AbstractModule {
      */
     public boolean matchSimilarity(FileLabel fileLabel, List<String> templateNames,
                                    MatchSimilarityListener listener) {
-        final CVEndpoint endpoint = this.selectEndpoint();
-        if (null == endpoint) {
-            Logger.e(this.getClass(), "#matchSimilarity - No endpoints");
-            return false;
-        }
+        JSONObject payload = new JSONObject();
+        payload.put("fileLabel", fileLabel.toJSON());
+        payload.put("templateNames", JSONUtils.toStringArray(templateNames));
 
-        endpoint.setWorking(true);
-
-        this.executor.execute(new Runnable() {
+        boolean success = this.jobQueue.submit(CVAction.MatchSimilarity.name, payload, CVJobQueue.PRIORITY_NORMAL,
+                2 * 60 * 1000, new CVJobQueue.TransmitListener() {
             @Override
-            public void run() {
+            public void onCompleted(Packet response) {
                 try {
-                    JSONObject payload = new JSONObject();
-                    payload.put("fileLabel", fileLabel.toJSON());
-                    payload.put("templateNames", JSONUtils.toStringArray(templateNames));
-                    Packet request = new Packet(CVAction.MatchSimilarity.name, payload);
-                    ActionDialect dialect = cellet.transmit(endpoint.talkContext, request.toDialect(), 2 * 60 * 1000);
-                    if (null == dialect) {
-                        Logger.w(this.getClass(), "#matchSimilarity - Endpoint is error");
-                        listener.onFailed(fileLabel, CVStateCode.EndpointException);
-                        return;
-                    }
-
-                    Packet response = new Packet(dialect);
                     if (Packet.extractCode(response) != CVStateCode.Ok.code) {
                         Logger.d(this.getClass(), "#matchSimilarity - Process failed");
                         listener.onFailed(fileLabel, CVStateCode.Failure);
@@ -826,13 +619,20 @@ public class CVService extends AbstractModule {
                 } catch (Exception e) {
                     Logger.w(this.getClass(), "#matchSimilarity - error", e);
                     listener.onFailed(fileLabel, CVStateCode.Failure);
-                } finally {
-                    endpoint.setWorking(false);
                 }
             }
+
+            @Override
+            public void onFailed(CVStateCode stateCode) {
+                Logger.w(this.getClass(), "#matchSimilarity - Endpoint is error: " + stateCode.code);
+                listener.onFailed(fileLabel, stateCode);
+            }
         });
 
-        return true;
+        if (!success) {
+            Logger.e(this.getClass(), "#matchSimilarity - No endpoints");
+        }
+        return success;
     }
 
     /**
@@ -855,51 +655,31 @@ public class CVService extends AbstractModule {
         return this.matchSimilarity(fileLabel, templateNames, listener);
     }
 
-    private CVEndpoint selectEndpoint() {
-        synchronized (this.endpointList) {
-            if (this.endpointList.isEmpty()) {
-                return null;
-            }
-
-            // 先选择空闲节点
-            CVEndpoint endpoint = null;
-            for (CVEndpoint selected : this.endpointList) {
-                if (!selected.isWorking() && selected.talkContext.isValid()) {
-                    endpoint = selected;
-                    break;
-                }
-            }
-
-            if (null != endpoint) {
-                return endpoint;
-            }
-
-            // 没有空闲，随机选择
-            int index = Utils.randomInt(0, this.endpointList.size() - 1);
-            endpoint = this.endpointList.get(index);
-            if (!endpoint.talkContext.isValid()) {
-                // 删除无效的终端节点
-                this.endpointList.remove(index);
-                // 校验
-                if (this.endpointList.isEmpty()) {
-                    return null;
-                }
-                else {
-                    return this.endpointList.get(0);
+    /**
+     * 获取图片文件，最多返回 10 个文件。
+     *
+     * @param token
+     * @param fileCodes
+     * @return
+     */
+    private List<FileLabel> getImageFiles(AuthToken token, List<String> fileCodes) {
+        final int limit = 10;
+        List<FileLabel> fileLabels = new ArrayList<>();
+        for (String fileCode : fileCodes) {
+            FileLabel fileLabel = this.getFile(token.getDomain(), fileCode);
+            if (null != fileLabel) {
+                if (fileLabel.getFileType() == FileType.JPEG ||
+                        fileLabel.getFileType() == FileType.PNG ||
+                        fileLabel.getFileType() == FileType.BMP) {
+                    fileLabels.add(fileLabel);
+                    if (fileLabels.size() >= limit) {
+                        // 超限
+                        break;
+                    }
                 }
             }
-
-            return endpoint;
         }
-    }
-
-    private FileLabel findFileLabel(List<FileLabel> fileLabels, String fileCode) {
-        for (FileLabel fileLabel : fileLabels) {
-            if (fileLabel.getFileCode().equals(fileCode)) {
-                return fileLabel;
-            }
-        }
-        return null;
+        return fileLabels;
     }
 
     private Size getImageSize(String domain, String fileCode) {
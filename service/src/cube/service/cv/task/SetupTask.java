@@ -35,7 +35,9 @@ public class SetupTask extends ServiceTask {
         Contact contact = new Contact(packet.data.getJSONObject("contact"));
 
         CVService service = ((CVCellet) this.cellet).getService();
-        service.setup(contact, this.talkContext);
+        // 终端声明的并发任务数量
+        int slots = packet.data.has("slots") ? packet.data.getInt("slots") : 1;
+        service.setup(contact, this.talkContext, slots);
 
         this.cellet.speak(this.talkContext,
                 this.makeResponse(dialect, packet, CVStateCode.Ok.code, contact.toCompactJSON()));
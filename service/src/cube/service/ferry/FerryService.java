@@ -43,6 +43,7 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.*;
@@ -57,6 +58,11 @@ public class FerryService extends AbstractModule implements CelletAdapterListene
 
     public final static String NAME = "Ferry";
 
+    /**
+     * 推送文件流的缓存大小。
+     */
+    private final static int STREAM_BUFFER_SIZE = 64 * 1024;
+
     private final FerryCellet cellet;
 
     private FerryStorage storage;
@@ -392,6 +398,15 @@ public class FerryService extends AbstractModule implements CelletAdapterListene
 
         Tenet tenet = null;
 
+        if (FerryPort.ResumeFile.equals(port)) {
+            // 续传文件不是信条，直接发送文件数据
+            String fileCode = dialect.getParamAsString("fileCode");
+            long offset = dialect.getParamAsLong("offset");
+            Logger.i(this.getClass(), "Resume file: " + fileCode + "@" + offset + " - " + domain);
+            this.transmitFile(domain, fileCode, offset);
+            return;
+        }
+
         if (FerryPort.Cleanup.equals(port)) {
             long timestamp = dialect.getParamAsLong("timestamp");
             tenet = new CleanupTenet(domain, timestamp);
@@ -580,25 +595,70 @@ public class FerryService extends AbstractModule implements CelletAdapterListene
             this.pushing = true;
         }
 
-        (new Thread() {
-            @Override
-            public void run() {
-                FerryPacket ferryPacket = pushQueue.poll();
-                while (null != ferryPacket) {
-                    Ticket ticket = tickets.get(ferryPacket.getDomain());
-                    if (null != ticket && null != ticket.talkContext) {
-                        // 向 Ferry 推送数据
-                        cellet.speak(ticket.talkContext, ferryPacket.toDialect());
-                    }
-
-                    ferryPacket = pushQueue.poll();
+        this.executor.execute(() -> {
+            FerryPacket ferryPacket = pushQueue.poll();
+            while (null != ferryPacket) {
+                Ticket ticket = tickets.get(ferryPacket.getDomain());
+                if (null != ticket && null != ticket.talkContext) {
+                    // 向 Ferry 推送数据
+                    cellet.speak(ticket.talkContext, ferryPacket.toDialect());
                 }
 
-                synchronized (pushMutex) {
-                    pushing = false;
+                ferryPacket = pushQueue.poll();
+            }
+
+            synchronized (pushMutex) {
+                pushing = false;
+            }
+        });
+    }
+
+    /**
+     * 从文件存储加载文件并从指定偏移位置推送给 Boat 。
+     *
+     * @param domain
+     * @param fileCode
+     * @param offset
+     */
+    public void transmitFile(String domain, String fileCode, long offset) {
+        // 从文件存储器加载文件
+        AbstractModule fileStorageModule = this.getKernel().getModule("FileStorage");
+        JSONObject data = new JSONObject();
+        data.put("action", "loadFile");
+        data.put("domain", domain);
+        data.put("fileCode", fileCode);
+        String fullPath = (String) fileStorageModule.notify(data);
+        if (null == fullPath) {
+            Logger.e(this.getClass(), "#transmitFile - Load file error from file storage: " + fileCode);
+            return;
+        }
+
+        File file = new File(fullPath);
+        if (offset < 0 || offset > file.length()) {
+            Logger.w(this.getClass(), "#transmitFile - Offset error: " + fileCode + "@" + offset);
+            offset = 0;
+        }
+
+        FileInputStream fis = null;
+        try {
+            fis = new FileInputStream(file);
+            if (offset > 0) {
+                fis.getChannel().position(offset);
+            }
+        } catch (IOException e) {
+            Logger.e(this.getClass(), "#transmitFile - Create file stream error: " + fullPath);
+            if (null != fis) {
+                try {
+                    fis.close();
+                } catch (IOException ioe) {
+                    // Nothing
                 }
             }
-        }).start();
+            return;
+        }
+
+        // 续传时流名称携带偏移位置
+        this.pushToBoat(domain, (offset > 0) ? fileCode + "@" + offset : fileCode, fis);
     }
 
     /**
@@ -647,12 +707,13 @@ public class FerryService extends AbstractModule implements CelletAdapterListene
                 PrimitiveOutputStream outputStream = cellet.speakStream(bundle.talkContext, bundle.streamName);
                 InputStream is = bundle.inputStream;
 
-                byte[] bytes = new byte[256];
+                byte[] bytes = new byte[STREAM_BUFFER_SIZE];
                 int length = 0;
                 try {
-                    while ((length = inputStream.read(bytes)) > 0) {
+                    while ((length = is.read(bytes)) > 0) {
                         outputStream.write(bytes, 0, length);
                     }
+                    outputStream.flush();
                 } catch (IOException e) {
                     Logger.w(this.getClass(), "#pushToBoat(stream)", e);
                 } finally {
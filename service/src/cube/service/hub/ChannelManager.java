@@ -21,6 +21,7 @@ import cube.hub.data.wechat.PlainMessage;
 import cube.storage.StorageFactory;
 import cube.storage.StorageFields;
 import cube.storage.StorageType;
+import cube.util.SQLUtils;
 import org.json.JSONObject;
 
 import java.io.IOException;
@@ -280,8 +281,28 @@ public class ChannelManager {
 
     private final String contactBookTable = "hub_contact_book";
 
+    /**
+     * 批量写入时每条语句包含的行数。
+     */
+    private final static int BATCH_SIZE = 500;
+
+    /**
+     * 非强制更新时通讯录记录的最小更新间隔。
+     */
+    private final static long CONTACT_BOOK_UPDATE_INTERVAL = 2L * 24 * 60 * 60 * 1000;
+
     private Storage storage;
 
+    /**
+     * 已建立插入或更新所需唯一索引的数据表。
+     */
+    private final Set<String> uniqueIndexTables;
+
+    /**
+     * 按账号分段的写锁，不同账号的数据可以并行写入。
+     */
+    private final Object[] accountLocks;
+
     private ExecutorService executor;
 
     /**
@@ -300,9 +321,17 @@ public class ChannelManager {
     private Map<String, ChannelCode> channelCodeMap;
 
     public ChannelManager(JSONObject config) {
-        this.storage = StorageFactory.getInstance().createStorage(StorageType.MySQL,
-                "HubService", config);
+        this(StorageType.MySQL, config);
+    }
+
+    public ChannelManager(StorageType type, JSONObject config) {
+        this.storage = StorageFactory.getInstance().createStorage(type, "HubService", config);
         this.channelCodeMap = new ConcurrentHashMap<>();
+        this.uniqueIndexTables = ConcurrentHashMap.newKeySet();
+        this.accountLocks = new Object[64];
+        for (int i = 0; i < this.accountLocks.length; ++i) {
+            this.accountLocks[i] = new Object();
+        }
     }
 
     public void start(ExecutorService executor) {
@@ -493,39 +522,43 @@ public class ChannelManager {
      * @param account
      * @param product
      */
-    public synchronized void updateAccount(String channelCode, Contact account, Product product) {
+    public void updateAccount(String channelCode, Contact account, Product product) {
         String nameBase64 = Base64.encodeBytes(account.getName().getBytes(StandardCharsets.UTF_8));
 
-        List<StorageField[]> result = this.storage.executeQuery(this.accountTable, new StorageField[] {
-                        new StorageField("sn", LiteralBase.LONG)
-                }, new Conditional[] {
-                        Conditional.createEqualTo("account_id", account.getExternalId()),
-                        Conditional.createAnd(),
-                        Conditional.createEqualTo("product", product.name)
-                });
+        List<StorageField[]> rows = new ArrayList<>(1);
+        rows.add(new StorageField[] {
+                new StorageField("account_id", account.getExternalId()),
+                new StorageField("account_name", nameBase64),
+                new StorageField("source_code", channelCode),
+                new StorageField("product", product.name),
+                new StorageField("data", account.toJSON().toString())
+        });
 
-        if (result.isEmpty()) {
-            // 插入
-            this.storage.executeInsert(this.accountTable, new StorageField[] {
-                    new StorageField("account_id", account.getExternalId()),
-                    new StorageField("account_name", nameBase64),
-                    new StorageField("source_code", channelCode),
-                    new StorageField("product", product.name),
-                    new StorageField("data", account.toJSON().toString())
-            });
-        }
-        else {
-            // 更新
-            long sn = result.get(0)[0].getLong();
-            this.storage.executeUpdate(this.accountTable, new StorageField[] {
-                    new StorageField("account_id", account.getExternalId()),
-                    new StorageField("account_name", nameBase64),
-                    new StorageField("source_code", channelCode),
-                    new StorageField("product", product.name),
-                    new StorageField("data", account.toJSON().toString())
+        synchronized (this.getAccountLock(account.getExternalId())) {
+            if (this.uniqueIndexTables.contains(this.accountTable)) {
+                this.storage.execute(SQLUtils.spellUpsert(this.storage.getType(), this.accountTable, rows,
+                        new String[] { "account_id", "product" },
+                        new String[] { "account_name", "source_code", "data" }, null));
+                return;
+            }
+
+            // 没有唯一索引时先查询再插入或更新
+            List<StorageField[]> result = this.storage.executeQuery(this.accountTable, new StorageField[] {
+                    new StorageField("sn", LiteralBase.LONG)
             }, new Conditional[] {
-                    Conditional.createEqualTo("sn", sn)
+                    Conditional.createEqualTo("account_id", account.getExternalId()),
+                    Conditional.createAnd(),
+                    Conditional.createEqualTo("product", product.name)
             });
+
+            if (result.isEmpty()) {
+                this.storage.executeInsert(this.accountTable, rows.get(0));
+            }
+            else {
+                this.storage.executeUpdate(this.accountTable, rows.get(0), new Conditional[] {
+                        Conditional.createEqualTo("sn", result.get(0)[0].getLong())
+                });
+            }
         }
     }
 
@@ -596,9 +629,85 @@ public class ChannelManager {
      * @param accountId
      * @param product
      * @param contact
+     * @param forceUpdate 是否强制更新，非强制更新时距离上次更新不足两天的记录不会被更新。
+     */
+    public void updateContactBook(String accountId, Product product, Contact contact, boolean forceUpdate) {
+        List<Contact> contacts = new ArrayList<>(1);
+        contacts.add(contact);
+        this.upsertContactBook(accountId, product, contacts, forceUpdate);
+    }
+
+    /**
+     * 批量同步通讯录数据。
+     *
+     * @param accountId
+     * @param product
+     * @param contacts
+     */
+    public void updateContactBook(String accountId, Product product, List<Contact> contacts) {
+        if (contacts.isEmpty()) {
+            return;
+        }
+
+        this.upsertContactBook(accountId, product, contacts, true);
+    }
+
+    private void upsertContactBook(String accountId, Product product, List<Contact> contacts, boolean forceUpdate) {
+        long now = System.currentTimeMillis();
+        String condition = forceUpdate ? null :
+                "`timestamp`<" + (now - CONTACT_BOOK_UPDATE_INTERVAL);
+
+        List<StorageField[]> rows = new ArrayList<>(Math.min(contacts.size(), BATCH_SIZE));
+        synchronized (this.getAccountLock(accountId)) {
+            if (!this.uniqueIndexTables.contains(this.contactBookTable)) {
+                for (Contact contact : contacts) {
+                    this.insertOrUpdateContactBook(accountId, product, contact, forceUpdate, now);
+                }
+                return;
+            }
+
+            for (Contact contact : contacts) {
+                // 联系人名使用 Base64 编码存储
+                String originalName = contact.getName();
+                String contactName = Base64.encodeBytes(originalName.getBytes(StandardCharsets.UTF_8));
+                contact.setName(contactName);
+                rows.add(new StorageField[] {
+                        new StorageField("account_id", accountId),
+                        new StorageField("contact_id", contact.getExternalId()),
+                        new StorageField("contact_name", contactName),
+                        new StorageField("timestamp", now),
+                        new StorageField("product", product.name),
+                        new StorageField("data", contact.toJSON().toString())
+                });
+                contact.setName(originalName);
+
+                if (rows.size() == BATCH_SIZE) {
+                    this.storage.execute(SQLUtils.spellUpsert(this.storage.getType(), this.contactBookTable, rows,
+                            new String[] { "account_id", "contact_id", "product" },
+                            new String[] { "contact_name", "data", "timestamp" }, condition));
+                    rows.clear();
+                }
+            }
+
+            if (!rows.isEmpty()) {
+                this.storage.execute(SQLUtils.spellUpsert(this.storage.getType(), this.contactBookTable, rows,
+                        new String[] { "account_id", "contact_id", "product" },
+                        new String[] { "contact_name", "data", "timestamp" }, condition));
+            }
+        }
+    }
+
+    /**
+     * 没有唯一索引时先查询再插入或更新通讯录记录。
+     *
+     * @param accountId
+     * @param product
+     * @param contact
+     * @param forceUpdate
+     * @param now
      */
-    public synchronized void updateContactBook(String accountId, Product product,
-                                               Contact contact, boolean forceUpdate) {
+    private void insertOrUpdateContactBook(String accountId, Product product, Contact contact,
+                                           boolean forceUpdate, long now) {
         List<StorageField[]> result = this.storage.executeQuery(this.contactBookTable,
                 new StorageField[] {
                         new StorageField("sn", LiteralBase.LONG),
@@ -611,46 +720,37 @@ public class ChannelManager {
                         Conditional.createEqualTo("product", product.name)
                 });
 
+        if (!result.isEmpty() && !forceUpdate
+                && now - result.get(0)[1].getLong() < CONTACT_BOOK_UPDATE_INTERVAL) {
+            // 更新间隔小于2天
+            return;
+        }
+
+        String originalName = contact.getName();
+        String contactName = Base64.encodeBytes(originalName.getBytes(StandardCharsets.UTF_8));
+        contact.setName(contactName);
+
         if (result.isEmpty()) {
-            // 插入
-            String originalName = contact.getName();
-            String contactName = Base64.encodeBytes(originalName.getBytes(StandardCharsets.UTF_8));
-            contact.setName(contactName);
             this.storage.executeInsert(this.contactBookTable, new StorageField[] {
                     new StorageField("account_id", accountId),
                     new StorageField("contact_id", contact.getExternalId()),
                     new StorageField("contact_name", contactName),
-                    new StorageField("timestamp", System.currentTimeMillis()),
+                    new StorageField("timestamp", now),
                     new StorageField("product", product.name),
                     new StorageField("data", contact.toJSON().toString())
             });
-            contact.setName(originalName);
         }
         else {
-            // 更新
-            long sn = result.get(0)[0].getLong();
-            long timestamp = result.get(0)[1].getLong();
-            if (!forceUpdate) {
-                if (System.currentTimeMillis() - timestamp < 2L * 24 * 60 * 60 * 1000) {
-                    // 更新间隔小于2天
-                    return;
-                }
-            }
-
-            String originalName = contact.getName();
-            String contactName = Base64.encodeBytes(originalName.getBytes(StandardCharsets.UTF_8));
-            contact.setName(contactName);
-
             this.storage.executeUpdate(this.contactBookTable, new StorageField[] {
                     new StorageField("contact_name", contactName),
-                    new StorageField("timestamp", System.currentTimeMillis()),
+                    new StorageField("timestamp", now),
                     new StorageField("data", contact.toJSON().toString())
             }, new Conditional[] {
-                    Conditional.createEqualTo("sn", sn)
+                    Conditional.createEqualTo("sn", result.get(0)[0].getLong())
             });
-
-            contact.setName(originalName);
         }
+
+        contact.setName(originalName);
     }
 
     /**
@@ -726,59 +826,74 @@ public class ChannelManager {
         return group;
     }
 
-    public synchronized void updateGroup(Contact account, Group group, Product product) {
+    public void updateGroup(Contact account, Group group, Product product) {
         String accountId = account.getExternalId();
-        List<StorageField[]> result = this.storage.executeQuery(this.groupTable, new StorageField[] {
-                new StorageField("sn", LiteralBase.LONG)
-        }, new Conditional[] {
-                Conditional.createEqualTo("account_id", accountId),
-                Conditional.createAnd(),
-                Conditional.createEqualTo("group_name", group.getName())
-        });
-
-        long groupSN = 0;
 
-        if (result.isEmpty()) {
-            groupSN = group.getId();
-            // 插入
-            this.storage.executeInsert(this.groupTable, new StorageField[] {
-                    new StorageField("sn", groupSN),
-                    new StorageField("account_id", accountId),
-                    new StorageField("group_name", group.getName()),
-                    new StorageField("timestamp", System.currentTimeMillis()),
-                    new StorageField("product", product.name),
-                    new StorageField("data", group.toCompactJSON().toString())
-            });
-        }
-        else {
-            groupSN = result.get(0)[0].getLong();
-            // 更新
-            this.storage.executeUpdate(this.groupTable, new StorageField[] {
-                    new StorageField("timestamp", System.currentTimeMillis()),
-                    new StorageField("data", group.toCompactJSON().toString())
+        synchronized (this.getAccountLock(accountId)) {
+            // 群组记录的序号即群组 ID，按账号和群组名查找已存在的记录
+            List<StorageField[]> result = this.storage.executeQuery(this.groupTable, new StorageField[] {
+                    new StorageField("sn", LiteralBase.LONG)
             }, new Conditional[] {
-                    Conditional.createEqualTo("sn", groupSN)
+                    Conditional.createEqualTo("account_id", accountId),
+                    Conditional.createAnd(),
+                    Conditional.createEqualTo("group_name", group.getName())
             });
 
+            long groupSN = 0;
+
+            if (result.isEmpty()) {
+                groupSN = group.getId();
+                // 插入
+                this.storage.executeInsert(this.groupTable, new StorageField[] {
+                        new StorageField("sn", groupSN),
+                        new StorageField("account_id", accountId),
+                        new StorageField("group_name", group.getName()),
+                        new StorageField("timestamp", System.currentTimeMillis()),
+                        new StorageField("product", product.name),
+                        new StorageField("data", group.toCompactJSON().toString())
+                });
+            }
+            else {
+                groupSN = result.get(0)[0].getLong();
+                // 更新
+                this.storage.executeUpdate(this.groupTable, new StorageField[] {
+                        new StorageField("timestamp", System.currentTimeMillis()),
+                        new StorageField("data", group.toCompactJSON().toString())
+                }, new Conditional[] {
+                        Conditional.createEqualTo("sn", groupSN)
+                });
+            }
+
             List<Contact> contacts = group.getMemberList();
-            if (null != contacts) {
+            if (null == contacts) {
+                return;
+            }
+
+            if (!result.isEmpty()) {
                 // 删除所有成员数据
                 this.storage.executeDelete(this.groupMemberTable, new Conditional[] {
                         Conditional.createEqualTo("group_sn", groupSN)
                 });
             }
-        }
 
-        List<Contact> contacts = group.getMemberList();
-        if (null != contacts) {
+            List<StorageField[]> memberRows = new ArrayList<>();
             for (Contact contact : contacts) {
                 String cid = contact.getExternalId();
-                this.storage.executeInsert(this.groupMemberTable, new StorageField[] {
+                memberRows.add(new StorageField[] {
                         new StorageField("group_sn", groupSN),
                         new StorageField("account_id", (null != cid) ? cid : ""),
                         new StorageField("account_name", contact.getName()),
                         new StorageField("data", contact.toJSON().toString())
                 });
+
+                if (memberRows.size() == BATCH_SIZE) {
+                    this.storage.execute(SQLUtils.spellInsert(this.groupMemberTable, memberRows));
+                    memberRows.clear();
+                }
+            }
+
+            if (!memberRows.isEmpty()) {
+                this.storage.execute(SQLUtils.spellInsert(this.groupMemberTable, memberRows));
             }
         }
     }
@@ -1120,5 +1235,87 @@ public class ChannelManager {
                 Logger.i(this.getClass(), "Created table '" + this.groupMessageTable + "' successfully");
             }
         }
+
+        // 插入或更新依赖的唯一索引
+        this.checkUniqueIndex(this.accountTable, "uk_account",
+                new String[] { "account_id", "product" }, new int[] { 128, 32 });
+        this.checkUniqueIndex(this.contactBookTable, "uk_contact_book",
+                new String[] { "account_id", "contact_id", "product" }, new int[] { 128, 128, 32 });
+    }
+
+    /**
+     * 检查唯一索引，索引不存在且没有重复数据时创建索引。
+     * 存在重复数据时不创建索引，需要使用 {@code deploy/config/sql/hub_unique_index.sql} 脚本迁移数据。
+     * 没有唯一索引的数据表使用先查询再写入的方式更新数据。
+     *
+     * @param table
+     * @param index
+     * @param columns
+     * @param prefixLengths MySQL 的 TEXT 列需要指定索引前缀长度。
+     */
+    private void checkUniqueIndex(String table, String index, String[] columns, int[] prefixLengths) {
+        boolean sqlite = (this.storage.getType() == StorageType.SQLite);
+
+        if (this.existsIndex(table, index)) {
+            this.uniqueIndexTables.add(table);
+            return;
+        }
+
+        // 按照索引实际比较的内容分组，MySQL 只比较前缀
+        StringBuilder keys = new StringBuilder();
+        StringBuilder indexColumns = new StringBuilder();
+        for (int i = 0; i < columns.length; ++i) {
+            if (i > 0) {
+                keys.append(",");
+                indexColumns.append(",");
+            }
+            indexColumns.append("`").append(columns[i]).append("`");
+            if (sqlite) {
+                keys.append("`").append(columns[i]).append("`");
+            }
+            else {
+                keys.append("LEFT(`").append(columns[i]).append("`,").append(prefixLengths[i]).append(")");
+                indexColumns.append("(").append(prefixLengths[i]).append(")");
+            }
+        }
+
+        List<StorageField[]> duplicates = this.storage.executeQuery("SELECT " + keys.toString()
+                + ", COUNT(*) FROM `" + table + "` GROUP BY " + keys.toString() + " HAVING COUNT(*) > 1 LIMIT 10");
+        if (!duplicates.isEmpty()) {
+            for (StorageField[] row : duplicates) {
+                StringBuilder buf = new StringBuilder();
+                for (int i = 0; i < columns.length; ++i) {
+                    buf.append(columns[i]).append("=").append(row[i].getString()).append(" ");
+                }
+                buf.append("count=").append(row[columns.length].getString());
+                Logger.w(this.getClass(), "#checkUniqueIndex - Duplicate rows in '" + table + "': " + buf.toString());
+            }
+            Logger.w(this.getClass(), "#checkUniqueIndex - Skip creating unique index '" + index + "' on '"
+                    + table + "', run the migration script 'hub_unique_index.sql' first");
+            return;
+        }
+
+        this.storage.execute("CREATE UNIQUE INDEX `" + index + "` ON `" + table + "` ("
+                + indexColumns.toString() + ")");
+        if (this.existsIndex(table, index)) {
+            this.uniqueIndexTables.add(table);
+            Logger.i(this.getClass(), "Created unique index '" + index + "' on '" + table + "'");
+        }
+        else {
+            Logger.w(this.getClass(), "#checkUniqueIndex - Create unique index '" + index + "' on '"
+                    + table + "' failed");
+        }
+    }
+
+    private boolean existsIndex(String table, String index) {
+        List<StorageField[]> result = (this.storage.getType() == StorageType.SQLite) ?
+                this.storage.executeQuery("SELECT `name` FROM `sqlite_master` WHERE `type`='index' AND `name`='"
+                        + index + "'") :
+                this.storage.executeQuery("SHOW INDEX FROM `" + table + "` WHERE `Key_name`='" + index + "'");
+        return !result.isEmpty();
+    }
+
+    private Object getAccountLock(String accountId) {
+        return this.accountLocks[(accountId.hashCode() & 0x7fffffff) % this.accountLocks.length];
     }
 }
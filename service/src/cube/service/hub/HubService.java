@@ -22,6 +22,7 @@ import cube.hub.*;
 import cube.hub.data.ChannelCode;
 import cube.hub.event.*;
 import cube.hub.signal.*;
+import cube.plugin.HookMode;
 import cube.plugin.HookResult;
 import cube.plugin.Plugin;
 import cube.plugin.PluginContext;
@@ -480,6 +481,7 @@ public class HubService extends AbstractModule {
             }
         }
 
+        // 仅将消息放入队列，不需要阻塞消息推送
         pluginSystem.register("PostPush", new Plugin() {
             @Override
             public void setup() {
@@ -495,7 +497,7 @@ public class HubService extends AbstractModule {
                 onMessagingPush(context);
                 return null;
             }
-        });
+        }, HookMode.Async);
     }
 
     private void onMessagingPush(PluginContext pluginContext) {
@@ -354,6 +354,13 @@ public class WeChatHub {
      * @param contactDataEvent
      */
     public void updateContactBook(ContactDataEvent contactDataEvent) {
+        if (null != contactDataEvent.getContacts()) {
+            // 批量同步
+            this.service.getChannelManager().updateContactBook(contactDataEvent.getAccount().getExternalId(),
+                    contactDataEvent.getProduct(), contactDataEvent.getContacts());
+            return;
+        }
+
         this.service.getChannelManager().updateContactBook(contactDataEvent.getAccount().getExternalId(),
                 contactDataEvent.getProduct(), contactDataEvent.getContact(), false);
     }
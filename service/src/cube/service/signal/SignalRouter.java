@@ -0,0 +1,190 @@
+/*
+ * This source file is part of Cube.
+ *
+ * Copyright (c) 2023-2026 Ambrose Xu.
+ */
+
+package cube.service.signal;
+
+import cell.adapter.CelletAdapter;
+import cell.util.log.Logger;
+import cube.common.ModuleEvent;
+import cube.common.UniqueKey;
+import cube.common.entity.Contact;
+import cube.common.entity.Signal;
+import cube.service.contact.PresenceDirectory;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按联系人在线目录路由信号。
+ * 本节点的目标直接投送；其他节点的目标按节点分组，每个节点只发布一次；
+ * 目录里没有记录的目标使用多主题发布，由适配器按订阅节点合并。
+ */
+public class SignalRouter {
+
+    private final CelletAdapter adapter;
+
+    private final PresenceDirectory directory;
+
+    private final Deliverer deliverer;
+
+    private final String nodeTopic;
+
+    private final AtomicLong localDeliveries = new AtomicLong(0);
+
+    private final AtomicLong nodePublishes = new AtomicLong(0);
+
+    private final AtomicLong fallbackPublishes = new AtomicLong(0);
+
+    public SignalRouter(CelletAdapter adapter, PresenceDirectory directory, Deliverer deliverer) {
+        this.adapter = adapter;
+        this.directory = directory;
+        this.deliverer = deliverer;
+        this.nodeTopic = PresenceDirectory.makeNodeTopic(directory.getNodeName());
+    }
+
+    public void start() {
+        this.adapter.subscribe(this.nodeTopic);
+    }
+
+    public void stop() {
+        this.adapter.unsubscribe(this.nodeTopic);
+    }
+
+    public long getLocalDeliveries() {
+        return this.localDeliveries.get();
+    }
+
+    public long getNodePublishes() {
+        return this.nodePublishes.get();
+    }
+
+    public long getFallbackPublishes() {
+        return this.fallbackPublishes.get();
+    }
+
+    /**
+     * 路由信号到目标联系人。
+     *
+     * @param eventName 信号事件名。
+     * @param signal 信号。
+     * @param destination 目标联系人列表。
+     */
+    public void route(String eventName, Signal signal, List<Contact> destination) {
+        List<Contact> local = new ArrayList<>();
+        Map<String, List<Contact>> remote = new HashMap<>();
+        List<Contact> unknown = new ArrayList<>();
+
+        for (Contact contact : destination) {
+            String key = contact.getUniqueKey();
+            List<String> nodes = this.directory.lookup(key);
+            if (nodes.isEmpty()) {
+                unknown.add(contact);
+                continue;
+            }
+
+            for (String node : nodes) {
+                if (node.equals(this.directory.getNodeName())) {
+                    local.add(contact);
+                }
+                else {
+                    remote.computeIfAbsent(node, k -> new ArrayList<>()).add(contact);
+                }
+            }
+        }
+
+        for (Map.Entry<String, List<Contact>> e : remote.entrySet()) {
+            JSONArray list = new JSONArray();
+            for (Contact contact : e.getValue()) {
+                list.put(contact.toCompactJSON());
+            }
+
+            JSONObject data = new JSONObject();
+            data.put("signal", signal.toJSON());
+            data.put("list", list);
+            ModuleEvent event = new ModuleEvent(SignalService.NAME, eventName, data);
+
+            if (this.adapter.publish(PresenceDirectory.makeNodeTopic(e.getKey()), event.toJSON())) {
+                this.nodePublishes.incrementAndGet();
+            }
+            else {
+                // 节点没有订阅者，节点已失效
+                Logger.w(this.getClass(), "#route - Node is unavailable: " + e.getKey());
+                this.directory.removeNode(e.getKey());
+                unknown.addAll(e.getValue());
+            }
+        }
+
+        if (!unknown.isEmpty()) {
+            // 由订阅了联系人主题的节点接收
+            List<String> topics = new ArrayList<>(unknown.size());
+            for (Contact contact : unknown) {
+                topics.add(contact.getUniqueKey());
+            }
+            ModuleEvent event = new ModuleEvent(SignalService.NAME, eventName, signal.toJSON());
+            this.adapter.publish(topics, event.toJSON());
+            this.fallbackPublishes.incrementAndGet();
+        }
+
+        for (Contact contact : local) {
+            this.localDeliveries.incrementAndGet();
+            this.deliverer.deliver(signal, contact);
+        }
+    }
+
+    /**
+     * 处理节点主题上的信号。
+     *
+     * @param topic
+     * @param event
+     * @return 如果是本节点的信号返回 {@code true} 。
+     */
+    public boolean onDelivered(String topic, ModuleEvent event) {
+        if (!this.nodeTopic.equals(topic)) {
+            return false;
+        }
+
+        JSONObject data = event.getData();
+        Signal signal = new Signal(data.getJSONObject("signal"));
+        JSONArray list = data.getJSONArray("list");
+        for (int i = 0; i < list.length(); ++i) {
+            Contact contact = new Contact(list.getJSONObject(i));
+            this.deliverer.deliver(signal, contact);
+        }
+        return true;
+    }
+
+    /**
+     * 处理多主题发布的信号，主题为目标联系人的键。
+     *
+     * @param topics
+     * @param event
+     */
+    public void onDelivered(List<String> topics, ModuleEvent event) {
+        Signal signal = new Signal(event.getData());
+        for (String topic : topics) {
+            Object[] key = UniqueKey.extract(topic);
+            if (null != key) {
+                this.deliverer.deliver(signal, new Contact((Long) key[0], (String) key[1]));
+            }
+        }
+    }
+
+    /**
+     * 本节点投送器。
+     */
+    public interface Deliverer {
+
+        /**
+         * 向本节点的联系人设备投送信号。
+         *
+         * @param signal
+         * @param destination
+         */
+        void deliver(Signal signal, Contact destination);
+    }
+}
@@ -30,6 +30,7 @@ import cube.service.contact.ContactManager;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -49,6 +50,11 @@ public class SignalService extends AbstractModule implements CelletAdapterListen
      */
     private CelletAdapter contactsAdapter;
 
+    /**
+     * 信号路由。
+     */
+    private SignalRouter router;
+
     public SignalService(SignalCellet cellet) {
         super();
         this.cellet = cellet;
@@ -59,11 +65,24 @@ public class SignalService extends AbstractModule implements CelletAdapterListen
         this.contactsAdapter = CelletAdapterFactory.getInstance().getAdapter("Contacts");
         this.contactsAdapter.addListener(this);
 
+        this.router = new SignalRouter(this.contactsAdapter,
+                ContactManager.getInstance().getPresenceDirectory(), new SignalRouter.Deliverer() {
+            @Override
+            public void deliver(Signal signal, Contact destination) {
+                deliverLocal(signal, destination);
+            }
+        });
+        this.router.start();
+
         this.started.set(true);
     }
 
     @Override
     public void stop() {
+        if (null != this.router) {
+            this.router.stop();
+        }
+
         this.started.set(false);
     }
 
@@ -83,18 +102,37 @@ public class SignalService extends AbstractModule implements CelletAdapterListen
             return false;
         }
 
-        ModuleEvent event = new ModuleEvent(SignalService.NAME, SignalAction.Direct.name, signal.toJSON());
-        this.contactsAdapter.publish(contact.getUniqueKey(), event.toJSON());
+        List<Contact> destination = new ArrayList<>(1);
+        destination.add(contact);
+        this.router.route(SignalAction.Direct.name, signal, destination);
 
         return true;
     }
 
     public void emitSignalBroadcast(Signal signal, List<Contact> destination) {
-        for (Contact contact : destination) {
-            // 设置目标
-            signal.setDestContact(contact);
-            ModuleEvent event = new ModuleEvent(SignalService.NAME, SignalAction.Broadcast.name, signal.toJSON());
-            this.contactsAdapter.publish(contact.getUniqueKey(), event.toJSON());
+        // 按目标所在节点分组发布
+        this.router.route(SignalAction.Broadcast.name, signal, destination);
+    }
+
+    /**
+     * 向本节点在线的联系人设备投送信号。
+     *
+     * @param signal
+     * @param destination
+     */
+    private void deliverLocal(Signal signal, Contact destination) {
+        Contact contact = ContactManager.getInstance().getOnlineContact(destination.getDomain().getName(),
+                destination.getId());
+        if (null == contact) {
+            return;
+        }
+
+        // 设置目标
+        signal.setDestContact(contact);
+        for (Device device : contact.getDeviceList()) {
+            TalkContext talkContext = device.getTalkContext();
+            // 发送数据到客户端
+            this.emit(talkContext, contact, signal);
         }
     }
 
@@ -128,18 +166,14 @@ public class SignalService extends AbstractModule implements CelletAdapterListen
 
             if (SignalAction.Direct.name.equals(event.getEventName()) ||
                     SignalAction.Broadcast.name.equals(event.getEventName())) {
+                if (this.router.onDelivered(topic, event)) {
+                    // 发送到本节点的信号
+                    return;
+                }
+
                 // 直接向目标投送
                 Signal signal = new Signal(event.getData());
-                Contact dest = signal.getDestContact();
-                Contact contact = ContactManager.getInstance().getOnlineContact(dest.getDomain().getName(), dest.getId());
-                if (null != contact) {
-                    // 联系人在线
-                    for (Device device : contact.getDeviceList()) {
-                        TalkContext talkContext = device.getTalkContext();
-                        // 发送数据到客户端
-                        this.emit(talkContext, contact, signal);
-                    }
-                }
+                this.deliverLocal(signal, signal.getDestContact());
             }
         }
     }
@@ -156,7 +190,14 @@ public class SignalService extends AbstractModule implements CelletAdapterListen
 
     @Override
     public void onDelivered(List<String> list, Endpoint endpoint, JSONObject jsonObject) {
-        // Nothing
+        if (NAME.equals(ModuleEvent.extractModuleName(jsonObject))) {
+            ModuleEvent event = new ModuleEvent(jsonObject);
+            if (SignalAction.Direct.name.equals(event.getEventName()) ||
+                    SignalAction.Broadcast.name.equals(event.getEventName())) {
+                // 多主题发布，主题为目标联系人
+                this.router.onDelivered(list, event);
+            }
+        }
     }
 
     @Override
@@ -0,0 +1,195 @@
+/*
+ * This source file is part of Cube.
+ *
+ * Copyright (c) 2023-2026 Ambrose Xu.
+ */
+
+package cube.service.test;
+
+import cube.aigc.atom.Atom;
+import cube.service.aigc.resource.AtomIndex;
+import cube.util.Assert;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 原子数据索引测试。一百万条原子数据，与逐条扫描并用列表去重的方式比较查询耗时。
+ */
+public class AtomIndexBenchmark {
+
+    private final static int NUM_ATOMS = 1000000;
+
+    private final static int NUM_LABELS = 20000;
+
+    private final static int NUM_QUERIES = 200;
+
+    private List<Atom> atoms;
+
+    private AtomIndex index;
+
+    public AtomIndexBenchmark() {
+    }
+
+    public void setup() {
+        Random random = new Random(48);
+
+        // 每个标签是一个数据序列
+        String[] labels = new String[NUM_LABELS];
+        for (int i = 0; i < NUM_LABELS; ++i) {
+            labels[i] = "指标" + random.nextInt(500) + ",地区" + random.nextInt(40) + ",类目" + random.nextInt(50);
+        }
+
+        this.atoms = new ArrayList<>(NUM_ATOMS);
+        for (int i = 0; i < NUM_ATOMS; ++i) {
+            String label = labels[random.nextInt(NUM_LABELS)];
+            Atom atom = new Atom(i + 1, label, (2019 + random.nextInt(7)) + "年",
+                    (1 + random.nextInt(12)) + "月", (1 + random.nextInt(28)) + "日", random.nextInt(10000));
+            this.atoms.add(atom);
+
+            if (i % 10 == 9) {
+                // 重复的数据
+                ++i;
+                this.atoms.add(new Atom(i + 1, atom.label, atom.year, atom.month, atom.date, atom.value));
+            }
+        }
+
+        long start = System.currentTimeMillis();
+        this.index = new AtomIndex(NUM_ATOMS);
+        this.index.addAll(this.atoms);
+        System.out.println("Build index: " + this.index.size() + " atoms, " + this.index.numLabels()
+                + " labels - " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    /**
+     * 逐条扫描，与索引相同的匹配规则，使用列表去重。
+     */
+    private List<Atom> scan(List<String> words, int year, int month, int date) {
+        List<Atom> candidates = new ArrayList<>();
+        for (Atom atom : this.atoms) {
+            boolean hit = false;
+            for (int i = 0; i < AtomIndex.MAX_WORDS && i < words.size(); ++i) {
+                if (atom.label.toLowerCase().contains(words.get(i).toLowerCase())) {
+                    hit = true;
+                    break;
+                }
+            }
+            if (!hit) {
+                continue;
+            }
+            if ((year > 0 && atom.getYear() != year) || (month > 0 && atom.getMonth() != month)
+                    || (date > 0 && atom.getDate() != date)) {
+                continue;
+            }
+            candidates.add(atom);
+        }
+
+        List<Atom> result = new ArrayList<>();
+        for (Atom atom : candidates) {
+            if (!result.contains(atom)) {
+                result.add(atom);
+            }
+        }
+        return result;
+    }
+
+    private boolean same(List<Atom> a, List<Atom> b) {
+        if (a.size() != b.size()) {
+            return false;
+        }
+        for (int i = 0; i < a.size(); ++i) {
+            if (a.get(i).sn != b.get(i).sn) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void testQuery() {
+        Random random = new Random(1);
+        long indexCost = 0;
+        long scanCost = 0;
+        int mismatches = 0;
+        long matched = 0;
+
+        for (int q = 0; q < NUM_QUERIES; ++q) {
+            List<String> words = new ArrayList<>();
+            words.add("指标" + random.nextInt(500));
+            if (random.nextBoolean()) {
+                words.add("地区" + random.nextInt(40));
+            }
+            int year = 2019 + random.nextInt(7);
+            int month = 1 + random.nextInt(12);
+            int date = random.nextInt(4) == 0 ? 1 + random.nextInt(28) : 0;
+
+            long start = System.nanoTime();
+            List<Atom> result = this.index.match(words, year, month, date);
+            indexCost += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            List<Atom> expected = this.scan(words, year, month, date);
+            scanCost += System.nanoTime() - start;
+
+            if (!this.same(result, expected)) {
+                ++mismatches;
+            }
+            matched += result.size();
+        }
+
+        System.out.println("Queries: " + NUM_QUERIES + ", avg result: " + (matched / NUM_QUERIES));
+        System.out.println("  index : avg " + (indexCost / NUM_QUERIES / 1000) + " us/query");
+        System.out.println("  scan  : avg " + (scanCost / NUM_QUERIES / 1000) + " us/query");
+
+        Assert.equals("testQuery (same result)", 0, mismatches);
+        Assert.equals("testQuery (faster)", true, indexCost * 10 < scanCost);
+    }
+
+    public void testExists() {
+        Atom atom = this.atoms.get(12345);
+        List<String> words = Arrays.asList(atom.label.split(",")[0]);
+        Assert.equals("testExists (hit)", true, this.index.exists(words, atom.getYear(), atom.getMonth()));
+        Assert.equals("testExists (no year)", false, this.index.exists(words, 2000, 0));
+        Assert.equals("testExists (no label)", false,
+                this.index.exists(Arrays.asList("不存在的标签"), atom.getYear(), 0));
+
+        // 月份精确匹配，1月不匹配11月和12月
+        List<Atom> list = this.index.match(words, atom.getYear(), 1, 0);
+        boolean exact = true;
+        for (Atom a : list) {
+            if (a.getMonth() != 1) {
+                exact = false;
+            }
+        }
+        Assert.equals("testExists (exact month)", true, exact);
+    }
+
+    public void testSync() {
+        int size = this.index.size();
+        long sn = this.index.getMaxSn() + 1;
+        Atom atom = new Atom(sn, "新指标,新地区,新类目", "2026年", "3月", "15日", 100);
+        this.index.add(atom);
+
+        List<Atom> list = this.index.match(Arrays.asList("新指标"), 2026, 3, 0);
+        Assert.equals("testSync (added)", 1, list.size());
+        Assert.equals("testSync (max sn)", true, this.index.getMaxSn() == sn);
+        Assert.equals("testSync (restored text)", true, "15日".equals(list.get(0).date));
+
+        // 重复添加被忽略
+        this.index.add(atom);
+        Assert.equals("testSync (duplicate sn)", size + 1, this.index.size());
+
+        Assert.equals("testSync (remove)", true, this.index.remove(sn));
+        Assert.equals("testSync (removed)", 0, this.index.match(Arrays.asList("新指标"), 2026, 3, 0).size());
+        Assert.equals("testSync (size)", size, this.index.size());
+    }
+
+    public static void main(String[] args) {
+        AtomIndexBenchmark benchmark = new AtomIndexBenchmark();
+        benchmark.setup();
+        benchmark.testQuery();
+        benchmark.testExists();
+        benchmark.testSync();
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ * This source file is part of Cube.
+ *
+ * Copyright (c) 2023-2026 Ambrose Xu.
+ */
+
+package cube.service.test;
+
+import cube.auth.AuthToken;
+import cube.service.auth.AuthTokenCache;
+import cube.util.Assert;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 令牌缓存测试。
+ */
+public class AuthTokenCacheTest {
+
+    private final static String DOMAIN = "shixincube.com";
+
+    private final static String APP_KEY = "shixin-cubeteam-opensource-appkey";
+
+    /**
+     * 模拟存储，记录读取次数。
+     */
+    private ConcurrentHashMap<String, AuthToken> storage = new ConcurrentHashMap<>();
+
+    private AtomicLong storageReads = new AtomicLong(0);
+
+    private Set<String> loadedCodes = ConcurrentHashMap.newKeySet();
+
+    private AuthTokenCache.Loader loader = new AuthTokenCache.Loader() {
+        @Override
+        public AuthToken load(String code) {
+            storageReads.incrementAndGet();
+            loadedCodes.add(code);
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                // Nothing
+            }
+            return storage.get(code);
+        }
+    };
+
+    public AuthTokenCacheTest() {
+    }
+
+    private AuthToken makeToken(String code, long expiry) {
+        long now = System.currentTimeMillis();
+        AuthToken token = new AuthToken(code, DOMAIN, APP_KEY, 10000L, now, expiry, false);
+        this.storage.put(code, token);
+        return token;
+    }
+
+    /**
+     * 过期与最大缓存时长。
+     */
+    public void testExpiry() throws Exception {
+        AuthTokenCache cache = new AuthTokenCache(100, 200, 100, 1000);
+        long now = System.currentTimeMillis();
+
+        this.makeToken("valid", now + 60 * 1000);
+        this.storageReads.set(0);
+        Assert.equals("testExpiry (load)", true, null != cache.get("valid", this.loader));
+        Assert.equals("testExpiry (hit)", true, null != cache.get("valid", this.loader));
+        Assert.equals("testExpiry (reads)", 1, (int) this.storageReads.get());
+
+        // 超过最大缓存时长后重新加载
+        Thread.sleep(250);
+        cache.get("valid", this.loader);
+        Assert.equals("testExpiry (max TTL)", 2, (int) this.storageReads.get());
+
+        // 已过期的令牌
+        this.makeToken("expired", now - 1000);
+        this.storageReads.set(0);
+        AuthToken token = cache.get("expired", this.loader);
+        Assert.equals("testExpiry (expired)", true, null != token && token.getExpiry() < System.currentTimeMillis());
+        cache.get("expired", this.loader);
+        Assert.equals("testExpiry (expired reads)", 1, (int) this.storageReads.get());
+
+        // 清理
+        cache.evictExpired(System.currentTimeMillis() + 1000);
+        Assert.equals("testExpiry (evict)", 0, cache.size());
+    }
+
+    /**
+     * 令牌失效。
+     */
+    public void testInvalidate() throws Exception {
+        AuthTokenCache cache = new AuthTokenCache(100, 60 * 1000, 60 * 1000, 1000);
+        long now = System.currentTimeMillis();
+
+        // 未命中被缓存
+        this.storageReads.set(0);
+        Assert.equals("testInvalidate (miss)", true, null == cache.get("late", this.loader));
+        this.makeToken("late", now + 60 * 1000);
+        Assert.equals("testInvalidate (negative)", true, null == cache.get("late", this.loader));
+        Assert.equals("testInvalidate (negative reads)", 1, (int) this.storageReads.get());
+
+        // 失效后重新读取
+        cache.invalidate("late");
+        Assert.equals("testInvalidate (reload)", true, null != cache.get("late", this.loader));
+
+        // 删除令牌
+        this.storage.remove("late");
+        Assert.equals("testInvalidate (cached)", true, null != cache.get("late", this.loader));
+        cache.invalidate("late");
+        Assert.equals("testInvalidate (deleted)", true, null == cache.get("late", this.loader));
+
+        // 写入令牌会清除未命中记录
+        AuthToken token = this.makeToken("late", now + 60 * 1000);
+        cache.put(token);
+        Assert.equals("testInvalidate (put)", true, null != cache.get("late", this.loader));
+    }
+
+    /**
+     * 多线程使用少量伪造的令牌码突发查询。
+     */
+    public void testBurst() throws Exception {
+        final AuthTokenCache cache = new AuthTokenCache(10000, 60 * 1000, 60 * 1000, 100000);
+        final int numCodes = 1000;
+        final int numLookups = 100000;
+        final int numThreads = 8;
+
+        this.storageReads.set(0);
+        final CountDownLatch latch = new CountDownLatch(numThreads);
+        long start = System.currentTimeMillis();
+        for (int t = 0; t < numThreads; ++t) {
+            final int offset = t;
+            (new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < numLookups / numThreads; ++i) {
+                        cache.get("forged-" + ((i + offset) % numCodes), loader);
+                    }
+                    latch.countDown();
+                }
+            }).start();
+        }
+        latch.await();
+
+        System.out.println("Burst: " + numLookups + " lookups, " + this.storageReads.get() + " storage reads, "
+                + (System.currentTimeMillis() - start) + " ms");
+        Assert.equals("testBurst (reads)", true, this.storageReads.get() <= numCodes);
+        Assert.equals("testBurst (loads)", true, cache.getLoadCount() <= numCodes);
+    }
+
+    /**
+     * 大量互不相同的无效令牌码。超过限制的加载被立即拒绝且不记录未命中，已签名的令牌不受限制。
+     */
+    public void testDistinctForged() throws Exception {
+        final int maxLoadsPerSecond = 500;
+        final AuthTokenCache cache = new AuthTokenCache(10000, 60 * 1000, 60 * 1000, maxLoadsPerSecond);
+        final int numLookups = 2000;
+        final int numThreads = 4;
+
+        long now = System.currentTimeMillis();
+        this.makeToken("real-signed", now + 60 * 1000);
+
+        this.storageReads.set(0);
+        this.loadedCodes.clear();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch latch = new CountDownLatch(numThreads);
+        long start = System.currentTimeMillis();
+        for (int t = 0; t < numThreads; ++t) {
+            final int offset = t;
+            (new Thread() {
+                @Override
+                public void run() {
+                    for (int i = offset; i < numLookups; i += numThreads) {
+                        cache.get("distinct-" + i, loader);
+                        if (cache.getRejectedCount() > 0) {
+                            started.countDown();
+                        }
+                    }
+                    latch.countDown();
+                }
+            }).start();
+        }
+
+        // 伪造令牌码洪泛期间查询已签名的令牌
+        started.await();
+        AuthToken signed = cache.get("real-signed", this.loader, false);
+
+        latch.await();
+        long elapsed = System.currentTimeMillis() - start;
+        long bound = (elapsed / 1000 + 2) * maxLoadsPerSecond;
+
+        System.out.println("Distinct: " + numLookups + " lookups, " + this.storageReads.get() + " storage reads, "
+                + cache.getRejectedCount() + " rejected, " + elapsed + " ms");
+        Assert.equals("testDistinctForged (reads)", true, this.storageReads.get() <= bound);
+        Assert.equals("testDistinctForged (rejected)", true, cache.getRejectedCount() > 0);
+        Assert.equals("testDistinctForged (signed valid)", true, null != signed);
+
+        // 被拒绝的令牌码没有记录为未命中，下一个时间窗口内可以加载
+        String rejected = null;
+        for (int i = 0; i < numLookups; ++i) {
+            if (!this.loadedCodes.contains("distinct-" + i)) {
+                rejected = "distinct-" + i;
+                break;
+            }
+        }
+        Assert.equals("testDistinctForged (rejected code)", true, null != rejected);
+        this.makeToken(rejected, System.currentTimeMillis() + 60 * 1000);
+        Thread.sleep(1100);
+        Assert.equals("testDistinctForged (not cached)", true, null != cache.get(rejected, this.loader));
+    }
+
+    /**
+     * 超过容量时淘汰最久未访问的条目。
+     */
+    public void testEvictLeastRecentlyUsed() throws Exception {
+        AuthTokenCache cache = new AuthTokenCache(100, 60 * 1000, 60 * 1000, 100000);
+        long now = System.currentTimeMillis();
+
+        for (int i = 0; i < 100; ++i) {
+            cache.put(this.makeToken("lru-" + i, now + 60 * 1000));
+        }
+        Thread.sleep(5);
+        // 访问前 10 个条目
+        for (int i = 0; i < 10; ++i) {
+            cache.get("lru-" + i, this.loader);
+        }
+        Thread.sleep(5);
+        cache.put(this.makeToken("lru-100", now + 60 * 1000));
+
+        this.storageReads.set(0);
+        for (int i = 0; i < 10; ++i) {
+            cache.get("lru-" + i, this.loader);
+        }
+        cache.get("lru-100", this.loader);
+        Assert.equals("testEvictLeastRecentlyUsed (size)", true, cache.size() <= 90);
+        Assert.equals("testEvictLeastRecentlyUsed (kept)", 0, (int) this.storageReads.get());
+    }
+
+    public static void main(String[] args) {
+        AuthTokenCacheTest test = new AuthTokenCacheTest();
+        try {
+            test.testExpiry();
+            test.testInvalidate();
+            test.testBurst();
+            test.testDistinctForged();
+            test.testEvictLeastRecentlyUsed();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+}
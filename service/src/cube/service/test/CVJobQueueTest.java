@@ -0,0 +1,391 @@
+/*
+ * This source file is part of Cube.
+ *
+ * Copyright (c) 2023-2026 Ambrose Xu.
+ */
+
+package cube.service.test;
+
+import cell.core.talk.TalkContext;
+import cube.common.Packet;
+import cube.common.action.CVAction;
+import cube.common.entity.Contact;
+import cube.common.entity.FileLabel;
+import cube.common.state.CVStateCode;
+import cube.service.cv.CVEndpoint;
+import cube.service.cv.CVJobQueue;
+import cube.util.Assert;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * CV 任务队列测试，使用本地模拟终端。
+ */
+public class CVJobQueueTest {
+
+    private ExecutorService executor;
+
+    /**
+     * 模拟终端每次请求的固定耗时。
+     */
+    private long requestCost = 40;
+
+    /**
+     * 模拟终端每个文件的处理耗时。
+     */
+    private long fileCost = 5;
+
+    private final AtomicInteger transmits = new AtomicInteger(0);
+
+    private final Map<Long, AtomicInteger> concurrency = new ConcurrentHashMap<>();
+
+    private final Map<Long, AtomicInteger> maxConcurrency = new ConcurrentHashMap<>();
+
+    private volatile CountDownLatch gate;
+
+    public CVJobQueueTest() {
+    }
+
+    public void setup() {
+        this.executor = Executors.newCachedThreadPool();
+    }
+
+    public void teardown() {
+        this.executor.shutdown();
+    }
+
+    private CVJobQueue createQueue(int... slots) {
+        this.transmits.set(0);
+        this.concurrency.clear();
+        this.maxConcurrency.clear();
+
+        CVJobQueue queue = new CVJobQueue(this::transmit, this.executor);
+        for (int i = 0; i < slots.length; ++i) {
+            long id = 1000 + i;
+            this.concurrency.put(id, new AtomicInteger(0));
+            this.maxConcurrency.put(id, new AtomicInteger(0));
+            queue.addEndpoint(new CVEndpoint(new Contact(id, "test"), new MockTalkContext(), slots[i]));
+        }
+        queue.start();
+        return queue;
+    }
+
+    /**
+     * 模拟终端：按文件数量计算耗时，每个文件返回一个结果。
+     */
+    private Packet transmit(CVEndpoint endpoint, Packet request, long timeout) {
+        this.transmits.incrementAndGet();
+
+        AtomicInteger current = this.concurrency.get(endpoint.contact.getId());
+        int value = current.incrementAndGet();
+        AtomicInteger max = this.maxConcurrency.get(endpoint.contact.getId());
+        max.accumulateAndGet(value, Math::max);
+
+        try {
+            CountDownLatch latch = this.gate;
+            if (null != latch) {
+                latch.await(10, TimeUnit.SECONDS);
+            }
+
+            JSONArray list = request.data.getJSONArray("list");
+            Thread.sleep(this.requestCost + this.fileCost * list.length());
+
+            JSONArray result = new JSONArray();
+            for (int i = 0; i < list.length(); ++i) {
+                JSONObject item = new JSONObject();
+                item.put("fileCode", list.getJSONObject(i).getString("fileCode"));
+                item.put("objects", new JSONArray());
+                result.put(item);
+            }
+
+            JSONObject data = new JSONObject();
+            data.put("result", result);
+            data.put("elapsed", this.requestCost + this.fileCost * list.length());
+
+            JSONObject payload = new JSONObject();
+            payload.put("code", CVStateCode.Ok.code);
+            payload.put("data", data);
+            return new Packet(request.name, payload);
+        } catch (InterruptedException e) {
+            return null;
+        } finally {
+            current.decrementAndGet();
+        }
+    }
+
+    private static FileLabel makeFile(String fileCode, String md5) {
+        FileLabel fileLabel = new FileLabel("test", fileCode, 1L, fileCode + ".jpg", 1024,
+                System.currentTimeMillis(), System.currentTimeMillis(), 0);
+        fileLabel.setMD5Code(md5);
+        return fileLabel;
+    }
+
+    private static List<FileLabel> makeFiles(String fileCode, String md5) {
+        List<FileLabel> list = new ArrayList<>();
+        list.add(makeFile(fileCode, md5));
+        return list;
+    }
+
+    private static JSONObject makeParams() {
+        JSONObject params = new JSONObject();
+        params.put("visualize", false);
+        return params;
+    }
+
+    /**
+     * 终端并发数量不超过声明的任务槽数量。
+     */
+    public void testCapacity() throws InterruptedException {
+        CVJobQueue queue = this.createQueue(2, 4);
+        queue.setMaxBatchFiles(1);
+
+        int total = 60;
+        CountDownLatch latch = new CountDownLatch(total);
+        AtomicInteger success = new AtomicInteger(0);
+        for (int i = 0; i < total; ++i) {
+            queue.submit(CVAction.ObjectDetection.name, makeFiles("cap" + i, "md5-cap-" + i), makeParams(),
+                    CVJobQueue.PRIORITY_NORMAL, 60 * 1000, new Listener(latch, success));
+        }
+        latch.await(30, TimeUnit.SECONDS);
+        queue.stop();
+
+        Assert.equals("testCapacity (completed)", total, success.get());
+        Assert.equals("testCapacity (endpoint 1 slots)", true, this.maxConcurrency.get(1000L).get() <= 2);
+        Assert.equals("testCapacity (endpoint 2 slots)", true, this.maxConcurrency.get(1001L).get() <= 4);
+        Assert.equals("testCapacity (endpoint 2 used)", true, this.maxConcurrency.get(1001L).get() > 2);
+    }
+
+    /**
+     * 排队的同类型任务合并为一次请求。
+     */
+    public void testCoalesce() throws InterruptedException {
+        CVJobQueue queue = this.createQueue(1);
+        this.gate = new CountDownLatch(1);
+
+        int total = 21;
+        CountDownLatch latch = new CountDownLatch(total);
+        AtomicInteger success = new AtomicInteger(0);
+        for (int i = 0; i < total; ++i) {
+            queue.submit(CVAction.ObjectDetection.name, makeFiles("co" + i, "md5-co-" + i), makeParams(),
+                    CVJobQueue.PRIORITY_NORMAL, 60 * 1000, new Listener(latch, success));
+        }
+        this.gate.countDown();
+        this.gate = null;
+        latch.await(30, TimeUnit.SECONDS);
+        queue.stop();
+
+        // 第一个任务独立发送，其余 20 个任务按 10 个文件一批发送
+        Assert.equals("testCoalesce (completed)", total, success.get());
+        Assert.equals("testCoalesce (transmits)", 3, this.transmits.get());
+    }
+
+    /**
+     * 相同 MD5 的文件直接返回缓存结果。
+     */
+    public void testCache() throws InterruptedException {
+        CVJobQueue queue = this.createQueue(1);
+
+        CountDownLatch latch = new CountDownLatch(1);
+        queue.submit(CVAction.ObjectDetection.name, makeFiles("cache-a", "md5-cache"), makeParams(),
+                CVJobQueue.PRIORITY_NORMAL, 60 * 1000, new Listener(latch, new AtomicInteger()));
+        latch.await(10, TimeUnit.SECONDS);
+        Assert.equals("testCache (first transmit)", 1, this.transmits.get());
+
+        final CountDownLatch second = new CountDownLatch(1);
+        final List<String> fileCodes = new ArrayList<>();
+        long start = System.nanoTime();
+        queue.submit(CVAction.ObjectDetection.name, makeFiles("cache-b", "md5-cache"), makeParams(),
+                CVJobQueue.PRIORITY_NORMAL, 60 * 1000, new CVJobQueue.BatchListener() {
+            @Override
+            public void onCompleted(Map<String, JSONArray> results, long elapsed) {
+                fileCodes.add(results.get("cache-b").getJSONObject(0).getString("fileCode"));
+                second.countDown();
+            }
+
+            @Override
+            public void onFailed(CVStateCode stateCode) {
+                second.countDown();
+            }
+        });
+        second.await(10, TimeUnit.SECONDS);
+        long elapsed = (System.nanoTime() - start) / 1000;
+
+        Assert.equals("testCache (no transmit)", 1, this.transmits.get());
+        Assert.equals("testCache (file code)", true, fileCodes.size() == 1 && fileCodes.get(0).equals("cache-b"));
+
+        // 不同参数不命中缓存
+        CountDownLatch third = new CountDownLatch(1);
+        JSONObject params = new JSONObject();
+        params.put("visualize", true);
+        queue.submit(CVAction.ObjectDetection.name, makeFiles("cache-c", "md5-cache"), params,
+                CVJobQueue.PRIORITY_NORMAL, 60 * 1000, new Listener(third, new AtomicInteger()));
+        third.await(10, TimeUnit.SECONDS);
+        Assert.equals("testCache (other params)", 2, this.transmits.get());
+        queue.stop();
+
+        System.out.println("Cache hit answered in " + elapsed + " us");
+    }
+
+    /**
+     * 高优先级任务先执行，超过截止时间的排队任务失败。
+     */
+    public void testPriorityAndDeadline() throws InterruptedException {
+        CVJobQueue queue = this.createQueue(1);
+        queue.setMaxBatchFiles(1);
+        this.gate = new CountDownLatch(1);
+
+        final List<String> order = new ArrayList<>();
+        final CountDownLatch latch = new CountDownLatch(4);
+        final List<CVStateCode> failures = new ArrayList<>();
+
+        String[] names = new String[] { "blocker", "normal", "high", "expiring" };
+        int[] priorities = new int[] { CVJobQueue.PRIORITY_NORMAL, CVJobQueue.PRIORITY_NORMAL,
+                CVJobQueue.PRIORITY_HIGH, CVJobQueue.PRIORITY_LOW };
+        long[] timeouts = new long[] { 60 * 1000, 60 * 1000, 60 * 1000, 200 };
+        for (int i = 0; i < names.length; ++i) {
+            final String name = names[i];
+            queue.submit(CVAction.ObjectDetection.name, makeFiles(name, "md5-" + name), makeParams(),
+                    priorities[i], timeouts[i], new CVJobQueue.BatchListener() {
+                @Override
+                public void onCompleted(Map<String, JSONArray> results, long elapsed) {
+                    synchronized (order) {
+                        order.add(name);
+                    }
+                    latch.countDown();
+                }
+
+                @Override
+                public void onFailed(CVStateCode stateCode) {
+                    synchronized (failures) {
+                        failures.add(stateCode);
+                    }
+                    latch.countDown();
+                }
+            });
+            if (i == 0) {
+                // 保证阻塞任务先占用任务槽
+                Thread.sleep(50);
+            }
+        }
+
+        Thread.sleep(500);
+        this.gate.countDown();
+        this.gate = null;
+        latch.await(10, TimeUnit.SECONDS);
+        queue.stop();
+
+        Assert.equals("testPriorityAndDeadline (order)", true, order.toString().equals("[blocker, high, normal]"));
+        Assert.equals("testPriorityAndDeadline (expired)", 1, failures.size());
+        Assert.equals("testPriorityAndDeadline (busy)", true,
+                !failures.isEmpty() && failures.get(0) == CVStateCode.Busy);
+    }
+
+    /**
+     * 饱和负载下的吞吐量和排队时间。
+     */
+    public void benchmark() throws InterruptedException {
+        int total = 400;
+
+        for (int batch : new int[] { 1, 10 }) {
+            CVJobQueue queue = this.createQueue(2, 2, 2, 2);
+            queue.setMaxBatchFiles(batch);
+
+            CountDownLatch latch = new CountDownLatch(total);
+            AtomicInteger success = new AtomicInteger(0);
+            long start = System.currentTimeMillis();
+            for (int i = 0; i < total; ++i) {
+                // 四分之一的请求是重复提交的图片
+                int n = (i % 4 == 3) ? (i - 3) : i;
+                queue.submit(CVAction.ObjectDetection.name, makeFiles("bench" + i, "md5-bench-" + batch + "-" + n),
+                        makeParams(), CVJobQueue.PRIORITY_NORMAL, 60 * 1000, new Listener(latch, success));
+            }
+            latch.await(120, TimeUnit.SECONDS);
+            long elapsed = System.currentTimeMillis() - start;
+            queue.stop();
+
+            Assert.equals("benchmark (completed, batch " + batch + ")", total, success.get());
+
+            System.out.println("Saturation: " + total + " requests, 4 endpoints x 2 slots, max batch " + batch + ":");
+            System.out.println("  throughput   : " + (total * 1000L / Math.max(1, elapsed)) + " req/s ("
+                    + elapsed + " ms)");
+            System.out.println("  transmits    : " + this.transmits.get());
+            System.out.println("  cache hits   : " + queue.getCacheHits());
+            System.out.println("  queue wait   : avg " + Math.round(queue.getWaiting().getAverage())
+                    + " ms, p50 " + queue.getWaiting().getPercentile(0.5)
+                    + " ms, p99 " + queue.getWaiting().getPercentile(0.99) + " ms");
+        }
+    }
+
+    public static void main(String[] args) {
+        CVJobQueueTest test = new CVJobQueueTest();
+        test.setup();
+        try {
+            test.testCapacity();
+            test.testCoalesce();
+            test.testCache();
+            test.testPriorityAndDeadline();
+            test.benchmark();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        test.teardown();
+    }
+
+    private class Listener implements CVJobQueue.BatchListener {
+
+        private final CountDownLatch latch;
+
+        private final AtomicInteger success;
+
+        private Listener(CountDownLatch latch, AtomicInteger success) {
+            this.latch = latch;
+            this.success = success;
+        }
+
+        @Override
+        public void onCompleted(Map<String, JSONArray> results, long elapsed) {
+            this.success.incrementAndGet();
+            this.latch.countDown();
+        }
+
+        @Override
+        public void onFailed(CVStateCode stateCode) {
+            this.latch.countDown();
+        }
+    }
+
+    /**
+     * 模拟终端会话。
+     */
+    private class MockTalkContext extends TalkContext {
+
+        private MockTalkContext() {
+            super(null, null);
+        }
+
+        @Override
+        public boolean isValid() {
+            return true;
+        }
+
+        @Override
+        public String getSessionHost() {
+            return "mock";
+        }
+
+        @Override
+        public int getSessionPort() {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * This source file is part of Cube.
+ *
+ * Copyright (c) 2023-2026 Ambrose Xu.
+ */
+
+package cube.service.test;
+
+import cell.util.Base64;
+import cube.service.CipherEnvelope;
+import cube.util.Assert;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.spec.KeySpec;
+
+/**
+ * 密文封装测试与基准。
+ */
+public class CipherEnvelopeTest {
+
+    private final static String KEY = "Abcdefgh12345678";
+
+    private final static String PLAINTEXT = "{\"type\":\"text\",\"content\":\"Hello Cube 你好\"}";
+
+    /**
+     * 历史版本写入数据库的 AES/ECB 密文。
+     */
+    private final static String LEGACY_CIPHERTEXT = "qp/Ov2SkaWg+SvxPZGWLaO3Uv9w/xetl20O8Ww22ElZNLu+jMDSjhxCFk3A8mT7h";
+
+    private SecretKey secretKey;
+
+    public CipherEnvelopeTest() {
+        this.secretKey = new SecretKeySpec(KEY.getBytes(StandardCharsets.UTF_8), "AES");
+    }
+
+    /**
+     * 解密历史 ECB 密文。
+     */
+    public void testLegacy() throws Exception {
+        Assert.equals("testLegacy (version)", CipherEnvelope.VERSION_ECB, CipherEnvelope.version(LEGACY_CIPHERTEXT));
+        Assert.equals(PLAINTEXT, CipherEnvelope.open(this.secretKey, LEGACY_CIPHERTEXT));
+
+        // 旧实现生成的密文
+        String legacy = this.legacyEncrypt(PLAINTEXT);
+        Assert.equals(PLAINTEXT, CipherEnvelope.open(this.secretKey, legacy));
+
+        // ECB 格式的新数据与旧实现一致
+        Assert.equals(LEGACY_CIPHERTEXT, CipherEnvelope.seal(this.secretKey, CipherEnvelope.VERSION_ECB, PLAINTEXT));
+    }
+
+    /**
+     * GCM 格式往返及篡改校验。
+     */
+    public void testGCM() throws Exception {
+        String envelope = CipherEnvelope.seal(this.secretKey, CipherEnvelope.VERSION_GCM, PLAINTEXT);
+        Assert.equals("testGCM (version)", CipherEnvelope.VERSION_GCM, CipherEnvelope.version(envelope));
+        Assert.equals(PLAINTEXT, CipherEnvelope.open(this.secretKey, envelope));
+
+        // 相同明文每次加密的结果不同
+        String another = CipherEnvelope.seal(this.secretKey, CipherEnvelope.VERSION_GCM, PLAINTEXT);
+        Assert.equals("testGCM (iv)", false, envelope.equals(another));
+
+        // 篡改数据
+        byte[] data = Base64.decode(envelope.substring(3));
+        data[data.length - 1] ^= 0x01;
+        String tampered = "$1$" + Base64.encodeBytes(data);
+        boolean rejected = false;
+        try {
+            CipherEnvelope.open(this.secretKey, tampered);
+        } catch (GeneralSecurityException e) {
+            rejected = true;
+        }
+        Assert.equals("testGCM (tampered)", true, rejected);
+
+        // 错误的密钥
+        SecretKey wrongKey = new SecretKeySpec("87654321hgfedcbA".getBytes(StandardCharsets.UTF_8), "AES");
+        rejected = false;
+        try {
+            CipherEnvelope.open(wrongKey, envelope);
+        } catch (GeneralSecurityException e) {
+            rejected = true;
+        }
+        Assert.equals("testGCM (wrong key)", true, rejected);
+    }
+
+    /**
+     * 比较每条消息的加密耗时。
+     */
+    public void benchmark() throws Exception {
+        int loop = 200000;
+
+        // 预热
+        for (int i = 0; i < loop / 10; ++i) {
+            this.legacyEncrypt(PLAINTEXT);
+            CipherEnvelope.seal(this.secretKey, CipherEnvelope.VERSION_ECB, PLAINTEXT);
+            CipherEnvelope.seal(this.secretKey, CipherEnvelope.VERSION_GCM, PLAINTEXT);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < loop; ++i) {
+            this.legacyEncrypt(PLAINTEXT);
+        }
+        long legacy = (System.nanoTime() - start) / loop;
+
+        start = System.nanoTime();
+        for (int i = 0; i < loop; ++i) {
+            CipherEnvelope.seal(this.secretKey, CipherEnvelope.VERSION_ECB, PLAINTEXT);
+        }
+        long ecb = (System.nanoTime() - start) / loop;
+
+        start = System.nanoTime();
+        for (int i = 0; i < loop; ++i) {
+            CipherEnvelope.seal(this.secretKey, CipherEnvelope.VERSION_GCM, PLAINTEXT);
+        }
+        long gcm = (System.nanoTime() - start) / loop;
+
+        // CipherMachine#encrypt 每次调用都进行 PBKDF2 派生
+        int deriveLoop = 20;
+        byte[] plaintext = PLAINTEXT.getBytes(StandardCharsets.UTF_8);
+        start = System.nanoTime();
+        for (int i = 0; i < deriveLoop; ++i) {
+            SecretKey derived = this.deriveKey();
+            Cipher cipher = Cipher.getInstance(CipherEnvelope.ECB_TRANSFORMATION);
+            cipher.init(Cipher.ENCRYPT_MODE, derived);
+            cipher.doFinal(plaintext);
+        }
+        long derive = (System.nanoTime() - start) / deriveLoop;
+
+        SecretKey derived = this.deriveKey();
+        start = System.nanoTime();
+        for (int i = 0; i < loop; ++i) {
+            CipherEnvelope.encryptECB(derived, plaintext);
+        }
+        long cached = (System.nanoTime() - start) / loop;
+
+        System.out.println("Messaging payload (before, ECB, Cipher.getInstance) : " + legacy + " ns/message");
+        System.out.println("Messaging payload (after, ECB, thread cipher)       : " + ecb + " ns/message");
+        System.out.println("Messaging payload (after, GCM, thread cipher)       : " + gcm + " ns/message");
+        System.out.println("CipherMachine#encrypt (before, PBKDF2 per call)     : " + derive + " ns/message");
+        System.out.println("CipherMachine#encrypt (after, key ring)             : " + cached + " ns/message");
+    }
+
+    /**
+     * 原 MessagingStorage#encrypt 的实现。
+     */
+    private String legacyEncrypt(String plaintext) throws GeneralSecurityException {
+        SecretKey secretKey = new SecretKeySpec(KEY.getBytes(StandardCharsets.UTF_8), "AES");
+        Cipher cipher = Cipher.getInstance("AES/ECB/PKCS5Padding");
+        cipher.init(Cipher.ENCRYPT_MODE, secretKey);
+        return Base64.encodeBytes(cipher.doFinal(plaintext.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private SecretKey deriveKey() throws GeneralSecurityException {
+        byte[] salt = new byte[] {
+                'X', 'U', 's', 'h', 'i', 'x', 'i', 'n',
+                'c', 'u', 'b', 'e', '.', 'c', 'o', 'm'
+        };
+        KeySpec spec = new PBEKeySpec(KEY.toCharArray(), salt, 65536, 128);
+        SecretKeyFactory f = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA1");
+        return new SecretKeySpec(f.generateSecret(spec).getEncoded(), "AES");
+    }
+
+    public static void main(String[] args) {
+        CipherEnvelopeTest test = new CipherEnvelopeTest();
+        try {
+            test.testLegacy();
+            test.testGCM();
+            test.benchmark();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * This source file is part of Cube.
+ *
+ * Copyright (c) 2023-2026 Ambrose Xu.
+ */
+
+package cube.service.test;
+
+import cell.util.CachedQueueExecutor;
+import cell.util.Utils;
+import cube.auth.AuthConsts;
+import cube.common.entity.Contact;
+import cube.hub.Product;
+import cube.service.hub.ChannelManager;
+import cube.storage.StorageType;
+import cube.util.Assert;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Hub 通讯录同步测试。
+ */
+public class ContactBookSyncTest {
+
+    private boolean useSQLite = false;
+
+    private int numContacts = 5000;
+
+    private ExecutorService executor;
+
+    private ChannelManager channelManager;
+
+    public ContactBookSyncTest() {
+        this.executor = CachedQueueExecutor.newCachedQueueThreadPool(2);
+
+        JSONObject config = new JSONObject();
+        if (useSQLite) {
+            String dbfile = "storage/test-hub.db";
+            File file = new File(dbfile);
+            if (file.exists()) {
+                file.delete();
+            }
+
+            config.put("file", dbfile);
+            this.channelManager = new ChannelManager(StorageType.SQLite, config);
+        }
+        else {
+            config.put("host", "127.0.0.1");
+            config.put("port", 3306);
+            config.put("schema", "cube_3");
+            config.put("user", "cube");
+            config.put("password", "shixincube.com");
+            this.channelManager = new ChannelManager(StorageType.MySQL, config);
+        }
+    }
+
+    public void setup() {
+        this.channelManager.start(this.executor);
+    }
+
+    public void teardown() {
+        this.channelManager.stop();
+        this.executor.shutdown();
+    }
+
+    private List<Contact> makeContactBook(String accountId, int num) {
+        List<Contact> list = new ArrayList<>(num);
+        for (int i = 0; i < num; ++i) {
+            Contact contact = new Contact(Utils.generateSerialNumber(), AuthConsts.DEFAULT_DOMAIN,
+                    "联系人-" + accountId + "-" + i);
+            contact.setExternalId("wxid_" + accountId + "_" + i);
+            list.add(contact);
+        }
+        return list;
+    }
+
+    /**
+     * 批量同步与逐条写入对比。
+     */
+    public void testBulkSync() {
+        String accountId = "test_" + Utils.randomString(8);
+        List<Contact> book = this.makeContactBook(accountId, this.numContacts);
+
+        long start = System.currentTimeMillis();
+        this.channelManager.updateContactBook(accountId, Product.WeChat, book);
+        long bulk = System.currentTimeMillis() - start;
+        Assert.equals("testBulkSync (rows)", this.numContacts,
+                this.channelManager.countContactBook(accountId, Product.WeChat));
+
+        // 再次同步不会产生重复记录
+        book.get(0).setName("改名的联系人");
+        start = System.currentTimeMillis();
+        this.channelManager.updateContactBook(accountId, Product.WeChat, book);
+        long resync = System.currentTimeMillis() - start;
+        Assert.equals("testBulkSync (resync rows)", this.numContacts,
+                this.channelManager.countContactBook(accountId, Product.WeChat));
+        Assert.equals("改名的联系人", this.channelManager.queryPartnerFromBook(
+                new Contact(0L, AuthConsts.DEFAULT_DOMAIN, accountId), book.get(0).getExternalId(),
+                Product.WeChat).getName());
+
+        // 逐条写入
+        String singleAccountId = "test_" + Utils.randomString(8);
+        List<Contact> singleBook = this.makeContactBook(singleAccountId, this.numContacts);
+        start = System.currentTimeMillis();
+        for (Contact contact : singleBook) {
+            this.channelManager.updateContactBook(singleAccountId, Product.WeChat, contact, true);
+        }
+        long single = System.currentTimeMillis() - start;
+        Assert.equals("testBulkSync (single rows)", this.numContacts,
+                this.channelManager.countContactBook(singleAccountId, Product.WeChat));
+
+        System.out.println("Contact book " + this.numContacts + " entries:");
+        System.out.println("  bulk sync   : " + bulk + " ms");
+        System.out.println("  bulk resync : " + resync + " ms");
+        System.out.println("  per contact : " + single + " ms");
+    }
+
+    /**
+     * 非强制更新时不覆盖近期更新的记录。
+     */
+    public void testThrottledUpdate() {
+        String accountId = "test_" + Utils.randomString(8);
+        Contact contact = this.makeContactBook(accountId, 1).get(0);
+        this.channelManager.updateContactBook(accountId, Product.WeChat, contact, false);
+
+        String name = contact.getName();
+        contact.setName("新名字");
+        this.channelManager.updateContactBook(accountId, Product.WeChat, contact, false);
+
+        Contact actual = this.channelManager.queryPartnerFromBook(
+                new Contact(0L, AuthConsts.DEFAULT_DOMAIN, accountId), contact.getExternalId(), Product.WeChat);
+        Assert.equals(name, actual.getName());
+        Assert.equals("testThrottledUpdate (rows)", 1,
+                this.channelManager.countContactBook(accountId, Product.WeChat));
+    }
+
+    /**
+     * 多个账号并发同步。
+     */
+    public void testConcurrentAccounts() throws InterruptedException {
+        int numAccounts = 4;
+        final List<String> accounts = new ArrayList<>();
+        final CountDownLatch latch = new CountDownLatch(numAccounts);
+
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < numAccounts; ++i) {
+            final String accountId = "test_" + Utils.randomString(8);
+            accounts.add(accountId);
+            final List<Contact> book = this.makeContactBook(accountId, this.numContacts);
+            (new Thread() {
+                @Override
+                public void run() {
+                    channelManager.updateContactBook(accountId, Product.WeChat, book);
+                    latch.countDown();
+                }
+            }).start();
+        }
+        latch.await();
+        long elapsed = System.currentTimeMillis() - start;
+
+        for (String accountId : accounts) {
+            Assert.equals("testConcurrentAccounts (rows)", this.numContacts,
+                    this.channelManager.countContactBook(accountId, Product.WeChat));
+        }
+
+        System.out.println("  " + numAccounts + " accounts concurrently : " + elapsed + " ms");
+    }
+
+    public static void main(String[] args) {
+        ContactBookSyncTest test = new ContactBookSyncTest();
+        test.setup();
+        try {
+            test.testBulkSync();
+            test.testThrottledUpdate();
+            test.testConcurrentAccounts();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        test.teardown();
+    }
+}
@@ -0,0 +1,372 @@
+/*
+ * This source file is part of Cube.
+ *
+ * Copyright (c) 2023-2026 Ambrose Xu.
+ */
+
+package cube.service.test;
+
+import cell.adapter.CelletAdapter;
+import cell.adapter.CelletAdapterListener;
+import cell.core.net.Endpoint;
+import cell.core.talk.Primitive;
+import cube.common.ModuleEvent;
+import cube.common.action.SignalAction;
+import cube.common.entity.Contact;
+import cube.common.entity.Device;
+import cube.common.entity.Signal;
+import cube.service.contact.ContactManager;
+import cube.service.contact.PresenceDirectory;
+import cube.service.signal.SignalRouter;
+import cube.service.signal.SignalService;
+import cube.util.Assert;
+import org.json.JSONObject;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 多节点信号路由测试。
+ * 在进程内模拟多个服务节点，节点之间通过模拟的适配器总线通信，统计适配器消息数量。
+ */
+public class SignalRoutingTest {
+
+    private final static String DOMAIN = "shixincube.com";
+
+    private final int numNodes = 4;
+
+    private final int numMembers = 500;
+
+    private Bus bus;
+
+    private List<Node> nodes;
+
+    public SignalRoutingTest() {
+    }
+
+    public void setup() {
+        this.bus = new Bus();
+        this.nodes = new ArrayList<>();
+        for (int i = 0; i < this.numNodes; ++i) {
+            this.nodes.add(new Node("node-" + i, this.bus));
+        }
+
+        // 成员平均分布在各个节点上
+        for (int i = 0; i < this.numMembers; ++i) {
+            Contact contact = new Contact(10000L + i, DOMAIN);
+            this.nodes.get(i % this.numNodes).signIn(contact, new Device("Web", "Chrome"));
+        }
+    }
+
+    private List<Contact> makeDestination() {
+        List<Contact> list = new ArrayList<>();
+        for (int i = 0; i < this.numMembers; ++i) {
+            list.add(new Contact(10000L + i, DOMAIN));
+        }
+        // 一个离线成员
+        list.add(new Contact(99999L, DOMAIN));
+        return list;
+    }
+
+    private static Signal makeSignal() {
+        JSONObject json = new JSONObject();
+        json.put("id", 1L);
+        json.put("domain", DOMAIN);
+        JSONObject payload = new JSONObject();
+        payload.put("type", "test");
+        json.put("payload", payload);
+        return new Signal(json);
+    }
+
+    private int totalDeliveries() {
+        int total = 0;
+        for (Node node : this.nodes) {
+            total += node.deliveries.get();
+        }
+        return total;
+    }
+
+    private void resetDeliveries() {
+        for (Node node : this.nodes) {
+            node.deliveries.set(0);
+        }
+        this.bus.messages.set(0);
+    }
+
+    /**
+     * 在线目录在所有节点上同步。
+     */
+    public void testPresence() {
+        for (Node node : this.nodes) {
+            Assert.equals("testPresence (size " + node.name + ")", this.numMembers, node.directory.size());
+        }
+
+        String key = new Contact(10001L, DOMAIN).getUniqueKey();
+        Assert.equals("testPresence (lookup)", true,
+                this.nodes.get(0).directory.lookup(key).equals(Collections.singletonList("node-1")));
+
+        // 第二个设备登录其他节点，退出后只剩原节点
+        this.nodes.get(2).signIn(new Contact(10001L, DOMAIN), new Device("Mobile", "Android"));
+        Assert.equals("testPresence (two nodes)", 2, this.nodes.get(0).directory.lookup(key).size());
+        this.nodes.get(2).signOut(new Contact(10001L, DOMAIN), new Device("Mobile", "Android"));
+        Assert.equals("testPresence (one node)", 1, this.nodes.get(0).directory.lookup(key).size());
+    }
+
+    /**
+     * 比较逐个发布和按节点分组发布的适配器消息数量。
+     */
+    public void testBroadcast() {
+        Node source = this.nodes.get(0);
+        List<Contact> destination = this.makeDestination();
+
+        // 原实现：每个目标发布一次
+        this.resetDeliveries();
+        Signal signal = makeSignal();
+        for (Contact contact : destination) {
+            signal.setDestContact(contact);
+            ModuleEvent event = new ModuleEvent(SignalService.NAME, SignalAction.Broadcast.name, signal.toJSON());
+            source.adapter.publish(contact.getUniqueKey(), event.toJSON());
+        }
+        int legacyMessages = this.bus.messages.get();
+        int legacyPublishes = destination.size();
+        Assert.equals("testBroadcast (legacy deliveries)", this.numMembers, this.totalDeliveries());
+
+        // 按节点路由
+        this.resetDeliveries();
+        source.router.route(SignalAction.Broadcast.name, makeSignal(), destination);
+        int routedMessages = this.bus.messages.get();
+        Assert.equals("testBroadcast (routed deliveries)", this.numMembers, this.totalDeliveries());
+        Assert.equals("testBroadcast (routed messages)", this.numNodes - 1, routedMessages);
+
+        System.out.println("Broadcast to " + this.numMembers + " members on " + this.numNodes + " nodes:");
+        System.out.println("  legacy : " + legacyPublishes + " publishes, " + legacyMessages + " adapter messages");
+        System.out.println("  routed : " + (source.router.getNodePublishes() + source.router.getFallbackPublishes())
+                + " publishes, " + routedMessages + " adapter messages");
+    }
+
+    /**
+     * 直接信号只发送到会话所在的节点。
+     */
+    public void testDirect() {
+        Node source = this.nodes.get(0);
+
+        // 本节点的目标不经过适配器
+        this.resetDeliveries();
+        source.router.route(SignalAction.Direct.name, makeSignal(),
+                Collections.singletonList(new Contact(10000L, DOMAIN)));
+        Assert.equals("testDirect (local messages)", 0, this.bus.messages.get());
+        Assert.equals("testDirect (local delivery)", 1, source.deliveries.get());
+
+        this.resetDeliveries();
+        source.router.route(SignalAction.Direct.name, makeSignal(),
+                Collections.singletonList(new Contact(10003L, DOMAIN)));
+        Assert.equals("testDirect (remote messages)", 1, this.bus.messages.get());
+        Assert.equals("testDirect (remote delivery)", 1, this.nodes.get(3).deliveries.get());
+    }
+
+    /**
+     * 节点失效后回退到联系人主题。
+     */
+    public void testNodeFailure() {
+        Node source = this.nodes.get(0);
+        Node failed = this.nodes.get(3);
+
+        // 节点退订主题但没有广播下线事件
+        failed.router.stop();
+
+        this.resetDeliveries();
+        source.router.route(SignalAction.Direct.name, makeSignal(),
+                Collections.singletonList(new Contact(10003L, DOMAIN)));
+        Assert.equals("testNodeFailure (fallback delivery)", 1, failed.deliveries.get());
+        Assert.equals("testNodeFailure (directory cleared)", 0,
+                source.directory.lookup(new Contact(10003L, DOMAIN).getUniqueKey()).size());
+
+        failed.router.start();
+    }
+
+    public static void main(String[] args) {
+        SignalRoutingTest test = new SignalRoutingTest();
+        test.setup();
+        test.testPresence();
+        test.testBroadcast();
+        test.testDirect();
+        test.testNodeFailure();
+    }
+
+    /**
+     * 模拟的服务节点。
+     */
+    private class Node implements CelletAdapterListener {
+
+        private final String name;
+
+        private final LocalAdapter adapter;
+
+        private final PresenceDirectory directory;
+
+        private final SignalRouter router;
+
+        private final Set<String> online = new HashSet<>();
+
+        private final AtomicInteger deliveries = new AtomicInteger(0);
+
+        private Node(String name, Bus bus) {
+            this.name = name;
+            this.adapter = new LocalAdapter(name, bus);
+            this.adapter.addListener(this);
+            this.directory = new PresenceDirectory(name);
+            this.adapter.subscribe(PresenceDirectory.TOPIC);
+            this.router = new SignalRouter(this.adapter, this.directory, new SignalRouter.Deliverer() {
+                @Override
+                public void deliver(Signal signal, Contact destination) {
+                    if (online.contains(destination.getUniqueKey())) {
+                        deliveries.incrementAndGet();
+                    }
+                }
+            });
+            this.router.start();
+        }
+
+        private void signIn(Contact contact, Device device) {
+            this.online.add(contact.getUniqueKey());
+            this.adapter.subscribe(contact.getUniqueKey());
+            this.publish(this.directory.online(contact.getUniqueKey(), device));
+        }
+
+        private void signOut(Contact contact, Device device) {
+            this.online.remove(contact.getUniqueKey());
+            this.adapter.unsubscribe(contact.getUniqueKey());
+            this.publish(this.directory.offline(contact.getUniqueKey(), device));
+        }
+
+        private void publish(JSONObject data) {
+            if (null != data) {
+                ModuleEvent event = new ModuleEvent(ContactManager.NAME, PresenceDirectory.EVENT, data);
+                this.adapter.publish(PresenceDirectory.TOPIC, event.toJSON());
+            }
+        }
+
+        @Override
+        public void onDelivered(String topic, Endpoint endpoint, JSONObject jsonObject) {
+            ModuleEvent event = new ModuleEvent(jsonObject);
+            if (PresenceDirectory.TOPIC.equals(topic)) {
+                this.directory.apply(event.getData());
+                return;
+            }
+
+            if (!this.router.onDelivered(topic, event)) {
+                // 发布到联系人主题的信号
+                Signal signal = new Signal(event.getData());
+                if (this.online.contains(signal.getDestContact().getUniqueKey())) {
+                    this.deliveries.incrementAndGet();
+                }
+            }
+        }
+
+        @Override
+        public void onDelivered(List<String> topics, Endpoint endpoint, JSONObject jsonObject) {
+            this.router.onDelivered(topics, new ModuleEvent(jsonObject));
+        }
+
+        @Override
+        public void onDelivered(String topic, Endpoint endpoint, Primitive primitive) {
+        }
+
+        @Override
+        public void onDelivered(List<String> topics, Endpoint endpoint, Primitive primitive) {
+        }
+
+        @Override
+        public void onSubscribeFailed(String topic, Endpoint endpoint) {
+        }
+
+        @Override
+        public void onUnsubscribeFailed(String topic, Endpoint endpoint) {
+        }
+    }
+
+    /**
+     * 进程内的适配器总线，按订阅关系投送，统计节点间的消息数量。
+     */
+    private class Bus {
+
+        private final Map<String, Set<LocalAdapter>> subscriptions = new HashMap<>();
+
+        private final AtomicInteger messages = new AtomicInteger(0);
+    }
+
+    /**
+     * 进程内适配器，与 {@link CelletAdapter} 的投送语义一致：
+     * 单主题发布投送到本地订阅和每个订阅了该主题的远端节点；多主题发布按远端节点合并为一条消息。
+     */
+    private class LocalAdapter extends CelletAdapter {
+
+        private final Bus bus;
+
+        private final List<CelletAdapterListener> listeners = new ArrayList<>();
+
+        private LocalAdapter(String name, Bus bus) {
+            super(name, "127.0.0.1", 0);
+            this.bus = bus;
+        }
+
+        @Override
+        public void addListener(CelletAdapterListener listener) {
+            this.listeners.add(listener);
+        }
+
+        @Override
+        public void subscribe(String topic) {
+            this.bus.subscriptions.computeIfAbsent(topic, k -> new LinkedHashSet<>()).add(this);
+        }
+
+        @Override
+        public void unsubscribe(String topic) {
+            Set<LocalAdapter> set = this.bus.subscriptions.get(topic);
+            if (null != set) {
+                set.remove(this);
+            }
+        }
+
+        @Override
+        public boolean publish(String topic, JSONObject json) {
+            Set<LocalAdapter> set = this.bus.subscriptions.get(topic);
+            if (null == set || set.isEmpty()) {
+                return false;
+            }
+
+            for (LocalAdapter adapter : new ArrayList<>(set)) {
+                if (adapter != this) {
+                    this.bus.messages.incrementAndGet();
+                }
+                for (CelletAdapterListener listener : adapter.listeners) {
+                    listener.onDelivered(topic, null, json);
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public void publish(List<String> topics, JSONObject json) {
+            Map<LocalAdapter, List<String>> grouped = new LinkedHashMap<>();
+            for (String topic : topics) {
+                Set<LocalAdapter> set = this.bus.subscriptions.get(topic);
+                if (null == set) {
+                    continue;
+                }
+                for (LocalAdapter adapter : set) {
+                    if (adapter != this) {
+                        grouped.computeIfAbsent(adapter, k -> new ArrayList<>()).add(topic);
+                    }
+                }
+            }
+
+            for (Map.Entry<LocalAdapter, List<String>> e : grouped.entrySet()) {
+                this.bus.messages.incrementAndGet();
+                for (CelletAdapterListener listener : e.getKey().listeners) {
+                    listener.onDelivered(e.getValue(), null, json);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * This source file is part of Cube.
+ *
+ * Copyright (c) 2023-2026 Ambrose Xu.
+ */
+
+package cube.service.test;
+
+import cell.util.ByteUtils;
+import cube.service.aigc.scene.StreamArchive;
+import cube.util.Assert;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+/**
+ * 语音流归档文件测试。
+ */
+public class StreamArchiveTest {
+
+    private final static int NUM_CHUNKS = 10000;
+
+    private final static int CHUNK_SIZE = 320;
+
+    private File workPath;
+
+    public StreamArchiveTest() {
+    }
+
+    public void setup() throws IOException {
+        this.workPath = Files.createTempDirectory("cube-vsa").toFile();
+    }
+
+    /**
+     * 分段数据，第一个字节和最后一个字节记录分段索引。
+     */
+    private byte[] chunk(int index, int size) {
+        byte[] data = new byte[size];
+        Arrays.fill(data, (byte) (index * 7));
+        data[0] = (byte) index;
+        data[size - 1] = (byte) (index >> 8);
+        return data;
+    }
+
+    private byte[] expected(int num, int size) {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        for (int i = 0; i < num; ++i) {
+            buf.write(this.chunk(i, size), 0, size);
+        }
+        return buf.toByteArray();
+    }
+
+    public void testAppend() throws IOException {
+        StreamArchive archive = new StreamArchive(this.workPath.getAbsolutePath(), "append");
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < NUM_CHUNKS; i += 2) {
+            // 相邻分段乱序到达
+            archive.save(i + 1, this.chunk(i + 1, CHUNK_SIZE));
+            archive.save(i, this.chunk(i, CHUNK_SIZE));
+        }
+        long elapsed = System.currentTimeMillis() - start;
+        System.out.println("testAppend - " + NUM_CHUNKS + " chunks: " + elapsed + " ms, file: "
+                + archive.getFile().length() + " bytes");
+
+        long payload = (long) NUM_CHUNKS * (CHUNK_SIZE + 8);
+        Assert.equals("testAppend (append only)", true,
+                archive.getFile().length() > payload && archive.getFile().length() < payload + 256);
+        Assert.equals("testAppend (chunks)", NUM_CHUNKS, archive.getHeader().numChunks());
+        Assert.equals("testAppend (pcm)", true,
+                Arrays.equals(this.expected(NUM_CHUNKS, CHUNK_SIZE), archive.loadPCM()));
+
+        // 最后不足一次检查点的记录由扫描日志得到
+        StreamArchive reopened = new StreamArchive(this.workPath.getAbsolutePath(), "append");
+        Assert.equals("testAppend (reopen chunks)", NUM_CHUNKS, reopened.getHeader().numChunks());
+        Assert.equals("testAppend (reopen order)", NUM_CHUNKS - 1,
+                reopened.getHeader().getStreamChunk(NUM_CHUNKS - 1).index);
+        Assert.equals("testAppend (duration)", true,
+                (long) NUM_CHUNKS * CHUNK_SIZE / 32 == reopened.calculateDurationMillis());
+
+        archive.close();
+        reopened = new StreamArchive(this.workPath.getAbsolutePath(), "append");
+        File wav = reopened.outputWavFile();
+        Assert.equals("testAppend (wav)", true,
+                null != wav && wav.length() == 44 + (long) NUM_CHUNKS * CHUNK_SIZE);
+        byte[] wavData = Files.readAllBytes(wav.toPath());
+        Assert.equals("testAppend (wav data)", true,
+                Arrays.equals(this.expected(NUM_CHUNKS, CHUNK_SIZE), Arrays.copyOfRange(wavData, 44, wavData.length)));
+    }
+
+    public void testDuplicate() {
+        StreamArchive archive = new StreamArchive(this.workPath.getAbsolutePath(), "duplicate");
+        archive.save(0, this.chunk(0, 16));
+        archive.save(1, this.chunk(9, 16));
+        archive.save(2, this.chunk(2, 16));
+        // 重新发送的分段覆盖旧数据
+        archive.save(1, this.chunk(1, 16));
+
+        StreamArchive reopened = new StreamArchive(this.workPath.getAbsolutePath(), "duplicate");
+        Assert.equals("testDuplicate (chunks)", 3, reopened.getHeader().numChunks());
+        Assert.equals("testDuplicate (pcm)", true, Arrays.equals(this.expected(3, 16), reopened.loadPCM()));
+    }
+
+    public void testRecovery() throws IOException {
+        StreamArchive archive = new StreamArchive(this.workPath.getAbsolutePath(), "recovery");
+        for (int i = 0; i < 100; ++i) {
+            archive.save(i, this.chunk(i, 64));
+        }
+        archive.close();
+
+        // 模拟写入记录时中断
+        long length = archive.getFile().length();
+        try (RandomAccessFile raf = new RandomAccessFile(archive.getFile(), "rw")) {
+            raf.seek(length);
+            raf.write(ByteUtils.toBytes(100));
+            raf.write(ByteUtils.toBytes(64));
+            raf.write(new byte[10]);
+        }
+
+        StreamArchive reopened = new StreamArchive(this.workPath.getAbsolutePath(), "recovery");
+        Assert.equals("testRecovery (ignore tail)", 100, reopened.getHeader().numChunks());
+
+        reopened.save(100, this.chunk(100, 64));
+        Assert.equals("testRecovery (truncated)", true,
+                archive.getFile().length() == length + 8 + 64);
+
+        // 损坏的索引文件，重新扫描日志
+        File indexFile = new File(this.workPath, "recovery." + StreamArchive.IndexExtension);
+        Files.write(indexFile.toPath(), "broken".getBytes(StandardCharsets.UTF_8));
+        reopened = new StreamArchive(this.workPath.getAbsolutePath(), "recovery");
+        Assert.equals("testRecovery (rebuild)", 101, reopened.getHeader().numChunks());
+        Assert.equals("testRecovery (pcm)", true, Arrays.equals(this.expected(101, 64), reopened.loadPCM()));
+
+        Assert.equals("testRecovery (delete)", true, reopened.delete());
+        Assert.equals("testRecovery (delete index)", false, indexFile.exists());
+    }
+
+    /**
+     * 旧格式：文件头保存分段表，PCM 数据按索引顺序连续存放。
+     */
+    public void testConvertLegacy() throws IOException {
+        int num = 50;
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        buf.write(0x11);
+        byte[] info = ("1.0\nlegacy\n1700000000000\n16000\n16\n1\n").getBytes(StandardCharsets.UTF_8);
+        buf.write(info, 0, info.length);
+        for (int i = 0; i < num; ++i) {
+            buf.write(ByteUtils.toBytes(i), 0, 4);
+            buf.write(ByteUtils.toBytes(100 + i), 0, 4);
+        }
+        buf.write(0x17);
+        buf.write(0x03);
+        ByteArrayOutputStream pcm = new ByteArrayOutputStream();
+        for (int i = 0; i < num; ++i) {
+            byte[] data = this.chunk(i, 100 + i);
+            pcm.write(data, 0, data.length);
+        }
+        buf.write(pcm.toByteArray(), 0, pcm.size());
+
+        File file = new File(this.workPath, "legacy." + StreamArchive.Extension);
+        try (FileOutputStream fos = new FileOutputStream(file)) {
+            fos.write(buf.toByteArray());
+        }
+
+        StreamArchive archive = new StreamArchive(this.workPath.getAbsolutePath(), "legacy");
+        Assert.equals("testConvertLegacy (header)", true, null != archive.getHeader());
+        Assert.equals("testConvertLegacy (timestamp)", true, 1700000000000L == archive.getTimestamp());
+        Assert.equals("testConvertLegacy (chunks)", num, archive.getHeader().numChunks());
+        Assert.equals("testConvertLegacy (pcm)", true, Arrays.equals(pcm.toByteArray(), archive.loadPCM()));
+        Assert.equals("testConvertLegacy (index)", true,
+                new File(this.workPath, "legacy." + StreamArchive.IndexExtension).exists());
+
+        // 转换后可以继续追加
+        archive.save(num, this.chunk(num, 32));
+        StreamArchive reopened = new StreamArchive(this.workPath.getAbsolutePath(), "legacy");
+        Assert.equals("testConvertLegacy (append)", num + 1, reopened.getHeader().numChunks());
+    }
+
+    public static void main(String[] args) {
+        StreamArchiveTest test = new StreamArchiveTest();
+        try {
+            test.setup();
+            test.testAppend();
+            test.testDuplicate();
+            test.testRecovery();
+            test.testConvertLegacy();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+}